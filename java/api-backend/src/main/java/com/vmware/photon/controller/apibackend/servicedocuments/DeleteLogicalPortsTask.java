@@ -17,10 +17,13 @@ import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.xenon.validation.NotBlank;
+import com.vmware.photon.controller.common.xenon.validation.Range;
 import com.vmware.photon.controller.common.xenon.validation.WriteOnce;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 
+import java.util.List;
+
 /**
  * Defines the document state associated with a single
  * {@link com.vmware.photon.controller.apibackend.tasks.DeleteLogicalPortsTaskService}.
@@ -38,14 +41,7 @@ public class DeleteLogicalPortsTask extends ServiceDocument {
      */
     public enum SubStage {
       GET_LINK_PORTS,
-      DELETE_TIER1_ROUTER_LINK_PORT,
-      WAIT_DELETE_TIER1_ROUTER_LINK_PORT,
-      DELETE_TIER0_ROUTER_LINK_PORT,
-      WAIT_DELETE_TIER0_ROUTER_LINK_PORT,
-      DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-      WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-      DELETE_SWITCH_PORT,
-      WAIT_DELETE_SWITCH_PORT,
+      DELETE_PORTS,
     }
   }
 
@@ -66,6 +62,29 @@ public class DeleteLogicalPortsTask extends ServiceDocument {
   @Immutable
   public Integer controlFlags;
 
+  /**
+   * Maximum number of ports deleted at the same time.
+   */
+  @DefaultInteger(4)
+  @Range(min = 1, max = Integer.MAX_VALUE)
+  @Immutable
+  public Integer maxConcurrentDeletions;
+
+  /**
+   * Maximum number of delete requests sent to the nsx manager per second.
+   */
+  @DefaultInteger(10)
+  @Range(min = 1, max = Integer.MAX_VALUE)
+  @Immutable
+  public Integer maxDeletionsPerSecond;
+
+  /**
+   * Number of times a failed delete request of a port is retried.
+   */
+  @DefaultInteger(5)
+  @Immutable
+  public Integer maxRetries;
+
   ///
   /// Task Input
   ///
@@ -141,4 +160,10 @@ public class DeleteLogicalPortsTask extends ServiceDocument {
    */
   @WriteOnce
   public String logicalDownLinkPortOnTier1Router;
+
+  /**
+   * Ids of the ports whose deletion has been confirmed. Patches add to this list rather than replace it, and a
+   * restarted task skips the ports it holds.
+   */
+  public List<String> deletedPorts;
 }
@@ -16,6 +16,7 @@ package com.vmware.photon.controller.apibackend.tasks;
 import com.vmware.photon.controller.apibackend.exceptions.ConfigureRoutingException;
 import com.vmware.photon.controller.apibackend.servicedocuments.DeleteLogicalPortsTask;
 import com.vmware.photon.controller.apibackend.servicedocuments.DeleteLogicalPortsTask.TaskState;
+import com.vmware.photon.controller.apibackend.utils.LogicalPortDeletionPipeline;
 import com.vmware.photon.controller.apibackend.utils.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.ControlFlags;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
@@ -39,9 +40,11 @@ import com.google.common.util.concurrent.FutureCallback;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 /**
 * Implements an Xenon service that represents a task to delete the logical ports on a logical network.
@@ -50,7 +53,6 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
 
   public static final String FACTORY_LINK = ServiceUriPaths.APIBACKEND_ROOT + "/delete-logical-ports-tasks";
   public static final String LOGICAL_PORT = "LogicalPort";
-  private static final int NUM_RETRIES = 5;
 
   public static FactoryService createFactory() {
     return FactoryService.create(DeleteLogicalPortsTaskService.class, DeleteLogicalPortsTask.class);
@@ -109,6 +111,15 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
       DeleteLogicalPortsTask patchState = patchOperation.getBody(DeleteLogicalPortsTask.class);
 
       validatePatchState(currentState, patchState);
+
+      // A patch which records deleted ports only reports progress of the running deletion.
+      boolean progressPatch = patchState.deletedPorts != null;
+      if (progressPatch && currentState.deletedPorts != null) {
+        Set<String> deletedPorts = new LinkedHashSet<>(currentState.deletedPorts);
+        deletedPorts.addAll(patchState.deletedPorts);
+        patchState.deletedPorts = new ArrayList<>(deletedPorts);
+      }
+
       PatchUtils.patchState(currentState, patchState);
       validateState(currentState);
 
@@ -119,7 +130,7 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
         return;
       }
 
-      if (TaskState.TaskStage.STARTED == currentState.taskState.stage) {
+      if (TaskState.TaskStage.STARTED == currentState.taskState.stage && !progressPatch) {
         processPatch(currentState);
       }
     } catch (Throwable t) {
@@ -137,37 +148,8 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
           getTier1RouterPorts(currentState);
           break;
 
-        case DELETE_TIER1_ROUTER_LINK_PORT:
-          deleteTier1RouterLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_LINK_PORT:
-          waitDeleteTier1RouterLinkPort(currentState);
-          break;
-
-        case DELETE_TIER0_ROUTER_LINK_PORT:
-          deleteTier0RouterLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER0_ROUTER_LINK_PORT:
-          waitDeleteTier0RouterLinkPort(currentState);
-          break;
-
-        case DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          deleteTier1RouterDownLinkPort(currentState);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          waitDeleteTier1RouterDownLinkPort(currentState);
-          break;
-
-        case DELETE_SWITCH_PORT:
-          List<Integer> retryCount = Arrays.asList(0);
-          deleteSwitchPort(currentState, retryCount);
-          break;
-
-        case WAIT_DELETE_SWITCH_PORT:
-          waitDeleteSwitchPort(currentState);
+        case DELETE_PORTS:
+          deletePorts(currentState);
           break;
 
         default:
@@ -196,7 +178,7 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
             getLinkedLogicalPorts(logicalRouterPortListResult, currentState);
 
             DeleteLogicalPortsTask patchState = buildPatch(com.vmware.xenon.common.TaskState.TaskStage.STARTED,
-                TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT);
+                TaskState.SubStage.DELETE_PORTS);
             patchState.logicalLinkPortOnTier1Router = currentState.logicalLinkPortOnTier1Router;
             patchState.logicalLinkPortOnTier0Router = currentState.logicalLinkPortOnTier0Router;
             patchState.logicalDownLinkPortOnTier1Router = currentState.logicalDownLinkPortOnTier1Router;
@@ -239,290 +221,109 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     }
   }
 
-  private void deleteTier1RouterLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalLinkPortOnTier1Router == null) {
-      ServiceUtils.logInfo(this, "No link port found on tier-1 router %s", currentState.logicalTier1RouterId);
-      progressTask(TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-      return;
+  private void deletePorts(DeleteLogicalPortsTask currentState) {
+    List<LogicalPortDeletionPipeline.PortDeletion> deletions = new ArrayList<>();
+
+    // The tier-0 router link port is deleted after the tier-1 router link port it is linked to, and the switch port
+    // after the tier-1 router down-link port attached to it. The two pairs are deleted in parallel.
+    addRouterPortDeletion(deletions, currentState.logicalLinkPortOnTier1Router, null);
+    addRouterPortDeletion(deletions, currentState.logicalLinkPortOnTier0Router,
+        currentState.logicalLinkPortOnTier1Router);
+    addRouterPortDeletion(deletions, currentState.logicalDownLinkPortOnTier1Router, null);
+    if (currentState.logicalPortOnSwitch != null) {
+      deletions.add(new LogicalPortDeletionPipeline.PortDeletion(currentState.logicalPortOnSwitch,
+          LogicalPortDeletionPipeline.PortType.SWITCH_PORT, currentState.logicalDownLinkPortOnTier1Router));
     }
 
-    ServiceUtils.logInfo(this, "Deleting link port %s on tier-1 router %s",
-        currentState.logicalLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
-
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalLinkPortOnTier1Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT);
-          }
-
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
-        }
-    );
-  }
-
-  private void waitDeleteTier1RouterLinkPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting link port %s on tier-1 router %s",
-            currentState.logicalLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalLinkPortOnTier1Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-                } else {
-                  waitDeleteTier1RouterLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
-      }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
+    ServiceUtils.logInfo(this, "Deleting %d ports of switch %s, %d already deleted", deletions.size(),
+        currentState.logicalSwitchId, currentState.deletedPorts == null ? 0 : currentState.deletedPorts.size());
+
+    NsxClient nsxClient = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
+        currentState.nsxUsername, currentState.nsxPassword);
+
+    PortDeletionProgress progress = new PortDeletionProgress();
+    new LogicalPortDeletionPipeline(
+        this,
+        nsxClient,
+        deletions,
+        currentState.deletedPorts,
+        currentState.maxConcurrentDeletions,
+        currentState.maxDeletionsPerSecond,
+        currentState.maxRetries,
+        progress).start();
   }
 
-  private void deleteTier0RouterLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalLinkPortOnTier0Router == null) {
-      ServiceUtils.logInfo(this, "No link port found on tier-0 router %s", currentState.logicalTier0RouterId);
-      progressTask(TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-      return;
+  private void addRouterPortDeletion(List<LogicalPortDeletionPipeline.PortDeletion> deletions,
+                                     String portId,
+                                     String prerequisitePortId) {
+    if (portId != null) {
+      deletions.add(new LogicalPortDeletionPipeline.PortDeletion(portId,
+          LogicalPortDeletionPipeline.PortType.ROUTER_PORT, prerequisitePortId));
     }
-
-    ServiceUtils.logInfo(this, "Deleting link port %s on tier-0 router %s", currentState.logicalLinkPortOnTier0Router,
-        currentState.logicalTier0RouterId);
-
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
-
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalLinkPortOnTier0Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT);
-          }
-
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
-        }
-    );
   }
 
-  private void waitDeleteTier0RouterLinkPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting link port %s on tier-0 router %s",
-            currentState.logicalLinkPortOnTier0Router, currentState.logicalTier0RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalLinkPortOnTier0Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-                } else {
-                  waitDeleteTier0RouterLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+  /**
+   * Records each deleted port in the task document and finishes the task once the pipeline is done. The final patch
+   * is held back until the progress patches have been applied, since a patch cannot follow the task into a terminal
+   * stage.
+   */
+  private class PortDeletionProgress implements LogicalPortDeletionPipeline.Listener {
+    private int pendingPatches;
+    private DeleteLogicalPortsTask finalPatch;
+
+    @Override
+    public void onPortDeleted(String portId) {
+      DeleteLogicalPortsTask patchState = buildPatch(TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS);
+      patchState.deletedPorts = new ArrayList<>(Collections.singletonList(portId));
+
+      synchronized (this) {
+        pendingPatches++;
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
-  }
-
-  private void deleteTier1RouterDownLinkPort(DeleteLogicalPortsTask currentState) throws Throwable {
-    if (currentState.logicalDownLinkPortOnTier1Router == null) {
-      ServiceUtils.logInfo(this, "No down-link port found on tier-1 router %s", currentState.logicalTier1RouterId);
-      progressTask(TaskState.SubStage.DELETE_SWITCH_PORT);
-      return;
-    }
-
-    ServiceUtils.logInfo(this, "Deleting down-link port %s on tier-1 router %s",
-        currentState.logicalDownLinkPortOnTier1Router,
-        currentState.logicalTier1RouterId);
-
-    LogicalRouterApi logicalRouterApi = ServiceHostUtils.getNsxClient(getHost(), currentState.nsxAddress,
-        currentState.nsxUsername, currentState.nsxPassword).getLogicalRouterApi();
 
-    logicalRouterApi.deleteLogicalRouterPort(currentState.logicalDownLinkPortOnTier1Router,
-        new FutureCallback<Void>() {
-          @Override
-          public void onSuccess(Void v) {
-            progressTask(TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-          }
+      sendRequest(Operation
+          .createPatch(DeleteLogicalPortsTaskService.this, getSelfLink())
+          .setBody(patchState)
+          .setCompletion((op, ex) -> {
+            if (ex != null) {
+              ServiceUtils.logWarning(DeleteLogicalPortsTaskService.this, "Failed to record deletion of port %s: %s",
+                  portId, ex.getMessage());
+            }
 
-          @Override
-          public void onFailure(Throwable t) {
-            failTask(t);
-          }
-        }
-    );
-  }
+            onPatchCompleted();
+          }));
+    }
 
-  private void waitDeleteTier1RouterDownLinkPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for deleting down-link port %s on tier-1 router %s",
-            currentState.logicalDownLinkPortOnTier1Router, currentState.logicalTier1RouterId);
-
-        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(
-            currentState.logicalDownLinkPortOnTier1Router,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  progressTask(TaskState.SubStage.DELETE_SWITCH_PORT);
-                } else {
-                  waitDeleteTier1RouterDownLinkPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
-      }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
-  }
+    @Override
+    public void onCompleted() {
+      sendFinalPatch(buildPatch(TaskState.TaskStage.FINISHED));
+    }
 
-  private void deleteSwitchPort(DeleteLogicalPortsTask currentState, final List<Integer> retryCount) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        if (currentState.logicalPortOnSwitch == null) {
-          ServiceUtils.logInfo(this, "No link port found on switch %s", currentState.logicalSwitchId);
-          finishTask();
-          return;
-        }
+    @Override
+    public void onFailed(Throwable t) {
+      ServiceUtils.logSevere(DeleteLogicalPortsTaskService.this, t);
+      sendFinalPatch(buildPatch(TaskState.TaskStage.FAILED, t));
+    }
 
-        ServiceUtils.logInfo(this, "Deleting port %s on switch %s",
-            currentState.logicalPortOnSwitch,
-            currentState.logicalSwitchId);
-
-        nsxClient.getLogicalSwitchApi().deleteLogicalPort(
-            currentState.logicalPortOnSwitch,
-            new FutureCallback<Void>() {
-              @Override
-              public void onSuccess(Void v) {
-                progressTask(TaskState.SubStage.WAIT_DELETE_SWITCH_PORT);
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                int currNumTries = retryCount.get(0);
-                if (currNumTries++ < NUM_RETRIES) {
-                  ServiceUtils.logSevere(DeleteLogicalPortsTaskService.this,
-                      "Deleting port %s on switch %s failed with error %s, retrying ...",
-                      currentState.logicalPortOnSwitch, currentState.logicalSwitchId, t.getMessage());
-
-                  retryCount.set(0, currNumTries);
-                  deleteSwitchPort(currentState, retryCount);
-                } else {
-                  failTask(t);
-                }
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+    private synchronized void onPatchCompleted() {
+      if (--pendingPatches == 0 && finalPatch != null) {
+        TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, finalPatch);
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
-  }
+    }
 
-  private void waitDeleteSwitchPort(DeleteLogicalPortsTask currentState) {
-    NsxClient nsxClient = ServiceHostUtils.getNsxClient(
-        getHost(),
-        currentState.nsxAddress,
-        currentState.nsxUsername,
-        currentState.nsxPassword);
-
-    getHost().schedule(() -> {
-      try {
-        ServiceUtils.logInfo(this, "Wait for delete port %s on switch %s",
-            currentState.logicalPortOnSwitch,
-            currentState.logicalSwitchId);
-
-        nsxClient.getLogicalSwitchApi().checkLogicalSwitchPortExistence(
-            currentState.logicalPortOnSwitch,
-            new FutureCallback<Boolean>() {
-              @Override
-              public void onSuccess(Boolean successful) {
-                if (!successful) {
-                  finishTask();
-                } else {
-                  waitDeleteSwitchPort(currentState);
-                }
-              }
-
-              @Override
-              public void onFailure(Throwable t) {
-                failTask(t);
-              }
-            }
-        );
-      } catch (Throwable t) {
-        failTask(t);
+    private synchronized void sendFinalPatch(DeleteLogicalPortsTask patchState) {
+      finalPatch = patchState;
+      if (pendingPatches == 0) {
+        TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, finalPatch);
       }
-    }, nsxClient.getDeleteLogicalPortPollDelay(), TimeUnit.MILLISECONDS);
+    }
   }
 
   private void validateStartState(DeleteLogicalPortsTask state) {
     validateState(state);
 
-    // Disallow restarting the service.
-    checkState(state.taskState.stage != TaskState.TaskStage.STARTED,
+    // Disallow restarting the service, except while deleting ports, which resumes from the recorded progress.
+    checkState(state.taskState.stage != TaskState.TaskStage.STARTED
+            || state.taskState.subStage == TaskState.SubStage.DELETE_PORTS,
         "Service state is invalid (START). Restart is disabled.");
   }
 
@@ -562,11 +363,6 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
     return state;
   }
 
-  private void progressTask(TaskState.SubStage subStage) {
-    DeleteLogicalPortsTask patch = buildPatch(TaskState.TaskStage.STARTED, subStage);
-    TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, patch);
-  }
-
   private void finishTask() {
     DeleteLogicalPortsTask patch = buildPatch(TaskState.TaskStage.FINISHED);
     TaskUtils.sendSelfPatch(DeleteLogicalPortsTaskService.this, patch);
@@ -579,23 +375,8 @@ public class DeleteLogicalPortsTaskService extends StatefulService {
   }
 
   private void validateTaskSubStage(TaskState.SubStage startSubStage, TaskState.SubStage patchSubStage) {
-    if (patchSubStage != null) {
-      switch (patchSubStage) {
-        case WAIT_DELETE_TIER1_ROUTER_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_TIER0_ROUTER_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT);
-          break;
-
-        case WAIT_DELETE_SWITCH_PORT:
-          checkState(startSubStage != null && startSubStage == TaskState.SubStage.DELETE_SWITCH_PORT);
-      }
+    if (patchSubStage == TaskState.SubStage.GET_LINK_PORTS) {
+      checkState(startSubStage == null || startSubStage == TaskState.SubStage.GET_LINK_PORTS);
     }
   }
 }
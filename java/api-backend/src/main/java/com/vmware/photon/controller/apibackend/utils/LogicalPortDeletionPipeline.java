@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.apibackend.utils;
+
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.nsxclient.NsxClient;
+import com.vmware.xenon.common.Service;
+
+import com.google.common.util.concurrent.FutureCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class deletes a set of NSX logical ports as a bounded pipeline.
+ *
+ * At most {@code maxConcurrentDeletions} ports are deleted at a time. Delete requests are admitted by a token bucket
+ * which holds up to one second worth of {@code maxDeletionsPerSecond} permits. A port may name a prerequisite port,
+ * which must be gone before its own deletion starts; this keeps e.g. a router down-link port ahead of the switch port
+ * it is attached to. A deletion is confirmed by polling until the port no longer exists. A failed delete request is
+ * retried with an exponential backoff, and the pipeline fails once a port has used up its retries or an existence
+ * check fails.
+ */
+public class LogicalPortDeletionPipeline {
+
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * Kind of a logical port, which decides the NSX API used to delete it.
+   */
+  public enum PortType {
+    ROUTER_PORT,
+    SWITCH_PORT
+  }
+
+  /**
+   * A port to delete.
+   */
+  public static class PortDeletion {
+    private final String portId;
+    private final PortType portType;
+    private final String prerequisitePortId;
+
+    public PortDeletion(String portId, PortType portType, String prerequisitePortId) {
+      this.portId = portId;
+      this.portType = portType;
+      this.prerequisitePortId = prerequisitePortId;
+    }
+
+    public String getPortId() {
+      return portId;
+    }
+  }
+
+  /**
+   * Receives the progress of the pipeline. Exactly one of {@link #onCompleted()} and {@link #onFailed(Throwable)} is
+   * called.
+   */
+  public interface Listener {
+    void onPortDeleted(String portId);
+
+    void onCompleted();
+
+    void onFailed(Throwable t);
+  }
+
+  private final Service service;
+  private final NsxClient nsxClient;
+  private final int maxConcurrentDeletions;
+  private final int maxRetries;
+  private final Listener listener;
+
+  private final double maxPermits;
+  private final double permitsPerNano;
+  private double storedPermits;
+  private long lastRefillNanos;
+
+  private final Map<String, PortDeletion> pendingDeletions = new LinkedHashMap<>();
+  private final Set<String> inFlightPortIds = new HashSet<>();
+  private final Map<String, Integer> failedAttempts = new HashMap<>();
+  private final Map<String, Long> retryNotBeforeNanos = new HashMap<>();
+  private long dispatchAtNanos;
+  private boolean dispatchScheduled;
+  private boolean done;
+
+  /**
+   * Creates a pipeline. Ports listed in {@code deletedPortIds}, e.g. by an earlier run of the same task, are skipped.
+   */
+  public LogicalPortDeletionPipeline(Service service,
+                                     NsxClient nsxClient,
+                                     Collection<PortDeletion> deletions,
+                                     Collection<String> deletedPortIds,
+                                     int maxConcurrentDeletions,
+                                     int maxDeletionsPerSecond,
+                                     int maxRetries,
+                                     Listener listener) {
+    if (maxConcurrentDeletions <= 0 || maxDeletionsPerSecond <= 0) {
+      throw new IllegalArgumentException("maxConcurrentDeletions and maxDeletionsPerSecond must be greater than zero");
+    }
+
+    this.service = service;
+    this.nsxClient = nsxClient;
+    this.maxConcurrentDeletions = maxConcurrentDeletions;
+    this.maxRetries = maxRetries;
+    this.listener = listener;
+
+    this.maxPermits = maxDeletionsPerSecond;
+    this.permitsPerNano = maxDeletionsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+    this.storedPermits = maxPermits;
+    this.lastRefillNanos = System.nanoTime();
+
+    for (PortDeletion deletion : deletions) {
+      if (deletedPortIds == null || !deletedPortIds.contains(deletion.portId)) {
+        pendingDeletions.put(deletion.portId, deletion);
+      }
+    }
+  }
+
+  /**
+   * Starts deleting the ports.
+   */
+  public void start() {
+    dispatch();
+  }
+
+  private synchronized void dispatch() {
+    if (done) {
+      return;
+    }
+
+    if (pendingDeletions.isEmpty() && inFlightPortIds.isEmpty()) {
+      done = true;
+      listener.onCompleted();
+      return;
+    }
+
+    long now = System.nanoTime();
+    long wakeUpDelayNanos = Long.MAX_VALUE;
+    List<PortDeletion> startedDeletions = new ArrayList<>();
+
+    Iterator<PortDeletion> iterator = pendingDeletions.values().iterator();
+    while (inFlightPortIds.size() < maxConcurrentDeletions && iterator.hasNext()) {
+      PortDeletion deletion = iterator.next();
+      if (!isPrerequisiteDeleted(deletion)) {
+        continue;
+      }
+
+      Long notBefore = retryNotBeforeNanos.get(deletion.portId);
+      if (notBefore != null && notBefore - now > 0) {
+        wakeUpDelayNanos = Math.min(wakeUpDelayNanos, notBefore - now);
+        continue;
+      }
+
+      long permitDelayNanos = reservePermit(now);
+      if (permitDelayNanos > 0) {
+        wakeUpDelayNanos = Math.min(wakeUpDelayNanos, permitDelayNanos);
+        break;
+      }
+
+      iterator.remove();
+      inFlightPortIds.add(deletion.portId);
+      startedDeletions.add(deletion);
+    }
+
+    if (wakeUpDelayNanos != Long.MAX_VALUE) {
+      scheduleDispatch(now, wakeUpDelayNanos);
+    } else if (startedDeletions.isEmpty() && inFlightPortIds.isEmpty()) {
+      fail(new IllegalStateException("Prerequisites of ports " + pendingDeletions.keySet() + " can never be met"));
+      return;
+    }
+
+    startedDeletions.forEach(this::deletePort);
+  }
+
+  private boolean isPrerequisiteDeleted(PortDeletion deletion) {
+    return deletion.prerequisitePortId == null
+        || (!pendingDeletions.containsKey(deletion.prerequisitePortId)
+        && !inFlightPortIds.contains(deletion.prerequisitePortId));
+  }
+
+  /**
+   * Takes a permit from the token bucket. Returns zero when a permit was taken, or else the time until the next
+   * permit is available.
+   */
+  private long reservePermit(long now) {
+    storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefillNanos) * permitsPerNano);
+    lastRefillNanos = now;
+    if (storedPermits >= 1) {
+      storedPermits -= 1;
+      return 0;
+    }
+
+    return Math.max(1, (long) Math.ceil((1 - storedPermits) / permitsPerNano));
+  }
+
+  private void scheduleDispatch(long now, long delayNanos) {
+    long dispatchAt = now + delayNanos;
+    if (dispatchScheduled && dispatchAtNanos - dispatchAt <= 0) {
+      return;
+    }
+
+    dispatchScheduled = true;
+    dispatchAtNanos = dispatchAt;
+    service.getHost().schedule(() -> {
+      synchronized (LogicalPortDeletionPipeline.this) {
+        if (dispatchAtNanos == dispatchAt) {
+          dispatchScheduled = false;
+        }
+      }
+      dispatch();
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void deletePort(PortDeletion deletion) {
+    ServiceUtils.logInfo(service, "Deleting %s %s", deletion.portType, deletion.portId);
+
+    // The NSX client may report both a failure and a success for one request, so only the first outcome counts.
+    AtomicBoolean handled = new AtomicBoolean();
+    FutureCallback<Void> callback = new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void v) {
+        if (handled.compareAndSet(false, true)) {
+          scheduleExistenceCheck(deletion);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (handled.compareAndSet(false, true)) {
+          onDeleteFailed(deletion, t);
+        }
+      }
+    };
+
+    try {
+      switch (deletion.portType) {
+        case ROUTER_PORT:
+          nsxClient.getLogicalRouterApi().deleteLogicalRouterPort(deletion.portId, callback);
+          break;
+        case SWITCH_PORT:
+          nsxClient.getLogicalSwitchApi().deleteLogicalPort(deletion.portId, callback);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown port type " + deletion.portType);
+      }
+    } catch (Throwable t) {
+      callback.onFailure(t);
+    }
+  }
+
+  private synchronized void onDeleteFailed(PortDeletion deletion, Throwable t) {
+    if (done) {
+      return;
+    }
+
+    int attempts = failedAttempts.merge(deletion.portId, 1, Integer::sum);
+    if (attempts > maxRetries) {
+      fail(t);
+      return;
+    }
+
+    long retryDelayMillis = getRetryDelayMillis(attempts);
+    ServiceUtils.logWarning(service, "Deleting %s %s failed with error %s, retrying in %d ms ...",
+        deletion.portType, deletion.portId, t.getMessage(), retryDelayMillis);
+
+    // The port gives back its slot while it waits, so that other ports keep moving.
+    inFlightPortIds.remove(deletion.portId);
+    pendingDeletions.put(deletion.portId, deletion);
+    retryNotBeforeNanos.put(deletion.portId, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis));
+    dispatch();
+  }
+
+  private long getRetryDelayMillis(int attempts) {
+    long delay = nsxClient.getDeleteLogicalPortPollDelay();
+    for (int i = 1; i < attempts && delay < MAX_RETRY_DELAY_MILLIS; i++) {
+      delay *= 2;
+    }
+
+    return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+  }
+
+  private void scheduleExistenceCheck(PortDeletion deletion) {
+    service.getHost().schedule(() -> checkPortExistence(deletion), nsxClient.getDeleteLogicalPortPollDelay(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void checkPortExistence(PortDeletion deletion) {
+    FutureCallback<Boolean> callback = new FutureCallback<Boolean>() {
+      @Override
+      public void onSuccess(Boolean exists) {
+        if (exists) {
+          scheduleExistenceCheck(deletion);
+        } else {
+          onPortDeleted(deletion);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        synchronized (LogicalPortDeletionPipeline.this) {
+          fail(t);
+        }
+      }
+    };
+
+    try {
+      if (deletion.portType == PortType.ROUTER_PORT) {
+        nsxClient.getLogicalRouterApi().checkLogicalRouterPortExistence(deletion.portId, callback);
+      } else {
+        nsxClient.getLogicalSwitchApi().checkLogicalSwitchPortExistence(deletion.portId, callback);
+      }
+    } catch (Throwable t) {
+      callback.onFailure(t);
+    }
+  }
+
+  private synchronized void onPortDeleted(PortDeletion deletion) {
+    if (done) {
+      return;
+    }
+
+    inFlightPortIds.remove(deletion.portId);
+    retryNotBeforeNanos.remove(deletion.portId);
+    listener.onPortDeleted(deletion.portId);
+    dispatch();
+  }
+
+  private void fail(Throwable t) {
+    if (done) {
+      return;
+    }
+
+    done = true;
+    listener.onFailed(t);
+  }
+}
@@ -27,6 +27,7 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.UriUtils;
 
+import com.google.common.util.concurrent.FutureCallback;
 import org.apache.http.HttpStatus;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
@@ -37,13 +38,21 @@ import org.testng.annotations.Test;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.fail;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.UUID;
 
@@ -128,6 +137,8 @@ public class DeleteLogicalPortsTaskServiceTest {
       return new Object[][] {
           {TaskState.TaskStage.CREATED, null,
               TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS},
           {TaskState.TaskStage.FINISHED, null, TaskState.TaskStage.FINISHED, null},
           {TaskState.TaskStage.CANCELLED, null, TaskState.TaskStage.CANCELLED, null},
           {TaskState.TaskStage.FAILED, null, TaskState.TaskStage.FAILED, null}
@@ -241,46 +252,23 @@ public class DeleteLogicalPortsTaskServiceTest {
     public Object[][] getValidStageTransition() {
       return new Object[][] {
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
+              TaskState.TaskStage.FINISHED, null},
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.FINISHED, null},
 
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
               TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.FAILED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.FAILED, null},
 
           {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
               TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.CANCELLED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
               TaskState.TaskStage.CANCELLED, null},
-
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER0_ROUTER_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_TIER1_ROUTER_DOWN_LINK_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_SWITCH_PORT,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_SWITCH_PORT}
       };
     }
 
@@ -320,14 +308,8 @@ public class DeleteLogicalPortsTaskServiceTest {
               TaskState.TaskStage.CREATED, null},
           {TaskState.TaskStage.CANCELLED, null,
               TaskState.TaskStage.CREATED, null},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER0_ROUTER_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_TIER1_ROUTER_DOWN_LINK_PORT},
-          {TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS,
-              TaskState.TaskStage.STARTED, TaskState.SubStage.WAIT_DELETE_SWITCH_PORT}
+          {TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS,
+              TaskState.TaskStage.STARTED, TaskState.SubStage.GET_LINK_PORTS}
       };
     }
 
@@ -369,9 +351,39 @@ public class DeleteLogicalPortsTaskServiceTest {
           {"logicalTier0RouterId", "logicalTier0RouterId is immutable"},
           {"logicalTier1RouterId", "logicalTier1RouterId is immutable"},
           {"logicalSwitchId", "logicalSwitchId is immutable"},
+          {"maxConcurrentDeletions", "maxConcurrentDeletions is immutable"},
+          {"maxDeletionsPerSecond", "maxDeletionsPerSecond is immutable"},
+          {"maxRetries", "maxRetries is immutable"},
       };
     }
 
+    @Test
+    public void testDeletedPortsAreMerged() throws Throwable {
+      DeleteLogicalPortsTask createdState = createDeleteLogicalPortsTaskService(
+          host,
+          deleteLogicalPortsTaskService,
+          TaskState.TaskStage.CREATED,
+          null,
+          ControlFlags.CONTROL_FLAG_OPERATION_PROCESSING_DISABLED);
+
+      patchTaskToState(createdState.documentSelfLink, TaskState.TaskStage.STARTED, TaskState.SubStage.DELETE_PORTS);
+
+      for (String portId : Arrays.asList("port1", "port2", "port1")) {
+        DeleteLogicalPortsTask patchState = buildPatchState(TaskState.TaskStage.STARTED,
+            TaskState.SubStage.DELETE_PORTS);
+        patchState.deletedPorts = new ArrayList<>(Collections.singletonList(portId));
+
+        Operation patch = Operation
+            .createPatch(UriUtils.buildUri(host, createdState.documentSelfLink))
+            .setBody(patchState);
+        host.sendRequestAndWait(patch);
+      }
+
+      DeleteLogicalPortsTask savedState = host.getServiceState(DeleteLogicalPortsTask.class,
+          createdState.documentSelfLink);
+      assertThat(savedState.deletedPorts, contains("port1", "port2"));
+    }
+
     @Test(dataProvider = "writeOnceFields")
     public void testChangeWriteOnceFields(String fieldName, String expectedErrorMessage) throws Throwable {
       DeleteLogicalPortsTask createdState = createDeleteLogicalPortsTaskService(host,
@@ -469,6 +481,58 @@ public class DeleteLogicalPortsTaskServiceTest {
       assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
     }
 
+    @Test
+    public void testRetryDeleteLogicalRouterPort() throws Throwable {
+      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+          .listLogicalRouterPorts(true)
+          .deleteLogicalRouterPort(false, true)
+          .deleteLogicalPort(true)
+          .checkLogicalRouterPortExistence(true)
+          .checkLogicalSwitchPortExistence(true)
+          .build();
+      doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
+
+      DeleteLogicalPortsTask savedState = startService();
+      assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(savedState.deletedPorts, containsInAnyOrder(
+          "logical_link_port_on_tier1_router_id",
+          "logical_link_port_on_tier0_router",
+          "logical_down_link_port_on_tier1_router_id",
+          "logical_port_on_switch_id"));
+    }
+
+    @Test
+    public void testResumeDeletePorts() throws Throwable {
+      NsxClientMock nsxClientMock = new NsxClientMock.Builder()
+          .deleteLogicalRouterPort(true)
+          .deleteLogicalPort(true)
+          .checkLogicalRouterPortExistence(true)
+          .checkLogicalSwitchPortExistence(true)
+          .build();
+      doReturn(nsxClientMock).when(nsxClientFactory).create(any(String.class), any(String.class), any(String.class));
+
+      DeleteLogicalPortsTask startState = buildStartState(TaskState.TaskStage.STARTED,
+          TaskState.SubStage.DELETE_PORTS, 0);
+      startState.logicalLinkPortOnTier1Router = "logicalLinkPortOnTier1Router";
+      startState.logicalLinkPortOnTier0Router = "logicalLinkPortOnTier0Router";
+      startState.logicalDownLinkPortOnTier1Router = "logicalDownLinkPortOnTier1Router";
+      startState.logicalPortOnSwitch = "logicalPortOnSwitch";
+      startState.deletedPorts = new ArrayList<>(Arrays.asList(
+          "logicalLinkPortOnTier1Router", "logicalLinkPortOnTier0Router"));
+
+      DeleteLogicalPortsTask savedState = testEnvironment.callServiceAndWaitForState(
+          DeleteLogicalPortsTaskService.FACTORY_LINK,
+          startState,
+          DeleteLogicalPortsTask.class,
+          (state) -> TaskUtils.finalTaskStages.contains(state.taskState.stage));
+
+      assertThat(savedState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      verify(nsxClientMock.getLogicalRouterApi(), times(1))
+          .deleteLogicalRouterPort(any(String.class), any(FutureCallback.class));
+      verify(nsxClientMock.getLogicalRouterApi())
+          .deleteLogicalRouterPort(eq("logicalDownLinkPortOnTier1Router"), any(FutureCallback.class));
+    }
+
     @Test
     public void testFailedToListLogicalPorts() throws Throwable {
       NsxClientMock nsxClientMock = new NsxClientMock.Builder()
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.apibackend.utils;
+
+import com.vmware.photon.controller.apibackend.utils.LogicalPortDeletionPipeline.PortDeletion;
+import com.vmware.photon.controller.apibackend.utils.LogicalPortDeletionPipeline.PortType;
+import com.vmware.photon.controller.nsxclient.NsxClient;
+import com.vmware.photon.controller.nsxclient.apis.LogicalRouterApi;
+import com.vmware.photon.controller.nsxclient.apis.LogicalSwitchApi;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+
+import com.google.common.util.concurrent.FutureCallback;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements tests for the {@link LogicalPortDeletionPipeline} class.
+ */
+public class LogicalPortDeletionPipelineTest {
+
+  private ScheduledExecutorService executor;
+  private Service service;
+  private FakeNsx fakeNsx;
+  private RecordingListener listener;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    executor = Executors.newScheduledThreadPool(4);
+
+    ServiceHost host = mock(ServiceHost.class);
+    doAnswer(invocation -> executor.schedule((Runnable) invocation.getArguments()[0],
+        (long) invocation.getArguments()[1], (TimeUnit) invocation.getArguments()[2]))
+        .when(host).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+    service = mock(Service.class);
+    doReturn(host).when(service).getHost();
+    doReturn("/delete-logical-ports-task").when(service).getSelfLink();
+
+    fakeNsx = new FakeNsx();
+    listener = new RecordingListener();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testDeletesAllPorts() throws Throwable {
+    fakeNsx.addPorts("router1", "router2", "switch1");
+
+    start(Arrays.asList(
+        new PortDeletion("router1", PortType.ROUTER_PORT, null),
+        new PortDeletion("router2", PortType.ROUTER_PORT, null),
+        new PortDeletion("switch1", PortType.SWITCH_PORT, null)), null, 4, 100, 0);
+
+    assertThat(listener.failure, nullValue());
+    assertThat(listener.deletedPorts, containsInAnyOrder("router1", "router2", "switch1"));
+    assertThat(fakeNsx.ports.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() throws Throwable {
+    List<PortDeletion> deletions = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      fakeNsx.addPorts("port" + i);
+      deletions.add(new PortDeletion("port" + i, PortType.SWITCH_PORT, null));
+    }
+
+    start(deletions, null, 3, 1000, 0);
+
+    assertThat(listener.deletedPorts.size(), is(12));
+    assertThat(fakeNsx.maxConcurrentDeletions.get(), lessThanOrEqualTo(3));
+    assertThat(fakeNsx.maxConcurrentDeletions.get(), greaterThanOrEqualTo(2));
+  }
+
+  @Test
+  public void testDeleteRequestsAreRateLimited() throws Throwable {
+    List<PortDeletion> deletions = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      fakeNsx.addPorts("port" + i);
+      deletions.add(new PortDeletion("port" + i, PortType.ROUTER_PORT, null));
+    }
+
+    long startNanos = System.nanoTime();
+    start(deletions, null, 6, 2, 0);
+
+    // Two permits are available up front and then two per second, so the last request waits about two seconds.
+    assertThat(listener.deletedPorts.size(), is(6));
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), greaterThanOrEqualTo(1500L));
+  }
+
+  @Test
+  public void testPrerequisiteIsDeletedFirst() throws Throwable {
+    fakeNsx.addPorts("downlink", "switch1");
+
+    start(Arrays.asList(
+        new PortDeletion("switch1", PortType.SWITCH_PORT, "downlink"),
+        new PortDeletion("downlink", PortType.ROUTER_PORT, null)), null, 4, 100, 0);
+
+    assertThat(listener.failure, nullValue());
+    assertThat(fakeNsx.deleteOrder.indexOf("downlink"), lessThan(fakeNsx.deleteOrder.indexOf("switch1")));
+  }
+
+  @Test
+  public void testFailedDeleteIsRetried() throws Throwable {
+    fakeNsx.addPorts("router1", "switch1");
+    fakeNsx.failures.put("router1", 2);
+
+    start(Arrays.asList(
+        new PortDeletion("router1", PortType.ROUTER_PORT, null),
+        new PortDeletion("switch1", PortType.SWITCH_PORT, "router1")), null, 4, 100, 2);
+
+    assertThat(listener.failure, nullValue());
+    assertThat(listener.deletedPorts, containsInAnyOrder("router1", "switch1"));
+    assertThat(fakeNsx.deleteAttempts.get("router1").get(), is(3));
+  }
+
+  @Test
+  public void testFailsAfterRetriesAreUsedUp() throws Throwable {
+    fakeNsx.addPorts("router1", "switch1");
+    fakeNsx.failures.put("router1", 3);
+
+    start(Arrays.asList(
+        new PortDeletion("router1", PortType.ROUTER_PORT, null),
+        new PortDeletion("switch1", PortType.SWITCH_PORT, "router1")), null, 4, 100, 2);
+
+    assertThat(listener.failure, notNullValue());
+    assertThat(listener.deletedPorts, is(empty()));
+    assertThat(fakeNsx.ports.contains("switch1"), is(true));
+  }
+
+  @Test
+  public void testDeletedPortsAreSkipped() throws Throwable {
+    fakeNsx.addPorts("switch1");
+
+    start(Arrays.asList(
+        new PortDeletion("downlink", PortType.ROUTER_PORT, null),
+        new PortDeletion("switch1", PortType.SWITCH_PORT, "downlink")),
+        Collections.singletonList("downlink"), 4, 100, 0);
+
+    assertThat(listener.failure, nullValue());
+    assertThat(fakeNsx.deleteOrder, containsInAnyOrder("switch1"));
+  }
+
+  private void start(List<PortDeletion> deletions,
+                     List<String> deletedPortIds,
+                     int maxConcurrentDeletions,
+                     int maxDeletionsPerSecond,
+                     int maxRetries) throws Throwable {
+    new LogicalPortDeletionPipeline(service, fakeNsx.client, deletions, deletedPortIds, maxConcurrentDeletions,
+        maxDeletionsPerSecond, maxRetries, listener).start();
+    assertThat(listener.done.await(10, TimeUnit.SECONDS), is(true));
+  }
+
+  /**
+   * An in-process NSX manager which keeps a set of ports and answers delete and existence requests asynchronously.
+   */
+  private class FakeNsx {
+    private final Set<String> ports = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> deleteAttempts = new HashMap<>();
+    private final List<String> deleteOrder = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger concurrentDeletions = new AtomicInteger();
+    private final AtomicInteger maxConcurrentDeletions = new AtomicInteger();
+    private final NsxClient client;
+
+    private FakeNsx() throws Throwable {
+      LogicalRouterApi logicalRouterApi = mock(LogicalRouterApi.class);
+      LogicalSwitchApi logicalSwitchApi = mock(LogicalSwitchApi.class);
+
+      doAnswer(invocation -> delete(invocation.getArguments())).when(logicalRouterApi)
+          .deleteLogicalRouterPort(anyString(), any(FutureCallback.class));
+      doAnswer(invocation -> delete(invocation.getArguments())).when(logicalSwitchApi)
+          .deleteLogicalPort(anyString(), any(FutureCallback.class));
+      doAnswer(invocation -> exists(invocation.getArguments())).when(logicalRouterApi)
+          .checkLogicalRouterPortExistence(anyString(), any(FutureCallback.class));
+      doAnswer(invocation -> exists(invocation.getArguments())).when(logicalSwitchApi)
+          .checkLogicalSwitchPortExistence(anyString(), any(FutureCallback.class));
+
+      client = mock(NsxClient.class);
+      doReturn(logicalRouterApi).when(client).getLogicalRouterApi();
+      doReturn(logicalSwitchApi).when(client).getLogicalSwitchApi();
+      doReturn(10).when(client).getDeleteLogicalPortPollDelay();
+    }
+
+    private void addPorts(String... portIds) {
+      for (String portId : portIds) {
+        ports.add(portId);
+        deleteAttempts.put(portId, new AtomicInteger());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object delete(Object[] arguments) {
+      String portId = (String) arguments[0];
+      FutureCallback<Void> callback = (FutureCallback<Void>) arguments[1];
+      int attempt = deleteAttempts.get(portId).incrementAndGet();
+      int concurrent = concurrentDeletions.incrementAndGet();
+      maxConcurrentDeletions.accumulateAndGet(concurrent, Math::max);
+
+      executor.schedule(() -> {
+        concurrentDeletions.decrementAndGet();
+        if (attempt <= failures.getOrDefault(portId, 0)) {
+          callback.onFailure(new RuntimeException("deleteLogicalPort failed"));
+          return;
+        }
+
+        deleteOrder.add(portId);
+        ports.remove(portId);
+        callback.onSuccess(null);
+      }, 20, TimeUnit.MILLISECONDS);
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object exists(Object[] arguments) {
+      String portId = (String) arguments[0];
+      FutureCallback<Boolean> callback = (FutureCallback<Boolean>) arguments[1];
+      executor.execute(() -> callback.onSuccess(ports.contains(portId)));
+      return null;
+    }
+  }
+
+  /**
+   * Records what the pipeline reports.
+   */
+  private static class RecordingListener implements LogicalPortDeletionPipeline.Listener {
+    private final List<String> deletedPorts = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    @Override
+    public void onPortDeleted(String portId) {
+      deletedPorts.add(portId);
+    }
+
+    @Override
+    public void onCompleted() {
+      done.countDown();
+    }
+
+    @Override
+    public void onFailed(Throwable t) {
+      failure = t;
+      done.countDown();
+    }
+  }
+}
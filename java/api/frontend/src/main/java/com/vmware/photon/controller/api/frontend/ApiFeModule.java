@@ -75,6 +75,8 @@ import com.vmware.photon.controller.api.frontend.config.ApiFeConfiguration;
 import com.vmware.photon.controller.api.frontend.config.AuthConfig;
 import com.vmware.photon.controller.api.frontend.config.ImageConfig;
 import com.vmware.photon.controller.api.frontend.config.PaginationConfig;
+import com.vmware.photon.controller.api.frontend.config.QuotaEscrowConfig;
+import com.vmware.photon.controller.api.frontend.config.ReferenceCacheConfig;
 import com.vmware.photon.controller.api.frontend.config.StatusConfig;
 import com.vmware.photon.controller.api.frontend.utils.NetworkHelper;
 import com.vmware.photon.controller.api.frontend.utils.PhysicalNetworkHelper;
@@ -114,6 +116,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -122,6 +125,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class ApiFeModule extends AbstractModule {
   private static final Logger logger = LoggerFactory.getLogger(ApiFeModule.class);
+  private static final int STEP_CONTINUATION_THREADS = 16;
   private ApiFeConfiguration configuration;
 
   // APIFE will use the Xenon service host to communicate with the other Xenon services like deployer, scheduler,
@@ -209,12 +213,70 @@ public class ApiFeModule extends AbstractModule {
     return Executors.newScheduledThreadPool(Constants.DEFAULT_SCHEDULED_THREAD_POOL_SIZE);
   }
 
+  @Provides
+  @Singleton
+  @StatusProbeExecutor
+  public ExecutorService getStatusProbeExecutor() {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("StatusProbe" + "-%d")
+        .setDaemon(true)
+        .build();
+
+    return Executors.newFixedThreadPool(Math.max(configuration.getStatusConfig().getProbeWorkers(), 1), threadFactory);
+  }
+
+  /**
+   * Runs the continuations of asynchronous steps, which update Xenon once a remote call completes. The pool has a
+   * fixed number of threads and an unbounded queue, so it does not reject continuations while it is running.
+   */
+  @Provides
+  @Singleton
+  @StepContinuationExecutor
+  public ExecutorService getStepContinuationExecutor() {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("StepContinuation" + "-%d")
+        .setDaemon(true)
+        .build();
+
+    return Executors.newFixedThreadPool(STEP_CONTINUATION_THREADS, threadFactory);
+  }
+
+  /**
+   * Fires the timeouts of asynchronous steps. Timers are removed as soon as their step completes, so they do not
+   * keep the step alive until they would have fired.
+   */
+  @Provides
+  @Singleton
+  @StepTimeoutScheduler
+  public ScheduledExecutorService getStepTimeoutScheduler() {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("StepTimeout" + "-%d")
+        .setDaemon(true)
+        .build();
+
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
   @Provides
   @Singleton
   public PaginationConfig getPaginationConfig() {
     return configuration.getPaginationConfig();
   }
 
+  @Provides
+  @Singleton
+  public QuotaEscrowConfig getQuotaEscrowConfig() {
+    return configuration.getQuotaEscrowConfig();
+  }
+
+  @Provides
+  @Singleton
+  public ReferenceCacheConfig getReferenceCacheConfig() {
+    return configuration.getReferenceCacheConfig();
+  }
+
   @Provides
   @Singleton
   @ApiFeServerSet
@@ -46,6 +46,8 @@ import com.vmware.photon.controller.api.frontend.resources.flavor.FlavorsResourc
 import com.vmware.photon.controller.api.frontend.resources.host.DeploymentHostsResource;
 import com.vmware.photon.controller.api.frontend.resources.host.HostResource;
 import com.vmware.photon.controller.api.frontend.resources.image.ImageResource;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadResource;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadsResource;
 import com.vmware.photon.controller.api.frontend.resources.image.ImagesResource;
 import com.vmware.photon.controller.api.frontend.resources.info.InfoResource;
 import com.vmware.photon.controller.api.frontend.resources.physicalnetwork.SubnetPortGroupsSetResource;
@@ -92,12 +94,15 @@ import com.vmware.photon.controller.swagger.resources.SwaggerJsonListing;
 import com.vmware.xenon.common.ServiceHost;
 
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.hubspot.dropwizard.guice.GuiceBundle;
 import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
 import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
 import org.reflections.util.ClasspathHelper;
@@ -117,6 +122,8 @@ import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * This is the main API Front End Service. When an instance is launched, this is the boot class and the .run
@@ -125,6 +132,7 @@ import java.util.Set;
 public class ApiFeService extends Application<ApiFeStaticConfiguration> {
 
   public static final String SWAGGER_VERSION = "1.2";
+  private static final Duration EXECUTOR_SHUTDOWN_PERIOD = Duration.seconds(5);
   private static ApiFeConfiguration apiFeConfiguration;
   private Injector injector;
   private ApiFeModule apiModule;
@@ -218,6 +226,25 @@ public class ApiFeService extends Application<ApiFeStaticConfiguration> {
     if (graphite != null) {
       graphite.enable();
     }
+
+    manageExecutors(environment);
+  }
+
+  /**
+   * Shuts the executors of the API-FE down when the server stops.
+   */
+  private void manageExecutors(Environment environment) {
+    manageExecutor(environment, Key.get(ExecutorService.class, BackendTaskExecutor.class), "BackendWorker");
+    manageExecutor(environment, Key.get(ScheduledExecutorService.class, ScheduledTaskExecutor.class),
+        "ScheduledTask");
+    manageExecutor(environment, Key.get(ExecutorService.class, StatusProbeExecutor.class), "StatusProbe");
+    manageExecutor(environment, Key.get(ExecutorService.class, StepContinuationExecutor.class), "StepContinuation");
+    manageExecutor(environment, Key.get(ScheduledExecutorService.class, StepTimeoutScheduler.class), "StepTimeout");
+  }
+
+  private void manageExecutor(Environment environment, Key<? extends ExecutorService> key, String poolName) {
+    environment.lifecycle().manage(
+        new ExecutorServiceManager(injector.getInstance(key), EXECUTOR_SHUTDOWN_PERIOD, poolName));
   }
 
   private void registerResourcesWithSwagger(ApiFeConfiguration configuration, Environment environment) {
@@ -248,6 +275,8 @@ public class ApiFeService extends Application<ApiFeStaticConfiguration> {
     resources.add(ImageResource.class);
     resources.add(ImagesResource.class);
     resources.add(ImageTasksResource.class);
+    resources.add(ImageUploadResource.class);
+    resources.add(ImageUploadsResource.class);
     resources.add(InfoResource.class);
     resources.add(ProjectClustersResource.class);
     resources.add(ProjectDisksResource.class);
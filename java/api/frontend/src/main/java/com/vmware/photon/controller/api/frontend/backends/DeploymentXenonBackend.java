@@ -88,6 +88,7 @@ public class DeploymentXenonBackend implements DeploymentBackend {
   private final TenantBackend tenantBackend;
   private final TombstoneBackend tombstoneBackend;
   private final HostBackend hostBackend;
+  private final ReferenceEntityCache referenceEntityCache;
 
   @Inject
   public DeploymentXenonBackend(
@@ -96,7 +97,8 @@ public class DeploymentXenonBackend implements DeploymentBackend {
       TaskBackend taskBackend,
       TombstoneBackend tombstoneBackend,
       TenantBackend tenantBackend,
-      HostBackend hostBackend) {
+      HostBackend hostBackend,
+      ReferenceEntityCache referenceEntityCache) {
     this.xenonClient = xenonClient;
     xenonClient.start();
 
@@ -105,6 +107,7 @@ public class DeploymentXenonBackend implements DeploymentBackend {
     this.tenantBackend = tenantBackend;
     this.tombstoneBackend = tombstoneBackend;
     this.hostBackend = hostBackend;
+    this.referenceEntityCache = referenceEntityCache;
   }
 
   public DeployerClient getDeployerClient() {
@@ -354,6 +357,7 @@ public class DeploymentXenonBackend implements DeploymentBackend {
     tombstoneBackend.create(deploymentEntity.getKind(), deploymentEntity.getId());
     xenonClient.delete(DeploymentServiceFactory.SELF_LINK + "/" + deploymentEntity.getId(),
         new DeploymentService.State());
+    referenceEntityCache.invalidate(DeploymentServiceFactory.SELF_LINK + "/" + deploymentEntity.getId());
   }
 
   @Override
@@ -450,20 +454,22 @@ public class DeploymentXenonBackend implements DeploymentBackend {
       result = xenonClient.patch(DeploymentServiceFactory.SELF_LINK + "/" + id, patch);
     } catch (DocumentNotFoundException e) {
       throw new DeploymentNotFoundException(id);
+    } finally {
+      referenceEntityCache.invalidate(DeploymentServiceFactory.SELF_LINK + "/" + id);
     }
 
     return result.getBody(DeploymentService.State.class);
   }
 
   private DeploymentService.State getDeploymentById(String id) throws DeploymentNotFoundException {
-    com.vmware.xenon.common.Operation result;
-    try {
-      result = xenonClient.get(DeploymentServiceFactory.SELF_LINK + "/" + id);
-    } catch (DocumentNotFoundException documentNotFoundException) {
-      throw new DeploymentNotFoundException(id);
-    }
-
-    return result.getBody(DeploymentService.State.class);
+    String documentLink = DeploymentServiceFactory.SELF_LINK + "/" + id;
+    return referenceEntityCache.get(documentLink, DeploymentService.State.class, () -> {
+      try {
+        return xenonClient.get(documentLink).getBody(DeploymentService.State.class);
+      } catch (DocumentNotFoundException documentNotFoundException) {
+        throw new DeploymentNotFoundException(id);
+      }
+    });
   }
 
   private List<Deployment> toApiRepresentation(List<DeploymentService.State> deployments) {
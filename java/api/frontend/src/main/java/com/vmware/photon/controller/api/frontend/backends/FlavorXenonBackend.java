@@ -66,17 +66,22 @@ public class FlavorXenonBackend implements FlavorBackend {
   private final VmBackend vmBackend;
   private final DiskBackend diskBackend;
   private final TombstoneBackend tombstoneBackend;
+  private final ReferenceEntityCache referenceEntityCache;
 
   private static final String STORAGE_PREFIX = "storage.";
 
+  private static final String NAME_KEY_PREFIX = "flavor-name:";
+
   @Inject
   public FlavorXenonBackend(ApiFeXenonRestClient xenonClient, TaskBackend taskBackend, VmBackend vmBackend,
-                          DiskBackend diskBackend, TombstoneBackend tombstoneBackend) {
+                          DiskBackend diskBackend, TombstoneBackend tombstoneBackend,
+                          ReferenceEntityCache referenceEntityCache) {
     this.xenonClient = xenonClient;
     this.taskBackend = taskBackend;
     this.vmBackend = vmBackend;
     this.diskBackend = diskBackend;
     this.tombstoneBackend = tombstoneBackend;
+    this.referenceEntityCache = referenceEntityCache;
     this.xenonClient.start();
   }
 
@@ -227,6 +232,8 @@ public class FlavorXenonBackend implements FlavorBackend {
           flavorState);
     } catch (DocumentNotFoundException e) {
       throw new FlavorNotFoundException(flavorEntity.getId());
+    } finally {
+      referenceEntityCache.invalidate(FlavorServiceFactory.SELF_LINK + "/" + flavorEntity.getId());
     }
     this.tombstone(flavorEntity);
 
@@ -248,14 +255,10 @@ public class FlavorXenonBackend implements FlavorBackend {
     checkNotNull(name);
     checkNotNull(kind);
 
-    Optional<FlavorEntity> flavorEntity = getByNameAndKind(Optional.of(name), Optional.of(kind));
-
-    if (!flavorEntity.isPresent()) {
-      logger.info("FlavorxenonBackend.getEntityByNameAndKind Flavor with name:{} and kind: {} not found.", name, kind);
-      throw new FlavorNotFoundException(kind, name);
-    }
+    FlavorService.State flavor = referenceEntityCache.get(NAME_KEY_PREFIX + kind + "/" + name,
+        FlavorService.State.class, () -> findDocumentByNameAndKind(name, kind));
 
-    return flavorEntity.get();
+    return convertToEntity(flavor);
   }
 
   @Override
@@ -284,6 +287,7 @@ public class FlavorXenonBackend implements FlavorBackend {
       xenonClient.delete(
           FlavorServiceFactory.SELF_LINK + "/" + flavor.getId(),
           new FlavorService.State());
+      referenceEntityCache.invalidate(FlavorServiceFactory.SELF_LINK + "/" + flavor.getId());
 
       tombstoneBackend.create(Flavor.KIND, flavor.getId());
       logger.info("flavor {} is cleared", flavor.getId());
@@ -355,15 +359,28 @@ public class FlavorXenonBackend implements FlavorBackend {
   }
 
   private FlavorService.State findById(String id) throws ExternalException {
-    com.vmware.xenon.common.Operation result;
+    String documentLink = FlavorServiceFactory.SELF_LINK + "/" + id;
+    return referenceEntityCache.get(documentLink, FlavorService.State.class, () -> {
+      try {
+        return xenonClient.get(documentLink).getBody(FlavorService.State.class);
+      } catch (DocumentNotFoundException documentNotFoundException) {
+        throw new FlavorNotFoundException(id);
+      }
+    });
+  }
 
-    try {
-      result = xenonClient.get(FlavorServiceFactory.SELF_LINK + "/" + id);
-    } catch (DocumentNotFoundException documentNotFoundException) {
-      throw new FlavorNotFoundException(id);
+  private FlavorService.State findDocumentByNameAndKind(String name, String kind) throws ExternalException {
+    ServiceDocumentQueryResult queryResult =
+        findDocumentsByNameAndKind(Optional.of(name), Optional.of(kind), Optional.<Integer>absent());
+    List<FlavorService.State> flavors =
+        PaginationUtils.xenonQueryResultToResourceList(FlavorService.State.class, queryResult).getItems();
+
+    if (flavors.isEmpty()) {
+      logger.info("FlavorxenonBackend.getEntityByNameAndKind Flavor with name:{} and kind: {} not found.", name, kind);
+      throw new FlavorNotFoundException(kind, name);
     }
 
-    return result.getBody(FlavorService.State.class);
+    return flavors.get(0);
   }
 
   private Optional<FlavorEntity> getByNameAndKind(Optional<String> name, Optional<String> kind)
@@ -49,6 +49,19 @@ public interface ImageBackend {
 
   void updateSize(ImageEntity imageEntity, Long size) throws ExternalException;
 
+  void updateContentDigest(ImageEntity imageEntity, String contentDigest) throws ExternalException;
+
+  void updateUploadDigest(String imageId, String uploadDigest) throws ExternalException;
+
+  /**
+   * Find a READY image with the given name and replication type which was committed from chunks with the given
+   * upload digest.
+   *
+   * @return the image, or null if there is none
+   */
+  ImageEntity findReadyImageByUploadDigest(String uploadDigest, String imageFileName,
+                                           ImageReplication replicationType) throws ExternalException;
+
   void updateImageDatastore(String imageId, String imageDatastoreId) throws ExternalException;
 
   ResourceList<ImageEntity> getAll(Optional<Integer> pageSize) throws ExternalException;
@@ -84,18 +84,22 @@ public class ImageXenonBackend implements ImageBackend {
 
   private final TombstoneBackend tombstoneBackend;
 
+  private final ReferenceEntityCache referenceEntityCache;
+
   @Inject
   public ImageXenonBackend(
       ApiFeXenonRestClient xenonClient,
       VmBackend vmBackend,
                          TaskBackend taskBackend,
                          EntityLockBackend entityLockBackend,
-                         TombstoneBackend tombstoneBackend) {
+                         TombstoneBackend tombstoneBackend,
+                         ReferenceEntityCache referenceEntityCache) {
     this.xenonClient = xenonClient;
     this.vmBackend = vmBackend;
     this.taskBackend = taskBackend;
     this.entityLockBackend = entityLockBackend;
     this.tombstoneBackend = tombstoneBackend;
+    this.referenceEntityCache = referenceEntityCache;
     this.xenonClient.start();
   }
 
@@ -185,6 +189,7 @@ public class ImageXenonBackend implements ImageBackend {
     xenonClient.delete(
         ImageServiceFactory.SELF_LINK + "/" + image.getId(),
         new ImageService.State());
+    referenceEntityCache.invalidate(ImageServiceFactory.SELF_LINK + "/" + image.getId());
   }
 
   @Override
@@ -201,6 +206,37 @@ public class ImageXenonBackend implements ImageBackend {
     patchImageService(imageEntity.getId(), imageState);
   }
 
+  @Override
+  public void updateContentDigest(ImageEntity imageEntity, String contentDigest) throws ExternalException {
+    ImageService.State imageState = new ImageService.State();
+    imageState.contentDigest = contentDigest;
+    patchImageService(imageEntity.getId(), imageState);
+  }
+
+  @Override
+  public void updateUploadDigest(String imageId, String uploadDigest) throws ExternalException {
+    ImageService.State imageState = new ImageService.State();
+    imageState.uploadDigest = uploadDigest;
+    patchImageService(imageId, imageState);
+  }
+
+  @Override
+  public ImageEntity findReadyImageByUploadDigest(String uploadDigest, String imageFileName,
+                                                  ImageReplication replicationType) throws ExternalException {
+    final ImmutableMap.Builder<String, String> termsBuilder = new ImmutableMap.Builder<>();
+    termsBuilder.put("uploadDigest", uploadDigest);
+    termsBuilder.put("name", Paths.get(imageFileName).getFileName().toString());
+    termsBuilder.put("replicationType", replicationType.toString());
+    termsBuilder.put("state", ImageState.READY.toString());
+
+    List<ImageService.State> documents = xenonClient.queryDocuments(ImageService.State.class, termsBuilder.build());
+    if (documents.isEmpty()) {
+      return null;
+    }
+
+    return convertToEntity(documents.get(0));
+  }
+
   @Override
   public ResourceList<ImageEntity> getAll(Optional<Integer> pageSize) throws ExternalException {
     return findEntitiesByName(Optional.<String>absent(), pageSize);
@@ -251,14 +287,16 @@ public class ImageXenonBackend implements ImageBackend {
 
   @Override
   public ImageEntity findById(String id) throws ExternalException {
-    com.vmware.xenon.common.Operation result;
-    try {
-      result = xenonClient.get(ImageServiceFactory.SELF_LINK + "/" + id);
-    } catch (DocumentNotFoundException documentNotFoundException) {
-      throw new ImageNotFoundException(Type.ID, id);
-    }
+    String documentLink = ImageServiceFactory.SELF_LINK + "/" + id;
+    ImageService.State imageState = referenceEntityCache.get(documentLink, ImageService.State.class, () -> {
+      try {
+        return xenonClient.get(documentLink).getBody(ImageService.State.class);
+      } catch (DocumentNotFoundException documentNotFoundException) {
+        throw new ImageNotFoundException(Type.ID, id);
+      }
+    });
 
-    return convertToEntity(result.getBody(ImageService.State.class));
+    return convertToEntity(imageState);
   }
 
   @Override
@@ -327,6 +365,8 @@ public class ImageXenonBackend implements ImageBackend {
           ImageServiceFactory.SELF_LINK + "/" + imageId, imageState);
     } catch (DocumentNotFoundException e) {
       throw new ImageNotFoundException(Type.ID, imageId);
+    } finally {
+      referenceEntityCache.invalidate(ImageServiceFactory.SELF_LINK + "/" + imageId);
     }
   }
 
@@ -472,6 +512,8 @@ public class ImageXenonBackend implements ImageBackend {
       xenonClient.patch(ImageServiceFactory.SELF_LINK + "/" + imageId, patchState);
     } catch (DocumentNotFoundException e) {
       throw new ImageNotFoundException(Type.ID, imageId);
+    } finally {
+      referenceEntityCache.invalidate(ImageServiceFactory.SELF_LINK + "/" + imageId);
     }
   }
 
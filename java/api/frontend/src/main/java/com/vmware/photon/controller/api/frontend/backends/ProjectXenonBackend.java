@@ -77,6 +77,7 @@ public class ProjectXenonBackend implements ProjectBackend {
   private final VmBackend vmBackend;
   private final DiskBackend diskBackend;
   private final TombstoneBackend tombstoneBackend;
+  private final ReferenceEntityCache referenceEntityCache;
   private final boolean useVirtualNetwork;
 
   @Inject
@@ -88,6 +89,7 @@ public class ProjectXenonBackend implements ProjectBackend {
       VmBackend vmBackend,
       DiskBackend diskBackend,
       TombstoneBackend tombstoneBackend,
+      ReferenceEntityCache referenceEntityCache,
       @Named("useVirtualNetwork") Boolean useVirtualNetwork) {
     this.xenonClient = xenonClient;
     this.taskBackend = taskBackend;
@@ -96,6 +98,7 @@ public class ProjectXenonBackend implements ProjectBackend {
     this.vmBackend = vmBackend;
     this.diskBackend = diskBackend;
     this.tombstoneBackend = tombstoneBackend;
+    this.referenceEntityCache = referenceEntityCache;
     this.useVirtualNetwork = useVirtualNetwork;
     this.xenonClient.start();
   }
@@ -172,15 +175,16 @@ public class ProjectXenonBackend implements ProjectBackend {
 
   @Override
   public ProjectEntity findById(String id) throws ProjectNotFoundException {
-    com.vmware.xenon.common.Operation result;
-
-    try {
-      result = xenonClient.get(ProjectServiceFactory.SELF_LINK + "/" + id);
-    } catch (DocumentNotFoundException documentNotFoundException) {
-      throw new ProjectNotFoundException(id);
-    }
+    String documentLink = ProjectServiceFactory.SELF_LINK + "/" + id;
+    ProjectService.State projectState = referenceEntityCache.get(documentLink, ProjectService.State.class, () -> {
+      try {
+        return xenonClient.get(documentLink).getBody(ProjectService.State.class);
+      } catch (DocumentNotFoundException documentNotFoundException) {
+        throw new ProjectNotFoundException(id);
+      }
+    });
 
-    return toProjectEntity(result.getBody(ProjectService.State.class));
+    return toProjectEntity(projectState);
 
   }
 
@@ -218,6 +222,8 @@ public class ProjectXenonBackend implements ProjectBackend {
       xenonClient.patch(ProjectServiceFactory.SELF_LINK + "/" + id, patch);
     } catch (DocumentNotFoundException e) {
       throw new ProjectNotFoundException(id);
+    } finally {
+      referenceEntityCache.invalidate(ProjectServiceFactory.SELF_LINK + "/" + id);
     }
   }
 
@@ -361,6 +367,7 @@ public class ProjectXenonBackend implements ProjectBackend {
 
     xenonClient.delete(ProjectServiceFactory.SELF_LINK + "/" + projectEntity.getId(),
         new ProjectService.State());
+    referenceEntityCache.invalidate(ProjectServiceFactory.SELF_LINK + "/" + projectEntity.getId());
     logger.info("Project {} has been deleted", projectEntity.getId());
 
     resourceTicketBackend.delete(projectTicket.getId());
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.config.ReferenceCacheConfig;
+import com.vmware.photon.controller.cloudstore.xenon.entity.DeploymentService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ImageService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ProjectService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TenantService;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the slowly changing documents API-FE looks up on every VM and disk create: flavors, images,
+ * projects, tenants and deployments.
+ * <p>
+ * Entries are keyed by document link, or by a lookup key such as a flavor name, and expire after the TTL configured
+ * for their document type. The cache is bounded by {@link ReferenceCacheConfig#getMaxEntries()} across all types.
+ * Backends invalidate a document when they change it, which also drops the entries stored under lookup keys.
+ * Changes made by other components are picked up through a continuous query on the Xenon host of this process, so
+ * the TTL only bounds staleness when the subscription could not be set up. A document loaded while it was being
+ * invalidated is returned but not cached, so a load racing with a write cannot put the old version back. Documents are
+ * cloned on the way out, so callers are free to modify what they get.
+ */
+@Singleton
+public class ReferenceEntityCache {
+
+  /**
+   * Loads a document on a cache miss.
+   *
+   * @param <T> type of the document
+   * @param <E> exception thrown when the document cannot be loaded
+   */
+  public interface Loader<T, E extends Exception> {
+    T load() throws E;
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(ReferenceEntityCache.class);
+
+  private static final long SUBSCRIPTION_EXPIRATION_DAYS = 3650;
+
+  /**
+   * How long the invalidation stamp of a key is kept. It only has to outlive the loads in flight for the key.
+   */
+  private static final long INVALIDATION_STAMP_EXPIRATION_MINUTES = 10;
+
+  private final ReferenceCacheConfig config;
+  private final Map<Class<?>, Long> ttlMillis;
+  private final Ticker ticker;
+  private final Cache<String, Entry> cache;
+  private final Cache<String, Long> invalidationStamps;
+  private final AtomicLong invalidations = new AtomicLong();
+  private final Map<String, Set<String>> keysByDocumentLink = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  @Inject
+  public ReferenceEntityCache(ReferenceCacheConfig config, ServiceHost serviceHost) {
+    this(config);
+    if (config.isEnabled()) {
+      subscribe(serviceHost);
+    }
+  }
+
+  @VisibleForTesting
+  ReferenceEntityCache(ReferenceCacheConfig config) {
+    this(config, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  ReferenceEntityCache(ReferenceCacheConfig config, Ticker ticker) {
+    this.config = config;
+    this.ticker = ticker;
+    this.ttlMillis = ImmutableMap.<Class<?>, Long>builder()
+        .put(FlavorService.State.class, config.getFlavorTtlMs())
+        .put(ImageService.State.class, config.getImageTtlMs())
+        .put(ProjectService.State.class, config.getProjectTtlMs())
+        .put(TenantService.State.class, config.getTenantTtlMs())
+        .put(DeploymentService.State.class, config.getDeploymentTtlMs())
+        .build();
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(config.getMaxEntries())
+        .removalListener(this::onRemoval)
+        .build();
+    this.invalidationStamps = CacheBuilder.newBuilder()
+        .maximumSize(config.getMaxEntries())
+        .expireAfterWrite(INVALIDATION_STAMP_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+        .ticker(ticker)
+        .build();
+
+    registerGauge("hits", hits::get);
+    registerGauge("misses", misses::get);
+    registerGauge("hit-rate", this::getHitRate);
+    registerGauge("size", cache::size);
+  }
+
+  /**
+   * Returns the document cached under the key, or loads and caches it.
+   */
+  public <T extends ServiceDocument, E extends Exception> T get(String key, Class<T> type, Loader<T, E> loader)
+      throws E {
+    long ttl = ttlMillis.getOrDefault(type, 0L);
+    if (!config.isEnabled() || ttl <= 0) {
+      return loader.load();
+    }
+
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && entry.expirationNanos - ticker.read() > 0) {
+      hits.incrementAndGet();
+      return type.cast(Utils.clone(entry.document));
+    }
+
+    misses.incrementAndGet();
+    long loadStamp = invalidations.get();
+    T document = loader.load();
+    Entry loaded = new Entry(document, ticker.read() + TimeUnit.MILLISECONDS.toNanos(ttl));
+    cache.put(key, loaded);
+    if (document.documentSelfLink != null) {
+      keysByDocumentLink.computeIfAbsent(document.documentSelfLink, link -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    // invalidate() stamps before it removes, so either it removes the entry put above or the stamp is seen here.
+    if (isInvalidatedSince(key, loadStamp) || isInvalidatedSince(document.documentSelfLink, loadStamp)) {
+      cache.asMap().remove(key, loaded);
+    }
+    return type.cast(Utils.clone(document));
+  }
+
+  /**
+   * Drops the document and every entry cached for it under a lookup key.
+   */
+  public void invalidate(String documentSelfLink) {
+    if (!config.isEnabled()) {
+      return;
+    }
+
+    invalidationStamps.put(documentSelfLink, invalidations.incrementAndGet());
+    cache.invalidate(documentSelfLink);
+    Set<String> keys = keysByDocumentLink.remove(documentSelfLink);
+    if (keys != null) {
+      cache.invalidateAll(keys);
+    }
+  }
+
+  /**
+   * Tells whether the key or document link was invalidated after the stamp was taken.
+   */
+  private boolean isInvalidatedSince(String keyOrLink, long stamp) {
+    if (keyOrLink == null) {
+      return false;
+    }
+
+    Long invalidationStamp = invalidationStamps.getIfPresent(keyOrLink);
+    return invalidationStamp != null && invalidationStamp > stamp;
+  }
+
+  @VisibleForTesting
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Invalidates the documents reported by a notification of the continuous query.
+   */
+  @VisibleForTesting
+  void handleNotification(Operation notification) {
+    notification.complete();
+    if (!notification.hasBody()) {
+      return;
+    }
+
+    QueryTask queryTask = notification.getBody(QueryTask.class);
+    if (queryTask.results != null && queryTask.results.documentLinks != null) {
+      queryTask.results.documentLinks.forEach(this::invalidate);
+    }
+  }
+
+  /**
+   * Starts a continuous query for the cached document kinds on the local Xenon host, and subscribes to it so that
+   * changes made by any component invalidate the cache. Cloud-store documents are replicated to every node, so the
+   * local index sees all of them.
+   */
+  private void subscribe(ServiceHost serviceHost) {
+    if (serviceHost == null || !serviceHost.isStarted()) {
+      logger.warn("No Xenon host to subscribe to, reference cache entries are only refreshed after their TTL");
+      return;
+    }
+
+    QueryTask.Query kindQuery = new QueryTask.Query();
+    for (Class<?> type : ttlMillis.keySet()) {
+      QueryTask.Query kindClause = new QueryTask.Query()
+          .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+          .setTermMatchValue(Utils.buildKind(type));
+      kindClause.occurance = QueryTask.Query.Occurance.SHOULD_OCCUR;
+      kindQuery.addBooleanClause(kindClause);
+    }
+
+    QueryTask.QuerySpecification querySpecification = new QueryTask.QuerySpecification();
+    querySpecification.query = kindQuery;
+    querySpecification.options = EnumSet.of(
+        QueryTask.QuerySpecification.QueryOption.CONTINUOUS,
+        QueryTask.QuerySpecification.QueryOption.INCLUDE_DELETED);
+    QueryTask queryTask = QueryTask.create(querySpecification);
+    queryTask.documentExpirationTimeMicros = Utils.getNowMicrosUtc()
+        + TimeUnit.DAYS.toMicros(SUBSCRIPTION_EXPIRATION_DAYS);
+
+    Operation queryPost = Operation
+        .createPost(UriUtils.buildUri(serviceHost, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(queryTask)
+        .setReferer(serviceHost.getUri())
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            logger.warn("Failed to start the reference cache query, entries are only refreshed after their TTL", ex);
+            return;
+          }
+
+          String queryTaskLink = op.getBody(QueryTask.class).documentSelfLink;
+          Operation subscribe = Operation
+              .createPost(UriUtils.buildUri(serviceHost, queryTaskLink))
+              .setReferer(serviceHost.getUri())
+              .setCompletion((subscribeOp, subscribeEx) -> {
+                if (subscribeEx != null) {
+                  logger.warn("Failed to subscribe to {}, reference cache entries are only refreshed after their TTL",
+                      queryTaskLink, subscribeEx);
+                }
+              });
+          serviceHost.startSubscriptionService(subscribe, this::handleNotification);
+        });
+    serviceHost.sendRequest(queryPost);
+  }
+
+  /**
+   * Forgets the lookup key of an entry which was evicted, expired or replaced.
+   */
+  private void onRemoval(RemovalNotification<String, Entry> notification) {
+    String documentSelfLink = notification.getValue().document.documentSelfLink;
+    if (documentSelfLink == null) {
+      return;
+    }
+
+    keysByDocumentLink.computeIfPresent(documentSelfLink, (link, keys) -> {
+      keys.remove(notification.getKey());
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  @VisibleForTesting
+  long getHits() {
+    return hits.get();
+  }
+
+  @VisibleForTesting
+  long getMisses() {
+    return misses.get();
+  }
+
+  private double getHitRate() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0.0 : (double) hitCount / total;
+  }
+
+  private void registerGauge(String name, Gauge<?> gauge) {
+    String metricName = MetricRegistry.name(ReferenceEntityCache.class, name);
+    DefaultMetricRegistry.REGISTRY.remove(metricName);
+    DefaultMetricRegistry.REGISTRY.register(metricName, gauge);
+  }
+
+  /**
+   * A cached document and the time it expires at.
+   */
+  private static class Entry {
+    private final ServiceDocument document;
+    private final long expirationNanos;
+
+    private Entry(ServiceDocument document, long expirationNanos) {
+      this.document = document;
+      this.expirationNanos = expirationNanos;
+    }
+  }
+}
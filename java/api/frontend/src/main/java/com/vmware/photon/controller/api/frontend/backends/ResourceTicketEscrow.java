@@ -0,0 +1,607 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.ScheduledTaskExecutor;
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.QuotaEscrowConfig;
+import com.vmware.photon.controller.api.frontend.entities.QuotaLineItemEntity;
+import com.vmware.photon.controller.api.frontend.exceptions.external.QuotaException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ResourceTicketNotFoundException;
+import com.vmware.photon.controller.api.frontend.lib.QuotaCost;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.QuotaUnit;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketServiceFactory;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.AtomicDouble;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Consumes and returns resource ticket quota through leases instead of patching the ticket for every request.
+ * <p>
+ * When a consume cannot be covered by what this API-FE has leased on a ticket, it leases
+ * {@link QuotaEscrowConfig#getLeaseBatch()} times the cost at once, so the limit check of the following consumes is
+ * local. A consume returns once its usage has been written to the ticket by a LEASE_RECONCILE patch, which moves the
+ * usage out of the lease. Consumes that arrive while such a patch is in flight are written together by the next one,
+ * so a busy ticket sees one patch per round trip instead of one per request, and no usage is lost if this API-FE
+ * goes away. Returned usage is written with the next patch, at the latest on the next reconcile, which also renews
+ * the lease; it can be consumed again once the ticket has put it into the lease. Leased quota that stays unused for
+ * the idle period is given back.
+ * <p>
+ * Limits are still enforced by the ticket, which counts leases like usage: when even the exact shortfall cannot be
+ * leased the consume fails with the ticket's {@link QuotaException}. A lease that is not renewed, because its API-FE
+ * went away, is dropped by the ticket after {@link QuotaEscrowConfig#getLeaseDurationMs()}. Once that may have
+ * happened the lease is retired and a new one is taken; usage consumed from a dropped lease is refused by the ticket
+ * if its headroom was handed out meanwhile, and the consume fails.
+ */
+@Singleton
+public class ResourceTicketEscrow {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResourceTicketEscrow.class);
+
+  private final ApiFeXenonRestClient xenonClient;
+  private final QuotaEscrowConfig config;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, TicketLease> leases;
+
+  // retired leases whose changes are not all on their ticket yet
+  private final Set<TicketLease> retiring;
+
+  @Inject
+  public ResourceTicketEscrow(ApiFeXenonRestClient xenonClient, QuotaEscrowConfig config,
+                              @ScheduledTaskExecutor ScheduledExecutorService scheduledExecutorService) {
+    this(xenonClient, config, scheduledExecutorService, System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  ResourceTicketEscrow(ApiFeXenonRestClient xenonClient, QuotaEscrowConfig config,
+                       ScheduledExecutorService scheduledExecutorService, LongSupplier clock) {
+    this.xenonClient = xenonClient;
+    this.config = config;
+    this.clock = clock;
+    this.leases = new ConcurrentHashMap<>();
+    this.retiring = ConcurrentHashMap.newKeySet();
+
+    if (config.isEnabled()) {
+      scheduledExecutorService.scheduleWithFixedDelay(this::reconcile, config.getReconcileIntervalMs(),
+          config.getReconcileIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  /**
+   * Consumes the cost from this API-FE's lease on the ticket, extending the lease first if needed, and returns once
+   * the usage is on the ticket.
+   */
+  public void consume(String resourceTicketId, QuotaCost cost)
+      throws QuotaException, ResourceTicketNotFoundException {
+    while (true) {
+      TicketLease lease = getLease(resourceTicketId);
+      if (lease.retired) {
+        continue;
+      }
+
+      if (lease.isExpired(clock.getAsLong())) {
+        // the ticket may have dropped the lease, so what was leased cannot be relied on
+        retire(lease);
+        continue;
+      }
+
+      if (!lease.tryConsume(cost)) {
+        refill(lease, cost);
+        continue;
+      }
+
+      lease.lastConsumedMillis = clock.getAsLong();
+      boolean written = false;
+      try {
+        write(lease);
+        written = true;
+        return;
+      } finally {
+        if (!written) {
+          lease.undoConsume(cost);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the cost into this API-FE's lease on the ticket, where it can be consumed again until it is given back.
+   */
+  public void giveBack(String resourceTicketId, QuotaCost cost) {
+    TicketLease lease = getLease(resourceTicketId);
+    lease.giveBack(cost);
+    if (lease.retired) {
+      // retired meanwhile, the returned usage is written by the reconcile of retired leases
+      retiring.add(lease);
+    }
+  }
+
+  /**
+   * Writes the pending changes of every lease to its ticket, which renews the lease, and gives back idle leases.
+   */
+  @VisibleForTesting
+  void reconcile() {
+    long now = clock.getAsLong();
+    for (TicketLease lease : leases.values()) {
+      boolean idle = now - lease.lastConsumedMillis > config.getLeaseIdleMs();
+      if (idle) {
+        lease.releaseAvailable();
+      }
+
+      reconcile(lease);
+      if (idle && lease.isSettled()) {
+        retire(lease);
+      }
+    }
+
+    for (TicketLease lease : retiring) {
+      lease.releaseAvailable();
+      if (!lease.isSettled()) {
+        reconcile(lease);
+      }
+
+      if (lease.isSettled()) {
+        retiring.remove(lease);
+      }
+    }
+  }
+
+  private void reconcile(TicketLease lease) {
+    try {
+      write(lease);
+    } catch (ResourceTicketNotFoundException e) {
+      logger.info("Resource ticket {} is gone, dropping its lease", lease.resourceTicketId);
+    } catch (QuotaException e) {
+      logger.error("Usage on resource ticket {} exceeds its limits after its lease expired",
+          lease.resourceTicketId, e);
+    } catch (Throwable t) {
+      // the changes are kept and retried on the next round
+      logger.warn("Failed to reconcile lease on resource ticket {}", lease.resourceTicketId, t);
+    }
+  }
+
+  private TicketLease getLease(String resourceTicketId) {
+    return leases.computeIfAbsent(resourceTicketId, id -> new TicketLease(id, clock.getAsLong()));
+  }
+
+  /**
+   * Leases more of the ticket for the cost. Only one consume leases at a time, the others wait for it and check the
+   * lease again, so the lease is not extended several times for the same shortfall.
+   */
+  private void refill(TicketLease lease, QuotaCost cost) throws QuotaException, ResourceTicketNotFoundException {
+    CompletableFuture<Void> refill = new CompletableFuture<>();
+    if (!lease.refill.compareAndSet(null, refill)) {
+      CompletableFuture<Void> running = lease.refill.get();
+      if (running != null) {
+        // bounded by the timeout of the patch of the running refill
+        running.join();
+      }
+      return;
+    }
+
+    try {
+      if (lease.retired) {
+        return;
+      }
+
+      Map<String, QuotaLineItemEntity> shortfall = lease.getShortfall(cost);
+      if (!shortfall.isEmpty()) {
+        extend(lease, cost, shortfall);
+      }
+    } finally {
+      lease.refill.set(null);
+      refill.complete(null);
+    }
+  }
+
+  private void extend(TicketLease lease, QuotaCost cost, Map<String, QuotaLineItemEntity> shortfall)
+      throws QuotaException, ResourceTicketNotFoundException {
+    if (config.getLeaseBatch() > 1) {
+      Map<String, QuotaLineItemEntity> batch = new HashMap<>();
+      for (Map.Entry<String, QuotaLineItemEntity> entry : shortfall.entrySet()) {
+        QuotaLineItemEntity item = cost.getCost(entry.getKey());
+        batch.put(entry.getKey(), entry.getValue().add(new QuotaLineItemEntity(item.getKey(),
+            item.getValue() * (config.getLeaseBatch() - 1), item.getUnit())));
+      }
+
+      try {
+        acquire(lease, batch);
+        return;
+      } catch (QuotaException e) {
+        // close to the limit, lease only what this request needs
+        logger.info("Cannot lease a batch on resource ticket {}, leasing the shortfall only",
+            lease.resourceTicketId);
+      }
+    }
+
+    acquire(lease, shortfall);
+  }
+
+  private void acquire(TicketLease lease, Map<String, QuotaLineItemEntity> amounts)
+      throws QuotaException, ResourceTicketNotFoundException {
+    ResourceTicketService.Patch patch = buildPatch(lease, ResourceTicketService.Patch.PatchType.LEASE_ACQUIRE);
+    patch.cost = toQuotaLineItems(amounts);
+
+    long sentMillis = clock.getAsLong();
+    patchResourceTicket(lease.resourceTicketId, patch);
+    lease.validUntilMillis = getValidUntilMillis(sentMillis);
+    lease.lastConsumedMillis = sentMillis;
+    lease.addAvailable(amounts);
+    if (lease.retired) {
+      // nobody consumes from a retired lease, so give the amounts back with its remaining changes
+      lease.releaseAvailable();
+      retiring.add(lease);
+    }
+  }
+
+  /**
+   * Returns once the changes made to the lease so far are on the ticket. The first caller which joins a batch leads
+   * it: once the previous batch is written, it closes the batch and writes all of its changes with one patch while
+   * the other callers wait. Batches are written one after the other, so their changes are never sent twice.
+   */
+  private void write(TicketLease lease) throws QuotaException, ResourceTicketNotFoundException {
+    WriteBatch batch = lease.batch;
+    if (batch.led.compareAndSet(false, true)) {
+      // bounded by the timeout of the patch of the previous batch
+      batch.previous.handle((ignored, t) -> null).join();
+      lease.batch = new WriteBatch(batch.done);
+      writeBatch(lease, batch);
+    }
+
+    try {
+      batch.done.join();
+    } catch (CompletionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), QuotaException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), ResourceTicketNotFoundException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Sends the pending usage and lease changes to the ticket, which also renews the lease. The ticket refuses them
+   * if the lease was dropped and its headroom handed out meanwhile; the lease is then retired and the consumes of the
+   * batch fail and take their changes back.
+   */
+  private void writeBatch(TicketLease lease, WriteBatch batch) {
+    Map<String, Double> usage = lease.snapshot(lease.pendingUsage);
+    Map<String, Double> leased = lease.snapshot(lease.pendingLease);
+    Map<String, Double> returned = lease.snapshot(lease.pendingReturn);
+
+    ResourceTicketService.Patch patch = buildPatch(lease, ResourceTicketService.Patch.PatchType.LEASE_RECONCILE);
+    patch.cost = lease.toQuotaLineItems(usage);
+    patch.lease = lease.toQuotaLineItems(TicketLease.sum(leased, returned));
+
+    long sentMillis = clock.getAsLong();
+    try {
+      ResourceTicketService.State ticket = patchResourceTicket(lease.resourceTicketId, patch);
+      lease.subtract(lease.pendingUsage, usage);
+      lease.subtract(lease.pendingLease, leased);
+      lease.subtract(lease.pendingReturn, returned);
+      lease.validUntilMillis = getValidUntilMillis(sentMillis);
+      if (ticket.leases != null && ticket.leases.containsKey(lease.holderId)) {
+        // the returned usage went into the lease, a ticket which no longer holds the lease only took the usage back
+        lease.addAvailableValues(returned);
+        if (lease.retired) {
+          lease.releaseAvailable();
+        }
+      }
+      batch.done.complete(null);
+    } catch (QuotaException e) {
+      // only a dropped lease is refused, nothing is leased anymore
+      retire(lease);
+      batch.done.completeExceptionally(e);
+    } catch (ResourceTicketNotFoundException e) {
+      retire(lease);
+      lease.discardPending();
+      batch.done.completeExceptionally(e);
+    } catch (Throwable t) {
+      batch.done.completeExceptionally(t);
+    }
+  }
+
+  private long getValidUntilMillis(long sentMillis) {
+    return sentMillis + config.getLeaseDurationMs() - config.getReconcileIntervalMs();
+  }
+
+  /**
+   * Stops handing out the lease. What is left of it is given back, and its remaining changes are written by the
+   * reconcile of retired leases.
+   */
+  private void retire(TicketLease lease) {
+    leases.remove(lease.resourceTicketId, lease);
+    lease.retired = true;
+    lease.releaseAvailable();
+    retiring.add(lease);
+  }
+
+  private ResourceTicketService.Patch buildPatch(TicketLease lease, ResourceTicketService.Patch.PatchType patchType) {
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = patchType;
+    patch.leaseHolder = lease.holderId;
+    patch.leaseDurationMicros = TimeUnit.MILLISECONDS.toMicros(config.getLeaseDurationMs());
+    return patch;
+  }
+
+  private ResourceTicketService.State patchResourceTicket(String resourceTicketId, ResourceTicketService.Patch patch)
+      throws QuotaException, ResourceTicketNotFoundException {
+    try {
+      return xenonClient.patch(ResourceTicketServiceFactory.SELF_LINK + "/" + resourceTicketId, patch)
+          .getBody(ResourceTicketService.State.class);
+    } catch (DocumentNotFoundException e) {
+      throw new ResourceTicketNotFoundException(resourceTicketId);
+    } catch (XenonRuntimeException e) {
+      if (e.getCause() instanceof BadRequestException) {
+        throw ResourceTicketXenonBackend.toQuotaException(e);
+      }
+      throw e;
+    }
+  }
+
+  private static Map<String, QuotaLineItem> toQuotaLineItems(Map<String, QuotaLineItemEntity> items) {
+    Map<String, QuotaLineItem> result = new HashMap<>();
+    for (QuotaLineItemEntity item : items.values()) {
+      result.put(item.getKey(), new QuotaLineItem(item.getKey(), item.getValue(), item.getUnit()));
+    }
+    return result;
+  }
+
+  /**
+   * Changes of a lease which are written to the ticket together.
+   */
+  private static class WriteBatch {
+
+    // completes once the batch before this one has been written
+    private final CompletableFuture<Void> previous;
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private final AtomicBoolean led = new AtomicBoolean();
+
+    WriteBatch(CompletableFuture<Void> previous) {
+      this.previous = previous;
+    }
+  }
+
+  /**
+   * This API-FE's share of one resource ticket. Amounts are kept in atomic counters, in the unit in which their key
+   * was first seen, so consumes and returns do not lock.
+   */
+  private static class TicketLease {
+
+    private final String resourceTicketId;
+
+    // the ticket knows the lease by this holder, a lease taken after this one is retired gets a new holder
+    private final String holderId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, QuotaUnit> units = new ConcurrentHashMap<>();
+
+    // leased quota that can still be consumed locally
+    private final ConcurrentMap<String, AtomicDouble> available = new ConcurrentHashMap<>();
+
+    // signed changes not yet written to the ticket
+    private final ConcurrentMap<String, AtomicDouble> pendingUsage = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicDouble> pendingLease = new ConcurrentHashMap<>();
+
+    // returned usage not yet written to the ticket, which becomes available once it is in the lease
+    private final ConcurrentMap<String, AtomicDouble> pendingReturn = new ConcurrentHashMap<>();
+
+    private final AtomicReference<CompletableFuture<Void>> refill = new AtomicReference<>();
+
+    private volatile WriteBatch batch = new WriteBatch(CompletableFuture.completedFuture(null));
+
+    private volatile long lastConsumedMillis;
+
+    // until when the ticket is known to keep the lease, with a reconcile interval to spare
+    private volatile long validUntilMillis;
+
+    private volatile boolean retired;
+
+    TicketLease(String resourceTicketId, long createdMillis) {
+      this.resourceTicketId = resourceTicketId;
+      this.lastConsumedMillis = createdMillis;
+    }
+
+    boolean isExpired(long nowMillis) {
+      return validUntilMillis > 0 && nowMillis > validUntilMillis;
+    }
+
+    /**
+     * Takes the cost out of the available amounts if all of them cover it.
+     */
+    boolean tryConsume(QuotaCost cost) {
+      Map<String, Double> taken = new HashMap<>();
+      for (String key : cost.getCostKeys()) {
+        double value = toValue(cost.getCost(key));
+        if (!tryTake(counter(available, key), value)) {
+          for (Map.Entry<String, Double> entry : taken.entrySet()) {
+            counter(available, entry.getKey()).addAndGet(entry.getValue());
+          }
+          return false;
+        }
+        taken.put(key, value);
+      }
+
+      for (Map.Entry<String, Double> entry : taken.entrySet()) {
+        counter(pendingUsage, entry.getKey()).addAndGet(entry.getValue());
+        counter(pendingLease, entry.getKey()).addAndGet(-entry.getValue());
+      }
+      return true;
+    }
+
+    /**
+     * Takes back a consume whose usage could not be written. Quota of a retired lease is not handed out anymore, so
+     * there it stays taken out of the lease and is given back to the ticket.
+     */
+    void undoConsume(QuotaCost cost) {
+      for (String key : cost.getCostKeys()) {
+        double value = toValue(cost.getCost(key));
+        counter(pendingUsage, key).addAndGet(-value);
+        if (!retired) {
+          counter(pendingLease, key).addAndGet(value);
+          counter(available, key).addAndGet(value);
+        }
+      }
+    }
+
+    void giveBack(QuotaCost cost) {
+      for (String key : cost.getCostKeys()) {
+        double value = toValue(cost.getCost(key));
+        counter(pendingUsage, key).addAndGet(-value);
+        counter(pendingReturn, key).addAndGet(value);
+      }
+    }
+
+    void addAvailable(Map<String, QuotaLineItemEntity> amounts) {
+      for (QuotaLineItemEntity amount : amounts.values()) {
+        counter(available, amount.getKey()).addAndGet(toValue(amount));
+      }
+    }
+
+    void addAvailableValues(Map<String, Double> values) {
+      for (Map.Entry<String, Double> entry : values.entrySet()) {
+        counter(available, entry.getKey()).addAndGet(entry.getValue());
+      }
+    }
+
+    void releaseAvailable() {
+      for (Map.Entry<String, AtomicDouble> entry : available.entrySet()) {
+        double value = entry.getValue().getAndSet(0.0);
+        if (value != 0) {
+          counter(pendingLease, entry.getKey()).addAndGet(-value);
+        }
+      }
+    }
+
+    void discardPending() {
+      for (AtomicDouble value : pendingUsage.values()) {
+        value.set(0.0);
+      }
+      for (AtomicDouble value : pendingLease.values()) {
+        value.set(0.0);
+      }
+      for (AtomicDouble value : pendingReturn.values()) {
+        value.set(0.0);
+      }
+    }
+
+    boolean isSettled() {
+      return isZero(available) && isZero(pendingUsage) && isZero(pendingLease) && isZero(pendingReturn);
+    }
+
+    Map<String, QuotaLineItemEntity> getShortfall(QuotaCost cost) {
+      Map<String, QuotaLineItemEntity> shortfall = new HashMap<>();
+      for (String key : cost.getCostKeys()) {
+        double missing = toValue(cost.getCost(key)) - counter(available, key).get();
+        if (missing > 0) {
+          shortfall.put(key, new QuotaLineItemEntity(key, missing, units.get(key)));
+        }
+      }
+      return shortfall;
+    }
+
+    Map<String, Double> snapshot(ConcurrentMap<String, AtomicDouble> counters) {
+      Map<String, Double> snapshot = new HashMap<>();
+      for (Map.Entry<String, AtomicDouble> entry : counters.entrySet()) {
+        double value = entry.getValue().get();
+        if (value != 0) {
+          snapshot.put(entry.getKey(), value);
+        }
+      }
+      return snapshot;
+    }
+
+    void subtract(ConcurrentMap<String, AtomicDouble> counters, Map<String, Double> snapshot) {
+      for (Map.Entry<String, Double> entry : snapshot.entrySet()) {
+        counter(counters, entry.getKey()).addAndGet(-entry.getValue());
+      }
+    }
+
+    static Map<String, Double> sum(Map<String, Double> first, Map<String, Double> second) {
+      Map<String, Double> sum = new HashMap<>(first);
+      for (Map.Entry<String, Double> entry : second.entrySet()) {
+        sum.merge(entry.getKey(), entry.getValue(), Double::sum);
+      }
+      return sum;
+    }
+
+    Map<String, QuotaLineItem> toQuotaLineItems(Map<String, Double> values) {
+      Map<String, QuotaLineItem> result = new HashMap<>();
+      for (Map.Entry<String, Double> entry : values.entrySet()) {
+        result.put(entry.getKey(), new QuotaLineItem(entry.getKey(), entry.getValue(), units.get(entry.getKey())));
+      }
+      return result;
+    }
+
+    /**
+     * Converts the item to the unit of its key.
+     */
+    private double toValue(QuotaLineItemEntity item) {
+      QuotaUnit unit = units.computeIfAbsent(item.getKey(), key -> item.getUnit());
+      return new QuotaLineItemEntity(item.getKey(), 0.0, unit).add(item).getValue();
+    }
+
+    private static AtomicDouble counter(ConcurrentMap<String, AtomicDouble> counters, String key) {
+      return counters.computeIfAbsent(key, k -> new AtomicDouble());
+    }
+
+    private static boolean tryTake(AtomicDouble counter, double value) {
+      while (true) {
+        double current = counter.get();
+        if (current < value) {
+          return false;
+        }
+        if (counter.compareAndSet(current, current - value)) {
+          return true;
+        }
+      }
+    }
+
+    private static boolean isZero(ConcurrentMap<String, AtomicDouble> counters) {
+      for (AtomicDouble value : counters.values()) {
+        if (value.get() != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -65,15 +65,18 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   private final ApiFeXenonRestClient xenonClient;
   private final TenantBackend tenantBackend;
   private final TaskBackend taskBackend;
+  private final ResourceTicketEscrow escrow;
 
   @Inject
   public ResourceTicketXenonBackend(
       ApiFeXenonRestClient xenonClient,
                                   TenantBackend tenantBackend,
-                                  TaskBackend taskBackend) {
+                                  TaskBackend taskBackend,
+                                  ResourceTicketEscrow escrow) {
     this.xenonClient = xenonClient;
     this.tenantBackend = tenantBackend;
     this.taskBackend = taskBackend;
+    this.escrow = escrow;
 
     xenonClient.start();
   }
@@ -95,6 +98,33 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   @Override
   public void consumeQuota(String resourceTicketId, QuotaCost cost)
       throws QuotaException, ResourceTicketNotFoundException {
+    if (escrow.isEnabled()) {
+      escrow.consume(resourceTicketId, cost);
+      return;
+    }
+
+    consumeQuotaDirectly(resourceTicketId, cost);
+  }
+
+  /**
+   * This method returns the quota consumed via consumeQuota.
+   * <p/>
+   *
+   * @param resourceTicketId - id of the resource ticket
+   * @param cost             - the cost object representing how much will be consumed
+   */
+  @Override
+  public void returnQuota(String resourceTicketId, QuotaCost cost) throws ResourceTicketNotFoundException {
+    if (escrow.isEnabled()) {
+      escrow.giveBack(resourceTicketId, cost);
+      return;
+    }
+
+    returnQuotaDirectly(resourceTicketId, cost);
+  }
+
+  private void consumeQuotaDirectly(String resourceTicketId, QuotaCost cost)
+      throws QuotaException, ResourceTicketNotFoundException {
     ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
     patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
     patch.cost = new HashMap<>();
@@ -111,28 +141,12 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
       patchResourceTicketService(resourceTicketId, patch);
     } catch (XenonRuntimeException e) {
       if (e.getCause() instanceof BadRequestException) {
-        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
-            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
-        throw new QuotaException(
-            new QuotaLineItemEntity(quotaErrorResponse.limit.getKey(),
-                quotaErrorResponse.limit.getValue(), quotaErrorResponse.limit.getUnit()),
-            new QuotaLineItemEntity(quotaErrorResponse.usage.getKey(),
-                quotaErrorResponse.usage.getValue(), quotaErrorResponse.usage.getUnit()),
-            new QuotaLineItemEntity(quotaErrorResponse.newUsage.getKey(),
-                quotaErrorResponse.newUsage.getValue(), quotaErrorResponse.newUsage.getUnit()));
+        throw toQuotaException(e);
       }
     }
   }
 
-  /**
-   * This method returns the quota consumed via consumeQuota.
-   * <p/>
-   *
-   * @param resourceTicketId - id of the resource ticket
-   * @param cost             - the cost object representing how much will be consumed
-   */
-  @Override
-  public void returnQuota(String resourceTicketId, QuotaCost cost) throws ResourceTicketNotFoundException {
+  private void returnQuotaDirectly(String resourceTicketId, QuotaCost cost) throws ResourceTicketNotFoundException {
     ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
     patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_RETURN;
     patch.cost = new HashMap<>();
@@ -157,7 +171,8 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
   @Override
   public void returnQuota(ResourceTicketEntity childTicket)
       throws ResourceTicketNotFoundException {
-    returnQuota(childTicket.getParentId(), new QuotaCost(childTicket.getLimits()));
+    // tenant tickets are only touched when projects come and go, so they are not worth leasing
+    returnQuotaDirectly(childTicket.getParentId(), new QuotaCost(childTicket.getLimits()));
   }
 
   /**
@@ -213,7 +228,7 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
     ResourceTicketService.State createdResourceTicket = result.getBody(ResourceTicketService.State.class);
 
     try {
-      consumeQuota(resourceTicketId, new QuotaCost(limits));
+      consumeQuotaDirectly(resourceTicketId, new QuotaCost(limits));
     } catch (QuotaException qe) {
       logger.warn("Subdivide of resource ticket id {} failed", resourceTicketId);
       // compensate by deleting the created ticket document
@@ -393,6 +408,21 @@ public class ResourceTicketXenonBackend implements ResourceTicketBackend {
         state -> convertToResourceTicketEntity(state));
   }
 
+  /**
+   * Converts the error of a patch the resource ticket refused for lack of quota.
+   */
+  static QuotaException toQuotaException(XenonRuntimeException e) {
+    ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
+        e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
+    return new QuotaException(
+        new QuotaLineItemEntity(quotaErrorResponse.limit.getKey(),
+            quotaErrorResponse.limit.getValue(), quotaErrorResponse.limit.getUnit()),
+        new QuotaLineItemEntity(quotaErrorResponse.usage.getKey(),
+            quotaErrorResponse.usage.getValue(), quotaErrorResponse.usage.getUnit()),
+        new QuotaLineItemEntity(quotaErrorResponse.newUsage.getKey(),
+            quotaErrorResponse.newUsage.getValue(), quotaErrorResponse.newUsage.getUnit()));
+  }
+
   private void patchResourceTicketService(String resourceTicketId, ResourceTicketService.Patch patch)
       throws ResourceTicketNotFoundException {
     try {
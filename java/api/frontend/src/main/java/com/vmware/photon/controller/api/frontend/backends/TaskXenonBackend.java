@@ -28,6 +28,7 @@ import com.vmware.photon.controller.api.frontend.utils.PaginationUtils;
 import com.vmware.photon.controller.api.model.Operation;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
 import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
@@ -44,9 +45,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Common task operations using Xenon cloud store.
@@ -79,7 +83,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   @Override
   public Task getApiRepresentation(String id) throws TaskNotFoundException {
-    return TaskUtils.convertBackEndToFrontEnd(getTaskStateById(id));
+    return TaskUtils.convertBackEndToFrontEnd(getTaskOrArchivedTaskStateById(id));
   }
 
   @Override
@@ -352,7 +356,43 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     ServiceDocumentQueryResult queryResult = xenonClient.queryDocuments(TaskService.State.class, termsBuilder.build(),
         pageSize, true);
 
-    return PaginationUtils.xenonQueryResultToResourceList(TaskService.State.class, queryResult);
+    ResourceList<TaskService.State> taskStates =
+        PaginationUtils.xenonQueryResultToResourceList(TaskService.State.class, queryResult);
+
+    // Archived tasks are only merged into the last page, so the page links of the index query stay valid.
+    if (entityId.isPresent() && taskStates.getNextPageLink() == null) {
+      appendArchivedTasks(taskStates, entityId.get(), entityKind.get().toLowerCase(), state);
+    }
+
+    return taskStates;
+  }
+
+  private void appendArchivedTasks(ResourceList<TaskService.State> taskStates, String entityId, String entityKind,
+                                   Optional<String> state) {
+    TaskArchiveService.Request request = new TaskArchiveService.Request();
+    request.type = TaskArchiveService.RequestType.QUERY;
+    request.entityId = entityId;
+    request.entityKind = entityKind;
+    request.state = state.isPresent() ? state.get().toUpperCase() : null;
+
+    List<TaskService.State> archivedTasks = queryTaskArchive(request);
+    if (archivedTasks.isEmpty()) {
+      return;
+    }
+
+    List<TaskService.State> items = new ArrayList<>(taskStates.getItems());
+    Set<String> taskLinks = new HashSet<>();
+    for (TaskService.State task : items) {
+      taskLinks.add(task.documentSelfLink);
+    }
+
+    for (TaskService.State task : archivedTasks) {
+      if (taskLinks.add(task.documentSelfLink)) {
+        items.add(task);
+      }
+    }
+
+    taskStates.setItems(items);
   }
 
   private TaskEntity createTaskHelper(String entityId, String entityKind, String projectId, Operation operation,
@@ -380,7 +420,7 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
 
   @Override
   public TaskEntity findById(String id) throws TaskNotFoundException {
-    return TaskUtils.convertBackEndToMiddleEnd(getTaskStateById(id));
+    return TaskUtils.convertBackEndToMiddleEnd(getTaskOrArchivedTaskStateById(id));
   }
 
   @Override
@@ -513,6 +553,31 @@ public class TaskXenonBackend implements TaskBackend, StepBackend {
     return result.getBody(TaskService.State.class);
   }
 
+  /**
+   * Looks up a task in the cloud store and falls back to the task archive for tasks which have been compacted.
+   */
+  private TaskService.State getTaskOrArchivedTaskStateById(String taskId) throws TaskNotFoundException {
+    try {
+      return getTaskStateById(taskId);
+    } catch (TaskNotFoundException e) {
+      TaskArchiveService.Request request = new TaskArchiveService.Request();
+      request.type = TaskArchiveService.RequestType.QUERY;
+      request.documentLinks = Collections.singletonList(TaskServiceFactory.SELF_LINK + "/" + taskId);
+
+      List<TaskService.State> archivedTasks = queryTaskArchive(request);
+      if (archivedTasks.isEmpty()) {
+        throw e;
+      }
+
+      return archivedTasks.get(0);
+    }
+  }
+
+  private List<TaskService.State> queryTaskArchive(TaskArchiveService.Request request) {
+    return xenonClient.post(TaskArchiveService.SELF_LINK, request)
+        .getBody(TaskArchiveService.Response.class).documents;
+  }
+
   private String convertStepOptionsToString(Map<String, String> stepOptions, TaskEntity taskEntity) {
     if (stepOptions != null && !stepOptions.isEmpty()) {
       try {
@@ -76,6 +76,7 @@ public class TenantXenonBackend implements TenantBackend {
   private final ResourceTicketBackend resourceTicketBackend;
   private final TombstoneBackend tombstoneBackend;
   private final ProjectBackend projectBackend;
+  private final ReferenceEntityCache referenceEntityCache;
 
   @Inject
   public TenantXenonBackend(ApiFeXenonRestClient xenonClient,
@@ -83,13 +84,15 @@ public class TenantXenonBackend implements TenantBackend {
                           DeploymentBackend deploymentBackend,
                           ResourceTicketBackend resourceTicketBackend,
                           TombstoneBackend tombstoneBackend,
-                          ProjectBackend projectBackend) {
+                          ProjectBackend projectBackend,
+                          ReferenceEntityCache referenceEntityCache) {
     this.xenonClient = xenonClient;
     this.taskBackend = taskBackend;
     this.deploymentBackend = deploymentBackend;
     this.resourceTicketBackend = resourceTicketBackend;
     this.tombstoneBackend = tombstoneBackend;
     this.projectBackend = projectBackend;
+    this.referenceEntityCache = referenceEntityCache;
     this.xenonClient.start();
   }
 
@@ -170,15 +173,16 @@ public class TenantXenonBackend implements TenantBackend {
 
   @Override
   public TenantEntity findById(String id) throws TenantNotFoundException {
-    com.vmware.xenon.common.Operation result;
-
-    try {
-      result = xenonClient.get(TenantServiceFactory.SELF_LINK + "/" + id);
-    } catch (DocumentNotFoundException documentNotFoundException) {
-      throw new TenantNotFoundException(id);
-    }
+    String documentLink = TenantServiceFactory.SELF_LINK + "/" + id;
+    TenantService.State tenantState = referenceEntityCache.get(documentLink, TenantService.State.class, () -> {
+      try {
+        return xenonClient.get(documentLink).getBody(TenantService.State.class);
+      } catch (DocumentNotFoundException documentNotFoundException) {
+        throw new TenantNotFoundException(id);
+      }
+    });
 
-    return toTenantEntity(result.getBody(TenantService.State.class));
+    return toTenantEntity(tenantState);
 
   }
 
@@ -223,6 +227,8 @@ public class TenantXenonBackend implements TenantBackend {
       xenonClient.patch(TenantServiceFactory.SELF_LINK + "/" + id, patch);
     } catch (DocumentNotFoundException e) {
       throw new TenantNotFoundException(id);
+    } finally {
+      referenceEntityCache.invalidate(TenantServiceFactory.SELF_LINK + "/" + id);
     }
 
   }
@@ -324,6 +330,7 @@ public class TenantXenonBackend implements TenantBackend {
 
     xenonClient.delete(TenantServiceFactory.SELF_LINK + "/" + tenantEntity.getId(),
         new TenantService.State());
+    referenceEntityCache.invalidate(TenantServiceFactory.SELF_LINK + "/" + tenantEntity.getId());
     logger.info("Tenant {} has been deleted", tenantEntity.getId());
 
     tombstoneBackend.create(tenantEntity.getKind(), tenantEntity.getId());
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory directory of the hosts VMs live on, keyed by VM id, so that VM operations can be dispatched to the agent
+ * without looking up the VM or its host in cloud-store first.
+ * <p>
+ * The directory is fed by the backend whenever it records the host of a VM and drops a VM when it is deleted. Every
+ * entry carries the version of the VM document it was recorded with. An entry is only returned to a caller holding
+ * a VM entity of the same or an older version, so it never overrides a host read from cloud-store later, and an
+ * entry is never replaced by the host of an older version. Callers invalidate an entry when the agent does not know
+ * the VM, and resolve the host from cloud-store again. Entries expire after {@link #ENTRY_TTL_HOURS} hours, so VMs
+ * moved by other API-FE instances are picked up even without a miss.
+ */
+@Singleton
+public class VmHostDirectory {
+
+  private static final long MAX_ENTRIES = 100_000;
+  private static final long ENTRY_TTL_HOURS = 1;
+
+  private final Cache<String, Entry> hostIps;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public VmHostDirectory() {
+    this.hostIps = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .expireAfterWrite(ENTRY_TTL_HOURS, TimeUnit.HOURS)
+        .build();
+
+    registerGauge("hits", hits::get);
+    registerGauge("misses", misses::get);
+    registerGauge("invalidations", invalidations::get);
+    registerGauge("hit-rate", this::getHitRate);
+    registerGauge("size", hostIps::size);
+  }
+
+  /**
+   * Returns the address of the host the VM was last recorded on, or null if the VM is not in the directory or was
+   * recorded with a version older than the given one.
+   */
+  public String getHostIp(String vmId, long documentVersion) {
+    Entry entry = hostIps.getIfPresent(vmId);
+    if (entry == null || entry.documentVersion < documentVersion) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry.hostIp;
+  }
+
+  /**
+   * Records the host the VM lives on as of the given version of its document. A blank address removes the VM from
+   * the directory.
+   */
+  public void put(String vmId, String hostIp, long documentVersion) {
+    if (StringUtils.isBlank(hostIp)) {
+      hostIps.invalidate(vmId);
+      return;
+    }
+
+    hostIps.asMap().merge(vmId, new Entry(hostIp, documentVersion),
+        (current, update) -> update.documentVersion >= current.documentVersion ? update : current);
+  }
+
+  /**
+   * Drops the VM, so that its host is resolved from cloud-store the next time.
+   */
+  public void invalidate(String vmId) {
+    if (hostIps.getIfPresent(vmId) != null) {
+      invalidations.incrementAndGet();
+    }
+    hostIps.invalidate(vmId);
+  }
+
+  @VisibleForTesting
+  long getHits() {
+    return hits.get();
+  }
+
+  @VisibleForTesting
+  long getMisses() {
+    return misses.get();
+  }
+
+  @VisibleForTesting
+  long getInvalidations() {
+    return invalidations.get();
+  }
+
+  private double getHitRate() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0.0 : (double) hitCount / total;
+  }
+
+  private void registerGauge(String name, Gauge<?> gauge) {
+    String metricName = MetricRegistry.name(VmHostDirectory.class, name);
+    DefaultMetricRegistry.REGISTRY.remove(metricName);
+    DefaultMetricRegistry.REGISTRY.register(metricName, gauge);
+  }
+
+  private static class Entry {
+
+    private final String hostIp;
+
+    private final long documentVersion;
+
+    private Entry(String hostIp, long documentVersion) {
+      this.hostIp = hostIp;
+      this.documentVersion = documentVersion;
+    }
+  }
+}
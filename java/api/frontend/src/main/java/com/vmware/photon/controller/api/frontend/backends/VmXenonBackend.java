@@ -119,6 +119,7 @@ public class VmXenonBackend implements VmBackend {
   private final HostBackend hostBackend;
   private final TombstoneBackend tombstoneBackend;
   private final NetworkHelper networkHelper;
+  private final VmHostDirectory vmHostDirectory;
 
   @Inject
   public VmXenonBackend(
@@ -132,7 +133,8 @@ public class VmXenonBackend implements VmBackend {
       FlavorBackend flavorBackend,
       HostBackend hostBackend,
       TombstoneBackend tombstoneBackend,
-      NetworkHelper networkHelper) {
+      NetworkHelper networkHelper,
+      VmHostDirectory vmHostDirectory) {
 
     this.xenonClient = xenonClient;
     xenonClient.start();
@@ -147,6 +149,7 @@ public class VmXenonBackend implements VmBackend {
     this.hostBackend = hostBackend;
     this.tombstoneBackend = tombstoneBackend;
     this.networkHelper = networkHelper;
+    this.vmHostDirectory = vmHostDirectory;
   }
 
   @Override
@@ -316,6 +319,7 @@ public class VmXenonBackend implements VmBackend {
 
     tombstoneBackend.create(Vm.KIND, vm.getId());
     xenonClient.delete(VmServiceFactory.SELF_LINK + "/" + vm.getId(), new VmService.State());
+    vmHostDirectory.invalidate(vm.getId());
 
     for (AttachedDiskEntity attachedDisk : attachedDiskBackend.findByVmId(vm.getId())) {
       attachedDiskBackend.deleteAttachedDiskById(attachedDisk.getId());
@@ -387,7 +391,9 @@ public class VmXenonBackend implements VmBackend {
       vm.networks = new ArrayList<>(networkInfo.keySet());
     }
 
-    patchVmService(vmEntity.getId(), vm);
+    VmService.State patchedVm = patchVmService(vmEntity.getId(), vm);
+    vmHostDirectory.put(vmEntity.getId(), agentIp, patchedVm.documentVersion);
+    vmEntity.setDocumentVersion(patchedVm.documentVersion);
     vmEntity.setState(state);
     vmEntity.setAgent(agent);
     vmEntity.setHost(agentIp);
@@ -716,6 +722,7 @@ public class VmXenonBackend implements VmBackend {
 
     vmEntity.setAgent(vm.agent);
     vmEntity.setHost(vm.host);
+    vmEntity.setDocumentVersion(vm.documentVersion);
     vmEntity.setDatastore(vm.datastore);
     vmEntity.setDatastoreName(vm.datastoreName);
 
@@ -1155,10 +1162,11 @@ public class VmXenonBackend implements VmBackend {
     return task;
   }
 
-  private void patchVmService(String vmId, VmService.State vmServiceState)
+  private VmService.State patchVmService(String vmId, VmService.State vmServiceState)
       throws VmNotFoundException {
     try {
-      xenonClient.patch(VmServiceFactory.SELF_LINK + "/" + vmId, vmServiceState);
+      return xenonClient.patch(VmServiceFactory.SELF_LINK + "/" + vmId, vmServiceState)
+          .getBody(VmService.State.class);
     } catch (DocumentNotFoundException e) {
       throw new VmNotFoundException(vmId);
     }
@@ -18,11 +18,15 @@ import com.vmware.photon.controller.api.frontend.backends.ImageBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommand;
 import com.vmware.photon.controller.api.frontend.commands.tasks.TaskCommandFactory;
+import com.vmware.photon.controller.api.frontend.entities.ImageEntity;
 import com.vmware.photon.controller.api.frontend.entities.TaskEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.PageExpiredException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.lib.image.ChunkedImageUploadStore;
 import com.vmware.photon.controller.api.model.Image;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.ImageUploadCreateSpec;
 import com.vmware.photon.controller.api.model.Operation;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
@@ -34,6 +38,7 @@ import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 
@@ -49,14 +54,17 @@ public class ImageFeClient {
   private final ExecutorService executor;
   private final ImageBackend imageBackend;
   private final TaskBackend taskBackend;
+  private final ChunkedImageUploadStore chunkedImageUploadStore;
 
   @Inject
   public ImageFeClient(TaskCommandFactory commandFactory, ImageBackend imageBackend,
-                       @BackendTaskExecutor ExecutorService executor, TaskBackend taskBackend) {
+                       @BackendTaskExecutor ExecutorService executor, TaskBackend taskBackend,
+                       ChunkedImageUploadStore chunkedImageUploadStore) {
     this.commandFactory = commandFactory;
     this.executor = executor;
     this.imageBackend = imageBackend;
     this.taskBackend = taskBackend;
+    this.chunkedImageUploadStore = chunkedImageUploadStore;
   }
 
   public Task create(InputStream inputStream, String name, ImageReplication replicationType) throws
@@ -79,6 +87,69 @@ public class ImageFeClient {
     return task;
   }
 
+  public ImageUpload createUpload(ImageUploadCreateSpec spec) throws InternalException, ExternalException {
+    return chunkedImageUploadStore.create(spec);
+  }
+
+  public ImageUpload getUpload(String id) throws InternalException, ExternalException {
+    return chunkedImageUploadStore.get(id);
+  }
+
+  public ImageUpload putUploadChunk(String id, int index, String checksum, InputStream inputStream)
+      throws InternalException, ExternalException {
+    return chunkedImageUploadStore.putChunk(id, index, checksum, inputStream);
+  }
+
+  public void deleteUpload(String id) throws InternalException, ExternalException {
+    chunkedImageUploadStore.delete(id);
+  }
+
+  /**
+   * Create the image from the chunks of an upload. The upload is claimed first, so that concurrent commits of it
+   * cannot create two images, and a commit repeated after one succeeded returns the task of that one. The chunks are
+   * kept when the image upload fails, so that the commit can be retried.
+   * <p>
+   * A READY image with the same name and replication type which was committed from identical chunks is reused
+   * instead of uploading the chunks again. The chunks are identified by their verified checksums, so nothing the
+   * client claims about the content is trusted, and they are read once, by the upload itself.
+   */
+  public Task commitUpload(String id) throws InternalException, ExternalException {
+    String committedTaskId = chunkedImageUploadStore.startCommit(id);
+    if (committedTaskId != null) {
+      return taskBackend.getApiRepresentation(committedTaskId);
+    }
+
+    Task task = null;
+    try {
+      ImageUpload imageUpload = chunkedImageUploadStore.get(id);
+      String uploadDigest = chunkedImageUploadStore.getUploadDigest(id);
+      ImageEntity existing = imageBackend.findReadyImageByUploadDigest(uploadDigest, imageUpload.getName(),
+          imageUpload.getReplicationType());
+      if (existing != null) {
+        logger.info("Reusing image {} with upload digest {} for upload {}", existing.getId(), uploadDigest, id);
+        task = taskBackend.getApiRepresentation(taskBackend.createCompletedTask(existing, Operation.CREATE_IMAGE));
+        return task;
+      }
+
+      try (InputStream inputStream = chunkedImageUploadStore.openContent(id)) {
+        task = create(inputStream, imageUpload.getName(), imageUpload.getReplicationType());
+      } catch (IOException e) {
+        throw new InternalException("Failed to read chunks of image upload " + id, e);
+      }
+      if (!task.getState().equals(TaskEntity.State.ERROR.toString())) {
+        imageBackend.updateUploadDigest(task.getEntity().getId(), uploadDigest);
+      }
+    } finally {
+      if (task == null || task.getState().equals(TaskEntity.State.ERROR.toString())) {
+        chunkedImageUploadStore.abortCommit(id);
+      } else {
+        chunkedImageUploadStore.finishCommit(id, task.getId());
+      }
+    }
+
+    return task;
+  }
+
   public Task delete(String id) throws ExternalException {
     TaskEntity taskEntity = imageBackend.prepareImageDelete(id);
     Task task = taskBackend.getApiRepresentation(taskEntity);
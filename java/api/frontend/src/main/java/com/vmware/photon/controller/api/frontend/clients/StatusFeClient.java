@@ -15,6 +15,7 @@ package com.vmware.photon.controller.api.frontend.clients;
 
 import com.vmware.photon.controller.api.frontend.BackendTaskExecutor;
 import com.vmware.photon.controller.api.frontend.ScheduledTaskExecutor;
+import com.vmware.photon.controller.api.frontend.StatusProbeExecutor;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.clients.status.StatusFeClientUtils;
 import com.vmware.photon.controller.api.frontend.clients.status.StatusProviderFactory;
@@ -49,60 +50,181 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
 /**
  * Frontend client used by {@link StatusResource}.
+ *
+ * The component instances are probed in the background, every instance on its own with a timeout, through status
+ * providers which are kept for as long as the instance stays in the node group. Status requests are served from the
+ * latest snapshot of the probes, unless a fresh one is asked for.
+ *
+ * The probes run on their own executor, so that instances which do not answer hold neither the backend workers nor
+ * the shared scheduler. A probe which times out is cancelled, which interrupts the thread waiting for the instance.
  */
 @Singleton
 public class StatusFeClient {
 
   private static final Logger logger = LoggerFactory.getLogger(StatusFeClient.class);
-  private static final long GET_STATUS_TIMEOUT_SECONDS = 45;
   private final Set<Component> components;
   private final Map<Component, StatusProviderFactory> statusProviderFactories;
+  private final Map<Component, Map<InetSocketAddress, StatusProvider>> statusProviders;
   private final ExecutorService executor;
+  private final ExecutorService probeExecutor;
   private final ScheduledExecutorService scheduledExecutorService;
   private final ServiceHost serviceHost;
   private final ApiFeXenonRestClient xenonClient;
+  private final long refreshIntervalMillis;
+  private final long probeTimeoutMillis;
+
+  private volatile SystemStatus snapshot;
+  private CompletableFuture<SystemStatus> refreshInProgress;
+  private ScheduledFuture<?> scheduledRefresh;
 
   /**
-   * Creating StatusFeClient with backendTaskExecutor, scheduledTaskExecutor, statusConfig, serviceHost and xenonClient.
+   * Creating StatusFeClient with backendTaskExecutor, statusProbeExecutor, scheduledTaskExecutor, statusConfig,
+   * serviceHost and xenonClient.
    */
   @Inject
   public StatusFeClient(
       @BackendTaskExecutor ExecutorService executor,
+      @StatusProbeExecutor ExecutorService probeExecutor,
       @ScheduledTaskExecutor ScheduledExecutorService scheduledExecutorService,
       StatusConfig statusConfig,
       ServiceHost serviceHost,
       ApiFeXenonRestClient xenonClient) {
     this.executor = executor;
+    this.probeExecutor = probeExecutor;
     this.scheduledExecutorService = scheduledExecutorService;
     this.serviceHost = serviceHost;
     this.components = statusConfig.getComponents();
+    this.refreshIntervalMillis = statusConfig.getRefreshInterval().toMilliseconds();
+    this.probeTimeoutMillis = statusConfig.getProbeTimeout().toMilliseconds();
     this.xenonClient = xenonClient;
     this.xenonClient.start();
 
     statusProviderFactories = Maps.newEnumMap(Component.class);
     statusProviderFactories.put(Component.PHOTON_CONTROLLER,
         new XenonStatusProviderFactory(new StaticServerSet(), this.executor, scheduledExecutorService, serviceHost));
+    statusProviders = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the latest snapshot of the system status. The first call probes the components and starts the
+   * background probes which keep the snapshot up to date.
+   */
+  public SystemStatus getSystemStatus() throws InternalException {
+    return getSystemStatus(false);
+  }
+
+  /**
+   * Returns the system status.
+   *
+   * @param fresh when true the components are probed before returning, otherwise the latest snapshot is returned
+   */
+  public SystemStatus getSystemStatus(boolean fresh) throws InternalException {
+    SystemStatus systemStatus = snapshot;
+    if (fresh || systemStatus == null) {
+      systemStatus = awaitRefresh();
+    }
+
+    scheduleRefresh();
+    logger.info("Returning system status {}", systemStatus);
+    return systemStatus;
+  }
+
+  @VisibleForTesting
+  protected Map<Component, StatusProviderFactory> getStatusProviderFactories() {
+    return statusProviderFactories;
+  }
+
+  private synchronized void scheduleRefresh() {
+    if (scheduledRefresh != null) {
+      return;
+    }
+
+    // only starts the refresh, the scheduler thread does not wait for the probes
+    scheduledRefresh = scheduledExecutorService.scheduleWithFixedDelay(
+        () -> refresh().whenComplete((systemStatus, t) -> {
+          if (t != null) {
+            logger.warn("Background refresh of system status failed", t);
+          }
+        }),
+        refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private SystemStatus awaitRefresh() throws InternalException {
+    try {
+      return refresh().get();
+    } catch (InterruptedException ex) {
+      logger.error("InterruptedException when waiting for system status", ex);
+      Thread.currentThread().interrupt();
+      throw new InternalException(ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof InternalException) {
+        throw (InternalException) ex.getCause();
+      }
+      throw new InternalException(ex.getCause());
+    }
+  }
+
+  /**
+   * Probes all the component instances, unless a probe is in progress already, in which case its outcome is shared.
+   * A successful probe replaces the snapshot.
+   */
+  private synchronized CompletableFuture<SystemStatus> refresh() {
+    if (refreshInProgress != null) {
+      return refreshInProgress;
+    }
+
+    CompletableFuture<SystemStatus> refresh;
+    try {
+      // looking up the node group blocks, so it is done on the probe executor as well
+      refresh = CompletableFuture.supplyAsync(() -> {
+        try {
+          return probeComponents();
+        } catch (InternalException e) {
+          throw new CompletionException(e);
+        }
+      }, probeExecutor).thenCompose(probes -> probes);
+    } catch (Throwable t) {
+      refresh = new CompletableFuture<>();
+      refresh.completeExceptionally(t);
+    }
+
+    refreshInProgress = refresh;
+    refresh.whenComplete((systemStatus, t) -> {
+      synchronized (this) {
+        refreshInProgress = null;
+      }
+      if (systemStatus != null) {
+        snapshot = systemStatus;
+      }
+    });
+    return refresh;
   }
 
   /**
-   * Get system status by the following steps:
+   * Probes the system status by the following steps:
    * 1. Get addresses of all nodes in the default xenon node group.
    * 2. For each node, query xenon service to find status and build info.
    * 3. Compute overall system status from states of all nodes.
    */
-  public SystemStatus getSystemStatus() throws InternalException {
+  private CompletableFuture<SystemStatus> probeComponents() throws InternalException {
     logger.info("Getting system status");
 
     // Get all the nodes in the node group
@@ -120,68 +242,135 @@ public class StatusFeClient {
       throw new InternalException(ex);
     }
 
-    SystemStatus systemStatus = new SystemStatus();
-    List<Callable<Status>> componentStatuses = new ArrayList<>();
-    // iterating over all the components to get their statuses
+    List<ComponentStatus> componentStatuses = new ArrayList<>();
+    List<List<CompletableFuture<ComponentInstance>>> instanceProbes = new ArrayList<>();
+    // iterating over all the components to probe their instances
     for (Component component : components) {
-      // iterating over each server in server set for each component to get status for that instance
       ComponentStatus componentStatus = new ComponentStatusBuilder().component(component).build();
       Set<InetSocketAddress> servers = statusProviderFactories.get(component).getServerSet().getServers();
+      Map<InetSocketAddress, StatusProvider> providers =
+          statusProviders.computeIfAbsent(component, c -> new ConcurrentHashMap<>());
+      providers.keySet().retainAll(servers);
 
+      List<CompletableFuture<ComponentInstance>> probes = new ArrayList<>();
       if (servers.isEmpty()) {
         componentStatus.setStatus(StatusType.UNREACHABLE);
         componentStatus.setMessage("Empty ServerSet");
       } else {
         for (InetSocketAddress server : servers) {
-          StatusProvider client = statusProviderFactories.get(component).create(server);
-          ComponentInstance instance = new ComponentInstanceBuilder()
-              .status(StatusType.UNREACHABLE).address(server.getHostString()).build();
-          componentStatus.addInstance(instance);
-          Callable<Status> callable = () -> {
-            try {
-              Status status = client.getStatus();
-              instance.setStats(status.getStats());
-              instance.setStatus(status.getType());
-              instance.setMessage(status.getMessage());
-              instance.setBuildInfo(status.getBuild_info());
-              return status;
-            } catch (Exception e) {
-              logger.error("client.getStatus() call failed with Exception: %s", e);
-              throw e;
-            }
-          };
-          componentStatuses.add(callable);
+          probes.add(probeInstance(component, server, providers));
         }
       }
 
-      systemStatus.getComponents().add(componentStatus);
+      componentStatuses.add(componentStatus);
+      instanceProbes.add(probes);
     }
 
+    CompletableFuture<?>[] allProbes = instanceProbes.stream()
+        .flatMap(List::stream)
+        .toArray(CompletableFuture<?>[]::new);
+
+    return CompletableFuture.allOf(allProbes).thenApply(ignored -> {
+      SystemStatus systemStatus = new SystemStatus();
+      for (int i = 0; i < componentStatuses.size(); i++) {
+        ComponentStatus componentStatus = componentStatuses.get(i);
+        instanceProbes.get(i).forEach(probe -> componentStatus.addInstance(probe.join()));
+        systemStatus.getComponents().add(componentStatus);
+      }
+
+      computeSingleComponentStatus(systemStatus);
+
+      StatusType overall = systemStatus.getComponents().stream()
+          .map(c -> c.getStatus())
+          .max(Comparator.comparing(statusType -> StatusFeClientUtils.STATUS_MAP.get(statusType)))
+          .get();
+
+      if (overall == StatusType.UNREACHABLE) {
+        overall = StatusType.ERROR;
+      }
+      systemStatus.setStatus(overall);
+      return systemStatus;
+    });
+  }
+
+  /**
+   * Probes a single component instance. An instance which cannot be asked, fails to answer or does not answer within
+   * the probe timeout is reported as unreachable. A probe the executor rejects fails the refresh instead, as it says
+   * nothing about the instance.
+   */
+  private CompletableFuture<ComponentInstance> probeInstance(
+      Component component,
+      InetSocketAddress server,
+      Map<InetSocketAddress, StatusProvider> providers) {
+    CompletableFuture<ComponentInstance> probe = new CompletableFuture<>();
+    long startTime = System.nanoTime();
+
+    StatusProvider client;
     try {
-      executor.invokeAll(componentStatuses, GET_STATUS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-    } catch (InterruptedException ex) {
-      logger.error("InterruptedException when calling get_status in parallel", ex);
-      throw new InternalException(ex);
+      client = getStatusProvider(component, server, providers);
+    } catch (InternalException e) {
+      logger.error("Failed to create status provider for {}", server, e);
+      probe.complete(buildUnreachableInstance(server, e.getMessage(), startTime));
+      return probe;
     }
 
-    computeSingleComponentStatus(systemStatus);
+    Future<?> task = probeExecutor.submit(() -> {
+      try {
+        Status status = client.getStatus();
+        probe.complete(new ComponentInstanceBuilder()
+            .address(server.getHostString())
+            .status(status.getType())
+            .message(status.getMessage())
+            .stats(status.getStats())
+            .buildInfo(status.getBuild_info())
+            .lastCheckedTime(new Date())
+            .latencyMillis(getElapsedMillis(startTime))
+            .build());
+      } catch (Throwable t) {
+        if (!probe.isDone()) {
+          logger.error("client.getStatus() call to {} failed", server, t);
+          probe.complete(buildUnreachableInstance(server, t.getMessage(), startTime));
+        }
+      }
+    });
 
-    StatusType overall = systemStatus.getComponents().stream()
-        .map(c -> c.getStatus())
-        .max(Comparator.comparing(statusType -> StatusFeClientUtils.STATUS_MAP.get(statusType)))
-        .get();
+    ScheduledFuture<?> timer = scheduledExecutorService.schedule(() -> {
+      if (probe.complete(buildUnreachableInstance(server,
+          String.format("Status probe timed out after %dms", probeTimeoutMillis), startTime))) {
+        task.cancel(true);
+      }
+    }, probeTimeoutMillis, TimeUnit.MILLISECONDS);
+    probe.whenComplete((instance, t) -> timer.cancel(false));
+    return probe;
+  }
 
-    if (overall == StatusType.UNREACHABLE) {
-      overall = StatusType.ERROR;
+  private StatusProvider getStatusProvider(
+      Component component,
+      InetSocketAddress server,
+      Map<InetSocketAddress, StatusProvider> providers) throws InternalException {
+    StatusProvider provider = providers.get(server);
+    if (provider == null) {
+      provider = statusProviderFactories.get(component).create(server);
+      StatusProvider existing = providers.putIfAbsent(server, provider);
+      if (existing != null) {
+        provider = existing;
+      }
     }
-    systemStatus.setStatus(overall);
-    logger.info("Returning system status {}", systemStatus);
-    return systemStatus;
+    return provider;
   }
 
-  @VisibleForTesting
-  protected Map<Component, StatusProviderFactory> getStatusProviderFactories() {
-    return statusProviderFactories;
+  private static ComponentInstance buildUnreachableInstance(InetSocketAddress server, String message, long startTime) {
+    return new ComponentInstanceBuilder()
+        .address(server.getHostString())
+        .status(StatusType.UNREACHABLE)
+        .message(message)
+        .lastCheckedTime(new Date())
+        .latencyMillis(getElapsedMillis(startTime))
+        .build();
+  }
+
+  private static long getElapsedMillis(long startTime) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
   }
 
   private void computeSingleComponentStatus(SystemStatus systemStatus) {
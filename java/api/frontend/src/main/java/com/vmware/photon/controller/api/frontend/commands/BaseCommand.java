@@ -18,6 +18,7 @@ import com.vmware.photon.controller.api.frontend.exceptions.external.ConcurrentT
 import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoundException;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 
+import com.google.common.base.Throwables;
 import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +26,8 @@ import org.slf4j.MDC;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Base class for all Commands. From this class are derived both TaskCommand and StepCommand.
@@ -46,33 +49,102 @@ public abstract class BaseCommand implements Runnable {
 
   @Override
   public void run() {
-    if (loggerContextMap != null) {
-      MDC.setContextMap(loggerContextMap);
-      MDC.put("activity", " [Activity: " + activityId + "]");
+    try {
+      runAsync().join();
+    } catch (CompletionException e) {
+      throw Throwables.propagate(e.getCause());
     }
+  }
+
+  /**
+   * Runs the command and returns a future which completes once the command has been marked as done or failed and
+   * has been cleaned up. Commands which wait on remote calls override {@link #executeAsync()}, so that the calling
+   * thread is released while the calls are in flight; all other commands run to completion on the calling thread.
+   *
+   * @return future of the command, which only completes exceptionally if marking the command as failed fails
+   */
+  public CompletableFuture<Void> runAsync() {
+    setLoggerContext();
 
     StopWatch stopwatch = new StopWatch();
     stopwatch.start();
+
+    CompletableFuture<Void> execution;
     try {
       markAsStarted();
-      execute();
-      markAsDone();
+      execution = superviseExecution(executeAsync());
     } catch (Throwable t) {
+      execution = failedFuture(t);
+    }
+
+    return execution.handle((ignored, failure) -> {
+      setLoggerContext();
       try {
-        logger.error("Command execution failed with exception", t);
-        markAsFailed(t);
-      } catch (TaskNotFoundException e) {
-        logger.warn("Could not find task to mark as failed, TaskId=" + e.getTaskId(), e);
-      }
-    } finally {
-      try {
-        cleanup();
+        if (failure != null) {
+          throw unwrap(failure);
+        }
+        markAsDone();
       } catch (Throwable t) {
-        logger.warn("Error cleaning up Command", t);
+        try {
+          logger.error("Command execution failed with exception", t);
+          markAsFailed(t);
+        } catch (TaskNotFoundException e) {
+          logger.warn("Could not find task to mark as failed, TaskId=" + e.getTaskId(), e);
+        }
+      } finally {
+        try {
+          cleanup();
+        } catch (Throwable t) {
+          logger.warn("Error cleaning up Command", t);
+        }
+
+        stopwatch.stop();
+        logger.info("Processed in {}ms", stopwatch.getTime());
       }
+      return null;
+    });
+  }
 
-      stopwatch.stop();
-      logger.info("Processed in {}ms", stopwatch.getTime());
+  /**
+   * Returns a future of the execution of the command. By default the command is executed synchronously by
+   * {@link #execute()}, and the returned future is already completed.
+   */
+  protected CompletableFuture<Void> executeAsync() {
+    try {
+      execute();
+      return CompletableFuture.completedFuture(null);
+    } catch (Throwable t) {
+      return failedFuture(t);
+    }
+  }
+
+  /**
+   * Gives subclasses a chance to watch over the execution, e.g. to time it out or to cancel it.
+   *
+   * @param execution future returned by {@link #executeAsync()}
+   * @return future which the outcome of the command is taken from
+   */
+  protected CompletableFuture<Void> superviseExecution(CompletableFuture<Void> execution) {
+    return execution;
+  }
+
+  protected static <T> CompletableFuture<T> failedFuture(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
+
+  protected static Throwable unwrap(Throwable t) {
+    if (t instanceof CompletionException && t.getCause() != null) {
+      return t.getCause();
+    }
+    return t;
+  }
+
+  private void setLoggerContext() {
+    if (loggerContextMap != null) {
+      MDC.setContextMap(loggerContextMap);
+      MDC.put("activity", " [Activity: " + activityId + "]");
     }
   }
 
@@ -74,7 +74,11 @@ public class ImageUploadStepCmd extends StepCommand {
       ImageLoader.Result result = getImageLoader().uploadImage(imageEntity, inputStream);
       imageBackend.updateSettings(imageEntity, result.imageSettings);
       imageBackend.updateSize(imageEntity, result.imageSize);
+      imageBackend.updateContentDigest(imageEntity, result.contentDigest);
       imageBackend.updateImageDatastore(imageEntity.getId(), imageStore.getDatastore());
+      for (String replicatedDatastore : result.replicatedDatastores) {
+        imageBackend.updateImageDatastore(imageEntity.getId(), replicatedDatastore);
+      }
     } catch (VmdkFormatException e) {
       imageBackend.updateState(imageEntity, ImageState.ERROR);
       throw new InvalidVmdkFormatException(e.getMessage());
@@ -92,8 +96,12 @@ public class ImageUploadStepCmd extends StepCommand {
   }
 
   @VisibleForTesting
-  protected ImageLoader getImageLoader() throws InternalException {
-    return new ImageLoader(imageStore);
+  protected ImageLoader getImageLoader() throws InternalException, ExternalException {
+    if (config.getUploadReplicaCount() <= 0) {
+      return new ImageLoader(imageStore);
+    }
+
+    return new ImageLoader(imageStore, imageStore.getReplicaImageStores(config.getUploadReplicaCount()));
   }
 
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.commands.steps;
+
+import com.vmware.photon.controller.common.clients.exceptions.RpcException;
+import com.vmware.photon.controller.resource.gen.Disk;
+import com.vmware.photon.controller.resource.gen.Resource;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.photon.controller.resource.gen.ResourcePlacement;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementList;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementType;
+import com.vmware.photon.controller.rootscheduler.xenon.task.PlacementTask;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces the placements of identical VMs into gang placements.
+ * <p>
+ * Cluster creates and bulk VM creates reserve many identical VMs at once. Placed one by one, each of them samples and
+ * scores hosts on its own and they all race for the same best hosts, so their reservations fail with stale
+ * generations. While the placement of a VM is in flight, the placements of identical VMs are held back and then sent
+ * as a single gang placement (see {@link PlacementTask#placementCount}), which scores the hosts once and returns a
+ * distinct host for each VM. A placement with nothing in flight is sent right away, so lone VM creates are not
+ * delayed.
+ * <p>
+ * When a gang placement fails, for instance because fewer hosts than VMs accept it, each of its VMs is placed on its
+ * own instead. Held back placements wait at most {@link #DEFAULT_MAX_WAIT_MILLIS} for each of the placement in flight
+ * and the gang placement; a VM whose wait runs out or is interrupted leaves the batch and is placed on its own (or its
+ * step fails on the interruption), so a stalled placement never holds the worker threads of the batch.
+ */
+@Singleton
+public class PlacementBatcher {
+
+  private static final Logger logger = LoggerFactory.getLogger(PlacementBatcher.class);
+
+  /**
+   * How long a held back placement waits for its turn, and then for the gang placement.
+   */
+  public static final long DEFAULT_MAX_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * Sends a placement request to the scheduler.
+   */
+  public interface Placer {
+    /**
+     * Places placementCount copies of the resource, spread over distinct hosts.
+     *
+     * @return the successful result of the placement.
+     */
+    PlacementTask place(Resource resource, int placementCount) throws RpcException;
+  }
+
+  // The shapes of the resources with a placement in flight, and the batches waiting for it to finish
+  private final Set<Resource> inFlightShapes = new HashSet<>();
+  private final Map<Resource, Batch> pendingBatches = new HashMap<>();
+
+  private final long maxWaitMillis;
+
+  public PlacementBatcher() {
+    this(DEFAULT_MAX_WAIT_MILLIS);
+  }
+
+  @VisibleForTesting
+  PlacementBatcher(long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * Places the resource, in a gang placement with identical resources if a placement of one of them is in flight.
+   *
+   * @return the placement of the resource, with the placement list and the alternate candidates of its host.
+   */
+  public PlacementTask place(Resource resource, Placer placer) throws RpcException, InterruptedException {
+    Resource shape = getShape(resource);
+    if (shape == null) {
+      return placer.place(resource, 1);
+    }
+
+    Batch batch = null;
+    int index = 0;
+    synchronized (this) {
+      if (!inFlightShapes.add(shape)) {
+        batch = pendingBatches.computeIfAbsent(shape, key -> new Batch());
+        index = batch.resources.size();
+        batch.resources.add(resource);
+      }
+    }
+
+    if (batch == null) {
+      try {
+        return placer.place(resource, 1);
+      } finally {
+        startNextBatch(shape);
+      }
+    }
+
+    onJoined(resource, index);
+
+    if (index == 0) {
+      try {
+        batch.turn.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException | InterruptedException e) {
+        abandon(shape, batch, e);
+        if (e instanceof InterruptedException) {
+          throw (InterruptedException) e;
+        }
+        return placer.place(resource, 1);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e);
+      }
+
+      try {
+        if (batch.resources.size() == 1) {
+          return placer.place(resource, 1);
+        }
+        batch.result.complete(placeGang(batch.resources, placer));
+      } catch (Throwable t) {
+        batch.result.completeExceptionally(t);
+      } finally {
+        startNextBatch(shape);
+      }
+    }
+
+    try {
+      return batch.result.get(2 * maxWaitMillis, TimeUnit.MILLISECONDS).get(index);
+    } catch (ExecutionException e) {
+      logger.info("Gang placement of {} resources failed, placing resource on its own: {}",
+          batch.resources.size(), e.getCause().getMessage());
+      return placer.place(resource, 1);
+    } catch (TimeoutException e) {
+      logger.warn("Gang placement did not finish within {} ms, placing resource on its own", 2 * maxWaitMillis);
+      return placer.place(resource, 1);
+    }
+  }
+
+  /**
+   * Called once a resource joined a batch, at the given index. The resource at index 0 places the batch.
+   */
+  @VisibleForTesting
+  void onJoined(Resource resource, int index) {
+  }
+
+  /**
+   * Gives up a batch whose first resource stopped waiting for its turn. The other resources of the batch are placed
+   * on their own, and the turn is passed on to the next batch once it comes so that the shape is still released.
+   */
+  private void abandon(Resource shape, Batch batch, Exception cause) {
+    logger.warn("Placement in flight did not finish within {} ms, placing {} resources on their own",
+        maxWaitMillis, batch.resources.size());
+    batch.result.completeExceptionally(cause);
+    batch.turn.thenRun(() -> startNextBatch(shape));
+  }
+
+  /**
+   * Lets the batch waiting for the placement of the shape to finish start, if there is one.
+   */
+  private void startNextBatch(Resource shape) {
+    Batch next;
+    synchronized (this) {
+      next = pendingBatches.remove(shape);
+      if (next == null) {
+        inFlightShapes.remove(shape);
+      }
+    }
+    if (next != null) {
+      next.turn.complete(null);
+    }
+  }
+
+  /**
+   * Places the resources of a batch in one gang placement of the first one, and maps the placement of each host to
+   * the ids of the resource placed on it.
+   */
+  private static List<PlacementTask> placeGang(List<Resource> resources, Placer placer) throws RpcException {
+    Resource gangResource = resources.get(0);
+    PlacementTask response = placer.place(gangResource, resources.size());
+    logger.info("Gang placed {} resources on {} hosts", resources.size(), response.placements.size());
+
+    List<PlacementTask> placements = new ArrayList<>();
+    for (int i = 0; i < resources.size(); i++) {
+      Map<String, String> resourceIds = getResourceIds(gangResource, resources.get(i));
+      PlacementTask.Candidate candidate = response.placements.get(i);
+      PlacementTask placement = new PlacementTask();
+      placement.resultCode = response.resultCode;
+      placement.serverAddress = candidate.serverAddress;
+      placement.generation = candidate.generation;
+      placement.resource = new Resource();
+      placement.resource.setPlacement_list(mapResourceIds(candidate.placementList, resourceIds));
+      placement.alternateCandidates = new ArrayList<>();
+      if (response.alternateCandidates != null) {
+        for (PlacementTask.Candidate alternate : response.alternateCandidates) {
+          PlacementTask.Candidate mappedAlternate = new PlacementTask.Candidate();
+          mappedAlternate.serverAddress = alternate.serverAddress;
+          mappedAlternate.generation = alternate.generation;
+          mappedAlternate.placementList = mapResourceIds(alternate.placementList, resourceIds);
+          placement.alternateCandidates.add(mappedAlternate);
+        }
+      }
+      placements.add(placement);
+    }
+    return placements;
+  }
+
+  /**
+   * Returns the resource without the ids of the VM and its disks, which identical resources share, or null if the
+   * resource cannot be placed in a gang. Only VMs without VM affinity constraints can, since the scheduler does not
+   * check those constraints between the VMs of a gang.
+   */
+  private static Resource getShape(Resource resource) {
+    if (!resource.isSetVm() || resource.isSetDisks()) {
+      return null;
+    }
+    if (resource.getVm().isSetResource_constraints()) {
+      for (ResourceConstraint constraint : resource.getVm().getResource_constraints()) {
+        if (constraint.getType() == ResourceConstraintType.VM_AFFINITY
+            || constraint.getType() == ResourceConstraintType.VM_ANTI_AFFINITY) {
+          return null;
+        }
+      }
+    }
+
+    Resource shape = resource.deepCopy();
+    shape.unsetPlacement_list();
+    shape.getVm().unsetId();
+    if (shape.getVm().isSetDisks()) {
+      for (Disk disk : shape.getVm().getDisks()) {
+        disk.unsetId();
+      }
+    }
+    return shape;
+  }
+
+  /**
+   * Maps the ids of the VM and disks of the gang resource to the ids of an identical resource. Identical resources
+   * list their disks in the same order.
+   */
+  private static Map<String, String> getResourceIds(Resource gangResource, Resource resource) {
+    Map<String, String> resourceIds = new HashMap<>();
+    resourceIds.put(gangResource.getVm().getId(), resource.getVm().getId());
+    if (gangResource.getVm().isSetDisks()) {
+      for (int i = 0; i < gangResource.getVm().getDisksSize(); i++) {
+        resourceIds.put(gangResource.getVm().getDisks().get(i).getId(), resource.getVm().getDisks().get(i).getId());
+      }
+    }
+    return resourceIds;
+  }
+
+  private static ResourcePlacementList mapResourceIds(ResourcePlacementList placementList,
+                                                      Map<String, String> resourceIds) {
+    if (placementList == null) {
+      return null;
+    }
+    ResourcePlacementList mappedList = placementList.deepCopy();
+    if (mappedList.isSetPlacements()) {
+      for (ResourcePlacement placement : mappedList.getPlacements()) {
+        if ((placement.getType() == ResourcePlacementType.VM || placement.getType() == ResourcePlacementType.DISK)
+            && resourceIds.containsKey(placement.getResource_id())) {
+          placement.setResource_id(resourceIds.get(placement.getResource_id()));
+        }
+      }
+    }
+    return mappedList;
+  }
+
+  /**
+   * The identical resources waiting to be placed together. The first one places the batch once its turn comes.
+   */
+  private static class Batch {
+    final List<Resource> resources = new ArrayList<>();
+    final CompletableFuture<Void> turn = new CompletableFuture<>();
+    final CompletableFuture<List<PlacementTask>> result = new CompletableFuture<>();
+  }
+}
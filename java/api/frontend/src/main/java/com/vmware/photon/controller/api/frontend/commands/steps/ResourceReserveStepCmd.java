@@ -110,6 +110,9 @@ public class ResourceReserveStepCmd extends StepCommand {
 
   private static final String DISK_KIND = "disk";
   private static final String VM_KIND = "vm";
+  private static final String VM_ANTI_AFFINITY_KIND = "vmAntiAffinity";
+  private static final String VM_SOFT_AFFINITY_KIND = "vmSoftAffinity";
+  private static final String VM_SOFT_ANTI_AFFINITY_KIND = "vmSoftAntiAffinity";
   private static final String HOST_KIND = "host";
   private static final String DATASTORE_KIND = "datastore";
   private static final String PORT_GROUP_KIND = "portGroup";
@@ -120,6 +123,7 @@ public class ResourceReserveStepCmd extends StepCommand {
   private final VmBackend vmBackend;
   private final NetworkBackend networkBackend;
   private final FlavorBackend flavorBackend;
+  private final PlacementBatcher placementBatcher;
   private InfrastructureEntity infrastructureEntity;
   private final Boolean useVirtualNetwork;
 
@@ -130,6 +134,7 @@ public class ResourceReserveStepCmd extends StepCommand {
                                 VmBackend vmBackend,
                                 NetworkBackend networkBackend,
                                 FlavorBackend flavorBackend,
+                                PlacementBatcher placementBatcher,
                                 Boolean useVirtualNetwork) {
     super(taskCommand, stepBackend, step);
 
@@ -137,6 +142,7 @@ public class ResourceReserveStepCmd extends StepCommand {
     this.vmBackend = vmBackend;
     this.networkBackend = networkBackend;
     this.flavorBackend = flavorBackend;
+    this.placementBatcher = placementBatcher;
     this.useVirtualNetwork = useVirtualNetwork;
   }
 
@@ -290,6 +296,23 @@ public class ResourceReserveStepCmd extends StepCommand {
         resourceConstraint.setValues(constraintValues);
         break;
 
+      // VM localities are resolved by the scheduler to the hosts the VMs are on.
+      case VM_KIND:
+      case VM_SOFT_AFFINITY_KIND:
+        resourceConstraint.setType(ResourceConstraintType.VM_AFFINITY);
+        resourceConstraint.setSoft(VM_SOFT_AFFINITY_KIND.equals(localityEntity.getKind()));
+        constraintValues.add(localityEntity.getResourceId());
+        resourceConstraint.setValues(constraintValues);
+        break;
+
+      case VM_ANTI_AFFINITY_KIND:
+      case VM_SOFT_ANTI_AFFINITY_KIND:
+        resourceConstraint.setType(ResourceConstraintType.VM_ANTI_AFFINITY);
+        resourceConstraint.setSoft(VM_SOFT_ANTI_AFFINITY_KIND.equals(localityEntity.getKind()));
+        constraintValues.add(localityEntity.getResourceId());
+        resourceConstraint.setValues(constraintValues);
+        break;
+
       case HOST_KIND:
         logger.info("{} locality is not honored by root scheduler and is to be ignored when building the resource " +
             "constraints", localityEntity.getKind());
@@ -409,33 +432,19 @@ public class ResourceReserveStepCmd extends StepCommand {
 
     while (true) {
       try {
-        ReserveResponse reserveResponse;
-        int generation;
-
         // If the host ip is unknown a Xenon PlacementTask is created to send to the scheduler
         // to find a suitable host with the given resource requested.
         // If the host ip is known a Thrift PlaceRequest call is sent directly to the agent.
         if (targetHostIp == null) {
-          PlacementTask placementResponse = sendPlaceRequest(resource);
-          ServerAddress serverAddress = placementResponse.serverAddress;
-          String hostIp = serverAddress.getHost();
-          int port = serverAddress.getPort();
-          generation = placementResponse.generation;
-          resource.setPlacement_list(placementResponse.resource.getPlacement_list());
-          logger.info("placed resource, agent host ip: {}, port: {}", hostIp, port);
-          taskCommand.getHostClient().setIpAndPort(hostIp, port);
+          PlacementTask placementResponse = placementBatcher.place(resource, this::sendPlaceRequest);
+          return reserveOnCandidates(resource, placementResponse);
         } else {
           taskCommand.getHostClient().setHostIp(targetHostIp);
           PlaceResponse placeResponse = taskCommand.getHostClient().place(resource);
-          generation = placeResponse.getGeneration();
           resource.setPlacement_list(placeResponse.getPlacementList());
           logger.info("placed resource, host: {}", targetHostIp);
+          return reserve(resource, placeResponse.getGeneration());
         }
-
-        reserveResponse = taskCommand.getHostClient().reserve(resource, generation);
-        String reservation = checkNotNull(reserveResponse.getReservation());
-        logger.info("reserved resource, generation: {}, reservation: {}", generation, reservation);
-        return reservation;
       } catch (NoSuchResourceException e) {
         logger.error("reserve resource failed: {}, {}", ErrorCode.NO_SUCH_RESOURCE, e.getMessage());
         throw new com.vmware.photon.controller.api.frontend.exceptions.external.NoSuchResourceException();
@@ -468,19 +477,71 @@ public class ResourceReserveStepCmd extends StepCommand {
   }
 
   /**
-   * Searches for a host that have the specified resources.
+   * Reserves the resource on the host selected by the scheduler. If that host reports a stale generation,
+   * the alternate candidates returned with the placement are tried in ranked order before giving up, so a
+   * new placement is only requested when every candidate has gone stale.
+   *
+   * @param resource the resources requested
+   * @param placementResponse the successful result of the placement
+   * @return the reservation id
+   * @throws StaleGenerationException if the reservation failed on every candidate
+   */
+  private String reserveOnCandidates(Resource resource, PlacementTask placementResponse)
+      throws InterruptedException, RpcException {
+    PlacementTask.Candidate selected = new PlacementTask.Candidate();
+    selected.serverAddress = placementResponse.serverAddress;
+    selected.generation = placementResponse.generation;
+    selected.placementList = placementResponse.resource.getPlacement_list();
+
+    List<PlacementTask.Candidate> candidates = new ArrayList<>();
+    candidates.add(selected);
+    if (placementResponse.alternateCandidates != null) {
+      candidates.addAll(placementResponse.alternateCandidates);
+    }
+
+    StaleGenerationException staleGenerationException = null;
+    for (PlacementTask.Candidate candidate : candidates) {
+      ServerAddress serverAddress = candidate.serverAddress;
+      resource.setPlacement_list(candidate.placementList);
+      logger.info("placed resource, agent host ip: {}, port: {}", serverAddress.getHost(), serverAddress.getPort());
+      taskCommand.getHostClient().setIpAndPort(serverAddress.getHost(), serverAddress.getPort());
+
+      try {
+        return reserve(resource, candidate.generation);
+      } catch (StaleGenerationException e) {
+        logger.info("stale generation on host {}, trying next candidate", serverAddress.getHost());
+        staleGenerationException = e;
+      }
+    }
+
+    throw staleGenerationException;
+  }
+
+  private String reserve(Resource resource, int generation) throws InterruptedException, RpcException {
+    ReserveResponse reserveResponse = taskCommand.getHostClient().reserve(resource, generation);
+    String reservation = checkNotNull(reserveResponse.getReservation());
+    logger.info("reserved resource, generation: {}, reservation: {}", generation, reservation);
+    return reservation;
+  }
+
+  /**
+   * Searches for hosts that have the specified resources. Identical resources placed at the same time are placed
+   * together, on distinct hosts (see {@link PlacementBatcher}).
    *
    * @param resource the resources requested
+   * @param placementCount the number of copies of the resources to place
    * @return the result of finding a host: either an OK response with the host address or an
    *             error of the failure.
    * @throws RpcException
    */
-  private PlacementTask sendPlaceRequest(Resource resource) throws RpcException {
+  private PlacementTask sendPlaceRequest(Resource resource, int placementCount) throws RpcException {
     PhotonControllerXenonRestClient photonControllerXenonRestClient =
         taskCommand.getPhotonControllerXenonRestClient();
     logger.info("place request resource: {}", resource);
     PlacementTask placementTask = new PlacementTask();
     placementTask.resource = resource;
+    placementTask.placementCount = placementCount;
+    placementTask.placementPolicy = PlacementTask.PlacementPolicy.SPREAD;
     placementTask.taskState = new TaskState();
     placementTask.taskState.isDirect = true;
 
@@ -22,6 +22,13 @@ import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoun
 import org.apache.commons.lang3.StringUtils;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * This class extends BaseCommand and represents a single activity. Its corresponding DB/API
  * object is a Step.
@@ -32,6 +39,10 @@ public abstract class StepCommand extends BaseCommand {
   protected final StepBackend stepBackend;
   protected final StepEntity step;
 
+  private volatile long timeoutMillis;
+  private volatile boolean cancelled;
+  private volatile CompletableFuture<Void> execution;
+
   protected StepCommand(TaskCommand taskCommand, StepBackend stepBackend, StepEntity step) {
     super(getActivityId(step));
     this.taskCommand = taskCommand;
@@ -59,6 +70,93 @@ public abstract class StepCommand extends BaseCommand {
     return activityId;
   }
 
+  public StepEntity getStep() {
+    return step;
+  }
+
+  /**
+   * Steps which neither depend on the outcome of the steps before them nor use the host client of the task can
+   * run in parallel with their neighbours which are parallelizable as well.
+   */
+  public boolean isParallelizable() {
+    return false;
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Sets the time the asynchronous execution of the step may take before the step fails. Zero means no timeout.
+   * Steps only time out if their task has a step timeout scheduler.
+   */
+  public void setExecutionTimeout(long timeout, TimeUnit unit) {
+    this.timeoutMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Fails the step with a {@link CancellationException} if its execution is in flight, or as soon as it starts if
+   * it has not started yet. The outcome of the remote calls the step is waiting on is ignored.
+   *
+   * @return true if the step was cancelled
+   */
+  public boolean cancel() {
+    cancelled = true;
+    CompletableFuture<Void> currentExecution = execution;
+    if (currentExecution == null) {
+      return true;
+    }
+
+    return currentExecution.completeExceptionally(newCancellationException());
+  }
+
+  /**
+   * Tells whether the step has failed, e.g. timed out, while its remote calls were still in flight. Continuations
+   * of those calls must not apply their outcome once the step is abandoned.
+   */
+  protected boolean isAbandoned() {
+    CompletableFuture<Void> currentExecution = execution;
+    return currentExecution != null && currentExecution.isDone();
+  }
+
+  @Override
+  protected CompletableFuture<Void> superviseExecution(CompletableFuture<Void> stepExecution) {
+    if (stepExecution.isDone()) {
+      return stepExecution;
+    }
+
+    CompletableFuture<Void> supervised = new CompletableFuture<>();
+    stepExecution.whenComplete((ignored, t) -> {
+      if (t == null) {
+        supervised.complete(null);
+      } else {
+        supervised.completeExceptionally(unwrap(t));
+      }
+    });
+
+    execution = supervised;
+    if (cancelled) {
+      supervised.completeExceptionally(newCancellationException());
+      return supervised;
+    }
+
+    long timeout = timeoutMillis;
+    ScheduledExecutorService timeoutScheduler = taskCommand.getStepTimeoutScheduler();
+    if (timeout > 0 && timeoutScheduler != null) {
+      ScheduledFuture<?> timer = timeoutScheduler.schedule(
+          () -> supervised.completeExceptionally(new TimeoutException(String.format("Step %s timed out after %dms",
+              step.getId(), timeout))),
+          timeout, TimeUnit.MILLISECONDS);
+      supervised.whenComplete((ignored, t) -> timer.cancel(false));
+    }
+
+    return supervised;
+  }
+
+  private CancellationException newCancellationException() {
+    return new CancellationException(String.format("Step %s was cancelled", step.getId()));
+  }
+
   @Override
   protected void markAsStarted() throws TaskNotFoundException {
     stepBackend.markStepAsStarted(step);
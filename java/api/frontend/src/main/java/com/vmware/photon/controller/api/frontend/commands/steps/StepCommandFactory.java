@@ -64,6 +64,7 @@ public class StepCommandFactory {
   private final TenantBackend tenantBackend;
   private final ProjectBackend projectBackend;
   private final NetworkHelper networkHelper;
+  private final PlacementBatcher placementBatcher;
   private final Boolean useVirtualNetwork;
 
   @Inject
@@ -85,6 +86,7 @@ public class StepCommandFactory {
                             TenantBackend tenantBackend,
                             ProjectBackend projectBackend,
                             NetworkHelper networkHelper,
+                            PlacementBatcher placementBatcher,
                             @Named("useVirtualNetwork") Boolean useVirtualNetwork) {
     this.stepBackend = stepBackend;
     this.entityLockBackend = entityLockBackend;
@@ -104,6 +106,7 @@ public class StepCommandFactory {
     this.tenantBackend = tenantBackend;
     this.projectBackend = projectBackend;
     this.networkHelper = networkHelper;
+    this.placementBatcher = placementBatcher;
     this.useVirtualNetwork = useVirtualNetwork;
   }
 
@@ -112,7 +115,7 @@ public class StepCommandFactory {
     switch (stepEntity.getOperation()) {
       case RESERVE_RESOURCE:
         return new ResourceReserveStepCmd(taskCommand, stepBackend, stepEntity, diskBackend, vmBackend,
-            networkBackend, flavorBackend, useVirtualNetwork);
+            networkBackend, flavorBackend, placementBatcher, useVirtualNetwork);
       case CREATE_DISK:
         return new DiskCreateStepCmd(taskCommand, stepBackend, stepEntity, diskBackend);
       case DELETE_DISK:
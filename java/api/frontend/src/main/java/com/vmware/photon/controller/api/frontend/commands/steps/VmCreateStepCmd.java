@@ -22,6 +22,7 @@ import com.vmware.photon.controller.api.frontend.entities.StepEntity;
 import com.vmware.photon.controller.api.frontend.entities.VmEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoundException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
 import com.vmware.photon.controller.api.frontend.utils.NetworkHelper;
 import com.vmware.photon.controller.api.model.DiskState;
@@ -42,6 +43,9 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * StepCommand for VM creation.
@@ -51,11 +55,17 @@ public class VmCreateStepCmd extends StepCommand {
   public static final String VM_LOCATION_ID = "vm-location-id";
 
   protected static final String PORT_GROUP_KIND = "portGroup";
+
+  /**
+   * Outlasts the create_vm timeout of the host client, so the step only times out if the reply of the agent is lost.
+   */
+  private static final long CREATE_VM_STEP_TIMEOUT_MINUTES = 125;
   private static Logger logger = LoggerFactory.getLogger(VmCreateStepCmd.class);
   private final VmBackend vmBackend;
   private final DiskBackend diskBackend;
   private final NetworkHelper networkHelper;
   private VmEntity vm;
+  private boolean vmMarkedAsFailed;
 
   public VmCreateStepCmd(TaskCommand taskCommand,
                          StepBackend stepBackend,
@@ -67,6 +77,7 @@ public class VmCreateStepCmd extends StepCommand {
     this.vmBackend = vmBackend;
     this.diskBackend = diskBackend;
     this.networkHelper = networkHelper;
+    setExecutionTimeout(CREATE_VM_STEP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
   }
 
   @Override
@@ -75,35 +86,75 @@ public class VmCreateStepCmd extends StepCommand {
     attachDisks(vm);
   }
 
+  /**
+   * Creates the VM without holding a thread while the agent creates it. The VM and its disks are updated on the
+   * continuation executor of the task once the agent has replied. A reply which arrives after the step has failed
+   * is ignored, the VM was put in ERROR when the step failed.
+   */
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    vm = getVmEntity();
+
+    CompletableFuture<CreateVmResponse> response;
+    try {
+      response = taskCommand.getHostClient().createVmAsync(taskCommand.getReservation(), vm.getEnvironment());
+    } catch (RpcException e) {
+      response = failedFuture(e);
+    }
+
+    return response.handleAsync((createVmResponse, failure) -> {
+      try {
+        if (isAbandoned()) {
+          logger.warn("Ignoring late reply of create_vm for VM {}, step {} has already failed", vm.getId(),
+              step.getId());
+          return null;
+        }
+
+        if (failure != null) {
+          throw unwrap(failure);
+        }
+
+        onVmCreated(createVmResponse);
+        attachDisks(vm);
+        return null;
+      } catch (Throwable t) {
+        onCreateVmFailed(t);
+        throw new CompletionException(t);
+      }
+    }, taskCommand.getContinuationExecutor());
+  }
+
   @Override
   protected void cleanup() {
   }
 
+  /**
+   * Whatever made the step fail, including a timeout or a cancellation while the agent was still creating the VM,
+   * the VM is put in ERROR unless that happened already.
+   */
+  @Override
+  protected void markAsFailed(Throwable t) throws TaskNotFoundException {
+    try {
+      super.markAsFailed(t);
+    } finally {
+      if (vm != null) {
+        onCreateVmFailed(t);
+      }
+    }
+  }
+
   @VisibleForTesting
   protected VmEntity createVm() throws ApiFeException, InterruptedException, RpcException {
     try {
-      List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
-      Preconditions.checkArgument(vmEntityList.size() == 1,
-          "There should be only 1 VM referenced by step %s", step.getId());
-      vm = vmEntityList.get(0);
+      vm = getVmEntity();
 
       CreateVmResponse response = taskCommand.getHostClient().createVm(
           taskCommand.getReservation(), vm.getEnvironment());
 
-      Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
-
-      vmBackend.updateState(vm, VmState.STOPPED,
-          taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
-          taskCommand.getHostClient().getHostIp(),
-          response.getVm().getDatastore().getId(),
-          response.getVm().getDatastore().getName(),
-          networkInfoList);
-
-      logger.info("created VM: {}", vm);
+      onVmCreated(response);
       return vm;
     } catch (RpcException e) {
-      logger.error("failed creating VM {}", vm.getId(), e);
-      vmBackend.updateState(vm, VmState.ERROR);
+      onCreateVmFailed(e);
       throw e;
     }
   }
@@ -121,6 +172,44 @@ public class VmCreateStepCmd extends StepCommand {
     }
   }
 
+  private VmEntity getVmEntity() {
+    List<VmEntity> vmEntityList = step.getTransientResourceEntities(Vm.KIND);
+    Preconditions.checkArgument(vmEntityList.size() == 1,
+        "There should be only 1 VM referenced by step %s", step.getId());
+    return vmEntityList.get(0);
+  }
+
+  private void onVmCreated(CreateVmResponse response) throws ApiFeException {
+    Map<String, VmService.NetworkInfo> networkInfoList = getNetworksFromCreateVMResponse(response.getNetwork_info());
+
+    vmBackend.updateState(vm, VmState.STOPPED,
+        taskCommand.lookupAgentId(taskCommand.getHostClient().getHostIp()),
+        taskCommand.getHostClient().getHostIp(),
+        response.getVm().getDatastore().getId(),
+        response.getVm().getDatastore().getName(),
+        networkInfoList);
+
+    logger.info("created VM: {}", vm);
+  }
+
+  /**
+   * Puts the VM in ERROR. A failure to do so is logged only, so that the failure of the creation is reported, and
+   * the VM is put in ERROR again when the step is marked as failed.
+   */
+  private synchronized void onCreateVmFailed(Throwable t) {
+    if (vmMarkedAsFailed) {
+      return;
+    }
+
+    logger.error("failed creating VM {}", vm.getId(), t);
+    try {
+      vmBackend.updateState(vm, VmState.ERROR);
+      vmMarkedAsFailed = true;
+    } catch (Throwable e) {
+      logger.error("failed to put VM {} in ERROR", vm.getId(), e);
+    }
+  }
+
   private  Map<String, VmService.NetworkInfo> getNetworksFromCreateVMResponse(List<VmNetworkInfo> agentNetworks)
           throws ExternalException {
     if (agentNetworks == null) {
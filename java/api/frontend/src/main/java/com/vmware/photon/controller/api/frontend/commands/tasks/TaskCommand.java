@@ -13,8 +13,11 @@
 
 package com.vmware.photon.controller.api.frontend.commands.tasks;
 
+import com.vmware.photon.controller.api.frontend.StepContinuationExecutor;
+import com.vmware.photon.controller.api.frontend.StepTimeoutScheduler;
 import com.vmware.photon.controller.api.frontend.backends.EntityLockBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
+import com.vmware.photon.controller.api.frontend.backends.VmHostDirectory;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.DeployerClient;
 import com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperClient;
@@ -35,6 +38,8 @@ import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotFoun
 import com.vmware.photon.controller.api.frontend.exceptions.external.VmNotFoundException;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmServiceFactory;
 import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
@@ -42,7 +47,9 @@ import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundExce
 import com.vmware.photon.controller.resource.gen.Resource;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import org.apache.commons.lang3.StringUtils;
@@ -51,11 +58,23 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * This class extends BaseCommand and represents a long running activity. Its corresponding DB/API
  * object is a Task.
+ * <p>
+ * Steps are chained as futures, so a step waiting on an agent call does not hold a worker thread. The worker
+ * which starts the task is released once such a step is in flight, and the task goes on with the thread which
+ * completes the call.
  */
 public class TaskCommand extends BaseCommand {
 
@@ -79,6 +98,18 @@ public class TaskCommand extends BaseCommand {
   private com.vmware.photon.controller.api.frontend.backends.clients.HousekeeperClient housekeeperXenonClient;
   private EntityLockBackend entityLockBackend;
 
+  @Inject(optional = true)
+  @StepContinuationExecutor
+  private ExecutorService continuationExecutor;
+  @Inject(optional = true)
+  @StepTimeoutScheduler
+  private ScheduledExecutorService stepTimeoutScheduler;
+  @Inject(optional = true)
+  private VmHostDirectory vmHostDirectory;
+  private final Set<StepCommand> runningSteps = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+  private volatile CompletableFuture<Void> stepsExecution;
+
   @Inject
   public TaskCommand(
       ApiFeXenonRestClient xenonClient,
@@ -102,22 +133,167 @@ public class TaskCommand extends BaseCommand {
     this.entityLockBackend = entityLockBackend;
   }
 
+  /**
+   * Starts the task. Once the running steps wait on remote calls this method returns, and the task is completed
+   * by the threads which complete the calls.
+   */
+  @Override
+  public void run() {
+    runAsync().whenComplete((ignored, t) -> {
+      if (t != null) {
+        logger.error("Task {} did not complete", getActivityId(), unwrap(t));
+      }
+    });
+  }
+
+  /**
+   * Runs the queued steps in order. Consecutive parallelizable steps run together, and the next step starts once
+   * the steps before it have completed. Synchronous steps complete before this method returns, asynchronous ones
+   * continue afterwards and their outcome is reported by {@link #executeAsync()}.
+   */
   @Override
   protected void execute() throws ApiFeException, InterruptedException, RpcException {
     steps = getTask().getSteps();
-    for (StepEntity step : steps) {
-      if (!step.getState().equals(StepEntity.State.QUEUED) || step.isDisabled()) {
-        logger.info("Skip running step {}", step);
-        continue;
+    stepsExecution = executeSteps(0, null);
+
+    if (stepsExecution.isCompletedExceptionally()) {
+      Throwable cause = unwrap(stepsExecution.handle((ignored, t) -> t).join());
+      Throwables.propagateIfInstanceOf(cause, ApiFeException.class);
+      Throwables.propagateIfInstanceOf(cause, InterruptedException.class);
+      Throwables.propagateIfInstanceOf(cause, RpcException.class);
+      throw Throwables.propagate(cause);
+    }
+  }
+
+  @Override
+  protected CompletableFuture<Void> executeAsync() {
+    stepsExecution = null;
+    try {
+      execute();
+    } catch (Throwable t) {
+      return failedFuture(t);
+    }
+
+    return stepsExecution != null ? stepsExecution : CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Cancels the task. The steps in flight fail, and no further steps are started.
+   */
+  public void cancel() {
+    cancelled = true;
+    for (StepCommand cmd : runningSteps) {
+      cmd.cancel();
+    }
+  }
+
+  /**
+   * Returns the executor which the continuations of asynchronous steps run on, so that their blocking updates do not
+   * run on the thread which completes the remote call. Without one, e.g. in tests, continuations run on that thread.
+   */
+  public Executor getContinuationExecutor() {
+    ExecutorService executor = continuationExecutor;
+    return executor != null ? executor : MoreExecutors.sameThreadExecutor();
+  }
+
+  /**
+   * Returns the scheduler which times out the steps, or null if the steps of this task do not time out.
+   */
+  public ScheduledExecutorService getStepTimeoutScheduler() {
+    return stepTimeoutScheduler;
+  }
+
+  /**
+   * Runs the steps from the given index on.
+   *
+   * @param from        index of the first step to look at
+   * @param fromCommand command of the step at that index if it was created already, otherwise null
+   */
+  private CompletableFuture<Void> executeSteps(int from, StepCommand fromCommand) {
+    int index = from;
+    StepCommand cmd = fromCommand;
+    if (cmd == null) {
+      while (index < steps.size() && !isRunnable(steps.get(index))) {
+        logger.info("Skip running step {}", steps.get(index));
+        index++;
       }
 
-      StepCommand cmd = stepCommandFactory.createCommand(this, step);
-      cmd.run();
+      if (index == steps.size()) {
+        return CompletableFuture.completedFuture(null);
+      }
+    }
+
+    if (cancelled) {
+      return failedFuture(new CancellationException(String.format("Task %s was cancelled", getActivityId())));
+    }
+
+    List<StepCommand> batch = new ArrayList<>();
+    StepCommand nextCommand = null;
+    try {
+      if (cmd == null) {
+        cmd = stepCommandFactory.createCommand(this, steps.get(index));
+      }
+      batch.add(cmd);
+      index++;
+
+      while (cmd.isParallelizable() && index < steps.size() && isRunnable(steps.get(index))) {
+        StepCommand parallelCmd = stepCommandFactory.createCommand(this, steps.get(index));
+        if (!parallelCmd.isParallelizable()) {
+          nextCommand = parallelCmd;
+          break;
+        }
+        batch.add(parallelCmd);
+        index++;
+      }
+    } catch (ApiFeException e) {
+      return failedFuture(e);
+    }
 
-      if (step.getState() != StepEntity.State.COMPLETED) {
-        throw new TaskNotCompletedException(step);
+    int nextIndex = index;
+    StepCommand nextBatchCommand = nextCommand;
+    return runSteps(batch).thenCompose(ignored -> {
+      for (StepCommand batchCmd : batch) {
+        if (batchCmd.getStep().getState() != StepEntity.State.COMPLETED) {
+          return failedFuture(new TaskNotCompletedException(batchCmd.getStep()));
+        }
       }
+
+      return executeSteps(nextIndex, nextBatchCommand);
+    });
+  }
+
+  /**
+   * Runs a batch of steps. The first step runs on the calling thread, the others are started on the continuation
+   * executor so that a synchronous step does not hold back its neighbours.
+   */
+  private CompletableFuture<Void> runSteps(List<StepCommand> batch) {
+    if (batch.size() == 1) {
+      return runStep(batch.get(0));
+    }
+
+    Executor executor = getContinuationExecutor();
+    CompletableFuture<?>[] stepFutures = new CompletableFuture<?>[batch.size()];
+    for (int i = 1; i < batch.size(); i++) {
+      StepCommand cmd = batch.get(i);
+      stepFutures[i] = CompletableFuture.supplyAsync(() -> runStep(cmd), executor).thenCompose(f -> f);
+    }
+    stepFutures[0] = runStep(batch.get(0));
+
+    return CompletableFuture.allOf(stepFutures);
+  }
+
+  private CompletableFuture<Void> runStep(StepCommand cmd) {
+    runningSteps.add(cmd);
+    if (cancelled) {
+      // cancel() may have gone over the running steps before this one was added
+      cmd.cancel();
     }
+
+    return cmd.runAsync().whenComplete((ignored, t) -> runningSteps.remove(cmd));
+  }
+
+  private static boolean isRunnable(StepEntity step) {
+    return step.getState().equals(StepEntity.State.QUEUED) && !step.isDisabled();
   }
 
   @Override
@@ -170,6 +346,21 @@ public class TaskCommand extends BaseCommand {
     this.stepCommandFactory = stepCommandFactory;
   }
 
+  @VisibleForTesting
+  protected void setContinuationExecutor(ExecutorService continuationExecutor) {
+    this.continuationExecutor = continuationExecutor;
+  }
+
+  @VisibleForTesting
+  protected void setStepTimeoutScheduler(ScheduledExecutorService stepTimeoutScheduler) {
+    this.stepTimeoutScheduler = stepTimeoutScheduler;
+  }
+
+  @VisibleForTesting
+  protected void setVmHostDirectory(VmHostDirectory vmHostDirectory) {
+    this.vmHostDirectory = vmHostDirectory;
+  }
+
   public void markAllStepsAsFailed(Throwable t) throws TaskNotFoundException {
     //clear locks as first thing in this method so that some other failure does not preempt it leaving dangling lock.
     entityLockBackend.clearTaskLocks(task);
@@ -230,11 +421,25 @@ public class TaskCommand extends BaseCommand {
     return getHostClient(vm, true);
   }
 
+  /**
+   * Returns the host client pointed at the agent of the VM.
+   * <p>
+   * With cached host info the host comes from the VM host directory, as long as its entry was recorded with the
+   * version of the VM document the entity was read from or a later one. On a miss it comes from the VM entity, and
+   * if the entity carries no host from the host document of the VM's agent. Without cached host info, which callers
+   * ask for once the agent did not know the VM, the directory entry is dropped and the host is read from the current
+   * VM document in cloud-store.
+   */
   public HostClient getHostClient(VmEntity vm, boolean useCachedHostInfo)
       throws RpcException, InterruptedException, VmNotFoundException {
     checkNotNull(hostClient);
+    String hostIp;
     if (useCachedHostInfo) {
-      String hostIp = vm.getHost();
+      hostIp = vmHostDirectory == null ? null : vmHostDirectory.getHostIp(vm.getId(), vm.getDocumentVersion());
+      if (StringUtils.isBlank(hostIp)) {
+        hostIp = vm.getHost();
+        putVmHost(vm, hostIp);
+      }
       if (StringUtils.isBlank(hostIp) && StringUtils.isNotBlank(vm.getAgent())) {
         try {
           hostIp = lookupHostIp(vm.getAgent());
@@ -242,11 +447,19 @@ public class TaskCommand extends BaseCommand {
           logger.error(String.format("Host %s does not exist.", vm.getAgent()), ex);
           throw new VmNotFoundException(vm.getId());
         }
+        putVmHost(vm, hostIp);
       }
-      if (StringUtils.isNotBlank(hostIp)) {
-        hostClient.setHostIp(hostIp);
-        return hostClient;
+    } else {
+      if (vmHostDirectory != null) {
+        vmHostDirectory.invalidate(vm.getId());
       }
+      hostIp = lookupVmHostIp(vm);
+      putVmHost(vm, hostIp);
+    }
+
+    if (StringUtils.isNotBlank(hostIp)) {
+      hostClient.setHostIp(hostIp);
+      return hostClient;
     }
     throw new VmNotFoundException(vm.getId());
   }
@@ -285,6 +498,34 @@ public class TaskCommand extends BaseCommand {
     return agentId;
   }
 
+  /**
+   * Reads the current host of the VM from cloud-store and brings the VM entity up to date with it.
+   */
+  private String lookupVmHostIp(VmEntity vm) throws VmNotFoundException {
+    try {
+      com.vmware.xenon.common.Operation result = xenonClient.get(VmServiceFactory.SELF_LINK + "/" + vm.getId());
+      VmService.State vmState = result.getBody(VmService.State.class);
+      String hostIp = vmState.host;
+      if (StringUtils.isBlank(hostIp) && StringUtils.isNotBlank(vmState.agent)) {
+        hostIp = lookupHostIp(vmState.agent);
+      }
+
+      vm.setAgent(vmState.agent);
+      vm.setHost(hostIp);
+      vm.setDocumentVersion(vmState.documentVersion);
+      return hostIp;
+    } catch (DocumentNotFoundException ex) {
+      logger.error(String.format("Vm %s or its host does not exist.", vm.getId()), ex);
+      throw new VmNotFoundException(vm.getId());
+    }
+  }
+
+  private void putVmHost(VmEntity vm, String hostIp) {
+    if (vmHostDirectory != null && StringUtils.isNotBlank(hostIp)) {
+      vmHostDirectory.put(vm.getId(), hostIp, vm.getDocumentVersion());
+    }
+  }
+
   private String lookupHostIp(String agentId) throws DocumentNotFoundException {
     checkNotNull(agentId);
 
@@ -43,4 +43,8 @@ public interface ApiFeConfiguration {
   public PaginationConfig getPaginationConfig();
 
   public boolean useVirtualNetwork();
+
+  public QuotaEscrowConfig getQuotaEscrowConfig();
+
+  public ReferenceCacheConfig getReferenceCacheConfig();
 }
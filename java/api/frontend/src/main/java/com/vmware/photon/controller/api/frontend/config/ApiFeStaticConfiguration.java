@@ -73,6 +73,14 @@ public class ApiFeStaticConfiguration extends Configuration implements ApiFeConf
   @JsonProperty("use_virtual_network")
   private boolean useVirtualNetwork = false;
 
+  @Valid
+  @JsonProperty("quota_escrow")
+  private QuotaEscrowConfig quotaEscrowConfig = new QuotaEscrowConfig();
+
+  @Valid
+  @JsonProperty("reference_cache")
+  private ReferenceCacheConfig referenceCacheConfig = new ReferenceCacheConfig();
+
   @Override
   public int getApifePort() {
     return this.apifePort;
@@ -134,4 +142,14 @@ public class ApiFeStaticConfiguration extends Configuration implements ApiFeConf
   public boolean useVirtualNetwork() {
     return useVirtualNetwork;
   }
+
+  @Override
+  public QuotaEscrowConfig getQuotaEscrowConfig() {
+    return quotaEscrowConfig;
+  }
+
+  @Override
+  public ReferenceCacheConfig getReferenceCacheConfig() {
+    return referenceCacheConfig;
+  }
 }
@@ -41,6 +41,12 @@ public class ImageConfig {
 
   private String datastore;
 
+  /**
+   * Number of additional image datastores an upload writes to at the same time as the first one.
+   */
+  @JsonProperty("upload_replica_count")
+  private int uploadReplicaCount = 0;
+
   public ImageConfig() {
     replicationTimeout = DEFAULT_IMAGE_REPLICATION_TIMEOUT;
   }
@@ -81,4 +87,12 @@ public class ImageConfig {
   public void setDatastore(String datastore) {
     this.datastore = datastore;
   }
+
+  public int getUploadReplicaCount() {
+    return uploadReplicaCount;
+  }
+
+  public void setUploadReplicaCount(int uploadReplicaCount) {
+    this.uploadReplicaCount = uploadReplicaCount;
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+
+/**
+ * Quota escrow configuration. When enabled, VM and disk quota is consumed from leases on the resource tickets, and
+ * the usage of concurrent requests is written to a ticket with one patch instead of one patch per request. Returned
+ * usage lags by up to one reconcile interval.
+ */
+public class QuotaEscrowConfig {
+  public static final int DEFAULT_LEASE_BATCH = 10;
+  public static final long DEFAULT_RECONCILE_INTERVAL_MS = 5000;
+  public static final long DEFAULT_LEASE_IDLE_MS = 30000;
+  public static final long DEFAULT_LEASE_DURATION_MS = 60000;
+
+  @JsonProperty("enabled")
+  private boolean enabled = false;
+
+  /**
+   * How many times the cost of the request that ran out of leased quota gets leased at once.
+   */
+  @Min(1)
+  @JsonProperty("lease_batch")
+  private int leaseBatch = DEFAULT_LEASE_BATCH;
+
+  @Min(1)
+  @JsonProperty("reconcile_interval_ms")
+  private long reconcileIntervalMs = DEFAULT_RECONCILE_INTERVAL_MS;
+
+  /**
+   * Leased quota that has not been consumed from for this long is given back to the ticket.
+   */
+  @Min(1)
+  @JsonProperty("lease_idle_ms")
+  private long leaseIdleMs = DEFAULT_LEASE_IDLE_MS;
+
+  /**
+   * The ticket drops a lease that is not renewed for this long, e.g. because its API-FE went away.
+   */
+  @Min(1)
+  @JsonProperty("lease_duration_ms")
+  private long leaseDurationMs = DEFAULT_LEASE_DURATION_MS;
+
+  @AssertTrue(message = "leaseDurationMs should be larger than reconcileIntervalMs")
+  private boolean isValid() {
+    return leaseDurationMs > reconcileIntervalMs;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getLeaseBatch() {
+    return leaseBatch;
+  }
+
+  public void setLeaseBatch(int leaseBatch) {
+    this.leaseBatch = leaseBatch;
+  }
+
+  public long getReconcileIntervalMs() {
+    return reconcileIntervalMs;
+  }
+
+  public void setReconcileIntervalMs(long reconcileIntervalMs) {
+    this.reconcileIntervalMs = reconcileIntervalMs;
+  }
+
+  public long getLeaseIdleMs() {
+    return leaseIdleMs;
+  }
+
+  public void setLeaseIdleMs(long leaseIdleMs) {
+    this.leaseIdleMs = leaseIdleMs;
+  }
+
+  public long getLeaseDurationMs() {
+    return leaseDurationMs;
+  }
+
+  public void setLeaseDurationMs(long leaseDurationMs) {
+    this.leaseDurationMs = leaseDurationMs;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Reference entity cache configuration. When enabled, flavor, image, project, tenant and deployment documents read
+ * by id are kept in memory for their TTL. Writes made by this API-FE invalidate them right away, and writes made
+ * elsewhere are invalidated when the continuous query on the local Xenon host reports them. The TTL only bounds how
+ * stale an entry can get when that query could not be set up.
+ */
+public class ReferenceCacheConfig {
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+  public static final long DEFAULT_FLAVOR_TTL_MS = 60000;
+  public static final long DEFAULT_IMAGE_TTL_MS = 10000;
+  public static final long DEFAULT_PROJECT_TTL_MS = 30000;
+  public static final long DEFAULT_TENANT_TTL_MS = 30000;
+  public static final long DEFAULT_DEPLOYMENT_TTL_MS = 5000;
+
+  @JsonProperty("enabled")
+  private boolean enabled = false;
+
+  @Min(1)
+  @JsonProperty("max_entries")
+  private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+  @Min(0)
+  @JsonProperty("flavor_ttl_ms")
+  private long flavorTtlMs = DEFAULT_FLAVOR_TTL_MS;
+
+  /**
+   * Images are also patched by the housekeeper while they are replicated, so they are kept for a shorter time.
+   */
+  @Min(0)
+  @JsonProperty("image_ttl_ms")
+  private long imageTtlMs = DEFAULT_IMAGE_TTL_MS;
+
+  @Min(0)
+  @JsonProperty("project_ttl_ms")
+  private long projectTtlMs = DEFAULT_PROJECT_TTL_MS;
+
+  @Min(0)
+  @JsonProperty("tenant_ttl_ms")
+  private long tenantTtlMs = DEFAULT_TENANT_TTL_MS;
+
+  /**
+   * The deployment carries the pause state of the system, so it is kept for the shortest time.
+   */
+  @Min(0)
+  @JsonProperty("deployment_ttl_ms")
+  private long deploymentTtlMs = DEFAULT_DEPLOYMENT_TTL_MS;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public long getFlavorTtlMs() {
+    return flavorTtlMs;
+  }
+
+  public void setFlavorTtlMs(long flavorTtlMs) {
+    this.flavorTtlMs = flavorTtlMs;
+  }
+
+  public long getImageTtlMs() {
+    return imageTtlMs;
+  }
+
+  public void setImageTtlMs(long imageTtlMs) {
+    this.imageTtlMs = imageTtlMs;
+  }
+
+  public long getProjectTtlMs() {
+    return projectTtlMs;
+  }
+
+  public void setProjectTtlMs(long projectTtlMs) {
+    this.projectTtlMs = projectTtlMs;
+  }
+
+  public long getTenantTtlMs() {
+    return tenantTtlMs;
+  }
+
+  public void setTenantTtlMs(long tenantTtlMs) {
+    this.tenantTtlMs = tenantTtlMs;
+  }
+
+  public long getDeploymentTtlMs() {
+    return deploymentTtlMs;
+  }
+
+  public void setDeploymentTtlMs(long deploymentTtlMs) {
+    this.deploymentTtlMs = deploymentTtlMs;
+  }
+}
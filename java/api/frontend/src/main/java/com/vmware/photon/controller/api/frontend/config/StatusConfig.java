@@ -15,6 +15,9 @@ package com.vmware.photon.controller.api.frontend.config;
 
 import com.vmware.photon.controller.api.model.Component;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Set;
@@ -22,13 +25,38 @@ import java.util.Set;
 /**
  * Configures which statuses to check when calling /v1/status endpoint.
  * When not configured, default to show status of all components.
+ * The statuses are probed in the background and the endpoint serves the latest snapshot of them.
  */
 public class StatusConfig {
 
   private static final Set<Component> DEFAULT = EnumSet.allOf(Component.class);
 
+  private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.seconds(30);
+
+  private static final Duration DEFAULT_PROBE_TIMEOUT = Duration.seconds(10);
+
+  private static final int DEFAULT_PROBE_WORKERS = 4;
+
   private Set<Component> components = DEFAULT;
 
+  /**
+   * Time between two background probes of the component instances.
+   */
+  @JsonProperty("refresh_interval")
+  private Duration refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+  /**
+   * Time a single component instance may take to report its status before it is reported as unreachable.
+   */
+  @JsonProperty("probe_timeout")
+  private Duration probeTimeout = DEFAULT_PROBE_TIMEOUT;
+
+  /**
+   * Number of threads probing the component instances. Probes beyond that wait for a thread.
+   */
+  @JsonProperty("probe_workers")
+  private int probeWorkers = DEFAULT_PROBE_WORKERS;
+
   public Set<Component> getComponents() {
     return components;
   }
@@ -42,4 +70,28 @@ public class StatusConfig {
     }
 
   }
+
+  public Duration getRefreshInterval() {
+    return refreshInterval;
+  }
+
+  public void setRefreshInterval(Duration refreshInterval) {
+    this.refreshInterval = refreshInterval;
+  }
+
+  public Duration getProbeTimeout() {
+    return probeTimeout;
+  }
+
+  public void setProbeTimeout(Duration probeTimeout) {
+    this.probeTimeout = probeTimeout;
+  }
+
+  public int getProbeWorkers() {
+    return probeWorkers;
+  }
+
+  public void setProbeWorkers(int probeWorkers) {
+    this.probeWorkers = probeWorkers;
+  }
 }
@@ -76,6 +76,12 @@ public class VmEntity extends InfrastructureEntity {
 
   private boolean hasMACAddresses;
 
+  /**
+   * Version of the cloud-store document the entity was read from.
+   */
+  //Transient
+  private long documentVersion;
+
   @Override
   public String getKind() {
     return Vm.KIND;
@@ -227,6 +233,14 @@ public class VmEntity extends InfrastructureEntity {
     this.host = host;
   }
 
+  public long getDocumentVersion() {
+    return documentVersion;
+  }
+
+  public void setDocumentVersion(long documentVersion) {
+    this.documentVersion = documentVersion;
+  }
+
   public List<IsoEntity> getIsos() {
     return isos;
   }
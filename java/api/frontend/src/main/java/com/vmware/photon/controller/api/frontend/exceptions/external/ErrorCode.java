@@ -91,6 +91,7 @@ public enum ErrorCode {
   OPENSTACK_IMPORT_ERROR("OpenStackImportError", Response.Status.INTERNAL_SERVER_ERROR),
   OPENSTACK_REQUEST_ERROR("OpenStackRequestError", Response.Status.BAD_REQUEST),
   IMAGE_NOT_FOUND("ImageNotFound", Response.Status.NOT_FOUND),
+  IMAGE_UPLOAD_NOT_FOUND("ImageUploadNotFound", Response.Status.NOT_FOUND),
   MANIFEST_NOT_FOUND("ManifestNotFound", Response.Status.NOT_FOUND),
   DEPLOYMENT_TRIGGER_FAILURE("DeploymentTriggerFailure", Response.Status.INTERNAL_SERVER_ERROR),
   INVALID_CONFIG_KEY("InvalidConfigKey", Response.Status.BAD_REQUEST),
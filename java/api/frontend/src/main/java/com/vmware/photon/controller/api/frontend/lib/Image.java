@@ -60,5 +60,14 @@ public interface Image extends AutoCloseable {
   long addDisk(String fileName, InputStream inputStream) throws IOException, VmdkFormatException,
       NameTakenException, InternalException;
 
+  /**
+   * Read an image file.
+   *
+   * @param fileName file in the image
+   * @return
+   * @throws java.io.IOException
+   */
+  InputStream openFile(String fileName) throws IOException;
+
   void close();
 }
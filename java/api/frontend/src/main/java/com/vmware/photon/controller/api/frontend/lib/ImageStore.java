@@ -16,6 +16,8 @@ package com.vmware.photon.controller.api.frontend.lib;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
 
+import java.util.List;
+
 /**
  * This interface manages image on datastore.
  */
@@ -36,6 +38,15 @@ public interface ImageStore {
    */
   Image createImage(String imageId) throws InternalException, ExternalException;
 
+  /**
+   * Open an image folder which was created before, possibly by another API-FE instance.
+   *
+   * @param imageId
+   * @param uploadFolder the folder returned by {@link Image#getUploadFolder()} when the image was created
+   * @return
+   */
+  Image openImage(String imageId, String uploadFolder) throws InternalException, ExternalException;
+
   /**
    * Make image usable to the system.
    *
@@ -66,4 +77,21 @@ public interface ImageStore {
    * @return the name of datastore
    */
   String getDatastore() throws ExternalException;
+
+  /**
+   * Get stores for other image datastores, which an upload may write to at the same time as this one.
+   *
+   * @param maxCount maximum number of stores to return
+   * @return stores for image datastores other than the one of this store
+   */
+  List<ImageStore> getReplicaImageStores(int maxCount) throws ExternalException;
+
+  /**
+   * Get a store for the given image datastore, e.g. the one an image folder was created on by another API-FE
+   * instance.
+   *
+   * @param datastoreId
+   * @return this store if it is for the given datastore, otherwise a new store for it
+   */
+  ImageStore getImageStore(String datastoreId) throws ExternalException;
 }
@@ -20,16 +20,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This class is to save the image in local file system. It's an interim implementation.
  */
 public class LocalImageStore implements ImageStore {
   private static final Logger logger = LoggerFactory.getLogger(LocalImageStore.class);
+  private final String rootDir;
   private final String dir;
   private final String datastore;
 
   public LocalImageStore(String dir, String datastore) {
+    this.rootDir = dir;
     this.datastore = datastore;
 
     File theDir = new File(dir, datastore);
@@ -48,6 +52,11 @@ public class LocalImageStore implements ImageStore {
     return new LocalImageStoreImage(dir, imageId);
   }
 
+  @Override
+  public Image openImage(String imageId, String uploadFolder) {
+    return new LocalImageStoreImage(uploadFolder, imageId);
+  }
+
   @Override
   public void finalizeImage(Image image) {
     logger.debug("LocalImageStore finalizeImage {}", image.getImageId());
@@ -58,11 +67,22 @@ public class LocalImageStore implements ImageStore {
     logger.debug("LocalImageStore createImageFromVm {}", image.getImageId());
   }
 
+  /**
+   * The images of a datastore share its folder, so only the files of the given image are deleted.
+   */
   @Override
   public void deleteUploadFolder(Image image) throws DeleteUploadFolderException {
-    // To be implemented if it is needed in the future.
-    throw new DeleteUploadFolderException("deleteUploadFolder method has not been " +
-        "implemented for class LocalImageStore.");
+    File[] imageFiles = new File(image.getUploadFolder()).listFiles(
+        (folder, name) -> name.startsWith(image.getImageId()));
+    if (imageFiles == null) {
+      return;
+    }
+
+    for (File imageFile : imageFiles) {
+      if (imageFile.exists() && !imageFile.delete()) {
+        throw new DeleteUploadFolderException("Failed to delete " + imageFile);
+      }
+    }
   }
 
   @Override
@@ -74,4 +94,18 @@ public class LocalImageStore implements ImageStore {
   public String getDatastore() {
     return datastore;
   }
+
+  @Override
+  public List<ImageStore> getReplicaImageStores(int maxCount) {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public ImageStore getImageStore(String datastoreId) {
+    if (datastoreId.equals(datastore)) {
+      return this;
+    }
+
+    return new LocalImageStore(rootDir, datastoreId);
+  }
 }
@@ -83,6 +83,11 @@ class LocalImageStoreImage implements Image {
     }
   }
 
+  @Override
+  public InputStream openFile(String fileName) throws IOException {
+    return new FileInputStream(toFile(fileName));
+  }
+
   @Override
   public void close() {
     // Nothing.
@@ -45,7 +45,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class saves image in vSphere datastore. It could connect to vCenter or ESX server, and save/delete image in
@@ -63,6 +66,7 @@ public class VsphereImageStore implements ImageStore {
   private String hostIp;
   private boolean lookForImageDatstoreHostsIfNeeded;
   private Host host;
+  private String imageDatastoreId;
 
   /**
    * Constructor.
@@ -83,6 +87,24 @@ public class VsphereImageStore implements ImageStore {
     }
   }
 
+  /**
+   * Constructor for a store bound to the given image datastore of the given host.
+   *
+   * @param host
+   * @param imageDatastoreId
+   */
+  private VsphereImageStore(HostBackend hostBackend, HostClientFactory hostClientFactory, ImageConfig config,
+                            Host host, String imageDatastoreId) {
+    this.hostBackend = hostBackend;
+    this.hostClientFactory = hostClientFactory;
+    this.config = config;
+
+    this.lookForImageDatstoreHostsIfNeeded = false;
+    this.hostIp = host.getAddress();
+    this.host = host;
+    this.imageDatastoreId = imageDatastoreId;
+  }
+
   /**
    * Set hostIp to use for subsequent calls.
    *
@@ -122,6 +144,12 @@ public class VsphereImageStore implements ImageStore {
     return new VsphereImageStoreImage(nfcClient, uploadFolder, imageId);
   }
 
+  @Override
+  public Image openImage(String imageId, String uploadFolder) throws InternalException, ExternalException {
+    logger.info("open image {} in {} on datastore {}", imageId, uploadFolder, this.getDatastore());
+    return new VsphereImageStoreImage(getNfcClient(getHostServiceTicket()), uploadFolder, imageId);
+  }
+
   /**
    * Call agent to move uploaded image from tmp_uploads to
    * where image is stored for system to use.
@@ -186,9 +214,84 @@ public class VsphereImageStore implements ImageStore {
   @Override
   public String getDatastore() throws ExternalException {
     ensureHost();
+    if (this.imageDatastoreId != null) {
+      return this.imageDatastoreId;
+    }
     return getImageDataStoreId(this.host.getDatastores());
   }
 
+  /**
+   * Get stores for other image datastores, each bound to a READY host with an ACTIVE agent which has the
+   * datastore mounted.
+   *
+   * @param maxCount
+   * @return
+   * @throws ExternalException
+   */
+  @Override
+  public List<ImageStore> getReplicaImageStores(int maxCount) throws ExternalException {
+    List<ImageStore> replicaImageStores = new ArrayList<>();
+    if (maxCount <= 0) {
+      return replicaImageStores;
+    }
+
+    Set<String> imageDatastoreIds = new HashSet<>();
+    imageDatastoreIds.add(getDatastore());
+
+    ResourceList<Host> hostList =
+        this.hostBackend.filterByState(HostState.READY, Optional.of(AgentState.ACTIVE), Optional.absent());
+    for (Host candidate : hostList.getItems()) {
+      if (candidate.getDatastores() == null) {
+        continue;
+      }
+
+      for (HostDatastore datastore : candidate.getDatastores()) {
+        if (replicaImageStores.size() >= maxCount) {
+          return replicaImageStores;
+        }
+
+        if (datastore.isImageDatastore() && imageDatastoreIds.add(datastore.getDatastoreId())) {
+          replicaImageStores.add(new VsphereImageStore(this.hostBackend, this.hostClientFactory, this.config,
+              candidate, datastore.getDatastoreId()));
+        }
+      }
+    }
+
+    logger.info("Found {} image datastores to upload image to at the same time.", replicaImageStores.size());
+    return replicaImageStores;
+  }
+
+  /**
+   * Get a store for the given image datastore, bound to a READY host with an ACTIVE agent which has the datastore
+   * mounted.
+   *
+   * @param datastoreId
+   * @return
+   * @throws ExternalException
+   */
+  @Override
+  public ImageStore getImageStore(String datastoreId) throws ExternalException {
+    if (datastoreId.equals(getDatastore())) {
+      return this;
+    }
+
+    ResourceList<Host> hostList =
+        this.hostBackend.filterByState(HostState.READY, Optional.of(AgentState.ACTIVE), Optional.absent());
+    for (Host candidate : hostList.getItems()) {
+      if (candidate.getDatastores() == null) {
+        continue;
+      }
+
+      for (HostDatastore datastore : candidate.getDatastores()) {
+        if (datastore.isImageDatastore() && datastore.getDatastoreId().equals(datastoreId)) {
+          return new VsphereImageStore(this.hostBackend, this.hostClientFactory, this.config, candidate, datastoreId);
+        }
+      }
+    }
+
+    throw new InvalidImageDatastoreSetException("No host with image datastore " + datastoreId + " is available");
+  }
+
   private String getImageDataStoreId(List<HostDatastore> dataStoreList) throws ExternalException {
     checkNotNull(dataStoreList);
 
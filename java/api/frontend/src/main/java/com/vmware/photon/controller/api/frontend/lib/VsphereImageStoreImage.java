@@ -92,6 +92,16 @@ public class VsphereImageStoreImage implements Image {
     return singleExtentSize * 512L; // a sector is 512 bytes
   }
 
+  /**
+   * Download file from remote datastore.
+   */
+  @Override
+  public InputStream openFile(String fileName) throws IOException {
+    String imagePath = getImageFilePath(fileName);
+    logger.info("read from {}", imagePath);
+    return nfcClient.getFile(imagePath);
+  }
+
   @Override
   public void close() {
     if (nfcClient == null) {
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.lib.Image;
+import com.vmware.photon.controller.api.frontend.lib.ImageStore;
+import com.vmware.photon.controller.api.frontend.lib.ImageStoreFactory;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.ImageUploadCreateSpec;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ImageUploadService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ImageUploadServiceFactory;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.xenon.exceptions.DocumentNotFoundException;
+import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
+import com.vmware.xenon.common.ServiceErrorResponse;
+
+import com.google.common.io.BaseEncoding;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps the chunks of resumable image uploads on an image datastore.
+ * <p>
+ * Every upload has a temporary image folder on the datastore, which holds one file per received chunk, and a
+ * cloud-store document, which records the file of each chunk. A chunk is buffered locally while its SHA-256 checksum
+ * is verified, then written to a new file, and only recorded once that file is complete, so a recorded chunk is
+ * always complete. Every API-FE instance sees the same uploads, so a client can send chunks in any order, in
+ * parallel, again, and through any API-FE instance, and go on after a client or API-FE restart.
+ * <p>
+ * A commit claims the upload in its document first, so an upload is committed at most once at a time. Abandoned
+ * uploads expire: cloud-store removes their documents, and the agents remove temporary image folders which have not
+ * changed for two hours.
+ */
+@Singleton
+public class ChunkedImageUploadStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkedImageUploadStore.class);
+  private static final String CHUNK_FILE_PREFIX = ".chunk-";
+  private static final String CHECKSUM_ALGORITHM = "SHA-256";
+  private static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("[0-9a-f-]{36}");
+
+  private final ApiFeXenonRestClient xenonClient;
+  private final ImageStoreFactory imageStoreFactory;
+
+  @Inject
+  public ChunkedImageUploadStore(ApiFeXenonRestClient xenonClient, ImageStoreFactory imageStoreFactory) {
+    this.xenonClient = xenonClient;
+    this.xenonClient.start();
+    this.imageStoreFactory = imageStoreFactory;
+  }
+
+  /**
+   * Start an upload.
+   *
+   * @param spec
+   * @return the new upload
+   * @throws InternalException
+   * @throws ExternalException
+   */
+  public ImageUpload create(ImageUploadCreateSpec spec) throws InternalException, ExternalException {
+    String id = UUID.randomUUID().toString();
+    ImageStore imageStore = imageStoreFactory.create();
+
+    ImageUploadService.State state = new ImageUploadService.State();
+    state.documentSelfLink = id;
+    state.name = spec.getName();
+    state.replicationType = spec.getReplicationType();
+    state.chunkCount = spec.getChunkCount();
+    state.datastore = imageStore.getDatastore();
+    try (Image image = imageStore.createImage(id)) {
+      state.uploadFolder = image.getUploadFolder();
+    }
+
+    state = xenonClient.post(ImageUploadServiceFactory.SELF_LINK, state).getBody(ImageUploadService.State.class);
+    logger.info("Created image upload {} for image {} with {} chunks in {} on datastore {}", id, spec.getName(),
+        spec.getChunkCount(), state.uploadFolder, state.datastore);
+    return toApiRepresentation(state);
+  }
+
+  /**
+   * Get an upload, along with the chunks received so far.
+   *
+   * @param id
+   * @return
+   * @throws ExternalException
+   * @throws InternalException
+   */
+  public ImageUpload get(String id) throws ExternalException, InternalException {
+    return toApiRepresentation(getState(id));
+  }
+
+  /**
+   * Store a chunk of an upload. A chunk which has been received before is replaced.
+   *
+   * @param id
+   * @param index    index of the chunk, starting at 0
+   * @param checksum hex encoded SHA-256 checksum of the chunk
+   * @param content
+   * @return the upload, along with the chunks received so far
+   * @throws ExternalException if the chunk is invalid, or the upload is being committed
+   */
+  public ImageUpload putChunk(String id, int index, String checksum, InputStream content)
+      throws ExternalException, InternalException {
+    ImageUploadService.State state = getState(id);
+    if (index < 0 || index >= state.chunkCount) {
+      throw new ImageUploadException(String.format("Chunk index %d is not between 0 and %d", index,
+          state.chunkCount - 1));
+    }
+    if (checksum == null || checksum.isEmpty()) {
+      throw new ImageUploadException("Chunk checksum is required");
+    }
+    if (state.uploadState != ImageUploadService.State.UploadState.UPLOADING) {
+      throw new ImageUploadException("Image upload " + id + " is being committed or has been committed");
+    }
+
+    String fileName = CHUNK_FILE_PREFIX + index + "-" + UUID.randomUUID();
+    Path localChunkFile = null;
+    String actualChecksum;
+    try {
+      localChunkFile = Files.createTempFile(id + CHUNK_FILE_PREFIX + index, ".tmp");
+      MessageDigest digest = createDigest();
+      try (InputStream in = new DigestInputStream(content, digest)) {
+        Files.copy(in, localChunkFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      actualChecksum = BaseEncoding.base16().lowerCase().encode(digest.digest());
+      if (!actualChecksum.equalsIgnoreCase(checksum)) {
+        throw new ImageUploadException(String.format("Checksum of chunk %d is %s, expected %s", index,
+            actualChecksum, checksum));
+      }
+
+      try (Image image = openImage(state);
+           InputStream in = new BufferedInputStream(Files.newInputStream(localChunkFile))) {
+        image.addFile(fileName, in, Files.size(localChunkFile));
+      }
+    } catch (IOException e) {
+      throw new ImageUploadException(String.format("Failed to store chunk %d of image upload %s", index, id), e);
+    } finally {
+      if (localChunkFile != null) {
+        deleteQuietly(localChunkFile.toFile());
+      }
+    }
+
+    ImageUploadService.State patch = new ImageUploadService.State();
+    patch.chunkFiles = new HashMap<>();
+    patch.chunkFiles.put(String.valueOf(index), fileName);
+    patch.chunkChecksums = new HashMap<>();
+    patch.chunkChecksums.put(String.valueOf(index), actualChecksum);
+    patchState(id, patch);
+
+    logger.debug("Stored chunk {} of image upload {} in {}", index, id, fileName);
+    return get(id);
+  }
+
+  /**
+   * Claim an upload for a commit. No other commit can claim it, and no chunks can be added to it, until the commit
+   * is finished or aborted.
+   *
+   * @param id
+   * @return the id of the task which created the image if the upload has been committed before, otherwise null
+   * @throws ExternalException if not all chunks have been received, or the upload is being committed
+   */
+  public String startCommit(String id) throws ExternalException {
+    ImageUploadService.State state = getState(id);
+    if (state.uploadState == ImageUploadService.State.UploadState.COMMITTED) {
+      logger.info("Image upload {} has been committed by task {}", id, state.taskId);
+      return state.taskId;
+    }
+
+    checkAllChunksReceived(id, state);
+    ImageUploadService.State patch = new ImageUploadService.State();
+    patch.uploadState = ImageUploadService.State.UploadState.COMMITTING;
+    patchState(id, patch);
+
+    logger.info("Committing image upload {}", id);
+    return null;
+  }
+
+  /**
+   * Release the claim of a failed commit, so that chunks can be added to the upload and it can be committed again.
+   * A failure is logged, and the claim is then released when the upload expires.
+   *
+   * @param id
+   */
+  public void abortCommit(String id) {
+    ImageUploadService.State patch = new ImageUploadService.State();
+    patch.uploadState = ImageUploadService.State.UploadState.UPLOADING;
+    try {
+      patchState(id, patch);
+      logger.info("Aborted commit of image upload {}", id);
+    } catch (ExternalException | RuntimeException e) {
+      logger.warn("Failed to abort commit of image upload {}", id, e);
+    }
+  }
+
+  /**
+   * Record the task which created the image of an upload, and delete its chunks. A failure is logged, and the
+   * chunks are then deleted when the upload expires.
+   *
+   * @param id
+   * @param taskId
+   */
+  public void finishCommit(String id, String taskId) {
+    ImageUploadService.State patch = new ImageUploadService.State();
+    patch.uploadState = ImageUploadService.State.UploadState.COMMITTED;
+    patch.taskId = taskId;
+    try {
+      patchState(id, patch);
+      deleteChunks(getState(id));
+      logger.info("Committed image upload {} with task {}", id, taskId);
+    } catch (ExternalException | RuntimeException e) {
+      logger.warn("Failed to finish commit of image upload {} with task {}", id, taskId, e);
+    }
+  }
+
+  /**
+   * Open the content of a complete upload, which is its chunks in order.
+   *
+   * @param id
+   * @return
+   * @throws ExternalException if not all chunks have been received
+   */
+  public InputStream openContent(String id) throws ExternalException, InternalException {
+    ImageUploadService.State state = getState(id);
+    checkAllChunksReceived(id, state);
+
+    Image image = openImage(state);
+    try {
+      return new SequenceInputStream(new ChunkEnumeration(image, state)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            image.close();
+          }
+        }
+      };
+    } catch (RuntimeException e) {
+      image.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Get the digest of the chunk checksums of an upload, in chunk order. The checksums were verified against the
+   * chunks when they were received, so the digest identifies the content without reading the chunks again.
+   *
+   * @param id
+   * @return hex encoded SHA-256 digest of the chunk checksums
+   * @throws ExternalException if not all chunks have been received
+   */
+  public String getUploadDigest(String id) throws ExternalException, InternalException {
+    ImageUploadService.State state = getState(id);
+    checkAllChunksReceived(id, state);
+
+    MessageDigest digest = createDigest();
+    for (int index = 0; index < state.chunkCount; index++) {
+      String checksum = state.chunkChecksums.get(String.valueOf(index));
+      if (checksum == null) {
+        throw new ImageUploadException(String.format("Checksum of chunk %d of image upload %s is unknown", index,
+            id));
+      }
+      digest.update(checksum.getBytes(StandardCharsets.US_ASCII));
+      digest.update((byte) '\n');
+    }
+    return BaseEncoding.base16().lowerCase().encode(digest.digest());
+  }
+
+  /**
+   * Delete an upload and its chunks.
+   *
+   * @param id
+   * @throws ExternalException if the upload is being committed
+   */
+  public void delete(String id) throws ExternalException, InternalException {
+    ImageUploadService.State state = getState(id);
+    if (state.uploadState == ImageUploadService.State.UploadState.COMMITTING) {
+      throw new ImageUploadException("Image upload " + id + " is being committed");
+    }
+
+    xenonClient.delete(getSelfLink(id), new ImageUploadService.State());
+    deleteChunks(state);
+    logger.info("Deleted image upload {}", id);
+  }
+
+  private ImageUploadService.State getState(String id) throws ImageUploadNotFoundException {
+    if (id == null || !UPLOAD_ID_PATTERN.matcher(id).matches()) {
+      throw new ImageUploadNotFoundException(id);
+    }
+
+    try {
+      return xenonClient.get(getSelfLink(id)).getBody(ImageUploadService.State.class);
+    } catch (DocumentNotFoundException e) {
+      throw new ImageUploadNotFoundException(id);
+    }
+  }
+
+  private void patchState(String id, ImageUploadService.State patch) throws ExternalException {
+    try {
+      xenonClient.patch(getSelfLink(id), patch);
+    } catch (DocumentNotFoundException e) {
+      throw new ImageUploadNotFoundException(id);
+    } catch (XenonRuntimeException e) {
+      if (isUploadStateConflict(e)) {
+        throw new ImageUploadException("Image upload " + id + " is being committed or has been committed");
+      }
+      throw e;
+    }
+  }
+
+  private static boolean isUploadStateConflict(XenonRuntimeException e) {
+    if (e.getCompletedOperation().getStatusCode() != HttpURLConnection.HTTP_BAD_REQUEST) {
+      return false;
+    }
+
+    String errorMessage = e.getCompletedOperation().getBody(ServiceErrorResponse.class).message;
+    return StringUtils.isNotBlank(errorMessage)
+        && errorMessage.contains(ImageUploadService.UPLOAD_STATE_CONFLICT_MESSAGE);
+  }
+
+  private static void checkAllChunksReceived(String id, ImageUploadService.State state)
+      throws ImageUploadException {
+    List<Integer> missingChunks = new ArrayList<>();
+    for (int index = 0; index < state.chunkCount; index++) {
+      if (!state.chunkFiles.containsKey(String.valueOf(index))) {
+        missingChunks.add(index);
+      }
+    }
+
+    if (!missingChunks.isEmpty()) {
+      throw new ImageUploadException("Chunks " + missingChunks + " of image upload " + id + " have not been received");
+    }
+  }
+
+  private ImageStore getImageStore(ImageUploadService.State state) throws ExternalException {
+    return imageStoreFactory.create().getImageStore(state.datastore);
+  }
+
+  private Image openImage(ImageUploadService.State state) throws InternalException, ExternalException {
+    return getImageStore(state).openImage(getId(state), state.uploadFolder);
+  }
+
+  /**
+   * Delete the folder of an upload. A failure is logged, and the agents then delete the folder once it expires.
+   */
+  private void deleteChunks(ImageUploadService.State state) {
+    try {
+      ImageStore imageStore = getImageStore(state);
+      try (Image image = imageStore.openImage(getId(state), state.uploadFolder)) {
+        imageStore.deleteUploadFolder(image);
+      }
+    } catch (InternalException | ExternalException e) {
+      logger.warn("Failed to delete chunks of image upload {} in {}", getId(state), state.uploadFolder, e);
+    }
+  }
+
+  private static ImageUpload toApiRepresentation(ImageUploadService.State state) {
+    ImageUpload imageUpload = new ImageUpload();
+    imageUpload.setId(getId(state));
+    imageUpload.setName(state.name);
+    imageUpload.setReplicationType(state.replicationType);
+    imageUpload.setChunkCount(state.chunkCount);
+
+    List<Integer> receivedChunks = new ArrayList<>();
+    for (String index : state.chunkFiles.keySet()) {
+      receivedChunks.add(Integer.valueOf(index));
+    }
+    Collections.sort(receivedChunks);
+    imageUpload.setReceivedChunks(receivedChunks);
+    return imageUpload;
+  }
+
+  private static String getId(ImageUploadService.State state) {
+    return ServiceUtils.getIDFromDocumentSelfLink(state.documentSelfLink);
+  }
+
+  private static String getSelfLink(String id) {
+    return ImageUploadServiceFactory.SELF_LINK + "/" + id;
+  }
+
+  private static MessageDigest createDigest() throws InternalException {
+    try {
+      return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new InternalException("Failure to create " + CHECKSUM_ALGORITHM + " digest.", e);
+    }
+  }
+
+  private static void deleteQuietly(File file) {
+    if (file.exists() && !file.delete()) {
+      logger.warn("Failed to delete {}", file);
+    }
+  }
+
+  /**
+   * Opens the chunk files of an upload one at a time, as they are read.
+   */
+  private static class ChunkEnumeration implements Enumeration<InputStream> {
+    private final Image image;
+    private final ImageUploadService.State state;
+    private int nextIndex = 0;
+
+    private ChunkEnumeration(Image image, ImageUploadService.State state) {
+      this.image = image;
+      this.state = state;
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+      return nextIndex < state.chunkCount;
+    }
+
+    @Override
+    public InputStream nextElement() {
+      if (!hasMoreElements()) {
+        throw new NoSuchElementException();
+      }
+
+      String chunkFile = state.chunkFiles.get(String.valueOf(nextIndex++));
+      try {
+        return image.openFile(chunkFile);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to open " + chunkFile + " in " + image.getUploadFolder(), e);
+      }
+    }
+  }
+}
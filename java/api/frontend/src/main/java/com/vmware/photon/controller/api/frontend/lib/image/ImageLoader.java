@@ -27,6 +27,9 @@ import com.vmware.transfer.streamVmdk.VmdkFormatException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,11 +39,29 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * Class representing the loader of an Image file into the first ECX Cloud data store.
+ * <p>
+ * While the file is streamed in, its SHA-256 digest is computed, and its disks are copied to the optional replica
+ * image stores at the same time, so that the image does not have to be read back from the first data store to be
+ * seeded on them. A replica which fails is dropped without failing the upload.
  */
 public class ImageLoader {
   public static final String CONFIG_FILE_SUFFIX = ".ecv";
@@ -49,10 +70,27 @@ public class ImageLoader {
   private static final DataField VMDK_SIGNATURE_FIELD = new DataField(0, 3);
   private static final String VMDK_FILE_SIGNATURE = "KDM";
   private static final ObjectMapper mapper = new ObjectMapper();
+  private static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+  private static final int REPLICA_PIPE_SIZE = 1024 * 1024;
+  private static final long REPLICA_STALL_TIMEOUT_SECONDS = 60;
+
+  /**
+   * Runs the replica uploads of all image uploads. The pool grows with the number of replicas in flight, which is
+   * bounded by the concurrent uploads times the replica count.
+   */
+  private static final ExecutorService replicaUploadExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("image-replica-upload-%d").setDaemon(true).build());
+
   private final ImageStore imageStore;
+  private final List<ImageStore> replicaImageStores;
 
   public ImageLoader(ImageStore imageStore) throws InternalException {
+    this(imageStore, Collections.emptyList());
+  }
+
+  public ImageLoader(ImageStore imageStore, List<ImageStore> replicaImageStores) throws InternalException {
     this.imageStore = imageStore;
+    this.replicaImageStores = replicaImageStores;
   }
 
   /**
@@ -83,7 +121,7 @@ public class ImageLoader {
       logger.warn("Create image {} failed.", e);
       if (image != null) {
         image.close();
-        deleteUploadFolder(image);
+        deleteUploadFolder(imageStore, image);
       }
       throw e;
     }
@@ -98,7 +136,8 @@ public class ImageLoader {
       throws IOException, InternalException, VmdkFormatException, ExternalException {
 
     // Detect file type. Stream mark support is required.
-    inputStream = new BufferedInputStream(inputStream);
+    MessageDigest contentDigest = createContentDigest();
+    inputStream = new BufferedInputStream(new DigestInputStream(inputStream, contentDigest));
     boolean isVmdkFile = isVmdkFile(inputStream);
     boolean isTarFile = isVmdkFile ? false : isTarFile(inputStream);
 
@@ -119,18 +158,24 @@ public class ImageLoader {
     // Upload image in data store.
     result = new Result();
     Image image = null;
+    List<Replica> replicas = new ArrayList<>();
     try {
       image = imageStore.createImage(imageEntity.getId());
+      replicas = createReplicas(imageEntity.getId());
 
       if (isVmdkFile) {
         logger.info("Reading disk image from VMDK file.");
-        result.imageSize += image.addDisk(DISK_FILE_SUFFIX, inputStream);
+        result.imageSize += addDisk(image, replicas, DISK_FILE_SUFFIX, inputStream);
       } else {
         logger.info("Reading disk image from OVA file.");
-        result.imageSize += loadImageFromOva(esxOvaFile, image, ecv);
+        result.imageSize += loadImageFromOva(esxOvaFile, image, replicas, ecv);
         result.imageSettings.putAll(EsxCloudVmx.toImageSettings(ecv));
       }
 
+      // The digest has to cover the whole file, including what the parsers did not read.
+      ByteStreams.exhaust(inputStream);
+      result.contentDigest = encodeContentDigest(contentDigest);
+
       image.close();
       imageStore.finalizeImage(image);
 
@@ -138,15 +183,17 @@ public class ImageLoader {
       logger.warn("Upload image {} failed.", e);
       if (image != null) {
         image.close();
-        deleteUploadFolder(image);
+        deleteUploadFolder(imageStore, image);
       }
+      replicas.forEach(this::discardReplica);
       throw e;
     }
 
+    finalizeReplicas(replicas, result);
     return result;
   }
 
-  private void deleteUploadFolder(Image image) {
+  private void deleteUploadFolder(ImageStore imageStore, Image image) {
     logger.info("Cleaning up partially uploaded files for image {} ...", image.getImageId());
     try {
       imageStore.deleteUploadFolder(image);
@@ -155,6 +202,142 @@ public class ImageLoader {
     }
   }
 
+  private static String encodeContentDigest(MessageDigest contentDigest) {
+    return BaseEncoding.base16().lowerCase().encode(contentDigest.digest());
+  }
+
+  private static MessageDigest createContentDigest() throws InternalException {
+    try {
+      return MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new InternalException("Failure to create " + CONTENT_DIGEST_ALGORITHM + " digest.", e);
+    }
+  }
+
+  /**
+   * Create the image on each replica image store. A store where this fails is skipped.
+   *
+   * @param imageId
+   * @return
+   */
+  private List<Replica> createReplicas(String imageId) {
+    List<Replica> replicas = new ArrayList<>();
+    for (ImageStore replicaImageStore : replicaImageStores) {
+      try {
+        replicas.add(new Replica(replicaImageStore, replicaImageStore.createImage(imageId)));
+      } catch (Exception e) {
+        logger.warn("Could not create image {} on replica image store {}, skipping it.", imageId, replicaImageStore, e);
+      }
+    }
+
+    return replicas;
+  }
+
+  /**
+   * Make the image usable on each replica which received all files, and record its datastore in the result.
+   *
+   * @param replicas
+   * @param result
+   */
+  private void finalizeReplicas(List<Replica> replicas, Result result) {
+    for (Replica replica : replicas) {
+      if (replica.failed) {
+        discardReplica(replica);
+        continue;
+      }
+
+      try {
+        replica.image.close();
+        replica.imageStore.finalizeImage(replica.image);
+        result.replicatedDatastores.add(replica.imageStore.getDatastore());
+      } catch (Exception e) {
+        logger.warn("Finalizing replica of image {} failed, dropping it.", replica.image.getImageId(), e);
+        discardReplica(replica);
+      }
+    }
+  }
+
+  private void discardReplica(Replica replica) {
+    replica.image.close();
+    deleteUploadFolder(replica.imageStore, replica.image);
+  }
+
+  /**
+   * Upload a disk to the image, and copy it to the replicas which have not failed yet while the image reads it.
+   * A replica which does not keep up is dropped once it has not read for the stall timeout.
+   *
+   * @return the number of bytes copied to the image
+   */
+  private long addDisk(Image image,
+                       List<Replica> replicas,
+                       String fileName,
+                       InputStream diskStream)
+      throws IOException, InternalException, VmdkFormatException, NameTakenException {
+    List<Replica> liveReplicas = replicas.stream().filter(replica -> !replica.failed).collect(Collectors.toList());
+    if (liveReplicas.isEmpty()) {
+      return image.addDisk(fileName, diskStream);
+    }
+
+    TeeInputStream teeStream = new TeeInputStream(diskStream);
+    Map<Replica, ReplicaPipe> replicaPipes = new LinkedHashMap<>();
+    Map<Replica, Future<Long>> replicaUploads = new LinkedHashMap<>();
+    boolean uploaded = false;
+    try {
+      for (Replica replica : liveReplicas) {
+        ReplicaPipe pipe = new ReplicaPipe(REPLICA_PIPE_SIZE, REPLICA_STALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        replicaPipes.put(replica, pipe);
+        teeStream.addBranch(pipe.getOutputStream(), e -> {
+          logger.warn("Replica of image {} stopped reading {}, dropping it: {}", replica.image.getImageId(), fileName,
+              e.getMessage());
+          replica.failed = true;
+          pipe.abort();
+        });
+        replicaUploads.put(replica, replicaUploadExecutor.submit(() -> {
+          try (InputStream in = pipe.getInputStream()) {
+            return replica.image.addDisk(fileName, in);
+          }
+        }));
+      }
+
+      long size = image.addDisk(fileName, teeStream);
+      // Hand the replicas the rest of the disk stream as well.
+      ByteStreams.exhaust(teeStream);
+      uploaded = true;
+      return size;
+    } finally {
+      if (!uploaded) {
+        replicaPipes.values().forEach(ReplicaPipe::abort);
+      }
+      teeStream.close();
+      awaitReplicaUploads(fileName, replicaUploads);
+    }
+  }
+
+  /**
+   * Wait for the replicas to take the end of the disk. A replica which is not done within the stall timeout is
+   * dropped, so that it does not hold up the upload.
+   */
+  private void awaitReplicaUploads(String fileName, Map<Replica, Future<Long>> replicaUploads)
+      throws InternalException {
+    for (Map.Entry<Replica, Future<Long>> replicaUpload : replicaUploads.entrySet()) {
+      Replica replica = replicaUpload.getKey();
+      try {
+        replicaUpload.getValue().get(REPLICA_STALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        logger.warn("Uploading {} to replica of image {} failed, dropping it.", fileName, replica.image.getImageId(),
+            e.getCause());
+        replica.failed = true;
+      } catch (TimeoutException e) {
+        logger.warn("Uploading {} to replica of image {} stalled, dropping it.", fileName, replica.image.getImageId());
+        replicaUpload.getValue().cancel(true);
+        replica.failed = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InternalException("Interrupted while waiting for replica uploads.", e);
+      }
+    }
+  }
+
   /**
    * Peak into the stream for the VMDK signature.
    *
@@ -183,6 +366,7 @@ public class ImageLoader {
 
   private long loadImageFromOva(EsxOvaFile esxOvaFile,
                                 Image image,
+                                List<Replica> replicas,
                                 EsxCloudVmx ecv)
       throws InvalidOvaException, IOException, InternalException, VmdkFormatException, NameTakenException {
 
@@ -190,6 +374,15 @@ public class ImageLoader {
 
     // Upload ECV configuration file.
     increasedImageSize += uploadECVFile(ecv, image);
+    for (Replica replica : replicas) {
+      try {
+        uploadECVFile(ecv, replica.image);
+      } catch (Exception e) {
+        logger.warn("Uploading configuration to replica of image {} failed, dropping it.", replica.image.getImageId(),
+            e);
+        replica.failed = true;
+      }
+    }
 
     // Upload disks.
     int dataDisk = 0;
@@ -198,7 +391,7 @@ public class ImageLoader {
       if (dataDisk > 0) {
         diskFileSuffix = String.format("-data%d%s", dataDisk, diskFileSuffix);
       }
-      increasedImageSize += image.addDisk(diskFileSuffix, diskStream);
+      increasedImageSize += addDisk(image, replicas, diskFileSuffix, diskStream);
       dataDisk += 1;
     }
 
@@ -231,5 +424,21 @@ public class ImageLoader {
   public class Result {
     public long imageSize = 0;
     public Map<String, String> imageSettings = new HashMap<>();
+    public String contentDigest;
+    public List<String> replicatedDatastores = new ArrayList<>();
+  }
+
+  /**
+   * An image being uploaded to a replica image store.
+   */
+  private static class Replica {
+    private final ImageStore imageStore;
+    private final Image image;
+    private volatile boolean failed;
+
+    private Replica(ImageStore imageStore, Image image) {
+      this.imageStore = imageStore;
+      this.image = image;
+    }
   }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pipe between the thread which reads an image upload and the thread which copies it to a replica.
+ * <p>
+ * Unlike a {@link java.io.PipedOutputStream}, a write gives up once the reader has not made room for the stall
+ * timeout, so a stalled replica cannot hold up the upload. A pipe which is aborted fails its reader instead of ending
+ * its stream, so a replica never takes a truncated disk for a complete one.
+ */
+class ReplicaPipe {
+  private static final byte[] END_OF_STREAM = new byte[0];
+
+  private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+  private final int capacityBytes;
+  private final Semaphore capacity;
+  private final long stallTimeoutMillis;
+  private final OutputStream outputStream = new PipeOutputStream();
+  private final InputStream inputStream = new PipeInputStream();
+
+  private volatile boolean aborted;
+  private volatile boolean readerClosed;
+
+  ReplicaPipe(int capacityBytes, long stallTimeout, TimeUnit unit) {
+    this.capacityBytes = capacityBytes;
+    this.capacity = new Semaphore(capacityBytes);
+    this.stallTimeoutMillis = unit.toMillis(stallTimeout);
+  }
+
+  OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  InputStream getInputStream() {
+    return inputStream;
+  }
+
+  /**
+   * Fails the reader of the pipe with an {@link IOException}.
+   */
+  void abort() {
+    aborted = true;
+    chunks.add(END_OF_STREAM);
+  }
+
+  private class PipeOutputStream extends OutputStream {
+    private boolean closed;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        checkOpen();
+        int chunkSize = Math.min(len, capacityBytes);
+        try {
+          if (!capacity.tryAcquire(chunkSize, stallTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IOException(String.format("Replica did not read for %dms", stallTimeoutMillis));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while writing to replica");
+        }
+
+        checkOpen();
+        chunks.add(Arrays.copyOfRange(b, off, off + chunkSize));
+        off += chunkSize;
+        len -= chunkSize;
+      }
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        chunks.add(END_OF_STREAM);
+      }
+    }
+
+    private void checkOpen() throws IOException {
+      if (closed || aborted) {
+        throw new IOException("Pipe closed");
+      }
+
+      if (readerClosed) {
+        throw new IOException("Replica closed its end of the pipe");
+      }
+    }
+  }
+
+  private class PipeInputStream extends InputStream {
+    private byte[] chunk;
+    private int position;
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+
+      if (chunk == END_OF_STREAM) {
+        return -1;
+      }
+
+      if (chunk == null || position == chunk.length) {
+        try {
+          chunk = chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while reading from upload");
+        }
+        position = 0;
+      }
+
+      if (aborted) {
+        throw new IOException("Upload to replica was aborted");
+      }
+
+      if (chunk == END_OF_STREAM) {
+        return -1;
+      }
+
+      int bytesRead = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, bytesRead);
+      position += bytesRead;
+      if (position == chunk.length) {
+        capacity.release(chunk.length);
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void close() {
+      readerClosed = true;
+      // Wake a writer waiting for room, it fails on the closed reader.
+      capacity.release(capacityBytes);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Input stream which copies every byte read from the underlying stream to a set of branch output streams.
+ * A branch which fails to take the bytes is closed and dropped, and reading goes on with the remaining branches.
+ * Closing this stream closes the branches, but leaves the underlying stream open for the caller.
+ */
+class TeeInputStream extends FilterInputStream {
+  private static final Logger logger = LoggerFactory.getLogger(TeeInputStream.class);
+  private static final int SKIP_BUFFER_SIZE = 8192;
+
+  private final Map<OutputStream, Consumer<IOException>> branches = new LinkedHashMap<>();
+
+  TeeInputStream(InputStream in) {
+    super(in);
+  }
+
+  /**
+   * Adds a branch.
+   *
+   * @param outputStream stream to copy the bytes to
+   * @param onFailure    invoked when the branch fails and is dropped
+   */
+  void addBranch(OutputStream outputStream, Consumer<IOException> onFailure) {
+    branches.put(outputStream, onFailure);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b != -1) {
+      copyToBranches(new byte[]{(byte) b}, 0, 1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int bytesRead = in.read(b, off, len);
+    if (bytesRead > 0) {
+      copyToBranches(b, off, bytesRead);
+    }
+    return bytesRead;
+  }
+
+  /**
+   * Skipped bytes are read, so that the branches see them as well.
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+    long skipped = 0;
+    while (skipped < n) {
+      int bytesRead = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+      if (bytesRead == -1) {
+        break;
+      }
+      skipped += bytesRead;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  @Override
+  public void close() {
+    for (OutputStream outputStream : branches.keySet()) {
+      try {
+        outputStream.close();
+      } catch (IOException e) {
+        logger.warn("Failed to close branch {}", outputStream, e);
+      }
+    }
+    branches.clear();
+  }
+
+  private void copyToBranches(byte[] b, int off, int len) {
+    Iterator<Map.Entry<OutputStream, Consumer<IOException>>> iterator = branches.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<OutputStream, Consumer<IOException>> branch = iterator.next();
+      try {
+        branch.getKey().write(b, off, len);
+      } catch (IOException e) {
+        iterator.remove();
+        try {
+          branch.getKey().close();
+        } catch (IOException ex) {
+          // ignore, the branch is dropped anyway.
+        }
+        branch.getValue().accept(e);
+      }
+    }
+  }
+}
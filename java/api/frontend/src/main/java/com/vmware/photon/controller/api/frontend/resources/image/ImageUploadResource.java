@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources.image;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.frontend.resources.routes.TaskResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.Task;
+import static com.vmware.photon.controller.api.frontend.Responses.generateCustomResponse;
+
+import com.google.inject.Inject;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import java.io.InputStream;
+
+/**
+ * This resource is for a resumable, chunked image upload.
+ * <p>
+ * Chunks are numbered from 0 and can be uploaded in any order, in parallel and again, each with the hex encoded
+ * SHA-256 checksum of its content. The upload lists the chunks received so far, so that a client can resume it
+ * after losing its connection. Once all chunks have been received, the upload is committed, which creates the image
+ * from the chunks in order.
+ */
+@Path(ImageResourceRoutes.IMAGE_UPLOAD_PATH)
+@Api(value = ImageResourceRoutes.API)
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class ImageUploadResource {
+
+  private final ImageFeClient imageFeClient;
+
+  @Inject
+  public ImageUploadResource(ImageFeClient imageFeClient) {
+    this.imageFeClient = imageFeClient;
+  }
+
+  @GET
+  @ApiOperation(value = "Get a chunked image upload, including the chunks received so far",
+      response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Image upload API representation")
+  })
+  public Response get(@Context Request request, @PathParam("id") String id)
+      throws InternalException, ExternalException {
+    return generateCustomResponse(
+        Response.Status.OK,
+        imageFeClient.getUpload(id),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+
+  @PUT
+  @Path(ImageResourceRoutes.IMAGE_UPLOAD_CHUNK_PATH)
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @ApiOperation(value = "Upload a chunk of a chunked image upload", response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "Chunk stored, the image upload lists the chunks received so far")
+  })
+  public Response putChunk(@Context Request request,
+                           @PathParam("id") String id,
+                           @PathParam("index") int index,
+                           @QueryParam("checksum") String checksum,
+                           InputStream chunk)
+      throws InternalException, ExternalException {
+    return generateCustomResponse(
+        Response.Status.OK,
+        imageFeClient.putUploadChunk(id, index, checksum, chunk),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+
+  @POST
+  @Path(ImageResourceRoutes.IMAGE_UPLOAD_COMMIT_ACTION)
+  @ApiOperation(value = "Create the image from all chunks of a chunked image upload", response = Task.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 201, message = "Task created, image creation process can be fetched via the task")
+  })
+  public Response commit(@Context Request request, @PathParam("id") String id)
+      throws InternalException, ExternalException {
+    return generateCustomResponse(
+        Response.Status.CREATED,
+        imageFeClient.commitUpload(id),
+        (ContainerRequest) request,
+        TaskResourceRoutes.TASK_PATH);
+  }
+
+  @DELETE
+  @ApiOperation(value = "Abort a chunked image upload and discard its chunks")
+  @ApiResponses(value = {
+      @ApiResponse(code = 204, message = "Image upload deleted")
+  })
+  public Response delete(@PathParam("id") String id) throws InternalException, ExternalException {
+    imageFeClient.deleteUpload(id);
+    return Response.noContent().build();
+  }
+}
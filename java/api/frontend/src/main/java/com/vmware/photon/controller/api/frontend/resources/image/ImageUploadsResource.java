@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources.image;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.ImageUploadCreateSpec;
+import static com.vmware.photon.controller.api.frontend.Responses.generateCustomResponse;
+
+import com.google.inject.Inject;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import io.dropwizard.validation.Validated;
+import org.glassfish.jersey.server.ContainerRequest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+/**
+ * This resource is for starting resumable, chunked image uploads.
+ */
+@Path(ImageResourceRoutes.IMAGE_UPLOADS_PATH)
+@Api(value = ImageResourceRoutes.API)
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class ImageUploadsResource {
+
+  private final ImageFeClient imageFeClient;
+
+  @Inject
+  public ImageUploadsResource(ImageFeClient imageFeClient) {
+    this.imageFeClient = imageFeClient;
+  }
+
+  @POST
+  @ApiOperation(value = "Start a chunked image upload", response = ImageUpload.class)
+  @ApiResponses(value = {
+      @ApiResponse(code = 201, message = "Upload created, chunks can be uploaded to it")
+  })
+  public Response create(@Context Request request,
+                         @Validated ImageUploadCreateSpec spec)
+      throws InternalException, ExternalException {
+    return generateCustomResponse(
+        Response.Status.CREATED,
+        imageFeClient.createUpload(spec),
+        (ContainerRequest) request,
+        ImageResourceRoutes.IMAGE_UPLOAD_PATH);
+  }
+}
@@ -23,4 +23,12 @@ public class ImageResourceRoutes {
   public static final String IMAGE_PATH = "/images/{id}";
 
   public static final String IMAGE_TASKS_PATH = "/images/{id}/tasks";
+
+  public static final String IMAGE_UPLOADS_PATH = "/images/uploads";
+
+  public static final String IMAGE_UPLOAD_PATH = "/images/uploads/{id}";
+
+  public static final String IMAGE_UPLOAD_CHUNK_PATH = "/chunks/{index}";
+
+  public static final String IMAGE_UPLOAD_COMMIT_ACTION = "/commit";
 }
@@ -536,6 +536,42 @@ public class ImageXenonBackendTest {
       assertThat(imageEntity.getSize(), is(newImageSize));
     }
 
+    @Test
+    public void testUpdateContentDigest() throws Throwable {
+      imageName = UUID.randomUUID().toString();
+      String imageId = createImageDocument(xenonClient, imageName, ImageState.READY, 1L, 10, 8, 5, 2);
+      ImageEntity imageEntity = imageBackend.findById(imageId);
+
+      imageBackend.updateContentDigest(imageEntity, "content-digest");
+      ImageService.State savedState = xenonClient.get(ImageServiceFactory.SELF_LINK + "/" + imageId)
+          .getBody(ImageService.State.class);
+      assertThat(savedState.contentDigest, is("content-digest"));
+    }
+
+    @Test
+    public void testFindReadyImageByUploadDigest() throws Throwable {
+      imageName = UUID.randomUUID().toString();
+      String imageId = createImageDocument(xenonClient, imageName, ImageState.READY, 1L, 10, 8, 5, 2);
+      imageBackend.updateUploadDigest(imageId, "upload-digest");
+      String creatingImageName = UUID.randomUUID().toString();
+      String creatingImageId = createImageDocument(xenonClient, creatingImageName, ImageState.CREATING,
+          1L, 10, 8, 5, 2);
+      imageBackend.updateUploadDigest(creatingImageId, "other-upload-digest");
+
+      assertThat(imageBackend.findReadyImageByUploadDigest("upload-digest", imageName, ImageReplication.EAGER)
+          .getId(), is(imageId));
+      assertThat(imageBackend.findReadyImageByUploadDigest("upload-digest", "/tmp/" + imageName,
+          ImageReplication.EAGER).getId(), is(imageId));
+      assertThat(imageBackend.findReadyImageByUploadDigest("upload-digest", "other-name", ImageReplication.EAGER),
+          nullValue());
+      assertThat(imageBackend.findReadyImageByUploadDigest("upload-digest", imageName, ImageReplication.ON_DEMAND),
+          nullValue());
+      assertThat(imageBackend.findReadyImageByUploadDigest("other-upload-digest", creatingImageName,
+          ImageReplication.EAGER), nullValue());
+      assertThat(imageBackend.findReadyImageByUploadDigest("unknown-upload-digest", imageName,
+          ImageReplication.EAGER), nullValue());
+    }
+
     @Test
     public void testUpdateImageDatastore() throws Throwable {
       imageName = UUID.randomUUID().toString();
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.config.ReferenceCacheConfig;
+import com.vmware.photon.controller.api.frontend.exceptions.external.FlavorNotFoundException;
+import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.services.common.QueryTask;
+
+import com.google.common.base.Ticker;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link ReferenceEntityCache}.
+ */
+public class ReferenceEntityCacheTest {
+
+  private static final String FLAVOR_LINK = FlavorServiceFactory.SELF_LINK + "/flavor-id";
+
+  private ReferenceCacheConfig config;
+  private AtomicInteger loads;
+  private FlavorService.State flavor;
+  private AtomicLong nanos;
+  private Ticker ticker;
+
+  @BeforeMethod
+  public void setUp() {
+    config = new ReferenceCacheConfig();
+    config.setEnabled(true);
+
+    loads = new AtomicInteger();
+    flavor = new FlavorService.State();
+    flavor.name = "core-100";
+    flavor.kind = "vm";
+    flavor.documentSelfLink = FLAVOR_LINK;
+
+    nanos = new AtomicLong();
+    ticker = new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    };
+  }
+
+  @Test
+  public void testHitAfterMiss() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+
+    FlavorService.State first = cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    FlavorService.State second = cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(1));
+    assertThat(cache.getMisses(), is(1L));
+    assertThat(cache.getHits(), is(1L));
+    assertThat(second.name, is("core-100"));
+    assertThat(second, not(sameInstance(first)));
+  }
+
+  @Test
+  public void testExpiredEntryIsReloaded() throws Throwable {
+    config.setFlavorTtlMs(1);
+    ReferenceEntityCache cache = new ReferenceEntityCache(config, ticker);
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    nanos.incrementAndGet();
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(2));
+    assertThat(cache.getHits(), is(1L));
+  }
+
+  @Test
+  public void testDocumentInvalidatedDuringLoadIsNotCached() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config, ticker);
+    String nameKey = "flavor-name:vm/core-100";
+
+    FlavorService.State loaded = cache.get(nameKey, FlavorService.State.class, () -> {
+      FlavorService.State document = load();
+      cache.invalidate(FLAVOR_LINK);
+      return document;
+    });
+    cache.get(nameKey, FlavorService.State.class, this::load);
+    cache.get(nameKey, FlavorService.State.class, this::load);
+
+    assertThat(loaded.name, is("core-100"));
+    assertThat(loads.get(), is(2));
+    assertThat(cache.getHits(), is(1L));
+  }
+
+  @Test
+  public void testInvalidationBeforeLoadDoesNotPreventCaching() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config, ticker);
+
+    cache.invalidate(FLAVOR_LINK);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(1));
+    assertThat(cache.getHits(), is(1L));
+  }
+
+  @Test
+  public void testInvalidateDropsLookupKeys() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+    String nameKey = "flavor-name:vm/core-100";
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(nameKey, FlavorService.State.class, this::load);
+    cache.invalidate(FLAVOR_LINK);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(nameKey, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(4));
+    assertThat(cache.getHits(), is(0L));
+  }
+
+  @Test
+  public void testNotificationInvalidatesDocument() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+    String nameKey = "flavor-name:vm/core-100";
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(nameKey, FlavorService.State.class, this::load);
+
+    QueryTask queryTask = new QueryTask();
+    queryTask.results = new ServiceDocumentQueryResult();
+    queryTask.results.documentLinks = Collections.singletonList(FLAVOR_LINK);
+    cache.handleNotification(Operation.createPatch(null).setBody(queryTask));
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(nameKey, FlavorService.State.class, this::load);
+    assertThat(loads.get(), is(4));
+    assertThat(cache.getHits(), is(0L));
+  }
+
+  @Test
+  public void testInvalidateKeepsOtherDocuments() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+    FlavorService.State otherFlavor = new FlavorService.State();
+    otherFlavor.name = "core-200";
+    otherFlavor.kind = "vm";
+    otherFlavor.documentSelfLink = FlavorServiceFactory.SELF_LINK + "/other-flavor-id";
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(otherFlavor.documentSelfLink, FlavorService.State.class, () -> otherFlavor);
+    cache.invalidate(FLAVOR_LINK);
+    cache.get(otherFlavor.documentSelfLink, FlavorService.State.class, () -> otherFlavor);
+
+    assertThat(cache.getHits(), is(1L));
+  }
+
+  @Test
+  public void testDisabledCacheAlwaysLoads() throws Throwable {
+    config.setEnabled(false);
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(2));
+    assertThat(cache.getMisses(), is(0L));
+  }
+
+  @Test
+  public void testZeroTtlAlwaysLoads() throws Throwable {
+    config.setFlavorTtlMs(0);
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+    cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test(expectedExceptions = FlavorNotFoundException.class)
+  public void testLoaderExceptionIsNotCached() throws Throwable {
+    ReferenceEntityCache cache = new ReferenceEntityCache(config);
+
+    try {
+      cache.get(FLAVOR_LINK, FlavorService.State.class, () -> {
+        throw new FlavorNotFoundException("flavor-id");
+      });
+    } finally {
+      cache.get(FLAVOR_LINK, FlavorService.State.class, this::load);
+      assertThat(loads.get(), is(1));
+    }
+  }
+
+  private FlavorService.State load() {
+    loads.incrementAndGet();
+    return flavor;
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import com.vmware.photon.controller.api.frontend.TestModule;
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.config.QuotaEscrowConfig;
+import com.vmware.photon.controller.api.frontend.entities.QuotaLineItemEntity;
+import com.vmware.photon.controller.api.frontend.exceptions.external.QuotaException;
+import com.vmware.photon.controller.api.frontend.lib.QuotaCost;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.QuotaUnit;
+import com.vmware.photon.controller.api.model.ResourceTicketCreateSpec;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketServiceFactory;
+import com.vmware.photon.controller.common.xenon.BasicServiceHost;
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests {@link ResourceTicketEscrow}.
+ */
+@Guice(modules = {XenonBackendTestModule.class, TestModule.class})
+public class ResourceTicketEscrowTest {
+
+  private static final QuotaCost VM_COST =
+      new QuotaCost(ImmutableList.of(new QuotaLineItemEntity(QuotaLineItem.VM, 1.0, QuotaUnit.COUNT)));
+
+  @Inject
+  private BasicServiceHost basicServiceHost;
+
+  @Inject
+  private ApiFeXenonRestClient apiFeXenonRestClient;
+
+  @Inject
+  private ResourceTicketBackend resourceTicketBackend;
+
+  @Inject
+  private TenantXenonBackend tenantXenonBackend;
+
+  private ScheduledExecutorService scheduledExecutorService;
+
+  private AtomicLong clock;
+
+  private QuotaEscrowConfig config;
+
+  private String resourceTicketId;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    scheduledExecutorService = mock(ScheduledExecutorService.class);
+    clock = new AtomicLong(System.currentTimeMillis());
+    config = new QuotaEscrowConfig();
+    config.setEnabled(true);
+    config.setLeaseBatch(4);
+    // reconcile is driven by the tests
+    config.setReconcileIntervalMs(TimeUnit.HOURS.toMillis(1));
+    config.setLeaseDurationMs(TimeUnit.HOURS.toMillis(2));
+    config.setLeaseIdleMs(TimeUnit.HOURS.toMillis(1));
+
+    String tenantId = XenonBackendTestHelper.createTenant(tenantXenonBackend, "t1");
+    ResourceTicketCreateSpec spec = new ResourceTicketCreateSpec();
+    spec.setName("rt1");
+    spec.setLimits(ImmutableList.of(new QuotaLineItem(QuotaLineItem.VM, 10, QuotaUnit.COUNT)));
+    resourceTicketId = resourceTicketBackend.create(tenantId, spec).getId();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Throwable {
+    ServiceHostUtils.deleteAllDocuments(basicServiceHost, "test-host");
+  }
+
+  @AfterClass
+  public void afterClass() throws Throwable {
+    apiFeXenonRestClient.stop();
+    basicServiceHost.destroy();
+  }
+
+  @Test
+  public void testConsumeFromLeaseAndReconcile() throws Throwable {
+    ResourceTicketEscrow escrow = createEscrow();
+
+    for (int i = 0; i < 3; i++) {
+      escrow.consume(resourceTicketId, VM_COST);
+    }
+
+    // one batch of 4 was leased, and the usage was moved out of it before each consume returned
+    ResourceTicketService.State ticket = getTicket();
+    assertThat(ticket.leases.size(), is(1));
+    assertThat(ticket.leases.values().iterator().next().amounts.get(QuotaLineItem.VM).getValue(), is(1.0));
+    assertThat(ticket.usageMap.get(QuotaLineItem.VM).getValue(), is(3.0));
+
+    escrow.giveBack(resourceTicketId, VM_COST);
+    escrow.reconcile();
+
+    ticket = getTicket();
+    assertThat(ticket.usageMap.get(QuotaLineItem.VM).getValue(), is(2.0));
+    assertThat(ticket.leases.values().iterator().next().amounts.get(QuotaLineItem.VM).getValue(), is(2.0));
+  }
+
+  @Test
+  public void testLimitIsEnforcedExactly() throws Throwable {
+    ResourceTicketEscrow escrow = createEscrow();
+
+    // batches of 4, 4 and then only the exact shortfall of the last two
+    for (int i = 0; i < 10; i++) {
+      escrow.consume(resourceTicketId, VM_COST);
+    }
+
+    try {
+      escrow.consume(resourceTicketId, VM_COST);
+      fail("consume quota exceeding limit should have failed");
+    } catch (QuotaException e) {
+      assertThat(e.getLimit().getValue(), is(10.0));
+    }
+
+    escrow.reconcile();
+    assertThat(getTicket().usageMap.get(QuotaLineItem.VM).getValue(), is(10.0));
+  }
+
+  @Test
+  public void testIdleLeaseIsGivenBack() throws Throwable {
+    config.setLeaseIdleMs(1);
+    ResourceTicketEscrow escrow = createEscrow();
+
+    escrow.consume(resourceTicketId, VM_COST);
+    clock.addAndGet(2);
+    escrow.reconcile();
+
+    ResourceTicketService.State ticket = getTicket();
+    assertThat(ticket.usageMap.get(QuotaLineItem.VM).getValue(), is(1.0));
+    assertThat(ticket.leases.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testUsageOfDroppedLeaseIsLimitChecked() throws Throwable {
+    ResourceTicketEscrow escrow = createEscrow();
+
+    for (int i = 0; i < 3; i++) {
+      escrow.consume(resourceTicketId, VM_COST);
+    }
+    assertThat(getTicket().usageMap.get(QuotaLineItem.VM).getValue(), is(3.0));
+
+    // the ticket drops the lease and its headroom is handed out to another consumer
+    dropLeases();
+    ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+    patch.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+    patch.cost.put(QuotaLineItem.VM, new QuotaLineItem(QuotaLineItem.VM, 7.0, QuotaUnit.COUNT));
+    patchTicket(patch);
+
+    try {
+      escrow.consume(resourceTicketId, VM_COST);
+      fail("writing usage exceeding limit should have failed");
+    } catch (QuotaException e) {
+      assertThat(e.getLimit().getValue(), is(10.0));
+    }
+    assertThat(getTicket().usageMap.get(QuotaLineItem.VM).getValue(), is(10.0));
+
+    escrow.giveBack(resourceTicketId, VM_COST);
+    escrow.reconcile();
+
+    ResourceTicketService.State ticket = getTicket();
+    assertThat(ticket.usageMap.get(QuotaLineItem.VM).getValue(), is(9.0));
+    assertThat(ticket.leases.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testExpiredLeaseIsReplaced() throws Throwable {
+    ResourceTicketEscrow escrow = createEscrow();
+
+    escrow.consume(resourceTicketId, VM_COST);
+    String holder = getTicket().leases.keySet().iterator().next();
+
+    // the ticket may have dropped the lease, so the next consume takes a new one
+    clock.addAndGet(config.getLeaseDurationMs());
+    escrow.consume(resourceTicketId, VM_COST);
+
+    ResourceTicketService.State ticket = getTicket();
+    assertThat(ticket.usageMap.get(QuotaLineItem.VM).getValue(), is(2.0));
+    assertThat(ticket.leases.size(), is(2));
+    assertThat(ticket.leases.get(holder).amounts.get(QuotaLineItem.VM).getValue(), is(3.0));
+
+    // the rest of the old lease is given back on reconcile
+    escrow.reconcile();
+    ticket = getTicket();
+    assertThat(ticket.leases.size(), is(1));
+    assertThat(ticket.leases.containsKey(holder), is(false));
+  }
+
+  @Test
+  public void testConcurrentConsumesStopAtLimit() throws Throwable {
+    ResourceTicketEscrow escrow = createEscrow();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Boolean>> consumes = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        consumes.add(() -> {
+          try {
+            escrow.consume(resourceTicketId, VM_COST);
+            return true;
+          } catch (QuotaException e) {
+            return false;
+          }
+        });
+      }
+
+      int consumed = 0;
+      for (Future<Boolean> result : executor.invokeAll(consumes)) {
+        if (result.get()) {
+          consumed++;
+        }
+      }
+
+      assertThat(consumed, is(10));
+      assertThat(getTicket().usageMap.get(QuotaLineItem.VM).getValue(), is(10.0));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ResourceTicketEscrow createEscrow() {
+    return new ResourceTicketEscrow(apiFeXenonRestClient, config, scheduledExecutorService, clock::get);
+  }
+
+  /**
+   * Empties the leases on the ticket, which is what the ticket does with leases that are not renewed in time.
+   */
+  private void dropLeases() throws Throwable {
+    for (String holder : getTicket().leases.keySet()) {
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.LEASE_RECONCILE;
+      patch.leaseHolder = holder;
+      patch.leaseDurationMicros = 1L;
+      for (QuotaLineItem amount : getTicket().leases.get(holder).amounts.values()) {
+        patch.lease.put(amount.getKey(), new QuotaLineItem(amount.getKey(), -amount.getValue(), amount.getUnit()));
+      }
+      patchTicket(patch);
+    }
+  }
+
+  private void patchTicket(ResourceTicketService.Patch patch) throws Throwable {
+    apiFeXenonRestClient.patch(ResourceTicketServiceFactory.SELF_LINK + "/" + resourceTicketId, patch);
+  }
+
+  private ResourceTicketService.State getTicket() throws Throwable {
+    return apiFeXenonRestClient.get(ResourceTicketServiceFactory.SELF_LINK + "/" + resourceTicketId)
+        .getBody(ResourceTicketService.State.class);
+  }
+}
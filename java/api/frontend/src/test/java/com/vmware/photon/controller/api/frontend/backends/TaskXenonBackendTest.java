@@ -36,8 +36,13 @@ import com.vmware.photon.controller.api.model.PersistentDisk;
 import com.vmware.photon.controller.api.model.ResourceList;
 import com.vmware.photon.controller.api.model.Task;
 import com.vmware.photon.controller.api.model.Vm;
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchive;
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.xenon.common.ServiceDocument;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
@@ -57,6 +62,7 @@ import static org.mockito.Mockito.mock;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -575,6 +581,36 @@ public class TaskXenonBackendTest {
       assertThat(tasks.size(), is(initialTaskCount + 2));
     }
 
+    @Test
+    public void testFindArchivedTask() throws Throwable {
+      VmEntity vmEntity = new VmEntity();
+      vmEntity.setId(UUID.randomUUID().toString());
+      TaskEntity createdTask = taskBackend.createQueuedTask(vmEntity, Operation.CREATE_VM);
+      String taskLink = TaskServiceFactory.SELF_LINK + "/" + createdTask.getId();
+      TaskService.State task = apiFeXenonRestClient.get(taskLink).getBody(TaskService.State.class);
+
+      TaskArchiveService.Request request = new TaskArchiveService.Request();
+      request.type = TaskArchiveService.RequestType.ARCHIVE;
+      request.segment = TaskArchive.newSegmentName();
+      request.documents = Arrays.asList(task);
+      apiFeXenonRestClient.post(TaskArchiveService.SELF_LINK, request);
+      apiFeXenonRestClient.delete(taskLink, new ServiceDocument());
+
+      TaskEntity foundTask = taskBackend.findById(createdTask.getId());
+      assertThat(foundTask.getId(), is(createdTask.getId()));
+      assertThat(foundTask.getOperation(), is(Operation.CREATE_VM));
+      assertThat(taskBackend.getApiRepresentation(createdTask.getId()).getId(), is(createdTask.getId()));
+
+      List<Task> tasks = taskBackend.filter(Optional.of(vmEntity.getId()), Optional.of(Vm.KIND),
+          Optional.<String>absent(), Optional.of(1)).getItems();
+      assertThat(tasks.size(), is(1));
+      assertThat(tasks.get(0).getId(), is(createdTask.getId()));
+
+      tasks = taskBackend.filter(Optional.of(vmEntity.getId()), Optional.of(Vm.KIND),
+          Optional.of(TaskEntity.State.COMPLETED.toString()), Optional.<Integer>absent()).getItems();
+      assertThat(tasks.size(), is(0));
+    }
+
     @Test
     public void testFilterWithPagination() throws Throwable {
       ResourceList<Task> tasks = taskBackend.filter(Optional.<String>absent(), Optional.<String>absent(),
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.backends;
+
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests {@link VmHostDirectory}.
+ */
+public class VmHostDirectoryTest {
+
+  @Test
+  public void testHitAfterPut() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    assertThat(directory.getHostIp("vm-1", 0), nullValue());
+    directory.put("vm-1", "1.1.1.1", 0);
+    assertThat(directory.getHostIp("vm-1", 0), is("1.1.1.1"));
+
+    assertThat(directory.getMisses(), is(1L));
+    assertThat(directory.getHits(), is(1L));
+  }
+
+  @Test
+  public void testPutOverridesHost() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    directory.put("vm-1", "1.1.1.1", 1);
+    directory.put("vm-1", "2.2.2.2", 2);
+
+    assertThat(directory.getHostIp("vm-1", 2), is("2.2.2.2"));
+  }
+
+  @Test
+  public void testPutKeepsNewerVersion() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    directory.put("vm-1", "2.2.2.2", 2);
+    directory.put("vm-1", "1.1.1.1", 1);
+
+    assertThat(directory.getHostIp("vm-1", 1), is("2.2.2.2"));
+  }
+
+  @Test
+  public void testOlderEntryIsAMiss() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    directory.put("vm-1", "1.1.1.1", 1);
+
+    assertThat(directory.getHostIp("vm-1", 2), nullValue());
+    assertThat(directory.getHostIp("vm-1", 1), is("1.1.1.1"));
+    assertThat(directory.getMisses(), is(1L));
+    assertThat(directory.getHits(), is(1L));
+  }
+
+  @Test
+  public void testPutBlankHostRemovesVm() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    directory.put("vm-1", "1.1.1.1", 0);
+    directory.put("vm-1", "", 0);
+
+    assertThat(directory.getHostIp("vm-1", 0), nullValue());
+  }
+
+  @Test
+  public void testInvalidate() {
+    VmHostDirectory directory = new VmHostDirectory();
+
+    directory.put("vm-1", "1.1.1.1", 0);
+    directory.invalidate("vm-1");
+    directory.invalidate("vm-2");
+
+    assertThat(directory.getHostIp("vm-1", 0), nullValue());
+    assertThat(directory.getInvalidations(), is(1L));
+  }
+}
@@ -29,6 +29,7 @@ import com.vmware.photon.controller.nsxclient.NsxClient;
 import com.vmware.photon.controller.nsxclient.NsxClientFactory;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
@@ -68,6 +69,7 @@ public class XenonBackendTestModule extends AbstractModule {
     bind(HostBackend.class).to(HostXenonBackend.class);
     bind(DeploymentBackend.class).to(DeploymentXenonBackend.class);
     bind(AvailabilityZoneBackend.class).to(AvailabilityZoneXenonBackend.class);
+    bind(ServiceHost.class).to(BasicServiceHost.class);
 
     customConfigure();
   }
@@ -19,6 +19,7 @@ import com.vmware.photon.controller.api.frontend.clients.status.XenonStatusProvi
 import com.vmware.photon.controller.api.frontend.clients.status.XenonStatusProviderFactory;
 import com.vmware.photon.controller.api.frontend.config.StatusConfig;
 import com.vmware.photon.controller.api.model.Component;
+import com.vmware.photon.controller.api.model.ComponentInstance;
 import com.vmware.photon.controller.api.model.ComponentStatus;
 import com.vmware.photon.controller.api.model.SystemStatus;
 import com.vmware.photon.controller.common.clients.StatusProvider;
@@ -36,14 +37,19 @@ import com.vmware.xenon.services.common.NodeState;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
 import org.mockito.Matchers;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetSocketAddress;
@@ -54,8 +60,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link StatusFeClient}.
@@ -75,9 +83,12 @@ public class StatusFeClientTest {
   private List<ClientProxy<?>> singleInstanceClientProxies;
 
   private List<StatusProvider> photonControllerClients;
+  private StatusProviderFactory photonControllerClientFactory;
 
   private ExecutorService executor = Executors.newFixedThreadPool(5);
 
+  private ExecutorService probeExecutor = Executors.newFixedThreadPool(5);
+
   private ApiFeXenonRestClient xenonClient;
   private BasicServiceHost host;
 
@@ -185,6 +196,70 @@ public class StatusFeClientTest {
     }
   }
 
+  @Test
+  public void testSnapshotIsServedUntilFreshStatusIsRequested() throws Throwable {
+    Status readyStatus = new Status(StatusType.READY);
+    setMessageAndStats(readyStatus);
+    Status errorStatus = new Status(StatusType.ERROR);
+    setMessageAndStats(errorStatus);
+
+    mockAllClientsToReturnSameStatus(readyStatus);
+    SystemStatus systemStatus = client.getSystemStatus();
+    assertThat(systemStatus.getStatus(), is(StatusType.READY));
+    for (ComponentInstance instance : systemStatus.getComponents().get(0).getInstances()) {
+      assertThat(instance.getLastCheckedTime(), notNullValue());
+      assertThat(instance.getLatencyMillis(), notNullValue());
+    }
+
+    mockAllClientsToReturnSameStatus(errorStatus);
+    assertThat(client.getSystemStatus().getStatus(), is(StatusType.READY));
+    assertThat(client.getSystemStatus(true).getStatus(), is(StatusType.ERROR));
+    assertThat(client.getSystemStatus().getStatus(), is(StatusType.ERROR));
+
+    for (InetSocketAddress server : servers) {
+      verify(photonControllerClientFactory, times(1)).create(server);
+    }
+  }
+
+  @Test
+  public void testInstanceWhichDoesNotAnswerInTimeIsUnreachable() throws Throwable {
+    statusConfig.setProbeTimeout(Duration.milliseconds(100));
+    prepareStatusFeClient();
+
+    Status readyStatus = new Status(StatusType.READY);
+    setMessageAndStats(readyStatus);
+    mockAllClientsToReturnSameStatus(readyStatus);
+
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    when(photonControllerClients.get(0).getStatus()).then(invocation -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+        throw e;
+      }
+      return readyStatus;
+    });
+
+    try {
+      SystemStatus systemStatus = client.getSystemStatus();
+      for (ComponentInstance instance : systemStatus.getComponents().get(0).getInstances()) {
+        if (instance.getAddress().equals(servers.get(0).getHostString())) {
+          assertThat(instance.getStatus(), is(StatusType.UNREACHABLE));
+          assertThat(instance.getMessage(), containsString("timed out"));
+        } else {
+          assertThat(instance.getStatus(), is(StatusType.READY));
+        }
+      }
+
+      // the probe which timed out does not keep its thread
+      assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    } finally {
+      release.countDown();
+    }
+  }
+
   private void mockAllClientsToReturnSameStatus(Status status) {
     for (int i = 0; i < SERVER_COUNT; i++) {
       when(photonControllerClients.get(i).getStatus()).thenReturn(status);
@@ -200,13 +275,14 @@ public class StatusFeClientTest {
     host = new BasicServiceHost();
     client = new StatusFeClient(
         executor,
+        probeExecutor,
         Executors.newScheduledThreadPool(1),
         statusConfig,
         host,
         xenonClient);
 
     Map<Component, StatusProviderFactory> statusProviderFactories = client.getStatusProviderFactories();
-    StatusProviderFactory photonControllerClientFactory = spy(new XenonStatusProviderFactory(
+    photonControllerClientFactory = spy(new XenonStatusProviderFactory(
         new StaticServerSet(), executor, Executors.newScheduledThreadPool(1), host));
     setupStatusProviderFactory(photonControllerClientFactory, photonControllerClients);
     statusProviderFactories.put(Component.PHOTON_CONTROLLER, photonControllerClientFactory);
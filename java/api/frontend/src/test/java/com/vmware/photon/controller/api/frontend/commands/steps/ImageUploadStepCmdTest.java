@@ -31,7 +31,6 @@ import com.vmware.photon.controller.api.model.ImageState;
 import com.vmware.photon.controller.resource.gen.ImageReplication;
 import com.vmware.transfer.streamVmdk.VmdkFormatException;
 
-import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.powermock.modules.testng.PowerMockTestCase;
@@ -46,6 +45,7 @@ import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -63,7 +63,9 @@ import static org.testng.Assert.fail;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -92,6 +94,7 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
   private ImageEntity imageEntity;
   private ImageUploadStepCmd command;
   private InputStream inputStream;
+  private List<String> uploadedDisks;
 
   @BeforeClass
   public static void setUp() throws Throwable {
@@ -126,7 +129,12 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
     when(imageStore.createImage(anyString())).thenReturn(image);
     doNothing().when(imageStore).finalizeImage(anyObject());
     when(imageStore.getDatastore()).thenReturn(datastoreId);
-    when(image.addDisk(anyString(), any(InputStream.class))).thenReturn(imageSize);
+    // The loader reads the rest of the upload once the disks are added, so the disk content is captured on the way.
+    uploadedDisks = new ArrayList<>();
+    doAnswer(invocation -> {
+      uploadedDisks.add(OvaTestModule.readStringFromStream((InputStream) invocation.getArguments()[1]));
+      return imageSize;
+    }).when(image).addDisk(anyString(), any(InputStream.class));
   }
 
   @AfterMethod
@@ -152,7 +160,6 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
     this.inputStream = imageStream;
     imageEntity.setReplicationType(replicationType);
     step.createOrUpdateTransientResource(ImageUploadStepCmd.INPUT_STREAM, imageStream);
-    ArgumentCaptor<InputStream> inputStreamArgument = ArgumentCaptor.forClass(InputStream.class);
     Map<String, String> imageSettings = new HashMap<>();
 
     doNothing().when(imageBackend).updateSettings(imageEntity, imageSettings);
@@ -164,13 +171,12 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
     verify(imageStore).createImage(imageId);
     verify(imageStore).finalizeImage(anyObject());
     verify(imageStore).getDatastore();
-    verify(image).addDisk(anyString(), inputStreamArgument.capture());
-    InputStream capturedStream = inputStreamArgument.getAllValues().get(0);
-    String capturedImage = OvaTestModule.readStringFromStream(capturedStream);
-    assertEquals(capturedImage, ova.vmdkContent);
+    verify(image).addDisk(anyString(), any(InputStream.class));
+    assertEquals(uploadedDisks.get(0), ova.vmdkContent);
 
     verify(imageBackend).updateSettings(eq(imageEntity), any(Map.class));
     verify(imageBackend).updateSize(imageEntity, imageSize);
+    verify(imageBackend).updateContentDigest(eq(imageEntity), anyString());
     verify(imageBackend).updateImageDatastore(eq(imageEntity.getId()), anyString());
     verifyNoMoreInteractions(imageStore, imageBackend);
   }
@@ -183,7 +189,6 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
     imageStream = new BufferedInputStream(imageStream);
     imageStream.mark(MAX_VM_SIZE); // Allocate 1 MB buffer
     step.createOrUpdateTransientResource(ImageUploadStepCmd.INPUT_STREAM, imageStream);
-    ArgumentCaptor<InputStream> inputStreamArgument = ArgumentCaptor.forClass(InputStream.class);
     Map<String, String> imageSettings = new HashMap<>();
 
     doNothing().when(imageBackend).updateSettings(imageEntity, imageSettings);
@@ -198,13 +203,13 @@ public class ImageUploadStepCmdTest extends PowerMockTestCase {
     verify(imageStore, times(2)).createImage(imageId);
     verify(imageStore, times(2)).finalizeImage(anyObject());
     verify(imageStore, times(2)).getDatastore();
-    verify(image, times(2)).addDisk(anyString(), inputStreamArgument.capture());
-    InputStream capturedStream = inputStreamArgument.getAllValues().get(0);
-    String capturedImage = OvaTestModule.readStringFromStream(capturedStream);
-    assertEquals(capturedImage, ova.vmdkContent);
+    verify(image, times(2)).addDisk(anyString(), any(InputStream.class));
+    assertEquals(uploadedDisks.get(0), ova.vmdkContent);
+    assertEquals(uploadedDisks.get(1), ova.vmdkContent);
 
     verify(imageBackend, times(2)).updateSettings(eq(imageEntity), any(Map.class));
     verify(imageBackend, times(2)).updateSize(imageEntity, imageSize);
+    verify(imageBackend, times(2)).updateContentDigest(eq(imageEntity), anyString());
     verify(imageBackend, times(2)).updateImageDatastore(eq(imageEntity.getId()), anyString());
 
     verifyNoMoreInteractions(imageStore, imageBackend);
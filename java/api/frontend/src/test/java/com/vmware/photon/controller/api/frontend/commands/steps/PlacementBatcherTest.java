@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.commands.steps;
+
+import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceException;
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.Disk;
+import com.vmware.photon.controller.resource.gen.Resource;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.photon.controller.resource.gen.ResourcePlacement;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementList;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementType;
+import com.vmware.photon.controller.resource.gen.Vm;
+import com.vmware.photon.controller.resource.gen.VmPowerState;
+import com.vmware.photon.controller.rootscheduler.xenon.task.PlacementTask;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.isOneOf;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link PlacementBatcher}.
+ */
+public class PlacementBatcherTest {
+
+  private PlacementBatcher batcher;
+  private ExecutorService executor;
+  private CountDownLatch firstPlacementStarted;
+  private CountDownLatch releaseFirstPlacement;
+  private CountDownLatch joined;
+  private List<String> placeCalls;
+
+  @BeforeMethod
+  public void setUp() {
+    batcher = createBatcher(PlacementBatcher.DEFAULT_MAX_WAIT_MILLIS);
+    executor = Executors.newCachedThreadPool();
+    firstPlacementStarted = new CountDownLatch(1);
+    releaseFirstPlacement = new CountDownLatch(1);
+    joined = new CountDownLatch(0);
+    placeCalls = Collections.synchronizedList(new ArrayList<>());
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testLonePlacementIsSentRightAway() throws Throwable {
+    releaseFirstPlacement.countDown();
+
+    PlacementTask placement = batcher.place(createVmResource("vm-1"), this::place);
+
+    assertThat(placement.serverAddress.getHost(), is("host-0"));
+    assertThat(placeCalls, contains("vm-1 x1"));
+  }
+
+  @Test
+  public void testIdenticalPlacementsAreGangedWhileOneIsInFlight() throws Throwable {
+    Future<PlacementTask> first = executor.submit(() -> batcher.place(createVmResource("vm-1"), this::place));
+    awaitFirstPlacement();
+    joined = new CountDownLatch(2);
+    Future<PlacementTask> second = executor.submit(() -> batcher.place(createVmResource("vm-2"), this::place));
+    Future<PlacementTask> third = executor.submit(() -> batcher.place(createVmResource("vm-3"), this::place));
+    awaitJoined();
+    releaseFirstPlacement.countDown();
+
+    assertThat(first.get(10, TimeUnit.SECONDS).serverAddress.getHost(), is("host-0"));
+    PlacementTask secondPlacement = second.get(10, TimeUnit.SECONDS);
+    PlacementTask thirdPlacement = third.get(10, TimeUnit.SECONDS);
+    assertThat(placeCalls.size(), is(2));
+    assertThat(placeCalls.get(1), isOneOf("vm-2 x2", "vm-3 x2"));
+
+    assertThat(Arrays.asList(secondPlacement.serverAddress.getHost(), thirdPlacement.serverAddress.getHost()),
+        containsInAnyOrder("host-0", "host-1"));
+    assertPlacedIds(secondPlacement, "vm-2");
+    assertPlacedIds(thirdPlacement, "vm-3");
+    assertPlacedIds(secondPlacement.alternateCandidates.get(0).placementList, "vm-2");
+  }
+
+  @Test
+  public void testFailedGangPlacementFallsBackToSinglePlacements() throws Throwable {
+    Future<PlacementTask> first = executor.submit(() -> batcher.place(createVmResource("vm-1"), this::place));
+    awaitFirstPlacement();
+    joined = new CountDownLatch(2);
+    Future<PlacementTask> second = executor.submit(() -> batcher.place(createVmResource("vm-2"), this::placeOneHost));
+    Future<PlacementTask> third = executor.submit(() -> batcher.place(createVmResource("vm-3"), this::placeOneHost));
+    awaitJoined();
+    releaseFirstPlacement.countDown();
+
+    first.get(10, TimeUnit.SECONDS);
+    assertPlacedIds(second.get(10, TimeUnit.SECONDS), "vm-2");
+    assertPlacedIds(third.get(10, TimeUnit.SECONDS), "vm-3");
+    assertThat(placeCalls.size(), is(4));
+    assertThat(placeCalls.subList(2, 4), containsInAnyOrder("vm-2 x1", "vm-3 x1"));
+  }
+
+  @Test
+  public void testVmsWithVmConstraintsAreNotGanged() throws Throwable {
+    Future<PlacementTask> first = executor.submit(() -> batcher.place(createVmResource("vm-1"), this::place));
+    awaitFirstPlacement();
+    Resource resource = createVmResource("vm-2");
+    resource.getVm().addToResource_constraints(
+        new ResourceConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, Arrays.asList("vm-1")));
+
+    PlacementTask placement = batcher.place(resource, this::place);
+    releaseFirstPlacement.countDown();
+    first.get(10, TimeUnit.SECONDS);
+
+    assertPlacedIds(placement, "vm-2");
+    assertThat(placeCalls, contains("vm-1 x1", "vm-2 x1"));
+  }
+
+  @Test
+  public void testStalledPlacementInFlightReleasesTheBatch() throws Throwable {
+    batcher = createBatcher(50);
+    Future<PlacementTask> first = executor.submit(() -> batcher.place(createVmResource("vm-1"), this::place));
+    awaitFirstPlacement();
+    joined = new CountDownLatch(2);
+    Future<PlacementTask> second = executor.submit(() -> batcher.place(createVmResource("vm-2"), this::place));
+    Future<PlacementTask> third = executor.submit(() -> batcher.place(createVmResource("vm-3"), this::place));
+    awaitJoined();
+
+    assertPlacedIds(second.get(10, TimeUnit.SECONDS), "vm-2");
+    assertPlacedIds(third.get(10, TimeUnit.SECONDS), "vm-3");
+    assertThat(placeCalls.subList(1, 3), containsInAnyOrder("vm-2 x1", "vm-3 x1"));
+
+    releaseFirstPlacement.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    assertPlacedIds(batcher.place(createVmResource("vm-4"), this::place), "vm-4");
+    assertThat(placeCalls.get(3), is("vm-4 x1"));
+  }
+
+  @Test
+  public void testInterruptedBatchLeaderLeavesTheBatch() throws Throwable {
+    ExecutorService leaderExecutor = Executors.newSingleThreadExecutor();
+    Future<PlacementTask> first = executor.submit(() -> batcher.place(createVmResource("vm-1"), this::place));
+    awaitFirstPlacement();
+    joined = new CountDownLatch(1);
+    Future<PlacementTask> second = leaderExecutor.submit(() -> batcher.place(createVmResource("vm-2"), this::place));
+    awaitJoined();
+    joined = new CountDownLatch(1);
+    Future<PlacementTask> third = executor.submit(() -> batcher.place(createVmResource("vm-3"), this::place));
+    awaitJoined();
+    leaderExecutor.shutdownNow();
+
+    try {
+      second.get(10, TimeUnit.SECONDS);
+      fail("Batch leader should have been interrupted");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(InterruptedException.class));
+    }
+    assertPlacedIds(third.get(10, TimeUnit.SECONDS), "vm-3");
+    assertThat(placeCalls.get(1), is("vm-3 x1"));
+
+    releaseFirstPlacement.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    assertPlacedIds(batcher.place(createVmResource("vm-4"), this::place), "vm-4");
+    assertThat(placeCalls, contains("vm-1 x1", "vm-3 x1", "vm-4 x1"));
+  }
+
+  /**
+   * Places the resources on host-0, host-1 and so on. The first placement waits until it is released.
+   */
+  private PlacementTask place(Resource resource, int placementCount) {
+    placeCalls.add(resource.getVm().getId() + " x" + placementCount);
+    if (placeCalls.size() == 1) {
+      firstPlacementStarted.countDown();
+      try {
+        releaseFirstPlacement.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    PlacementTask placement = new PlacementTask();
+    placement.placements = new ArrayList<>();
+    for (int i = 0; i < placementCount; i++) {
+      placement.placements.add(createCandidate("host-" + i, resource));
+    }
+    placement.serverAddress = placement.placements.get(0).serverAddress;
+    placement.generation = placement.placements.get(0).generation;
+    placement.resource = new Resource();
+    placement.resource.setPlacement_list(placement.placements.get(0).placementList);
+    placement.alternateCandidates = Arrays.asList(createCandidate("host-" + placementCount, resource));
+    return placement;
+  }
+
+  /**
+   * Fails the placements of more than one resource, as if a single host accepted the resource.
+   */
+  private PlacementTask placeOneHost(Resource resource, int placementCount) throws NoSuchResourceException {
+    if (placementCount > 1) {
+      placeCalls.add(resource.getVm().getId() + " x" + placementCount);
+      throw new NoSuchResourceException("Only 1 of " + placementCount + " requested placements could be satisfied");
+    }
+    return place(resource, placementCount);
+  }
+
+  private PlacementBatcher createBatcher(long maxWaitMillis) {
+    return new PlacementBatcher(maxWaitMillis) {
+      @Override
+      void onJoined(Resource resource, int index) {
+        joined.countDown();
+      }
+    };
+  }
+
+  private void awaitFirstPlacement() throws InterruptedException {
+    assertThat(firstPlacementStarted.await(10, TimeUnit.SECONDS), is(true));
+  }
+
+  private void awaitJoined() throws InterruptedException {
+    assertThat(joined.await(10, TimeUnit.SECONDS), is(true));
+  }
+
+  private static PlacementTask.Candidate createCandidate(String host, Resource resource) {
+    PlacementTask.Candidate candidate = new PlacementTask.Candidate();
+    candidate.serverAddress = new ServerAddress(host, 8835);
+    candidate.generation = 1;
+    candidate.placementList = new ResourcePlacementList(Arrays.asList(
+        new ResourcePlacement(ResourcePlacementType.VM, resource.getVm().getId(), host),
+        new ResourcePlacement(ResourcePlacementType.DISK, resource.getVm().getDisks().get(0).getId(), "datastore-1"),
+        new ResourcePlacement(ResourcePlacementType.NETWORK, "network-1", "port-group-1")));
+    return candidate;
+  }
+
+  private static Resource createVmResource(String vmId) {
+    Vm vm = new Vm(vmId, "vm-flavor", VmPowerState.STOPPED);
+    vm.addToDisks(new Disk(vmId + "-disk", "disk-flavor", false, true, 1));
+    Resource resource = new Resource();
+    resource.setVm(vm);
+    return resource;
+  }
+
+  private static void assertPlacedIds(PlacementTask placement, String vmId) {
+    assertPlacedIds(placement.resource.getPlacement_list(), vmId);
+  }
+
+  private static void assertPlacedIds(ResourcePlacementList placementList, String vmId) {
+    List<ResourcePlacement> placements = placementList.getPlacements();
+    assertThat(placements.get(0).getResource_id(), is(vmId));
+    assertThat(placements.get(1).getResource_id(), is(vmId + "-disk"));
+    assertThat(placements.get(2).getResource_id(), is("network-1"));
+  }
+}
@@ -369,6 +369,43 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     assertThat(resourceCaptor.getValue(), is(resource));
   }
 
+  @Test
+  public void testSuccessfulVmExecutionWithVmAffinities() throws Throwable {
+    List<LocalityEntity> affinities = new ArrayList<>();
+    String[] kinds = {"vm", "vmSoftAffinity", "vmAntiAffinity", "vmSoftAntiAffinity"};
+    for (int i = 0; i < kinds.length; i++) {
+      LocalityEntity localityEntity = new LocalityEntity();
+      localityEntity.setResourceId("vm-" + i);
+      localityEntity.setKind(kinds[i]);
+      affinities.add(localityEntity);
+    }
+    vm.setAffinities(affinities);
+
+    PlacementTask placementTask = generateResourcePlacementList();
+    placementTask.resource.getPlacement_list().addToPlacements(
+        generateResourcePlacement(ResourcePlacementType.VM, "vm-id"));
+    Operation placementOperation = new Operation().setBody(placementTask);
+
+    when(photonControllerXenonRestClient.post(any(), any(), anyLong())).thenReturn(placementOperation);
+    when(hostClient.reserve(any(Resource.class), eq(42))).thenReturn(SUCCESSFUL_RESERVE_RESPONSE);
+
+    ResourceReserveStepCmd command = getVmReservationCommand();
+    command.execute();
+
+    verify(photonControllerXenonRestClient).post(any(), placementTaskCaptor.capture(), anyLong());
+    List<ResourceConstraint> constraints = placementTaskCaptor.getValue().resource.getVm().getResource_constraints();
+    assertThat(constraints.get(0).getType(), is(ResourceConstraintType.VM_AFFINITY));
+    assertThat(constraints.get(0).isSoft(), is(false));
+    assertThat(constraints.get(0).getValues().equals(ImmutableList.of("vm-0")), is(true));
+    assertThat(constraints.get(1).getType(), is(ResourceConstraintType.VM_AFFINITY));
+    assertThat(constraints.get(1).isSoft(), is(true));
+    assertThat(constraints.get(2).getType(), is(ResourceConstraintType.VM_ANTI_AFFINITY));
+    assertThat(constraints.get(2).isSoft(), is(false));
+    assertThat(constraints.get(3).getType(), is(ResourceConstraintType.VM_ANTI_AFFINITY));
+    assertThat(constraints.get(3).isSoft(), is(true));
+    assertThat(constraints.get(3).getValues().equals(ImmutableList.of("vm-3")), is(true));
+  }
+
   @Test
   public void testSuccessfulVmExecutionWithEphemeralDiskAttached() throws Exception {
     List<QuotaLineItem> quotaLineItems = new ArrayList<>();
@@ -608,6 +645,60 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     verify(hostClient, times(2)).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION));
   }
 
+  @Test
+  public void testReservationFallsBackToAlternateCandidate() throws Throwable {
+    ResourceReserveStepCmd command = getVmReservationCommand();
+
+    PlacementTask placementTask = generateResourcePlacementList();
+    PlacementTask.Candidate alternate = new PlacementTask.Candidate();
+    alternate.serverAddress = new ServerAddress("1.1.1.1", 8835);
+    alternate.generation = SUCCESSFUL_GENERATION + 1;
+    alternate.placementList = new ResourcePlacementList(new ArrayList<>());
+    placementTask.alternateCandidates = Arrays.asList(alternate);
+
+    Operation placementOperation = new Operation().setBody(placementTask);
+    when(photonControllerXenonRestClient.post(any(), any(), anyLong())).thenReturn(placementOperation);
+    when(hostClient.reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION)))
+        .thenThrow(new StaleGenerationException("Error"));
+    when(hostClient.reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION + 1)))
+        .thenReturn(SUCCESSFUL_RESERVE_RESPONSE);
+
+    command.execute();
+
+    verify(photonControllerXenonRestClient).post(any(), any(), anyLong());
+    verify(hostClient).setIpAndPort("1.1.1.1", 8835);
+    verify(hostClient).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION));
+    verify(hostClient).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION + 1));
+  }
+
+  @Test
+  public void testReservationReplacesWhenAllCandidatesStale() throws Throwable {
+    ResourceReserveStepCmd command = getVmReservationCommand();
+
+    PlacementTask placementTask = generateResourcePlacementList();
+    PlacementTask.Candidate alternate = new PlacementTask.Candidate();
+    alternate.serverAddress = new ServerAddress("1.1.1.1", 8835);
+    alternate.generation = SUCCESSFUL_GENERATION + 1;
+    alternate.placementList = new ResourcePlacementList(new ArrayList<>());
+    placementTask.alternateCandidates = Arrays.asList(alternate);
+
+    Operation placementOperation = new Operation().setBody(placementTask);
+    when(photonControllerXenonRestClient.post(any(), any(), anyLong()))
+        .thenReturn(placementOperation)
+        .thenReturn(new Operation().setBody(generateResourcePlacementList()));
+    when(hostClient.reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION)))
+        .thenThrow(new StaleGenerationException("Error"))
+        .thenReturn(SUCCESSFUL_RESERVE_RESPONSE);
+    when(hostClient.reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION + 1)))
+        .thenThrow(new StaleGenerationException("Error"));
+
+    command.execute();
+
+    verify(photonControllerXenonRestClient, times(2)).post(any(), any(), anyLong());
+    verify(hostClient, times(2)).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION));
+    verify(hostClient).reserve(any(Resource.class), eq(SUCCESSFUL_GENERATION + 1));
+  }
+
   @Test
   public void testOnFailureWithVmReservation() throws Throwable {
     ResourceReserveStepCmd command = getVmReservationCommand();
@@ -831,11 +922,11 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
   }
 
   @Test(expectedExceptions = InvalidLocalitySpecException.class,
-      expectedExceptionsMessageRegExp = "^vm locality is an unexpected constraint for creating a VM.$")
-  public void testFailedOnVmLocalityAffinity() throws Throwable {
+      expectedExceptionsMessageRegExp = "^cluster locality is an unexpected constraint for creating a VM.$")
+  public void testFailedOnUnknownLocalityAffinity() throws Throwable {
     LocalityEntity localityEntity = new LocalityEntity();
-    localityEntity.setResourceId("vm-1");
-    localityEntity.setKind("vm");
+    localityEntity.setResourceId("cluster-1");
+    localityEntity.setKind("cluster");
 
     vm.setAffinities(Arrays.asList(localityEntity));
     vm.setImageId("");
@@ -909,7 +1000,8 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     }
 
     return spy(new ResourceReserveStepCmd(
-        taskCommand, stepBackend, step, diskBackend, vmBackend, networkBackend, flavorBackend, useVirtualNetwork));
+        taskCommand, stepBackend, step, diskBackend, vmBackend, networkBackend, flavorBackend, new PlacementBatcher(),
+        useVirtualNetwork));
   }
 
   private ResourceReserveStepCmd getDiskReservationCommand() {
@@ -918,7 +1010,8 @@ public class ResourceReserveStepCmdTest extends PowerMockTestCase {
     step.addResource(disk);
 
     return spy(new ResourceReserveStepCmd(
-        taskCommand, stepBackend, step, diskBackend, vmBackend, networkBackend, flavorBackend, false));
+        taskCommand, stepBackend, step, diskBackend, vmBackend, networkBackend, flavorBackend, new PlacementBatcher(),
+        false));
   }
 
   private void attachEphemeralDisk(VmEntity vm) throws ExternalException {
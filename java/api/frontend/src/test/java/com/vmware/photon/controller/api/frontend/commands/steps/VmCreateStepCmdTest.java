@@ -37,14 +37,20 @@ import com.vmware.photon.controller.resource.gen.Datastore;
 import com.vmware.photon.controller.resource.gen.Vm;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verify;
@@ -54,6 +60,14 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import static org.testng.AssertJUnit.fail;
 
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Tests {@link VmCreateStepCmd}.
@@ -89,6 +103,7 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
   private String agentIp = "1.1.1.1";
   private String vmLocationId = "vm-location";
   private CreateVmResponse createVmResponse = new CreateVmResponse();
+  private ScheduledExecutorService stepTimeoutScheduler = Executors.newSingleThreadScheduledExecutor();
 
   @BeforeMethod
   public void setUp() throws InternalException, InterruptedException, StepNotFoundException, ExternalException {
@@ -105,6 +120,11 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
     doReturn(task).when(taskCommand).getTask();
   }
 
+  @AfterClass
+  public void tearDownClass() {
+    stepTimeoutScheduler.shutdownNow();
+  }
+
   @Test
   public void testSuccessfulVmCreate() throws Throwable {
     VmCreateStepCmd command = getVmCreateStepCmd();
@@ -170,6 +190,96 @@ public class VmCreateStepCmdTest extends PowerMockTestCase {
     verify(vmBackend).updateState(vm, VmState.ERROR);
   }
 
+  @Test
+  public void testSuccessfulAsyncVmCreate() throws Throwable {
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    when(taskCommand.getContinuationExecutor()).thenReturn(MoreExecutors.sameThreadExecutor());
+
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    CompletableFuture<Void> execution = command.executeAsync();
+    assertThat(execution.isDone(), is(false));
+
+    response.complete(createVmResponse);
+    execution.get(10, TimeUnit.SECONDS);
+
+    verify(vmBackend).updateState(vm, VmState.STOPPED, agentId, agentIp, "datastore-1", "datastore-name", null);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
+  @Test
+  public void testFailedAsyncVmCreate() throws Throwable {
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    response.completeExceptionally(new InvalidReservationException(null));
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    when(taskCommand.getContinuationExecutor()).thenReturn(MoreExecutors.sameThreadExecutor());
+
+    VmCreateStepCmd command = getVmCreateStepCmd();
+
+    try {
+      command.executeAsync().get(10, TimeUnit.SECONDS);
+      fail("should have failed due to invalid reservation exception");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(InvalidReservationException.class));
+    }
+
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+  }
+
+  @Test
+  public void testAsyncVmCreateFailureOtherThanRpcException() throws Throwable {
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    response.completeExceptionally(new CompletionException(new TimeoutException("create_vm timed out")));
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    when(taskCommand.getContinuationExecutor()).thenReturn(MoreExecutors.sameThreadExecutor());
+
+    VmCreateStepCmd command = getVmCreateStepCmd();
+
+    try {
+      command.executeAsync().get(10, TimeUnit.SECONDS);
+      fail("should have failed due to the timeout of create_vm");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    }
+
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
+  @Test
+  public void testCancelledAsyncVmCreate() throws Throwable {
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    when(taskCommand.getContinuationExecutor()).thenReturn(MoreExecutors.sameThreadExecutor());
+
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    CompletableFuture<Void> execution = command.runAsync();
+    command.cancel();
+    execution.get(10, TimeUnit.SECONDS);
+
+    verify(stepBackend).markStepAsFailed(eq(step), any(CancellationException.class));
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
+  @Test
+  public void testLateAsyncVmCreateReplyIsIgnored() throws Throwable {
+    CompletableFuture<CreateVmResponse> response = new CompletableFuture<>();
+    when(hostClient.createVmAsync(reservationId, new HashMap<>())).thenReturn(response);
+    when(taskCommand.getContinuationExecutor()).thenReturn(MoreExecutors.sameThreadExecutor());
+    when(taskCommand.getStepTimeoutScheduler()).thenReturn(stepTimeoutScheduler);
+
+    VmCreateStepCmd command = getVmCreateStepCmd();
+    command.setExecutionTimeout(10, TimeUnit.MILLISECONDS);
+    command.runAsync().get(10, TimeUnit.SECONDS);
+    verify(stepBackend).markStepAsFailed(eq(step), any(TimeoutException.class));
+
+    response.complete(createVmResponse);
+
+    verify(vmBackend).updateState(vm, VmState.ERROR);
+    verifyNoMoreInteractions(vmBackend);
+  }
+
   @Test
   public void testSuccessfulDisksAttach() throws Throwable {
     VmCreateStepCmd command = getVmCreateStepCmd();
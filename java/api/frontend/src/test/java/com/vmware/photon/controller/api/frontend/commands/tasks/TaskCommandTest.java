@@ -22,6 +22,7 @@ import com.vmware.photon.controller.api.frontend.backends.ResourceTicketXenonBac
 import com.vmware.photon.controller.api.frontend.backends.StepBackend;
 import com.vmware.photon.controller.api.frontend.backends.TaskBackend;
 import com.vmware.photon.controller.api.frontend.backends.TenantXenonBackend;
+import com.vmware.photon.controller.api.frontend.backends.VmHostDirectory;
 import com.vmware.photon.controller.api.frontend.backends.XenonBackendTestHelper;
 import com.vmware.photon.controller.api.frontend.backends.XenonBackendTestModule;
 import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
@@ -40,6 +41,7 @@ import com.vmware.photon.controller.api.frontend.entities.VmEntity;
 import com.vmware.photon.controller.api.frontend.exceptions.ApiFeException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ConcurrentTaskException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.DiskNotFoundException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.TaskNotCompletedException;
 import com.vmware.photon.controller.api.frontend.exceptions.external.VmNotFoundException;
 import com.vmware.photon.controller.api.model.HostState;
 import com.vmware.photon.controller.api.model.Operation;
@@ -55,6 +57,7 @@ import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.common.xenon.BasicServiceHost;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.resource.gen.Datastore;
 
 import com.google.common.collect.ImmutableList;
@@ -67,6 +70,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Guice;
 import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -86,6 +90,12 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests {@link TaskCommand}.
@@ -183,6 +193,7 @@ public class TaskCommandTest {
   private FlavorLoader flavorLoader;
 
   private String agentId;
+  private String vmId;
 
   @AfterClass
   public static void afterClassCleanup() throws Throwable {
@@ -220,7 +231,8 @@ public class TaskCommandTest {
     vmState.imageId = UUID.randomUUID().toString();
     vmState.projectId = projectId;
     vmState.vmState = VmState.CREATING;
-    xenonClient.post(VmServiceFactory.SELF_LINK, vmState);
+    vmId = ServiceUtils.getIDFromDocumentSelfLink(
+        xenonClient.post(VmServiceFactory.SELF_LINK, vmState).getBody(VmService.State.class).documentSelfLink);
 
     HostService.State hostState = new HostService.State();
     agentId = UUID.randomUUID().toString();
@@ -470,6 +482,130 @@ public class TaskCommandTest {
     assertThat(stepCommands[2].performed, is(true));
   }
 
+  @Test
+  public void testAsyncStepReleasesCallingThread() throws Throwable {
+    TestTaskCommand command = createTaskCommand();
+    AsyncTestStepCommand step1 = addAsyncStep(command, "step-1", false);
+    TestStepCommand step2 = addStep(command, "step-2");
+
+    CompletableFuture<Void> execution = command.executeAsync();
+
+    assertThat(step1.started, is(true));
+    assertThat(execution.isDone(), is(false));
+    assertThat(step2.performed, is(false));
+
+    step1.result.complete(null);
+
+    execution.get(10, TimeUnit.SECONDS);
+    assertThat(step1.getStep().getState(), is(StepEntity.State.COMPLETED));
+    assertThat(step2.performed, is(true));
+  }
+
+  @Test
+  public void testParallelizableStepsRunTogether() throws Throwable {
+    TestTaskCommand command = createTaskCommand();
+    AsyncTestStepCommand step1 = addAsyncStep(command, "step-1", true);
+    AsyncTestStepCommand step2 = addAsyncStep(command, "step-2", true);
+    TestStepCommand step3 = addStep(command, "step-3");
+
+    CompletableFuture<Void> execution = command.executeAsync();
+
+    assertThat(step1.started, is(true));
+    assertThat(step2.started, is(true));
+
+    step2.result.complete(null);
+    assertThat(step3.performed, is(false));
+
+    step1.result.complete(null);
+    execution.get(10, TimeUnit.SECONDS);
+    assertThat(step3.performed, is(true));
+  }
+
+  @Test
+  public void testFailedParallelizableStepFailsTask() throws Throwable {
+    TestTaskCommand command = createTaskCommand();
+    AsyncTestStepCommand step1 = addAsyncStep(command, "step-1", true);
+    AsyncTestStepCommand step2 = addAsyncStep(command, "step-2", true);
+    TestStepCommand step3 = addStep(command, "step-3");
+
+    CompletableFuture<Void> execution = command.executeAsync();
+    step1.result.complete(null);
+    step2.result.completeExceptionally(new RuntimeException("step-2 failed"));
+
+    try {
+      execution.get(10, TimeUnit.SECONDS);
+      fail("execution should fail when a parallel step fails");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TaskNotCompletedException.class));
+    }
+
+    assertThat(step1.getStep().getState(), is(StepEntity.State.COMPLETED));
+    assertThat(step2.getStep().getState(), is(StepEntity.State.ERROR));
+    assertThat(step3.performed, is(false));
+  }
+
+  @Test
+  public void testStepTimeout() throws Throwable {
+    ScheduledExecutorService stepTimeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      TestTaskCommand command = createTaskCommand();
+      command.setStepTimeoutScheduler(stepTimeoutScheduler);
+      AsyncTestStepCommand step1 = addAsyncStep(command, "step-1", false);
+      step1.setExecutionTimeout(50, TimeUnit.MILLISECONDS);
+      TestStepCommand step2 = addStep(command, "step-2");
+
+      try {
+        command.executeAsync().get(10, TimeUnit.SECONDS);
+        fail("execution should fail when a step times out");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), instanceOf(TaskNotCompletedException.class));
+      }
+
+      step1.result.complete(null);
+      assertThat(step1.getStep().getState(), is(StepEntity.State.ERROR));
+      assertThat(step2.performed, is(false));
+    } finally {
+      stepTimeoutScheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancel() throws Throwable {
+    TestTaskCommand command = createTaskCommand();
+    AsyncTestStepCommand step1 = addAsyncStep(command, "step-1", false);
+    TestStepCommand step2 = addStep(command, "step-2");
+
+    CompletableFuture<Void> execution = command.executeAsync();
+    command.cancel();
+
+    try {
+      execution.get(10, TimeUnit.SECONDS);
+      fail("execution should fail when the task is cancelled");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TaskNotCompletedException.class));
+    }
+
+    step1.result.complete(null);
+    assertThat(step1.getStep().getState(), is(StepEntity.State.ERROR));
+    assertThat(step2.performed, is(false));
+  }
+
+  @Test
+  public void testCancelBeforeExecution() throws Throwable {
+    TestTaskCommand command = createTaskCommand();
+    TestStepCommand step1 = addStep(command, "step-1");
+
+    command.cancel();
+
+    try {
+      command.executeAsync().get(10, TimeUnit.SECONDS);
+      fail("execution should fail when the task is cancelled");
+    } catch (CancellationException e) {
+    }
+
+    assertThat(step1.performed, is(false));
+  }
+
   @Test
   public void testCleanup() {
     TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
@@ -584,6 +720,88 @@ public class TaskCommandTest {
     verifyNoMoreInteractions(photonControllerXenonRestClient, hostClient);
   }
 
+  @Test
+  public void testVmGetHostClientFromHostDirectory() throws Exception {
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+    VmHostDirectory vmHostDirectory = new VmHostDirectory();
+    command.setVmHostDirectory(vmHostDirectory);
+
+    VmEntity vm = new VmEntity();
+    vm.setId("vm-1");
+    vm.setHost("1.1.1.1");
+    vm.setDocumentVersion(3);
+    vmHostDirectory.put("vm-1", "2.2.2.2", 4);
+    command.getHostClient(vm);
+
+    verify(hostClient).setHostIp("2.2.2.2");
+    verifyNoMoreInteractions(photonControllerXenonRestClient, hostClient);
+  }
+
+  @Test
+  public void testVmGetHostClientIgnoresOlderHostDirectoryEntry() throws Exception {
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+    VmHostDirectory vmHostDirectory = new VmHostDirectory();
+    command.setVmHostDirectory(vmHostDirectory);
+
+    VmEntity vm = new VmEntity();
+    vm.setId("vm-1");
+    vm.setHost("1.1.1.1");
+    vm.setDocumentVersion(4);
+    vmHostDirectory.put("vm-1", "2.2.2.2", 3);
+    command.getHostClient(vm);
+
+    verify(hostClient).setHostIp("1.1.1.1");
+    verifyNoMoreInteractions(photonControllerXenonRestClient, hostClient);
+    assertThat(vmHostDirectory.getHostIp("vm-1", 4), is("1.1.1.1"));
+  }
+
+  @Test
+  public void testVmGetHostClientWithoutCachedHostInfo() throws Exception {
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+    VmHostDirectory vmHostDirectory = new VmHostDirectory();
+    command.setVmHostDirectory(vmHostDirectory);
+
+    VmService.State patch = new VmService.State();
+    patch.agent = agentId;
+    xenonClient.patch(VmServiceFactory.SELF_LINK + "/" + vmId, patch);
+
+    VmEntity vm = new VmEntity();
+    vm.setId(vmId);
+    vm.setHost("1.1.1.1");
+    vmHostDirectory.put(vmId, "1.1.1.1", 0);
+    command.getHostClient(vm, false);
+
+    verify(hostClient).setHostIp("host-ip");
+    assertThat(vm.getAgent(), is(agentId));
+    assertThat(vm.getHost(), is("host-ip"));
+    assertThat(vmHostDirectory.getHostIp(vmId, vm.getDocumentVersion()), is("host-ip"));
+  }
+
+  @Test
+  public void testVmGetHostClientWithoutCachedHostInfoForDeletedVm() throws Exception {
+    TestTaskCommand command = new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+
+    VmEntity vm = new VmEntity();
+    vm.setId("missing-vm");
+    vm.setHost("1.1.1.1");
+
+    try {
+      command.getHostClient(vm, false);
+      fail();
+    } catch (VmNotFoundException ex) {
+    }
+
+    verifyNoMoreInteractions(photonControllerXenonRestClient, hostClient);
+  }
+
   @DataProvider(name = "getDiskEntitiesParam")
   public Object[][] getDiskEntities() {
     return new Object[][]{
@@ -642,6 +860,29 @@ public class TaskCommandTest {
     }
   }
 
+  private TestTaskCommand createTaskCommand() {
+    return new TestTaskCommand(apiFeXenonRestClient, photonControllerXenonRestClient, hostClient,
+        housekeeperClient, taskBackend, stepCommandFactory, task, deployerClient,
+        deployerXenonClient, housekeeperXenonClient);
+  }
+
+  private TestStepCommand addStep(TaskCommand command, String id) throws Exception {
+    StepEntity step = createStep(id, StepEntity.State.QUEUED);
+    task.addStep(step);
+    TestStepCommand stepCommand = new TestStepCommand(command, stepBackend, step);
+    doReturn(stepCommand).when(stepCommandFactory).createCommand(command, step);
+    return stepCommand;
+  }
+
+  private AsyncTestStepCommand addAsyncStep(TaskCommand command, String id, boolean parallelizable)
+      throws Exception {
+    StepEntity step = createStep(id, StepEntity.State.QUEUED);
+    task.addStep(step);
+    AsyncTestStepCommand stepCommand = new AsyncTestStepCommand(command, stepBackend, step, parallelizable);
+    doReturn(stepCommand).when(stepCommandFactory).createCommand(command, step);
+    return stepCommand;
+  }
+
   private StepEntity createDisableStep(String id, StepEntity.State stepState) {
     StepEntity step = createStep(id, stepState);
     step.setDisabled(true);
@@ -725,4 +966,31 @@ public class TaskCommandTest {
     protected void cleanup() {
     }
   }
+
+  /**
+   * A step command which completes when its result is completed by the test.
+   */
+  private class AsyncTestStepCommand extends TestStepCommand {
+
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private final boolean parallelizable;
+    private volatile boolean started = false;
+
+    private AsyncTestStepCommand(TaskCommand taskCommand, StepBackend stepBackend, StepEntity step,
+                                 boolean parallelizable) {
+      super(taskCommand, stepBackend, step);
+      this.parallelizable = parallelizable;
+    }
+
+    @Override
+    public boolean isParallelizable() {
+      return parallelizable;
+    }
+
+    @Override
+    protected CompletableFuture<Void> executeAsync() {
+      started = true;
+      return result;
+    }
+  }
 }
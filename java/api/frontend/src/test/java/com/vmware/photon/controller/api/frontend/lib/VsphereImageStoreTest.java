@@ -16,6 +16,7 @@ package com.vmware.photon.controller.api.frontend.lib;
 import com.vmware.photon.controller.api.frontend.backends.HostBackend;
 import com.vmware.photon.controller.api.frontend.config.ImageConfig;
 import com.vmware.photon.controller.api.frontend.exceptions.external.ExternalException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.InvalidImageDatastoreSetException;
 import com.vmware.photon.controller.api.frontend.exceptions.internal.InternalException;
 import com.vmware.photon.controller.api.model.AgentState;
 import com.vmware.photon.controller.api.model.Host;
@@ -40,6 +41,7 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -328,4 +330,47 @@ public class VsphereImageStoreTest extends PowerMockTestCase {
       }
     }
   }
+
+  /**
+   * Tests the getImageStore method.
+   */
+  public class GetImageStoreTest {
+
+    @BeforeMethod
+    public void setUp() {
+      hostBackend = mock(HostBackend.class);
+      when(hostBackend.filterByAddress(eq(HOST_ADDRESS), any())).thenReturn(buildHostList());
+      when(hostBackend.filterByState(eq(HostState.READY), eq(Optional.of(AgentState.ACTIVE)), any()))
+          .thenReturn(buildVmHostList());
+
+      hostClient = mock(HostClient.class);
+      hostClientFactory = mock(HostClientFactory.class);
+      when(hostClientFactory.create()).thenReturn(hostClient);
+
+      imageConfig = new ImageConfig();
+      imageConfig.setEndpoint(HOST_ADDRESS);
+
+      imageStore = new VsphereImageStore(hostBackend, hostClientFactory, imageConfig);
+    }
+
+    @Test
+    public void testSameDatastore() throws Exception {
+      assertThat(imageStore.getImageStore(IMAGE_DATASTORE_ID), sameInstance(imageStore));
+    }
+
+    @Test
+    public void testOtherDatastore() throws Exception {
+      VsphereImageStore otherImageStore = (VsphereImageStore) imageStore.getImageStore(VM_IMAGE_DATASTORE_ID);
+      assertThat(otherImageStore.getDatastore(), equalTo(VM_IMAGE_DATASTORE_ID));
+
+      otherImageStore.getHostClient();
+      verify(hostClient).setHostIp(VM_HOST_ADDRESS);
+    }
+
+    @Test(expectedExceptions = InvalidImageDatastoreSetException.class,
+        expectedExceptionsMessageRegExp = "No host with image datastore unknown-datastore-id is available")
+    public void testUnknownDatastore() throws Exception {
+      imageStore.getImageStore("unknown-datastore-id");
+    }
+  }
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import com.vmware.photon.controller.api.frontend.backends.XenonBackendTestModule;
+import com.vmware.photon.controller.api.frontend.backends.clients.ApiFeXenonRestClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadException;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.frontend.lib.ImageStoreFactory;
+import com.vmware.photon.controller.api.frontend.lib.LocalImageStore;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.ImageUploadCreateSpec;
+import com.vmware.photon.controller.common.xenon.BasicServiceHost;
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests {@link ChunkedImageUploadStore}.
+ */
+@Guice(modules = {XenonBackendTestModule.class})
+public class ChunkedImageUploadStoreTest {
+
+  private static final String[] CHUNKS = {"first chunk, ", "second chunk, ", "third chunk"};
+
+  private static final String DATASTORE = "datastore1";
+
+  @Inject
+  private BasicServiceHost basicServiceHost;
+
+  @Inject
+  private ApiFeXenonRestClient apiFeXenonRestClient;
+
+  private File imageStoreDirectory;
+  private ImageStoreFactory imageStoreFactory;
+  private ChunkedImageUploadStore store;
+  private String uploadId;
+
+  @BeforeMethod
+  public void setUp() throws Throwable {
+    imageStoreDirectory = Files.createTempDirectory("images").toFile();
+    imageStoreFactory = mock(ImageStoreFactory.class);
+    doReturn(new LocalImageStore(imageStoreDirectory.getPath(), DATASTORE)).when(imageStoreFactory).create();
+    store = new ChunkedImageUploadStore(apiFeXenonRestClient, imageStoreFactory);
+
+    ImageUploadCreateSpec spec = new ImageUploadCreateSpec();
+    spec.setName("image1");
+    spec.setReplicationType(ImageReplication.EAGER);
+    spec.setChunkCount(CHUNKS.length);
+    uploadId = store.create(spec).getId();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Throwable {
+    ServiceHostUtils.deleteAllDocuments(basicServiceHost, "test-host");
+    FileUtils.deleteDirectory(imageStoreDirectory);
+  }
+
+  @Test
+  public void testCreate() throws Throwable {
+    ImageUpload imageUpload = store.get(uploadId);
+    assertThat(imageUpload.getName(), is("image1"));
+    assertThat(imageUpload.getReplicationType(), is(ImageReplication.EAGER));
+    assertThat(imageUpload.getChunkCount(), is(CHUNKS.length));
+    assertThat(imageUpload.getReceivedChunks(), is(empty()));
+  }
+
+  @Test
+  public void testChunksInAnyOrder() throws Throwable {
+    putChunk(store, 2);
+    ImageUpload imageUpload = putChunk(store, 0);
+    assertThat(imageUpload.getReceivedChunks(), contains(0, 2));
+
+    // Another store, e.g. of another API-FE instance or after a restart, sees the received chunks.
+    ChunkedImageUploadStore otherStore = new ChunkedImageUploadStore(apiFeXenonRestClient, imageStoreFactory);
+    assertThat(otherStore.get(uploadId).getReceivedChunks(), contains(0, 2));
+
+    putChunk(otherStore, 1);
+    putChunk(otherStore, 1);
+    try (InputStream content = store.openContent(uploadId)) {
+      assertThat(new String(ByteStreams.toByteArray(content), StandardCharsets.UTF_8),
+          is(String.join("", CHUNKS)));
+    }
+  }
+
+  @Test
+  public void testChecksumMismatch() throws Throwable {
+    try {
+      store.putChunk(uploadId, 0, checksum(CHUNKS[1]), stream(CHUNKS[0]));
+      fail("Exception expected.");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage().startsWith("Checksum of chunk 0 is"), is(true));
+    }
+
+    assertThat(store.get(uploadId).getReceivedChunks(), is(empty()));
+    assertThat(getStagedFiles().length, is(0));
+  }
+
+  @Test(expectedExceptions = ImageUploadException.class,
+      expectedExceptionsMessageRegExp = "Chunk index 3 is not between 0 and 2")
+  public void testChunkIndexOutOfRange() throws Throwable {
+    store.putChunk(uploadId, CHUNKS.length, checksum(CHUNKS[0]), stream(CHUNKS[0]));
+  }
+
+  @Test
+  public void testUploadDigest() throws Throwable {
+    for (int index = CHUNKS.length - 1; index >= 0; index--) {
+      putChunk(store, index);
+    }
+
+    StringBuilder checksums = new StringBuilder();
+    for (String chunk : CHUNKS) {
+      checksums.append(checksum(chunk)).append('\n');
+    }
+    assertThat(store.getUploadDigest(uploadId), is(checksum(checksums.toString())));
+  }
+
+  @Test(expectedExceptions = ImageUploadException.class,
+      expectedExceptionsMessageRegExp = "Chunks \\[1\\] of image upload .* have not been received")
+  public void testOpenIncompleteContent() throws Throwable {
+    putChunk(store, 0);
+    putChunk(store, 2);
+    store.openContent(uploadId);
+  }
+
+  @Test
+  public void testCommitIsClaimedOnce() throws Throwable {
+    for (int index = 0; index < CHUNKS.length; index++) {
+      putChunk(store, index);
+    }
+
+    assertThat(store.startCommit(uploadId), is(nullValue()));
+    try {
+      store.startCommit(uploadId);
+      fail("Exception expected.");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage(), is("Image upload " + uploadId + " is being committed or has been committed"));
+    }
+
+    try {
+      putChunk(store, 0);
+      fail("Exception expected.");
+    } catch (ImageUploadException e) {
+      assertThat(e.getMessage(), is("Image upload " + uploadId + " is being committed or has been committed"));
+    }
+
+    // A failed commit releases the upload, so that it can be committed again.
+    store.abortCommit(uploadId);
+    assertThat(store.startCommit(uploadId), is(nullValue()));
+
+    // A commit repeated after one succeeded gets the task of that one.
+    store.finishCommit(uploadId, "task-id");
+    assertThat(store.startCommit(uploadId), is("task-id"));
+    assertThat(getStagedFiles().length, is(0));
+  }
+
+  @Test
+  public void testDelete() throws Throwable {
+    putChunk(store, 0);
+    store.delete(uploadId);
+
+    assertThat(getStagedFiles().length, is(0));
+    try {
+      store.get(uploadId);
+      fail("Exception expected.");
+    } catch (ImageUploadNotFoundException e) {
+      assertThat(e.getMessage(), is("Image upload '" + uploadId + "' not found"));
+    }
+  }
+
+  @Test(expectedExceptions = ImageUploadException.class,
+      expectedExceptionsMessageRegExp = "Image upload .* is being committed")
+  public void testDeleteWhileCommitting() throws Throwable {
+    for (int index = 0; index < CHUNKS.length; index++) {
+      putChunk(store, index);
+    }
+
+    store.startCommit(uploadId);
+    store.delete(uploadId);
+  }
+
+  @Test(expectedExceptions = ImageUploadNotFoundException.class)
+  public void testInvalidUploadId() throws Throwable {
+    store.get("../" + uploadId);
+  }
+
+  private ImageUpload putChunk(ChunkedImageUploadStore store, int index) throws Throwable {
+    return store.putChunk(uploadId, index, checksum(CHUNKS[index]), stream(CHUNKS[index]));
+  }
+
+  private File[] getStagedFiles() {
+    return new File(imageStoreDirectory, DATASTORE).listFiles((folder, name) -> name.startsWith(uploadId));
+  }
+
+  private static String checksum(String content) {
+    return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+  }
+
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -21,16 +21,21 @@ import com.vmware.photon.controller.api.frontend.lib.ova.OvaTestModule;
 import com.vmware.photon.controller.resource.gen.ImageReplication;
 import com.vmware.transfer.nfc.NfcClient;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import org.mockito.InOrder;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -43,6 +48,7 @@ import static org.powermock.api.mockito.PowerMockito.spy;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -135,6 +141,75 @@ public class ImageLoaderTest {
       inputStream = ova.getOvaStream();
       imageLoader.uploadImage(imageEntity, inputStream);
     }
+
+    @Test
+    void contentDigestTest() throws Throwable {
+      ova = OvaTestModule.generateOva(OvaTestModule.GOOD_OVF_FILE_CONTENT);
+      String expectedDigest;
+      try (InputStream ovaStream = ova.getOvaStream()) {
+        expectedDigest = Hashing.sha256().hashBytes(ByteStreams.toByteArray(ovaStream)).toString();
+      }
+      inputStream = ova.getOvaStream();
+
+      ImageLoader.Result result = imageLoader.uploadImage(imageEntity, inputStream);
+      assertThat(result.contentDigest, is(expectedDigest));
+      assertThat(result.replicatedDatastores, is(empty()));
+    }
+
+    @Test
+    void replicaLoadImageTestVmdk() throws Throwable {
+      ova = OvaTestModule.generateOva(OvaTestModule.GOOD_OVF_FILE_CONTENT);
+      inputStream = ova.getRawVmdkStream();
+      VsphereImageStore replicaImageStore = mock(VsphereImageStore.class);
+      VsphereImageStoreImage replicaImage = createReplicaImage(replicaImageStore, "replica-datastore");
+      StringBuilder replicatedDisk = new StringBuilder();
+      doAnswer(invocation -> {
+        replicatedDisk.append(OvaTestModule.readStringFromStream((InputStream) invocation.getArguments()[1]));
+        return (long) DISK_SIZE;
+      }).when(replicaImage).addDisk(anyString(), any(InputStream.class));
+
+      ImageLoader.Result result = new ImageLoader(imageStore, Arrays.asList(replicaImageStore))
+          .uploadImage(imageEntity, inputStream);
+      assertThat(replicatedDisk.toString(), is(ova.vmdkContent));
+      assertThat(result.imageSize, is((long) DISK_SIZE));
+      assertThat(result.replicatedDatastores, contains("replica-datastore"));
+      verify(imageStore).finalizeImage(image);
+      verify(replicaImageStore).finalizeImage(replicaImage);
+    }
+
+    @Test
+    void failedReplicaLoadImageTest() throws Throwable {
+      ova = OvaTestModule.generateOva(OvaTestModule.GOOD_OVF_FILE_CONTENT);
+      inputStream = ova.getOvaStream();
+      VsphereImageStore failingImageStore = mock(VsphereImageStore.class);
+      VsphereImageStoreImage failingImage = createReplicaImage(failingImageStore, "failing-datastore");
+      doThrow(new IOException()).when(failingImage).addDisk(anyString(), any(InputStream.class));
+      VsphereImageStore replicaImageStore = mock(VsphereImageStore.class);
+      VsphereImageStoreImage replicaImage = createReplicaImage(replicaImageStore, "replica-datastore");
+      doAnswer(invocation -> {
+        ByteStreams.exhaust((InputStream) invocation.getArguments()[1]);
+        return (long) DISK_SIZE;
+      }).when(replicaImage).addDisk(anyString(), any(InputStream.class));
+
+      ImageLoader.Result result = new ImageLoader(imageStore, Arrays.asList(failingImageStore, replicaImageStore))
+          .uploadImage(imageEntity, inputStream);
+      assertThat(result.imageSize, is((long) CONFIG_SIZE + DISK_SIZE));
+      assertThat(result.replicatedDatastores, contains("replica-datastore"));
+      verify(imageStore).finalizeImage(image);
+      verify(failingImageStore).deleteUploadFolder(failingImage);
+      verify(failingImageStore, times(0)).finalizeImage(failingImage);
+      verify(replicaImageStore).finalizeImage(replicaImage);
+    }
+
+    private VsphereImageStoreImage createReplicaImage(VsphereImageStore replicaImageStore, String datastore)
+        throws Throwable {
+      VsphereImageStoreImage replicaImage = spy(new VsphereImageStoreImage(mock(NfcClient.class), imageFolder,
+          imageId));
+      doReturn(replicaImage).when(replicaImageStore).createImage(anyString());
+      doReturn(datastore).when(replicaImageStore).getDatastore();
+      doReturn((long) CONFIG_SIZE).when(replicaImage).addFile(anyString(), any(InputStream.class), anyLong());
+      return replicaImage;
+    }
   }
 
   /**
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.lib.image;
+
+import com.google.common.io.ByteStreams;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ReplicaPipe}.
+ */
+public class ReplicaPipeTest {
+
+  private static final byte[] DATA = "some disk data to copy to a replica".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testCopy() throws Throwable {
+    ReplicaPipe pipe = new ReplicaPipe(4, 10, TimeUnit.SECONDS);
+    CompletableFuture<byte[]> read = CompletableFuture.supplyAsync(() -> {
+      try (InputStream in = pipe.getInputStream()) {
+        return ByteStreams.toByteArray(in);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    try (OutputStream out = pipe.getOutputStream()) {
+      out.write(DATA);
+    }
+    assertThat(read.get(10, TimeUnit.SECONDS), is(DATA));
+  }
+
+  @Test
+  public void testStalledReaderFailsWriter() throws Throwable {
+    ReplicaPipe pipe = new ReplicaPipe(4, 100, TimeUnit.MILLISECONDS);
+    try {
+      pipe.getOutputStream().write(DATA);
+      fail("write to a stalled reader should fail");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("Replica did not read for 100ms"));
+    }
+  }
+
+  @Test
+  public void testClosedReaderFailsWriter() throws Throwable {
+    ReplicaPipe pipe = new ReplicaPipe(4, 10, TimeUnit.SECONDS);
+    pipe.getInputStream().close();
+    try {
+      pipe.getOutputStream().write(DATA);
+      fail("write to a closed reader should fail");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("Replica closed its end of the pipe"));
+    }
+  }
+
+  @Test
+  public void testAbortFailsReader() throws Throwable {
+    ReplicaPipe pipe = new ReplicaPipe(64, 10, TimeUnit.SECONDS);
+    pipe.getOutputStream().write(DATA);
+    pipe.abort();
+    try {
+      ByteStreams.toByteArray(pipe.getInputStream());
+      fail("read of an aborted pipe should fail");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("Upload to replica was aborted"));
+    }
+  }
+}
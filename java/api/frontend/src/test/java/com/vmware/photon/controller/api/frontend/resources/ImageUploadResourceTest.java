@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.exceptions.external.ImageUploadNotFoundException;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadResource;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.frontend.resources.routes.TaskResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.Task;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+
+/**
+ * Tests {@link com.vmware.photon.controller.api.frontend.resources.image.ImageUploadResource}.
+ */
+public class ImageUploadResourceTest extends ResourceTest {
+
+  private String uploadId = "upload1";
+
+  private String uploadRoutePath =
+      UriBuilder.fromPath(ImageResourceRoutes.IMAGE_UPLOAD_PATH).build(uploadId).toString();
+
+  private String taskId = "task1";
+
+  private String taskRoutePath =
+      UriBuilder.fromPath(TaskResourceRoutes.TASK_PATH).build(taskId).toString();
+
+  @Mock
+  private ImageFeClient imageFeClient;
+
+  private ImageUpload imageUpload;
+
+  @Override
+  protected void setUpResources() throws Exception {
+    addResource(new ImageUploadResource(imageFeClient));
+  }
+
+  @BeforeMethod
+  public void setUp() {
+    imageUpload = new ImageUpload();
+    imageUpload.setId(uploadId);
+    imageUpload.setName("image1");
+    imageUpload.setReplicationType(ImageReplication.EAGER);
+    imageUpload.setChunkCount(4);
+    imageUpload.setReceivedChunks(Arrays.asList(0, 3));
+  }
+
+  @Test
+  public void testGetUpload() throws Throwable {
+    when(imageFeClient.getUpload(uploadId)).thenReturn(imageUpload);
+
+    Response response = client().target(uploadRoutePath).request().get();
+    assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+
+    ImageUpload responseUpload = response.readEntity(ImageUpload.class);
+    assertThat(responseUpload, is(imageUpload));
+    assertThat(new URI(responseUpload.getSelfLink()).isAbsolute(), is(true));
+    assertThat(responseUpload.getSelfLink().endsWith(uploadRoutePath), is(true));
+  }
+
+  @Test
+  public void testGetNonExistingUpload() throws Throwable {
+    when(imageFeClient.getUpload(uploadId)).thenThrow(new ImageUploadNotFoundException(uploadId));
+
+    Response response = client().target(uploadRoutePath).request().get();
+    assertThat(response.getStatus(), is(Response.Status.NOT_FOUND.getStatusCode()));
+  }
+
+  @Test
+  public void testPutChunk() throws Throwable {
+    ByteArrayOutputStream receivedChunk = new ByteArrayOutputStream();
+    doAnswer(invocation -> {
+      InputStream chunk = (InputStream) invocation.getArguments()[3];
+      int b;
+      while ((b = chunk.read()) != -1) {
+        receivedChunk.write(b);
+      }
+      return imageUpload;
+    }).when(imageFeClient).putUploadChunk(anyString(), anyInt(), anyString(), any(InputStream.class));
+
+    Response response = client().target(uploadRoutePath + "/chunks/3")
+        .queryParam("checksum", "abc")
+        .request()
+        .put(Entity.entity("chunk content".getBytes(), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+    assertThat(response.readEntity(ImageUpload.class).getReceivedChunks(), is(Arrays.asList(0, 3)));
+
+    verify(imageFeClient).putUploadChunk(eq(uploadId), eq(3), eq("abc"), any(InputStream.class));
+    assertThat(receivedChunk.toString(), is("chunk content"));
+  }
+
+  @Test
+  public void testCommitUpload() throws Throwable {
+    Task task = new Task();
+    task.setId(taskId);
+    when(imageFeClient.commitUpload(uploadId)).thenReturn(task);
+
+    Response response = client().target(uploadRoutePath + ImageResourceRoutes.IMAGE_UPLOAD_COMMIT_ACTION).request()
+        .post(Entity.entity(null, MediaType.APPLICATION_JSON_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+    Task responseTask = response.readEntity(Task.class);
+    assertThat(responseTask, is(task));
+    assertThat(new URI(responseTask.getSelfLink()).isAbsolute(), is(true));
+    assertThat(responseTask.getSelfLink().endsWith(taskRoutePath), is(true));
+  }
+
+  @Test
+  public void testDeleteUpload() throws Throwable {
+    Response response = client().target(uploadRoutePath).request().delete();
+    assertThat(response.getStatus(), is(Response.Status.NO_CONTENT.getStatusCode()));
+    verify(imageFeClient).deleteUpload(uploadId);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.frontend.resources;
+
+import com.vmware.photon.controller.api.frontend.clients.ImageFeClient;
+import com.vmware.photon.controller.api.frontend.resources.image.ImageUploadsResource;
+import com.vmware.photon.controller.api.frontend.resources.routes.ImageResourceRoutes;
+import com.vmware.photon.controller.api.model.ImageUpload;
+import com.vmware.photon.controller.api.model.ImageUploadCreateSpec;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import org.mockito.Mock;
+import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import java.net.URI;
+
+/**
+ * Tests {@link com.vmware.photon.controller.api.frontend.resources.image.ImageUploadsResource}.
+ */
+public class ImageUploadsResourceTest extends ResourceTest {
+
+  private String uploadId = "upload1";
+
+  private String uploadRoutePath =
+      UriBuilder.fromPath(ImageResourceRoutes.IMAGE_UPLOAD_PATH).build(uploadId).toString();
+
+  @Mock
+  private ImageFeClient imageFeClient;
+
+  @Override
+  protected void setUpResources() throws Exception {
+    addResource(new ImageUploadsResource(imageFeClient));
+  }
+
+  @Test
+  public void testCreateUpload() throws Throwable {
+    ImageUploadCreateSpec spec = createSpec(4);
+    ImageUpload imageUpload = new ImageUpload();
+    imageUpload.setId(uploadId);
+    imageUpload.setName(spec.getName());
+    imageUpload.setReplicationType(spec.getReplicationType());
+    imageUpload.setChunkCount(spec.getChunkCount());
+    when(imageFeClient.createUpload(spec)).thenReturn(imageUpload);
+
+    Response response = client().target(ImageResourceRoutes.IMAGE_UPLOADS_PATH).request()
+        .post(Entity.entity(spec, MediaType.APPLICATION_JSON_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+    ImageUpload responseUpload = response.readEntity(ImageUpload.class);
+    assertThat(responseUpload, is(imageUpload));
+    assertThat(new URI(responseUpload.getSelfLink()).isAbsolute(), is(true));
+    assertThat(responseUpload.getSelfLink().endsWith(uploadRoutePath), is(true));
+  }
+
+  @Test
+  public void testCreateUploadWithoutChunks() throws Throwable {
+    Response response = client().target(ImageResourceRoutes.IMAGE_UPLOADS_PATH).request()
+        .post(Entity.entity(createSpec(0), MediaType.APPLICATION_JSON_TYPE));
+    assertThat(response.getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+    verifyZeroInteractions(imageFeClient);
+  }
+
+  private ImageUploadCreateSpec createSpec(int chunkCount) {
+    ImageUploadCreateSpec spec = new ImageUploadCreateSpec();
+    spec.setName("image1");
+    spec.setReplicationType(ImageReplication.EAGER);
+    spec.setChunkCount(chunkCount);
+    return spec;
+  }
+}
@@ -24,6 +24,7 @@ import com.wordnik.swagger.annotations.ApiModelProperty;
 
 import javax.validation.constraints.NotNull;
 
+import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
 
@@ -57,6 +58,14 @@ public class ComponentInstance {
   @ApiModelProperty(value = "Detailed build information of a component instance", required = false)
   private String buildInfo;
 
+  @JsonProperty
+  @ApiModelProperty(value = "Time the instance was last probed for the reported status", required = false)
+  private Date lastCheckedTime;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Time in milliseconds the last status probe of the instance took", required = false)
+  private Long latencyMillis;
+
   public String getAddress() {
     return address;
   }
@@ -97,6 +106,22 @@ public class ComponentInstance {
     this.buildInfo = buildInfo;
   }
 
+  public Date getLastCheckedTime() {
+    return lastCheckedTime;
+  }
+
+  public void setLastCheckedTime(Date lastCheckedTime) {
+    this.lastCheckedTime = lastCheckedTime;
+  }
+
+  public Long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  public void setLatencyMillis(Long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -112,12 +137,14 @@ public class ComponentInstance {
         Objects.equals(message, other.message) &&
         Objects.equals(address, other.address) &&
         Objects.equals(stats, other.stats) &&
-        Objects.equals(buildInfo, other.buildInfo);
+        Objects.equals(buildInfo, other.buildInfo) &&
+        Objects.equals(lastCheckedTime, other.lastCheckedTime) &&
+        Objects.equals(latencyMillis, other.latencyMillis);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(status, message, address, stats);
+    return Objects.hash(status, message, address, stats, lastCheckedTime, latencyMillis);
   }
 
   @Override
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.base.Base;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects.ToStringHelper;
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Chunked image upload API representation.
+ */
+@ApiModel(value = "This class represents a chunked image upload. Chunks may be uploaded in any order and again, " +
+    "and the upload is committed once all of them have been received.")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImageUpload extends Base {
+
+  public static final String KIND = "image-upload";
+
+  @JsonProperty
+  @ApiModelProperty(value = "kind=\"image-upload\"", required = true)
+  private String kind = KIND;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Name of the image", required = true)
+  private String name;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Image replication type", required = true)
+  private ImageReplication replicationType;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Number of chunks the image file is split into", required = true)
+  private int chunkCount;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Indexes of the chunks which have been received, in ascending order", required = true)
+  private List<Integer> receivedChunks = new ArrayList<>();
+
+  @Override
+  public String getKind() {
+    return kind;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public ImageReplication getReplicationType() {
+    return replicationType;
+  }
+
+  public void setReplicationType(ImageReplication replicationType) {
+    this.replicationType = replicationType;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  public List<Integer> getReceivedChunks() {
+    return receivedChunks;
+  }
+
+  public void setReceivedChunks(List<Integer> receivedChunks) {
+    this.receivedChunks = receivedChunks;
+  }
+
+  @Override
+  protected ToStringHelper toStringHelper() {
+    return super.toStringHelper()
+        .add("name", name)
+        .add("replicationType", replicationType)
+        .add("chunkCount", chunkCount)
+        .add("receivedChunks", receivedChunks);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+
+    ImageUpload other = (ImageUpload) o;
+
+    return Objects.equals(name, other.name) &&
+        Objects.equals(replicationType, other.replicationType) &&
+        chunkCount == other.chunkCount &&
+        Objects.equals(receivedChunks, other.receivedChunks);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        super.hashCode(),
+        kind,
+        name,
+        replicationType,
+        chunkCount,
+        receivedChunks);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.base.Named;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+
+import java.util.Objects;
+
+/**
+ * Chunked image upload creation payload.
+ */
+@ApiModel(value = "A class used as the payload when starting a chunked image upload.")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImageUploadCreateSpec {
+
+  public static final int MAX_CHUNK_COUNT = 100000;
+
+  @JsonProperty
+  @ApiModelProperty(value = "This property specifies the name for the image", required = true)
+  @NotNull
+  @Size(min = 1, max = 63)
+  @Pattern(regexp = Named.PATTERN, message = ": The specified image name does not match pattern: " + Named.PATTERN)
+  private String name;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Image replication type", required = true)
+  @NotNull
+  private ImageReplication replicationType;
+
+  @JsonProperty
+  @ApiModelProperty(value = "Number of chunks the image file is split into", required = true)
+  @Min(1)
+  @Max(MAX_CHUNK_COUNT)
+  private int chunkCount;
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public ImageReplication getReplicationType() {
+    return replicationType;
+  }
+
+  public void setReplicationType(ImageReplication replicationType) {
+    this.replicationType = replicationType;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ImageUploadCreateSpec other = (ImageUploadCreateSpec) o;
+
+    return Objects.equals(getName(), other.getName()) &&
+        Objects.equals(getReplicationType(), other.getReplicationType()) &&
+        getChunkCount() == other.getChunkCount();
+  }
+
+  @Override
+  public int hashCode() {
+    return java.util.Objects.hash(
+        getName(),
+        getReplicationType(),
+        getChunkCount()
+    );
+  }
+
+  @Override
+  public String toString() {
+    return com.google.common.base.Objects.toStringHelper(this)
+        .add("name", getName())
+        .add("replicationType", getReplicationType())
+        .add("chunkCount", getChunkCount())
+        .toString();
+  }
+}
@@ -16,6 +16,7 @@ package com.vmware.photon.controller.api.model.builders;
 import com.vmware.photon.controller.api.model.ComponentInstance;
 import com.vmware.photon.controller.status.gen.StatusType;
 
+import java.util.Date;
 import java.util.Map;
 
 /**
@@ -33,6 +34,10 @@ public class ComponentInstanceBuilder {
 
   private String buildInfo;
 
+  private Date lastCheckedTime;
+
+  private Long latencyMillis;
+
   public ComponentInstanceBuilder address(String address) {
     this.address = address;
     return this;
@@ -58,6 +63,16 @@ public class ComponentInstanceBuilder {
     return this;
   }
 
+  public ComponentInstanceBuilder lastCheckedTime(Date lastCheckedTime) {
+    this.lastCheckedTime = lastCheckedTime;
+    return this;
+  }
+
+  public ComponentInstanceBuilder latencyMillis(Long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
   public ComponentInstance build() {
     ComponentInstance instance = new ComponentInstance();
     instance.setAddress(this.address);
@@ -65,6 +80,8 @@ public class ComponentInstanceBuilder {
     instance.setStats(this.stats);
     instance.setStatus(this.status);
     instance.setBuildInfo(this.buildInfo);
+    instance.setLastCheckedTime(this.lastCheckedTime);
+    instance.setLatencyMillis(this.latencyMillis);
     return instance;
   }
 }
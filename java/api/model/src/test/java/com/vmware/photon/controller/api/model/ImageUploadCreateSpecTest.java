@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.helpers.JsonHelpers;
+import com.vmware.photon.controller.api.model.helpers.Validator;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import com.google.common.collect.ImmutableList;
+import org.hamcrest.MatcherAssert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.StringStartsWith.startsWith;
+
+/**
+ * Tests {@link ImageUploadCreateSpec}.
+ */
+public class ImageUploadCreateSpecTest {
+
+  private ImageUploadCreateSpec createImageUploadCreateSpec(
+      String name,
+      ImageReplication replicationType,
+      int chunkCount) {
+    ImageUploadCreateSpec spec = new ImageUploadCreateSpec();
+    spec.setName(name);
+    spec.setReplicationType(replicationType);
+    spec.setChunkCount(chunkCount);
+    return spec;
+  }
+
+  /**
+   * Dummy test case to make Intellij recognize this as a test class.
+   */
+  @Test
+  private void dummy() {
+  }
+
+  /**
+   * Tests {@link ImageUploadCreateSpec#toString()}.
+   */
+  public class ToStringTest {
+
+    @Test
+    public void testCorrectString() {
+      String expectedString = "ImageUploadCreateSpec{name=image1, replicationType=EAGER, chunkCount=16}";
+      ImageUploadCreateSpec spec = createImageUploadCreateSpec("image1", ImageReplication.EAGER, 16);
+      assertThat(spec.toString(), is(expectedString));
+    }
+  }
+
+  /**
+   * Tests for validations.
+   */
+  public class ValidationTest {
+
+    Validator validator = new Validator();
+
+    @DataProvider(name = "validImageUploadCreateSpecs")
+    public Object[][] getValidImageUploadCreateSpecs() {
+      return new Object[][]{
+          {createImageUploadCreateSpec("i1", ImageReplication.EAGER, 1)},
+          {createImageUploadCreateSpec("i1", ImageReplication.ON_DEMAND, ImageUploadCreateSpec.MAX_CHUNK_COUNT)},
+      };
+    }
+
+    @Test(dataProvider = "validImageUploadCreateSpecs")
+    public void testValidImageUploadCreateSpec(ImageUploadCreateSpec spec) {
+      ImmutableList<String> violations = validator.validate(spec);
+      assertThat(violations.isEmpty(), is(true));
+    }
+
+    @DataProvider(name = "invalidImageUploadCreateSpecs")
+    public Object[][] getInvalidImageUploadCreateSpecs() {
+      return new Object[][]{
+          {createImageUploadCreateSpec(null, ImageReplication.EAGER, 1),
+              "name may not be null (was null)"},
+          {createImageUploadCreateSpec("i1", null, 1),
+              "replicationType may not be null (was null)"},
+          {createImageUploadCreateSpec("i1", ImageReplication.EAGER, 0),
+              "chunkCount must be greater than or equal to 1 (was 0)"},
+          {createImageUploadCreateSpec("i1", ImageReplication.EAGER, ImageUploadCreateSpec.MAX_CHUNK_COUNT + 1),
+              "chunkCount must be less than or equal to " + ImageUploadCreateSpec.MAX_CHUNK_COUNT},
+      };
+    }
+
+    @Test(dataProvider = "invalidImageUploadCreateSpecs")
+    public void testInvalidImageUploadCreateSpec(ImageUploadCreateSpec spec, String errorMsg) {
+      ImmutableList<String> violations = validator.validate(spec);
+
+      assertThat(violations.size(), is(1));
+      assertThat(violations.get(0), startsWith(errorMsg));
+    }
+  }
+
+  /**
+   * Tests JSON serialization.
+   */
+  public class SerializationTest {
+
+    private static final String JSON_FILE = "fixtures/image-upload-create-spec.json";
+
+    @Test
+    public void testSerialization() throws Exception {
+      ImageUploadCreateSpec spec = createImageUploadCreateSpec("image1", ImageReplication.EAGER, 16);
+      String json = JsonHelpers.jsonFixture(JSON_FILE);
+
+      MatcherAssert.assertThat(JsonHelpers.asJson(spec), is(equalTo(json)));
+      assertThat(JsonHelpers.fromJson(json, ImageUploadCreateSpec.class), is(spec));
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.api.model;
+
+import com.vmware.photon.controller.api.model.base.Base;
+import com.vmware.photon.controller.api.model.helpers.JsonHelpers;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+
+import org.hamcrest.Matchers;
+import org.testng.annotations.Test;
+import static org.hamcrest.CoreMatchers.isA;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
+
+import java.util.Arrays;
+
+/**
+ * Tests {@link ImageUpload}.
+ */
+public class ImageUploadTest {
+
+  private ImageUpload createImageUpload() {
+    ImageUpload imageUpload = new ImageUpload();
+    imageUpload.setId("uploadId");
+    imageUpload.setSelfLink("http://localhost:9080/v1/images/uploads/uploadId");
+    imageUpload.setName("image1");
+    imageUpload.setReplicationType(ImageReplication.ON_DEMAND);
+    imageUpload.setChunkCount(4);
+    imageUpload.setReceivedChunks(Arrays.asList(0, 2));
+    return imageUpload;
+  }
+
+  @Test
+  public void testIsABase() throws Exception {
+    assertThat(new ImageUpload(), isA(Base.class));
+  }
+
+  @Test
+  public void testEqualsAndHashCode() {
+    ImageUpload imageUpload1 = createImageUpload();
+    ImageUpload imageUpload2 = createImageUpload();
+    assertThat(imageUpload1, is(imageUpload2));
+    assertThat(imageUpload1.hashCode(), is(imageUpload2.hashCode()));
+
+    imageUpload2.setReceivedChunks(Arrays.asList(0, 1, 2));
+    assertThat(imageUpload1, not(imageUpload2));
+  }
+
+  /**
+   * Tests image upload serialization.
+   */
+  public class SerializationTest {
+
+    private static final String fixtureFile = "fixtures/image-upload.json";
+
+    @Test
+    public void testSerialization() throws Exception {
+      ImageUpload imageUpload = createImageUpload();
+
+      assertThat(JsonHelpers.asJson(imageUpload), sameJSONAs(JsonHelpers.jsonFixture(fixtureFile)));
+      assertThat(JsonHelpers.fromJson(JsonHelpers.jsonFixture(fixtureFile), ImageUpload.class),
+          Matchers.is(imageUpload));
+    }
+  }
+}
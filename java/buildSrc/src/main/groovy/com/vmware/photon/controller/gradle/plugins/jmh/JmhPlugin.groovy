@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.vmware.photon.controller.gradle.plugins.jmh
+
+import org.gradle.api.Plugin
+import org.gradle.api.Project
+import org.gradle.api.tasks.JavaExec
+
+/**
+ * JMH Plugin. Adds a 'jmh' source set (src/jmh/java) that sees the main and test classes of the project,
+ * and a 'jmh' task that runs the benchmarks in it.
+ *
+ * Arguments are passed to the JMH runner with -PjmhArgs, for example:
+ *   ./gradlew :root-scheduler:jmh -PjmhArgs='-p numHosts=1000 ScoreCalculatorBenchmark'
+ *
+ * By default the GC profiler is enabled so allocation rates are reported with the timings, and the
+ * results are written to build/reports/jmh/results.json.
+ */
+class JmhPlugin implements Plugin<Project> {
+
+  static final String JMH_VERSION = '1.12'
+
+  @Override
+  void apply(Project project) {
+    project.apply plugin: 'java'
+
+    def jmhSourceSet = project.sourceSets.create('jmh') {
+      java.srcDir 'src/jmh/java'
+      resources.srcDir 'src/jmh/resources'
+    }
+    jmhSourceSet.compileClasspath += project.sourceSets.main.output + project.sourceSets.test.output
+    jmhSourceSet.runtimeClasspath += project.sourceSets.main.output + project.sourceSets.test.output
+
+    project.configurations.getByName('jmhCompile').extendsFrom(project.configurations.getByName('testCompile'))
+    project.configurations.getByName('jmhRuntime').extendsFrom(project.configurations.getByName('testRuntime'))
+
+    project.dependencies.add('jmhCompile', "org.openjdk.jmh:jmh-core:${JMH_VERSION}")
+    project.dependencies.add('jmhCompile', "org.openjdk.jmh:jmh-generator-annprocess:${JMH_VERSION}")
+
+    def reportDir = project.file("${project.buildDir}/reports/jmh")
+
+    project.tasks.create('jmh', JavaExec) {
+      description = 'Runs the JMH benchmarks of this project.'
+      group = 'verification'
+      dependsOn project.tasks.getByName('jmhClasses')
+      main = 'org.openjdk.jmh.Main'
+      classpath = jmhSourceSet.runtimeClasspath
+      doFirst {
+        reportDir.mkdirs()
+        args = ['-prof', 'gc', '-rf', 'json', '-rff', "${reportDir}/results.json"]
+        if (project.hasProperty('jmhArgs')) {
+          args += project.property('jmhArgs').toString().tokenize()
+        }
+      }
+    }
+  }
+}
@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.cloudstore.xenon;
 
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AvailabilityZoneServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterConfigurationServiceFactory;
@@ -26,6 +27,7 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageToImageDatastoreMappingServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ImageUploadServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.IpLeaseService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.NetworkServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ProjectServiceFactory;
@@ -44,6 +46,7 @@ import com.vmware.photon.controller.cloudstore.xenon.task.EntityLockCleanerFacto
 import com.vmware.photon.controller.cloudstore.xenon.task.EntityLockDeleteFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.IpLeaseCleanerService;
 import com.vmware.photon.controller.cloudstore.xenon.task.IpLeaseDeleteService;
+import com.vmware.photon.controller.cloudstore.xenon.task.TaskCompactionFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.TombstoneCleanerFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.AvailabilityZoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DatastoreCleanerTriggerBuilder;
@@ -51,6 +54,7 @@ import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DhcpSubnetDele
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockDeleteTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.IpLeaseCleanerTriggerBuilder;
+import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TaskCompactionTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TombstoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
@@ -67,11 +71,14 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.UriUtils;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
@@ -86,6 +93,7 @@ public class CloudStoreServiceGroup
       FlavorServiceFactory.class,
       ImageServiceFactory.class,
       ImageToImageDatastoreMappingServiceFactory.class,
+      ImageUploadServiceFactory.class,
       HostServiceFactory.class,
       NetworkServiceFactory.class,
       DatastoreServiceFactory.class,
@@ -112,6 +120,10 @@ public class CloudStoreServiceGroup
       AvailabilityZoneCleanerFactoryService.class,
       DatastoreDeleteFactoryService.class,
       DatastoreCleanerFactoryService.class,
+      TaskCompactionFactoryService.class,
+
+      // Archive
+      TaskArchiveService.class,
 
       // Upgrade
       UpgradeInformationService.class,
@@ -130,13 +142,66 @@ public class CloudStoreServiceGroup
 
   protected static final String SCHEDULER_IP_LEASE_DELETES = "/ip-lease-deletes";
 
-  private static final String IP_LEASE_DELETE_SERVICE =
+  public static final String IP_LEASE_DELETE_SERVICE =
       TaskSchedulerServiceFactory.SELF_LINK + SCHEDULER_IP_LEASE_DELETES;
 
   private static final Logger logger = LoggerFactory.getLogger(CloudStoreServiceGroup.class);
 
   private static final Map<String, TaskSchedulerServiceStateBuilder> TASK_SCHEDULERS = ImmutableMap.of(
-      IP_LEASE_DELETE_SERVICE, new TaskSchedulerServiceStateBuilder(IpLeaseDeleteService.class, 10));
+      IP_LEASE_DELETE_SERVICE, new TaskSchedulerServiceStateBuilder(IpLeaseDeleteService.class, 10,
+          TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS));
+
+  private static final List<String> AVAILABILITY_LINKS = ImmutableList.of(
+      // entities
+      VirtualNetworkService.FACTORY_LINK,
+      SubnetAllocatorService.FACTORY_LINK,
+      DhcpSubnetService.FACTORY_LINK,
+      IpLeaseService.FACTORY_LINK,
+      FlavorServiceFactory.SELF_LINK,
+      ImageServiceFactory.SELF_LINK,
+      ImageToImageDatastoreMappingServiceFactory.SELF_LINK,
+      ImageUploadServiceFactory.SELF_LINK,
+      HostServiceFactory.SELF_LINK,
+      NetworkServiceFactory.SELF_LINK,
+      DatastoreServiceFactory.SELF_LINK,
+      DeploymentServiceFactory.SELF_LINK,
+      TaskServiceFactory.SELF_LINK,
+      EntityLockServiceFactory.SELF_LINK,
+      ProjectServiceFactory.SELF_LINK,
+      TenantServiceFactory.SELF_LINK,
+      ResourceTicketServiceFactory.SELF_LINK,
+      VmServiceFactory.SELF_LINK,
+      DiskServiceFactory.SELF_LINK,
+      AttachedDiskServiceFactory.SELF_LINK,
+      TombstoneServiceFactory.SELF_LINK,
+      ClusterServiceFactory.SELF_LINK,
+      ClusterConfigurationServiceFactory.SELF_LINK,
+      AvailabilityZoneServiceFactory.SELF_LINK,
+      // tasks
+      EntityLockCleanerFactoryService.SELF_LINK,
+      EntityLockDeleteFactoryService.SELF_LINK,
+      TombstoneCleanerFactoryService.SELF_LINK,
+      AvailabilityZoneCleanerFactoryService.SELF_LINK,
+      DatastoreDeleteFactoryService.SELF_LINK,
+      DatastoreCleanerFactoryService.SELF_LINK,
+      DhcpSubnetDeleteService.FACTORY_LINK,
+      IpLeaseDeleteService.FACTORY_LINK,
+      IpLeaseCleanerService.FACTORY_LINK,
+      TaskCompactionFactoryService.SELF_LINK,
+      // archive
+      TaskArchiveService.SELF_LINK,
+      // triggers
+      TaskTriggerFactoryService.SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + EntityLockCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + TombstoneCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + EntityLockDeleteTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + AvailabilityZoneCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + DatastoreCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskSchedulerServiceFactory.SELF_LINK,
+      IP_LEASE_DELETE_SERVICE,
+      TaskTriggerFactoryService.SELF_LINK + DhcpSubnetDeleteTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + IpLeaseCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + TaskCompactionTriggerBuilder.TRIGGER_SELF_LINK);
 
   private static final TaskStateBuilder[] TASK_TRIGGERS = new TaskStateBuilder[]{
       new TombstoneCleanerTriggerBuilder(
@@ -160,7 +225,11 @@ public class CloudStoreServiceGroup
           DhcpSubnetDeleteTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS),
       new IpLeaseCleanerTriggerBuilder(
           IpLeaseCleanerTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
-          IpLeaseCleanerTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS)
+          IpLeaseCleanerTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS),
+      new TaskCompactionTriggerBuilder(
+          TaskCompactionTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
+          TaskCompactionTriggerBuilder.DEFAULT_TASK_EXPIRATION_AGE_MILLIS,
+          TaskCompactionTriggerBuilder.DEFAULT_RETENTION_AGE_MILLIS)
   };
 
   private PhotonControllerXenonHost photonControllerXenonHost;
@@ -191,62 +260,18 @@ public class CloudStoreServiceGroup
 
   @Override
   public boolean isReady() {
+    for (String selfLink : AVAILABILITY_LINKS) {
+      if (!photonControllerXenonHost.checkServiceAvailable(selfLink)) {
+        return false;
+      }
+    }
 
-    return
-        // entities
-        photonControllerXenonHost.checkServiceAvailable(VirtualNetworkService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(SubnetAllocatorService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DhcpSubnetService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(IpLeaseService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(FlavorServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ImageServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ImageToImageDatastoreMappingServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(HostServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(NetworkServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DatastoreServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DeploymentServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(TaskServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(EntityLockServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ProjectServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(TenantServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ResourceTicketServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(VmServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DiskServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(AttachedDiskServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(TombstoneServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ClusterServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(ClusterConfigurationServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(AvailabilityZoneServiceFactory.SELF_LINK)
-
-            //tasks
-            && photonControllerXenonHost.checkServiceAvailable(EntityLockCleanerFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(EntityLockDeleteFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(TombstoneCleanerFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(AvailabilityZoneCleanerFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DatastoreDeleteFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DatastoreCleanerFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(DhcpSubnetDeleteService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(IpLeaseDeleteService.FACTORY_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(IpLeaseCleanerService.FACTORY_LINK)
-
-            // triggers
-            && photonControllerXenonHost.checkServiceAvailable(TaskTriggerFactoryService.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + EntityLockCleanerTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + TombstoneCleanerTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + EntityLockDeleteTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + AvailabilityZoneCleanerTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + DatastoreCleanerTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(TaskSchedulerServiceFactory.SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(IP_LEASE_DELETE_SERVICE)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + DhcpSubnetDeleteTriggerBuilder.TRIGGER_SELF_LINK)
-            && photonControllerXenonHost.checkServiceAvailable(
-            TaskTriggerFactoryService.SELF_LINK + IpLeaseCleanerTriggerBuilder.TRIGGER_SELF_LINK);
+    return true;
+  }
+
+  @Override
+  public Collection<String> getAvailabilityLinks() {
+    return AVAILABILITY_LINKS;
   }
 
   @Override
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.archive;
+
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.xenon.common.Utils;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only, compressed store of finished {@link TaskService.State} documents on the local disk.
+ *
+ * Every compaction run writes a segment of its own, named after the day it started on. Each page of tasks is
+ * appended to the segment as a new gzip member holding one JSON document per line and synced to disk.
+ *
+ * Next to every segment an index file lists the link, entity and state of each archived document along with the
+ * position of its member in the segment. The index lines of a page are only appended once its member is synced, so
+ * lookups read the small index files and then decompress just the members which hold a match, and the bytes of an
+ * append cut short by a crash are never read.
+ */
+public class TaskArchive {
+
+  private static final Logger logger = LoggerFactory.getLogger(TaskArchive.class);
+
+  private static final String SEGMENT_PREFIX = "tasks-";
+
+  private static final String SEGMENT_SUFFIX = ".gz";
+
+  private static final String INDEX_SUFFIX = ".idx";
+
+  private static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile(
+      Pattern.quote(SEGMENT_PREFIX) + "[0-9-]+-[0-9a-f-]+" + Pattern.quote(SEGMENT_SUFFIX));
+
+  private final File directory;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public TaskArchive(File directory) {
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the name of a new segment for the current day.
+   *
+   * @return
+   */
+  public static String newSegmentName() {
+    return SEGMENT_PREFIX + LocalDate.now(ZoneOffset.UTC).toString() + "-" + UUID.randomUUID().toString()
+        + SEGMENT_SUFFIX;
+  }
+
+  /**
+   * Appends the documents to the segment and to its index, and syncs both to disk.
+   *
+   * @param segment
+   * @param documents
+   * @throws IOException
+   */
+  public void append(String segment, List<TaskService.State> documents) throws IOException {
+    File segmentFile = getSegmentFile(segment);
+    if (documents == null || documents.isEmpty()) {
+      return;
+    }
+
+    lock.writeLock().lock();
+    try {
+      if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+        throw new IOException("Could not create task archive directory " + directory);
+      }
+
+      File indexFile = getIndexFile(segment);
+      long segmentLength = segmentFile.length();
+      long indexLength = indexFile.length();
+      try {
+        long memberLength = appendMember(segmentFile, documents);
+        appendIndexEntries(indexFile, documents, segmentLength, memberLength);
+      } catch (IOException e) {
+        truncate(segmentFile, segmentLength);
+        truncate(indexFile, indexLength);
+        throw e;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the archived documents with one of the given document links.
+   *
+   * @param documentLinks
+   * @return
+   * @throws IOException
+   */
+  public List<TaskService.State> find(Collection<String> documentLinks) throws IOException {
+    Set<String> links = new HashSet<>(documentLinks);
+    return lookup(entry -> links.contains(entry.documentLink));
+  }
+
+  /**
+   * Returns the archived documents of an entity, optionally restricted to a task state.
+   *
+   * @param entityId
+   * @param entityKind
+   * @param state
+   * @return
+   * @throws IOException
+   */
+  public List<TaskService.State> query(String entityId, String entityKind, String state) throws IOException {
+    return lookup(entry -> entityId.equals(entry.entityId)
+        && (entityKind == null || entityKind.equalsIgnoreCase(entry.entityKind))
+        && (state == null || state.equalsIgnoreCase(entry.state)));
+  }
+
+  /**
+   * Finds the matching documents in the index files, from the newest segment to the oldest, and then reads them
+   * from their members. A document archived again by a later run is only returned once.
+   */
+  private List<TaskService.State> lookup(Predicate<IndexEntry> filter) throws IOException {
+    lock.readLock().lock();
+    try {
+      Set<String> foundLinks = new HashSet<>();
+      Map<String, List<IndexEntry>> memberEntries = new LinkedHashMap<>();
+      for (String segment : listSegments()) {
+        for (IndexEntry entry : readIndex(segment)) {
+          if (filter.test(entry) && foundLinks.add(entry.documentLink)) {
+            memberEntries.computeIfAbsent(entry.getMemberKey(), key -> new ArrayList<>()).add(entry);
+          }
+        }
+      }
+
+      List<TaskService.State> result = new ArrayList<>();
+      for (List<IndexEntry> entries : memberEntries.values()) {
+        result.addAll(readMember(entries));
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the documents of the entries, which all belong to the same member of a segment.
+   */
+  private List<TaskService.State> readMember(List<IndexEntry> entries) throws IOException {
+    IndexEntry member = entries.get(0);
+    Set<String> documentLinks = new HashSet<>();
+    for (IndexEntry entry : entries) {
+      documentLinks.add(entry.documentLink);
+    }
+
+    List<TaskService.State> result = new ArrayList<>();
+    try (FileInputStream fileStream = new FileInputStream(getSegmentFile(member.segment))) {
+      fileStream.getChannel().position(member.memberOffset);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new GZIPInputStream(ByteStreams.limit(fileStream, member.memberLength)), StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        TaskService.State document = Utils.fromJson(line, TaskService.State.class);
+        if (documentLinks.contains(document.documentSelfLink)) {
+          result.add(document);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Appends a gzip member holding the documents to the segment.
+   *
+   * @return the length of the member
+   */
+  private static long appendMember(File segmentFile, List<TaskService.State> documents) throws IOException {
+    try (FileOutputStream fileStream = new FileOutputStream(segmentFile, true)) {
+      long offset = fileStream.getChannel().position();
+      GZIPOutputStream gzipStream = new GZIPOutputStream(fileStream);
+      Writer writer = new BufferedWriter(new OutputStreamWriter(gzipStream, StandardCharsets.UTF_8));
+      for (TaskService.State document : documents) {
+        writer.write(Utils.toJson(document));
+        writer.write('\n');
+      }
+      writer.flush();
+      gzipStream.finish();
+      fileStream.getFD().sync();
+      return fileStream.getChannel().position() - offset;
+    }
+  }
+
+  private static void appendIndexEntries(File indexFile, List<TaskService.State> documents, long memberOffset,
+                                         long memberLength) throws IOException {
+    try (FileOutputStream fileStream = new FileOutputStream(indexFile, true)) {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8));
+      for (TaskService.State document : documents) {
+        writer.write(new IndexEntry(null, document, memberOffset, memberLength).toString());
+        writer.write('\n');
+      }
+      writer.flush();
+      fileStream.getFD().sync();
+    }
+  }
+
+  private List<IndexEntry> readIndex(String segment) throws IOException {
+    List<IndexEntry> entries = new ArrayList<>();
+    File indexFile = getIndexFile(segment);
+    if (!indexFile.isFile()) {
+      return entries;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        IndexEntry entry = IndexEntry.parse(segment, line);
+        if (entry != null) {
+          entries.add(entry);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static void truncate(File file, long length) {
+    if (!file.exists()) {
+      return;
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(length);
+    } catch (IOException e) {
+      logger.error("Could not truncate task archive file {} to {} bytes", file, length, e);
+    }
+  }
+
+  /**
+   * Returns the segments which have an index, newest first. Segment names sort by day.
+   */
+  private List<String> listSegments() {
+    String[] indexFiles = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(INDEX_SUFFIX));
+    if (indexFiles == null) {
+      return Collections.emptyList();
+    }
+
+    List<String> segments = new ArrayList<>(indexFiles.length);
+    for (String indexFile : indexFiles) {
+      String segment = indexFile.substring(0, indexFile.length() - INDEX_SUFFIX.length());
+      if (SEGMENT_NAME_PATTERN.matcher(segment).matches()) {
+        segments.add(segment);
+      }
+    }
+    Collections.sort(segments, Collections.reverseOrder());
+    return segments;
+  }
+
+  private File getSegmentFile(String segment) {
+    if (segment == null || !SEGMENT_NAME_PATTERN.matcher(segment).matches()) {
+      throw new IllegalArgumentException("Invalid task archive segment name " + segment);
+    }
+
+    return new File(directory, segment);
+  }
+
+  private File getIndexFile(String segment) {
+    return new File(directory, segment + INDEX_SUFFIX);
+  }
+
+  /**
+   * The fields of an archived document which lookups match on and the position of its member in the segment,
+   * stored as one tab separated line.
+   */
+  private static class IndexEntry {
+
+    private static final int FIELD_COUNT = 6;
+
+    private final String segment;
+    private final String documentLink;
+    private final String entityId;
+    private final String entityKind;
+    private final String state;
+    private final long memberOffset;
+    private final long memberLength;
+
+    private IndexEntry(String segment, TaskService.State document, long memberOffset, long memberLength) {
+      this(segment, document.documentSelfLink, document.entityId, document.entityKind,
+          document.state != null ? document.state.name() : null, memberOffset, memberLength);
+    }
+
+    private IndexEntry(String segment, String documentLink, String entityId, String entityKind, String state,
+                       long memberOffset, long memberLength) {
+      this.segment = segment;
+      this.documentLink = documentLink;
+      this.entityId = entityId;
+      this.entityKind = entityKind;
+      this.state = state;
+      this.memberOffset = memberOffset;
+      this.memberLength = memberLength;
+    }
+
+    private static IndexEntry parse(String segment, String line) {
+      // A line cut short by a crash has fewer fields and is skipped.
+      String[] fields = line.split("\t", -1);
+      if (fields.length != FIELD_COUNT) {
+        return null;
+      }
+
+      try {
+        return new IndexEntry(segment, fields[0], emptyToNull(fields[1]), emptyToNull(fields[2]),
+            emptyToNull(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private String getMemberKey() {
+      return segment + "@" + memberOffset;
+    }
+
+    @Override
+    public String toString() {
+      return String.join("\t", Arrays.asList(nullToEmpty(documentLink), nullToEmpty(entityId),
+          nullToEmpty(entityKind), nullToEmpty(state), Long.toString(memberOffset), Long.toString(memberLength)));
+    }
+
+    private static String nullToEmpty(String value) {
+      return value != null ? value : "";
+    }
+
+    private static String emptyToNull(String value) {
+      return value.isEmpty() ? null : value;
+    }
+  }
+}
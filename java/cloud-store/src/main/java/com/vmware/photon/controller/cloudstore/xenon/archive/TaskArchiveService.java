@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.archive;
+
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This service fronts the {@link TaskArchive} of the local host.
+ *
+ * ARCHIVE requests append a page of finished tasks to a segment. Unless they are marked local they are broadcast, so
+ * every node keeps a copy of the page and the request fails if any node could not write it. QUERY requests look up
+ * archived tasks by document link or by entity in the local archive. A node misses the pages archived while it was
+ * not part of the group, so a lookup by link which does not find every task locally asks its peers as well.
+ */
+public class TaskArchiveService extends StatelessService {
+
+  public static final String SELF_LINK = ServiceUriPaths.CLOUDSTORE_ROOT + "/task-archive";
+
+  public static final String ARCHIVE_DIRECTORY = "task-archive";
+
+  private TaskArchive archive;
+
+  @Override
+  public void handleStart(Operation start) {
+    File sandbox = new File(getHost().getStorageSandbox());
+    archive = new TaskArchive(new File(sandbox, ARCHIVE_DIRECTORY));
+    start.complete();
+  }
+
+  @Override
+  public void handlePost(Operation post) {
+    if (!post.hasBody()) {
+      post.fail(new IllegalArgumentException("body is required"));
+      return;
+    }
+
+    Request request = post.getBody(Request.class);
+    if (request.type == null) {
+      post.fail(new IllegalArgumentException("type cannot be null"));
+      return;
+    }
+
+    switch (request.type) {
+      case ARCHIVE:
+        if (request.segment == null) {
+          post.fail(new IllegalArgumentException("segment cannot be null"));
+        } else if (request.local) {
+          getHost().run(() -> archiveLocal(post, request));
+        } else {
+          broadcast(post, request, broadcastResponse -> {
+            if (!broadcastResponse.failures.isEmpty()) {
+              post.fail(new IllegalStateException(String.format(
+                  "Task archive segment %s could not be written on %d nodes", request.segment,
+                  broadcastResponse.failures.size())));
+              return;
+            }
+
+            post.complete();
+          });
+        }
+        break;
+      case QUERY:
+        if ((request.documentLinks == null || request.documentLinks.isEmpty()) && request.entityId == null) {
+          post.fail(new IllegalArgumentException("documentLinks or entityId is required"));
+        } else {
+          getHost().run(() -> query(post, request));
+        }
+        break;
+      default:
+        post.fail(new IllegalArgumentException("Unknown request type " + request.type));
+    }
+  }
+
+  private void archiveLocal(Operation post, Request request) {
+    try {
+      archive.append(request.segment, request.documents);
+      post.complete();
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      post.fail(t);
+    }
+  }
+
+  private void query(Operation post, Request request) {
+    Response response = new Response();
+    try {
+      if (request.documentLinks != null && !request.documentLinks.isEmpty()) {
+        response.documents.addAll(archive.find(request.documentLinks));
+      } else {
+        response.documents.addAll(archive.query(request.entityId, request.entityKind, request.state));
+      }
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      post.fail(t);
+      return;
+    }
+
+    if (request.local || request.documentLinks == null
+        || response.documents.size() >= new HashSet<>(request.documentLinks).size()) {
+      post.setBody(response).complete();
+      return;
+    }
+
+    queryPeers(post, request, response);
+  }
+
+  private void queryPeers(Operation post, Request request, Response localResponse) {
+    broadcast(post, request, broadcastResponse -> {
+      Map<String, TaskService.State> documents = new LinkedHashMap<>();
+      for (TaskService.State document : localResponse.documents) {
+        documents.put(document.documentSelfLink, document);
+      }
+      for (String json : broadcastResponse.jsonResponses.values()) {
+        Response nodeResponse = Utils.fromJson(json, Response.class);
+        if (nodeResponse != null && nodeResponse.documents != null) {
+          for (TaskService.State document : nodeResponse.documents) {
+            documents.putIfAbsent(document.documentSelfLink, document);
+          }
+        }
+      }
+
+      Response response = new Response();
+      response.documents.addAll(documents.values());
+      post.setBody(response).complete();
+    });
+  }
+
+  private void broadcast(Operation post, Request request, Consumer<NodeGroupBroadcastResponse> handler) {
+    Request localRequest = Utils.clone(request);
+    localRequest.local = true;
+
+    URI broadcastUri = UriUtils.buildBroadcastRequestUri(
+        UriUtils.buildUri(getHost(), SELF_LINK),
+        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
+
+    Operation broadcast = Operation
+        .createPost(broadcastUri)
+        .setBody(localRequest)
+        .setReferer(getUri())
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            post.fail(ex);
+            return;
+          }
+
+          handler.accept(op.getBody(NodeGroupBroadcastResponse.class));
+        });
+
+    sendRequest(broadcast);
+  }
+
+  /**
+   * Types of requests handled by the service.
+   */
+  public enum RequestType {
+    ARCHIVE,
+    QUERY
+  }
+
+  /**
+   * Body of the requests sent to the service.
+   */
+  public static class Request extends ServiceDocument {
+
+    public RequestType type;
+
+    /**
+     * Name of the segment to append to, see {@link TaskArchive#newSegmentName()}.
+     */
+    public String segment;
+
+    /**
+     * Documents to archive.
+     */
+    public List<TaskService.State> documents;
+
+    /**
+     * Links of the archived documents to look up.
+     */
+    public List<String> documentLinks;
+
+    /**
+     * Entity of the archived documents to look up, when no links are given.
+     */
+    public String entityId;
+
+    /**
+     * Optional kind of the entity of the archived documents to look up.
+     */
+    public String entityKind;
+
+    /**
+     * Optional state of the archived documents to look up.
+     */
+    public String state;
+
+    /**
+     * Restricts a request to the archive of the receiving node.
+     */
+    public boolean local;
+  }
+
+  /**
+   * Body of the responses to QUERY requests.
+   */
+  public static class Response extends ServiceDocument {
+
+    public List<TaskService.State> documents = new ArrayList<>();
+  }
+}
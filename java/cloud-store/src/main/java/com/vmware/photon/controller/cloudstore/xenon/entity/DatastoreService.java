@@ -78,6 +78,7 @@ public class DatastoreService extends StatefulService {
 
     State currentState = getState(putOperation);
     State newState = putOperation.getBody(State.class);
+    keepReportedSpace(currentState, newState);
     if (ServiceDocument.equals(getDocumentTemplate().documentDescription, currentState, newState)) {
       putOperation.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
       putOperation.complete();
@@ -96,6 +97,22 @@ public class DatastoreService extends StatefulService {
     putOperation.complete();
   }
 
+  /**
+   * Agents leave the space fields out of the host config when they fail to read the datastore usage, so the space
+   * last reported for the datastore is kept instead of being cleared.
+   */
+  private void keepReportedSpace(State currentState, State newState) {
+    if (newState.capacityGb == null) {
+      newState.capacityGb = currentState.capacityGb;
+    }
+    if (newState.usedGb == null) {
+      newState.usedGb = currentState.usedGb;
+    }
+    if (newState.uncommittedGb == null) {
+      newState.uncommittedGb = currentState.uncommittedGb;
+    }
+  }
+
   private void validatePut(State currentState, State newState) {
     checkState(newState.id.equals(currentState.id));
     checkState(newState.name.equals(currentState.name));
@@ -208,5 +225,25 @@ public class DatastoreService extends StatefulService {
     @NotNull
     @DefaultBoolean(value = false)
     public Boolean isImageDatastore;
+
+    /**
+     * This value represents the capacity of the datastore in GB, as last reported by
+     * the agent of a host the datastore is attached to. It is null until an agent
+     * reports it.
+     */
+    public Double capacityGb;
+
+    /**
+     * This value represents the space consumed on the datastore in GB, as last
+     * reported by an agent. Thick-provisioned disks consume all of their space when
+     * they are created.
+     */
+    public Double usedGb;
+
+    /**
+     * This value represents the space in GB that thin-provisioned disks on the
+     * datastore may still grow into, as last reported by an agent.
+     */
+    public Double uncommittedGb;
   }
 }
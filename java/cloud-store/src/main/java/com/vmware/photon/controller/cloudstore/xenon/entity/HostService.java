@@ -464,6 +464,15 @@ public class HostService extends StatefulService {
         }
         datastoreState.tags = datastore.getTags();
         datastoreState.isImageDatastore = imageDatastores.contains(datastore.getId());
+        if (datastore.isSetCapacity_gb()) {
+          datastoreState.capacityGb = datastore.getCapacity_gb();
+        }
+        if (datastore.isSetUsed_gb()) {
+          datastoreState.usedGb = datastore.getUsed_gb();
+        }
+        if (datastore.isSetUncommitted_gb()) {
+          datastoreState.uncommittedGb = datastore.getUncommitted_gb();
+        }
 
         try {
           Operation post = Operation
@@ -249,6 +249,18 @@ public class ImageService extends StatefulService {
 
     public List<ImageSetting> imageSettings;
 
+    /**
+     * Hex encoded SHA-256 digest of the uploaded image file, computed while the file is uploaded.
+     */
+    public String contentDigest;
+
+    /**
+     * Hex encoded SHA-256 digest of the chunk checksums of a chunked upload, in chunk order. The checksums are
+     * verified against the chunks as they are received, so a commit of identical chunks can find and reuse the image
+     * without reading the chunks again.
+     */
+    public String uploadDigest;
+
     @NotNull
     @DefaultInteger(value = 0)
     public Integer totalImageDatastore;
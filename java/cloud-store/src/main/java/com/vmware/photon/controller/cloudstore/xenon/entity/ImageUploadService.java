@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.common.xenon.InitializationUtils;
+import com.vmware.photon.controller.common.xenon.PatchUtils;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.xenon.ValidationUtils;
+import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
+import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.Immutable;
+import com.vmware.photon.controller.common.xenon.validation.NotBlank;
+import com.vmware.photon.controller.common.xenon.validation.NotNull;
+import com.vmware.photon.controller.common.xenon.validation.Positive;
+import com.vmware.photon.controller.common.xenon.validation.WriteOnce;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatefulService;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class ImageUploadService is used for data persistence of chunked image uploads.
+ * <p>
+ * The chunks of an upload are staged in a folder on an image datastore, and this document records which file holds
+ * each received chunk, so that every API-FE instance can take chunks of the same upload and commit it. A patch adds
+ * chunk files to the ones recorded before. Committing an upload moves it from UPLOADING to COMMITTING, which only one
+ * patch can do, so an upload is committed at most once at a time. No chunks can be added while it is committed.
+ * <p>
+ * Agents delete the temporary image folders of a datastore two hours after they last changed, so an upload expires
+ * a little earlier, two hours minus the agents' sweep interval after it last changed.
+ */
+public class ImageUploadService extends StatefulService {
+
+  public static final String UPLOAD_STATE_CONFLICT_MESSAGE = "Image upload state conflict";
+
+  public static final long EXPIRATION_MICROS = TimeUnit.MINUTES.toMicros(110);
+
+  public ImageUploadService() {
+    super(State.class);
+    super.toggleOption(ServiceOption.PERSISTENCE, true);
+    super.toggleOption(ServiceOption.REPLICATION, true);
+    super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+    super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+  }
+
+  @Override
+  public void handleStart(Operation startOperation) {
+    ServiceUtils.logInfo(this, "Starting ImageUploadService %s", getSelfLink());
+    try {
+      State startState = startOperation.getBody(State.class);
+      InitializationUtils.initialize(startState);
+      if (startState.chunkFiles == null) {
+        startState.chunkFiles = new HashMap<>();
+      }
+      if (startState.chunkChecksums == null) {
+        startState.chunkChecksums = new HashMap<>();
+      }
+      if (startState.uploadState == null) {
+        startState.uploadState = State.UploadState.UPLOADING;
+      }
+      startState.documentExpirationTimeMicros = ServiceUtils.computeExpirationTime(EXPIRATION_MICROS);
+      validateState(startState);
+
+      startOperation.complete();
+    } catch (IllegalStateException t) {
+      ServiceUtils.failOperationAsBadRequest(this, startOperation, t);
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      startOperation.fail(t);
+    }
+  }
+
+  @Override
+  public void handlePatch(Operation patchOperation) {
+    ServiceUtils.logInfo(this, "Patching ImageUploadService %s", getSelfLink());
+    try {
+      State currentState = getState(patchOperation);
+      State patchState = patchOperation.getBody(State.class);
+      ValidationUtils.validatePatch(currentState, patchState);
+
+      if (patchState.chunkFiles != null) {
+        checkState(currentState.uploadState == State.UploadState.UPLOADING,
+            "%s: chunks cannot be added to an upload which is %s", UPLOAD_STATE_CONFLICT_MESSAGE,
+            currentState.uploadState);
+        currentState.chunkFiles.putAll(patchState.chunkFiles);
+        patchState.chunkFiles = null;
+      }
+
+      if (patchState.chunkChecksums != null) {
+        currentState.chunkChecksums.putAll(patchState.chunkChecksums);
+        patchState.chunkChecksums = null;
+      }
+
+      if (patchState.uploadState != null) {
+        checkState(isValidTransition(currentState.uploadState, patchState.uploadState),
+            "%s: an upload which is %s cannot become %s", UPLOAD_STATE_CONFLICT_MESSAGE, currentState.uploadState,
+            patchState.uploadState);
+      }
+
+      PatchUtils.patchState(currentState, patchState);
+      currentState.documentExpirationTimeMicros = ServiceUtils.computeExpirationTime(EXPIRATION_MICROS);
+      validateState(currentState);
+
+      patchOperation.complete();
+    } catch (IllegalStateException t) {
+      ServiceUtils.failOperationAsBadRequest(this, patchOperation, t);
+    } catch (Throwable t) {
+      ServiceUtils.logSevere(this, t);
+      patchOperation.fail(t);
+    }
+  }
+
+  @Override
+  public void handleDelete(Operation deleteOperation) {
+    ServiceUtils.expireDocumentOnDelete(this, State.class, deleteOperation);
+  }
+
+  /**
+   * Validate the service state for coherence.
+   *
+   * @param currentState
+   */
+  protected void validateState(State currentState) {
+    ValidationUtils.validateState(currentState);
+  }
+
+  private static boolean isValidTransition(State.UploadState from, State.UploadState to) {
+    switch (from) {
+      case UPLOADING:
+        return to == State.UploadState.COMMITTING;
+      case COMMITTING:
+        return to == State.UploadState.UPLOADING || to == State.UploadState.COMMITTED;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Durable service state data. Class encapsulating the data for a chunked image upload.
+   */
+  @NoMigrationDuringUpgrade
+  @NoMigrationDuringDeployment
+  public static class State extends ServiceDocument {
+
+    /**
+     * The name of the image to create.
+     */
+    @Immutable
+    @NotBlank
+    public String name;
+
+    /**
+     * The replication type of the image to create.
+     */
+    @Immutable
+    @NotNull
+    public ImageReplication replicationType;
+
+    /**
+     * The number of chunks the image file is split into.
+     */
+    @Immutable
+    @NotNull
+    @Positive
+    public Integer chunkCount;
+
+    /**
+     * The image datastore the chunks are staged on.
+     */
+    @Immutable
+    @NotBlank
+    public String datastore;
+
+    /**
+     * The datastore folder the chunks are staged in.
+     */
+    @Immutable
+    @NotBlank
+    public String uploadFolder;
+
+    /**
+     * The file in the upload folder holding each received chunk, by chunk index.
+     */
+    @NotNull
+    public Map<String, String> chunkFiles;
+
+    /**
+     * The SHA-256 checksum of each received chunk, by chunk index, as verified against the content of the chunk.
+     */
+    @NotNull
+    public Map<String, String> chunkChecksums;
+
+    @NotNull
+    public UploadState uploadState;
+
+    /**
+     * The id of the task which created the image, once the upload is committed.
+     */
+    @WriteOnce
+    public String taskId;
+
+    /**
+     * The states of an upload.
+     */
+    public enum UploadState {
+      UPLOADING,
+      COMMITTING,
+      COMMITTED
+    }
+  }
+}
@@ -34,12 +34,17 @@ import com.vmware.xenon.common.Utils;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Class ResourceTicketService is used for data persistence of Resource Ticket information.
+ * <p>
+ * Besides consuming and returning usage directly, API front-ends can lease a slice of a ticket's headroom
+ * (LEASE_ACQUIRE), consume from that slice locally and settle the accumulated usage in batches (LEASE_RECONCILE).
+ * Leased quota counts against the limits just like usage, so the limits are still enforced exactly here.
  */
 public class ResourceTicketService extends StatefulService {
 
@@ -77,6 +82,7 @@ public class ResourceTicketService extends StatefulService {
       ServiceUtils.logInfo(this, "Patching service %s", getSelfLink());
       State currentState = getState(patchOperation);
       Patch patch = patchOperation.getBody(Patch.class);
+      expireLeases(currentState);
 
       switch (patch.patchtype) {
         case USAGE_CONSUME:
@@ -85,6 +91,12 @@ public class ResourceTicketService extends StatefulService {
         case USAGE_RETURN:
           returnUsage(patch, currentState);
           break;
+        case LEASE_ACQUIRE:
+          acquireLease(patch, currentState);
+          break;
+        case LEASE_RECONCILE:
+          reconcileLease(patch, currentState);
+          break;
         default:
           String message =
               String.format("PatchType {%s} in patchOperation {%s}", patch.patchtype, patchOperation);
@@ -92,6 +104,10 @@ public class ResourceTicketService extends StatefulService {
       }
 
       validateState(currentState);
+      if (patch.patchtype == Patch.PatchType.LEASE_ACQUIRE || patch.patchtype == Patch.PatchType.LEASE_RECONCILE) {
+        // lets the holder find out whether its lease is still there
+        patchOperation.setBody(currentState);
+      }
       patchOperation.complete();
       ServiceUtils.logInfo(this, "Patch of type {%s} successfully applied", patch.patchtype);
     } catch (QuotaException quotaException) {
@@ -141,8 +157,9 @@ public class ResourceTicketService extends StatefulService {
       }
 
       // test to see if the limit is less than the computed
-      // new usage. if it is, then abort
-      if (compare(currentState.limitMap.get(qli.getKey()), qli) < 0) {
+      // new usage plus whatever is leased out. if it is, then abort
+      QuotaLineItem leased = getLeasedTotal(currentState, qli.getKey(), qli.getUnit());
+      if (compare(currentState.limitMap.get(qli.getKey()), add(qli, leased)) < 0) {
         throw new QuotaException(new QuotaErrorResponse(
             currentState.limitMap.get(qli.getKey()),
             currentState.usageMap.get(qli.getKey()), qli));
@@ -164,6 +181,141 @@ public class ResourceTicketService extends StatefulService {
     }
   }
 
+  private void acquireLease(Patch patch, State currentState) throws QuotaException {
+    checkLeaseHolder(patch);
+
+    // the lease is granted all or nothing: compute the holder's new lease for
+    // every key first, and only commit if usage plus all leases stays within the limits
+    Lease lease = currentState.leases.get(patch.leaseHolder);
+    Map<String, QuotaLineItem> newAmounts = new HashMap<>();
+    for (String key : patch.cost.keySet()) {
+      QuotaLineItem current = lease != null && lease.amounts.containsKey(key)
+          ? lease.amounts.get(key)
+          : new QuotaLineItem(key, 0.0, patch.cost.get(key).getUnit());
+      newAmounts.put(key, add(current, patch.cost.get(key)));
+
+      if (!currentState.limitMap.containsKey(key)) {
+        continue;
+      }
+
+      QuotaLineItem usage = currentState.usageMap.containsKey(key)
+          ? currentState.usageMap.get(key)
+          : new QuotaLineItem(key, 0.0, patch.cost.get(key).getUnit());
+      QuotaLineItem newTotal = add(add(usage, getLeasedTotal(currentState, key, usage.getUnit())),
+          patch.cost.get(key));
+      if (compare(currentState.limitMap.get(key), newTotal) < 0) {
+        throw new QuotaException(new QuotaErrorResponse(currentState.limitMap.get(key), usage, newTotal));
+      }
+    }
+
+    if (lease == null) {
+      lease = new Lease();
+      currentState.leases.put(patch.leaseHolder, lease);
+    }
+    lease.amounts.putAll(newAmounts);
+    lease.expirationTimeMicros = Utils.getNowMicrosUtc() + patch.leaseDurationMicros;
+  }
+
+  private void reconcileLease(Patch patch, State currentState) throws QuotaException {
+    checkLeaseHolder(patch);
+
+    // cost carries the usage accumulated against the lease (negative for usage
+    // that was returned) and lease the matching change of the leased amounts.
+    // while the lease is held usage only moves out of it, so usage plus leases
+    // do not grow. a lease that expired meanwhile is not recreated and its
+    // headroom may have been handed out since, so like acquireLease, compute
+    // everything first and only commit if no limit is pushed further over
+    Lease lease = currentState.leases.get(patch.leaseHolder);
+    Map<String, QuotaLineItem> newAmounts = new HashMap<>();
+    if (lease != null) {
+      for (String key : patch.lease.keySet()) {
+        QuotaLineItem current = lease.amounts.containsKey(key)
+            ? lease.amounts.get(key)
+            : new QuotaLineItem(key, 0.0, patch.lease.get(key).getUnit());
+        newAmounts.put(key, add(current, patch.lease.get(key)));
+      }
+    }
+
+    Map<String, QuotaLineItem> newUsage = new HashMap<>();
+    for (String key : patch.cost.keySet()) {
+      QuotaLineItem usage = currentState.usageMap.containsKey(key)
+          ? currentState.usageMap.get(key)
+          : new QuotaLineItem(key, 0.0, patch.cost.get(key).getUnit());
+      newUsage.put(key, add(usage, patch.cost.get(key)));
+
+      if (!currentState.limitMap.containsKey(key)) {
+        continue;
+      }
+
+      QuotaLineItem oldTotal = add(usage, getLeasedTotal(currentState, key, usage.getUnit()));
+      QuotaLineItem newTotal = add(oldTotal, patch.cost.get(key));
+      if (newAmounts.containsKey(key)) {
+        newTotal = add(newTotal, patch.lease.get(key));
+      }
+      if (compare(currentState.limitMap.get(key), newTotal) < 0 && compare(oldTotal, newTotal) < 0) {
+        throw new QuotaException(new QuotaErrorResponse(currentState.limitMap.get(key), usage, newTotal));
+      }
+    }
+
+    currentState.usageMap.putAll(newUsage);
+    if (lease == null) {
+      return;
+    }
+
+    lease.amounts.putAll(newAmounts);
+    if (isEmpty(lease)) {
+      currentState.leases.remove(patch.leaseHolder);
+    } else {
+      lease.expirationTimeMicros = Utils.getNowMicrosUtc() + patch.leaseDurationMicros;
+    }
+  }
+
+  private void checkLeaseHolder(Patch patch) {
+    if (patch.leaseHolder == null || patch.leaseDurationMicros == null || patch.leaseDurationMicros <= 0) {
+      throw new IllegalStateException("leaseHolder and a positive leaseDurationMicros are required for lease patches");
+    }
+  }
+
+  /**
+   * Drops the leases whose holders stopped renewing them, which returns their headroom to the ticket.
+   */
+  private void expireLeases(State currentState) {
+    if (currentState.leases == null) {
+      // tickets created before leases existed
+      currentState.leases = new HashMap<>();
+      return;
+    }
+
+    long now = Utils.getNowMicrosUtc();
+    Iterator<Map.Entry<String, Lease>> iterator = currentState.leases.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Lease> entry = iterator.next();
+      if (entry.getValue().expirationTimeMicros < now) {
+        ServiceUtils.logInfo(this, "Lease of %s on %s expired", entry.getKey(), getSelfLink());
+        iterator.remove();
+      }
+    }
+  }
+
+  private QuotaLineItem getLeasedTotal(State currentState, String key, QuotaUnit unit) {
+    QuotaLineItem total = new QuotaLineItem(key, 0.0, unit);
+    for (Lease lease : currentState.leases.values()) {
+      if (lease.amounts.containsKey(key)) {
+        total = add(total, lease.amounts.get(key));
+      }
+    }
+    return total;
+  }
+
+  private boolean isEmpty(Lease lease) {
+    for (QuotaLineItem amount : lease.amounts.values()) {
+      if (amount.getValue() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Returns a QuotaLineItem whose value is this + val. The unit in the result are the same as
    * the unit in "this". That is to say if "this" is in KB and "val" is in MB, the result is in KB.
@@ -384,13 +536,24 @@ public class ResourceTicketService extends StatefulService {
 
     public Map<String, QuotaLineItem> cost = new HashMap<>();
 
+    // only used by LEASE_RECONCILE: the signed change of the holder's leased amounts
+    public Map<String, QuotaLineItem> lease = new HashMap<>();
+
+    // only used by LEASE_ACQUIRE and LEASE_RECONCILE: who holds the lease and for how long
+    // it stays valid without being renewed by another lease patch
+    public String leaseHolder;
+
+    public Long leaseDurationMicros;
+
     /**
      * Defines the purpose of the patch.
      */
     public enum PatchType {
       NONE,
       USAGE_CONSUME,
-      USAGE_RETURN
+      USAGE_RETURN,
+      LEASE_ACQUIRE,
+      LEASE_RECONCILE
     }
   }
 
@@ -426,5 +589,19 @@ public class ResourceTicketService extends StatefulService {
     public Map<String, QuotaLineItem> limitMap = new HashMap<>();
 
     public Map<String, QuotaLineItem> usageMap = new HashMap<>();
+
+    // quota leased out to API front-end escrows, by holder: it counts against
+    // the limits but is not usage until the front-end reconciles it
+    public Map<String, Lease> leases = new HashMap<>();
+  }
+
+  /**
+   * Quota leased to one holder.
+   */
+  public static class Lease {
+
+    public Map<String, QuotaLineItem> amounts = new HashMap<>();
+
+    public long expirationTimeMicros;
   }
 }
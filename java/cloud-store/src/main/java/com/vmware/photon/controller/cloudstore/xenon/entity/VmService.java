@@ -72,6 +72,7 @@ public class VmService extends StatefulService {
       ValidationUtils.validatePatch(currentState, patchState);
       PatchUtils.patchState(currentState, patchState);
       validateState(currentState);
+      patchOperation.setBody(currentState);
       patchOperation.complete();
     } catch (IllegalStateException t) {
       ServiceUtils.failOperationAsBadRequest(this, patchOperation, t);
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.task;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class implements the sweep over all documents of one kind which the cleaner services use to find dangling
+ * documents.
+ * <p>
+ * Documents are visited one page at a time in the order of their update time. Instead of walking a query snapshot
+ * through nextPageLinks, every page is a new query for the documents updated at or after the {@link Cursor} which
+ * the previous page left behind. The cursor is kept in the state of the cleaner, so a sweep resumes where it
+ * stopped and does not hold on to index searchers between pages. Documents updated after the end time of the
+ * sweep are left to the next sweep, which also keeps documents fixed by this sweep from being visited again.
+ * <p>
+ * Ownership checks of a page are batched into queries of up to {@link #MAX_LINKS_PER_QUERY} self links, and the
+ * per-document work of a page runs with a bound on the number of operations in flight.
+ *
+ * @param <T> type of the swept documents
+ */
+public class DocumentSweep<T extends ServiceDocument> {
+
+  public static final int DEFAULT_MAX_IN_FLIGHT_OPERATIONS = 16;
+
+  public static final int MAX_LINKS_PER_QUERY = 512;
+
+  private final Service service;
+  private final Class<T> documentType;
+  private final int pageLimit;
+  private final int maxInFlightOperations;
+
+  public DocumentSweep(Service service, Class<T> documentType, int pageLimit, int maxInFlightOperations) {
+    checkNotNull(service, "service cannot be null");
+    checkNotNull(documentType, "documentType cannot be null");
+    checkArgument(pageLimit > 0, "pageLimit must be greater than zero");
+    checkArgument(maxInFlightOperations > 0, "maxInFlightOperations must be greater than zero");
+
+    this.service = service;
+    this.documentType = documentType;
+    this.pageLimit = pageLimit;
+    this.maxInFlightOperations = maxInFlightOperations;
+  }
+
+  /**
+   * Creates the cursor of a new sweep.
+   *
+   * @param endTimeMicros documents updated after this time are not visited
+   * @return
+   */
+  public static Cursor createCursor(long endTimeMicros) {
+    Cursor cursor = new Cursor();
+    cursor.endTimeMicros = endTimeMicros;
+    cursor.documentLinks = new ArrayList<>();
+    cursor.processedDocuments = 0;
+    cursor.progressPercent = 0;
+    cursor.done = false;
+    return cursor;
+  }
+
+  /**
+   * Queries the page of documents which follows the cursor.
+   *
+   * @param cursor     position of the sweep, which is left unchanged
+   * @param completion invoked with the page, or with the failure of the query
+   */
+  public void queryNextPage(Cursor cursor, BiConsumer<Page<T>, Throwable> completion) {
+    long lowerBoundMicros = cursor.updateTimeMicros == null ? 0 : cursor.updateTimeMicros;
+    Set<String> visitedLinks = cursor.documentLinks == null
+        ? Collections.emptySet() : new HashSet<>(cursor.documentLinks);
+
+    // Documents which share the update time of the cursor and were visited already come back from the query, so
+    // the limit is raised by their number to make sure that every page makes progress.
+    int resultLimit = pageLimit + visitedLinks.size();
+
+    Operation.createPost(UriUtils.buildUri(service.getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+        .setBody(buildPageQuery(lowerBoundMicros, cursor.endTimeMicros, resultLimit))
+        .setCompletion((op, failure) -> {
+          if (failure != null) {
+            completion.accept(null, failure);
+            return;
+          }
+
+          try {
+            completion.accept(
+                buildPage(cursor, visitedLinks, op.getBody(QueryTask.class).results, resultLimit), null);
+          } catch (Throwable t) {
+            completion.accept(null, t);
+          }
+        })
+        .sendWith(service);
+  }
+
+  /**
+   * Queries the documents with the given self links across all nodes, e.g. the owners of the documents of a page.
+   * Links of documents which do not exist are missing from the result.
+   *
+   * @param type       type of the documents
+   * @param selfLinks  self links of the documents
+   * @param completion invoked with the documents by self link, or with the failure of the queries
+   * @param <S>
+   */
+  public <S extends ServiceDocument> void queryDocuments(Class<S> type,
+                                                         Collection<String> selfLinks,
+                                                         BiConsumer<Map<String, S>, Throwable> completion) {
+    if (selfLinks.isEmpty()) {
+      completion.accept(Collections.emptyMap(), null);
+      return;
+    }
+
+    List<String> links = new ArrayList<>(selfLinks);
+    List<Operation> queries = new ArrayList<>();
+    for (int i = 0; i < links.size(); i += MAX_LINKS_PER_QUERY) {
+      queries.add(Operation
+          .createPost(UriUtils.buildUri(service.getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
+          .setBody(buildSelfLinkQuery(type, links.subList(i, Math.min(i + MAX_LINKS_PER_QUERY, links.size())))));
+    }
+
+    OperationJoin.create(queries)
+        .setCompletion((ops, failures) -> {
+          if (failures != null && !failures.isEmpty()) {
+            completion.accept(null, failures.values().iterator().next());
+            return;
+          }
+
+          Map<String, S> documents = new HashMap<>();
+          for (Operation op : ops.values()) {
+            ServiceDocumentQueryResult results = op.getBody(QueryTask.class).results;
+            if (results != null && results.documents != null) {
+              for (Map.Entry<String, Object> document : results.documents.entrySet()) {
+                documents.put(document.getKey(), Utils.fromJson(document.getValue(), type));
+              }
+            }
+          }
+
+          completion.accept(documents, null);
+        })
+        .sendWith(service);
+  }
+
+  /**
+   * Runs an asynchronous action for every item with at most the configured number of actions in flight. All
+   * items are processed even when some of the actions fail.
+   *
+   * @param items      items to process
+   * @param action     action which is passed an item and the callback to invoke with null or its failure
+   * @param completion invoked with the number of actions which succeeded and the first failure, if any
+   * @param <I>
+   */
+  public <I> void forEach(List<I> items,
+                          BiConsumer<I, Consumer<Throwable>> action,
+                          BiConsumer<Integer, Throwable> completion) {
+    if (items.isEmpty()) {
+      completion.accept(0, null);
+      return;
+    }
+
+    AtomicInteger nextItem = new AtomicInteger();
+    AtomicInteger pendingItems = new AtomicInteger(items.size());
+    AtomicInteger succeededItems = new AtomicInteger();
+    AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+    Runnable runNext = new Runnable() {
+      @Override
+      public void run() {
+        int index = nextItem.getAndIncrement();
+        if (index >= items.size()) {
+          return;
+        }
+
+        Runnable runNextItem = this;
+        Consumer<Throwable> done = failure -> {
+          if (failure == null) {
+            succeededItems.incrementAndGet();
+          } else {
+            firstFailure.compareAndSet(null, failure);
+          }
+
+          if (pendingItems.decrementAndGet() == 0) {
+            completion.accept(succeededItems.get(), firstFailure.get());
+          } else {
+            runNextItem.run();
+          }
+        };
+
+        try {
+          action.accept(items.get(index), done);
+        } catch (Throwable t) {
+          done.accept(t);
+        }
+      }
+    };
+
+    for (int i = 0; i < Math.min(maxInFlightOperations, items.size()); i++) {
+      runNext.run();
+    }
+  }
+
+  private Page<T> buildPage(Cursor cursor, Set<String> visitedLinks, ServiceDocumentQueryResult results,
+                            int resultLimit) {
+    Page<T> page = new Page<>();
+    page.documents = new ArrayList<>();
+    page.cursor = copy(cursor);
+
+    int resultCount = 0;
+    if (results != null && results.documentLinks != null) {
+      for (String documentLink : results.documentLinks) {
+        resultCount++;
+        if (visitedLinks.contains(documentLink)) {
+          continue;
+        }
+
+        T document = Utils.fromJson(results.documents.get(documentLink), documentType);
+        page.documents.add(document);
+
+        if (page.cursor.updateTimeMicros == null
+            || page.cursor.updateTimeMicros != document.documentUpdateTimeMicros) {
+          page.cursor.updateTimeMicros = document.documentUpdateTimeMicros;
+          page.cursor.documentLinks = new ArrayList<>();
+        }
+        page.cursor.documentLinks.add(documentLink);
+      }
+    }
+
+    if (page.cursor.startTimeMicros == null && !page.documents.isEmpty()) {
+      page.cursor.startTimeMicros = page.documents.get(0).documentUpdateTimeMicros;
+    }
+
+    page.cursor.processedDocuments += page.documents.size();
+    page.cursor.done = resultCount < resultLimit;
+    page.cursor.progressPercent = computeProgressPercent(page.cursor);
+    return page;
+  }
+
+  private static int computeProgressPercent(Cursor cursor) {
+    if (cursor.done) {
+      return 100;
+    }
+
+    if (cursor.startTimeMicros == null || cursor.updateTimeMicros == null
+        || cursor.endTimeMicros <= cursor.startTimeMicros) {
+      return 0;
+    }
+
+    long percent = (cursor.updateTimeMicros - cursor.startTimeMicros) * 100
+        / (cursor.endTimeMicros - cursor.startTimeMicros);
+    return (int) Math.max(0, Math.min(99, percent));
+  }
+
+  private QueryTask buildPageQuery(long lowerBoundMicros, long upperBoundMicros, int resultLimit) {
+    QueryTask.Query kindClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+        .setTermMatchValue(Utils.buildKind(documentType));
+
+    QueryTask.NumericRange<?> range =
+        QueryTask.NumericRange.createLongRange(lowerBoundMicros, upperBoundMicros, true, true);
+    range.precisionStep = Integer.MAX_VALUE;
+    QueryTask.Query timeClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS)
+        .setNumericRange(range);
+
+    QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+    querySpec.query
+        .addBooleanClause(kindClause)
+        .addBooleanClause(timeClause);
+
+    querySpec.sortTerm = new QueryTask.QueryTerm();
+    querySpec.sortTerm.propertyName = ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS;
+    querySpec.sortTerm.propertyType = ServiceDocumentDescription.TypeName.LONG;
+    querySpec.sortOrder = QueryTask.QuerySpecification.SortOrder.ASC;
+    querySpec.options = EnumSet.of(
+        QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT,
+        QueryTask.QuerySpecification.QueryOption.SORT,
+        QueryTask.QuerySpecification.QueryOption.TOP_RESULTS);
+    querySpec.resultLimit = resultLimit;
+    return QueryTask.create(querySpec).setDirect(true);
+  }
+
+  private static QueryTask buildSelfLinkQuery(Class<? extends ServiceDocument> type, List<String> selfLinks) {
+    QueryTask.Query kindClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+        .setTermMatchValue(Utils.buildKind(type));
+
+    QueryTask.Query selfLinksClause = new QueryTask.Query();
+    for (String selfLink : selfLinks) {
+      QueryTask.Query selfLinkClause = new QueryTask.Query()
+          .setTermPropertyName(ServiceDocument.FIELD_NAME_SELF_LINK)
+          .setTermMatchValue(selfLink);
+      selfLinkClause.occurance = QueryTask.Query.Occurance.SHOULD_OCCUR;
+      selfLinksClause.addBooleanClause(selfLinkClause);
+    }
+
+    QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+    querySpec.query
+        .addBooleanClause(kindClause)
+        .addBooleanClause(selfLinksClause);
+
+    // The documents are only replicated to some of the nodes, so the query has to see the index of all of them.
+    querySpec.options = EnumSet.of(
+        QueryTask.QuerySpecification.QueryOption.BROADCAST,
+        QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    return QueryTask.create(querySpec).setDirect(true);
+  }
+
+  private static Cursor copy(Cursor cursor) {
+    Cursor copy = new Cursor();
+    copy.startTimeMicros = cursor.startTimeMicros;
+    copy.endTimeMicros = cursor.endTimeMicros;
+    copy.updateTimeMicros = cursor.updateTimeMicros;
+    copy.documentLinks = cursor.documentLinks == null ? new ArrayList<>() : new ArrayList<>(cursor.documentLinks);
+    copy.processedDocuments = cursor.processedDocuments == null ? 0 : cursor.processedDocuments;
+    copy.progressPercent = cursor.progressPercent;
+    copy.done = cursor.done;
+    return copy;
+  }
+
+  /**
+   * Position of a sweep, which is kept in the state of the cleaner service running it.
+   */
+  public static class Cursor {
+
+    /**
+     * Update time of the first visited document.
+     */
+    public Long startTimeMicros;
+
+    /**
+     * Documents updated after this time are not visited.
+     */
+    public Long endTimeMicros;
+
+    /**
+     * Update time of the last visited document.
+     */
+    public Long updateTimeMicros;
+
+    /**
+     * Self links of the visited documents with the update time of the last visited document.
+     */
+    public List<String> documentLinks;
+
+    /**
+     * The number of visited documents.
+     */
+    public Integer processedDocuments;
+
+    /**
+     * How far the sweep is through the update times between the first visited document and the end time.
+     */
+    public Integer progressPercent;
+
+    /**
+     * Whether all documents have been visited.
+     */
+    public Boolean done;
+  }
+
+  /**
+   * A page of documents and the cursor behind them.
+   *
+   * @param <D> type of the documents
+   */
+  public static class Page<D> {
+    public List<D> documents;
+    public Cursor cursor;
+  }
+}
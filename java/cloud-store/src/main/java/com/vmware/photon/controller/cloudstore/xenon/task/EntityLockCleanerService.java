@@ -14,7 +14,6 @@
 package com.vmware.photon.controller.cloudstore.xenon.task;
 
 import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockService;
-import com.vmware.photon.controller.cloudstore.xenon.entity.EntityLockServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
@@ -28,32 +27,27 @@ import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceDocument;
-import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.services.common.QueryTask;
-import com.vmware.xenon.services.common.ServiceUriPaths;
-import static com.vmware.xenon.common.OperationJoin.JoinedCompletionHandler;
 
-import java.util.Collection;
-import java.util.EnumSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Class implementing service to remove dangling entity locks from the cloud store.
- * Service will query entity locks with pagination and continually process all pages by patching itself.
+ * Service will sweep the entity locks with a {@link DocumentSweep} and continually process all pages by patching
+ * itself.
  */
 public class EntityLockCleanerService extends StatefulService {
 
   public static final Integer DEFAULT_PAGE_LIMIT = 1000;
   public static final long DEFAULT_DELETE_WATERMARK_TIME_MILLIS = 5 * 60 * 1000L;
-  private static final String DOCUMENT_UPDATE_TIME_MICROS = "documentUpdateTimeMicros";
 
   public EntityLockCleanerService() {
     super(State.class);
@@ -118,9 +112,6 @@ public class EntityLockCleanerService extends StatefulService {
    */
   private State applyPatch(State current, State patch) {
     ServiceUtils.logInfo(this, "Moving to stage %s", patch.taskState.stage);
-    if (patch.nextPageLink == null) {
-      current.nextPageLink = null;
-    }
     PatchUtils.patchState(current, patch);
     return current;
   }
@@ -149,27 +140,12 @@ public class EntityLockCleanerService extends StatefulService {
 
     try {
       if (!isFinalStage(current)) {
-        if (current.nextPageLink == null) {
-          Operation queryEntityLocksPagination = Operation
-              .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
-              .setBody(buildEntityLockQuery(current));
-          queryEntityLocksPagination
-              .setCompletion(((op, failure) -> {
-                if (failure != null) {
-                  failTask(failure);
-                  return;
-                }
-                ServiceDocumentQueryResult results = op.getBody(QueryTask.class).results;
-                if (results.nextPageLink != null) {
-                  current.nextPageLink = results.nextPageLink;
-                } else {
-                  ServiceUtils.logInfo(this, "No entityLocks found.");
-                }
-
-                sendStageProgressPatch(current);
-
-              })).sendWith(this);
+        if (current.sweepCursor == null) {
+          current.sweepCursor = DocumentSweep.createCursor(
+              Utils.getNowMicrosUtc() - current.entityLockDeleteWatermarkTimeInMicros);
         }
+
+        sendStageProgressPatch(current);
       }
     } catch (Throwable e) {
       failTask(e);
@@ -206,170 +182,124 @@ public class EntityLockCleanerService extends StatefulService {
 
 
   /**
-   * Retrieves the first page of entity locks and kicks of the subsequent processing.
+   * Retrieves the next page of entity locks and kicks of the subsequent processing.
    *
    * @param current
    */
   private void processUnreleasedEntityLocks(final State current) {
-    if (current.nextPageLink == null) {
+    if (current.sweepCursor == null || current.sweepCursor.done) {
       finishTask(current);
       return;
     }
 
-    Operation getFirstPageOfEntityLocks = Operation.createGet(UriUtils.buildUri(getHost(), current.nextPageLink));
-
-    getFirstPageOfEntityLocks
-        .setCompletion((op, throwable) -> {
-          if (throwable != null) {
-            failTask(throwable);
-            return;
-          }
-
-          current.nextPageLink = op.getBody(QueryTask.class).results.nextPageLink;
-
-          List<EntityLockService.State> entityLockList =
-              parseEntityLockQueryResults(op.getBody(QueryTask.class));
-
-          if (entityLockList.size() == 0) {
-            ServiceUtils.logInfo(EntityLockCleanerService.this, "No entityLocks found any more.");
-            sendStageProgressPatch(current);
-            return;
-          }
-
-          releaseUnreleasedEntityLocks(current, entityLockList);
-        })
-        .sendWith(this);
-  }
-
-  private QueryTask buildEntityLockQuery(final State current) {
-    Long durationInMicros = Utils.getNowMicrosUtc() - current.entityLockDeleteWatermarkTimeInMicros;
-
-    QueryTask.Query kindClause = new QueryTask.Query()
-        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
-        .setTermMatchValue(Utils.buildKind(EntityLockService.State.class));
-
-    QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
-
-    QueryTask.NumericRange<?> range = QueryTask.NumericRange.createLessThanRange(durationInMicros);
-    range.precisionStep = Integer.MAX_VALUE;
-    QueryTask.Query timeClause = new QueryTask.Query()
-        .setTermPropertyName(DOCUMENT_UPDATE_TIME_MICROS)
-        .setNumericRange(range);
+    DocumentSweep<EntityLockService.State> sweep = new DocumentSweep<>(this, EntityLockService.State.class,
+        DEFAULT_PAGE_LIMIT, current.maxInFlightOperations);
+    sweep.queryNextPage(current.sweepCursor, (page, throwable) -> {
+      if (throwable != null) {
+        failTask(throwable);
+        return;
+      }
 
-    querySpec.query
-        .addBooleanClause(kindClause)
-        .addBooleanClause(timeClause);
+      ServiceUtils.logInfo(this, "Swept %d entityLocks, %d%% of the update time range",
+          page.cursor.processedDocuments, page.cursor.progressPercent);
 
-    querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
-    querySpec.resultLimit = DEFAULT_PAGE_LIMIT;
-    return QueryTask.create(querySpec).setDirect(true);
-  }
+      if (page.documents.isEmpty()) {
+        ServiceUtils.logInfo(this, "No entityLocks found any more.");
+        current.sweepCursor = page.cursor;
+        sendStageProgressPatch(current);
+        return;
+      }
 
-  private void releaseUnreleasedEntityLocks(final State current, List<EntityLockService.State> entityLockList) {
-    Collection<Operation> getTaskOperations = getTasksAssociatedWithEntityLocks(entityLockList);
-    if (getTaskOperations.isEmpty()) {
-      ServiceUtils.logInfo(EntityLockCleanerService.this, "No task associated with entity lock on this page.");
-      sendStageProgressPatch(current);
-      return;
-    }
-    OperationJoin join = OperationJoin.create(getTaskOperations);
-    join.setCompletion(releaseEntityLocksAssociatedWithInactiveTasks(current));
-    join.sendWith(this);
+      releaseUnreleasedEntityLocks(current, sweep, page);
+    });
   }
 
-  private Collection<Operation> getTasksAssociatedWithEntityLocks(
-      List<EntityLockService.State> entityLockList) {
-    Collection<Operation> getTaskOperations = new LinkedList<>();
-
-    for (EntityLockService.State entityLock : entityLockList) {
+  /**
+   * Looks up the owner tasks of a page of entity locks with one query and releases the locks whose tasks are no
+   * longer active. The cursor is only moved past the page once all of its locks have been processed.
+   *
+   * @param current
+   * @param sweep
+   * @param page
+   */
+  private void releaseUnreleasedEntityLocks(final State current,
+                                            DocumentSweep<EntityLockService.State> sweep,
+                                            DocumentSweep.Page<EntityLockService.State> page) {
+    Map<String, List<EntityLockService.State>> entityLocksByTaskLink = new HashMap<>();
+    for (EntityLockService.State entityLock : page.documents) {
       if (entityLock.ownerTaskId != null) {
-        Operation getTaskOperation = Operation
-            .createGet(UriUtils.buildUri(getHost(), TaskServiceFactory.SELF_LINK + "/" + entityLock.ownerTaskId))
-            .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
-
-        getTaskOperations.add(getTaskOperation);
+        entityLocksByTaskLink
+            .computeIfAbsent(TaskServiceFactory.SELF_LINK + "/" + entityLock.ownerTaskId, key -> new ArrayList<>())
+            .add(entityLock);
       } else {
         ServiceUtils.logSevere(this, "Found entity lock with null taskId. EntityLock Id: %s", entityLock.entityId);
       }
     }
 
-    return getTaskOperations;
-  }
+    if (entityLocksByTaskLink.isEmpty()) {
+      ServiceUtils.logInfo(this, "No task associated with entity lock on this page.");
+      current.sweepCursor = page.cursor;
+      sendStageProgressPatch(current);
+      return;
+    }
 
-  private JoinedCompletionHandler releaseEntityLocksAssociatedWithInactiveTasks(final State current) {
-    return (ops, failures) -> {
-      if (failures != null && !failures.isEmpty()) {
-        failTask(failures.values().iterator().next());
+    sweep.queryDocuments(TaskService.State.class, entityLocksByTaskLink.keySet(), (tasks, throwable) -> {
+      if (throwable != null) {
+        failTask(throwable);
         return;
       }
 
-      Collection<Operation> releaseLockOperations = getReleaseLockOperationsForEntityLocks(ops);
+      List<EntityLockService.State> danglingEntityLocks = new ArrayList<>();
+      for (Map.Entry<String, List<EntityLockService.State>> entry : entityLocksByTaskLink.entrySet()) {
+        TaskService.State task = tasks.get(entry.getKey());
+        if (task == null) {
+          ServiceUtils.logWarning(this, "Task %s of entity locks %s was not found", entry.getKey(), entry.getValue());
+        } else if (task.state != TaskService.State.TaskState.QUEUED &&
+            task.state != TaskService.State.TaskState.STARTED) {
+          danglingEntityLocks.addAll(entry.getValue());
+        }
+      }
 
-      current.danglingEntityLocksWithInactiveTasks += releaseLockOperations.size();
-      if (releaseLockOperations.size() == 0) {
-        ServiceUtils.logInfo(this, "No unreleased entityLocks found for this patch.");
+      current.danglingEntityLocksWithInactiveTasks += danglingEntityLocks.size();
+      if (danglingEntityLocks.isEmpty()) {
+        ServiceUtils.logInfo(this, "No unreleased entityLocks found for this page.");
+        current.sweepCursor = page.cursor;
         sendStageProgressPatch(current);
         return;
       }
 
-      OperationJoin join = OperationJoin.create(releaseLockOperations);
-      join.setCompletion(getEntityLockReleaseResponseHandler(current));
-      join.sendWith(this);
-    };
-  }
-
-  private Collection<Operation> getReleaseLockOperationsForEntityLocks(Map<Long, Operation> ops) {
-    Collection<Operation> releaseLockOperations = new LinkedList<>();
-
-    for (Operation op : ops.values()) {
-      TaskService.State task = op.getBody(TaskService.State.class);
-      if (task.state != TaskService.State.TaskState.QUEUED &&
-          task.state != TaskService.State.TaskState.STARTED) {
-        ServiceUtils.logSevere(this, "Deleting a dangling EntityLock. Investigation needed on associated " +
-                "TaskService. EntityLock Id: %s, TaskService documentSelfLink:  %s",
-            task.entityId,
-            task.documentSelfLink);
-
-        EntityLockService.State state = new EntityLockService.State();
-        state.ownerTaskId = ServiceUtils.getIDFromDocumentSelfLink(task.documentSelfLink);
-        state.entityId = task.entityId;
-        state.entityKind = task.entityKind;
-        state.documentSelfLink = EntityLockServiceFactory.SELF_LINK + "/" + task.entityId;
-        state.lockOperation = EntityLockService.State.LockOperation.RELEASE;
-        Operation releaseLockOperation = Operation
-            .createPut(UriUtils.buildUri(getHost(), EntityLockServiceFactory.SELF_LINK + "/" + state.entityId))
-            .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
-            .setBody(state);
-
-        releaseLockOperations.add(releaseLockOperation);
-      }
-    }
-    return releaseLockOperations;
-  }
+      sweep.forEach(danglingEntityLocks, this::releaseEntityLock, (releasedEntityLocks, failure) -> {
+        if (failure != null) {
+          failTask(failure);
+          return;
+        }
 
-  private JoinedCompletionHandler getEntityLockReleaseResponseHandler(final State current) {
-    return (ops, failures) -> {
-      if (failures != null && !failures.isEmpty()) {
-        this.failTask(failures.values().iterator().next());
-        return;
-      }
-      current.releasedEntityLocks += ops.size();
-      this.sendStageProgressPatch(current);
-    };
+        current.releasedEntityLocks += releasedEntityLocks;
+        current.sweepCursor = page.cursor;
+        sendStageProgressPatch(current);
+      });
+    });
   }
 
-
-  private List<EntityLockService.State> parseEntityLockQueryResults(QueryTask result) {
-    List<EntityLockService.State> entityLockList = new LinkedList<>();
-
-    if (result != null && result.results != null && result.results.documentCount > 0) {
-      for (Map.Entry<String, Object> doc : result.results.documents.entrySet()) {
-        entityLockList.add(
-            Utils.fromJson(doc.getValue(), EntityLockService.State.class));
-      }
-    }
-
-    return entityLockList;
+  private void releaseEntityLock(EntityLockService.State entityLock, Consumer<Throwable> done) {
+    ServiceUtils.logSevere(this, "Deleting a dangling EntityLock. Investigation needed on associated " +
+            "TaskService. EntityLock Id: %s, TaskService Id:  %s",
+        entityLock.entityId,
+        entityLock.ownerTaskId);
+
+    EntityLockService.State state = new EntityLockService.State();
+    state.ownerTaskId = entityLock.ownerTaskId;
+    state.entityId = entityLock.entityId;
+    state.entityKind = entityLock.entityKind;
+    state.documentSelfLink = entityLock.documentSelfLink;
+    state.lockOperation = EntityLockService.State.LockOperation.RELEASE;
+
+    Operation
+        .createPut(UriUtils.buildUri(getHost(), entityLock.documentSelfLink))
+        .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+        .setBody(state)
+        .setCompletion((op, throwable) -> done.accept(throwable))
+        .sendWith(this);
   }
 
   /**
@@ -467,9 +397,15 @@ public class EntityLockCleanerService extends StatefulService {
     public Integer releasedEntityLocks;
 
     /**
-     * The link to next page.
+     * Position of the sweep over the entity locks.
+     */
+    public DocumentSweep.Cursor sweepCursor;
+
+    /**
+     * The maximum number of entity locks which are released at the same time.
      */
-    public String nextPageLink;
+    @DefaultInteger(value = DocumentSweep.DEFAULT_MAX_IN_FLIGHT_OPERATIONS)
+    public Integer maxInFlightOperations;
 
     /**
      * Flag that controls if we should self patch to make forward progress.
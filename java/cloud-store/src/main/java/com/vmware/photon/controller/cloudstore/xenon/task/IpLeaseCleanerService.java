@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.cloudstore.xenon.task;
 
 import com.vmware.photon.controller.cloudstore.xenon.entity.IpLeaseService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.VmServiceFactory;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
 import com.vmware.photon.controller.common.xenon.PatchUtils;
@@ -27,22 +28,21 @@ import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
-import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.services.common.QueryTask;
-import com.vmware.xenon.services.common.ServiceUriPaths;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.net.URI;
-import java.util.EnumSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Class implementing a periodically triggered service to clean up IpLeaseService,
@@ -108,23 +108,11 @@ public class IpLeaseCleanerService extends StatefulService {
     }
 
     try {
-      if (!isFinalStage(current) && current.nextPageLink == null) {
-        Operation queryIpLeasePagination = Operation
-            .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
-            .setBody(buildIpLeaseQuery(current));
-        queryIpLeasePagination
-            .setCompletion(((op, failure) -> {
-              if (failure != null) {
-                failTask(failure);
-                return;
-              }
-              ServiceDocumentQueryResult results = op.getBody(QueryTask.class).results;
-              current.nextPageLink = results.nextPageLink;
-              sendStageProgressPatch(current);
-            })).sendWith(this);
-      } else {
-        sendStageProgressPatch(current);
+      if (!isFinalStage(current) && current.sweepCursor == null) {
+        current.sweepCursor = DocumentSweep.createCursor(Utils.getNowMicrosUtc());
       }
+
+      sendStageProgressPatch(current);
     } catch (Throwable e) {
       failTask(e);
     }
@@ -173,56 +161,95 @@ public class IpLeaseCleanerService extends StatefulService {
   }
 
   /**
-   * Retrieves the first page of IpLeaseService and kicks of the subsequent processing.
+   * Retrieves the next page of IpLeaseService and kicks of the subsequent processing.
    *
    * @param current
    */
   private void processIpLeaseDocuments(final State current) {
-    if (current.nextPageLink == null) {
+    if (current.sweepCursor == null || current.sweepCursor.done) {
       finishTask(current);
       return;
     }
 
-    Operation getOnePageOfIpLeaseDocuments =
-        Operation.createGet(UriUtils.buildUri(getHost(), current.nextPageLink));
-    getOnePageOfIpLeaseDocuments
-        .setCompletion((op, throwable) -> {
-          if (throwable != null) {
-            failTask(throwable);
-            return;
-          }
-          current.nextPageLink = op.getBody(QueryTask.class).results.nextPageLink;
-          List<IpLeaseService.State> ipLeaseList =
-              parseIpLeaseServiceQueryResults(op.getBody(QueryTask.class));
-          cleanIpLeaseDocuments(current, ipLeaseList);
-        })
-        .sendWith(this);
+    DocumentSweep<IpLeaseService.State> sweep = new DocumentSweep<>(this, IpLeaseService.State.class,
+        current.pageLimit, current.maxInFlightOperations);
+    sweep.queryNextPage(current.sweepCursor, (page, throwable) -> {
+      if (throwable != null) {
+        failTask(throwable);
+        return;
+      }
+
+      ServiceUtils.logInfo(this, "Swept %d Ip Lease documents, %d%% of the update time range",
+          page.cursor.processedDocuments, page.cursor.progressPercent);
+      cleanIpLeaseDocuments(current, sweep, page);
+    });
   }
 
   /**
-   * Clean the ip lease documents.
+   * Clean the ip lease documents. The VMs owning the leases of the page are looked up with one query, and only
+   * the leases whose VM was not found are checked and released one by one.
    *
-   * @param ipLeaseList
+   * @param current
+   * @param sweep
+   * @param page
    */
-  private void cleanIpLeaseDocuments(final State current, List<IpLeaseService.State> ipLeaseList) {
-    if (ipLeaseList.size() == 0) {
-      ServiceUtils.logInfo(this, "No Ip Lease documents found any more.");
-      finishTask(current);
-      return;
+  private void cleanIpLeaseDocuments(final State current,
+                                     DocumentSweep<IpLeaseService.State> sweep,
+                                     DocumentSweep.Page<IpLeaseService.State> page) {
+    Map<String, List<IpLeaseService.State>> ipLeasesByVmLink = new HashMap<>();
+    for (IpLeaseService.State ipLease : page.documents) {
+      if (ipLease.ownerVmId != null) {
+        ipLeasesByVmLink
+            .computeIfAbsent(VmServiceFactory.SELF_LINK + "/" + ipLease.ownerVmId, key -> new ArrayList<>())
+            .add(ipLease);
+      }
     }
 
-    for (IpLeaseService.State ipLease : ipLeaseList) {
-      cleanIpLease(ipLease);
+    if (ipLeasesByVmLink.isEmpty()) {
+      if (page.cursor.done) {
+        ServiceUtils.logInfo(this, "No Ip Lease documents found any more.");
+      }
+      current.sweepCursor = page.cursor;
+      sendStageProgressPatch(current);
+      return;
     }
-    sendStageProgressPatch(current);
+
+    sweep.queryDocuments(VmService.State.class, ipLeasesByVmLink.keySet(), (vms, throwable) -> {
+      if (throwable != null) {
+        failTask(throwable);
+        return;
+      }
+
+      List<IpLeaseService.State> candidates = new ArrayList<>();
+      for (Map.Entry<String, List<IpLeaseService.State>> entry : ipLeasesByVmLink.entrySet()) {
+        if (!vms.containsKey(entry.getKey())) {
+          candidates.addAll(entry.getValue());
+        }
+      }
+
+      AtomicInteger releasedIpLeases = new AtomicInteger();
+      sweep.forEach(candidates, (ipLease, done) -> cleanIpLease(ipLease, releasedIpLeases, done),
+          (succeeded, failure) -> {
+            if (failure != null) {
+              failTask(failure);
+              return;
+            }
+
+            current.releasedIpLeases += releasedIpLeases.get();
+            current.sweepCursor = page.cursor;
+            sendStageProgressPatch(current);
+          });
+    });
   }
 
   /**
-   * Clean one ip lease document.
+   * Clean one ip lease document if its VM does not exist.
    *
    * @param state
+   * @param releasedIpLeases
+   * @param done
    */
-  private void cleanIpLease(IpLeaseService.State state) {
+  private void cleanIpLease(IpLeaseService.State state, AtomicInteger releasedIpLeases, Consumer<Throwable> done) {
     String ipLeaseId = ServiceUtils
         .getIDFromDocumentSelfLink(state.documentSelfLink);
 
@@ -232,63 +259,30 @@ public class IpLeaseCleanerService extends StatefulService {
             .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
     getVmOperation.setCompletion(
         (operation, ex) -> {
-          if (operation.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
-            IpLeaseService.IpLeaseOperationPatch patch =
-                new IpLeaseService.IpLeaseOperationPatch(
-                    IpLeaseService.IpLeaseOperationPatch.Kind.RELEASE, state.ownerVmId, null);
-            Operation patchOperation = Operation
-                .createPatch(UriUtils.buildUri(getHost(), IpLeaseService.FACTORY_LINK + "/" + ipLeaseId))
-                .setBody(patch)
-                .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
-
-            patchOperation.setCompletion(
-                (op, t) -> {
-                  if (t != null) {
-                    failTask(t);
-                  }
+          if (operation.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+            done.accept(null);
+            return;
+          }
+
+          IpLeaseService.IpLeaseOperationPatch patch =
+              new IpLeaseService.IpLeaseOperationPatch(
+                  IpLeaseService.IpLeaseOperationPatch.Kind.RELEASE, state.ownerVmId, null);
+          Operation patchOperation = Operation
+              .createPatch(UriUtils.buildUri(getHost(), IpLeaseService.FACTORY_LINK + "/" + ipLeaseId))
+              .setBody(patch)
+              .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
+
+          patchOperation.setCompletion(
+              (op, t) -> {
+                if (t == null) {
+                  releasedIpLeases.incrementAndGet();
                   ServiceUtils.logInfo(this, "Ip Lease document %s has been released.", ipLeaseId);
                 }
-            ).sendWith(this);
-          }
+                done.accept(t);
+              }
+          ).sendWith(this);
         }
     ).sendWith(this);
-
-
-  }
-
-  /**
-   * Parse IpLeaseServiec query results.
-   *
-   * @param result
-   */
-  private List<IpLeaseService.State> parseIpLeaseServiceQueryResults(QueryTask result) {
-    List<IpLeaseService.State> ipLeaseList = new LinkedList<>();
-
-    if (result != null && result.results != null && result.results.documentCount > 0) {
-      for (Map.Entry<String, Object> doc : result.results.documents.entrySet()) {
-        IpLeaseService.State ipLease = Utils.fromJson(doc.getValue(), IpLeaseService.State.class);
-        if (ipLease.ownerVmId != null) {
-          ipLeaseList.add(ipLease);
-        }
-      }
-    }
-
-    return ipLeaseList;
-  }
-
-  private QueryTask buildIpLeaseQuery(State s) {
-    QueryTask.Query kindClause = new QueryTask.Query()
-        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
-        .setTermMatchValue(Utils.buildKind(IpLeaseService.State.class));
-
-    QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
-
-    querySpec.query
-        .addBooleanClause(kindClause);
-
-    querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
-    querySpec.resultLimit = s.pageLimit;
-    return QueryTask.create(querySpec).setDirect(true);
   }
 
   /**
@@ -335,11 +329,11 @@ public class IpLeaseCleanerService extends StatefulService {
     }
 
     State patchState = new State();
-    if (state.nextPageLink != null) {
-      patchState.nextPageLink = state.nextPageLink;
-    }
+    patchState.sweepCursor = state.sweepCursor;
+    patchState.releasedIpLeases = state.releasedIpLeases;
 
     if (state.taskState == null) {
+      patchState.taskState = new TaskState();
       patchState.taskState.stage = TaskState.TaskStage.STARTED;
     } else {
       patchState.taskState = state.taskState;
@@ -388,9 +382,6 @@ public class IpLeaseCleanerService extends StatefulService {
    */
   private State applyPatch(State current, State patch) {
     ServiceUtils.logInfo(this, "Moving to stage %s", patch.taskState.stage);
-    if (patch.nextPageLink == null) {
-      current.nextPageLink = null;
-    }
     PatchUtils.patchState(current, patch);
     return current;
   }
@@ -433,9 +424,9 @@ public class IpLeaseCleanerService extends StatefulService {
     public TaskState taskState;
 
     /**
-     * The link to next page.
+     * Position of the sweep over the ip leases.
      */
-    public String nextPageLink;
+    public DocumentSweep.Cursor sweepCursor;
 
     /**
      * The page limit for querying IpCleanerService.
@@ -443,6 +434,18 @@ public class IpLeaseCleanerService extends StatefulService {
     @DefaultInteger(value = DEFAULT_PAGE_LIMIT)
     public int pageLimit;
 
+    /**
+     * The maximum number of ip leases which are checked and released at the same time.
+     */
+    @DefaultInteger(value = DocumentSweep.DEFAULT_MAX_IN_FLIGHT_OPERATIONS)
+    public Integer maxInFlightOperations;
+
+    /**
+     * The number of ip leases that were released.
+     */
+    @DefaultInteger(value = 0)
+    public Integer releasedIpLeases;
+
     /**
      * Flag that controls if we should self patch to make forward progress.
      */
@@ -13,6 +13,7 @@
 
 package com.vmware.photon.controller.cloudstore.xenon.task;
 
+import com.vmware.photon.controller.cloudstore.xenon.CloudStoreServiceGroup;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DhcpSubnetService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.IpLeaseService;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
@@ -22,6 +23,7 @@ import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceFactory;
+import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceHelper;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
@@ -174,6 +176,9 @@ public class IpLeaseDeleteService extends StatefulService {
         case FAILED:
         case FINISHED:
         case CANCELLED:
+          // The service moves itself to STARTED, so the scheduler only learns about it from the index. Reporting
+          // the final stage frees its permit without waiting for the next resync.
+          TaskSchedulerServiceHelper.notifyTaskFinished(this, CloudStoreServiceGroup.IP_LEASE_DELETE_SERVICE);
           break;
 
         default:
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.task;
+
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchive;
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.common.xenon.InitializationUtils;
+import com.vmware.photon.controller.common.xenon.PatchUtils;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.xenon.ValidationUtils;
+import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
+import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
+import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
+import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
+import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
+import com.vmware.photon.controller.common.xenon.validation.Positive;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class implementing service to move finished tasks older than the retention age from the cloud store into the
+ * {@link TaskArchiveService}. A run archives into a single segment. Tasks are processed page by page: each page is
+ * appended to the segment on every node first, and only then are the tasks deleted from the cloud store.
+ */
+public class TaskCompactionService extends StatefulService {
+
+  public static final int DEFAULT_PAGE_LIMIT = 100;
+  public static final int DEFAULT_MAX_TASKS_PER_RUN = 5000;
+  public static final long DEFAULT_RETENTION_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+  public TaskCompactionService() {
+    super(State.class);
+    super.toggleOption(ServiceOption.PERSISTENCE, true);
+    super.toggleOption(ServiceOption.REPLICATION, true);
+    super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+    super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+  }
+
+  @Override
+  public void handleStart(Operation start) {
+    ServiceUtils.logInfo(this, "Starting service %s", getSelfLink());
+    State state = start.getBody(State.class);
+    initializeState(state);
+    validateState(state);
+    start.setBody(state).complete();
+    processStart(state);
+  }
+
+  @Override
+  public void handlePatch(Operation patch) {
+    ServiceUtils.logInfo(this, "Handling patch for service %s", getSelfLink());
+    State currentState = getState(patch);
+    State patchState = patch.getBody(State.class);
+
+    validatePatch(currentState, patchState);
+    applyPatch(currentState, patchState);
+    validateState(currentState);
+    patch.complete();
+
+    processPatch(currentState);
+  }
+
+  /**
+   * Initialize state with defaults.
+   *
+   * @param current
+   */
+  private void initializeState(State current) {
+    InitializationUtils.initialize(current);
+
+    if (current.documentExpirationTimeMicros <= 0) {
+      current.documentExpirationTimeMicros =
+          ServiceUtils.computeExpirationTime(ServiceUtils.DEFAULT_DOC_EXPIRATION_TIME_MICROS);
+    }
+
+    if (current.cutoffTimeMicros == null) {
+      current.cutoffTimeMicros =
+          Utils.getNowMicrosUtc() - TimeUnit.MILLISECONDS.toMicros(current.retentionAgeMillis);
+    }
+
+    if (current.archiveSegment == null) {
+      current.archiveSegment = TaskArchive.newSegmentName();
+    }
+  }
+
+  /**
+   * Validate service state coherence.
+   *
+   * @param current
+   */
+  private void validateState(State current) {
+    ValidationUtils.validateState(current);
+  }
+
+  /**
+   * This method applies a patch to a state object.
+   *
+   * @param current Supplies the start state object.
+   * @param patch   Supplies the patch state object.
+   */
+  private State applyPatch(State current, State patch) {
+    ServiceUtils.logInfo(this, "Moving to stage %s", patch.taskState.stage);
+    if (patch.nextPageLink == null) {
+      current.nextPageLink = null;
+    }
+    PatchUtils.patchState(current, patch);
+    return current;
+  }
+
+  /**
+   * This method checks a patch object for validity against a document state object.
+   *
+   * @param current Supplies the start state object.
+   * @param patch   Supplies the patch state object.
+   */
+  private void validatePatch(State current, State patch) {
+    ValidationUtils.validatePatch(current, patch);
+    ValidationUtils.validateTaskStageProgression(current.taskState, patch.taskState);
+  }
+
+  /**
+   * Does any additional processing after the start operation has been completed.
+   *
+   * @param current
+   */
+  private void processStart(final State current) {
+    if (current.isSelfProgressionDisabled) {
+      ServiceUtils.logInfo(this, "Skipping start operation processing (disabled)");
+      return;
+    }
+
+    try {
+      if (!isFinalStage(current) && current.nextPageLink == null) {
+        Operation queryFinishedTasks = Operation
+            .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
+            .setBody(buildFinishedTaskQuery(current))
+            .setCompletion((op, failure) -> {
+              if (failure != null) {
+                failTask(failure);
+                return;
+              }
+
+              current.nextPageLink = op.getBody(QueryTask.class).results.nextPageLink;
+              if (current.nextPageLink == null) {
+                ServiceUtils.logInfo(this, "No finished tasks older than %d ms found.", current.retentionAgeMillis);
+              }
+
+              sendStageProgressPatch(current);
+            });
+
+        this.sendRequest(queryFinishedTasks);
+      }
+    } catch (Throwable e) {
+      failTask(e);
+    }
+  }
+
+  /**
+   * Does any additional processing after the patch operation has been completed.
+   *
+   * @param current
+   */
+  private void processPatch(final State current) {
+    try {
+      switch (current.taskState.stage) {
+        case STARTED:
+          processFinishedTasks(current);
+          break;
+
+        case FAILED:
+        case FINISHED:
+        case CANCELLED:
+          break;
+
+        default:
+          this.failTask(
+              new IllegalStateException(
+                  String.format("Un-expected stage: %s", current.taskState.stage))
+          );
+      }
+    } catch (Throwable e) {
+      failTask(e);
+    }
+  }
+
+  /**
+   * Retrieves the next page of finished tasks, archives them and compacts them in the index.
+   *
+   * @param current
+   */
+  private void processFinishedTasks(final State current) {
+    if (current.nextPageLink == null || current.archivedTasks >= current.maxTasksPerRun) {
+      // Whatever is left is picked up by the next run, as archived tasks are no longer in the cloud store.
+      finishTask(current);
+      return;
+    }
+
+    Operation getOnePageOfTasks = Operation
+        .createGet(UriUtils.buildUri(getHost(), current.nextPageLink))
+        .setCompletion((op, throwable) -> {
+          if (throwable != null) {
+            failTask(throwable);
+            return;
+          }
+
+          QueryTask page = op.getBody(QueryTask.class);
+          current.nextPageLink = page.results.nextPageLink;
+          current.processedPages++;
+
+          List<TaskService.State> tasks = parseTaskQueryResults(page);
+          if (tasks.isEmpty()) {
+            ServiceUtils.logInfo(this, "No finished tasks found in current page.");
+            sendStageProgressPatch(current);
+            return;
+          }
+
+          archiveAndDeleteTasks(current, tasks);
+        });
+
+    this.sendRequest(getOnePageOfTasks);
+  }
+
+  private void archiveAndDeleteTasks(final State current, final List<TaskService.State> tasks) {
+    TaskArchiveService.Request request = new TaskArchiveService.Request();
+    request.type = TaskArchiveService.RequestType.ARCHIVE;
+    request.segment = current.archiveSegment;
+    request.documents = tasks;
+
+    Operation archive = Operation
+        .createPost(UriUtils.buildUri(getHost(), TaskArchiveService.SELF_LINK))
+        .setBody(request)
+        .setCompletion((op, throwable) -> {
+          if (throwable != null) {
+            failTask(throwable);
+            return;
+          }
+
+          current.archivedTasks += tasks.size();
+          deleteTasks(current, tasks);
+        });
+
+    this.sendRequest(archive);
+  }
+
+  private void deleteTasks(final State current, final List<TaskService.State> tasks) {
+    List<Operation> deleteOperations = new ArrayList<>(tasks.size());
+    for (TaskService.State task : tasks) {
+      deleteOperations.add(Operation
+          .createDelete(UriUtils.buildUri(getHost(), task.documentSelfLink))
+          .setBody(new ServiceDocument())
+          .setReferer(UriUtils.buildUri(getHost(), getSelfLink())));
+    }
+
+    OperationJoin
+        .create(deleteOperations)
+        .setCompletion((ops, failures) -> {
+          if (failures != null && !failures.isEmpty()) {
+            // Tasks which could not be deleted are archived again by the next run; lookups return the copy from the
+            // newest segment.
+            failTask(failures.values().iterator().next());
+            return;
+          }
+
+          current.deletedTasks += tasks.size();
+          sendStageProgressPatch(current);
+        })
+        .sendWith(this);
+  }
+
+  private QueryTask buildFinishedTaskQuery(final State current) {
+    QueryTask.Query kindClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+        .setTermMatchValue(Utils.buildKind(TaskService.State.class));
+
+    QueryTask.Query stateClause = new QueryTask.Query();
+    for (TaskService.State.TaskState state :
+        EnumSet.of(TaskService.State.TaskState.COMPLETED, TaskService.State.TaskState.ERROR)) {
+      QueryTask.Query clause = new QueryTask.Query()
+          .setTermPropertyName("state")
+          .setTermMatchValue(state.name());
+      clause.occurance = QueryTask.Query.Occurance.SHOULD_OCCUR;
+      stateClause.addBooleanClause(clause);
+    }
+
+    QueryTask.NumericRange<?> range = QueryTask.NumericRange.createLessThanRange(current.cutoffTimeMicros);
+    range.precisionStep = Integer.MAX_VALUE;
+    QueryTask.Query timeClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS)
+        .setNumericRange(range);
+
+    QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+    querySpec.query
+        .addBooleanClause(kindClause)
+        .addBooleanClause(stateClause)
+        .addBooleanClause(timeClause);
+
+    // Every node indexes a replica of each task, but only its owner is sure to have the latest version. A broadcast
+    // query keeps the document of each task from its owner.
+    querySpec.options = EnumSet.of(
+        QueryTask.QuerySpecification.QueryOption.BROADCAST,
+        QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    querySpec.resultLimit = current.pageLimit;
+    return QueryTask.create(querySpec).setDirect(true);
+  }
+
+  private List<TaskService.State> parseTaskQueryResults(QueryTask result) {
+    List<TaskService.State> tasks = new ArrayList<>();
+
+    if (result != null && result.results != null && result.results.documents != null) {
+      for (Map.Entry<String, Object> doc : result.results.documents.entrySet()) {
+        tasks.add(Utils.fromJson(doc.getValue(), TaskService.State.class));
+      }
+    }
+
+    return tasks;
+  }
+
+  /**
+   * Determines if the task is in a final state.
+   *
+   * @param s
+   * @return
+   */
+  private boolean isFinalStage(State s) {
+    return s.taskState.stage == TaskState.TaskStage.FINISHED ||
+        s.taskState.stage == TaskState.TaskStage.FAILED ||
+        s.taskState.stage == TaskState.TaskStage.CANCELLED;
+  }
+
+  private void finishTask(final State patch) {
+    ServiceUtils.logInfo(this, "Archived %d finished tasks in %d pages.", patch.archivedTasks, patch.processedPages);
+    patch.taskState.stage = TaskState.TaskStage.FINISHED;
+    this.sendStageProgressPatch(patch);
+  }
+
+  /**
+   * Moves the service into the FAILED state.
+   *
+   * @param e
+   */
+  private void failTask(Throwable e) {
+    ServiceUtils.logSevere(this, e);
+    this.sendStageProgressPatch(buildPatch(TaskState.TaskStage.FAILED, e));
+  }
+
+  /**
+   * Send a patch message to ourselves to update the execution stage.
+   *
+   * @param state
+   */
+  private void sendStageProgressPatch(State state) {
+    if (state.isSelfProgressionDisabled) {
+      ServiceUtils.logInfo(this, "Skipping patch handling (disabled)");
+      return;
+    }
+
+    Operation patch = Operation
+        .createPatch(UriUtils.buildUri(getHost(), getSelfLink()))
+        .setBody(state);
+    this.sendRequest(patch);
+  }
+
+  /**
+   * Build a state object that can be used to submit a stage progress
+   * self patch.
+   *
+   * @param stage
+   * @param e
+   * @return
+   */
+  private State buildPatch(TaskState.TaskStage stage, Throwable e) {
+    State s = new State();
+    s.taskState = new TaskState();
+    s.taskState.stage = stage;
+
+    if (e != null) {
+      s.taskState.failure = Utils.toServiceErrorResponse(e);
+    }
+
+    return s;
+  }
+
+  /**
+   * Durable service state data.
+   */
+  @NoMigrationDuringUpgrade
+  @NoMigrationDuringDeployment
+  public static class State extends ServiceDocument {
+
+    /**
+     * Service execution stage.
+     */
+    @DefaultTaskState(value = TaskState.TaskStage.STARTED)
+    public TaskState taskState;
+
+    /**
+     * Age after which finished tasks are archived.
+     */
+    @Positive
+    @DefaultLong(value = DEFAULT_RETENTION_AGE_MILLIS)
+    public Long retentionAgeMillis;
+
+    /**
+     * Size of a query page.
+     */
+    @Positive
+    @DefaultInteger(value = DEFAULT_PAGE_LIMIT)
+    public Integer pageLimit;
+
+    /**
+     * Maximum number of tasks archived by a single run.
+     */
+    @Positive
+    @DefaultInteger(value = DEFAULT_MAX_TASKS_PER_RUN)
+    public Integer maxTasksPerRun;
+
+    /**
+     * Tasks last updated before this time are archived. Computed from retentionAgeMillis when the run starts, so
+     * every page of a run uses the same cutoff.
+     */
+    public Long cutoffTimeMicros;
+
+    /**
+     * The archive segment the tasks of this run are appended to.
+     */
+    public String archiveSegment;
+
+    /**
+     * The link to next page.
+     */
+    public String nextPageLink;
+
+    /**
+     * The number of pages processed.
+     */
+    @DefaultInteger(value = 0)
+    public Integer processedPages;
+
+    /**
+     * The number of tasks written to the archive.
+     */
+    @DefaultInteger(value = 0)
+    public Integer archivedTasks;
+
+    /**
+     * The number of archived tasks that were deleted from the cloud store.
+     */
+    @DefaultInteger(value = 0)
+    public Integer deletedTasks;
+
+    /**
+     * Flag that controls if we should self patch to make forward progress.
+     */
+    @DefaultBoolean(value = false)
+    public Boolean isSelfProgressionDisabled;
+  }
+}
@@ -24,6 +24,7 @@ import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDep
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
 import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
+import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
@@ -39,6 +40,7 @@ import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
 import com.vmware.xenon.services.common.QueryTask;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -46,6 +48,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * The TombstoneCleanerService is responsible for deleting tasks associated with objects.
@@ -181,8 +184,7 @@ public class TombstoneCleanerService extends StatefulService {
     try {
       switch (current.taskState.stage) {
         case STARTED:
-          final State finishPatch = new State();
-          this.queryStaleTombstones(current, finishPatch);
+          this.queryStaleTombstones(current, buildFinishPatch(), System.currentTimeMillis());
           break;
 
         case FAILED:
@@ -202,12 +204,13 @@ public class TombstoneCleanerService extends StatefulService {
   }
 
   /**
-   * Retrieves the stale tombstones and kicks of the subsequent processing.
+   * Starts the paged query for the stale tombstones and kicks of the subsequent processing.
    *
    * @param current
    * @param finishPatch
+   * @param startTimeMillis
    */
-  private void queryStaleTombstones(final State current, final State finishPatch) {
+  private void queryStaleTombstones(final State current, final State finishPatch, final long startTimeMillis) {
     Operation.CompletionHandler handler = new Operation.CompletionHandler() {
       @Override
       public void handle(Operation completedOp, Throwable failure) {
@@ -216,27 +219,19 @@ public class TombstoneCleanerService extends StatefulService {
           return;
         }
 
-        try {
-          List<TombstoneService.State> tombstoneList =
-              parseTombstoneQueryResults(completedOp.getBody(QueryTask.class));
-          if (tombstoneList.size() == 0) {
-            ServiceUtils.logInfo(TombstoneCleanerService.this, "No stale tombstones found.");
-            finishTask(finishPatch);
-            return;
-          }
-
-          ServiceUtils.logInfo(TombstoneCleanerService.this,
-              "Count of stale tombstones found = " + tombstoneList.size());
-          finishPatch.staleTombstones = tombstoneList.size();
-          queryStaleTasks(finishPatch, tombstoneList);
-        } catch (Throwable ex) {
-          failTask(ex);
+        String nextPageLink = completedOp.getBody(QueryTask.class).results.nextPageLink;
+        if (nextPageLink == null) {
+          ServiceUtils.logInfo(TombstoneCleanerService.this, "No stale tombstones found.");
+          finishRun(finishPatch, startTimeMillis);
+          return;
         }
+
+        processTombstonePage(current, finishPatch, nextPageLink, startTimeMillis);
       }
     };
 
     Operation queryPost = Operation
-        .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
+        .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
         .setBody(buildTombstoneQuery(current))
         .setCompletion(handler);
 
@@ -244,133 +239,159 @@ public class TombstoneCleanerService extends StatefulService {
   }
 
   /**
-   * Retrieves the list of stale tasks.
+   * Retrieves one page of stale tombstones and purges their tasks.
    *
+   * @param current
    * @param finishPatch
-   * @param tombstoneList
+   * @param pageLink
+   * @param startTimeMillis
    */
-  private void queryStaleTasks(final State finishPatch,
-                               List<TombstoneService.State> tombstoneList) {
-    OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
-      @Override
-      public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
-        if (failures != null && !failures.isEmpty()) {
-          failTask(failures.values().iterator().next());
+  private void processTombstonePage(final State current, final State finishPatch, String pageLink,
+                                    final long startTimeMillis) {
+    Operation.CompletionHandler handler = (completedOp, failure) -> {
+      if (failure != null) {
+        failTask(failure);
+        return;
+      }
+
+      try {
+        QueryTask page = completedOp.getBody(QueryTask.class);
+        List<TombstoneService.State> tombstoneList = parseTombstoneQueryResults(page);
+        if (tombstoneList.size() == 0) {
+          finishRun(finishPatch, startTimeMillis);
           return;
         }
 
-        try {
-          Set<String> taskSet = new HashSet<>();
-          for (Operation op : ops.values()) {
-            NodeGroupBroadcastResponse query = op.getBody(NodeGroupBroadcastResponse.class);
-            ServiceUtils.logInfo(TombstoneCleanerService.this, "Task broadcast query: %s",
-                Utils.toJson(false, false, query));
-            if (!query.failures.isEmpty()) {
-              failTask(new RuntimeException("Failures in broadcast query for stale tasks."));
-              return;
-            }
-
-            for (Map.Entry<URI, String> entry : query.jsonResponses.entrySet()) {
-              QueryTask queryTask = Utils.fromJson(entry.getValue(), QueryTask.class);
-              if (queryTask != null && queryTask.results != null) {
-                taskSet.addAll(queryTask.results.documentLinks);
-              }
-            }
-          }
-
-          finishPatch.staleTasks = taskSet.size();
-          if (taskSet.size() == 0) {
-            deleteTombstones(finishPatch, tombstoneList);
-          } else {
-            deleteTasks(finishPatch, tombstoneList, taskSet);
-          }
-        } catch (Throwable ex) {
-          failTask(ex);
-        }
+        ServiceUtils.logInfo(TombstoneCleanerService.this,
+            "Count of stale tombstones found in page %d = %d", finishPatch.processedPages, tombstoneList.size());
+        finishPatch.processedPages++;
+        finishPatch.staleTombstones += tombstoneList.size();
+        queryStaleTasks(current, finishPatch, tombstoneList, page.results.nextPageLink, startTimeMillis);
+      } catch (Throwable ex) {
+        failTask(ex);
       }
     };
 
-    URI queryUri = UriUtils.buildBroadcastRequestUri(
-        UriUtils.buildUri(getHost(), com.vmware.xenon.services.common.ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
-        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
-
-    Collection<Operation> posts = new LinkedList<>();
-    for (TombstoneService.State tombstone : tombstoneList) {
-      Operation post = Operation
-          .createPost(queryUri)
-          .setBody(buildTaskQuery(tombstone))
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
-          .forceRemote();
-
-      posts.add(post);
-    }
+    Operation getPage = Operation
+        .createGet(UriUtils.buildUri(getHost(), pageLink))
+        .setCompletion(handler);
 
-    OperationJoin join = OperationJoin.create(posts);
-    join.setCompletion(handler);
-    join.sendWith(this);
+    this.sendRequest(getPage);
   }
 
   /**
-   * Deletes the stale task documents.
+   * Retrieves the stale tasks of a page of tombstones with a single broadcast query.
    *
+   * @param current
    * @param finishPatch
    * @param tombstoneList
-   * @param taskSet
+   * @param nextPageLink
+   * @param startTimeMillis
    */
-  private void deleteTasks(final State finishPatch, List<TombstoneService.State> tombstoneList, Set<String> taskSet) {
-    OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
-      @Override
-      public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
-        if (failures != null && !failures.isEmpty()) {
-          failTask(failures.values().iterator().next());
+  private void queryStaleTasks(final State current, final State finishPatch,
+                               List<TombstoneService.State> tombstoneList, String nextPageLink,
+                               final long startTimeMillis) {
+    Operation.CompletionHandler handler = (completedOp, failure) -> {
+      if (failure != null) {
+        failTask(failure);
+        return;
+      }
+
+      try {
+        NodeGroupBroadcastResponse query = completedOp.getBody(NodeGroupBroadcastResponse.class);
+        if (!query.failures.isEmpty()) {
+          failTask(new RuntimeException("Failures in broadcast query for stale tasks."));
           return;
         }
 
-        finishPatch.deletedTasks = taskSet.size();
-        deleteTombstones(finishPatch, tombstoneList);
+        Set<String> taskSet = new HashSet<>();
+        for (Map.Entry<URI, String> entry : query.jsonResponses.entrySet()) {
+          QueryTask queryTask = Utils.fromJson(entry.getValue(), QueryTask.class);
+          if (queryTask != null && queryTask.results != null) {
+            taskSet.addAll(queryTask.results.documentLinks);
+          }
+        }
+
+        finishPatch.staleTasks += taskSet.size();
+        List<String> tombstoneLinks = new ArrayList<>(tombstoneList.size());
+        for (TombstoneService.State tombstone : tombstoneList) {
+          tombstoneLinks.add(tombstone.documentSelfLink);
+        }
+
+        deleteDocuments(new ArrayList<>(taskSet), 0, current.deleteBatchSize, (taskFailure) -> {
+          if (taskFailure != null) {
+            failTask(taskFailure);
+            return;
+          }
+
+          finishPatch.deletedTasks += taskSet.size();
+          deleteDocuments(tombstoneLinks, 0, current.deleteBatchSize, (tombstoneFailure) -> {
+            if (tombstoneFailure != null) {
+              failTask(tombstoneFailure);
+              return;
+            }
+
+            finishPatch.deletedTombstones += tombstoneLinks.size();
+            if (nextPageLink == null || finishPatch.staleTombstones >= current.maxTombstonesPerRun) {
+              // Whatever is left is picked up by the next run, as purged tombstones no longer match the query.
+              finishRun(finishPatch, startTimeMillis);
+              return;
+            }
+
+            processTombstonePage(current, finishPatch, nextPageLink, startTimeMillis);
+          });
+        });
+      } catch (Throwable ex) {
+        failTask(ex);
       }
     };
 
-    Collection<Operation> deletes = new LinkedList<>();
-    for (String taskLink : taskSet) {
-      Operation delete = Operation
-          .createDelete(UriUtils.buildUri(getHost(), taskLink))
-          .setBody("{}")
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
-          .forceRemote();
+    URI queryUri = UriUtils.buildBroadcastRequestUri(
+        UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_LOCAL_QUERY_TASKS),
+        ServiceUriPaths.DEFAULT_NODE_SELECTOR);
 
-      deletes.add(delete);
-    }
+    Operation post = Operation
+        .createPost(queryUri)
+        .setBody(buildTaskQuery(tombstoneList))
+        .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+        .setCompletion(handler)
+        .forceRemote();
 
-    OperationJoin join = OperationJoin.create(deletes);
-    join.setCompletion(handler);
-    join.sendWith(this);
+    this.sendRequest(post);
   }
 
   /**
-   * Deletes the the stale tombstone entities.
+   * Deletes the documents in batches of batchSize, one batch at a time, so a large purge does not flood the
+   * hosts with concurrent deletes.
    *
-   * @param finishPatch
-   * @param tombstoneList
+   * @param documentLinks
+   * @param offset
+   * @param batchSize
+   * @param completion
    */
-  private void deleteTombstones(final State finishPatch, List<TombstoneService.State> tombstoneList) {
+  private void deleteDocuments(final List<String> documentLinks, final int offset, final int batchSize,
+                               final Consumer<Throwable> completion) {
+    if (offset >= documentLinks.size()) {
+      completion.accept(null);
+      return;
+    }
+
     OperationJoin.JoinedCompletionHandler handler = new OperationJoin.JoinedCompletionHandler() {
       @Override
       public void handle(Map<Long, Operation> ops, Map<Long, Throwable> failures) {
         if (failures != null && !failures.isEmpty()) {
-          failTask(failures.values().iterator().next());
+          completion.accept(failures.values().iterator().next());
           return;
         }
 
-        finishPatch.deletedTombstones = tombstoneList.size();
-        finishTask(finishPatch);
+        deleteDocuments(documentLinks, offset + batchSize, batchSize, completion);
       }
     };
 
     Collection<Operation> deletes = new LinkedList<>();
-    for (TombstoneService.State tombstone : tombstoneList) {
+    for (String documentLink : documentLinks.subList(offset, Math.min(offset + batchSize, documentLinks.size()))) {
       Operation delete = Operation
-          .createDelete(UriUtils.buildUri(getHost(), tombstone.documentSelfLink))
+          .createDelete(UriUtils.buildUri(getHost(), documentLink))
           .setBody("{}")
           .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
           .forceRemote();
@@ -384,9 +405,11 @@ public class TombstoneCleanerService extends StatefulService {
   }
 
   private List<TombstoneService.State> parseTombstoneQueryResults(QueryTask result) {
-    ServiceUtils.logInfo(TombstoneCleanerService.this, "Tombstone query: %s", Utils.toJson(false, false, result));
-
     List<TombstoneService.State> tombstoneList = new LinkedList<>();
+    if (result.results == null || result.results.documents == null) {
+      return tombstoneList;
+    }
+
     for (Map.Entry<String, Object> doc : result.results.documents.entrySet()) {
       tombstoneList.add(
           Utils.fromJson(doc.getValue(), TombstoneService.State.class));
@@ -407,6 +430,21 @@ public class TombstoneCleanerService extends StatefulService {
         s.taskState.stage == TaskState.TaskStage.CANCELLED;
   }
 
+  /**
+   * Records the duration of the run and moves the service into the FINISHED state.
+   *
+   * @param finishPatch
+   * @param startTimeMillis
+   */
+  private void finishRun(State finishPatch, long startTimeMillis) {
+    finishPatch.durationMillis = System.currentTimeMillis() - startTimeMillis;
+    ServiceUtils.logInfo(this,
+        "Purged %d of %d stale tasks and %d of %d stale tombstones in %d pages (%d ms)",
+        finishPatch.deletedTasks, finishPatch.staleTasks, finishPatch.deletedTombstones,
+        finishPatch.staleTombstones, finishPatch.processedPages, finishPatch.durationMillis);
+    finishTask(finishPatch);
+  }
+
   private void finishTask(State patch) {
     if (patch.taskState == null) {
       patch.taskState = new TaskState();
@@ -451,6 +489,21 @@ public class TombstoneCleanerService extends StatefulService {
     this.sendRequest(patch);
   }
 
+  /**
+   * Build the state object that collects the counters of the run.
+   *
+   * @return
+   */
+  private State buildFinishPatch() {
+    State s = new State();
+    s.staleTombstones = 0;
+    s.staleTasks = 0;
+    s.deletedTombstones = 0;
+    s.deletedTasks = 0;
+    s.processedPages = 0;
+    return s;
+  }
+
   /**
    * Build a state object that can be used to submit a stage progress
    * self patch.
@@ -472,7 +525,7 @@ public class TombstoneCleanerService extends StatefulService {
   }
 
   /**
-   * Builds the query spec to retrieve all expired tombstones.
+   * Builds the paged query spec to retrieve the expired tombstones.
    *
    * @param current
    * @return
@@ -491,6 +544,7 @@ public class TombstoneCleanerService extends StatefulService {
 
     QueryTask.QuerySpecification spec = new QueryTask.QuerySpecification();
     spec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    spec.resultLimit = current.pageLimit;
     spec.query
         .addBooleanClause(kindClause)
         .addBooleanClause(ageClause);
@@ -501,24 +555,38 @@ public class TombstoneCleanerService extends StatefulService {
     return task;
   }
 
-  private QueryTask buildTaskQuery(final TombstoneService.State tombstone) {
+  /**
+   * Builds the query spec to retrieve the tasks of all the given tombstones at once.
+   *
+   * @param tombstoneList
+   * @return
+   */
+  private QueryTask buildTaskQuery(final List<TombstoneService.State> tombstoneList) {
     QueryTask.Query kindClause = new QueryTask.Query()
         .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
         .setTermMatchValue(Utils.buildKind(TaskService.State.class));
 
-    QueryTask.Query entityIdClause = new QueryTask.Query()
-        .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_ID)
-        .setTermMatchValue(tombstone.entityId);
-
-    QueryTask.Query entityKindClause = new QueryTask.Query()
-        .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_KIND)
-        .setTermMatchValue(tombstone.entityKind);
+    QueryTask.Query entitiesClause = new QueryTask.Query();
+    for (TombstoneService.State tombstone : tombstoneList) {
+      QueryTask.Query entityIdClause = new QueryTask.Query()
+          .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_ID)
+          .setTermMatchValue(tombstone.entityId);
+
+      QueryTask.Query entityKindClause = new QueryTask.Query()
+          .setTermPropertyName(TaskService.State.FIELD_NAME_ENTITY_KIND)
+          .setTermMatchValue(tombstone.entityKind);
+
+      QueryTask.Query entityClause = new QueryTask.Query()
+          .addBooleanClause(entityIdClause)
+          .addBooleanClause(entityKindClause);
+      entityClause.occurance = QueryTask.Query.Occurance.SHOULD_OCCUR;
+      entitiesClause.addBooleanClause(entityClause);
+    }
 
     QueryTask.QuerySpecification spec = new QueryTask.QuerySpecification();
     spec.query
         .addBooleanClause(kindClause)
-        .addBooleanClause(entityIdClause)
-        .addBooleanClause(entityKindClause);
+        .addBooleanClause(entitiesClause);
 
     QueryTask task = QueryTask.create(spec)
         .setDirect(true);
@@ -576,5 +644,41 @@ public class TombstoneCleanerService extends StatefulService {
      */
     @DefaultInteger(value = 0)
     public Integer deletedTasks;
+
+    /**
+     * The number of tombstones retrieved per page; the tasks of a page are resolved with a single query.
+     */
+    @Immutable
+    @Positive
+    @DefaultInteger(value = 100)
+    public Integer pageLimit;
+
+    /**
+     * The number of documents deleted concurrently.
+     */
+    @Immutable
+    @Positive
+    @DefaultInteger(value = 50)
+    public Integer deleteBatchSize;
+
+    /**
+     * The number of stale tombstones after which the run stops; the remaining ones are purged by the next run.
+     */
+    @Immutable
+    @Positive
+    @DefaultInteger(value = 5000)
+    public Integer maxTombstonesPerRun;
+
+    /**
+     * The number of tombstone pages that were processed.
+     */
+    @DefaultInteger(value = 0)
+    public Integer processedPages;
+
+    /**
+     * The duration of the run. (milliseconds)
+     */
+    @DefaultLong(value = 0)
+    public Long durationMillis;
   }
 }
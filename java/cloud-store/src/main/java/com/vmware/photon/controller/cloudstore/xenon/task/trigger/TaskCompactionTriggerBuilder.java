@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.task.trigger;
+
+import com.vmware.photon.controller.cloudstore.xenon.task.TaskCompactionFactoryService;
+import com.vmware.photon.controller.cloudstore.xenon.task.TaskCompactionService;
+import com.vmware.photon.controller.common.xenon.scheduler.TaskStateBuilder;
+import com.vmware.photon.controller.common.xenon.scheduler.TaskTriggerService;
+import com.vmware.xenon.common.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builder that generates the states for a TaskTriggerService meant to periodically trigger
+ * TaskCompactionService instances.
+ */
+public class TaskCompactionTriggerBuilder implements TaskStateBuilder {
+
+  /**
+   * Link for the trigger service.
+   */
+  public static final String TRIGGER_SELF_LINK = "/task-compaction";
+
+  /**
+   * Default interval for task compaction service. (1h)
+   */
+  public static final long DEFAULT_TRIGGER_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /**
+   * Default age after which to expire a task.
+   */
+  public static final long DEFAULT_TASK_EXPIRATION_AGE_MILLIS = DEFAULT_TRIGGER_INTERVAL_MILLIS * 5;
+
+  /**
+   * Default age after which finished tasks are archived. (30d)
+   */
+  public static final long DEFAULT_RETENTION_AGE_MILLIS = TaskCompactionService.DEFAULT_RETENTION_AGE_MILLIS;
+
+  /**
+   * Time interval to trigger the task compaction.
+   */
+  private final Long triggerIntervalMillis;
+
+  /**
+   * Age to expire the TaskCompaction tasks after.
+   */
+  private final Long taskExpirationAgeMillis;
+
+  /**
+   * Age after which finished tasks are moved to the archive.
+   */
+  private final Long retentionAgeMillis;
+
+  /**
+   * Constructor.
+   *
+   * @param triggerInterval   (in milliseconds)
+   * @param taskExpirationAge (in milliseconds)
+   * @param retentionAge      (in milliseconds)
+   */
+  public TaskCompactionTriggerBuilder(Long triggerInterval, Long taskExpirationAge, Long retentionAge) {
+    this.triggerIntervalMillis = triggerInterval;
+    this.taskExpirationAgeMillis = taskExpirationAge;
+    this.retentionAgeMillis = retentionAge;
+  }
+
+  @Override
+  public TaskTriggerService.State build() {
+    TaskTriggerService.State state = new TaskTriggerService.State();
+    state.triggerIntervalMillis = this.triggerIntervalMillis.intValue();
+    state.taskExpirationAgeMillis = this.taskExpirationAgeMillis.intValue();
+
+    state.serializedTriggerState = buildStartState();
+    state.triggerStateClassName = TaskCompactionService.State.class.getName();
+    state.factoryServiceLink = TaskCompactionFactoryService.SELF_LINK;
+    state.documentSelfLink = TRIGGER_SELF_LINK;
+    return state;
+  }
+
+  private String buildStartState() {
+    TaskCompactionService.State state = new TaskCompactionService.State();
+    state.retentionAgeMillis = this.retentionAgeMillis;
+
+    return Utils.toJson(false, false, state);
+  }
+}
@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.cloudstore.xenon;
 
 import com.vmware.photon.controller.cloudstore.CloudStoreConfig;
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AttachedDiskServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.AvailabilityZoneServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterConfigurationServiceFactory;
@@ -26,6 +27,7 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.FlavorServiceFactory
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ImageToImageDatastoreMappingServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.ImageUploadServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.NetworkServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ProjectServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ResourceTicketServiceFactory;
@@ -43,6 +45,7 @@ import com.vmware.photon.controller.cloudstore.xenon.task.EntityLockCleanerFacto
 import com.vmware.photon.controller.cloudstore.xenon.task.EntityLockDeleteFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.IpLeaseCleanerService;
 import com.vmware.photon.controller.cloudstore.xenon.task.IpLeaseDeleteService;
+import com.vmware.photon.controller.cloudstore.xenon.task.TaskCompactionFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.TombstoneCleanerFactoryService;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.AvailabilityZoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DatastoreCleanerTriggerBuilder;
@@ -50,6 +53,7 @@ import com.vmware.photon.controller.cloudstore.xenon.task.trigger.DhcpSubnetDele
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockCleanerTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.EntityLockDeleteTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.IpLeaseCleanerTriggerBuilder;
+import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TaskCompactionTriggerBuilder;
 import com.vmware.photon.controller.cloudstore.xenon.task.trigger.TombstoneCleanerTriggerBuilder;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
 import com.vmware.photon.controller.common.clients.HostClientFactory;
@@ -99,6 +103,7 @@ public class CloudStoreServiceGroupTest {
       FlavorServiceFactory.SELF_LINK,
       ImageServiceFactory.SELF_LINK,
       ImageToImageDatastoreMappingServiceFactory.SELF_LINK,
+      ImageUploadServiceFactory.SELF_LINK,
       HostServiceFactory.SELF_LINK,
       NetworkServiceFactory.SELF_LINK,
       DatastoreServiceFactory.SELF_LINK,
@@ -126,6 +131,7 @@ public class CloudStoreServiceGroupTest {
       TaskTriggerFactoryService.SELF_LINK + DatastoreCleanerTriggerBuilder.TRIGGER_SELF_LINK,
       TaskTriggerFactoryService.SELF_LINK + DhcpSubnetDeleteTriggerBuilder.TRIGGER_SELF_LINK,
       TaskTriggerFactoryService.SELF_LINK + IpLeaseCleanerTriggerBuilder.TRIGGER_SELF_LINK,
+      TaskTriggerFactoryService.SELF_LINK + TaskCompactionTriggerBuilder.TRIGGER_SELF_LINK,
 
       // tasks
       EntityLockCleanerFactoryService.SELF_LINK,
@@ -137,6 +143,10 @@ public class CloudStoreServiceGroupTest {
       DhcpSubnetDeleteService.FACTORY_LINK,
       IpLeaseDeleteService.FACTORY_LINK,
       IpLeaseCleanerService.FACTORY_LINK,
+      TaskCompactionFactoryService.SELF_LINK,
+
+      // archive
+      TaskArchiveService.SELF_LINK,
 
       //schedulers
       TaskSchedulerServiceFactory.SELF_LINK,
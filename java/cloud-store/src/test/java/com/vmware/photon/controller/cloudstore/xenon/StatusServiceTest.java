@@ -26,6 +26,7 @@ import com.vmware.xenon.common.UriUtils;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
@@ -64,6 +65,8 @@ public class StatusServiceTest {
     public void testReady() throws Throwable {
       Status status = testEnvironment.getServiceState(StatusService.SELF_LINK, Status.class);
       assertThat(status.getType(), is(StatusType.READY));
+      assertThat(status.getStats(), hasKey("startup.cloudstore.start"));
+      assertThat(status.getStats(), hasKey("startup." + PhotonControllerXenonHost.CORE_SERVICES_PHASE));
     }
 
     @Test
@@ -269,6 +269,38 @@ public class DatastoreServiceTest {
       verifyDatastore(createdState, newState);
     }
 
+    @Test
+    public void testPutWithoutSpaceKeepsReportedSpace() throws Throwable {
+      host.startServiceSynchronously(new DatastoreServiceFactory(), null);
+      testState.capacityGb = 100.0;
+      testState.usedGb = 40.0;
+      testState.uncommittedGb = 10.0;
+      Operation result = xenonRestClient.post(DatastoreServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      DatastoreService.State createdState = result.getBody(DatastoreService.State.class);
+
+      // The agent failed to read the datastore usage, so the new version has no space fields.
+      DatastoreService.State newState = getPutState(createdState);
+      result = xenonRestClient.put(createdState.documentSelfLink, newState);
+      assertThat(result.getStatusCode(), is(200));
+
+      result = xenonRestClient.get(createdState.documentSelfLink);
+      createdState = result.getBody(DatastoreService.State.class);
+      verifyDatastore(createdState, newState);
+      assertThat(createdState.capacityGb, is(100.0));
+      assertThat(createdState.usedGb, is(40.0));
+      assertThat(createdState.uncommittedGb, is(10.0));
+
+      // A new report replaces the space fields.
+      newState.capacityGb = 100.0;
+      newState.usedGb = 50.0;
+      newState.uncommittedGb = 0.0;
+      xenonRestClient.put(createdState.documentSelfLink, newState);
+      createdState = xenonRestClient.get(createdState.documentSelfLink).getBody(DatastoreService.State.class);
+      assertThat(createdState.usedGb, is(50.0));
+      assertThat(createdState.uncommittedGb, is(0.0));
+    }
+
     @Test(dataProvider = "ImmutableFieldNames", expectedExceptions = BadRequestException.class)
     public void testPutInvalidField(String fieldName) throws Throwable {
       // Create a document.
@@ -615,6 +615,13 @@ public class HostServiceTest {
       } while (getTotalDatastoreCount(testEnvironment) < 10 && retryCount++ < 10);
       assertThat(getTotalDatastoreCount(testEnvironment), is(10L));
 
+      // Validate that the capacity reported with a datastore is recorded on its document.
+      DatastoreService.State datastoreState = testEnvironment.getServiceState(
+          DatastoreServiceFactory.getDocumentLink(datastoreList.get(0).getId()), DatastoreService.State.class);
+      assertThat(datastoreState.capacityGb, is(100.0));
+      assertThat(datastoreState.usedGb, is(40.0));
+      assertThat(datastoreState.uncommittedGb, is(10.0));
+
       // Patch the host to MISSING state to trigger datastore delete tasks.
       patchState = new HostService.State();
       patchState.agentState = AgentState.MISSING;
@@ -860,6 +867,9 @@ public class HostServiceTest {
           case 0:
             datastore.setTags(Collections.singleton("tag1"));
             datastore.setType(DatastoreType.SHARED_VMFS);
+            datastore.setCapacity_gb(100.0);
+            datastore.setUsed_gb(40.0);
+            datastore.setUncommitted_gb(10.0);
             break;
           case 1:
             datastore.setTags(new HashSet<>(Arrays.asList("tag1", "tag2")));
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.entity;
+
+import com.vmware.photon.controller.common.xenon.BasicServiceHost;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.photon.controller.resource.gen.ImageReplication;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.EnumSet;
+import java.util.HashMap;
+
+/**
+ * Tests {@link ImageUploadService}.
+ */
+public class ImageUploadServiceTest {
+
+  private BasicServiceHost host;
+  private ImageUploadService service;
+
+  private ImageUploadService.State buildValidStartState() {
+    ImageUploadService.State state = new ImageUploadService.State();
+    state.name = "image1";
+    state.replicationType = ImageReplication.EAGER;
+    state.chunkCount = 3;
+    state.datastore = "datastore1";
+    state.uploadFolder = "[datastore1] tmp_image_1";
+
+    return state;
+  }
+
+  /**
+   * Dummy test case to make Intellij recognize this as a test class.
+   */
+  @Test(enabled = false)
+  private void dummy() {
+  }
+
+  /**
+   * Tests for the constructors.
+   */
+  public class InitializationTest {
+    @BeforeMethod
+    public void setUp() {
+      service = new ImageUploadService();
+    }
+
+    /**
+     * Test that the service starts with the expected options.
+     */
+    @Test
+    public void testServiceOptions() {
+      EnumSet<Service.ServiceOption> expected = EnumSet.of(
+          Service.ServiceOption.CONCURRENT_GET_HANDLING,
+          Service.ServiceOption.PERSISTENCE,
+          Service.ServiceOption.REPLICATION,
+          Service.ServiceOption.OWNER_SELECTION,
+          Service.ServiceOption.INSTRUMENTATION);
+      assertThat(service.getOptions(), is(expected));
+    }
+  }
+
+  /**
+   * Tests for the handleStart method.
+   */
+  public class HandleStartTest {
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      service = new ImageUploadService();
+      host = BasicServiceHost.create(
+          null, BasicServiceHost.SERVICE_URI, 10, 10);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (host != null) {
+        BasicServiceHost.destroy(host);
+      }
+
+      service = null;
+    }
+
+    /**
+     * Test start of service with valid start state.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testStartState() throws Throwable {
+      Operation result = host.startServiceSynchronously(service, buildValidStartState());
+      assertThat(result.getStatusCode(), is(200));
+
+      ImageUploadService.State savedState = host.getServiceState(ImageUploadService.State.class);
+      assertThat(savedState.name, is("image1"));
+      assertThat(savedState.chunkCount, is(3));
+      assertThat(savedState.chunkFiles.isEmpty(), is(true));
+      assertThat(savedState.uploadState, is(ImageUploadService.State.UploadState.UPLOADING));
+      assertThat(savedState.documentExpirationTimeMicros, greaterThan(Utils.getNowMicrosUtc()));
+    }
+
+    /**
+     * Tests that exception is raised for all fields that expect a positive value.
+     *
+     * @throws Throwable
+     */
+    @Test(expectedExceptions = BadRequestException.class,
+        expectedExceptionsMessageRegExp = ".* must be greater than zero")
+    public void testPositiveChunkCount() throws Throwable {
+      ImageUploadService.State startState = buildValidStartState();
+      startState.chunkCount = 0;
+
+      host.startServiceSynchronously(service, startState);
+    }
+  }
+
+  /**
+   * Tests for handlePatch method.
+   */
+  public class HandlePatchTest {
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      host = BasicServiceHost.create(
+          null, BasicServiceHost.SERVICE_URI, 10, 10);
+
+      host.startServiceSynchronously(new ImageUploadService(), buildValidStartState());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (null != host) {
+        BasicServiceHost.destroy(host);
+      }
+    }
+
+    @Test
+    public void testChunkFilesAreAdded() throws Throwable {
+      patchChunkFile("2", "chunk-2-a");
+      patchChunkFile("0", "chunk-0-a");
+      patchChunkFile("2", "chunk-2-b");
+
+      ImageUploadService.State savedState = host.getServiceState(ImageUploadService.State.class);
+      assertThat(savedState.chunkFiles, is(ImmutableMap.of("0", "chunk-0-a", "2", "chunk-2-b")));
+      assertThat(savedState.chunkChecksums,
+          is(ImmutableMap.of("0", "checksum-chunk-0-a", "2", "checksum-chunk-2-b")));
+    }
+
+    @Test
+    public void testUploadIsCommittedOnce() throws Throwable {
+      patchUploadState(ImageUploadService.State.UploadState.COMMITTING);
+
+      try {
+        patchUploadState(ImageUploadService.State.UploadState.COMMITTING);
+        fail("Exception expected.");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage().contains(ImageUploadService.UPLOAD_STATE_CONFLICT_MESSAGE), is(true));
+      }
+
+      try {
+        patchChunkFile("0", "chunk-0-a");
+        fail("Exception expected.");
+      } catch (BadRequestException e) {
+        assertThat(e.getMessage().contains(ImageUploadService.UPLOAD_STATE_CONFLICT_MESSAGE), is(true));
+      }
+
+      ImageUploadService.State patch = new ImageUploadService.State();
+      patch.uploadState = ImageUploadService.State.UploadState.COMMITTED;
+      patch.taskId = "task-id";
+      sendPatch(patch);
+
+      ImageUploadService.State savedState = host.getServiceState(ImageUploadService.State.class);
+      assertThat(savedState.uploadState, is(ImageUploadService.State.UploadState.COMMITTED));
+      assertThat(savedState.taskId, is("task-id"));
+      assertThat(savedState.chunkFiles.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFailedCommitCanBeRetried() throws Throwable {
+      patchUploadState(ImageUploadService.State.UploadState.COMMITTING);
+      patchUploadState(ImageUploadService.State.UploadState.UPLOADING);
+      patchChunkFile("1", "chunk-1-a");
+      patchUploadState(ImageUploadService.State.UploadState.COMMITTING);
+
+      ImageUploadService.State savedState = host.getServiceState(ImageUploadService.State.class);
+      assertThat(savedState.uploadState, is(ImageUploadService.State.UploadState.COMMITTING));
+      assertThat(savedState.chunkFiles, is(ImmutableMap.of("1", "chunk-1-a")));
+    }
+
+    /**
+     * Tests that exception is raised for all fields that are immutable.
+     *
+     * @throws Throwable
+     */
+    @Test(dataProvider = "ImmutableFields",
+        expectedExceptions = BadRequestException.class,
+        expectedExceptionsMessageRegExp = ".* is immutable")
+    public void testImmutableFields(String field, Object value) throws Throwable {
+      ImageUploadService.State patch = new ImageUploadService.State();
+
+      Field fieldObj = patch.getClass().getField(field);
+      fieldObj.set(patch, value);
+
+      sendPatch(patch);
+    }
+
+    @DataProvider(name = "ImmutableFields")
+    private Object[][] getImmutableFieldsData() {
+      return new Object[][]{
+          {"name", "new-name"},
+          {"replicationType", ImageReplication.ON_DEMAND},
+          {"chunkCount", 10},
+          {"datastore", "new-datastore"},
+          {"uploadFolder", "new-folder"}
+      };
+    }
+
+    private void patchChunkFile(String index, String fileName) throws Throwable {
+      ImageUploadService.State patch = new ImageUploadService.State();
+      patch.chunkFiles = new HashMap<>();
+      patch.chunkFiles.put(index, fileName);
+      patch.chunkChecksums = new HashMap<>();
+      patch.chunkChecksums.put(index, "checksum-" + fileName);
+      sendPatch(patch);
+    }
+
+    private void patchUploadState(ImageUploadService.State.UploadState uploadState) throws Throwable {
+      ImageUploadService.State patch = new ImageUploadService.State();
+      patch.uploadState = uploadState;
+      sendPatch(patch);
+    }
+
+    private void sendPatch(ImageUploadService.State patch) throws Throwable {
+      Operation op = Operation
+          .createPatch(UriUtils.buildUri(host, BasicServiceHost.SERVICE_URI, null))
+          .setBody(patch);
+
+      host.sendRequestAndWait(op);
+    }
+  }
+}
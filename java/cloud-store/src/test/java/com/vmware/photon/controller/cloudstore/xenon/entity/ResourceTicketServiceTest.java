@@ -374,6 +374,164 @@ public class ResourceTicketServiceTest {
       assertThat(patchedState.usageMap.get("key1").getValue(), is(0.0));
       assertThat(patchedState.usageMap.get("key2").getValue(), is(0.0));
     }
+
+    /**
+     * Test that leased quota counts against the limits and is settled by reconcile.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testLeaseAndReconcile() throws Throwable {
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.LEASE_ACQUIRE;
+      patch.leaseHolder = "holder";
+      patch.leaseDurationMicros = TimeUnit.MINUTES.toMicros(1);
+      patch.cost.put("key1", new QuotaLineItem("key1", 6.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.leases.get("holder").amounts.get("key1").getValue(), is(6.0));
+      assertThat(patchedState.usageMap.get("key1"), is(nullValue()));
+
+      // the lease leaves only 4 of the 10 for direct consumers
+      ResourceTicketService.Patch consume = new ResourceTicketService.Patch();
+      consume.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+      consume.cost.put("key1", new QuotaLineItem("key1", 5.0, QuotaUnit.COUNT));
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, consume);
+        fail("resource ticket consume above limits should have failed");
+      } catch (BadRequestException e) {
+        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
+            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
+        assertThat(quotaErrorResponse.limit.getValue(), is(10.0));
+      }
+
+      // 4 of the leased 6 were used, the rest is given back
+      ResourceTicketService.Patch reconcile = new ResourceTicketService.Patch();
+      reconcile.patchtype = ResourceTicketService.Patch.PatchType.LEASE_RECONCILE;
+      reconcile.leaseHolder = "holder";
+      reconcile.leaseDurationMicros = TimeUnit.MINUTES.toMicros(1);
+      reconcile.cost.put("key1", new QuotaLineItem("key1", 4.0, QuotaUnit.COUNT));
+      reconcile.lease.put("key1", new QuotaLineItem("key1", -6.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, reconcile);
+
+      found = xenonRestClient.get(createdState.documentSelfLink);
+      patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.leases.isEmpty(), is(true));
+      assertThat(patchedState.usageMap.get("key1").getValue(), is(4.0));
+    }
+
+    /**
+     * Test that an expired lease no longer holds back headroom.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testExpiredLeaseIsDropped() throws Throwable {
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.LEASE_ACQUIRE;
+      patch.leaseHolder = "holder";
+      patch.leaseDurationMicros = 1L;
+      patch.cost.put("key1", new QuotaLineItem("key1", 10.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+      Thread.sleep(1);
+
+      ResourceTicketService.Patch consume = new ResourceTicketService.Patch();
+      consume.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+      consume.cost.put("key1", new QuotaLineItem("key1", 10.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, consume);
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.leases.isEmpty(), is(true));
+      assertThat(patchedState.usageMap.get("key1").getValue(), is(10.0));
+    }
+
+    /**
+     * Test that the usage of an expired lease is refused when its headroom was handed out meanwhile.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testReconcileOfExpiredLeaseAboveLimits() throws Throwable {
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.LEASE_ACQUIRE;
+      patch.leaseHolder = "holder";
+      patch.leaseDurationMicros = 1L;
+      patch.cost.put("key1", new QuotaLineItem("key1", 6.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, patch);
+      Thread.sleep(1);
+
+      ResourceTicketService.Patch consume = new ResourceTicketService.Patch();
+      consume.patchtype = ResourceTicketService.Patch.PatchType.USAGE_CONSUME;
+      consume.cost.put("key1", new QuotaLineItem("key1", 8.0, QuotaUnit.COUNT));
+      xenonRestClient.patch(createdState.documentSelfLink, consume);
+
+      ResourceTicketService.Patch reconcile = new ResourceTicketService.Patch();
+      reconcile.patchtype = ResourceTicketService.Patch.PatchType.LEASE_RECONCILE;
+      reconcile.leaseHolder = "holder";
+      reconcile.leaseDurationMicros = TimeUnit.MINUTES.toMicros(1);
+      reconcile.cost.put("key1", new QuotaLineItem("key1", 4.0, QuotaUnit.COUNT));
+      reconcile.lease.put("key1", new QuotaLineItem("key1", -4.0, QuotaUnit.COUNT));
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, reconcile);
+        fail("resource ticket reconcile above limits should have failed");
+      } catch (BadRequestException e) {
+        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
+            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
+        assertThat(quotaErrorResponse.newUsage.getValue(), is(12.0));
+      }
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.usageMap.get("key1").getValue(), is(8.0));
+      assertThat(patchedState.leases.isEmpty(), is(true));
+    }
+
+    /**
+     * Test that a lease above the limits is refused without side effects.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testLeaseAboveLimits() throws Throwable {
+      Operation result = xenonRestClient.post(ResourceTicketServiceFactory.SELF_LINK, testState);
+      assertThat(result.getStatusCode(), is(200));
+      ResourceTicketService.State createdState = result.getBody(ResourceTicketService.State.class);
+
+      ResourceTicketService.Patch patch = new ResourceTicketService.Patch();
+      patch.patchtype = ResourceTicketService.Patch.PatchType.LEASE_ACQUIRE;
+      patch.leaseHolder = "holder";
+      patch.leaseDurationMicros = TimeUnit.MINUTES.toMicros(1);
+      patch.cost.put("key1", new QuotaLineItem("key1", 11.0, QuotaUnit.COUNT));
+      patch.cost.put("key2", new QuotaLineItem("key2", 1.0, QuotaUnit.COUNT));
+
+      try {
+        xenonRestClient.patch(createdState.documentSelfLink, patch);
+        fail("resource ticket lease above limits should have failed");
+      } catch (BadRequestException e) {
+        ResourceTicketService.QuotaErrorResponse quotaErrorResponse =
+            e.getCompletedOperation().getBody(ResourceTicketService.QuotaErrorResponse.class);
+        assertThat(quotaErrorResponse.newUsage.getValue(), is(11.0));
+      }
+
+      Operation found = xenonRestClient.get(createdState.documentSelfLink);
+      ResourceTicketService.State patchedState = found.getBody(ResourceTicketService.State.class);
+      assertThat(patchedState.leases.isEmpty(), is(true));
+    }
   }
 
   /**
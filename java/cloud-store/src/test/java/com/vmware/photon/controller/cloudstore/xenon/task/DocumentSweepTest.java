@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.task;
+
+import com.vmware.photon.controller.cloudstore.xenon.entity.IpLeaseService;
+import com.vmware.xenon.common.Service;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests {@link DocumentSweep}.
+ */
+public class DocumentSweepTest {
+
+  private ScheduledExecutorService executor;
+  private DocumentSweep<IpLeaseService.State> sweep;
+
+  @BeforeMethod
+  public void setUp() {
+    executor = Executors.newScheduledThreadPool(8);
+    sweep = new DocumentSweep<>(mock(Service.class), IpLeaseService.State.class, 10, 3);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testCreateCursor() {
+    DocumentSweep.Cursor cursor = DocumentSweep.createCursor(1000L);
+    assertThat(cursor.endTimeMicros, is(1000L));
+    assertThat(cursor.updateTimeMicros, nullValue());
+    assertThat(cursor.documentLinks, is(empty()));
+    assertThat(cursor.processedDocuments, is(0));
+    assertThat(cursor.progressPercent, is(0));
+    assertThat(cursor.done, is(false));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidMaxInFlightOperations() {
+    new DocumentSweep<>(mock(Service.class), IpLeaseService.State.class, 10, 0);
+  }
+
+  @Test
+  public void testForEachWithoutItems() throws Throwable {
+    Result result = forEach(Collections.emptyList(), 0);
+    assertThat(result.succeeded, is(0));
+    assertThat(result.failure, nullValue());
+  }
+
+  @Test
+  public void testForEachBoundsInFlightOperations() throws Throwable {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      items.add(i);
+    }
+
+    CountDownLatch latch = new CountDownLatch(1);
+    Result result = new Result();
+    sweep.forEach(items,
+        (item, done) -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          executor.schedule(() -> {
+            inFlight.decrementAndGet();
+            done.accept(null);
+          }, 10, TimeUnit.MILLISECONDS);
+        },
+        (succeeded, failure) -> {
+          result.succeeded = succeeded;
+          result.failure = failure;
+          latch.countDown();
+        });
+
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(result.succeeded, is(20));
+    assertThat(result.failure, nullValue());
+    assertThat(maxInFlight.get(), lessThanOrEqualTo(3));
+    assertThat(maxInFlight.get(), greaterThanOrEqualTo(2));
+  }
+
+  @Test
+  public void testForEachProcessesAllItemsWhenSomeFail() throws Throwable {
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      items.add(i);
+    }
+
+    Result result = forEach(items, 4);
+    assertThat(result.succeeded, is(6));
+    assertThat(result.failure, notNullValue());
+  }
+
+  /**
+   * Runs forEach with an action which completes asynchronously and fails the given number of items.
+   */
+  private Result forEach(List<Integer> items, int failingItems) throws Throwable {
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicReference<Result> result = new AtomicReference<>();
+    sweep.forEach(items,
+        (item, done) -> executor.execute(
+            () -> done.accept(item < failingItems ? new RuntimeException("failed " + item) : null)),
+        (succeeded, failure) -> {
+          Result r = new Result();
+          r.succeeded = succeeded;
+          r.failure = failure;
+          result.set(r);
+          latch.countDown();
+        });
+
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    return result.get();
+  }
+
+  /**
+   * Outcome of forEach.
+   */
+  private static class Result {
+    private volatile Integer succeeded;
+    private volatile Throwable failure;
+  }
+}
@@ -173,7 +173,8 @@ public class EntityLockCleanerServiceTest {
           {"taskState", state},
           {"isSelfProgressionDisabled", false},
           {"danglingEntityLocksWithInactiveTasks", 0},
-          {"releasedEntityLocks", 0}
+          {"releasedEntityLocks", 0},
+          {"maxInFlightOperations", DocumentSweep.DEFAULT_MAX_IN_FLIGHT_OPERATIONS}
       };
     }
 
@@ -353,6 +354,8 @@ public class EntityLockCleanerServiceTest {
           is(danglingEntityLocks));
       assertThat(response.releasedEntityLocks,
           is(danglingEntityLocks));
+      assertThat(response.sweepCursor.done, is(true));
+      assertThat(response.sweepCursor.progressPercent, is(100));
 
       verifyLockStatusAfterCleanup(machine, totalEntityLocks, danglingEntityLocks);
     }
@@ -158,6 +158,8 @@ public class IpLeaseCleanerServiceTest {
 
       return new Object[][]{
           {"taskState", state},
+          {"maxInFlightOperations", DocumentSweep.DEFAULT_MAX_IN_FLIGHT_OPERATIONS},
+          {"releasedIpLeases", 0},
       };
     }
 
@@ -310,6 +312,9 @@ public class IpLeaseCleanerServiceTest {
           request,
           IpLeaseCleanerService.State.class,
           (IpLeaseCleanerService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+      assertThat(response.releasedIpLeases, Matchers.is(danglingIpLeases));
+      assertThat(response.sweepCursor.done, Matchers.is(true));
+      assertThat(response.sweepCursor.progressPercent, Matchers.is(100));
 
       // Check that ownerVmId from IpLease document was cleaned.
       QueryTask.Query kindClause = new QueryTask.Query()
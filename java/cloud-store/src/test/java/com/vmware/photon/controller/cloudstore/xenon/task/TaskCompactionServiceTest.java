@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.cloudstore.xenon.task;
+
+import com.vmware.photon.controller.cloudstore.xenon.archive.TaskArchiveService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.TaskServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.common.xenon.BasicServiceHost;
+import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
+import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
+import com.vmware.photon.controller.common.xenon.exceptions.BadRequestException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
+import com.vmware.xenon.services.common.QueryTask;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link TaskCompactionService}.
+ */
+public class TaskCompactionServiceTest {
+
+  private BasicServiceHost host;
+  private TaskCompactionService service;
+
+  private TaskCompactionService.State buildValidStartupState() {
+    TaskCompactionService.State state = new TaskCompactionService.State();
+    state.isSelfProgressionDisabled = true;
+    return state;
+  }
+
+  /**
+   * Dummy test case to make Intellij recognize this as a test class.
+   */
+  @Test(enabled = false)
+  private void dummy() {
+  }
+
+  /**
+   * Tests for the constructors.
+   */
+  public class InitializationTest {
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      service = new TaskCompactionService();
+    }
+
+    /**
+     * Test that the service starts with the expected capabilities.
+     */
+    @Test
+    public void testServiceOptions() {
+      // Factory capability is implicitly added as part of the factory constructor.
+      EnumSet<Service.ServiceOption> expected = EnumSet.of(
+          Service.ServiceOption.CONCURRENT_GET_HANDLING,
+          Service.ServiceOption.PERSISTENCE,
+          Service.ServiceOption.REPLICATION,
+          Service.ServiceOption.OWNER_SELECTION,
+          Service.ServiceOption.INSTRUMENTATION);
+      assertThat(service.getOptions(), is(expected));
+    }
+  }
+
+  /**
+   * Tests for the handleStart method.
+   */
+  public class HandleStartTest {
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      service = new TaskCompactionService();
+      host = BasicServiceHost.create();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (host != null) {
+        BasicServiceHost.destroy(host);
+      }
+
+      service = null;
+    }
+
+    @Test(dataProvider = "AutoInitializedFields")
+    public void testAutoInitializedFields(String fieldName, Object value) throws Throwable {
+      TaskCompactionService.State startState = buildValidStartupState();
+      Field fieldObj = startState.getClass().getField(fieldName);
+      fieldObj.set(startState, null);
+
+      Operation startOp = host.startServiceSynchronously(service, startState);
+      assertThat(startOp.getStatusCode(), is(200));
+
+      TaskCompactionService.State savedState = host.getServiceState(TaskCompactionService.State.class);
+      if (fieldObj.getType().equals(TaskState.class)) {
+        assertThat(Utils.toJson(false, false, fieldObj.get(savedState)), is(Utils.toJson(false, false, value)));
+      } else {
+        assertThat(fieldObj.get(savedState), is(value));
+      }
+    }
+
+    @DataProvider(name = "AutoInitializedFields")
+    public Object[][] getAutoInitializedFieldsParams() {
+      TaskState state = new TaskState();
+      state.stage = TaskState.TaskStage.STARTED;
+
+      return new Object[][]{
+          {"taskState", state},
+          {"retentionAgeMillis", TaskCompactionService.DEFAULT_RETENTION_AGE_MILLIS},
+          {"pageLimit", TaskCompactionService.DEFAULT_PAGE_LIMIT},
+          {"maxTasksPerRun", TaskCompactionService.DEFAULT_MAX_TASKS_PER_RUN},
+          {"processedPages", 0},
+          {"archivedTasks", 0},
+          {"deletedTasks", 0},
+          {"isSelfProgressionDisabled", false}
+      };
+    }
+
+    @Test
+    public void testRunStateIsInitialized() throws Throwable {
+      long startMicros = Utils.getNowMicrosUtc();
+      host.startServiceSynchronously(service, buildValidStartupState());
+
+      TaskCompactionService.State savedState = host.getServiceState(TaskCompactionService.State.class);
+      assertThat(savedState.archiveSegment, startsWith("tasks-"));
+      assertThat(savedState.cutoffTimeMicros,
+          greaterThanOrEqualTo(startMicros - TimeUnit.MILLISECONDS.toMicros(savedState.retentionAgeMillis)));
+    }
+
+    @Test(dataProvider = "PositiveFields",
+        expectedExceptions = BadRequestException.class,
+        expectedExceptionsMessageRegExp = ".* must be greater than zero")
+    public void testPositiveFields(String fieldName, Object value) throws Throwable {
+      TaskCompactionService.State startState = buildValidStartupState();
+
+      Field fieldObj = startState.getClass().getField(fieldName);
+      fieldObj.set(startState, value);
+
+      host.startServiceSynchronously(service, startState);
+    }
+
+    @DataProvider(name = "PositiveFields")
+    public Object[][] getPositiveFieldsParams() {
+      return new Object[][]{
+          {"retentionAgeMillis", 0L},
+          {"pageLimit", 0},
+          {"maxTasksPerRun", -1}
+      };
+    }
+  }
+
+  /**
+   * Tests for end-to-end scenarios.
+   */
+  public class EndToEndTest {
+
+    private TestEnvironment machine;
+    private TaskCompactionService.State request;
+
+    @BeforeMethod
+    public void setUp() throws Throwable {
+      request = buildValidStartupState();
+      request.isSelfProgressionDisabled = false;
+      request.retentionAgeMillis = 1L;
+    }
+
+    @AfterMethod
+    public void tearDown() throws Throwable {
+      if (machine != null) {
+        machine.stop();
+        machine = null;
+      }
+    }
+
+    @Test(dataProvider = "Success")
+    public void testSuccess(int finishedTasks, int runningTasks, int pageLimit, int hostCount) throws Throwable {
+      machine = TestEnvironment.create(hostCount);
+      String entityId = UUID.randomUUID().toString();
+      seedTestEnvironment(machine, entityId, finishedTasks, runningTasks);
+
+      request.cutoffTimeMicros = Utils.getNowMicrosUtc();
+      request.pageLimit = pageLimit;
+      TaskCompactionService.State response = machine.callServiceAndWaitForState(
+          TaskCompactionFactoryService.SELF_LINK,
+          request,
+          TaskCompactionService.State.class,
+          (TaskCompactionService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      assertThat(response.archivedTasks, is(finishedTasks));
+      assertThat(response.deletedTasks, is(finishedTasks));
+
+      List<TaskService.State> tasks = queryTasks(machine);
+      assertThat(tasks.size(), is(runningTasks));
+      for (TaskService.State task : tasks) {
+        assertThat(task.state, is(TaskService.State.TaskState.STARTED));
+      }
+
+      // Every node keeps a copy of the single segment of the run.
+      for (PhotonControllerXenonHost host : machine.getHosts()) {
+        List<TaskService.State> archivedTasks = queryArchive(machine, host, entityId);
+        assertThat(archivedTasks.size(), is(finishedTasks));
+        for (TaskService.State archivedTask : archivedTasks) {
+          assertThat(archivedTask.state, not(TaskService.State.TaskState.STARTED));
+          assertThat(archivedTask.steps.size(), is(1));
+        }
+
+        File archiveDirectory = new File(new File(host.getStorageSandbox()), TaskArchiveService.ARCHIVE_DIRECTORY);
+        String[] segments = archiveDirectory.list((dir, name) -> name.endsWith(".gz"));
+        assertThat(segments == null ? 0 : segments.length, is(finishedTasks > 0 ? 1 : 0));
+      }
+    }
+
+    @DataProvider(name = "Success")
+    public Object[][] getSuccessData() {
+      return new Object[][]{
+          {0, 2, TaskCompactionService.DEFAULT_PAGE_LIMIT, 1},
+          {5, 2, TaskCompactionService.DEFAULT_PAGE_LIMIT, 1},
+          {7, 3, 2, 1},
+          {7, 3, 2, TestEnvironment.DEFAULT_MULTI_HOST_COUNT},
+      };
+    }
+
+    @Test
+    public void testMaxTasksPerRun() throws Throwable {
+      machine = TestEnvironment.create(1);
+      seedTestEnvironment(machine, UUID.randomUUID().toString(), 7, 0);
+
+      request.cutoffTimeMicros = Utils.getNowMicrosUtc();
+      request.pageLimit = 2;
+      request.maxTasksPerRun = 3;
+      TaskCompactionService.State response = machine.callServiceAndWaitForState(
+          TaskCompactionFactoryService.SELF_LINK,
+          request,
+          TaskCompactionService.State.class,
+          (TaskCompactionService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      // The run stops after the page which crosses the limit.
+      assertThat(response.archivedTasks, is(4));
+      assertThat(response.deletedTasks, is(4));
+      assertThat(queryTasks(machine).size(), is(3));
+    }
+
+    private void seedTestEnvironment(TestEnvironment env, String entityId, int finishedTasks, int runningTasks)
+        throws Throwable {
+      for (int i = 0; i < finishedTasks + runningTasks; i++) {
+        TaskService.State task = new TaskService.State();
+        task.entityId = entityId;
+        task.entityKind = "vm";
+        if (i < finishedTasks) {
+          task.state = i % 2 == 0 ? TaskService.State.TaskState.COMPLETED : TaskService.State.TaskState.ERROR;
+        } else {
+          task.state = TaskService.State.TaskState.STARTED;
+        }
+        TaskService.State.Step step = new TaskService.State.Step();
+        step.operation = "CREATE_VM";
+        task.steps = Collections.singletonList(step);
+        env.sendPostAndWaitForReplication(TaskServiceFactory.SELF_LINK, task);
+      }
+    }
+
+    private List<TaskService.State> queryTasks(TestEnvironment env) throws Throwable {
+      QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+      querySpec.query.setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+          .setTermMatchValue(Utils.buildKind(TaskService.State.class));
+      querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+
+      NodeGroupBroadcastResponse response = env.sendBroadcastQueryAndWait(QueryTask.create(querySpec).setDirect(true));
+      return QueryTaskUtils.getBroadcastQueryDocuments(TaskService.State.class, response);
+    }
+
+    private List<TaskService.State> queryArchive(TestEnvironment env, PhotonControllerXenonHost host,
+                                                 String entityId) throws Throwable {
+      TaskArchiveService.Request query = new TaskArchiveService.Request();
+      query.type = TaskArchiveService.RequestType.QUERY;
+      query.entityId = entityId;
+      query.local = true;
+
+      Operation post = Operation
+          .createPost(UriUtils.buildUri(host, TaskArchiveService.SELF_LINK))
+          .setBody(query);
+      return env.sendRequestAndWait(post, host).getBody(TaskArchiveService.Response.class).documents;
+    }
+  }
+}
@@ -164,7 +164,10 @@ public class TombstoneCleanerServiceTest {
     public Object[][] getPositiveFieldsParams() {
       return new Object[][]{
           {"tombstoneExpirationAgeMillis", 0L},
-          {"tombstoneExpirationAgeMillis", -1L}
+          {"tombstoneExpirationAgeMillis", -1L},
+          {"pageLimit", 0},
+          {"deleteBatchSize", -1},
+          {"maxTombstonesPerRun", 0}
       };
     }
 
@@ -203,7 +206,12 @@ public class TombstoneCleanerServiceTest {
           {"staleTombstones", 0},
           {"staleTasks", 0},
           {"deletedTombstones", 0},
-          {"deletedTasks", 0}
+          {"deletedTasks", 0},
+          {"pageLimit", 100},
+          {"deleteBatchSize", 50},
+          {"maxTombstonesPerRun", 5000},
+          {"processedPages", 0},
+          {"durationMillis", 0L}
       };
     }
 
@@ -321,7 +329,10 @@ public class TombstoneCleanerServiceTest {
     @DataProvider(name = "ImmutableFields")
     public Object[][] getImmutableFieldsParams() {
       return new Object[][]{
-          {"tombstoneExpirationAgeMillis", 10L}
+          {"tombstoneExpirationAgeMillis", 10L},
+          {"pageLimit", 10},
+          {"deleteBatchSize", 10},
+          {"maxTombstonesPerRun", 10}
       };
     }
   }
@@ -406,6 +417,77 @@ public class TombstoneCleanerServiceTest {
           TaskServiceFactory.SELF_LINK);
     }
 
+    /**
+     * Tests that the tombstones are purged page by page and the deletes are batched.
+     *
+     * @throws Throwable
+     */
+    @Test(dataProvider = "Paged")
+    public void testSuccessWithPages(int totalTombstones, int staleTombstones, int tasksPerTombstone, int hostCount)
+        throws Throwable {
+      request.pageLimit = 2;
+      request.deleteBatchSize = 3;
+
+      TombstoneCleanerService.State response = machine.callServiceAndWaitForState(
+          TombstoneCleanerFactoryService.SELF_LINK,
+          request,
+          TombstoneCleanerService.State.class,
+          (TombstoneCleanerService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      assertThat(response.processedPages, is((staleTombstones + 1) / 2));
+      assertThat(response.staleTombstones, is(staleTombstones));
+      assertThat(response.staleTasks, is(tasksPerTombstone * staleTombstones));
+      assertThat(response.deletedTombstones, is(staleTombstones));
+      assertThat(response.deletedTasks, is(tasksPerTombstone * staleTombstones));
+
+      waitForReplication(machine, totalTombstones - staleTombstones, TombstoneServiceFactory.SELF_LINK);
+      waitForReplication(machine, (totalTombstones - staleTombstones) * tasksPerTombstone,
+          TaskServiceFactory.SELF_LINK);
+    }
+
+    /**
+     * Tests that a run stops after maxTombstonesPerRun and the next run purges the rest.
+     *
+     * @throws Throwable
+     */
+    @Test(dataProvider = "Paged")
+    public void testMaxTombstonesPerRun(int totalTombstones, int staleTombstones, int tasksPerTombstone,
+                                        int hostCount) throws Throwable {
+      request.pageLimit = 2;
+      request.maxTombstonesPerRun = 2;
+
+      TombstoneCleanerService.State response = machine.callServiceAndWaitForState(
+          TombstoneCleanerFactoryService.SELF_LINK,
+          request,
+          TombstoneCleanerService.State.class,
+          (TombstoneCleanerService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      assertThat(response.processedPages, is(1));
+      assertThat(response.deletedTombstones, is(2));
+      assertThat(response.deletedTasks, is(tasksPerTombstone * 2));
+      waitForReplication(machine, totalTombstones - 2, TombstoneServiceFactory.SELF_LINK);
+
+      request.maxTombstonesPerRun = staleTombstones;
+      response = machine.callServiceAndWaitForState(
+          TombstoneCleanerFactoryService.SELF_LINK,
+          request,
+          TombstoneCleanerService.State.class,
+          (TombstoneCleanerService.State state) -> state.taskState.stage == TaskState.TaskStage.FINISHED);
+
+      assertThat(response.deletedTombstones, is(staleTombstones - 2));
+      waitForReplication(machine, totalTombstones - staleTombstones, TombstoneServiceFactory.SELF_LINK);
+      waitForReplication(machine, (totalTombstones - staleTombstones) * tasksPerTombstone,
+          TaskServiceFactory.SELF_LINK);
+    }
+
+    @DataProvider(name = "Paged")
+    public Object[][] getPagedData() {
+      return new Object[][]{
+          {7, 5, 2, 1},
+          {7, 5, 2, TestEnvironment.DEFAULT_MULTI_HOST_COUNT}
+      };
+    }
+
     @DataProvider(name = "Success")
     public Object[][] getSuccessData() {
       return new Object[][]{
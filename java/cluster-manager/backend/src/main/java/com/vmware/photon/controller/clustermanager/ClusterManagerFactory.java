@@ -14,6 +14,7 @@
 package com.vmware.photon.controller.clustermanager;
 
 import com.vmware.photon.controller.api.client.ApiClient;
+import com.vmware.photon.controller.clustermanager.clients.ClusterHttpTransport;
 import com.vmware.photon.controller.clustermanager.clients.EtcdClient;
 import com.vmware.photon.controller.clustermanager.clients.HarborClient;
 import com.vmware.photon.controller.clustermanager.clients.KubernetesClient;
@@ -35,13 +36,13 @@ import com.vmware.photon.controller.clustermanager.tasks.SwarmClusterCreateTaskF
 import com.vmware.photon.controller.clustermanager.tasks.VmDeprovisionTaskFactoryService;
 import com.vmware.photon.controller.clustermanager.tasks.VmProvisionTaskFactoryService;
 import com.vmware.photon.controller.clustermanager.tasks.WaitForNetworkTaskFactoryService;
+import com.vmware.photon.controller.clustermanager.utils.ClusterMaintenanceScheduler;
 import com.vmware.photon.controller.common.thrift.ServerSet;
 import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
 import com.vmware.xenon.common.Service;
 
 import com.google.common.util.concurrent.ListeningExecutorService;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 /**
  * Common factory used for ClusterManager.
@@ -49,9 +50,10 @@ import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 public class ClusterManagerFactory {
 
   private ListeningExecutorService listeningExecutorService;
-  private CloseableHttpAsyncClient httpAsyncClient;
+  private ClusterHttpTransport httpTransport;
   private ServerSet cloudStoreServerSet;
   private String scriptsDirectory;
+  private ClusterMaintenanceScheduler clusterMaintenanceScheduler;
 
   /**
    * All Xenon Factory Services in Cluster-Manager backend.
@@ -78,16 +80,17 @@ public class ClusterManagerFactory {
   /**
    * Overloaded Constructor.
    *
-   * @param httpAsyncClient
+   * @param httpTransport HTTP transport shared by all cluster clients
    */
   public ClusterManagerFactory(ListeningExecutorService listeningExecutorService,
-                               CloseableHttpAsyncClient httpAsyncClient,
+                               ClusterHttpTransport httpTransport,
                                ServerSet cloudStoreServerSet,
                                String scriptsDirectory) {
     this.listeningExecutorService = listeningExecutorService;
-    this.httpAsyncClient = httpAsyncClient;
+    this.httpTransport = httpTransport;
     this.cloudStoreServerSet = cloudStoreServerSet;
     this.scriptsDirectory = scriptsDirectory;
+    this.clusterMaintenanceScheduler = new ClusterMaintenanceScheduler();
   }
 
   /**
@@ -102,35 +105,35 @@ public class ClusterManagerFactory {
    * Creates an instance of {@link EtcdClient}.
    */
   public EtcdClient createEtcdClient() {
-    return new EtcdClient(this.httpAsyncClient);
+    return new EtcdClient(this.httpTransport);
   }
 
   /**
    * Creates an instance of {@link KubernetesClient}.
    */
   public KubernetesClient createKubernetesClient() {
-    return new KubernetesClient(this.httpAsyncClient);
+    return new KubernetesClient(this.httpTransport);
   }
 
   /**
    * Creates an instance of {@link MesosClient}.
    */
   public MesosClient createMesosClient() {
-    return new MesosClient(this.httpAsyncClient);
+    return new MesosClient(this.httpTransport);
   }
 
   /**
    * Creates an instance of {@link SwarmClient}.
    */
   public SwarmClient createSwarmClient() {
-    return new SwarmClient(this.httpAsyncClient);
+    return new SwarmClient(this.httpTransport);
   }
 
   /**
    * Creates an instance of {@link HarborClient}.
    */
   public HarborClient createHarborClient() {
-    return new HarborClient(this.httpAsyncClient);
+    return new HarborClient(this.httpTransport);
   }
 
   /**
@@ -154,6 +157,20 @@ public class ClusterManagerFactory {
     return this.listeningExecutorService;
   }
 
+  /**
+   * Gets the {@link ClusterHttpTransport} shared by all cluster clients.
+   */
+  public ClusterHttpTransport getHttpTransportInstance() {
+    return this.httpTransport;
+  }
+
+  /**
+   * Gets the {@link ClusterMaintenanceScheduler} shared by the maintenance tasks of this host.
+   */
+  public ClusterMaintenanceScheduler getClusterMaintenanceSchedulerInstance() {
+    return this.clusterMaintenanceScheduler;
+  }
+
   /**
    * Returns the location of the Scripts directory.
    */
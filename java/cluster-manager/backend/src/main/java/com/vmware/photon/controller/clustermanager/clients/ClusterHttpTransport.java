@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.clustermanager.clients;
+
+import com.vmware.photon.controller.api.client.RestClient;
+import com.vmware.photon.controller.common.metrics.DefaultMetricRegistry;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Preconditions;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the HTTP transport shared by the cluster-manager clients.
+ * <p>
+ * All calls to the cluster nodes go through one pooled async HTTP client, so that connections, including their TLS
+ * sessions, are kept alive and reused across status checks instead of being set up for every call. The pool limits
+ * the number of connections per endpoint and in total, and every request runs with connect, socket and pool lease
+ * timeouts. Responses are parsed with a single pre-configured {@link ObjectMapper} whose {@link ObjectReader}s are
+ * cached per type. Request latency, transport failures and error responses are recorded per endpoint in the
+ * {@link MetricRegistry}. The metrics of an endpoint are removed again once its cluster is deleted, see
+ * {@link #removeEndpointMetrics} and {@link #removeIdleEndpointMetrics}.
+ */
+public class ClusterHttpTransport implements Closeable {
+
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 4;
+  public static final int DEFAULT_MAX_CONNECTIONS = 256;
+  public static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+  public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+  public static final long DEFAULT_METRICS_IDLE_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private static final ConcurrentMap<Class<?>, ObjectReader> OBJECT_READERS = new ConcurrentHashMap<>();
+
+  private final CloseableHttpAsyncClient httpClient;
+  private final MetricRegistry metricRegistry;
+  private final ConcurrentMap<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+
+  public ClusterHttpTransport(CloseableHttpAsyncClient httpClient) {
+    this(httpClient, DefaultMetricRegistry.REGISTRY);
+  }
+
+  public ClusterHttpTransport(CloseableHttpAsyncClient httpClient, MetricRegistry metricRegistry) {
+    Preconditions.checkNotNull(httpClient);
+    Preconditions.checkNotNull(metricRegistry);
+
+    this.httpClient = httpClient;
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * Creates a started transport with the default pool limits and timeouts.
+   */
+  public static ClusterHttpTransport create() {
+    return create(DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT, DEFAULT_MAX_CONNECTIONS, DEFAULT_REQUEST_TIMEOUT_MILLIS,
+        DEFAULT_KEEP_ALIVE_MILLIS);
+  }
+
+  /**
+   * Creates a started transport.
+   *
+   * @param maxConnectionsPerEndpoint maximum number of connections to one endpoint
+   * @param maxConnections            maximum number of connections in the pool
+   * @param requestTimeoutMillis      connect, socket and pool lease timeout of a request
+   * @param keepAliveMillis           time an idle connection is kept when the endpoint does not say otherwise
+   */
+  public static ClusterHttpTransport create(int maxConnectionsPerEndpoint,
+                                            int maxConnections,
+                                            int requestTimeoutMillis,
+                                            long keepAliveMillis) {
+    Preconditions.checkArgument(maxConnectionsPerEndpoint > 0, "maxConnectionsPerEndpoint must be greater than zero");
+    Preconditions.checkArgument(maxConnections >= maxConnectionsPerEndpoint,
+        "maxConnections must not be less than maxConnectionsPerEndpoint");
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(requestTimeoutMillis)
+        .setSocketTimeout(requestTimeoutMillis)
+        .setConnectionRequestTimeout(requestTimeoutMillis)
+        .build();
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+      long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return keepAlive > 0 ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+    };
+
+    try {
+      SSLContext sslcontext = SSLContexts.custom()
+          .loadTrustMaterial((chain, authtype) -> true)
+          .build();
+      CloseableHttpAsyncClient httpClient = HttpAsyncClientBuilder.create()
+          .setHostnameVerifier(SSLIOSessionStrategy.ALLOW_ALL_HOSTNAME_VERIFIER)
+          .setSSLContext(sslcontext)
+          .setMaxConnPerRoute(maxConnectionsPerEndpoint)
+          .setMaxConnTotal(maxConnections)
+          .setDefaultRequestConfig(requestConfig)
+          .setKeepAliveStrategy(keepAliveStrategy)
+          .build();
+      httpClient.start();
+      return new ClusterHttpTransport(httpClient);
+    } catch (Throwable e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the shared {@link ObjectMapper}, which ignores unknown properties.
+   */
+  public static ObjectMapper getObjectMapper() {
+    return OBJECT_MAPPER;
+  }
+
+  /**
+   * Returns the cached {@link ObjectReader} of the given type.
+   */
+  public static ObjectReader getReader(Class<?> type) {
+    return OBJECT_READERS.computeIfAbsent(type, key -> OBJECT_MAPPER.reader(key));
+  }
+
+  /**
+   * Performs an http request asynchronously against the given endpoint.
+   *
+   * @param connectionString connectionString of the endpoint, e.g. http://10.0.0.1:8080
+   * @param method           http verb
+   * @param path             path of the request
+   * @param payload          body of a PUT or POST request, or null
+   * @param callback         callback that is invoked on completion of the request
+   */
+  public Future<HttpResponse> performAsync(String connectionString,
+                                           RestClient.Method method,
+                                           String path,
+                                           HttpEntity payload,
+                                           FutureCallback<HttpResponse> callback) throws IOException {
+    HttpUriRequest request = createHttpRequest(connectionString + path, method, payload);
+    EndpointMetrics metrics = endpointMetrics.computeIfAbsent(connectionString, this::createEndpointMetrics);
+    metrics.lastUsedNanos = System.nanoTime();
+    Timer.Context latency = metrics.latency.time();
+
+    return httpClient.execute(request, new BasicHttpContext(), new FutureCallback<HttpResponse>() {
+      @Override
+      public void completed(HttpResponse result) {
+        latency.stop();
+        if (result.getStatusLine().getStatusCode() >= 400) {
+          metrics.errorResponses.mark();
+        }
+        callback.completed(result);
+      }
+
+      @Override
+      public void failed(Exception ex) {
+        latency.stop();
+        metrics.failures.mark();
+        callback.failed(ex);
+      }
+
+      @Override
+      public void cancelled() {
+        latency.stop();
+        metrics.failures.mark();
+        callback.cancelled();
+      }
+    });
+  }
+
+  /**
+   * Throws if the status code of the response is not the expected one.
+   */
+  public void checkResponse(HttpResponse httpResponse, int expected) {
+    int statusCode = httpResponse.getStatusLine().getStatusCode();
+
+    if (statusCode != expected) {
+      StringBuilder msg = new StringBuilder();
+      msg.append("HTTP request failed with: ");
+      msg.append(statusCode);
+      if (httpResponse.getEntity() != null) {
+        try {
+          msg.append(", ");
+          msg.append(EntityUtils.toString(httpResponse.getEntity()));
+        } catch (IOException e) {
+          // ignore exception here and use partial error message.
+        }
+      }
+      throw new RuntimeException(msg.toString());
+    }
+  }
+
+  /**
+   * Returns the name of a per-endpoint metric, e.g.
+   * {@code ClusterHttpTransport.endpoints.10_0_0_1_8080.latency}.
+   */
+  public static String getMetricName(String connectionString, String metric) {
+    String endpoint = connectionString;
+    try {
+      URI uri = new URI(connectionString);
+      if (uri.getHost() != null) {
+        endpoint = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+      }
+    } catch (URISyntaxException e) {
+      // fall back to the raw connection string.
+    }
+
+    return MetricRegistry.name(ClusterHttpTransport.class, "endpoints", endpoint.replaceAll("[^A-Za-z0-9-]", "_"),
+        metric);
+  }
+
+  /**
+   * Removes the metrics of the endpoints on the given addresses, e.g. the nodes of a deleted cluster.
+   *
+   * @param addresses IP addresses or host names of the endpoints
+   */
+  public void removeEndpointMetrics(Collection<String> addresses) {
+    for (String connectionString : endpointMetrics.keySet()) {
+      if (addresses.contains(getEndpointHost(connectionString))) {
+        removeEndpointMetrics(connectionString);
+      }
+    }
+  }
+
+  /**
+   * Removes the metrics of the endpoints which were not called for the given time. Status checks call the endpoints
+   * of a live cluster at least once per maintenance interval, so this drops the endpoints of deleted clusters whose
+   * addresses were not recorded on the cluster.
+   *
+   * @param idleMillis time since the last call after which an endpoint is idle
+   */
+  public void removeIdleEndpointMetrics(long idleMillis) {
+    long now = System.nanoTime();
+    for (String connectionString : endpointMetrics.keySet()) {
+      EndpointMetrics metrics = endpointMetrics.get(connectionString);
+      if (metrics != null && now - metrics.lastUsedNanos >= TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+        removeEndpointMetrics(connectionString);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  private void removeEndpointMetrics(String connectionString) {
+    // The registry is updated under the lock of the map entry, so that a concurrent request to the endpoint either
+    // uses the removed metrics or registers new ones.
+    endpointMetrics.computeIfPresent(connectionString, (key, metrics) -> {
+      metricRegistry.remove(getMetricName(connectionString, "latency"));
+      metricRegistry.remove(getMetricName(connectionString, "failures"));
+      metricRegistry.remove(getMetricName(connectionString, "errorResponses"));
+      return null;
+    });
+  }
+
+  private static String getEndpointHost(String connectionString) {
+    try {
+      String host = new URI(connectionString).getHost();
+      return host != null ? host : connectionString;
+    } catch (URISyntaxException e) {
+      return connectionString;
+    }
+  }
+
+  private EndpointMetrics createEndpointMetrics(String connectionString) {
+    return new EndpointMetrics(
+        metricRegistry.timer(getMetricName(connectionString, "latency")),
+        metricRegistry.meter(getMetricName(connectionString, "failures")),
+        metricRegistry.meter(getMetricName(connectionString, "errorResponses")));
+  }
+
+  private static HttpUriRequest createHttpRequest(String uri, RestClient.Method method, HttpEntity payload) {
+    HttpEntityEnclosingRequestBase requestWithBody;
+    switch (method) {
+      case GET:
+        return new HttpGet(uri);
+      case DELETE:
+        return new HttpDelete(uri);
+      case PUT:
+        requestWithBody = new HttpPut(uri);
+        break;
+      case POST:
+        requestWithBody = new HttpPost(uri);
+        break;
+      default:
+        throw new RuntimeException("Unknown method: " + method);
+    }
+
+    requestWithBody.setEntity(payload);
+    return requestWithBody;
+  }
+
+  /**
+   * Metrics of one endpoint.
+   */
+  private static class EndpointMetrics {
+    private final Timer latency;
+    private final Meter failures;
+    private final Meter errorResponses;
+    private volatile long lastUsedNanos;
+
+    private EndpointMetrics(Timer latency, Meter failures, Meter errorResponses) {
+      this.latency = latency;
+      this.failures = failures;
+      this.errorResponses = errorResponses;
+      this.lastUsedNanos = System.nanoTime();
+    }
+  }
+}
@@ -19,7 +19,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.FutureCallback;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import java.io.IOException;
 
@@ -29,12 +28,12 @@ import java.io.IOException;
 public class EtcdClient {
   private static final String ETCD_STATUS_PATH = "/v2/stats/self";
 
-  private CloseableHttpAsyncClient httpClient;
+  private final ClusterHttpTransport transport;
 
-  public EtcdClient(CloseableHttpAsyncClient httpClient) {
-    Preconditions.checkNotNull(httpClient);
+  public EtcdClient(ClusterHttpTransport transport) {
+    Preconditions.checkNotNull(transport);
 
-    this.httpClient = httpClient;
+    this.transport = transport;
   }
 
   /**
@@ -49,8 +48,6 @@ public class EtcdClient {
       final String connectionString,
       final FutureCallback<Boolean> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -70,6 +67,6 @@ public class EtcdClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, ETCD_STATUS_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, ETCD_STATUS_PATH, null, futureCallback);
   }
 }
@@ -20,7 +20,6 @@ import com.google.common.util.concurrent.FutureCallback;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import java.io.IOException;
 
@@ -31,12 +30,12 @@ public class HarborClient {
   private static final String HARBOR_STATUS_PATH = "/";
   private static final String HARBOR_PUBLIC_CA_CERT_PATH = "/static/resources/certs/ca.crt";
 
-  private CloseableHttpAsyncClient httpClient;
+  private final ClusterHttpTransport transport;
 
-  public HarborClient(CloseableHttpAsyncClient httpClient) {
-    Preconditions.checkNotNull(httpClient);
+  public HarborClient(ClusterHttpTransport transport) {
+    Preconditions.checkNotNull(transport);
 
-    this.httpClient = httpClient;
+    this.transport = transport;
   }
 
   /**
@@ -51,8 +50,6 @@ public class HarborClient {
       final String connectionString,
       final FutureCallback<Boolean> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -72,7 +69,7 @@ public class HarborClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, HARBOR_STATUS_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, HARBOR_STATUS_PATH, null, futureCallback);
   }
 
   /**
@@ -86,13 +83,11 @@ public class HarborClient {
       final String connectionString,
       final FutureCallback<String> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
           public void completed(HttpResponse result) {
-            restClient.checkResponse(result, HttpStatus.SC_OK);
+            transport.checkResponse(result, HttpStatus.SC_OK);
             try {
               callback.onSuccess(IOUtils.toString(result.getEntity().getContent(), "UTF-8"));
             } catch (IOException e) {
@@ -112,6 +107,6 @@ public class HarborClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, HARBOR_PUBLIC_CA_CERT_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, HARBOR_PUBLIC_CA_CERT_PATH, null, futureCallback);
   }
 }
@@ -15,14 +15,10 @@ package com.vmware.photon.controller.clustermanager.clients;
 
 import com.vmware.photon.controller.api.client.RestClient;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.FutureCallback;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 
 import java.io.IOException;
 import java.util.HashSet;
@@ -40,17 +36,12 @@ public class KubernetesClient {
   private static final String READY_CONDITION_TYPE = "Ready";
   private static final String READY_CONDITION_TRUE_STATUS = "True";
 
-  private CloseableHttpAsyncClient httpClient;
-  private ObjectMapper objectMapper;
+  private final ClusterHttpTransport transport;
 
-  public KubernetesClient(CloseableHttpAsyncClient httpClient) {
-    Preconditions.checkNotNull(httpClient);
+  public KubernetesClient(ClusterHttpTransport transport) {
+    Preconditions.checkNotNull(transport);
 
-    this.httpClient = httpClient;
-    this.objectMapper = new ObjectMapper();
-
-    // Ignore unknown properties
-    this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    this.transport = transport;
   }
 
   /**
@@ -64,8 +55,6 @@ public class KubernetesClient {
       final String connectionString,
       final FutureCallback<String> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -73,9 +62,8 @@ public class KubernetesClient {
 
             Version response = null;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              response = objectMapper.readValue(result.getEntity().getContent(), new TypeReference<Version>() {
-              });
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              response = ClusterHttpTransport.getReader(Version.class).readValue(result.getEntity().getContent());
             } catch (Throwable e) {
               callback.onFailure(e);
               return;
@@ -105,7 +93,7 @@ public class KubernetesClient {
                 new RuntimeException("getVersionAsync was cancelled"));
           }
         };
-    restClient.performAsync(RestClient.Method.GET, GET_VERSION_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, GET_VERSION_PATH, null, futureCallback);
 
   }
 
@@ -120,8 +108,6 @@ public class KubernetesClient {
       final String connectionString,
       final FutureCallback<Set<String>> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -129,9 +115,8 @@ public class KubernetesClient {
 
             Nodes response = null;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              response = objectMapper.readValue(result.getEntity().getContent(), new TypeReference<Nodes>() {
-              });
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              response = ClusterHttpTransport.getReader(Nodes.class).readValue(result.getEntity().getContent());
             } catch (Throwable e) {
               callback.onFailure(e);
               return;
@@ -163,7 +148,7 @@ public class KubernetesClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, GET_NODES_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, GET_NODES_PATH, null, futureCallback);
   }
 
   /**
@@ -180,8 +165,6 @@ public class KubernetesClient {
       final String connectionString,
       final FutureCallback<Set<String>> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -189,9 +172,8 @@ public class KubernetesClient {
 
             Nodes response = null;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              response = objectMapper.readValue(result.getEntity().getContent(), new TypeReference<Nodes>() {
-              });
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              response = ClusterHttpTransport.getReader(Nodes.class).readValue(result.getEntity().getContent());
             } catch (Throwable e) {
               callback.onFailure(e);
               return;
@@ -230,7 +212,7 @@ public class KubernetesClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, GET_NODES_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, GET_NODES_PATH, null, futureCallback);
   }
 
   /**
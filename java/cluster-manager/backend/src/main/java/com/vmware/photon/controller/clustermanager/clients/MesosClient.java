@@ -15,15 +15,11 @@ package com.vmware.photon.controller.clustermanager.clients;
 
 import com.vmware.photon.controller.api.client.RestClient;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.FutureCallback;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,17 +41,12 @@ public class MesosClient {
     HOSTNAME
   };
 
-  private CloseableHttpAsyncClient httpClient;
-  private ObjectMapper objectMapper;
+  private final ClusterHttpTransport transport;
 
-  public MesosClient(CloseableHttpAsyncClient httpClient) {
-    Preconditions.checkNotNull(httpClient);
+  public MesosClient(ClusterHttpTransport transport) {
+    Preconditions.checkNotNull(transport);
 
-    this.httpClient = httpClient;
-    this.objectMapper = new ObjectMapper();
-
-    // Ignore unknown properties
-    this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    this.transport = transport;
   }
 
   /**
@@ -69,8 +60,6 @@ public class MesosClient {
       final String connectionString,
       final FutureCallback<String> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -79,9 +68,8 @@ public class MesosClient {
             final String leaderStringPrefix = "master@";
             MasterState response;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              response = objectMapper.readValue(result.getEntity().getContent(), new TypeReference<MasterState>() {
-              });
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              response = ClusterHttpTransport.getReader(MasterState.class).readValue(result.getEntity().getContent());
             } catch (Throwable e) {
               callback.onFailure(e);
               return;
@@ -107,7 +95,7 @@ public class MesosClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, MASTER_STATE_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, MASTER_STATE_PATH, null, futureCallback);
   }
 
   /**
@@ -123,8 +111,6 @@ public class MesosClient {
       final FutureCallback<Set<String>> callback,
       final NodeProperty nodeProperty) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -132,9 +118,8 @@ public class MesosClient {
 
             MasterState response;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              response = objectMapper.readValue(result.getEntity().getContent(), new TypeReference<MasterState>() {
-              });
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              response = ClusterHttpTransport.getReader(MasterState.class).readValue(result.getEntity().getContent());
             } catch (Throwable e) {
               callback.onFailure(e);
               return;
@@ -179,7 +164,7 @@ public class MesosClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, MASTER_STATE_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, MASTER_STATE_PATH, null, futureCallback);
   }
 
   /**
@@ -222,8 +207,6 @@ public class MesosClient {
       final String connectionString,
       final FutureCallback<Boolean> callback) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -243,7 +226,7 @@ public class MesosClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, MARATHON_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, MARATHON_PATH, null, futureCallback);
   }
 
   /**
@@ -15,15 +15,12 @@ package com.vmware.photon.controller.clustermanager.clients;
 
 import com.vmware.photon.controller.api.client.RestClient;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.FutureCallback;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,17 +42,12 @@ public class SwarmClient {
     HOSTNAME
   };
 
-  private CloseableHttpAsyncClient httpClient;
-  private ObjectMapper objectMapper;
+  private final ClusterHttpTransport transport;
 
-  public SwarmClient(CloseableHttpAsyncClient httpClient) {
-    Preconditions.checkNotNull(httpClient);
+  public SwarmClient(ClusterHttpTransport transport) {
+    Preconditions.checkNotNull(transport);
 
-    this.httpClient = httpClient;
-    this.objectMapper = new ObjectMapper();
-
-    // Ignore unknown properties
-    this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    this.transport = transport;
   }
 
   /**
@@ -71,8 +63,6 @@ public class SwarmClient {
       final FutureCallback<Set<String>> callback,
       final NodeProperty nodeProperty) throws IOException {
 
-    final RestClient restClient = new RestClient(connectionString, this.httpClient);
-
     org.apache.http.concurrent.FutureCallback<HttpResponse> futureCallback =
         new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
           @Override
@@ -80,8 +70,8 @@ public class SwarmClient {
 
             ArrayNode driverStatus;
             try {
-              restClient.checkResponse(result, HttpStatus.SC_OK);
-              JsonNode response = objectMapper.readTree(result.getEntity().getContent());
+              transport.checkResponse(result, HttpStatus.SC_OK);
+              JsonNode response = ClusterHttpTransport.getObjectMapper().readTree(result.getEntity().getContent());
               driverStatus = (ArrayNode) response.get("DriverStatus");
             } catch (Throwable e) {
               callback.onFailure(e);
@@ -130,7 +120,7 @@ public class SwarmClient {
           }
         };
 
-    restClient.performAsync(RestClient.Method.GET, SWARM_STATUS_PATH, null, futureCallback);
+    transport.performAsync(connectionString, RestClient.Method.GET, SWARM_STATUS_PATH, null, futureCallback);
   }
 
   /**
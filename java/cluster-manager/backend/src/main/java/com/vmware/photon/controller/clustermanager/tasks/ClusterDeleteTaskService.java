@@ -20,9 +20,11 @@ import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TombstoneService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.TombstoneServiceFactory;
+import com.vmware.photon.controller.clustermanager.clients.ClusterHttpTransport;
 import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterDeleteTask;
 import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterDeleteTask.TaskState;
 import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterManagerConstants;
+import com.vmware.photon.controller.clustermanager.templates.NodeTemplateUtils;
 import com.vmware.photon.controller.clustermanager.utils.ExceptionUtils;
 import com.vmware.photon.controller.clustermanager.utils.HostUtils;
 import com.vmware.photon.controller.common.xenon.ControlFlags;
@@ -43,8 +45,10 @@ import static com.google.common.base.Preconditions.checkState;
 import javax.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -123,7 +127,7 @@ public class ClusterDeleteTaskService extends StatefulService {
         break;
 
       case DELETE_CLUSTER_DOCUMENT:
-        deleteClusterDocument(currentState);
+        removeClusterMetrics(currentState);
         break;
 
       default:
@@ -253,6 +257,54 @@ public class ClusterDeleteTaskService extends StatefulService {
     }
   }
 
+  /**
+   * Removes the HTTP transport metrics of the cluster's endpoints, which are not called anymore once its VMs are
+   * deleted.
+   *
+   * @param currentState
+   */
+  private void removeClusterMetrics(final ClusterDeleteTask currentState) {
+
+    sendRequest(
+        HostUtils.getCloudStoreHelper(this)
+            .createGet(getClusterDocumentLink(currentState))
+            .setCompletion(
+                (Operation operation, Throwable throwable) -> {
+                  if (null != throwable) {
+                    // The metrics are only bookkeeping, so they do not hold up the deletion.
+                    ServiceUtils.logWarning(this, "Failed to get cluster %s to remove its metrics: %s",
+                        currentState.clusterId, throwable.getMessage());
+                  } else {
+                    removeEndpointMetrics(operation.getBody(ClusterService.State.class));
+                  }
+                  deleteClusterDocument(currentState);
+                }
+            ));
+  }
+
+  /**
+   * Removes the metrics of the endpoints whose addresses are recorded on the cluster, and of the endpoints which
+   * were not called for a while, which covers the nodes whose addresses are not recorded.
+   */
+  private void removeEndpointMetrics(ClusterService.State cluster) {
+    Set<String> addresses = new HashSet<>();
+    if (cluster.extendedProperties != null) {
+      for (String property : new String[]{
+          ClusterManagerConstants.EXTENDED_PROPERTY_MASTER_IP,
+          ClusterManagerConstants.EXTENDED_PROPERTY_ETCD_IPS,
+          ClusterManagerConstants.EXTENDED_PROPERTY_ZOOKEEPER_IPS}) {
+        String value = cluster.extendedProperties.get(property);
+        if (value != null && !value.isEmpty()) {
+          addresses.addAll(NodeTemplateUtils.deserializeAddressList(value));
+        }
+      }
+    }
+
+    ClusterHttpTransport transport = HostUtils.getHttpTransport(this);
+    transport.removeEndpointMetrics(addresses);
+    transport.removeIdleEndpointMetrics(ClusterHttpTransport.DEFAULT_METRICS_IDLE_MILLIS);
+  }
+
   /**
    * Deletes the Cluster service document.
    *
@@ -15,11 +15,15 @@ package com.vmware.photon.controller.clustermanager.tasks;
 import com.vmware.photon.controller.api.model.ClusterState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.ClusterServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
 import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterDeleteTask;
 import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterManagerConstants;
+import com.vmware.photon.controller.clustermanager.util.ClusterUtil;
+import com.vmware.photon.controller.clustermanager.utils.ClusterMaintenanceScheduler;
 import com.vmware.photon.controller.clustermanager.utils.HostUtils;
 import com.vmware.photon.controller.common.xenon.InitializationUtils;
 import com.vmware.photon.controller.common.xenon.PatchUtils;
+import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.TaskUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
@@ -35,15 +39,28 @@ import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.ServiceUriPaths;
 
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 
 import javax.annotation.Nullable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
  * This class implements a Xenon Service that performs periodic maintenance on a single cluster.
+ *
+ * Periodic runs are admitted by the {@link ClusterMaintenanceScheduler} of the host, which bounds how many clusters
+ * are maintained at a time. A READY cluster whose document and VM documents have not changed since the last
+ * successful run skips inspection, up to {@link State#maxSkippedRuns} times in a row.
  */
 public class ClusterMaintenanceTaskService extends StatefulService {
 
@@ -90,6 +107,11 @@ public class ClusterMaintenanceTaskService extends StatefulService {
     // we avoid race conditions related to multiple Patch calls trying to start maintenance.
     patchOperation.complete();
 
+    if (maintenanceOperation == MaintenanceOperation.SKIP) {
+      // Either the run just ended or it was not started; in both cases the slot of the cluster is free again.
+      HostUtils.getClusterMaintenanceScheduler(this).releaseRun(clusterId);
+    }
+
     try {
       switch (maintenanceOperation) {
         case RUN:
@@ -120,13 +142,16 @@ public class ClusterMaintenanceTaskService extends StatefulService {
         patchState.maintenanceIteration = currentState.maintenanceIteration + 1;
         patchState.error = "";
 
-        // recover the cluster service document state to READY in case of any previous RECOVERABLE_ERROR state
-        ClusterService.State clusterPatchState = new ClusterService.State();
-        clusterPatchState.clusterState = ClusterState.READY;
-        // cluster maintenance finished successfully, clear out any errorReason
-        clusterPatchState.errorReason = "";
+        // A skipped run only happens for a READY cluster, so there is nothing to recover.
+        if (patchState.skippedRuns == null || patchState.skippedRuns == 0) {
+          // recover the cluster service document state to READY in case of any previous RECOVERABLE_ERROR state
+          ClusterService.State clusterPatchState = new ClusterService.State();
+          clusterPatchState.clusterState = ClusterState.READY;
+          // cluster maintenance finished successfully, clear out any errorReason
+          clusterPatchState.errorReason = "";
 
-        updateStates(clusterId, clusterPatchState, null, ClusterState.READY);
+          updateStates(clusterId, clusterPatchState, null, ClusterState.READY);
+        }
 
         maintenanceOperation = MaintenanceOperation.SKIP;
       } else if (patchState.taskState.stage == TaskState.TaskStage.FAILED) {
@@ -194,8 +219,15 @@ public class ClusterMaintenanceTaskService extends StatefulService {
       // Mark the current maintenance operation as completed.
       maintenance.complete();
 
-      // Send a self-patch to kick-off cluster maintenance.
-      TaskUtils.sendSelfPatch(this, buildPatch(TaskState.TaskStage.STARTED, null));
+      // Spread the runs of the clusters over the interval and wait for a slot before sending the self-patch
+      // which kicks off cluster maintenance.
+      String clusterId = ServiceUtils.getIDFromDocumentSelfLink(getSelfLink());
+      ClusterMaintenanceScheduler scheduler = HostUtils.getClusterMaintenanceScheduler(this);
+      getHost().schedule(
+          () -> scheduler.requestRun(getHost(), clusterId,
+              () -> TaskUtils.sendSelfPatch(this, buildPatch(TaskState.TaskStage.STARTED, null))),
+          scheduler.getJitterMicros(getMaintenanceIntervalMicros()),
+          TimeUnit.MICROSECONDS);
 
     } catch (Throwable e) {
       ServiceUtils.logSevere(this, "Maintenance trigger failed with the failure: %s", e.toString());
@@ -217,6 +249,7 @@ public class ClusterMaintenanceTaskService extends StatefulService {
                     if (op.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND
                         || op.getStatusCode() == Operation.STATUS_CODE_TIMEOUT
                         || t.getClass().equals(TimeoutException.class)) {
+                      HostUtils.getClusterMaintenanceScheduler(this).releaseRun(clusterId);
                       sendRequest(Operation
                           .createDelete(UriUtils.buildUri(getHost(), getSelfLink()))
                           .setBody(new ServiceDocument())
@@ -231,11 +264,14 @@ public class ClusterMaintenanceTaskService extends StatefulService {
                   try {
                     ClusterService.State cluster = op.getBody(ClusterService.State.class);
                     switch (cluster.clusterState) {
+                      case READY:
+                        checkClusterChanges(currentState, clusterId, cluster);
+                        break;
+
                       case CREATING:
                       case RESIZING:
-                      case READY:
                       case RECOVERABLE_ERROR:
-                        performGarbageInspection(currentState, clusterId);
+                        performGarbageInspection(currentState, clusterId, null);
                         break;
 
                       case PENDING_DELETE:
@@ -258,7 +294,74 @@ public class ClusterMaintenanceTaskService extends StatefulService {
             ));
   }
 
-  private void performGarbageInspection(final State currentState, final String clusterId) {
+  /**
+   * Compares the cluster and its VM documents against the signature of the last successful run. If nothing changed
+   * the run finishes without calling the API or the cluster master.
+   */
+  private void checkClusterChanges(final State currentState,
+                                   final String clusterId,
+                                   final ClusterService.State cluster) {
+    QueryTask.Query kindClause = new QueryTask.Query()
+        .setTermPropertyName(ServiceDocument.FIELD_NAME_KIND)
+        .setTermMatchValue(Utils.buildKind(VmService.State.class));
+
+    QueryTask.Query tagClause = new QueryTask.Query()
+        .setTermPropertyName(QueryTask.QuerySpecification.buildCollectionItemName(VmService.State.FIELD_NAME_TAGS))
+        .setTermMatchValue(ClusterUtil.createClusterTag(clusterId));
+
+    QueryTask.QuerySpecification querySpecification = new QueryTask.QuerySpecification();
+    querySpecification.query.addBooleanClause(kindClause);
+    querySpecification.query.addBooleanClause(tagClause);
+    querySpecification.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+
+    sendRequest(
+        HostUtils.getCloudStoreHelper(this)
+            .createBroadcastPost(ServiceUriPaths.CORE_LOCAL_QUERY_TASKS, ServiceUriPaths.DEFAULT_NODE_SELECTOR)
+            .setBody(QueryTask.create(querySpecification).setDirect(true))
+            .setCompletion(
+                (Operation op, Throwable t) -> {
+                  if (t != null) {
+                    // The check only saves work, so fall back to a full run.
+                    ServiceUtils.logWarning(this, "Failed to query VMs of cluster %s: %s", clusterId, t.toString());
+                    performGarbageInspection(currentState, clusterId, null);
+                    return;
+                  }
+
+                  try {
+                    String signature = buildClusterSignature(cluster,
+                        QueryTaskUtils.getBroadcastQueryDocuments(VmService.State.class, op));
+
+                    if (signature.equals(currentState.clusterSignature)
+                        && currentState.skippedRuns < currentState.maxSkippedRuns) {
+                      ServiceUtils.logInfo(this, "Cluster %s has not changed since the last maintenance, " +
+                          "skipping inspection", clusterId);
+                      State patchState = buildPatch(TaskState.TaskStage.FINISHED, null);
+                      patchState.skippedRuns = currentState.skippedRuns + 1;
+                      TaskUtils.sendSelfPatch(this, patchState);
+                      return;
+                    }
+
+                    performGarbageInspection(currentState, clusterId, signature);
+                  } catch (Throwable e) {
+                    failTask(currentState, e);
+                  }
+                }
+            ));
+  }
+
+  private static String buildClusterSignature(ClusterService.State cluster, List<VmService.State> vms) {
+    Map<String, Long> vmVersions = new TreeMap<>();
+    for (VmService.State vm : vms) {
+      vmVersions.merge(vm.documentSelfLink, vm.documentVersion, Math::max);
+    }
+
+    String content = cluster.clusterType + "|" + cluster.workerCount + "|" + vmVersions;
+    return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+  }
+
+  private void performGarbageInspection(final State currentState,
+                                        final String clusterId,
+                                        @Nullable final String signature) {
     GarbageInspectionTaskService.State startState = new GarbageInspectionTaskService.State();
     startState.clusterId = clusterId;
 
@@ -274,7 +377,7 @@ public class ClusterMaintenanceTaskService extends StatefulService {
           public void onSuccess(@Nullable GarbageInspectionTaskService.State result) {
             switch (result.taskState.stage) {
               case FINISHED:
-                performGarbageCollection(currentState, clusterId);
+                performGarbageCollection(currentState, clusterId, signature);
                 break;
               case CANCELLED:
                 IllegalStateException cancelled = new IllegalStateException(String.format(
@@ -300,7 +403,9 @@ public class ClusterMaintenanceTaskService extends StatefulService {
         });
   }
 
-  private void performGarbageCollection(final State currentState, final String clusterId) {
+  private void performGarbageCollection(final State currentState,
+                                        final String clusterId,
+                                        @Nullable final String signature) {
     GarbageCollectionTaskService.State startState = new GarbageCollectionTaskService.State();
     startState.clusterId = clusterId;
 
@@ -316,7 +421,7 @@ public class ClusterMaintenanceTaskService extends StatefulService {
           public void onSuccess(@Nullable GarbageCollectionTaskService.State result) {
             switch (result.taskState.stage) {
               case FINISHED:
-                expandCluster(currentState, clusterId);
+                expandCluster(currentState, clusterId, signature);
                 break;
               case CANCELLED:
                 IllegalStateException cancelled = new IllegalStateException(String.format(
@@ -342,7 +447,7 @@ public class ClusterMaintenanceTaskService extends StatefulService {
         });
   }
 
-  private void expandCluster(final State currentState, final String clusterId) {
+  private void expandCluster(final State currentState, final String clusterId, @Nullable final String signature) {
     ClusterExpandTaskService.State startState = new ClusterExpandTaskService.State();
     startState.clusterId = clusterId;
     startState.batchExpansionSize = currentState.batchExpansionSize;
@@ -361,8 +466,11 @@ public class ClusterMaintenanceTaskService extends StatefulService {
               case FINISHED:
                 ClusterService.State clusterPatch = new ClusterService.State();
                 clusterPatch.clusterState = ClusterState.READY;
-                updateStates(clusterId, clusterPatch, buildPatch(TaskState.TaskStage.FINISHED, null),
-                    ClusterState.READY);
+                State finishedPatch = buildPatch(TaskState.TaskStage.FINISHED, null);
+                // Runs which did not start from a READY cluster leave no signature to compare against.
+                finishedPatch.clusterSignature = (signature != null) ? signature : "";
+                finishedPatch.skippedRuns = 0;
+                updateStates(clusterId, clusterPatch, finishedPatch, ClusterState.READY);
                 break;
               case CANCELLED:
                 IllegalStateException cancelled = new IllegalStateException(String.format(
@@ -530,6 +638,27 @@ public class ClusterMaintenanceTaskService extends StatefulService {
      */
     @DefaultInteger(value = 0)
     public Integer maintenanceIteration;
+
+    /**
+     * This value represents the signature of the cluster document and its VM documents taken at the start of the
+     * last successful maintenance run.
+     */
+    public String clusterSignature;
+
+    /**
+     * This value represents the number of consecutive maintenance runs which skipped inspection because the cluster
+     * had not changed.
+     */
+    @DefaultInteger(value = 0)
+    public Integer skippedRuns;
+
+    /**
+     * The maximum number of consecutive runs to skip. Failed workers are only detected by inspecting the cluster
+     * master, so a full run is made at least this often even when the documents do not change.
+     */
+    @DefaultInteger(value = ClusterManagerConstants.DEFAULT_MAX_SKIPPED_MAINTENANCE_RUNS)
+    @Immutable
+    public Integer maxSkippedRuns;
   }
 
   /**
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.clustermanager.utils;
+
+import com.vmware.photon.controller.clustermanager.servicedocuments.ClusterManagerConstants;
+import com.vmware.xenon.common.ServiceHost;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class admits the periodic cluster maintenance runs of a host under a per-host budget.
+ *
+ * Each cluster has its own maintenance task and each run calls the API and the cluster master, so with many clusters
+ * the runs would line up and flood both. Runs are therefore spread with a random jitter, at most
+ * {@code maxConcurrentRuns} are in flight at a time, and runs are started no more often than
+ * {@code maxRunsPerMinute}. Requests over budget wait in FIFO order. A run which is not released within
+ * {@code runTimeoutMicros}, e.g. because its task moved to another node, gives its slot back when its timeout fires.
+ *
+ * The budget is not global: each cluster manager host has its own scheduler for the maintenance tasks it owns, so a
+ * node group of N hosts runs up to N times {@code maxConcurrentRuns} at a time, at up to N times the rate. The
+ * tasks are spread over the hosts by owner selection, which keeps the load of each host, and of the API it calls,
+ * bounded by the number of hosts rather than by the number of clusters.
+ */
+public class ClusterMaintenanceScheduler {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClusterMaintenanceScheduler.class);
+
+  private final int maxConcurrentRuns;
+  private final long startSpacingNanos;
+  private final double jitterFraction;
+  private final long runTimeoutNanos;
+
+  private final Map<String, Runnable> waitingRuns = new LinkedHashMap<>();
+  private final Map<String, Long> runningRuns = new HashMap<>();
+  private long nextStartNanos;
+  private boolean dispatchScheduled;
+  private ServiceHost host;
+
+  public ClusterMaintenanceScheduler() {
+    this(ClusterManagerConstants.DEFAULT_MAINTENANCE_MAX_CONCURRENT_RUNS,
+        ClusterManagerConstants.DEFAULT_MAINTENANCE_MAX_RUNS_PER_MINUTE,
+        ClusterManagerConstants.DEFAULT_MAINTENANCE_JITTER_FRACTION,
+        ClusterManagerConstants.DEFAULT_MAINTENANCE_RUN_TIMEOUT);
+  }
+
+  public ClusterMaintenanceScheduler(int maxConcurrentRuns,
+                                     int maxRunsPerMinute,
+                                     double jitterFraction,
+                                     long runTimeoutMicros) {
+    if (maxConcurrentRuns <= 0 || maxRunsPerMinute <= 0) {
+      throw new IllegalArgumentException("maxConcurrentRuns and maxRunsPerMinute must be greater than zero");
+    }
+
+    this.maxConcurrentRuns = maxConcurrentRuns;
+    this.startSpacingNanos = TimeUnit.MINUTES.toNanos(1) / maxRunsPerMinute;
+    this.jitterFraction = jitterFraction;
+    this.runTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(runTimeoutMicros);
+    this.nextStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns a random delay to apply to a periodic trigger so that clusters created together do not run together.
+   */
+  public long getJitterMicros(long maintenanceIntervalMicros) {
+    long bound = (long) (maintenanceIntervalMicros * jitterFraction);
+    return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+  }
+
+  /**
+   * Queues a maintenance run for the cluster. The run is started on the host once there is budget for it; a request
+   * for a cluster which is already waiting or running is ignored.
+   */
+  public synchronized void requestRun(ServiceHost host, String clusterId, Runnable run) {
+    this.host = host;
+    if (runningRuns.containsKey(clusterId) || waitingRuns.containsKey(clusterId)) {
+      logger.info("Maintenance of cluster {} is already waiting or running", clusterId);
+      return;
+    }
+
+    waitingRuns.put(clusterId, run);
+    dispatch();
+  }
+
+  /**
+   * Gives back the slot of the cluster's maintenance run. Releasing a cluster which holds no slot has no effect, which
+   * is the case for runs started directly rather than through {@link #requestRun}.
+   */
+  public synchronized void releaseRun(String clusterId) {
+    if (runningRuns.remove(clusterId) != null) {
+      dispatch();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getRunningCount() {
+    return runningRuns.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getWaitingCount() {
+    return waitingRuns.size();
+  }
+
+  private void dispatch() {
+    long now = System.nanoTime();
+    while (!waitingRuns.isEmpty() && runningRuns.size() < maxConcurrentRuns) {
+      if (now - nextStartNanos < 0) {
+        scheduleDispatch(nextStartNanos - now);
+        return;
+      }
+
+      Iterator<Map.Entry<String, Runnable>> iterator = waitingRuns.entrySet().iterator();
+      Map.Entry<String, Runnable> next = iterator.next();
+      iterator.remove();
+
+      String clusterId = next.getKey();
+      long startNanos = now;
+      runningRuns.put(clusterId, startNanos);
+      nextStartNanos = now + startSpacingNanos;
+      host.schedule(() -> reclaimRun(clusterId, startNanos), runTimeoutNanos, TimeUnit.NANOSECONDS);
+      host.run(next.getValue());
+    }
+  }
+
+  /**
+   * Gives back the slot of a run which was not released within the run timeout, unless the slot was released and
+   * taken again by a later run of the cluster in the meantime.
+   */
+  private synchronized void reclaimRun(String clusterId, long startNanos) {
+    Long runningSinceNanos = runningRuns.get(clusterId);
+    if (runningSinceNanos == null || runningSinceNanos != startNanos) {
+      return;
+    }
+
+    logger.warn("Maintenance of cluster {} was not released in time, giving back its slot", clusterId);
+    runningRuns.remove(clusterId);
+    dispatch();
+  }
+
+  private void scheduleDispatch(long delayNanos) {
+    if (dispatchScheduled) {
+      return;
+    }
+
+    dispatchScheduled = true;
+    host.schedule(() -> {
+      synchronized (ClusterMaintenanceScheduler.this) {
+        dispatchScheduled = false;
+        dispatch();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -16,6 +16,7 @@ package com.vmware.photon.controller.clustermanager.utils;
 import com.vmware.photon.controller.api.client.ApiClient;
 import com.vmware.photon.controller.clustermanager.ClusterManagerFactory;
 import com.vmware.photon.controller.clustermanager.ClusterManagerFactoryProvider;
+import com.vmware.photon.controller.clustermanager.clients.ClusterHttpTransport;
 import com.vmware.photon.controller.clustermanager.clients.EtcdClient;
 import com.vmware.photon.controller.clustermanager.clients.HarborClient;
 import com.vmware.photon.controller.clustermanager.clients.KubernetesClient;
@@ -56,10 +57,18 @@ public class HostUtils {
     return getClusterManagerFactory(service).createHarborClient();
   }
 
+  public static ClusterHttpTransport getHttpTransport(Service service) {
+    return getClusterManagerFactory(service).getHttpTransportInstance();
+  }
+
   public static ListeningExecutorService getListeningExecutorService(Service service) {
     return getClusterManagerFactory(service).getListeningExecutorServiceInstance();
   }
 
+  public static ClusterMaintenanceScheduler getClusterMaintenanceScheduler(Service service) {
+    return getClusterManagerFactory(service).getClusterMaintenanceSchedulerInstance();
+  }
+
   public static CloudStoreHelper getCloudStoreHelper(Service service) {
     CloudStoreHelper cloudStoreHelper = getClusterManagerFactory(service).createCloudStoreHelper();
     cloudStoreHelper.setRefererUri(service.getHost().getUri());
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.clustermanager.clients;
+
+import com.vmware.photon.controller.api.client.RestClient;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests {@link ClusterHttpTransport}.
+ */
+public class ClusterHttpTransportTest {
+  private static final String CONNECTION_STRING = "http://10.146.22.40:2379";
+
+  private MetricRegistry metricRegistry;
+
+  @BeforeMethod
+  public void setUp() {
+    metricRegistry = new MetricRegistry();
+  }
+
+  @Test
+  public void testReadersAreShared() {
+    assertThat(ClusterHttpTransport.getReader(KubernetesClient.Nodes.class),
+        sameInstance(ClusterHttpTransport.getReader(KubernetesClient.Nodes.class)));
+  }
+
+  @Test
+  public void testMetricName() {
+    assertThat(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "latency"),
+        is(ClusterHttpTransport.class.getName() + ".endpoints.10_146_22_40_2379.latency"));
+    assertThat(ClusterHttpTransport.getMetricName("http://master", "latency"),
+        is(ClusterHttpTransport.class.getName() + ".endpoints.master.latency"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRequestIsSentToEndpoint() throws Throwable {
+    CloseableHttpAsyncClient asyncHttpClient = HttpClientTestUtil.setupMocks("", HttpStatus.SC_OK);
+    ClusterHttpTransport transport = new ClusterHttpTransport(asyncHttpClient, metricRegistry);
+
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.POST, "/v2/keys", new StringEntity("{}"),
+        new RecordingCallback(1));
+
+    ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+    Mockito.verify(asyncHttpClient).execute(request.capture(), Matchers.any(BasicHttpContext.class),
+        Matchers.any(FutureCallback.class));
+    assertThat(request.getValue(), instanceOf(HttpPost.class));
+    assertThat(request.getValue().getURI().toString(), is(CONNECTION_STRING + "/v2/keys"));
+  }
+
+  @Test
+  public void testLatencyAndErrorResponsesAreRecorded() throws Throwable {
+    ClusterHttpTransport transport = new ClusterHttpTransport(
+        HttpClientTestUtil.setupMocks("", HttpStatus.SC_SERVICE_UNAVAILABLE), metricRegistry);
+
+    RecordingCallback callback = new RecordingCallback(2);
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.GET, "/", null, callback);
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.GET, "/", null, callback);
+
+    assertThat(callback.latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(metricRegistry.timer(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "latency")).getCount(),
+        is(2L));
+    assertThat(metricRegistry.meter(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "errorResponses"))
+        .getCount(), is(2L));
+    assertThat(metricRegistry.meter(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "failures")).getCount(),
+        is(0L));
+  }
+
+  @Test
+  public void testFailuresAreRecorded() throws Throwable {
+    ClusterHttpTransport transport = new ClusterHttpTransport(
+        HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing")), metricRegistry);
+
+    RecordingCallback callback = new RecordingCallback(1);
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.GET, "/", null, callback);
+
+    assertThat(callback.latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(callback.failure, instanceOf(SocketException.class));
+    assertThat(metricRegistry.timer(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "latency")).getCount(),
+        is(1L));
+    assertThat(metricRegistry.meter(ClusterHttpTransport.getMetricName(CONNECTION_STRING, "failures")).getCount(),
+        is(1L));
+  }
+
+  @Test
+  public void testEndpointMetricsAreRemoved() throws Throwable {
+    ClusterHttpTransport transport = new ClusterHttpTransport(
+        HttpClientTestUtil.setupMocks("", HttpStatus.SC_OK), metricRegistry);
+    String otherConnectionString = "http://10.146.22.41:8080";
+
+    RecordingCallback callback = new RecordingCallback(3);
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.GET, "/", null, callback);
+    transport.performAsync("http://10.146.22.40:4001", RestClient.Method.GET, "/", null, callback);
+    transport.performAsync(otherConnectionString, RestClient.Method.GET, "/", null, callback);
+    assertThat(callback.latch.await(10, TimeUnit.SECONDS), is(true));
+
+    transport.removeEndpointMetrics(Arrays.asList("10.146.22.40"));
+
+    assertThat(metricRegistry.getNames().size(), is(3));
+    assertThat(metricRegistry.getNames().first(),
+        is(ClusterHttpTransport.getMetricName(otherConnectionString, "errorResponses")));
+
+    transport.removeIdleEndpointMetrics(0);
+    assertThat(metricRegistry.getNames(), is(empty()));
+  }
+
+  @Test
+  public void testActiveEndpointMetricsAreKept() throws Throwable {
+    ClusterHttpTransport transport = new ClusterHttpTransport(
+        HttpClientTestUtil.setupMocks("", HttpStatus.SC_OK), metricRegistry);
+
+    RecordingCallback callback = new RecordingCallback(1);
+    transport.performAsync(CONNECTION_STRING, RestClient.Method.GET, "/", null, callback);
+    assertThat(callback.latch.await(10, TimeUnit.SECONDS), is(true));
+
+    transport.removeIdleEndpointMetrics(TimeUnit.HOURS.toMillis(1));
+    assertThat(metricRegistry.getNames().size(), is(3));
+  }
+
+  @Test(expectedExceptions = RuntimeException.class,
+      expectedExceptionsMessageRegExp = "HTTP request failed with: 503.*")
+  public void testCheckResponse() throws IOException {
+    ClusterHttpTransport transport = new ClusterHttpTransport(Mockito.mock(CloseableHttpAsyncClient.class));
+    HttpResponse response = Mockito.mock(HttpResponse.class, Mockito.RETURNS_DEEP_STUBS);
+    Mockito.when(response.getStatusLine().getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+    Mockito.when(response.getEntity()).thenReturn(null);
+
+    transport.checkResponse(response, HttpStatus.SC_OK);
+  }
+
+  /**
+   * Records the outcome of a request.
+   */
+  private static class RecordingCallback implements FutureCallback<HttpResponse> {
+    private final CountDownLatch latch;
+    private volatile Exception failure;
+
+    private RecordingCallback(int expectedCalls) {
+      this.latch = new CountDownLatch(expectedCalls);
+    }
+
+    @Override
+    public void completed(HttpResponse result) {
+      latch.countDown();
+    }
+
+    @Override
+    public void failed(Exception ex) {
+      failure = ex;
+      latch.countDown();
+    }
+
+    @Override
+    public void cancelled() {
+      latch.countDown();
+    }
+  }
+}
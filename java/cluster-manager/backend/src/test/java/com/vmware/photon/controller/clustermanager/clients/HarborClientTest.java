@@ -49,7 +49,7 @@ public class HarborClientTest {
     @Test
     public void testCheckStatusSuccess() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocks("", HttpStatus.SC_OK);
-      HarborClient client = new HarborClient(asyncHttpClient);
+      HarborClient client = new HarborClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.checkStatus(CONNECTION_STRING, new FutureCallback<Boolean>() {
@@ -72,7 +72,7 @@ public class HarborClientTest {
     @Test
     public void testCheckStatusFailure() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      HarborClient client = new HarborClient(asyncHttpClient);
+      HarborClient client = new HarborClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.checkStatus(CONNECTION_STRING, new FutureCallback<Boolean>() {
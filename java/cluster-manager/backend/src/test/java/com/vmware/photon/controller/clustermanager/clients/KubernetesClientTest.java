@@ -61,7 +61,7 @@ public class KubernetesClientTest {
           KubernetesClientTest.class.getResource("/kubernetes_cluster.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      KubernetesClient client = new KubernetesClient(asyncHttpClient);
+      KubernetesClient client = new KubernetesClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -86,7 +86,7 @@ public class KubernetesClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      KubernetesClient client = new KubernetesClient(asyncHttpClient);
+      KubernetesClient client = new KubernetesClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -124,7 +124,7 @@ public class KubernetesClientTest {
           KubernetesClientTest.class.getResource("/kubernetes_cluster.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      KubernetesClient client = new KubernetesClient(asyncHttpClient);
+      KubernetesClient client = new KubernetesClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getAvailableNodeNamesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -163,7 +163,7 @@ public class KubernetesClientTest {
           KubernetesClientTest.class.getResource("/kubernetes_version.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      KubernetesClient client = new KubernetesClient(asyncHttpClient);
+      KubernetesClient client = new KubernetesClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getVersionAsync(CONNECTION_STRING, new FutureCallback<String>() {
@@ -188,7 +188,7 @@ public class KubernetesClientTest {
       String clusterJson = Resources.toString(
           KubernetesClientTest.class.getResource("/kubernetes_version_null.json"), Charsets.UTF_8);
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      KubernetesClient client = new KubernetesClient(asyncHttpClient);
+      KubernetesClient client = new KubernetesClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getVersionAsync(CONNECTION_STRING, new FutureCallback<String>() {
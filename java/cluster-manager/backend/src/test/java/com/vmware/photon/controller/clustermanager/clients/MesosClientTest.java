@@ -59,7 +59,7 @@ public class MesosClientTest {
           MesosClientTest.class.getResource("/mesos_master_state.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getMasterLeader(CONNECTION_STRING, new FutureCallback<String>() {
@@ -82,7 +82,7 @@ public class MesosClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getMasterLeader(CONNECTION_STRING, new FutureCallback<String>() {
@@ -119,7 +119,7 @@ public class MesosClientTest {
           MesosClientTest.class.getResource("/mesos_master_state.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -144,7 +144,7 @@ public class MesosClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -183,7 +183,7 @@ public class MesosClientTest {
           MesosClientTest.class.getResource("/mesos_master_state.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeNamesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -208,7 +208,7 @@ public class MesosClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeNamesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -239,7 +239,7 @@ public class MesosClientTest {
     @Test
     public void testSuccess() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocks("", HttpStatus.SC_OK);
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.checkMarathon(CONNECTION_STRING, new FutureCallback<Boolean>() {
@@ -262,7 +262,7 @@ public class MesosClientTest {
     @Test
     public void testFail() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocks("", HttpStatus.SC_BAD_REQUEST);
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.checkMarathon(CONNECTION_STRING, new FutureCallback<Boolean>() {
@@ -285,7 +285,7 @@ public class MesosClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      MesosClient client = new MesosClient(asyncHttpClient);
+      MesosClient client = new MesosClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.checkMarathon(CONNECTION_STRING, new FutureCallback<Boolean>() {
@@ -59,7 +59,7 @@ public class SwarmClientTest {
       String clusterJson = Resources.toString(
           SwarmClientTest.class.getResource("/swarm_cluster.json"), Charsets.UTF_8);
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      SwarmClient client = new SwarmClient(asyncHttpClient);
+      SwarmClient client = new SwarmClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -84,7 +84,7 @@ public class SwarmClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      SwarmClient client = new SwarmClient(asyncHttpClient);
+      SwarmClient client = new SwarmClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeAddressesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -122,7 +122,7 @@ public class SwarmClientTest {
           SwarmClientTest.class.getResource("/swarm_cluster.json"), Charsets.UTF_8);
 
       asyncHttpClient = HttpClientTestUtil.setupMocks(clusterJson, HttpStatus.SC_OK);
-      SwarmClient client = new SwarmClient(asyncHttpClient);
+      SwarmClient client = new SwarmClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeNamesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
@@ -147,7 +147,7 @@ public class SwarmClientTest {
     @Test
     public void testWithoutIgnoringConnectionFailures() throws IOException, InterruptedException {
       asyncHttpClient = HttpClientTestUtil.setupMocksToThrowInCallback(new SocketException("testing"));
-      SwarmClient client = new SwarmClient(asyncHttpClient);
+      SwarmClient client = new SwarmClient(new ClusterHttpTransport(asyncHttpClient));
 
       final CountDownLatch latch = new CountDownLatch(1);
       client.getNodeNamesAsync(CONNECTION_STRING, new FutureCallback<Set<String>>() {
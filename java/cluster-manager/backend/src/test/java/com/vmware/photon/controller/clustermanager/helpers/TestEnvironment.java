@@ -16,12 +16,14 @@ package com.vmware.photon.controller.clustermanager.helpers;
 import com.vmware.photon.controller.api.client.ApiClient;
 import com.vmware.photon.controller.clustermanager.ClusterManagerFactory;
 import com.vmware.photon.controller.clustermanager.ClusterManagerTestServiceGroup;
+import com.vmware.photon.controller.clustermanager.clients.ClusterHttpTransport;
 import com.vmware.photon.controller.clustermanager.clients.EtcdClient;
 import com.vmware.photon.controller.clustermanager.clients.HarborClient;
 import com.vmware.photon.controller.clustermanager.clients.KubernetesClient;
 import com.vmware.photon.controller.clustermanager.clients.MesosClient;
 import com.vmware.photon.controller.clustermanager.clients.SwarmClient;
 import com.vmware.photon.controller.clustermanager.statuschecks.StatusCheckHelper;
+import com.vmware.photon.controller.clustermanager.utils.ClusterMaintenanceScheduler;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
 import com.vmware.photon.controller.common.clients.HostClientFactory;
 import com.vmware.photon.controller.common.thrift.ServerSet;
@@ -32,7 +34,9 @@ import com.vmware.photon.controller.common.xenon.host.XenonConfig;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceStateBuilder;
 import com.vmware.photon.controller.nsxclient.NsxClientFactory;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.mockito.Matchers.anyObject;
@@ -210,6 +214,10 @@ public class TestEnvironment extends MultiHostEnvironment<PhotonControllerXenonH
         doReturn(this.statusCheckHelper).when(clusterManagerFactory).createStatusCheckHelper();
       }
 
+      doReturn(new ClusterMaintenanceScheduler()).when(clusterManagerFactory).getClusterMaintenanceSchedulerInstance();
+      doReturn(new ClusterHttpTransport(mock(CloseableHttpAsyncClient.class), new MetricRegistry()))
+          .when(clusterManagerFactory).getHttpTransportInstance();
+
       TestEnvironment environment = new TestEnvironment(hostCount, clusterManagerFactory);
       environment.start();
       return environment;
@@ -429,6 +429,24 @@ public class ClusterMaintenanceTaskServiceTest {
       };
     }
 
+    @Test
+    public void testSkipInspectionForUnchangedCluster() throws Throwable {
+      mockVmProvision(true);
+      mockVmDelete(true);
+      mockGetClusterVms(5, false, true);
+      mockCluster(5, ClusterState.READY);
+
+      ClusterMaintenanceTaskService.State maintenanceTask = startMaintenance();
+      assertThat(maintenanceTask.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(maintenanceTask.skippedRuns, is(0));
+      assertThat(maintenanceTask.clusterSignature, notNullValue());
+
+      // Neither the cluster nor its VM documents changed, so the next run does not inspect the cluster.
+      maintenanceTask = restartMaintenance(maintenanceTask);
+      assertThat(maintenanceTask.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(maintenanceTask.skippedRuns, is(1));
+    }
+
     @Test
     public void testClusterStateFatalError() throws Throwable {
       mockVmProvision(true);
@@ -613,6 +631,22 @@ public class ClusterMaintenanceTaskServiceTest {
           });
     }
 
+    private ClusterMaintenanceTaskService.State restartMaintenance(ClusterMaintenanceTaskService.State taskState)
+        throws Throwable {
+      int maintenanceIteration = taskState.maintenanceIteration;
+
+      ClusterMaintenanceTaskService.State patchState = new ClusterMaintenanceTaskService.State();
+      patchState.taskState = new TaskState();
+      patchState.taskState.stage = TaskState.TaskStage.STARTED;
+      Operation patchOp = machine.sendPatchAndWait(taskState.documentSelfLink, patchState);
+      assertThat(patchOp.getStatusCode(), is(200));
+
+      return machine.waitForServiceState(
+          ClusterMaintenanceTaskService.State.class,
+          taskState.documentSelfLink,
+          (ClusterMaintenanceTaskService.State state) -> state.maintenanceIteration > maintenanceIteration);
+    }
+
     private void mockCluster(int workerCount, ClusterState clusterState) throws Throwable {
       ClusterService.State cluster = ReflectionUtils.buildValidStartState(ClusterService.State.class);
       cluster.workerCount = workerCount;
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.clustermanager.utils;
+
+import com.vmware.xenon.common.ServiceHost;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements tests for the {@link ClusterMaintenanceScheduler} class.
+ */
+public class ClusterMaintenanceSchedulerTest {
+
+  private ServiceHost host;
+  private List<String> startedRuns;
+  private List<Runnable> scheduledTasks;
+
+  @BeforeMethod
+  public void setUp() {
+    host = mock(ServiceHost.class);
+    doAnswer(invocation -> {
+      ((Runnable) invocation.getArguments()[0]).run();
+      return null;
+    }).when(host).run(any(Runnable.class));
+    scheduledTasks = new ArrayList<>();
+    doAnswer(invocation -> {
+      scheduledTasks.add((Runnable) invocation.getArguments()[0]);
+      return null;
+    }).when(host).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+    startedRuns = new ArrayList<>();
+  }
+
+  @Test
+  public void testConcurrencyLimit() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(2, Integer.MAX_VALUE, 0.0, TimeUnit.HOURS.toMicros(1));
+
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c2");
+    requestRun(scheduler, "c3");
+
+    assertThat(startedRuns, contains("c1", "c2"));
+    assertThat(scheduler.getRunningCount(), is(2));
+    assertThat(scheduler.getWaitingCount(), is(1));
+
+    scheduler.releaseRun("c1");
+    assertThat(startedRuns, contains("c1", "c2", "c3"));
+    assertThat(scheduler.getWaitingCount(), is(0));
+  }
+
+  @Test
+  public void testDuplicateRequestIsIgnored() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(1, Integer.MAX_VALUE, 0.0, TimeUnit.HOURS.toMicros(1));
+
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c2");
+    requestRun(scheduler, "c2");
+
+    assertThat(startedRuns, contains("c1"));
+    assertThat(scheduler.getWaitingCount(), is(1));
+  }
+
+  @Test
+  public void testReleaseOfUnknownClusterIsIgnored() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(1, Integer.MAX_VALUE, 0.0, TimeUnit.HOURS.toMicros(1));
+
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c2");
+    scheduler.releaseRun("c3");
+
+    assertThat(startedRuns, contains("c1"));
+    assertThat(scheduler.getRunningCount(), is(1));
+  }
+
+  @Test
+  public void testRateLimitDefersStart() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(10, 1, 0.0, TimeUnit.HOURS.toMicros(1));
+
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c2");
+    requestRun(scheduler, "c3");
+
+    assertThat(startedRuns, contains("c1"));
+    // The timeout of the started run, and a single dispatch for when the next run may start.
+    verify(host, times(1)).schedule(any(Runnable.class), eq(TimeUnit.HOURS.toNanos(1)), eq(TimeUnit.NANOSECONDS));
+    verify(host, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void testTimedOutRunIsReclaimed() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(1, Integer.MAX_VALUE, 0.0, TimeUnit.MINUTES.toMicros(45));
+
+    requestRun(scheduler, "c1");
+    requestRun(scheduler, "c2");
+    assertThat(startedRuns, contains("c1"));
+    verify(host).schedule(any(Runnable.class), eq(TimeUnit.MINUTES.toNanos(45)), eq(TimeUnit.NANOSECONDS));
+
+    // The timeout fires without any other request, and the waiting run takes the slot.
+    scheduledTasks.get(0).run();
+    assertThat(startedRuns, contains("c1", "c2"));
+    assertThat(scheduler.getRunningCount(), is(1));
+    assertThat(scheduler.getWaitingCount(), is(0));
+  }
+
+  @Test
+  public void testTimeoutOfReleasedRunIsIgnored() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(1, Integer.MAX_VALUE, 0.0, TimeUnit.HOURS.toMicros(1));
+
+    requestRun(scheduler, "c1");
+    scheduler.releaseRun("c1");
+    requestRun(scheduler, "c2");
+
+    scheduledTasks.get(0).run();
+    assertThat(startedRuns, contains("c1", "c2"));
+    assertThat(scheduler.getRunningCount(), is(1));
+  }
+
+  @Test
+  public void testJitter() {
+    ClusterMaintenanceScheduler scheduler =
+        new ClusterMaintenanceScheduler(1, 1, 0.5, TimeUnit.HOURS.toMicros(1));
+
+    for (int i = 0; i < 100; i++) {
+      long jitter = scheduler.getJitterMicros(1000);
+      assertThat(jitter, greaterThanOrEqualTo(0L));
+      assertThat(jitter, lessThan(500L));
+    }
+
+    assertThat(new ClusterMaintenanceScheduler(1, 1, 0.0, 1).getJitterMicros(1000), is(0L));
+  }
+
+  private void requestRun(ClusterMaintenanceScheduler scheduler, String clusterId) {
+    scheduler.requestRun(host, clusterId, () -> startedRuns.add(clusterId));
+  }
+}
@@ -50,6 +50,12 @@ public class ClusterManagerConstants {
   public static final String KUBECTLEXE                                 = "kubectl.exe";
 
   public static final long DEFAULT_MAINTENANCE_INTERVAL = TimeUnit.HOURS.toMicros(1);
+  public static final int DEFAULT_MAINTENANCE_MAX_CONCURRENT_RUNS = 4;
+  public static final int DEFAULT_MAINTENANCE_MAX_RUNS_PER_MINUTE = 20;
+  public static final double DEFAULT_MAINTENANCE_JITTER_FRACTION = 0.25;
+  // Kept below DEFAULT_MAINTENANCE_INTERVAL so that a lost run does not hold its slot through the next interval.
+  public static final long DEFAULT_MAINTENANCE_RUN_TIMEOUT = TimeUnit.MINUTES.toMicros(45);
+  public static final int DEFAULT_MAX_SKIPPED_MAINTENANCE_RUNS = 3;
   public static final int DEFAULT_TASK_POLL_DELAY = 1000;
   public static final int SCRIPT_TIMEOUT_IN_SECONDS = 600;
 
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon;
+
+import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
+import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
+import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
+import com.vmware.photon.controller.common.xenon.validation.DefaultString;
+import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
+import com.vmware.photon.controller.common.xenon.validation.DefaultUuid;
+import com.vmware.photon.controller.common.xenon.validation.Immutable;
+import com.vmware.photon.controller.common.xenon.validation.NotBlank;
+import com.vmware.photon.controller.common.xenon.validation.NotEmpty;
+import com.vmware.photon.controller.common.xenon.validation.NotNull;
+import com.vmware.photon.controller.common.xenon.validation.Positive;
+import com.vmware.photon.controller.common.xenon.validation.Range;
+import com.vmware.photon.controller.common.xenon.validation.WriteOnce;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.TaskState;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ValidationUtils}, {@link InitializationUtils} and {@link PatchUtils}, which run off the cached
+ * per-class plan, with the reflective path they used before, which walks the declared fields and annotations of the
+ * document on every call. The reflective path is kept here as the baseline. Run with {@code ../gradlew jmh} from the
+ * common-xenon directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(4)
+@Fork(1)
+public class ServiceDocumentPlanBenchmark {
+
+  private static final List<Class<? extends Annotation>> VALIDATE_STATE_ORDER = ImmutableList.of(
+      NotNull.class, Positive.class, NotBlank.class, NotEmpty.class, Range.class);
+
+  private static final List<Class<? extends Annotation>> INITIALIZE_ORDER = ImmutableList.of(
+      DefaultBoolean.class, DefaultInteger.class, DefaultUuid.class, DefaultTaskState.class, DefaultString.class,
+      DefaultLong.class);
+
+  private Document startState;
+  private Document patchState;
+
+  @Setup
+  public void setUp() {
+    startState = new Document();
+    startState.taskState = new TaskState();
+    startState.taskState.stage = TaskState.TaskStage.STARTED;
+    startState.name = "name";
+    startState.parentLink = "/parent";
+    startState.count = 5;
+    startState.pollInterval = 10;
+    startState.retries = 1;
+    startState.tags = "tags";
+
+    patchState = new Document();
+    patchState.taskState = new TaskState();
+    patchState.taskState.stage = TaskState.TaskStage.FINISHED;
+    patchState.retries = 2;
+  }
+
+  @Benchmark
+  public Document validateStateReflective() {
+    reflectiveValidateState(startState);
+    return startState;
+  }
+
+  @Benchmark
+  public Document validateStatePlan() {
+    ValidationUtils.validateState(startState);
+    return startState;
+  }
+
+  @Benchmark
+  public Document validatePatchReflective() {
+    reflectiveValidatePatch(startState, patchState);
+    return patchState;
+  }
+
+  @Benchmark
+  public Document validatePatchPlan() {
+    ValidationUtils.validatePatch(startState, patchState);
+    return patchState;
+  }
+
+  @Benchmark
+  public Document initializeReflective() {
+    Document state = new Document();
+    reflectiveInitialize(state);
+    return state;
+  }
+
+  @Benchmark
+  public Document initializePlan() {
+    Document state = new Document();
+    InitializationUtils.initialize(state);
+    return state;
+  }
+
+  @Benchmark
+  public Document patchStateReflective() {
+    Document state = new Document();
+    reflectivePatchState(state, startState);
+    return state;
+  }
+
+  @Benchmark
+  public Document patchStatePlan() {
+    Document state = new Document();
+    PatchUtils.patchState(state, startState);
+    return state;
+  }
+
+  private static void reflectiveValidateState(ServiceDocument state) {
+    try {
+      for (Class<? extends Annotation> annotationType : VALIDATE_STATE_ORDER) {
+        for (Field field : state.getClass().getDeclaredFields()) {
+          for (Annotation annotation : field.getDeclaredAnnotations()) {
+            if (annotation.annotationType() != annotationType) {
+              continue;
+            }
+
+            Object value = field.get(state);
+            if (annotationType == Range.class) {
+              long min = ((Range) annotation).min();
+              long max = ((Range) annotation).max();
+              checkState(value == null || (((Number) value).longValue() >= min && ((Number) value).longValue() <= max),
+                  String.format("%s is not within range %d, %d", field.getName(), min, max));
+            } else if (annotationType == Positive.class) {
+              checkState(null == value || 0 < ((Number) value).longValue(),
+                  String.format("%s must be greater than zero", field.getName()));
+            } else if (annotationType == NotBlank.class) {
+              checkState(StringUtils.isNotBlank((String) value), String.format("%s cannot be blank", field.getName()));
+            } else {
+              checkState(null != value, String.format("%s cannot be null", field.getName()));
+            }
+          }
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void reflectiveValidatePatch(ServiceDocument startState, ServiceDocument patchState) {
+    try {
+      for (Field field : patchState.getClass().getDeclaredFields()) {
+        for (Annotation annotation : field.getDeclaredAnnotations()) {
+          if (annotation.annotationType() == Immutable.class) {
+            checkState(null == field.get(patchState), String.format("%s is immutable", field.getName()));
+          }
+        }
+      }
+
+      for (Field field : startState.getClass().getDeclaredFields()) {
+        for (Annotation annotation : field.getDeclaredAnnotations()) {
+          if (annotation.annotationType() == WriteOnce.class && null != field.get(patchState)) {
+            checkState(null == field.get(startState),
+                String.format("%s cannot be set or changed in a patch", field.getName()));
+          }
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void reflectiveInitialize(ServiceDocument state) {
+    try {
+      for (Class<? extends Annotation> annotationType : INITIALIZE_ORDER) {
+        for (Field field : state.getClass().getDeclaredFields()) {
+          if (field.get(state) != null) {
+            continue;
+          }
+
+          for (Annotation annotation : field.getDeclaredAnnotations()) {
+            if (annotation.annotationType() != annotationType) {
+              continue;
+            }
+
+            if (annotationType == DefaultInteger.class) {
+              field.set(state, new Integer(((DefaultInteger) annotation).value()));
+            } else if (annotationType == DefaultUuid.class) {
+              field.set(state, UUID.randomUUID().toString());
+            } else if (annotationType == DefaultTaskState.class) {
+              TaskState defaultState = (TaskState) field.getType().newInstance();
+              defaultState.stage = ((DefaultTaskState) annotation).value();
+              field.set(state, defaultState);
+            }
+          }
+        }
+      }
+    } catch (IllegalAccessException | InstantiationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void reflectivePatchState(ServiceDocument currentState, ServiceDocument patchState) {
+    try {
+      for (Field patchStateField : patchState.getClass().getDeclaredFields()) {
+        if (Modifier.isStatic(patchStateField.getModifiers())) {
+          continue;
+        }
+
+        boolean immutableField = false;
+        for (Annotation annotation : patchStateField.getDeclaredAnnotations()) {
+          if (annotation.annotationType() == Immutable.class) {
+            immutableField = true;
+            break;
+          }
+        }
+
+        if (!immutableField && null != patchStateField.get(patchState)) {
+          Field currentStateField = currentState.getClass().getField(patchStateField.getName());
+          currentStateField.set(currentState, patchStateField.get(patchState));
+        }
+      }
+    } catch (IllegalAccessException | NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Sample task document, shaped like the task service states in the tree.
+   */
+  public static class Document extends ServiceDocument {
+
+    public static final String FIELD_NAME_TASK_STATE = "taskState";
+
+    @NotNull
+    @DefaultTaskState(value = TaskState.TaskStage.CREATED)
+    public TaskState taskState;
+
+    @NotBlank
+    @Immutable
+    public String name;
+
+    @NotNull
+    @Immutable
+    public String parentLink;
+
+    @Positive
+    @Range(min = 1, max = 100)
+    @Immutable
+    public Integer count;
+
+    @Positive
+    @DefaultInteger(value = 10)
+    @Immutable
+    public Integer pollInterval;
+
+    @DefaultInteger(value = 0)
+    public Integer retries;
+
+    @DefaultUuid
+    @Immutable
+    public String operationId;
+
+    @WriteOnce
+    public String tags;
+
+    public List<String> results;
+  }
+}
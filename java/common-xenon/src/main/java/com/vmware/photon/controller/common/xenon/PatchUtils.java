@@ -13,12 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon;
 
-import com.vmware.photon.controller.common.xenon.validation.Immutable;
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 
 /**
  * This class implements utilities for Xenon patching actions.
@@ -27,23 +25,14 @@ public class PatchUtils {
 
   public static <T extends ServiceDocument> void patchState(T currentState, T patchState) {
     try {
-      Field[] patchStateDeclaredFields = patchState.getClass().getDeclaredFields();
-      for (Field patchStateField : patchStateDeclaredFields) {
-        if (Modifier.isStatic(patchStateField.getModifiers())) {
-          continue;
-        }
-        boolean immutableField = false;
-        Annotation[] declaredAnnotations = patchStateField.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == Immutable.class) {
-            immutableField = true;
-            break;
-          }
-        }
-
-        if (!immutableField && null != patchStateField.get(patchState)) {
-          Field currentStateField = currentState.getClass().getField(patchStateField.getName());
-          currentStateField.set(currentState, patchStateField.get(patchState));
+      boolean sameClass = currentState.getClass() == patchState.getClass();
+      for (Field patchStateField : ServiceDocumentMetadata.of(patchState.getClass()).getPatchableFields()) {
+        Object patchValue = patchStateField.get(patchState);
+        if (null != patchValue) {
+          Field currentStateField = sameClass
+              ? patchStateField
+              : currentState.getClass().getField(patchStateField.getName());
+          currentStateField.set(currentState, patchValue);
         }
       }
     } catch (IllegalStateException e) {
@@ -682,6 +682,12 @@ public class XenonRestClient implements XenonClient {
   }
 
   public URI getServiceUri(String path) {
+    if (isServiceHostInServerSet()) {
+      // address the host by its own URI so that Xenon dispatches the operation in-process instead of sending it
+      // through the HTTP stack.
+      return getServiceHostUri(path);
+    }
+
     //check if any of the hosts are available locally
     java.util.Optional<InetSocketAddress> localInetSocketAddress =
         this.serverSet.getServers().stream().filter(
@@ -727,6 +733,39 @@ public class XenonRestClient implements XenonClient {
     }
   }
 
+  /**
+   * Returns true when the Xenon host running in this process is one of the servers of the server set. Operations
+   * sent to it through {@link ServiceHost#sendRequest} are then handled without serializing their bodies or opening
+   * a connection, while the server set falls back to HTTP for remote peers.
+   */
+  @VisibleForTesting
+  protected boolean isServiceHostInServerSet() {
+    if (serviceHost == null || !serviceHost.isStarted()) {
+      return false;
+    }
+
+    int port = serviceHost.getUri().getScheme().equals("https") ? serviceHost.getSecurePort() : serviceHost.getPort();
+    return this.serverSet.getServers().stream().anyMatch(
+        (InetSocketAddress i) -> getPort(i) == port && localHostIpAddresses.contains(i.getAddress().getHostAddress()));
+  }
+
+  private URI getServiceHostUri(String path) {
+    URI hostUri = serviceHost.getUri();
+    String query = null;
+    int index = path.indexOf('?');
+    if (index != -1) {
+      query = path.substring(index + 1);
+      path = path.substring(0, index);
+    }
+
+    try {
+      return new URI(hostUri.getScheme(), null, hostUri.getHost(), hostUri.getPort(), path, query, null);
+    } catch (URISyntaxException uriSyntaxException) {
+      logger.error("getServiceHostUri: URISyntaxException path={} exception={}", path, uriSyntaxException);
+      throw new RuntimeException(uriSyntaxException);
+    }
+  }
+
   private void logCompletedOperation(Operation completedOperation) {
     if (completedOperation.getStatusCode() == Operation.STATUS_CODE_OK) {
       logger.debug("send: SUCCESS {}",
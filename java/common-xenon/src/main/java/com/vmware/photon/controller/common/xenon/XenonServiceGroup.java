@@ -14,6 +14,9 @@ package com.vmware.photon.controller.common.xenon;
 
 import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
 
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * Represents a logical group of Photon Controller Xenon services. This is the base
  * for sets of services previously implemented as XenonHosts.  Examples of service
@@ -45,6 +48,17 @@ public interface XenonServiceGroup {
      */
     boolean isReady();
 
+    /**
+     * Returns the self links of the services which have to be available for the XenonServiceGroup to
+     * be ready. The PhotonControllerXenonHost registers for their availability after starting the
+     * XenonServiceGroup. A XenonServiceGroup which returns no links is polled through isReady instead.
+     *
+     * @return
+     */
+    default Collection<String> getAvailabilityLinks() {
+        return Collections.emptyList();
+    }
+
     /**
      * This method is used by the PhotonControllerXenonHost to register itself with the
      * XenonServiceGroup.
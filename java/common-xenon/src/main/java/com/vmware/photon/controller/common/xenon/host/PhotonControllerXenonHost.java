@@ -54,6 +54,7 @@ import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 
@@ -77,6 +78,7 @@ public class PhotonControllerXenonHost
     public static final String FACTORY_SERVICE_FIELD_NAME_SELF_LINK = "SELF_LINK";
     public static final String KEYSTORE_FILE = "/keystore.jks";
     public static final String KEYSTORE_PASSWORD = UUID.randomUUID().toString();
+    public static final String CORE_SERVICES_PHASE = "core-services";
 
     private AgentControlClientFactory agentControlClientFactory;
     private HostClientFactory hostClientFactory;
@@ -92,6 +94,7 @@ public class PhotonControllerXenonHost
     private XenonServiceGroup deployer;
     private SystemConfigProvider systemConfigProvider;
     private ServiceClient serviceClient;
+    private volatile ServiceGroupStartupOrchestrator startupOrchestrator;
 
     // This flag is set to true only in the installer based deployment and it is used to override the Xenon service
     // client for a non-auth installer to be able to talk to auth enabled management plane.
@@ -184,13 +187,15 @@ public class PhotonControllerXenonHost
     /**
      * This method starts the default Xenon core services and the services associated to any of the
      * registered Xenon service groups.  All service groups that want to be active in this Xenon host
-     * should be registered before calling this method.
+     * should be registered before calling this method.  The service groups are started by a
+     * {@link ServiceGroupStartupOrchestrator}, which starts independent groups in parallel.
      *
      * @return
      * @throws Throwable
      */
     @Override
     public ServiceHost start() throws Throwable {
+        startupOrchestrator = new ServiceGroupStartupOrchestrator(this);
         super.start();
         /**
          * Xenon currently uses a garbage collection algorithm for its Lucene index searchers which
@@ -209,16 +214,35 @@ public class PhotonControllerXenonHost
         Utils.registerCustomKryoSerializer(kryoSerializerCustomization, false);
 
         this.getClient().setConnectionLimitPerHost(DEFAULT_CONNECTION_LIMIT_PER_HOST);
+        startupOrchestrator.beginPhase(CORE_SERVICES_PHASE);
         startDefaultCoreServicesSynchronously();
 
         // Start all core factories
         ServiceHostUtils.startServices(this, getFactoryServices());
+        startupOrchestrator.endPhase(CORE_SERVICES_PHASE);
+
+        // Start the status service ahead of the service groups so that their startup can be followed through it
+        ServiceHostUtils.startService(this, StatusService.class);
+
+        // All other service groups read and write cloud store documents from their task trigger and scheduler
+        // services, so they are started in parallel once cloud store is available.
+        if (cloudStore != null) {
+            startupOrchestrator.addServiceGroup(cloudStore);
+        }
 
         for (XenonServiceGroup xenonServiceGroup : xenonServiceGroups) {
-           xenonServiceGroup.start();
+            if (xenonServiceGroup == cloudStore) {
+                continue;
+            }
+
+            if (cloudStore != null) {
+                startupOrchestrator.addServiceGroup(xenonServiceGroup, cloudStore.getName());
+            } else {
+                startupOrchestrator.addServiceGroup(xenonServiceGroup);
+            }
         }
 
-        ServiceHostUtils.startService(this, StatusService.class);
+        startupOrchestrator.start();
 
         return this;
     }
@@ -246,6 +270,16 @@ public class PhotonControllerXenonHost
         }
     }
 
+    /**
+     * This method returns the startup timeline of this host, see {@link ServiceGroupStartupOrchestrator}.
+     *
+     * @return
+     */
+    public Map<String, String> getStartupTimeline() {
+        ServiceGroupStartupOrchestrator orchestrator = startupOrchestrator;
+        return orchestrator == null ? Collections.emptyMap() : orchestrator.getTimeline();
+    }
+
     @Override
     public BuildInfo getBuildInfo() {
         return this.buildInfo;
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.vmware.photon.controller.common.xenon.host;
+
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
+import com.vmware.photon.controller.common.xenon.XenonServiceGroup;
+import com.vmware.xenon.common.ServiceHost;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class starts the Xenon service groups of a host in dependency order.
+ * <p>
+ * Every group is started as soon as the groups it depends on are available, so groups which do not depend on each
+ * other are started in parallel. A group is available once all of its
+ * {@link XenonServiceGroup#getAvailabilityLinks()} are, which is learned through availability callbacks instead of
+ * polling. A group whose dependencies are not available within the dependency timeout, e.g. because the node group
+ * has not converged yet, is started anyway and a warning is logged.
+ * <p>
+ * The begin and end of every startup phase are recorded in a timeline which is published by the
+ * {@link StatusService}. Each entry maps {@code startup.<phase>} to {@code <begin>-<end>}, both in milliseconds
+ * since the host started. The end is empty while the phase is running, and a phase which did not succeed is
+ * followed by its outcome.
+ */
+public class ServiceGroupStartupOrchestrator {
+
+  public static final long DEFAULT_DEPENDENCY_TIMEOUT_MILLIS = ServiceHostUtils.SERVICES_STARTUP_TIMEOUT;
+
+  public static final long AVAILABILITY_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  public static final String TIMELINE_KEY_PREFIX = "startup.";
+
+  public static final String SERVICE_GROUPS_PHASE = "service-groups";
+
+  private static final Logger logger = LoggerFactory.getLogger(ServiceGroupStartupOrchestrator.class);
+
+  private final ServiceHost host;
+  private final long dependencyTimeoutMillis;
+  private final long startNanos = System.nanoTime();
+  private final Map<String, ServiceGroupEntry> serviceGroups = new LinkedHashMap<>();
+  private final Map<String, Phase> timeline = new LinkedHashMap<>();
+
+  public ServiceGroupStartupOrchestrator(ServiceHost host) {
+    this(host, DEFAULT_DEPENDENCY_TIMEOUT_MILLIS);
+  }
+
+  public ServiceGroupStartupOrchestrator(ServiceHost host, long dependencyTimeoutMillis) {
+    checkNotNull(host, "host cannot be null");
+    checkArgument(dependencyTimeoutMillis > 0, "dependencyTimeoutMillis must be greater than zero");
+
+    this.host = host;
+    this.dependencyTimeoutMillis = dependencyTimeoutMillis;
+  }
+
+  /**
+   * Adds a service group. The groups it depends on have to be added before it.
+   *
+   * @param serviceGroup
+   * @param dependencies names of the service groups which have to be available before this one is started
+   */
+  public synchronized void addServiceGroup(XenonServiceGroup serviceGroup, String... dependencies) {
+    checkNotNull(serviceGroup, "serviceGroup cannot be null");
+    checkArgument(!serviceGroups.containsKey(serviceGroup.getName()),
+        "Service group %s was already added", serviceGroup.getName());
+
+    List<ServiceGroupEntry> dependencyEntries = new ArrayList<>();
+    for (String dependency : dependencies) {
+      checkArgument(serviceGroups.containsKey(dependency),
+          "Service group %s depends on unknown service group %s", serviceGroup.getName(), dependency);
+      dependencyEntries.add(serviceGroups.get(dependency));
+    }
+
+    serviceGroups.put(serviceGroup.getName(), new ServiceGroupEntry(serviceGroup, dependencyEntries));
+  }
+
+  /**
+   * Starts all service groups. This method returns once every group has been started, which does not mean that
+   * the groups without dependents are available yet.
+   *
+   * @throws Throwable the failure of the first service group which could not be started
+   */
+  public void start() throws Throwable {
+    List<ServiceGroupEntry> entries;
+    synchronized (this) {
+      entries = new ArrayList<>(serviceGroups.values());
+    }
+
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    beginPhase(SERVICE_GROUPS_PHASE);
+    CompletableFuture.allOf(entries.stream().map(entry -> entry.available).toArray(CompletableFuture[]::new))
+        .whenComplete((result, throwable) -> endPhase(SERVICE_GROUPS_PHASE, throwable == null ? null : "failed"));
+
+    ScheduledExecutorService executor = Executors.newScheduledThreadPool(entries.size(),
+        new ThreadFactoryBuilder().setNameFormat("service-group-startup-%d").setDaemon(true).build());
+    try {
+      List<CompletableFuture<Void>> started = new ArrayList<>();
+      for (ServiceGroupEntry entry : entries) {
+        started.add(awaitDependencies(entry, executor).thenRunAsync(() -> startServiceGroup(entry), executor));
+      }
+
+      CompletableFuture.allOf(started.toArray(new CompletableFuture[started.size()])).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Records the begin of a startup phase.
+   *
+   * @param phase
+   */
+  public void beginPhase(String phase) {
+    synchronized (timeline) {
+      timeline.put(phase, new Phase(System.nanoTime()));
+    }
+  }
+
+  /**
+   * Records the successful end of a startup phase.
+   *
+   * @param phase
+   */
+  public void endPhase(String phase) {
+    endPhase(phase, null);
+  }
+
+  /**
+   * Returns the startup timeline.
+   *
+   * @return
+   */
+  public Map<String, String> getTimeline() {
+    Map<String, String> result = new LinkedHashMap<>();
+    synchronized (timeline) {
+      for (Map.Entry<String, Phase> entry : timeline.entrySet()) {
+        result.put(TIMELINE_KEY_PREFIX + entry.getKey(), entry.getValue().format(startNanos));
+      }
+    }
+    return result;
+  }
+
+  private void endPhase(String phase, String outcome) {
+    synchronized (timeline) {
+      Phase entry = timeline.get(phase);
+      checkState(entry != null, "Phase %s was not begun", phase);
+      entry.end(System.nanoTime(), outcome);
+    }
+  }
+
+  private CompletableFuture<Void> awaitDependencies(ServiceGroupEntry entry, ScheduledExecutorService executor) {
+    if (entry.dependencies.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    String phase = entry.getName() + ".dependencies";
+    beginPhase(phase);
+
+    // A dependency which failed to become available does not stop its dependents from being started, it is
+    // reported through its own phases instead.
+    CompletableFuture<Boolean> dependenciesAvailable = new CompletableFuture<>();
+    CompletableFuture.allOf(entry.dependencies.stream().map(dependency -> dependency.available)
+        .toArray(CompletableFuture[]::new))
+        .whenComplete((result, throwable) -> dependenciesAvailable.complete(true));
+
+    ScheduledFuture<?> timeout = executor.schedule(() -> {
+      if (dependenciesAvailable.complete(false)) {
+        logger.warn("Dependencies of service group {} were not available after {} ms, starting it anyway",
+            entry.getName(), dependencyTimeoutMillis);
+      }
+    }, dependencyTimeoutMillis, TimeUnit.MILLISECONDS);
+
+    return dependenciesAvailable.thenAccept(available -> {
+      timeout.cancel(false);
+      endPhase(phase, available ? null : "timed out");
+    });
+  }
+
+  private void startServiceGroup(ServiceGroupEntry entry) {
+    String phase = entry.getName() + ".start";
+    beginPhase(phase);
+    try {
+      entry.serviceGroup.start();
+    } catch (Throwable t) {
+      logger.error("Failed to start service group {}", entry.getName(), t);
+      endPhase(phase, "failed");
+      entry.available.completeExceptionally(t);
+      throw new CompletionException(t);
+    }
+    endPhase(phase);
+
+    beginPhase(entry.getName() + ".availability");
+    Collection<String> availabilityLinks = entry.serviceGroup.getAvailabilityLinks();
+    if (availabilityLinks.isEmpty()) {
+      pollReadiness(entry);
+      return;
+    }
+
+    AtomicInteger pendingLinks = new AtomicInteger(availabilityLinks.size());
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    host.registerForServiceAvailability((operation, throwable) -> {
+      if (throwable != null) {
+        failure.compareAndSet(null, throwable);
+      }
+
+      if (pendingLinks.decrementAndGet() == 0) {
+        completeAvailability(entry, failure.get());
+      }
+    }, availabilityLinks.toArray(new String[availabilityLinks.size()]));
+  }
+
+  private void pollReadiness(ServiceGroupEntry entry) {
+    if (entry.serviceGroup.isReady()) {
+      completeAvailability(entry, null);
+      return;
+    }
+
+    host.schedule(() -> pollReadiness(entry), AVAILABILITY_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void completeAvailability(ServiceGroupEntry entry, Throwable failure) {
+    if (failure != null) {
+      logger.warn("Service group {} did not become available", entry.getName(), failure);
+      endPhase(entry.getName() + ".availability", "failed");
+      entry.available.completeExceptionally(failure);
+      return;
+    }
+
+    logger.info("Service group {} is available", entry.getName());
+    endPhase(entry.getName() + ".availability");
+    entry.available.complete(null);
+  }
+
+  /**
+   * A service group together with the groups it depends on.
+   */
+  private static class ServiceGroupEntry {
+    private final XenonServiceGroup serviceGroup;
+    private final List<ServiceGroupEntry> dependencies;
+    private final CompletableFuture<Void> available = new CompletableFuture<>();
+
+    private ServiceGroupEntry(XenonServiceGroup serviceGroup, List<ServiceGroupEntry> dependencies) {
+      this.serviceGroup = serviceGroup;
+      this.dependencies = dependencies;
+    }
+
+    private String getName() {
+      return serviceGroup.getName();
+    }
+  }
+
+  /**
+   * The begin and end of a startup phase.
+   */
+  private static class Phase {
+    private final long beginNanos;
+    private long endNanos = -1;
+    private String outcome;
+
+    private Phase(long beginNanos) {
+      this.beginNanos = beginNanos;
+    }
+
+    private void end(long endNanos, String outcome) {
+      this.endNanos = endNanos;
+      this.outcome = outcome;
+    }
+
+    private String format(long startNanos) {
+      StringBuilder builder = new StringBuilder();
+      builder.append(TimeUnit.NANOSECONDS.toMillis(beginNanos - startNanos)).append('-');
+      if (endNanos != -1) {
+        builder.append(TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+      }
+      if (outcome != null) {
+        builder.append(' ').append(outcome);
+      }
+      return builder.toString();
+    }
+  }
+}
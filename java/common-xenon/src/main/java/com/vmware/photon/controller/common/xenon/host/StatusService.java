@@ -22,7 +22,8 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.StatelessService;
 
 /**
- * Class implementing service to get status of cloud store.
+ * Class implementing service to get status of cloud store. The stats of the status carry the startup timeline of
+ * the host, see {@link ServiceGroupStartupOrchestrator}.
  */
 public class StatusService extends StatelessService {
 
@@ -34,7 +35,9 @@ public class StatusService extends StatelessService {
     BuildInfo buildInfo = ((XenonHostInfoProvider) getHost()).getBuildInfo();
     status.setBuild_info(buildInfo.toString());
 
-    if (((PhotonControllerXenonHost) getHost()).isReady()) {
+    PhotonControllerXenonHost photonControllerXenonHost = (PhotonControllerXenonHost) getHost();
+    status.setStats(photonControllerXenonHost.getStartupTimeline());
+    if (photonControllerXenonHost.isReady()) {
       status.setType(StatusType.READY);
     }
     get.setBody(status).complete();
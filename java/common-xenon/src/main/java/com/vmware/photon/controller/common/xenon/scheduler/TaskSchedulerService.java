@@ -21,13 +21,13 @@ import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
 import com.vmware.photon.controller.common.xenon.validation.NotBlank;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
 import com.vmware.photon.controller.common.xenon.validation.Positive;
 import com.vmware.xenon.common.NodeSelectorService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
-import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
@@ -35,12 +35,34 @@ import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
- * Class TaskSchedulerService: periodically starts new services based on the threshold of how many services
+ * Class TaskSchedulerService: starts new services based on the threshold of how many services
  * can be running simultaneously.
+ *
+ * The owner keeps an in-memory count of the permits in use. It is rebuilt from the index when the service starts
+ * or becomes owner, and is then kept current by the scheduled services, which notify the scheduler when they are
+ * created and when they reach a final stage (see {@link TaskSchedulerServiceHelper}). Tasks are therefore started
+ * as soon as a permit is available. Periodic maintenance tracks ownership and re-reads the index every
+ * {@link State#resyncIntervalMicros}. By default this happens on every maintenance, like the former poll, so
+ * services which do not notify are still started within a minute. Schedulers of services which do notify are
+ * built with {@link #NOTIFIED_RESYNC_INTERVAL_MICROS}, which only recovers permits of tasks that never reported back.
  */
 public class TaskSchedulerService extends StatefulService {
 
+  public static final long DEFAULT_RESYNC_INTERVAL_MICROS = 60L * 1000 * 1000; // 1 min
+
+  public static final long NOTIFIED_RESYNC_INTERVAL_MICROS = 10L * 60 * 1000 * 1000; // 10 min
+
+  private final Admission admission = new Admission();
+
   /**
    * Default constructor.
    */
@@ -78,13 +100,19 @@ public class TaskSchedulerService extends StatefulService {
       State currentState = getState(patch);
       State patchState = patch.getBody(State.class);
 
+      // Notifications only update the in-memory admission state and are never persisted.
+      String createdTaskLink = patchState.createdTaskLink;
+      String finishedTaskLink = patchState.finishedTaskLink;
+      patchState.createdTaskLink = null;
+      patchState.finishedTaskLink = null;
+
       this.validatePatch(currentState, patchState);
       this.applyPatch(currentState, patchState);
       this.validateState(currentState);
 
       patch.complete();
 
-      this.processPatch(currentState);
+      this.processPatch(currentState, createdTaskLink, finishedTaskLink);
     } catch (Throwable e) {
       ServiceUtils.logSevere(this, e);
       if (!OperationUtils.isCompleted(patch)) {
@@ -112,6 +140,8 @@ public class TaskSchedulerService extends StatefulService {
         ServiceUtils.logInfo(TaskSchedulerService.this,
             "Host[%s]: Not owner of scheduler [%s] (Owner Info [%s])",
             getHost().getId(), getSelfLink(), Utils.toJson(false, false, rsp));
+        // Forget the permits so they are rebuilt from the index if this host becomes owner again.
+        admission.invalidate();
         return;
       }
 
@@ -166,65 +196,77 @@ public class TaskSchedulerService extends StatefulService {
   }
 
   /**
-   * Process patch. Triggers a query task for started service, and if the count of services in STARTED is less than
-   * the pre-defined threshold, it will move the services in CREATED stage to STARTED stage, until the count
-   * reached the threshold.
+   * Process patch. Records the task notifications carried by the patch and moves as many waiting services from
+   * CREATED to STARTED stage as there are free permits. The permits are rebuilt from the index first if they are
+   * not known yet or the resync interval has passed.
    */
-  private void processPatch(final State current) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          // The serivce log the failed query, and let the next handlePeriodicMaintenance function trigger
-          // another one.
-          logFailure(failure);
-          return;
-        }
+  private void processPatch(final State current, String createdTaskLink, String finishedTaskLink) {
+    if (admission.isResyncDue(current.resyncIntervalMicros)) {
+      resync(current);
+    }
 
-        int serviceCount = completedOp.getBody(QueryTask.class).results.documentLinks.size();
-        int runningTasksLimit = current.tasksLimits;
-        if (serviceCount >= runningTasksLimit) {
-          return;
-        }
+    if (finishedTaskLink != null) {
+      admission.release(finishedTaskLink);
+    }
 
-        startServices(current, runningTasksLimit - serviceCount);
-      }
-    };
+    if (createdTaskLink != null) {
+      admission.enqueue(createdTaskLink);
+    }
 
-    sendTaskStateQuery(current, TaskState.TaskStage.STARTED, handler);
+    startServices(current);
   }
 
   /**
-   * Triggers a query task for started service in CREATED stage and moves servicesToStartCount service to STARTED stage.
+   * Rebuilds the permits from the index: the services in STARTED stage hold a permit and the services in CREATED
+   * stage wait for one. Notifications received while the queries are running are applied on top of the results.
    */
-  private void startServices(final State current, final int servicesToStartCount) {
-    Operation.CompletionHandler handler = new Operation.CompletionHandler() {
-      @Override
-      public void handle(Operation completedOp, Throwable failure) {
-        if (failure != null) {
-          logFailure(failure);
-          return;
-        }
+  private void resync(final State current) {
+    if (!admission.beginResync()) {
+      return;
+    }
 
-        ServiceDocumentQueryResult results = completedOp.getBody(QueryTask.class).results;
-        if (results.documentLinks.size() == 0) {
+    sendTaskStateQuery(current, TaskState.TaskStage.STARTED, (startedOp, startedFailure) -> {
+      if (startedFailure != null) {
+        // The service logs the failed query, and lets the next patch or maintenance trigger another one.
+        admission.abortResync();
+        logFailure(startedFailure);
+        return;
+      }
+
+      sendTaskStateQuery(current, TaskState.TaskStage.CREATED, (createdOp, createdFailure) -> {
+        if (createdFailure != null) {
+          admission.abortResync();
+          logFailure(createdFailure);
           return;
         }
 
-        ServiceUtils.logInfo(TaskSchedulerService.this,
-            "Host[%s]: Services to start: %s", getHost().getId(), Utils.toJson(false, false, results.documentLinks));
-        for (int count = 0; count < Math.min(servicesToStartCount, results.documentLinks.size()); count++) {
-          String docLink = results.documentLinks.get(count);
-          sendStartPatch(current, docLink);
-        }
-      }
-    };
+        admission.completeResync(
+            startedOp.getBody(QueryTask.class).results.documentLinks,
+            createdOp.getBody(QueryTask.class).results.documentLinks);
+        startServices(current);
+      });
+    });
+  }
 
-    sendTaskStateQuery(current, TaskState.TaskStage.CREATED, handler);
+  /**
+   * Moves waiting services to STARTED stage while there are free permits.
+   */
+  private void startServices(final State current) {
+    List<String> docLinks = admission.acquire(current.tasksLimits);
+    if (docLinks.isEmpty()) {
+      return;
+    }
+
+    ServiceUtils.logInfo(TaskSchedulerService.this,
+        "Host[%s]: Services to start: %s", getHost().getId(), Utils.toJson(false, false, docLinks));
+    for (String docLink : docLinks) {
+      sendStartPatch(current, docLink);
+    }
   }
 
   /**
-   * Sends a patch to move the service indicated by documentSelfLink from CREATED to STARTED stage.
+   * Sends a patch to move the service indicated by documentSelfLink from CREATED to STARTED stage. If the service
+   * rejects the patch its permit is freed again.
    *
    * @param docSelfLink
    */
@@ -235,12 +277,21 @@ public class TaskSchedulerService extends StatefulService {
               .getStartPatch(Class.forName(current.schedulerServiceClassName));
       Operation patch = Operation.createPatch(UriUtils.buildUri(getHost(), docSelfLink))
           .setBody(startedPatch)
-          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()));
+          .setReferer(UriUtils.buildUri(getHost(), getSelfLink()))
+          .setCompletion((op, failure) -> {
+            if (failure != null) {
+              ServiceUtils.logWarning(this, "Host[%s]: Failed to start service %s: %s",
+                  getHost().getId(), docSelfLink, failure.getMessage());
+              admission.release(docSelfLink);
+              startServices(current);
+            }
+          });
       sendRequest(patch);
 
       ServiceUtils.logInfo(this,
           "Host[%s]: TaskSchedulerService moving service %s from CREATED to STARTED", getHost().getId(), docSelfLink);
     } catch (Exception e) {
+      admission.release(docSelfLink);
       logFailure(e);
     }
   }
@@ -265,7 +316,7 @@ public class TaskSchedulerService extends StatefulService {
           .setCompletion(handler);
       sendRequest(queryPost);
     } catch (ClassNotFoundException e) {
-      logFailure(e);
+      handler.handle(null, e);
     }
   }
 
@@ -290,6 +341,108 @@ public class TaskSchedulerService extends StatefulService {
     ServiceUtils.logSevere(this, e);
   }
 
+  /**
+   * In-memory admission state of the owner: the services holding a permit and the services waiting for one.
+   * Services are tracked by link so that duplicate notifications, e.g. from replicas, are harmless.
+   */
+  private static class Admission {
+
+    private final Set<String> running = new HashSet<>();
+
+    private final Set<String> waiting = new LinkedHashSet<>();
+
+    private final Set<String> createdDuringResync = new HashSet<>();
+
+    private final Set<String> finishedDuringResync = new HashSet<>();
+
+    private boolean synced;
+
+    private boolean resyncing;
+
+    private long lastResyncMicros;
+
+    synchronized boolean isResyncDue(long resyncIntervalMicros) {
+      return !resyncing && (!synced || Utils.getNowMicrosUtc() - lastResyncMicros >= resyncIntervalMicros);
+    }
+
+    synchronized boolean beginResync() {
+      if (resyncing) {
+        return false;
+      }
+
+      resyncing = true;
+      createdDuringResync.clear();
+      finishedDuringResync.clear();
+      return true;
+    }
+
+    synchronized void completeResync(Collection<String> started, Collection<String> created) {
+      running.clear();
+      running.addAll(started);
+      running.removeAll(finishedDuringResync);
+
+      waiting.clear();
+      waiting.addAll(created);
+      waiting.addAll(createdDuringResync);
+      waiting.removeAll(running);
+      waiting.removeAll(finishedDuringResync);
+
+      resyncing = false;
+      synced = true;
+      lastResyncMicros = Utils.getNowMicrosUtc();
+    }
+
+    synchronized void abortResync() {
+      resyncing = false;
+    }
+
+    synchronized void invalidate() {
+      synced = false;
+      running.clear();
+      waiting.clear();
+    }
+
+    synchronized void enqueue(String docLink) {
+      if (resyncing) {
+        createdDuringResync.add(docLink);
+      }
+
+      if (!running.contains(docLink)) {
+        waiting.add(docLink);
+      }
+    }
+
+    synchronized void release(String docLink) {
+      if (resyncing) {
+        finishedDuringResync.add(docLink);
+        createdDuringResync.remove(docLink);
+      }
+
+      running.remove(docLink);
+      waiting.remove(docLink);
+    }
+
+    /**
+     * Takes a permit for as many waiting services as the limit allows and returns their links.
+     */
+    synchronized List<String> acquire(int tasksLimit) {
+      List<String> docLinks = new ArrayList<>();
+      if (!synced || resyncing) {
+        return docLinks;
+      }
+
+      Iterator<String> iterator = waiting.iterator();
+      while (running.size() < tasksLimit && iterator.hasNext()) {
+        String docLink = iterator.next();
+        iterator.remove();
+        running.add(docLink);
+        docLinks.add(docLink);
+      }
+
+      return docLinks;
+    }
+  }
+
   /**
    * Class defines the durable state of the TaskSchedulerService.
    */
@@ -306,5 +459,25 @@ public class TaskSchedulerService extends StatefulService {
     @NotNull
     @Positive
     public Integer tasksLimits;
+
+    /**
+     * Interval at which the owner re-reads the index. This is how long a service that does not notify the
+     * scheduler may wait in CREATED stage, and how long the permit of a service that did not report back is held.
+     */
+    @NotNull
+    @Positive
+    @DefaultLong(value = DEFAULT_RESYNC_INTERVAL_MICROS)
+    public Long resyncIntervalMicros;
+
+    /**
+     * Notification that the service with this link was created in CREATED stage. Never persisted.
+     */
+    public String createdTaskLink;
+
+    /**
+     * Notification that the service with this link reached a final stage and no longer holds a permit.
+     * Never persisted.
+     */
+    public String finishedTaskLink;
   }
 }
@@ -64,4 +64,31 @@ public class TaskSchedulerServiceHelper {
         .setCompletion(handler);
     host.selectOwner(null, taskSchedulerServiceSelfLink, selectOwnerOp);
   }
+
+  /**
+   * Notify the owner of the TaskSchedulerService that the service was created in CREATED stage and is waiting
+   * to be started.
+   *
+   * @param service
+   * @param taskSchedulerServiceSelfLink
+   */
+  public static void notifyTaskCreated(Service service, String taskSchedulerServiceSelfLink) {
+    TaskSchedulerService.State state = new TaskSchedulerService.State();
+    state.createdTaskLink = service.getSelfLink();
+    sendPatchToOwner(service, service.getHost(), taskSchedulerServiceSelfLink, state,
+        UriUtils.buildUri(service.getHost(), service.getSelfLink()));
+  }
+
+  /**
+   * Notify the owner of the TaskSchedulerService that the service reached a final stage, freeing its permit.
+   *
+   * @param service
+   * @param taskSchedulerServiceSelfLink
+   */
+  public static void notifyTaskFinished(Service service, String taskSchedulerServiceSelfLink) {
+    TaskSchedulerService.State state = new TaskSchedulerService.State();
+    state.finishedTaskLink = service.getSelfLink();
+    sendPatchToOwner(service, service.getHost(), taskSchedulerServiceSelfLink, state,
+        UriUtils.buildUri(service.getHost(), service.getSelfLink()));
+  }
 }
@@ -44,17 +44,33 @@ public class TaskSchedulerServiceStateBuilder implements TaskStateBuilder {
    */
   private int maxRunningTasks;
 
+  /**
+   * Interval at which the scheduler re-reads the index, or null for the default.
+   */
+  private Long resyncIntervalMicros;
+
   public TaskSchedulerServiceStateBuilder(Class<? extends StatefulService> service, int maxRunningTasks) {
     this.serviceClass = service;
     this.maxRunningTasks = maxRunningTasks;
   }
 
+  /**
+   * Builds the state of a scheduler for a service which notifies the scheduler when it is created and when it
+   * finishes (see {@link TaskSchedulerServiceHelper}), so the index only needs to be re-read at the given interval.
+   */
+  public TaskSchedulerServiceStateBuilder(Class<? extends StatefulService> service, int maxRunningTasks,
+                                          long resyncIntervalMicros) {
+    this(service, maxRunningTasks);
+    this.resyncIntervalMicros = resyncIntervalMicros;
+  }
+
   @Override
   public TaskSchedulerService.State build() {
     checkServiceOptions();
     TaskSchedulerService.State state = new TaskSchedulerService.State();
     state.schedulerServiceClassName = this.serviceClass.getName();
     state.tasksLimits = this.maxRunningTasks;
+    state.resyncIntervalMicros = this.resyncIntervalMicros;
 
     return state;
   }
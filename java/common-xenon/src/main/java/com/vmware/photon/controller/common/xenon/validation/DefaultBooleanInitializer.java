@@ -13,9 +13,9 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -26,15 +26,11 @@ public enum DefaultBooleanInitializer {
 
   public static void initialize(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<DefaultBoolean> annotatedField : metadata.getAnnotatedFields(DefaultBoolean.class)) {
+        Field field = annotatedField.getField();
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultBoolean.class) {
-              field.set(state, new Boolean(((DefaultBoolean) annotation).value()));
-            }
-          }
+          field.set(state, new Boolean(annotatedField.getAnnotation().value()));
         }
       }
     } catch (Throwable t) {
@@ -13,9 +13,9 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -26,15 +26,11 @@ public enum DefaultStringInitializer {
 
   public static void initialize(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<DefaultString> annotatedField : metadata.getAnnotatedFields(DefaultString.class)) {
+        Field field = annotatedField.getField();
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultString.class) {
-              field.set(state, new String(((DefaultString) annotation).value()));
-            }
-          }
+          field.set(state, new String(annotatedField.getAnnotation().value()));
         }
       }
     } catch (Throwable t) {
@@ -13,10 +13,10 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.TaskState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -27,17 +27,13 @@ public enum DefaultTaskStateInitializer {
 
   public static void initialize(ServiceDocument state) throws RuntimeException {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<DefaultTaskState> annotatedField : metadata.getAnnotatedFields(DefaultTaskState.class)) {
+        Field field = annotatedField.getField();
         if (field.get(state) == null) {
-          Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-          for (Annotation annotation : declaredAnnotations) {
-            if (annotation.annotationType() == DefaultTaskState.class) {
-              TaskState defaultState = (TaskState) field.getType().newInstance();
-              defaultState.stage = ((DefaultTaskState) annotation).value();
-              field.set(state, defaultState);
-            }
-          }
+          TaskState defaultState = (TaskState) field.getType().newInstance();
+          defaultState.stage = annotatedField.getAnnotation().value();
+          field.set(state, defaultState);
         }
       }
     } catch (Throwable t) {
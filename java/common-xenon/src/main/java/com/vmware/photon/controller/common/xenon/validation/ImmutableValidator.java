@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -29,14 +29,10 @@ public enum ImmutableValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == Immutable.class) {
-            checkState(null == field.get(state), String.format("%s is immutable", field.getName()));
-          }
-        }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<Immutable> annotatedField : metadata.getAnnotatedFields(Immutable.class)) {
+        Field field = annotatedField.getField();
+        checkState(null == field.get(state), String.format("%s is immutable", field.getName()));
       }
     } catch (IllegalStateException e) {
       throw e;
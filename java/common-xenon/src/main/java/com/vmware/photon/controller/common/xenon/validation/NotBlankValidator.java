@@ -13,12 +13,12 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import org.apache.commons.lang3.StringUtils;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -30,17 +30,13 @@ public enum NotBlankValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == NotBlank.class) {
-            checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
-            if (String.class.equals(field.getType())) {
-              checkState((StringUtils.isNotBlank((String) field.get(state))),
-                  String.format("%s cannot be blank", field.getName()));
-            }
-          }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<NotBlank> annotatedField : metadata.getAnnotatedFields(NotBlank.class)) {
+        Field field = annotatedField.getField();
+        Object value = field.get(state);
+        checkState(null != value, String.format("%s cannot be null", field.getName()));
+        if (String.class.equals(field.getType())) {
+          checkState((StringUtils.isNotBlank((String) value)), String.format("%s cannot be blank", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.util.Collection;
 
@@ -30,22 +30,17 @@ public enum NotEmptyValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == NotEmpty.class) {
-            checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
-            if (String.class.equals(field.getType())) {
-              checkState(!((String) field.get(state)).isEmpty(),
-                  String.format("%s cannot be empty", field.getName()));
-            }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<NotEmpty> annotatedField : metadata.getAnnotatedFields(NotEmpty.class)) {
+        Field field = annotatedField.getField();
+        Object value = field.get(state);
+        checkState(null != value, String.format("%s cannot be null", field.getName()));
+        if (String.class.equals(field.getType())) {
+          checkState(!((String) value).isEmpty(), String.format("%s cannot be empty", field.getName()));
+        }
 
-            if (field.get(state) instanceof Collection) {
-              checkState(!((Collection<?>) field.get(state)).isEmpty(),
-                  String.format("%s cannot be emtpy", field.getName()));
-            }
-          }
+        if (value instanceof Collection) {
+          checkState(!((Collection<?>) value).isEmpty(), String.format("%s cannot be emtpy", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -29,14 +29,10 @@ public enum NotNullValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == NotNull.class) {
-            checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
-          }
-        }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<NotNull> annotatedField : metadata.getAnnotatedFields(NotNull.class)) {
+        Field field = annotatedField.getField();
+        checkState(null != field.get(state), String.format("%s cannot be null", field.getName()));
       }
     } catch (IllegalStateException e) {
       throw e;
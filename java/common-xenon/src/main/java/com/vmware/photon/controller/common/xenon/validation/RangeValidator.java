@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -29,17 +29,14 @@ public enum RangeValidator {
 
   public static void validate(ServiceDocument state) {
     try {
-      Field[] declaredFields = state.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        for (Annotation annotation : field.getDeclaredAnnotations()) {
-          if (annotation.annotationType() == Range.class) {
-            long min = ((Range) annotation).min();
-            long max = ((Range) annotation).max();
-            Number value = (Number) field.get(state);
-            checkState(value == null || (value.longValue() >= min && value.longValue() <= max),
-                String.format("%s is not within range %d, %d", field.getName(), min, max));
-          }
-        }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(state.getClass());
+      for (AnnotatedField<Range> annotatedField : metadata.getAnnotatedFields(Range.class)) {
+        Field field = annotatedField.getField();
+        long min = annotatedField.getAnnotation().min();
+        long max = annotatedField.getAnnotation().max();
+        Number value = (Number) field.get(state);
+        checkState(value == null || (value.longValue() >= min && value.longValue() <= max),
+            String.format("%s is not within range %d, %d", field.getName(), min, max));
       }
     } catch (IllegalStateException e) {
       throw e;
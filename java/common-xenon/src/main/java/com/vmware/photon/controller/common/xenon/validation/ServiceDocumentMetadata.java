@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.validation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the validation, initialization and patch plan of a service document class.
+ * <p>
+ * The plan is built once per class on first use and is immutable afterwards. It lists, per annotation type, the
+ * declared fields carrying that annotation in declaration order, and the declared fields which a patch may change.
+ * Validators, initializers and {@link com.vmware.photon.controller.common.xenon.PatchUtils} run off the plan instead
+ * of calling {@link Class#getDeclaredFields()} and {@link Field#getDeclaredAnnotations()}, which copy their result
+ * arrays on every call.
+ */
+public final class ServiceDocumentMetadata {
+
+  private static final ClassValue<ServiceDocumentMetadata> METADATA = new ClassValue<ServiceDocumentMetadata>() {
+    @Override
+    protected ServiceDocumentMetadata computeValue(Class<?> type) {
+      return new ServiceDocumentMetadata(type);
+    }
+  };
+
+  private final Map<Class<? extends Annotation>, List<AnnotatedField<?>>> annotatedFields;
+  private final List<Field> patchableFields;
+
+  private ServiceDocumentMetadata(Class<?> type) {
+    Map<Class<? extends Annotation>, ImmutableList.Builder<AnnotatedField<?>>> annotatedFieldBuilders =
+        new LinkedHashMap<>();
+    ImmutableList.Builder<Field> patchableFieldsBuilder = ImmutableList.builder();
+
+    for (Field field : type.getDeclaredFields()) {
+      boolean immutableField = false;
+      for (Annotation annotation : field.getDeclaredAnnotations()) {
+        annotatedFieldBuilders.computeIfAbsent(annotation.annotationType(), key -> ImmutableList.builder())
+            .add(new AnnotatedField<>(field, annotation));
+        if (annotation.annotationType() == Immutable.class) {
+          immutableField = true;
+        }
+      }
+
+      if (!immutableField && !Modifier.isStatic(field.getModifiers())) {
+        patchableFieldsBuilder.add(field);
+      }
+    }
+
+    ImmutableMap.Builder<Class<? extends Annotation>, List<AnnotatedField<?>>> annotatedFieldsBuilder =
+        ImmutableMap.builder();
+    annotatedFieldBuilders.forEach((annotationType, builder) -> annotatedFieldsBuilder.put(annotationType,
+        builder.build()));
+
+    this.annotatedFields = annotatedFieldsBuilder.build();
+    this.patchableFields = patchableFieldsBuilder.build();
+  }
+
+  /**
+   * Returns the plan of the given service document class.
+   */
+  public static ServiceDocumentMetadata of(Class<?> type) {
+    return METADATA.get(type);
+  }
+
+  /**
+   * Returns the declared fields of the class which carry the given annotation, in declaration order.
+   */
+  @SuppressWarnings("unchecked")
+  public <A extends Annotation> List<AnnotatedField<A>> getAnnotatedFields(Class<A> annotationType) {
+    List<AnnotatedField<?>> fields = annotatedFields.get(annotationType);
+    if (fields == null) {
+      return ImmutableList.of();
+    }
+
+    return (List<AnnotatedField<A>>) (List<?>) fields;
+  }
+
+  /**
+   * Returns the declared fields of the class which are neither static nor {@link Immutable}, in declaration order.
+   */
+  public List<Field> getPatchableFields() {
+    return patchableFields;
+  }
+
+  /**
+   * This class represents a field together with one of its annotations.
+   *
+   * @param <A> type of the annotation
+   */
+  public static final class AnnotatedField<A extends Annotation> {
+
+    private final Field field;
+    private final A annotation;
+
+    @SuppressWarnings("unchecked")
+    private AnnotatedField(Field field, Annotation annotation) {
+      this.field = field;
+      this.annotation = (A) annotation;
+    }
+
+    public Field getField() {
+      return field;
+    }
+
+    public A getAnnotation() {
+      return annotation;
+    }
+  }
+}
@@ -13,11 +13,11 @@
 
 package com.vmware.photon.controller.common.xenon.validation;
 
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
 import com.vmware.xenon.common.ServiceDocument;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 
 /**
@@ -28,18 +28,13 @@ public enum WriteOnceValidator {
 
   public static void validate(ServiceDocument startState, ServiceDocument patchState) {
     try {
-      Field[] declaredFields = startState.getClass().getDeclaredFields();
-      for (Field field : declaredFields) {
-        Annotation[] declaredAnnotations = field.getDeclaredAnnotations();
-        for (Annotation annotation : declaredAnnotations) {
-          if (annotation.annotationType() == WriteOnce.class) {
-            Object startValue = field.get(startState);
-            Object patchValue = field.get(patchState);
-            if (null != patchValue) {
-              checkState(null == startValue,
-                  String.format("%s cannot be set or changed in a patch", field.getName()));
-            }
-          }
+      ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(startState.getClass());
+      for (AnnotatedField<WriteOnce> annotatedField : metadata.getAnnotatedFields(WriteOnce.class)) {
+        Field field = annotatedField.getField();
+        Object startValue = field.get(startState);
+        Object patchValue = field.get(patchState);
+        if (null != patchValue) {
+          checkState(null == startValue, String.format("%s cannot be set or changed in a patch", field.getName()));
         }
       }
     } catch (IllegalStateException e) {
@@ -18,6 +18,8 @@ import com.vmware.xenon.common.ServiceDocument;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 
 /**
  * Tests {@link PatchUtils}.
@@ -63,6 +65,19 @@ public class PatchUtilsTest {
       PatchUtils.patchState(startDoc, patchDoc);
     }
 
+    @Test
+    public void testOnlyMutableFieldsArePatched() {
+      Document startDoc = new Document(1, 2);
+      Document patchDoc = new Document(3, 4);
+
+      PatchUtils.patchState(startDoc, patchDoc);
+      assertThat(startDoc.immutableObject, is(1));
+      assertThat(startDoc.mutableObject, is(4));
+
+      PatchUtils.patchState(startDoc, new Document(null, null));
+      assertThat(startDoc.mutableObject, is(4));
+    }
+
     @DataProvider(name = "TestSettings")
     public Object[][] getTestSettings() {
       return new Object[][]{
@@ -1284,6 +1284,49 @@ public class XenonRestClientTest {
       assertTrue(result3.getQuery().equals("params=1"));
 
     }
+
+    @Test
+    public void testGetServiceUriForLocalServiceHost() throws Throwable {
+      InetSocketAddress[] servers = new InetSocketAddress[2];
+      servers[0] = new InetSocketAddress("0.0.0.1", 1);
+      servers[1] = new InetSocketAddress(host.getPreferredAddress(), host.getPort());
+
+      XenonRestClient testXenonRestClient =
+          new XenonRestClient(new StaticServerSet(servers), Executors.newFixedThreadPool(1),
+              Executors.newScheduledThreadPool(1), host);
+      assertThat(testXenonRestClient.isServiceHostInServerSet(), is(true));
+
+      URI result = testXenonRestClient.getServiceUri("/dummyPath?params=1");
+      assertThat(result.getScheme(), is(host.getUri().getScheme()));
+      assertThat(result.getHost(), is(host.getUri().getHost()));
+      assertThat(result.getPort(), is(host.getUri().getPort()));
+      assertThat(result.getPath(), is("/dummyPath"));
+      assertThat(result.getQuery(), is("params=1"));
+    }
+
+    @Test
+    public void testInProcessOperation() throws Throwable {
+      assertThat(xenonRestClient.isServiceHostInServerSet(), is(true));
+
+      ExampleService.ExampleServiceState exampleServiceState = new ExampleService.ExampleServiceState();
+      exampleServiceState.name = UUID.randomUUID().toString();
+      String documentSelfLink = createDocument(exampleServiceState);
+
+      Operation result = xenonRestClient.get(documentSelfLink);
+      assertThat(result.getBody(ExampleService.ExampleServiceState.class).name, is(exampleServiceState.name));
+    }
+
+    @Test
+    public void testServiceHostNotInServerSet() throws Throwable {
+      List<String> localIpAddresses = OperationUtils.getLocalHostIpAddresses();
+      StaticServerSet serverSet = new StaticServerSet(
+          new InetSocketAddress(localIpAddresses.get(0), host.getPort() + 1));
+
+      XenonRestClient testXenonRestClient =
+          new XenonRestClient(serverSet, Executors.newFixedThreadPool(1), Executors.newScheduledThreadPool(1), host);
+      assertThat(testXenonRestClient.isServiceHostInServerSet(), is(false));
+      assertThat(testXenonRestClient.getServiceUri("/dummyPath").getPort(), is(host.getPort() + 1));
+    }
   }
 
   /**
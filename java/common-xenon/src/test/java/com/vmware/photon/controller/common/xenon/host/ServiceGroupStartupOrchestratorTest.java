@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.vmware.photon.controller.common.xenon.host;
+
+import com.vmware.photon.controller.common.xenon.XenonServiceGroup;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+
+import org.mockito.Matchers;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements tests for the {@link ServiceGroupStartupOrchestrator} class.
+ */
+public class ServiceGroupStartupOrchestratorTest {
+
+  private ScheduledExecutorService executor;
+  private ServiceHost host;
+  private Set<String> availableLinks;
+  private Set<String> unavailableLinks;
+
+  @BeforeMethod
+  public void setUp() {
+    executor = Executors.newScheduledThreadPool(4);
+    availableLinks = ConcurrentHashMap.newKeySet();
+    unavailableLinks = ConcurrentHashMap.newKeySet();
+
+    // Services become available 50 ms after availability was registered for, unless they never do.
+    host = mock(ServiceHost.class);
+    doAnswer(invocation -> {
+      Object[] arguments = invocation.getArguments();
+      Operation.CompletionHandler handler = (Operation.CompletionHandler) arguments[0];
+      for (String link : getLinks(arguments)) {
+        if (!unavailableLinks.contains(link)) {
+          executor.schedule(() -> {
+            availableLinks.add(link);
+            handler.handle(null, null);
+          }, 50, TimeUnit.MILLISECONDS);
+        }
+      }
+      return null;
+    }).when(host).registerForServiceAvailability(any(Operation.CompletionHandler.class),
+        Matchers.<String>anyVararg());
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testIndependentGroupsAreStartedInParallel() throws Throwable {
+    CountDownLatch bothStarting = new CountDownLatch(2);
+    FakeServiceGroup group1 = new FakeServiceGroup("group1", "/group1", bothStarting);
+    FakeServiceGroup group2 = new FakeServiceGroup("group2", "/group2", bothStarting);
+
+    ServiceGroupStartupOrchestrator orchestrator = new ServiceGroupStartupOrchestrator(host);
+    orchestrator.addServiceGroup(group1);
+    orchestrator.addServiceGroup(group2);
+    orchestrator.start();
+
+    assertThat(group1.sawOtherGroupStarting, is(true));
+    assertThat(group2.sawOtherGroupStarting, is(true));
+  }
+
+  @Test
+  public void testGroupIsStartedOnceItsDependenciesAreAvailable() throws Throwable {
+    FakeServiceGroup cloudStore = new FakeServiceGroup("cloudstore", "/cloudstore", null);
+    FakeServiceGroup scheduler = new FakeServiceGroup("scheduler", "/scheduler", null);
+    FakeServiceGroup housekeeper = new FakeServiceGroup("housekeeper", "/housekeeper", null);
+
+    ServiceGroupStartupOrchestrator orchestrator = new ServiceGroupStartupOrchestrator(host);
+    orchestrator.addServiceGroup(cloudStore);
+    orchestrator.addServiceGroup(scheduler, "cloudstore");
+    orchestrator.addServiceGroup(housekeeper, "cloudstore");
+    orchestrator.start();
+
+    assertThat(scheduler.availableLinksOnStart.contains("/cloudstore"), is(true));
+    assertThat(housekeeper.availableLinksOnStart.contains("/cloudstore"), is(true));
+
+    Map<String, String> timeline = orchestrator.getTimeline();
+    assertThat(timeline, hasKey("startup.cloudstore.start"));
+    assertThat(timeline, hasKey("startup.scheduler.dependencies"));
+    assertThat(timeline, hasKey("startup.housekeeper.start"));
+  }
+
+  @Test
+  public void testGroupIsStartedWhenItsDependenciesTimeOut() throws Throwable {
+    unavailableLinks.add("/cloudstore");
+    FakeServiceGroup cloudStore = new FakeServiceGroup("cloudstore", "/cloudstore", null);
+    FakeServiceGroup scheduler = new FakeServiceGroup("scheduler", "/scheduler", null);
+
+    ServiceGroupStartupOrchestrator orchestrator = new ServiceGroupStartupOrchestrator(host, 200);
+    orchestrator.addServiceGroup(cloudStore);
+    orchestrator.addServiceGroup(scheduler, "cloudstore");
+    orchestrator.start();
+
+    assertThat(scheduler.availableLinksOnStart.contains("/cloudstore"), is(false));
+    Map<String, String> timeline = orchestrator.getTimeline();
+    assertThat(timeline.get("startup.scheduler.dependencies"), endsWith("timed out"));
+    assertThat(timeline.get("startup.cloudstore.availability"), endsWith("-"));
+  }
+
+  @Test
+  public void testGroupWithoutAvailabilityLinksIsPolled() throws Throwable {
+    // Scheduled polls run right away, so the group is available once start returns.
+    doAnswer(invocation -> {
+      ((Runnable) invocation.getArguments()[0]).run();
+      return null;
+    }).when(host).schedule(any(Runnable.class), Matchers.anyLong(), any(TimeUnit.class));
+    FakeServiceGroup group = new FakeServiceGroup("group", null, null);
+
+    ServiceGroupStartupOrchestrator orchestrator = new ServiceGroupStartupOrchestrator(host);
+    orchestrator.addServiceGroup(group);
+    orchestrator.start();
+
+    assertThat(group.readyChecks, is(3));
+    verify(host, times(2)).schedule(any(Runnable.class),
+        eq(ServiceGroupStartupOrchestrator.AVAILABILITY_POLL_INTERVAL_MILLIS), eq(TimeUnit.MILLISECONDS));
+    Map<String, String> timeline = orchestrator.getTimeline();
+    assertThat(timeline.get("startup.group.availability").endsWith("-"), is(false));
+    assertThat(timeline.get("startup." + ServiceGroupStartupOrchestrator.SERVICE_GROUPS_PHASE).endsWith("-"),
+        is(false));
+  }
+
+  @Test
+  public void testStartFailureIsThrown() throws Throwable {
+    RuntimeException failure = new RuntimeException("start failed");
+    FakeServiceGroup group = new FakeServiceGroup("group", "/group", null);
+    group.startFailure = failure;
+
+    ServiceGroupStartupOrchestrator orchestrator = new ServiceGroupStartupOrchestrator(host);
+    orchestrator.addServiceGroup(group);
+    try {
+      orchestrator.start();
+      fail("start should have failed");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(failure));
+    }
+
+    assertThat(orchestrator.getTimeline().get("startup.group.start"), endsWith("failed"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class,
+      expectedExceptionsMessageRegExp = "Service group scheduler depends on unknown service group cloudstore")
+  public void testUnknownDependencyIsRejected() {
+    new ServiceGroupStartupOrchestrator(host)
+        .addServiceGroup(new FakeServiceGroup("scheduler", "/scheduler", null), "cloudstore");
+  }
+
+  private static List<String> getLinks(Object[] arguments) {
+    if (arguments.length == 2 && arguments[1] instanceof String[]) {
+      return Arrays.asList((String[]) arguments[1]);
+    }
+
+    List<String> links = new ArrayList<>();
+    for (int i = 1; i < arguments.length; i++) {
+      links.add((String) arguments[i]);
+    }
+    return links;
+  }
+
+  /**
+   * A service group which records the services that were available when it was started.
+   */
+  private class FakeServiceGroup implements XenonServiceGroup {
+    private final String name;
+    private final String availabilityLink;
+    private final CountDownLatch starting;
+    private volatile Set<String> availableLinksOnStart;
+    private volatile boolean sawOtherGroupStarting;
+    private volatile RuntimeException startFailure;
+    private volatile int readyChecks;
+
+    private FakeServiceGroup(String name, String availabilityLink, CountDownLatch starting) {
+      this.name = name;
+      this.availabilityLink = availabilityLink;
+      this.starting = starting;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void start() throws Throwable {
+      availableLinksOnStart = Collections.unmodifiableSet(new HashSet<>(availableLinks));
+      if (starting != null) {
+        starting.countDown();
+        sawOtherGroupStarting = starting.await(10, TimeUnit.SECONDS);
+      }
+
+      if (startFailure != null) {
+        throw startFailure;
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      return ++readyChecks > 2;
+    }
+
+    @Override
+    public Collection<String> getAvailabilityLinks() {
+      return availabilityLink == null ? Collections.emptyList() : Collections.singletonList(availabilityLink);
+    }
+
+    @Override
+    public void setPhotonControllerXenonHost(PhotonControllerXenonHost photonControllerXenonHost) {
+    }
+  }
+}
@@ -20,6 +20,7 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 /**
  * Tests {@link TaskSchedulerServiceStateBuilder}.
@@ -61,6 +62,17 @@ public class TaskSchedulerServiceStateBuilderTest {
       TaskSchedulerService.State state = builder.build();
       assertThat(state.schedulerServiceClassName, is(TestServiceWithStage.class.getTypeName()));
       assertThat(state.tasksLimits, is(10));
+      assertThat(state.resyncIntervalMicros, nullValue());
+    }
+
+    @Test
+    public void testNotifyingService() throws Throwable {
+      builder = new TaskSchedulerServiceStateBuilder(TestServiceWithStage.class, 10,
+          TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS);
+
+      TaskSchedulerService.State state = builder.build();
+      assertThat(state.tasksLimits, is(10));
+      assertThat(state.resyncIntervalMicros, is(TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS));
     }
   }
 }
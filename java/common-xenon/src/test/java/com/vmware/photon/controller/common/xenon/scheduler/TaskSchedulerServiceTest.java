@@ -32,10 +32,13 @@ import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
@@ -59,6 +62,8 @@ public class TaskSchedulerServiceTest {
     TaskSchedulerService.State state = new TaskSchedulerService.State();
     state.schedulerServiceClassName = TestServiceWithStage.class.getTypeName();
     state.tasksLimits = tasksLimit;
+    // the dummy services do not notify the scheduler, so let maintenance pick them up
+    state.resyncIntervalMicros = testInterval;
     return state;
   }
 
@@ -122,6 +127,21 @@ public class TaskSchedulerServiceTest {
       TaskSchedulerService.State savedState = host.getServiceState(TaskSchedulerService.State.class, selfLink);
       assertThat(savedState.documentSelfLink, is(selfLink));
     }
+
+    /**
+     * Test that services which do not notify the scheduler are still picked up on every maintenance.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void testDefaultResyncInterval() throws Throwable {
+      TaskSchedulerService.State startState = buildValidStartupState();
+      startState.resyncIntervalMicros = null;
+      host.startServiceSynchronously(service, startState, selfLink);
+
+      TaskSchedulerService.State savedState = host.getServiceState(TaskSchedulerService.State.class, selfLink);
+      assertThat(savedState.resyncIntervalMicros, is(TaskSchedulerService.DEFAULT_RESYNC_INTERVAL_MICROS));
+    }
   }
 
   /**
@@ -278,7 +298,57 @@ public class TaskSchedulerServiceTest {
       assertThat(response.results.documentLinks.size(), is(tasksLimit + 3));
     }
 
+    @Test
+    public void testNotificationsStartWaitingTasks() throws Throwable {
+      // maintenance never runs, so only the notifications can start the services
+      initEnvironment(1, TimeUnit.HOURS.toMicros(1));
+
+      TestServiceWithStage.State startState = new TestServiceWithStage.State();
+      List<String> docLinks = new ArrayList<>();
+      for (int i = 0; i < tasksLimit + 1; i++) {
+        docLinks.add(environment.sendPostAndWait(TestServiceWithStageFactory.SELF_LINK, startState)
+            .getBody(TestServiceWithStage.State.class).documentSelfLink);
+      }
+
+      TaskSchedulerService.State created = new TaskSchedulerService.State();
+      created.createdTaskLink = docLinks.get(0);
+      environment.sendPatchAndWait(selfLink, created);
+
+      QueryTask createdQuery = QueryTask.create(
+          QueryTaskUtils.buildTaskStatusQuerySpec(
+              TestServiceWithStage.State.class,
+              TaskState.TaskStage.CREATED))
+          .setDirect(true);
+      QueryTask response = environment.waitForQuery(createdQuery,
+          (QueryTask queryTask) -> queryTask.results.documentLinks.size() == 1);
+      String waitingLink = response.results.documentLinks.get(0);
+      String startedLink = docLinks.stream().filter(link -> !link.equals(waitingLink)).findFirst().get();
+
+      TestServiceWithStage.State finishPatch = new TestServiceWithStage.State();
+      finishPatch.taskInfo = new TaskState();
+      finishPatch.taskInfo.stage = TaskState.TaskStage.FINISHED;
+      environment.sendPatchAndWait(startedLink, finishPatch);
+
+      TaskSchedulerService.State finished = new TaskSchedulerService.State();
+      finished.finishedTaskLink = startedLink;
+      environment.sendPatchAndWait(selfLink, finished);
+
+      environment.waitForQuery(createdQuery,
+          (QueryTask queryTask) -> queryTask.results.documentLinks.isEmpty());
+      TestServiceWithStage.State waitingState =
+          environment.getServiceState(waitingLink, TestServiceWithStage.State.class);
+      assertThat(waitingState.taskInfo.stage, is(TaskState.TaskStage.STARTED));
+
+      TaskSchedulerService.State savedState = environment.getServiceState(selfLink, TaskSchedulerService.State.class);
+      assertThat(savedState.createdTaskLink, nullValue());
+      assertThat(savedState.finishedTaskLink, nullValue());
+    }
+
     private void initEnvironment(int count) throws Throwable {
+      initEnvironment(count, testInterval);
+    }
+
+    private void initEnvironment(int count, long maintenanceInterval) throws Throwable {
       BasicServiceHost[] hosts = new BasicServiceHost[count];
       for (int i = 0; i < count; i++) {
         hosts[i] = BasicServiceHost.create();
@@ -294,7 +364,7 @@ public class TaskSchedulerServiceTest {
 
       for (BasicServiceHost host : hosts) {
         service = new TaskSchedulerService();
-        service.setMaintenanceIntervalMicros(testInterval);
+        service.setMaintenanceIntervalMicros(maintenanceInterval);
         host.startServiceSynchronously(service, buildValidStartupState(), selfLink, false);
       }
     }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.xenon.validation;
+
+import com.vmware.photon.controller.common.xenon.validation.ServiceDocumentMetadata.AnnotatedField;
+import com.vmware.xenon.common.ServiceDocument;
+
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class implements tests for {@link ServiceDocumentMetadata}.
+ */
+public class ServiceDocumentMetadataTest {
+
+  @Test
+  public void testMetadataIsCachedPerClass() {
+    assertThat(ServiceDocumentMetadata.of(AnnotatedDocument.class),
+        sameInstance(ServiceDocumentMetadata.of(AnnotatedDocument.class)));
+  }
+
+  @Test
+  public void testAnnotatedFieldsInDeclarationOrder() {
+    List<AnnotatedField<NotNull>> fields =
+        ServiceDocumentMetadata.of(AnnotatedDocument.class).getAnnotatedFields(NotNull.class);
+
+    assertThat(getNames(fields), contains("first", "second", "third"));
+  }
+
+  @Test
+  public void testAnnotationValuesAreKept() {
+    List<AnnotatedField<Range>> fields =
+        ServiceDocumentMetadata.of(AnnotatedDocument.class).getAnnotatedFields(Range.class);
+
+    assertThat(getNames(fields), contains("second"));
+    assertThat(fields.get(0).getAnnotation().min(), is(1L));
+    assertThat(fields.get(0).getAnnotation().max(), is(10L));
+  }
+
+  @Test
+  public void testMissingAnnotationHasNoFields() {
+    assertThat(ServiceDocumentMetadata.of(AnnotatedDocument.class).getAnnotatedFields(WriteOnce.class), is(empty()));
+  }
+
+  @Test
+  public void testPatchableFieldsSkipStaticAndImmutableFields() {
+    List<String> names = ServiceDocumentMetadata.of(AnnotatedDocument.class).getPatchableFields().stream()
+        .map(Field::getName)
+        .collect(Collectors.toList());
+
+    assertThat(names, contains("second", "third"));
+  }
+
+  @Test
+  public void testOnlyDeclaredFieldsAreIncluded() {
+    ServiceDocumentMetadata metadata = ServiceDocumentMetadata.of(DerivedDocument.class);
+
+    assertThat(getNames(metadata.getAnnotatedFields(NotNull.class)), contains("fourth"));
+    assertThat(metadata.getPatchableFields().size(), is(1));
+  }
+
+  private static List<String> getNames(List<? extends AnnotatedField<?>> fields) {
+    return fields.stream().map(field -> field.getField().getName()).collect(Collectors.toList());
+  }
+
+  /**
+   * Test ServiceDocument.
+   */
+  public static class AnnotatedDocument extends ServiceDocument {
+    public static final String STATIC_FIELD = "staticField";
+
+    @NotNull
+    @Immutable
+    public String first;
+
+    @NotNull
+    @Range(min = 1, max = 10)
+    public Integer second;
+
+    @NotNull
+    public Long third;
+  }
+
+  /**
+   * Test ServiceDocument.
+   */
+  public static class DerivedDocument extends AnnotatedDocument {
+    @NotNull
+    public Boolean fourth;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.common.thrift;
+
+import com.vmware.photon.controller.common.ssl.KeyStoreUtils;
+
+import com.example.echo.EchoRequest;
+import com.example.echo.Echoer;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.TypeLiteral;
+import org.apache.curator.test.DirectoryUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncSSLClientManager;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TSSLTransportFactory;
+import org.apache.thrift.transport.TServerSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trips through {@link ClientProxy} and the client pool against an in-process thrift echo server,
+ * the same path HostClient and AgentControlClient calls take. It lives in the thrift package because the client
+ * factory constructor is package-private. Run with {@code ../gradlew jmh} from the common directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(8)
+@Fork(1)
+public class ClientProxyBenchmark {
+
+  private static final long CALL_TIMEOUT_SECONDS = 10;
+
+  @Param({"1", "8", "32"})
+  public int maxClients;
+
+  private final String keyPath = "/tmp/" + UUID.randomUUID().toString();
+
+  private ExecutorService serverExecutor;
+
+  private TServer server;
+
+  private ClientPool<Echoer.AsyncSSLClient> clientPool;
+
+  private Echoer.AsyncIface echoer;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    KeyStoreUtils.generateKeys(keyPath);
+    TSSLTransportFactory.TSSLTransportParameters params = new TSSLTransportFactory.TSSLTransportParameters();
+    params.setKeyStore(keyPath + "/" + KeyStoreUtils.KEY_STORE_NAME, KeyStoreUtils.KEY_PASS);
+    params.setTrustStore(keyPath + "/" + KeyStoreUtils.KEY_STORE_NAME, KeyStoreUtils.KEY_PASS);
+
+    SSLContext sslContext = KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL);
+    ThriftModule thriftModule = new ThriftModule(sslContext);
+
+    TServerSocket transport = TSSLTransportFactory.getServerSocket(0, 0, InetAddress.getByName("127.0.0.1"), params);
+    server = new TThreadPoolServer(new TThreadPoolServer.Args(transport)
+        .transportFactory(new TFastFramedTransport.Factory())
+        .protocolFactory(thriftModule.getTProtocolFactory())
+        .processor(new Echoer.Processor<>(new EndToEndTest.EchoServer())));
+
+    // this needs to happen after thrift initialized its SSLContext
+    // otherwise we will try to validate the certificates
+    KeyStoreUtils.acceptAllCerts(KeyStoreUtils.THRIFT_PROTOCOL);
+
+    serverExecutor = Executors.newSingleThreadExecutor();
+    serverExecutor.submit(() -> server.serve());
+
+    TypeLiteral<Echoer.AsyncSSLClient> type = new TypeLiteral<Echoer.AsyncSSLClient>() {};
+    TAsyncSSLClientFactory<Echoer.AsyncSSLClient> clientFactory =
+        new TAsyncSSLClientFactory<>(type, new TAsyncSSLClientManager());
+    InetSocketAddress address = new InetSocketAddress("127.0.0.1", transport.getServerSocket().getLocalPort());
+    clientPool = thriftModule.getClientPoolFactory(clientFactory).create(ImmutableSet.of(address),
+        new ClientPoolOptions().setMaxClients(maxClients).setMaxWaiters(1000).setTimeout(30, TimeUnit.SECONDS));
+    echoer = thriftModule.getClientProxyFactory(type).create(clientPool).get();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Throwable {
+    clientPool.close();
+    server.stop();
+    serverExecutor.shutdownNow();
+    DirectoryUtils.deleteRecursively(new File(keyPath));
+  }
+
+  @Benchmark
+  public String echo() throws Throwable {
+    SettableFuture<String> result = SettableFuture.create();
+    echoer.echo("Hello", new ResultCallback<Echoer.AsyncSSLClient.echo_call>(result) {
+      @Override
+      String getResult(Echoer.AsyncSSLClient.echo_call response) throws TException {
+        return response.getResult();
+      }
+    });
+    return result.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Same as {@link #echo()} but with a request that carries TracingInfo, so the tracing setter is exercised too.
+   */
+  @Benchmark
+  public String tracedEcho() throws Throwable {
+    SettableFuture<String> result = SettableFuture.create();
+    echoer.tracedEcho(new EchoRequest("Hello"), new ResultCallback<Echoer.AsyncSSLClient.tracedEcho_call>(result) {
+      @Override
+      String getResult(Echoer.AsyncSSLClient.tracedEcho_call response) throws TException {
+        return response.getResult();
+      }
+    });
+    return result.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Completes a future with the result of an echo call.
+   *
+   * @param <T> thrift call type
+   */
+  private abstract static class ResultCallback<T> implements AsyncMethodCallback<T> {
+
+    private final SettableFuture<String> result;
+
+    ResultCallback(SettableFuture<String> result) {
+      this.result = result;
+    }
+
+    abstract String getResult(T response) throws TException;
+
+    @Override
+    public void onComplete(T response) {
+      try {
+        result.set(getResult(response));
+      } catch (TException e) {
+        result.setException(e);
+      }
+    }
+
+    @Override
+    public void onError(Exception exception) {
+      result.setException(exception);
+    }
+  }
+}
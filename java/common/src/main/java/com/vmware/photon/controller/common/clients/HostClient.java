@@ -117,6 +117,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -507,6 +508,41 @@ public class HostClient {
     return ResponseValidator.checkCreateVmResponse(syncHandler.getResponse());
   }
 
+  /**
+   * This method performs an asynchronous Thrift call to create a VM without
+   * blocking the calling thread.
+   *
+   * @param reservation           Supplies a VM reservation.
+   * @param environment           Supplies extra environment settings for the VM.
+   * @return A future which completes with the validated CreateVmResponse
+   * object generated by the Thrift call.
+   * @throws RpcException
+   */
+  @RpcMethod
+  public CompletableFuture<CreateVmResponse> createVmAsync(String reservation,
+                                                           Map<String, String> environment)
+      throws RpcException {
+    String hostIp = getHostIp();
+    CompletableFuture<CreateVmResponse> future = new CompletableFuture<>();
+    createVm(reservation, environment, new AsyncMethodCallback<Host.AsyncSSLClient.create_vm_call>() {
+      @Override
+      public void onComplete(Host.AsyncSSLClient.create_vm_call call) {
+        try {
+          logger.info("finished create_vm target {}, reservation {}", hostIp, reservation);
+          future.complete(ResponseValidator.checkCreateVmResponse(call.getResult()));
+        } catch (Throwable t) {
+          future.completeExceptionally(t);
+        }
+      }
+
+      @Override
+      public void onError(Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
   /**
    * This method performs an asynchronous Thrift call to delete one or more
    * disks. On completion, the specified handler is invoked.
@@ -34,20 +34,26 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.SecureRandom;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Basic implementation of {@link ClientPool}.
  * It is a static pool without adding/removing or reusing socket.
+ * <p>
+ * The pool does not take a lock: client slots are reserved with a CAS on {@link #clientCount} before a client is
+ * created, and callers that cannot get a slot wait on a lock-free queue. Whoever frees a slot (a release) or queues
+ * a waiter re-checks the other side afterwards, so a waiter is never stranded while a slot is free.
  *
  * @param <C> thrift async client type
  */
@@ -65,7 +71,9 @@ public class BasicClientPool<C extends TAsyncSSLClient> implements ClientPool<C>
   private final InetSocketAddress[] availableServers;
   private final Map<C, TNonblockingSSLTransport> clientTransportMap;
   private final Queue<Promise<C>> promises;
-  private boolean closed;
+  private final AtomicInteger clientCount;
+  private final AtomicInteger waiterCount;
+  private final AtomicBoolean closed;
 
   @Inject
   public BasicClientPool(SecureRandom random,
@@ -83,70 +91,79 @@ public class BasicClientPool<C extends TAsyncSSLClient> implements ClientPool<C>
     this.thriftFactory = thriftFactory;
     this.scheduledExecutor = scheduledExecutor;
     this.options = new ClientPoolOptions(options);
-    this.clientTransportMap = new HashMap<>();
+    this.clientTransportMap = new ConcurrentHashMap<>();
     this.availableServers = servers.toArray(new InetSocketAddress[servers.size()]);
-    this.promises = new LinkedList<>();
-    this.closed = false;
+    this.promises = new ConcurrentLinkedQueue<>();
+    this.clientCount = new AtomicInteger();
+    this.waiterCount = new AtomicInteger();
+    this.closed = new AtomicBoolean(false);
   }
 
   @Override
-  public synchronized ListenableFuture<C> acquire() {
-    if (promises.size() < options.getMaxWaiters()) {
-      SettableFuture<C> future = SettableFuture.create();
-      Promise<C> promise = new Promise<>(future);
-      promises.add(promise);
-      processPromises();
-      if (options.getTimeoutMs() > 0 && !future.isDone()) {
-        setTimeout(promise);
+  public ListenableFuture<C> acquire() {
+    // Fast path: nobody is queued ahead of us and a slot is free, so hand out a client without queueing.
+    if (waiterCount.get() == 0 && tryReserveClient()) {
+      try {
+        return Futures.immediateFuture(createNewClient());
+      } catch (IOException | TTransportException ex) {
+        logger.error("createNewClient has IOException", ex);
+        clientCount.decrementAndGet();
+        return Futures.immediateFailedFuture(ex);
       }
-      return future;
     }
 
-    return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
+    if (waiterCount.incrementAndGet() > options.getMaxWaiters()) {
+      waiterCount.decrementAndGet();
+      return Futures.immediateFailedFuture(new ClientPoolException("Too many waiters"));
+    }
+
+    SettableFuture<C> future = SettableFuture.create();
+    Promise<C> promise = new Promise<>(future);
+    promises.add(promise);
+    processPromises();
+    if (options.getTimeoutMs() > 0 && !future.isDone()) {
+      setTimeout(promise);
+    }
+    return future;
   }
 
   @Override
-  public synchronized boolean isClosed() {
-      return this.closed;
+  public boolean isClosed() {
+    return closed.get();
   }
 
   @Override
-  public synchronized void close() {
+  public void close() {
     logger.debug("{}, closing client pool {}", options.getServiceName(), System.identityHashCode(this));
-    Preconditions.checkState(!closed);
+    Preconditions.checkState(closed.compareAndSet(false, true));
 
-    Iterator<Promise<C>> promiseIterator = promises.iterator();
-    while (promiseIterator.hasNext()) {
-      Promise<C> promise = promiseIterator.next();
+    Promise<C> promise;
+    while ((promise = pollPromise()) != null) {
       promise.setException(new ClientPoolException("Client pool closing"));
-      promiseIterator.remove();
     }
 
-    for (TNonblockingSSLTransport transport : clientTransportMap.values()) {
-      transport.close();
+    Iterator<C> clientIterator = clientTransportMap.keySet().iterator();
+    while (clientIterator.hasNext()) {
+      discardClient(clientIterator.next());
     }
-
-    clientTransportMap.clear();
-    closed = true;
   }
 
   @Override
-  public synchronized void release(C client, boolean healthy) {
+  public void release(C client, boolean healthy) {
     logger.debug("{}, client pool {}, releasing: {} healthy: {}",
         options.getServiceName(), System.identityHashCode(this), client, healthy);
-    if (closed) {
+    if (closed.get()) {
       logger.warn("{}, client pool {} is closed already", options.getServiceName(), System.identityHashCode(this));
     } else {
-      TNonblockingSSLTransport transport = clientTransportMap.remove(client);
-      transport.close();
+      discardClient(client);
     }
 
     processPromises();
   }
 
   @Override
-  public synchronized int getWaiters() {
-    return promises.size();
+  public int getWaiters() {
+    return waiterCount.get();
   }
 
   @VisibleForTesting
@@ -160,34 +177,102 @@ public class BasicClientPool<C extends TAsyncSSLClient> implements ClientPool<C>
   }
 
   private void processPromises() {
-    while (!promises.isEmpty()) {
-      // Find a promise that hasn't timeout yet
-      Promise<C> promise = promises.peek();
-      if (promise.isDone()) {
-        promises.remove();
-        continue;
+    while (true) {
+      // Drop promises that have timed out already, so we don't create a client nobody is waiting for.
+      Promise<C> head = promises.peek();
+      while (head != null && head.isDone()) {
+        if (promises.remove(head)) {
+          waiterCount.decrementAndGet();
+        }
+        head = promises.peek();
+      }
+
+      if (head == null) {
+        return;
       }
 
       logger.debug("process promise");
-      if (!canCreateClient()) {
-        logger.info("{}, client pool {}, not creating new client, request is queued until a client is available: " +
+      if (!tryReserveClient()) {
+        logger.debug("{}, client pool {}, not creating new client, request is queued until a client is available: " +
                 "client(s) in use {}, request(s) waiting {}, server count {}",
-            options.getServiceName(), System.identityHashCode(this), clientTransportMap.size(),
-            promises.size(), availableServers.length);
+            options.getServiceName(), System.identityHashCode(this), clientCount.get(),
+            waiterCount.get(), availableServers.length);
         return;
       }
 
+      C client;
       try {
-        C client = createNewClient();
-        logger.debug("{}, client pool {}, set promise with client {}",
-            options.getServiceName(), System.identityHashCode(this), client);
-        promises.remove().set(client);
-        return;
+        client = createNewClient();
       } catch (IOException | TTransportException ex) {
         logger.error("createNewClient has IOException", ex);
-        promises.remove().setException(ex);
-        break;
+        clientCount.decrementAndGet();
+        Promise<C> promise = pollPromise();
+        if (promise != null) {
+          promise.setException(ex);
+        }
+        return;
+      }
+
+      if (!fulfill(client)) {
+        // Another thread served the remaining waiters (or they timed out) while we were connecting.
+        discardClient(client);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Hands the client to the oldest waiter that is still pending.
+   *
+   * @return false if there was no pending waiter left
+   */
+  private boolean fulfill(C client) {
+    Promise<C> promise;
+    while ((promise = pollPromise()) != null) {
+      if (closed.get()) {
+        promise.setException(new ClientPoolException("Client pool closing"));
+        continue;
       }
+
+      logger.debug("{}, client pool {}, set promise with client {}",
+          options.getServiceName(), System.identityHashCode(this), client);
+      if (promise.set(client)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private Promise<C> pollPromise() {
+    Promise<C> promise = promises.poll();
+    if (promise != null) {
+      waiterCount.decrementAndGet();
+    }
+    return promise;
+  }
+
+  private boolean tryReserveClient() {
+    if (availableServers.length == 0) {
+      return false;
+    }
+
+    while (true) {
+      int current = clientCount.get();
+      if (current >= options.getMaxClients()) {
+        return false;
+      }
+      if (clientCount.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void discardClient(C client) {
+    TNonblockingSSLTransport transport = clientTransportMap.remove(client);
+    if (transport != null) {
+      transport.close();
+      clientCount.decrementAndGet();
     }
   }
 
@@ -195,19 +280,13 @@ public class BasicClientPool<C extends TAsyncSSLClient> implements ClientPool<C>
     ScheduledFuture<Void> schedule = scheduledExecutor.schedule(new Callable<Void>() {
       @Override
       public Void call() {
-        synchronized (BasicClientPool.this) {
-          promise.setException(new ClientPoolException("Timeout acquiring client"));
-        }
+        promise.setException(new ClientPoolException("Timeout acquiring client"));
         return VOID;
       }
     }, getPromiseTimeoutMs(), TimeUnit.MILLISECONDS);
     promise.setTimeout(schedule);
   }
 
-  private boolean canCreateClient() {
-    return clientTransportMap.size() < options.getMaxClients() && availableServers.length > 0;
-  }
-
   private C createNewClient() throws IOException, TTransportException {
     logger.debug("start createNewClient");
     int randomIndex = random.nextInt(availableServers.length);
@@ -225,6 +304,6 @@ public class BasicClientPool<C extends TAsyncSSLClient> implements ClientPool<C>
   }
 
   private long getPromiseTimeoutMs() {
-    return options.getTimeoutMs() * Math.max(1, promises.size());
+    return options.getTimeoutMs() * Math.max(1, waiterCount.get());
   }
 }
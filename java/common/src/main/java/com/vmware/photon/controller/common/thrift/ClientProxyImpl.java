@@ -36,14 +36,24 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import javax.inject.Named;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
 /**
  * Implementation of {@link ClientProxy}.
  * It's NOT thread-safe (as we don't provide atomicity for setting timeout and using that same timeout in the client
  * acquired from the pool).
+ * <p>
+ * Proxied methods are dispatched through {@link MethodHandle}s that are resolved once per method (and once per
+ * request class for the tracing setter), so the per-call cost is a map lookup rather than a reflective lookup and
+ * {@link Method#invoke}. When the pool hands out a client immediately the call is made on the caller's thread
+ * instead of being bounced through the executor.
  *
  * @param <C> async thrift client type
  */
@@ -51,10 +61,39 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
 
   private static final Logger logger = LoggerFactory.getLogger(ClientProxyImpl.class);
 
+  private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  private static final MethodType TRACING_SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, TracingInfo.class);
+
+  /**
+   * Spread invokers for the proxied client methods, shared by all proxies as they only depend on the method.
+   */
+  private static final ConcurrentMap<Method, MethodHandle> invokers = new ConcurrentHashMap<>();
+
+  /**
+   * setTracing_info setters of the thrift request classes; empty for requests that don't carry TracingInfo.
+   */
+  private static final ClassValue<Optional<MethodHandle>> tracingSetters = new ClassValue<Optional<MethodHandle>>() {
+    @Override
+    protected Optional<MethodHandle> computeValue(Class<?> type) {
+      try {
+        Method setter = type.getMethod("setTracing_info", TracingInfo.class);
+        return Optional.of(MethodHandles.publicLookup().unreflect(setter).asType(TRACING_SETTER_TYPE));
+      } catch (NoSuchMethodException e) {
+        // This particular request type doesn't have TracingInfo field
+        return Optional.empty();
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  };
+
   private final ExecutorService executor;
   private final ClientPool<C> clientPool;
   private final Enhancer enhancer;
   private long timeout;
+  private C proxy;
 
   @Inject
   public ClientProxyImpl(@Named("ClientProxyExecutor") ExecutorService executor,
@@ -73,7 +112,8 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
   }
 
   /**
-   * #get returns a proxy object that implements interface C. Every time method is called on the proxy object,
+   * #get returns a proxy object that implements interface C. The proxy holds no state of its own, so it is only
+   * created once and the same instance is returned to every caller. Every time method is called on the proxy object,
    * it gets new client from the pool and calls the requested method on that client. Client pool acquisition is
    * done asynchronously, so calls never block, thus keeping Thrift async client semantics intact.
    * <p>
@@ -90,9 +130,12 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
   @Override
   @SuppressWarnings("unchecked")
   public synchronized C get() {
-    return (C) this.enhancer.create(
-        new Class[]{TProtocolFactory.class, TAsyncSSLClientManager.class, TNonblockingSSLTransport.class},
-        new Object[]{null, null, null});
+    if (proxy == null) {
+      proxy = (C) this.enhancer.create(
+          new Class[]{TProtocolFactory.class, TAsyncSSLClientManager.class, TNonblockingSSLTransport.class},
+          new Object[]{null, null, null});
+    }
+    return proxy;
   }
 
   private MethodInterceptor createMethodInterceptor() {
@@ -111,24 +154,28 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
       }
 
       final AsyncMethodCallback<Object> callback = getCallback(args);
+      final MethodHandle invoker = getInvoker(method);
       ListenableFuture<C> futureClient = clientPool.acquire();
 
+      if (futureClient.isDone()) {
+        // The pool had a client ready, there is nothing to wait for so skip the executor hand-off.
+        C client;
+        try {
+          client = Futures.getUnchecked(futureClient);
+        } catch (Throwable t) {
+          logger.error("Exception during acquiring client for method {}", methodName, t);
+          handleException(callback, t.getCause() != null ? t.getCause() : t);
+          return null;
+        }
+
+        invoke(client, invoker, methodName, args, callback);
+        return null;
+      }
+
       Futures.addCallback(futureClient, new FutureCallback<C>() {
         @Override
         public void onSuccess(C client) {
-          client.setTimeout(timeout);
-          logger.debug("Timeout set for the client {}", timeout);
-
-          AsyncMethodCallback<Object> wrappedCallback = wrapCallback(client, callback);
-          args[args.length - 1] = wrappedCallback;
-          setupTracing(method, args);
-
-          try {
-            method.invoke(client, args);
-          } catch (Throwable e) {
-            logger.error("Error invoking method {}", methodName, e);
-            handleException(wrappedCallback, e);
-          }
+          invoke(client, invoker, methodName, args, callback);
         }
 
         @Override
@@ -142,6 +189,38 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
     };
   }
 
+  private void invoke(C client, MethodHandle invoker, String methodName, Object[] args,
+                      AsyncMethodCallback<Object> callback) {
+    client.setTimeout(timeout);
+    logger.debug("Timeout set for the client {}", timeout);
+
+    AsyncMethodCallback<Object> wrappedCallback = wrapCallback(client, callback);
+    args[args.length - 1] = wrappedCallback;
+
+    try {
+      setupTracing(args);
+      Object ignored = invoker.invokeExact((Object) client, args);
+    } catch (Throwable e) {
+      logger.error("Error invoking method {}", methodName, e);
+      handleException(wrappedCallback, e);
+    }
+  }
+
+  private static MethodHandle getInvoker(Method method) {
+    MethodHandle invoker = invokers.get(method);
+    if (invoker == null) {
+      try {
+        invoker = MethodHandles.publicLookup().unreflect(method)
+            .asSpreader(Object[].class, method.getParameterCount())
+            .asType(INVOKER_TYPE);
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException("Cannot proxy method " + method, e);
+      }
+      invokers.putIfAbsent(method, invoker);
+    }
+    return invoker;
+  }
+
   /**
    * Extract the current request ID from the Logging MDC, and convert it to
    * a TracingInfo. This will be passed through Thrift so that we can preserve
@@ -159,34 +238,17 @@ public class ClientProxyImpl<C extends TAsyncSSLClient> implements ClientProxy<C
   /**
    * Sets up Thrift request tracing if method supports it.
    *
-   * @param method Method being called
-   * @param args   Method arguments
+   * @param args Method arguments
    */
-  private void setupTracing(Method method, Object[] args) {
-    Method tracingMethod = extractTracingMethod(args);
-
-    if (tracingMethod == null) {
-      return;
-    }
-
-    try {
-      tracingMethod.invoke(args[0], getRequestTracingInfo());
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  private Method extractTracingMethod(Object[] args) {
+  private void setupTracing(Object[] args) throws Throwable {
     if (args.length < 1 || !(args[0] instanceof TBase)) {
       // No tracing possible, no request provided
-      return null;
+      return;
     }
 
-    try {
-      return args[0].getClass().getMethod("setTracing_info", TracingInfo.class);
-    } catch (NoSuchMethodException e) {
-      // This particular request type doesn't have TracingInfo field
-      return null;
+    Optional<MethodHandle> tracingSetter = tracingSetters.get(args[0].getClass());
+    if (tracingSetter.isPresent()) {
+      tracingSetter.get().invokeExact(args[0], getRequestTracingInfo());
     }
   }
 
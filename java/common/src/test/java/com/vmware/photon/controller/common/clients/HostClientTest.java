@@ -169,6 +169,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -1048,6 +1049,41 @@ public class HostClientTest {
           is(createVmResponse));
     }
 
+    @Test
+    public void testAsyncSuccess() throws Exception {
+      CreateVmResponse createVmResponse = new CreateVmResponse();
+      createVmResponse.setResult(CreateVmResultCode.OK);
+      final Host.AsyncSSLClient.create_vm_call createVmCall = mock(Host.AsyncSSLClient.create_vm_call.class);
+      doReturn(createVmResponse).when(createVmCall).getResult();
+      doAnswer(getAnswer(createVmCall))
+          .when(clientProxy).create_vm(any(CreateVmRequest.class), any(AsyncMethodCallback.class));
+
+      hostClient.setClientProxy(clientProxy);
+      assertThat(hostClient.createVmAsync(reservation, null).get(),
+          is(createVmResponse));
+    }
+
+    @Test
+    public void testAsyncFailureResult() throws Exception {
+      CreateVmResponse createVmResponse = new CreateVmResponse();
+      createVmResponse.setResult(CreateVmResultCode.INVALID_RESERVATION);
+      createVmResponse.setError(CreateVmResultCode.INVALID_RESERVATION.toString());
+
+      final Host.AsyncSSLClient.create_vm_call createVmCall = mock(Host.AsyncSSLClient.create_vm_call.class);
+      doReturn(createVmResponse).when(createVmCall).getResult();
+      doAnswer(getAnswer(createVmCall))
+          .when(clientProxy).create_vm(any(CreateVmRequest.class), any(AsyncMethodCallback.class));
+
+      hostClient.setClientProxy(clientProxy);
+
+      try {
+        hostClient.createVmAsync(reservation, null).get();
+        fail("Asynchronous createVm call should complete exceptionally on failure result");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InvalidReservationException);
+      }
+    }
+
     @Test
     public void testFailureNullHostIp() throws Exception {
       try {
@@ -48,9 +48,14 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests {@link BasicClientPool}.
@@ -142,6 +147,54 @@ public class BasicClientPoolTest extends PowerMockTestCase {
     assertThat(pool.getClientTransportMap().size(), is(1));
   }
 
+  @Test
+  public void testConcurrentAcquireAndRelease() throws Exception {
+    final int poolMaxClients = 4;
+    final int threadCount = 8;
+    final int acquiresPerThread = 25;
+
+    List<Echoer.AsyncSSLClient> clients = new ArrayList<>();
+    List<Echoer.AsyncSSLClient> acquiredClients = new ArrayList<>();
+    setupPool(poolMaxClients, threadCount, Collections.singleton(InetSocketAddress.createUnresolved("/127.0.0.1", 80)),
+        Collections.synchronizedList(clients), acquiredClients);
+    for (Echoer.AsyncSSLClient acquiredClient : acquiredClients) {
+      pool.release(acquiredClient, true);
+    }
+
+    final AtomicInteger inUse = new AtomicInteger();
+    final AtomicInteger maxInUse = new AtomicInteger();
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++) {
+        futures.add(executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < acquiresPerThread; j++) {
+              Echoer.AsyncSSLClient client =
+                  Futures.get(pool.acquire(), 5, TimeUnit.SECONDS, ClientPoolException.class);
+              int current = inUse.incrementAndGet();
+              maxInUse.accumulateAndGet(current, Math::max);
+              inUse.decrementAndGet();
+              pool.release(client, true);
+            }
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertThat(maxInUse.get() <= poolMaxClients, is(true));
+    assertThat(pool.getWaiters(), is(0));
+    assertThat(pool.getClientTransportMap().isEmpty(), is(true));
+  }
+
   private Set<InetSocketAddress> setupPool(
       int poolMaxClients,
       int poolMaxWaiter,
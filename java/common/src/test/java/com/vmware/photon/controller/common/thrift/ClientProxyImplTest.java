@@ -13,6 +13,9 @@
 
 package com.vmware.photon.controller.common.thrift;
 
+import com.vmware.photon.controller.common.logging.LoggingUtils;
+
+import com.example.echo.EchoRequest;
 import com.google.common.util.concurrent.Futures;
 import com.google.inject.TypeLiteral;
 import org.apache.thrift.TApplicationException;
@@ -28,9 +31,12 @@ import org.testng.annotations.Test;
 import static com.example.echo.Echoer.AsyncSSLClient;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
@@ -172,6 +178,43 @@ public class ClientProxyImplTest extends PowerMockTestCase {
     verifyNoMoreInteractions(clientPool);
   }
 
+  @Test
+  public void testProxyIsCreatedOnce() throws Exception {
+    ClientProxyImpl<AsyncSSLClient> proxy = new ClientProxyImpl<>(executor, typeLiteral, clientPool);
+    assertThat(proxy.get(), is(sameInstance(proxy.get())));
+  }
+
+  @Test
+  public void testImmediatelyAcquiredClientIsCalledInline() throws Exception {
+    ExecutorService proxyExecutor = mock(ExecutorService.class);
+    when(clientPool.acquire()).thenReturn(Futures.immediateFuture(client));
+    mockCallSuccess(client);
+
+    ClientProxyImpl<AsyncSSLClient> proxy = new ClientProxyImpl<>(proxyExecutor, typeLiteral, clientPool);
+    assertThat(performEchoCall(proxy.get(), "foobar"), is("foobar"));
+
+    verifyZeroInteractions(proxyExecutor);
+    verify(clientPool).release(client, true);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testTracingInfoIsSet() throws Exception {
+    ArgumentCaptor<EchoRequest> request = ArgumentCaptor.forClass(EchoRequest.class);
+    when(clientPool.acquire()).thenReturn(Futures.immediateFuture(client));
+
+    ClientProxyImpl<AsyncSSLClient> proxy = new ClientProxyImpl<>(executor, typeLiteral, clientPool);
+    LoggingUtils.setRequestId("request-id");
+    try {
+      proxy.get().tracedEcho(new EchoRequest("foobar"), mock(AsyncMethodCallback.class));
+    } finally {
+      LoggingUtils.clearRequestId();
+    }
+
+    verify(client).tracedEcho(request.capture(), any(AsyncMethodCallback.class));
+    assertThat(request.getValue().getTracing_info().getRequest_id(), is("request-id"));
+  }
+
   private void mockCallSuccess(AsyncSSLClient client) throws Exception {
     doAnswer(new Answer<Object>() {
       @Override
@@ -100,6 +100,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -133,7 +136,8 @@ public class DeployerServiceGroup
 
   public static final Map<String, TaskSchedulerServiceStateBuilder> TASK_SCHEDULERS = ImmutableMap.of(
       COPY_STATE_SCHEDULER_SERVICE,
-        new TaskSchedulerServiceStateBuilder(CopyStateTaskService.class, 5)
+        new TaskSchedulerServiceStateBuilder(CopyStateTaskService.class, 5,
+            TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS)
   );
 
   private static final String DEPLOYER_URI = "deployer";
@@ -399,6 +403,21 @@ public class DeployerServiceGroup
     }
   }
 
+  @Override
+  public Collection<String> getAvailabilityLinks() {
+    List<String> availabilityLinks = new ArrayList<>();
+    availabilityLinks.add(UPLOAD_VIB_WORK_QUEUE_SELF_LINK);
+    availabilityLinks.addAll(TASK_SCHEDULERS.keySet());
+    try {
+      availabilityLinks.addAll(
+          ServiceHostUtils.getServiceSelfLinks(FACTORY_SERVICE_FIELD_NAME_SELF_LINK, FACTORY_SERVICES));
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return availabilityLinks;
+  }
+
   public Class<? extends Service>[] getFactoryServices() {
     return ObjectArrays.concat(
         FACTORY_SERVICES, ClusterManagerFactory.FACTORY_SERVICES,
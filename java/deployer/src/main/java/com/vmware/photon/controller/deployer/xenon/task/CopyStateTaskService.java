@@ -28,6 +28,7 @@ import com.vmware.photon.controller.common.xenon.ValidationUtils;
 import com.vmware.photon.controller.common.xenon.deployment.NoMigrationDuringDeployment;
 import com.vmware.photon.controller.common.xenon.migration.MigrationUtils;
 import com.vmware.photon.controller.common.xenon.migration.NoMigrationDuringUpgrade;
+import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceHelper;
 import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
@@ -36,6 +37,7 @@ import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.xenon.validation.NotNull;
 import com.vmware.photon.controller.common.xenon.validation.WriteOnce;
+import com.vmware.photon.controller.deployer.xenon.DeployerServiceGroup;
 import com.vmware.xenon.common.AuthenticationUtils;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
@@ -187,6 +189,10 @@ public class CopyStateTaskService extends StatefulService {
         }
       }
       startOperation.setBody(startState).complete();
+
+      if (startState.taskState.stage == TaskState.TaskStage.CREATED) {
+        TaskSchedulerServiceHelper.notifyTaskCreated(this, DeployerServiceGroup.COPY_STATE_SCHEDULER_SERVICE);
+      }
     } catch (Throwable t) {
       ServiceUtils.logSevere(this, t);
       if (!OperationUtils.isCompleted(startOperation)) {
@@ -206,6 +212,10 @@ public class CopyStateTaskService extends StatefulService {
     validateState(currentState);
     patchOperation.complete();
 
+    if (TaskUtils.finalTaskStages.contains(currentState.taskState.stage)) {
+      TaskSchedulerServiceHelper.notifyTaskFinished(this, DeployerServiceGroup.COPY_STATE_SCHEDULER_SERVICE);
+    }
+
     if (ControlFlags.isOperationProcessingDisabled(currentState.controlFlags)) {
       ServiceUtils.logInfo(this, "Skipping start operation processing (disabled)");
       return;
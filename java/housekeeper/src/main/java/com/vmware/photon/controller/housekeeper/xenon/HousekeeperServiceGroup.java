@@ -31,11 +31,14 @@ import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.services.common.RootNamespaceService;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
@@ -53,10 +56,32 @@ public class HousekeeperServiceGroup
       TaskSchedulerServiceFactory.SELF_LINK + "/image-host-to-host-copiers";
 
   private static final Map<String, TaskSchedulerServiceStateBuilder> TASK_SCHEDULERS = ImmutableMap.of(
-      IMAGE_COPY_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageCopyService.class, 10),
-      IMAGE_TRANSFER_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageHostToHostCopyService.class, 1)
+      IMAGE_COPY_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageCopyService.class, 10,
+          TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS),
+      IMAGE_TRANSFER_SCHEDULER_SERVICE, new TaskSchedulerServiceStateBuilder(ImageHostToHostCopyService.class, 1,
+          TaskSchedulerService.NOTIFIED_RESYNC_INTERVAL_MICROS)
   );
 
+  private static final List<String> AVAILABILITY_LINKS = ImmutableList.<String>builder()
+      // schedulers
+      .addAll(TASK_SCHEDULERS.keySet())
+      .add(RootNamespaceService.SELF_LINK)
+      .add(ImageReplicatorServiceFactory.SELF_LINK)
+      .add(ImageCopyServiceFactory.SELF_LINK)
+      .add(ImageHostToHostCopyServiceFactory.SELF_LINK)
+      .add(ImageSeederSyncServiceFactory.SELF_LINK)
+      .add(ImageCleanerServiceFactory.SELF_LINK)
+      .add(ImageDatastoreSweeperServiceFactory.SELF_LINK)
+      .add(SubnetIPLeaseSyncService.FACTORY_LINK)
+      .add(SubnetIPLeaseSyncTriggerService.SELF_LINK)
+      .add(HostsConfigSyncService.FACTORY_LINK)
+      // triggers
+      .add(TaskTriggerFactoryService.SELF_LINK)
+      .add(getTriggerCleanerServiceUri())
+      .add(getImageSeederSyncTriggerServiceUri())
+      .add(TaskSchedulerServiceFactory.SELF_LINK)
+      .build();
+
   private static final TaskStateBuilder[] TASK_TRIGGERS = new TaskStateBuilder[]{
       new ImageSeederSyncTriggerBuilder(
           ImageSeederSyncTriggerBuilder.DEFAULT_TRIGGER_INTERVAL_MILLIS,
@@ -104,6 +129,13 @@ public class HousekeeperServiceGroup
     return TaskTriggerFactoryService.SELF_LINK + ImageCleanerTriggerBuilder.TRIGGER_SELF_LINK;
   }
 
+  /**
+   * Get TaskScheduler for ImageCopyService service uri.
+   */
+  public static String getTaskSchedulerImageCopyServiceUri() {
+    return IMAGE_COPY_SCHEDULER_SERVICE;
+  }
+
   /**
    * Get TaskScheduler for ImageHostToHostService service uri.
    */
@@ -142,30 +174,21 @@ public class HousekeeperServiceGroup
 
   @Override
   public boolean isReady() {
-    // schedulers
-    for (String selfLink : TASK_SCHEDULERS.keySet()) {
+    for (String selfLink : AVAILABILITY_LINKS) {
       if (!photonControllerXenonHost.checkServiceAvailable(selfLink)) {
         return false;
       }
     }
 
-    return photonControllerXenonHost.checkServiceAvailable(RootNamespaceService.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageReplicatorServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageCopyServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageHostToHostCopyServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageSeederSyncServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageCleanerServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(ImageDatastoreSweeperServiceFactory.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(SubnetIPLeaseSyncService.FACTORY_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(SubnetIPLeaseSyncTriggerService.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(HostsConfigSyncService.FACTORY_LINK)
-
-        && photonControllerXenonHost.checkServiceAvailable(TaskTriggerFactoryService.SELF_LINK)
-        && photonControllerXenonHost.checkServiceAvailable(getTriggerCleanerServiceUri())
-        && photonControllerXenonHost.checkServiceAvailable(getImageSeederSyncTriggerServiceUri())
-        && photonControllerXenonHost.checkServiceAvailable(TaskSchedulerServiceFactory.SELF_LINK);
+    return true;
   }
 
+  @Override
+  public Collection<String> getAvailabilityLinks() {
+    return AVAILABILITY_LINKS;
+  }
+
+
   private void startTaskSchedulerServices() {
     photonControllerXenonHost.registerForServiceAvailability(
         (Operation operation, Throwable throwable) -> {
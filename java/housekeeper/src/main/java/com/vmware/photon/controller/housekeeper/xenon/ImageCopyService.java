@@ -29,6 +29,7 @@ import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceFactory;
+import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceHelper;
 import com.vmware.photon.controller.host.gen.CopyImageResponse;
 import com.vmware.photon.controller.host.gen.Host.AsyncSSLClient.copy_image_call;
 import com.vmware.xenon.common.Operation;
@@ -96,6 +97,11 @@ public class ImageCopyService extends StatefulService {
       validateState(s);
       start.setBody(s).complete();
 
+      if (s.taskInfo.stage == TaskState.TaskStage.CREATED) {
+        TaskSchedulerServiceHelper.notifyTaskCreated(this,
+            HousekeeperServiceGroup.getTaskSchedulerImageCopyServiceUri());
+      }
+
       sendStageProgressPatch(s, s.taskInfo.stage, s.taskInfo.subStage);
     } catch (RuntimeException e) {
       ServiceUtils.logSevere(this, e);
@@ -133,6 +139,8 @@ public class ImageCopyService extends StatefulService {
         case FAILED:
         case FINISHED:
         case CANCELLED:
+          TaskSchedulerServiceHelper.notifyTaskFinished(this,
+              HousekeeperServiceGroup.getTaskSchedulerImageCopyServiceUri());
           break;
         default:
           throw new IllegalStateException(
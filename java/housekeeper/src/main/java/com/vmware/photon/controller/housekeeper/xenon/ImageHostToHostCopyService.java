@@ -32,7 +32,6 @@ import com.vmware.photon.controller.common.xenon.OperationUtils;
 import com.vmware.photon.controller.common.xenon.QueryTaskUtils;
 import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
 import com.vmware.photon.controller.common.xenon.ServiceUtils;
-import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerService;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceFactory;
 import com.vmware.photon.controller.common.xenon.scheduler.TaskSchedulerServiceHelper;
 import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
@@ -113,6 +112,11 @@ public class ImageHostToHostCopyService extends StatefulService {
       validateState(s);
       start.setBody(s).complete();
 
+      if (s.taskInfo.stage == TaskState.TaskStage.CREATED) {
+        TaskSchedulerServiceHelper.notifyTaskCreated(this,
+            HousekeeperServiceGroup.getTaskSchedulerImageHostToHostServiceUri());
+      }
+
       sendStageProgressPatch(s, s.taskInfo.stage, s.taskInfo.subStage);
     } catch (RuntimeException e) {
       ServiceUtils.logSevere(this, e);
@@ -573,12 +577,11 @@ public class ImageHostToHostCopyService extends StatefulService {
   }
 
   /**
-   * Sends post request to trigger TaskSchedulerService.
+   * Notifies the TaskSchedulerService that this service finished, so the next service can be started.
    */
   private void sendTaskSchedulerServicePatch() {
-    TaskSchedulerService.State s = new TaskSchedulerService.State();
-    TaskSchedulerServiceHelper.sendPatchToOwner(this, getHost(), HousekeeperServiceGroup
-        .getTaskSchedulerImageHostToHostServiceUri(), s, UriUtils.buildUri(getHost(), getSelfLink()));
+    TaskSchedulerServiceHelper.notifyTaskFinished(this,
+        HousekeeperServiceGroup.getTaskSchedulerImageHostToHostServiceUri());
   }
 
   /**
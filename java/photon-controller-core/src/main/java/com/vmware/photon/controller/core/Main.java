@@ -18,6 +18,7 @@ import com.vmware.photon.controller.api.frontend.clients.api.LocalApiClient;
 import com.vmware.photon.controller.cloudstore.SystemConfig;
 import com.vmware.photon.controller.cloudstore.xenon.CloudStoreServiceGroup;
 import com.vmware.photon.controller.clustermanager.ClusterManagerFactory;
+import com.vmware.photon.controller.clustermanager.clients.ClusterHttpTransport;
 import com.vmware.photon.controller.common.Constants;
 import com.vmware.photon.controller.common.clients.AgentControlClientFactory;
 import com.vmware.photon.controller.common.clients.HostClientFactory;
@@ -419,7 +420,7 @@ public class Main {
         com.vmware.photon.controller.core.Main.HostManagementVmAddressValidatorFactoryImpl();
 
     final ClusterManagerFactory clusterManagerFactory = new ClusterManagerFactory(listeningExecutorService,
-        httpClient, cloudStoreServerSet,
+        ClusterHttpTransport.create(), cloudStoreServerSet,
         Paths.get(deployerConfig.getDeployerContext().getScriptDirectory(), CLUSTER_SCRIPTS_DIRECTORY).toString());
 
     return new DeployerServiceGroup(deployerConfig.getDeployerContext(),
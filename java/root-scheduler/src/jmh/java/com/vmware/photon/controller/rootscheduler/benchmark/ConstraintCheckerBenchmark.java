@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.benchmark;
+
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.photon.controller.rootscheduler.service.ConstraintChecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ConstraintChecker#getCandidates} against cloud-store for different mixes of constraints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConstraintCheckerBenchmark {
+
+  /**
+   * The constraints attached to each request.
+   */
+  public enum ConstraintMix {
+    NONE,
+    DATASTORE,
+    MULTIPLE_DATASTORES,
+    NEGATIVE_DATASTORE,
+    HOST,
+  }
+
+  private static final int NUM_CANDIDATES = 4;
+
+  @Param({"1000", "10000", "50000"})
+  public int numHosts;
+
+  @Param
+  public ConstraintMix constraintMix;
+
+  private SimulatedDeployment deployment;
+
+  private ConstraintChecker checker;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    deployment = SimulatedDeployment.create(numHosts);
+    checker = deployment.createConstraintChecker();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Throwable {
+    deployment.stop();
+  }
+
+  @Benchmark
+  public Map<String, ServerAddress> getCandidates() {
+    return checker.getCandidatesSync(buildConstraints(), NUM_CANDIDATES);
+  }
+
+  private List<ResourceConstraint> buildConstraints() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    List<ResourceConstraint> constraints = new ArrayList<>();
+    switch (constraintMix) {
+      case NONE:
+        break;
+      case DATASTORE:
+        constraints.add(new ResourceConstraint(ResourceConstraintType.DATASTORE,
+            Arrays.asList(SimulatedDeployment.getId(random.nextInt(SimulatedDeployment.NUM_DATASTORES)))));
+        break;
+      case MULTIPLE_DATASTORES:
+        constraints.add(new ResourceConstraint(ResourceConstraintType.DATASTORE,
+            Arrays.asList(SimulatedDeployment.getId(random.nextInt(SimulatedDeployment.NUM_DATASTORES)),
+                SimulatedDeployment.getId(random.nextInt(SimulatedDeployment.NUM_DATASTORES)))));
+        constraints.add(new ResourceConstraint(ResourceConstraintType.DATASTORE,
+            Arrays.asList(SimulatedDeployment.getId(random.nextInt(SimulatedDeployment.NUM_DATASTORES)))));
+        break;
+      case NEGATIVE_DATASTORE:
+        ResourceConstraint negative = new ResourceConstraint(ResourceConstraintType.DATASTORE,
+            Arrays.asList(SimulatedDeployment.getId(random.nextInt(SimulatedDeployment.NUM_DATASTORES))));
+        negative.setNegative(true);
+        constraints.add(negative);
+        break;
+      case HOST:
+        constraints.add(new ResourceConstraint(ResourceConstraintType.HOST,
+            Arrays.asList(SimulatedDeployment.getId(random.nextInt(numHosts)))));
+        break;
+      default:
+        throw new IllegalStateException("Unknown constraint mix: " + constraintMix);
+    }
+    return constraints;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.benchmark;
+
+import com.vmware.photon.controller.common.clients.HostClient;
+import com.vmware.photon.controller.host.gen.Host;
+import com.vmware.photon.controller.resource.gen.Resource;
+import com.vmware.photon.controller.scheduler.gen.PlaceResponse;
+import com.vmware.photon.controller.scheduler.gen.PlaceResultCode;
+import com.vmware.photon.controller.scheduler.gen.Score;
+
+import org.apache.thrift.async.AsyncMethodCallback;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link HostClient} that answers place requests in-process with a random score, standing in for an agent.
+ * No thrift connection is ever opened.
+ */
+public class FakeAgentHostClient extends HostClient {
+
+  private static final Host.AsyncSSLClient.place_call PLACE_CALL = createPlaceCall();
+
+  public FakeAgentHostClient() {
+    super(null, null);
+  }
+
+  @Override
+  public void setIpAndPort(String ip, int port) {
+  }
+
+  @Override
+  public void place(Resource resource, AsyncMethodCallback<Host.AsyncSSLClient.place_call> handler) {
+    handler.onComplete(PLACE_CALL);
+  }
+
+  private static Host.AsyncSSLClient.place_call createPlaceCall() {
+    // stubOnly keeps Mockito from recording every invocation for the lifetime of the benchmark.
+    Host.AsyncSSLClient.place_call placeCall =
+        mock(Host.AsyncSSLClient.place_call.class, withSettings().stubOnly());
+    try {
+      doAnswer(invocation -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+        response.setScore(new Score(random.nextInt(100), random.nextInt(100)));
+        response.setGeneration(random.nextInt());
+        return response;
+      }).when(placeCall).getResult();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return placeCall;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.benchmark;
+
+import com.vmware.photon.controller.resource.gen.Disk;
+import com.vmware.photon.controller.resource.gen.Resource;
+import com.vmware.photon.controller.rootscheduler.RootSchedulerConfig;
+import com.vmware.photon.controller.rootscheduler.helpers.xenon.SchedulerTestEnvironment;
+import com.vmware.photon.controller.rootscheduler.xenon.task.PlacementTask;
+import com.vmware.photon.controller.rootscheduler.xenon.task.PlacementTaskService;
+import com.vmware.photon.controller.scheduler.gen.PlaceResultCode;
+import com.vmware.xenon.common.TaskState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end throughput and latency percentiles of {@link PlacementTaskService}: the cloud-store
+ * candidate query, the fan-out to the (fake) agents and the selection of the best response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(8)
+@Fork(1)
+public class PlacementTaskServiceBenchmark {
+
+  @Param({"1000", "10000", "50000"})
+  public int numHosts;
+
+  private SimulatedDeployment deployment;
+
+  private SchedulerTestEnvironment scheduler;
+
+  private RootSchedulerConfig config;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    deployment = SimulatedDeployment.create(numHosts);
+    config = new RootSchedulerConfig();
+    scheduler = SchedulerTestEnvironment.create(
+        FakeAgentHostClient::new, config, deployment.createConstraintChecker(),
+        deployment.getCloudStoreHelper(), 1);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Throwable {
+    scheduler.stop();
+    deployment.stop();
+  }
+
+  @Benchmark
+  public PlacementTask place() throws Throwable {
+    PlacementTask result = scheduler.sendPostAndWait(PlacementTaskService.FACTORY_LINK, buildPlacementTask())
+        .getBody(PlacementTask.class);
+    if (result.resultCode != PlaceResultCode.OK) {
+      throw new IllegalStateException("Placement failed: " + result.error);
+    }
+    return result;
+  }
+
+  private PlacementTask buildPlacementTask() {
+    // A disk-only placement, so the image seeding query does not need any documents.
+    Resource resource = new Resource();
+    resource.addToDisks(new Disk("disk-id", "core-100", true, true, 1));
+
+    PlacementTask placementTask = new PlacementTask();
+    placementTask.resource = resource;
+    placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+    placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+    placementTask.taskState = new TaskState();
+    placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+    placementTask.taskState.isDirect = true;
+    return placementTask;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.benchmark;
+
+import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
+import com.vmware.photon.controller.rootscheduler.SchedulerConfig;
+import com.vmware.photon.controller.rootscheduler.service.ScoreCalculator;
+import com.vmware.photon.controller.scheduler.gen.PlaceResponse;
+import com.vmware.photon.controller.scheduler.gen.PlaceResultCode;
+import com.vmware.photon.controller.scheduler.gen.Score;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ScoreCalculator#rankResponses}, which orders the place responses on the placement path, for
+ * different numbers of responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScoreCalculatorBenchmark {
+
+  @Param({"4", "16", "64"})
+  public int numResponses;
+
+  private ScoreCalculator scoreCalculator;
+
+  private Set<PlaceResponse> responses;
+
+  @Setup
+  public void setUp() {
+    scoreCalculator = new ScoreCalculator(new SchedulerConfig());
+
+    Random random = new Random(0);
+    responses = new HashSet<>();
+    for (int i = 0; i < numResponses; i++) {
+      PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+      response.setScore(new Score(random.nextInt(100), random.nextInt(100)));
+      response.setGeneration(i);
+      response.setAddress(new ServerAddress("host" + i, 8835));
+      responses.add(response);
+    }
+  }
+
+  @Benchmark
+  public List<PlaceResponse> rankResponses() {
+    return scoreCalculator.rankResponses(responses);
+  }
+}
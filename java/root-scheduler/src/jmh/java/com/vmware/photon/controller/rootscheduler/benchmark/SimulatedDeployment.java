@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.benchmark;
+
+import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
+import com.vmware.photon.controller.rootscheduler.service.CloudStoreConstraintChecker;
+import com.vmware.photon.controller.rootscheduler.service.ConstraintChecker;
+import com.vmware.photon.controller.rootscheduler.simulator.CloudStoreLoader;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An in-process cloud-store populated with a simulated deployment, used by the scheduler benchmarks.
+ */
+public class SimulatedDeployment {
+
+  public static final int NUM_DATASTORES = 100;
+
+  public static final int NUM_DATASTORES_PER_HOST = 4;
+
+  // Same mix of host sizes as PlacementSimulatorTest.
+  private static final Map<CloudStoreLoader.HostConfiguration, Double> HOST_CONFIGURATIONS = ImmutableMap.of(
+      new CloudStoreLoader.HostConfiguration(4, 8 * 1024), 0.5,
+      new CloudStoreLoader.HostConfiguration(8, 16 * 1024), 0.3,
+      new CloudStoreLoader.HostConfiguration(16, 32 * 1024), 0.2);
+
+  private final TestEnvironment cloudStore;
+
+  private final int numHosts;
+
+  private SimulatedDeployment(TestEnvironment cloudStore, int numHosts) {
+    this.cloudStore = cloudStore;
+    this.numHosts = numHosts;
+  }
+
+  /**
+   * Starts a single-host cloud-store and loads it with the given number of hosts.
+   */
+  public static SimulatedDeployment create(int numHosts) throws Throwable {
+    TestEnvironment cloudStore = TestEnvironment.create(1);
+    CloudStoreLoader.loadDatastores(cloudStore, NUM_DATASTORES);
+    CloudStoreLoader.loadHosts(cloudStore, numHosts, HOST_CONFIGURATIONS, NUM_DATASTORES,
+        new UniformIntegerDistribution(NUM_DATASTORES_PER_HOST, NUM_DATASTORES_PER_HOST));
+    return new SimulatedDeployment(cloudStore, numHosts);
+  }
+
+  public int getNumHosts() {
+    return numHosts;
+  }
+
+  public CloudStoreHelper getCloudStoreHelper() {
+    return new CloudStoreHelper(cloudStore.getServerSet());
+  }
+
+  public ConstraintChecker createConstraintChecker() {
+    return new CloudStoreConstraintChecker(getCloudStoreHelper(), cloudStore.getHosts()[0]);
+  }
+
+  /**
+   * Returns the ID CloudStoreLoader gave to the host or datastore with the given index.
+   */
+  public static String getId(int index) {
+    return new UUID(0, index).toString();
+  }
+
+  public void stop() throws Throwable {
+    cloudStore.stop();
+  }
+}
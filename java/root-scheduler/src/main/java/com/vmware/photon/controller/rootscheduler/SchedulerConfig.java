@@ -36,6 +36,18 @@ public class SchedulerConfig {
   @JsonProperty("utilization_transfer_ratio")
   private double utilizationTransferRatio = 9.0;
 
+  @Min(1000)
+  @JsonProperty("rebalance_interval_ms")
+  private long rebalanceIntervalMs = 300000;
+
+  @Min(0)
+  @JsonProperty("rebalance_max_moves")
+  private int rebalanceMaxMoves = 10;
+
+  @Min(0)
+  @JsonProperty("rebalance_min_improvement")
+  private double rebalanceMinImprovement = 0.001;
+
   public long getPlaceTimeoutMs() {
     return placeTimeoutMs;
   }
@@ -59,4 +71,28 @@ public class SchedulerConfig {
   public void setUtilizationTransferRatio(double utilizationTransferRatio) {
     this.utilizationTransferRatio = utilizationTransferRatio;
   }
+
+  public long getRebalanceIntervalMs() {
+    return rebalanceIntervalMs;
+  }
+
+  public void setRebalanceIntervalMs(long rebalanceIntervalMs) {
+    this.rebalanceIntervalMs = rebalanceIntervalMs;
+  }
+
+  public int getRebalanceMaxMoves() {
+    return rebalanceMaxMoves;
+  }
+
+  public void setRebalanceMaxMoves(int rebalanceMaxMoves) {
+    this.rebalanceMaxMoves = rebalanceMaxMoves;
+  }
+
+  public double getRebalanceMinImprovement() {
+    return rebalanceMinImprovement;
+  }
+
+  public void setRebalanceMinImprovement(double rebalanceMinImprovement) {
+    this.rebalanceMinImprovement = rebalanceMinImprovement;
+  }
 }
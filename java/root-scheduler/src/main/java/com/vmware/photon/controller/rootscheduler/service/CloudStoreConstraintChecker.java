@@ -19,7 +19,11 @@ import com.vmware.photon.controller.api.model.UsageTag;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmServiceFactory;
 import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
+import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceException;
+import com.vmware.photon.controller.common.clients.exceptions.NotEnoughDatastoreCapacityException;
 import com.vmware.photon.controller.common.logging.LoggingUtils;
 import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
@@ -28,6 +32,7 @@ import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
 import com.vmware.photon.controller.resource.gen.ResourceConstraint;
 import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.ServiceHost;
@@ -42,10 +47,17 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * This scheduler constraint checker (currently the only one used by the scheduler) will find a set of up to
@@ -74,10 +86,27 @@ import java.util.concurrent.CountDownLatch;
  * Lucene has to do a big sort. If we find that this is a performance hit, we can search smaller intervals, but that
  * also may mean more queries to Lucene when we don't have a lot of hosts.
  *
+ * VM affinity and anti-affinity constraints name VMs rather than hosts. Before the host query is built, the hosts
+ * of all the named VMs are looked up with a single query for their VM documents, and each of these constraints is
+ * turned into a (negative) host constraint. VMs which were placed by this scheduler but are not created yet are
+ * taken from the {@link VmPlacementRegistry}, see {@link #recordVmPlacement}. Soft constraints are dropped if no
+ * host satisfies them together with the hard ones. A hard affinity to VMs which are on different hosts fails.
+ *
+ * A DATASTORE_FREE_SPACE constraint carries the space the new disks of the resource need. It is resolved to a
+ * constraint on the datastores whose projected free space is large enough: the capacity reported for them, less the
+ * space used, the space thin-provisioned disks may still grow into, and the space reserved by disks this scheduler
+ * placed but whose creation may not be reported yet (see {@link DatastoreReservationRegistry}). Datastores with no
+ * reported capacity are not filtered. To weight the candidates by free space as well, twice as many hosts are
+ * sampled, and the ones with the most projected free space on one of their datastores are kept.
+ *
+ * To explain a placement, explainCandidates() also counts the hosts which are left after each of the constraints
+ * is added to the query. These counts don't depend on the random ranges, so they show which constraint
+ * eliminated the hosts.
+ *
  * There are two entry points into this class that are used:
  *
  * getCandidates(): This is the entry point for all production code. It runs asynchronously and returns
- * the results via a completion routine.
+ * the results via a completion routine. explainCandidates() is a variant of it for placement dry-runs.
  *
  * getCandidatesSync(): This is meant for tests. It exists because originally all of the code was synchronous
  * and all the tests assumed the results were returned synchronously. When we updated the code to be asynchronous,
@@ -95,10 +124,17 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
   private static final String HOST_SELF_LINK_PREFIX = HostServiceFactory.SELF_LINK + "/";
   private static final List<String> managementTagValues = Arrays.asList(UsageTag.MGMT.name());
 
+  // How many times the number of candidates are sampled when the candidates are weighted by datastore free space
+  private static final int DATASTORE_SPACE_SAMPLING_FACTOR = 2;
+
   private static final Logger logger = LoggerFactory.getLogger(CloudStoreConstraintChecker.class);
 
   private final Random random = new Random();
 
+  private final VmPlacementRegistry vmPlacementRegistry = new VmPlacementRegistry();
+
+  private final DatastoreReservationRegistry datastoreReservationRegistry = new DatastoreReservationRegistry();
+
   private final CloudStoreHelper cloudStoreHelper;
   private ServiceHost xenonHost;
 
@@ -108,6 +144,17 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     SortOrder sortOrder;
   }
 
+  // A part of the host query: the clauses for one of the conditions on the hosts or one of the constraints
+  private static class QueryStage {
+    final String name;
+    final Consumer<QueryTask.Query.Builder> clauses;
+
+    QueryStage(String name, Consumer<QueryTask.Query.Builder> clauses) {
+      this.name = name;
+      this.clauses = clauses;
+    }
+  }
+
   // The steps in our asynchronous process. Documentation for each step is provided with the function that
   // corresponds to each step.
   private enum Step {
@@ -115,6 +162,13 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     EXTRACT_DATASTORE_TAG_CONSTRAINTS,
     DATASTORE_TAG_QUERY,
     BUILD_DS_TAG_CONSTRAINT,
+    EXTRACT_DATASTORE_SPACE_CONSTRAINT,
+    DATASTORE_SPACE_QUERY,
+    BUILD_DS_SPACE_CONSTRAINT,
+    EXTRACT_VM_CONSTRAINTS,
+    VM_HOST_QUERY,
+    BUILD_VM_HOST_CONSTRAINTS,
+    COUNT_STAGES,
     CALCULATE_RANGES,
     BUILD_QUERY,
     GET_CANDIDATES,
@@ -132,6 +186,8 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     int numCandidates;
     // Input from client: completion to call when we're all done
     GetCandidatesCompletion completion;
+    // Input from client when explaining a placement: the list to add the stage counts to, otherwise null
+    List<CandidateStage> stages;
 
     // Current place in our process
     Step currentStep;
@@ -151,6 +207,33 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     // We would prefer to add them to resourceConstraints, but it's immutable, so we use a separate list
     List<ResourceConstraint> extraDatastoreConstraints;
 
+    // The free space the new disks need, in GB, from the datastore free space constraint. Zero if there is none.
+    double requiredDatastoreGb;
+    // The response to the query for the datastores, to project their free space
+    Operation datastoreSpaceResponse;
+    // The constraint on the datastores with enough projected free space, null if it does not exclude any datastore
+    ResourceConstraint datastoreSpaceConstraint;
+    // The projected free space of the datastores with enough of it, null if there is no free space constraint
+    Map<String, Double> datastoreFreeGb;
+    // The datastores with enough projected free space or with no reported capacity
+    Set<String> spaceDatastores;
+    // The most projected free space on a datastore of each candidate, used to weight the candidates
+    Map<String, Double> candidateFreeGb;
+    // The datastore with the most projected free space of each candidate, which the new disks are created on
+    Map<String, String> hostDatastores;
+    // The map to return the datastores of the candidates in, null if the caller does not need them
+    Map<String, String> candidateDatastores;
+
+    // The VM affinity and anti-affinity constraints, extracted from the resource constraints.
+    List<ResourceConstraint> vmConstraints;
+    // The response to the query for the VMs named by the VM constraints
+    Operation vmHostResponse;
+    // The host constraints we add based on the hard and soft VM constraints
+    List<ResourceConstraint> extraHostConstraints;
+    List<ResourceConstraint> softHostConstraints;
+    // Whether the soft host constraints are part of the query. They are dropped when no host satisfies them.
+    boolean applySoftConstraints;
+
     // The query we'll make to find the resource candidates
     QueryTask.Query query;
     // The response we got from the query
@@ -212,14 +295,62 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
       List<ResourceConstraint> resourceConstraints,
       int numCandidates,
       GetCandidatesCompletion completion) {
+    findCandidates(resourceConstraints, numCandidates, null, null, completion);
+  }
+
+  /**
+   * The entry point to find candidates along with the datastore each of them should create the new disks on. The
+   * datastores are only reported when the free space constraint excludes some datastores, otherwise the agents
+   * are left to pick one.
+   */
+  @Override
+  public void getCandidates(
+      List<ResourceConstraint> resourceConstraints,
+      int numCandidates,
+      Map<String, String> candidateDatastores,
+      GetCandidatesCompletion completion) {
+    findCandidates(resourceConstraints, numCandidates, null, candidateDatastores, completion);
+  }
+
+  /**
+   * The entry point to find candidates for a dry-run of the PlacementTask. On top of the candidates and their
+   * datastores, it counts the hosts which are left after each constraint is applied (see
+   * getCandidates_CountStages()).
+   */
+  @Override
+  public void explainCandidates(
+      List<ResourceConstraint> resourceConstraints,
+      int numCandidates,
+      List<CandidateStage> stages,
+      Map<String, String> candidateDatastores,
+      GetCandidatesCompletion completion) {
+    findCandidates(resourceConstraints, numCandidates, stages, candidateDatastores, completion);
+  }
+
+  /**
+   * Starts the state machine for getCandidates(). The stages are only counted and the candidate datastores are
+   * only reported when the corresponding argument is not null.
+   */
+  private void findCandidates(
+      List<ResourceConstraint> resourceConstraints,
+      int numCandidates,
+      List<CandidateStage> stages,
+      Map<String, String> candidateDatastores,
+      GetCandidatesCompletion completion) {
 
     State state = new State();
     state.currentStep = Step.VALIDATE_INPUT;
     state.resourceConstraints = resourceConstraints;
     state.extraDatastoreConstraints = new ArrayList<>();
+    state.extraHostConstraints = new ArrayList<>();
+    state.softHostConstraints = new ArrayList<>();
     state.numCandidates = numCandidates;
     state.completion = completion;
+    state.stages = stages;
     state.candidates = new HashMap<>();
+    state.candidateFreeGb = new HashMap<>();
+    state.hostDatastores = new HashMap<>();
+    state.candidateDatastores = candidateDatastores;
     getCandidates_HandleStep(state);
   }
 
@@ -236,6 +367,7 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
    *
    * By and large, we proceed sequentially through this state machine. There are a few exceptions:
    * 1. If there are no datastore tag constraints, we don't need to build datastore constraints based on them
+   *    (and likewise for VM constraints and host constraints)
    * 2. We break the search space into ranges. If the first range doesn't yield enough hosts, we iterate
    * 3. At any time we can proceed to the FAIL state.
    *
@@ -256,6 +388,27 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
         case BUILD_DS_TAG_CONSTRAINT:
           getCandidates_BuildDsTagConstraint(state);
           break;
+        case EXTRACT_DATASTORE_SPACE_CONSTRAINT:
+          getCandidates_ExtractDatastoreSpaceConstraint(state);
+          break;
+        case DATASTORE_SPACE_QUERY:
+          getCandidates_DatastoreSpaceQuery(state);
+          break;
+        case BUILD_DS_SPACE_CONSTRAINT:
+          getCandidates_BuildDsSpaceConstraint(state);
+          break;
+        case EXTRACT_VM_CONSTRAINTS:
+          getCandidates_ExtractVmConstraints(state);
+          break;
+        case VM_HOST_QUERY:
+          getCandidates_VmHostQuery(state);
+          break;
+        case BUILD_VM_HOST_CONSTRAINTS:
+          getCandidates_BuildVmHostConstraints(state);
+          break;
+        case COUNT_STAGES:
+          getCandidates_CountStages(state);
+          break;
         case CALCULATE_RANGES:
           getCandidates_CalculateRanges(state);
           break;
@@ -317,9 +470,9 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     }
 
     // We'll only resolve the datastore tag constraints if we have some.
-    // Otherwise we proceed onwards with the main query
+    // Otherwise we proceed onwards with the datastore free space constraint
     if (state.dsTagConstraints.isEmpty()) {
-      state.currentStep = Step.CALCULATE_RANGES;
+      state.currentStep = Step.EXTRACT_DATASTORE_SPACE_CONSTRAINT;
     } else {
       state.currentStep = Step.DATASTORE_TAG_QUERY;
     }
@@ -411,7 +564,244 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     }
 
     // No more datastore tag constraints, so proceed
-    state.currentStep = Step.CALCULATE_RANGES;
+    state.currentStep = Step.EXTRACT_DATASTORE_SPACE_CONSTRAINT;
+    getCandidates_HandleStep(state);
+  }
+
+  /**
+   * Find the free space the new disks need in the datastore free space constraint, if there is one. We'll resolve
+   * it in the next steps to a constraint on the datastores with that much projected free space.
+   */
+  private void getCandidates_ExtractDatastoreSpaceConstraint(State state) {
+    state.requiredDatastoreGb = 0;
+
+    if (state.resourceConstraints != null) {
+      for (ResourceConstraint constraint : state.resourceConstraints) {
+        if (constraint != null && constraint.getType() == ResourceConstraintType.DATASTORE_FREE_SPACE
+            && constraint.getValues() != null) {
+          for (String value : constraint.getValues()) {
+            state.requiredDatastoreGb = Math.max(state.requiredDatastoreGb, Double.parseDouble(value));
+          }
+        }
+      }
+    }
+
+    if (state.requiredDatastoreGb > 0) {
+      state.currentStep = Step.DATASTORE_SPACE_QUERY;
+    } else {
+      state.currentStep = Step.EXTRACT_VM_CONSTRAINTS;
+    }
+    getCandidates_HandleStep(state);
+  }
+
+  /**
+   * Query for all the datastores, to project their free space.
+   */
+  private void getCandidates_DatastoreSpaceQuery(State state) {
+    QueryTask queryTask = QueryTask.Builder.createDirectTask()
+        .setQuery(QueryTask.Query.Builder.create()
+            .addKindFieldClause(DatastoreService.State.class)
+            .build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT)
+        .build();
+
+    Operation queryOperation = this.cloudStoreHelper.createPost(ServiceUriPaths.CORE_QUERY_TASKS)
+        .setBody(queryTask)
+        .setContextId(LoggingUtils.getRequestId())
+        .setCompletion((response, ex) -> {
+          // See note on logging, above
+          LoggingUtils.setRequestId(response.getContextId());
+          if (ex != null) {
+            state.exception = ex;
+            state.currentStep = Step.FAIL;
+            getCandidates_HandleStep(state);
+            return;
+          }
+          state.datastoreSpaceResponse = response;
+          state.currentStep = Step.BUILD_DS_SPACE_CONSTRAINT;
+          getCandidates_HandleStep(state);
+        });
+    xenonHost.sendRequest(queryOperation);
+  }
+
+  /**
+   * Based on the result of our datastore query in getCandidates_DatastoreSpaceQuery() and on the space reserved
+   * by recent placements, build a constraint on the datastores with enough projected free space.
+   *
+   * The constraint is only added if it excludes a datastore. If it excludes all of them, we fail.
+   */
+  private void getCandidates_BuildDsSpaceConstraint(State state) {
+    Map<String, Double> reservedGb = datastoreReservationRegistry.getReservedGb();
+    List<String> datastoreIds = new ArrayList<>();
+    int excludedDatastores = 0;
+    state.datastoreFreeGb = new HashMap<>();
+    state.spaceDatastores = new HashSet<>();
+
+    Map<String, Object> documents = extractDocumentsFromQuery(state.datastoreSpaceResponse);
+    if (documents != null) {
+      for (Object document : documents.values()) {
+        DatastoreService.State datastore = Utils.fromJson(document, DatastoreService.State.class);
+        if (datastore == null) {
+          continue;
+        }
+        String datastoreId = ServiceUtils.getIDFromDocumentSelfLink(datastore.documentSelfLink);
+        Double freeGb = getProjectedFreeGb(datastore, reservedGb.getOrDefault(datastoreId, 0.0));
+        if (freeGb == null || freeGb >= state.requiredDatastoreGb) {
+          datastoreIds.add(datastoreId);
+          state.spaceDatastores.add(datastoreId);
+          if (freeGb != null) {
+            state.datastoreFreeGb.put(datastoreId, freeGb);
+          }
+        } else {
+          excludedDatastores++;
+        }
+      }
+    }
+    state.datastoreSpaceResponse = null;
+
+    if (excludedDatastores > 0 && datastoreIds.isEmpty()) {
+      state.exception = new NotEnoughDatastoreCapacityException(String.format(
+          "None of the %d datastores has the %s GB of free space the disks need",
+          excludedDatastores, state.requiredDatastoreGb));
+      state.currentStep = Step.FAIL;
+      getCandidates_HandleStep(state);
+      return;
+    }
+
+    if (excludedDatastores > 0) {
+      state.datastoreSpaceConstraint = new ResourceConstraint(ResourceConstraintType.DATASTORE, datastoreIds);
+      logger.info("Adding constraint on the {} datastores with {} GB of projected free space, {} have less",
+          datastoreIds.size(), state.requiredDatastoreGb, excludedDatastores);
+    }
+
+    state.currentStep = Step.EXTRACT_VM_CONSTRAINTS;
+    getCandidates_HandleStep(state);
+  }
+
+  /**
+   * Scan through the set of resource constraints and extract the VM affinity and anti-affinity constraints.
+   * Because they name VMs, we'll convert them in the next steps to constraints on the hosts of those VMs.
+   */
+  private void getCandidates_ExtractVmConstraints(State state) {
+    state.vmConstraints = new ArrayList<>();
+
+    if (state.resourceConstraints != null) {
+      for (ResourceConstraint constraint : state.resourceConstraints) {
+        if (constraint != null && isVmConstraint(constraint)
+            && constraint.getValues() != null && !constraint.getValues().isEmpty()) {
+          state.vmConstraints.add(constraint);
+        }
+      }
+    }
+
+    if (state.vmConstraints.isEmpty()) {
+      state.currentStep = getStepAfterConstraints(state);
+    } else {
+      state.currentStep = Step.VM_HOST_QUERY;
+    }
+    getCandidates_HandleStep(state);
+  }
+
+  /**
+   * Query for the documents of all the VMs named by the VM constraints at once, to find the hosts they are on.
+   */
+  private void getCandidates_VmHostQuery(State state) {
+    Set<String> vmLinks = new LinkedHashSet<>();
+    for (ResourceConstraint constraint : state.vmConstraints) {
+      for (String vmId : constraint.getValues()) {
+        vmLinks.add(VmServiceFactory.SELF_LINK + "/" + vmId);
+      }
+    }
+
+    QueryTask queryTask = QueryTask.Builder.createDirectTask()
+        .setQuery(QueryTask.Query.Builder.create()
+            .addKindFieldClause(VmService.State.class)
+            .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, vmLinks)
+            .build())
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT)
+        .build();
+
+    Operation queryOperation = this.cloudStoreHelper.createPost(ServiceUriPaths.CORE_QUERY_TASKS)
+        .setBody(queryTask)
+        .setContextId(LoggingUtils.getRequestId())
+        .setCompletion((response, ex) -> {
+          // See note on logging, above
+          LoggingUtils.setRequestId(response.getContextId());
+          if (ex != null) {
+            state.exception = ex;
+            state.currentStep = Step.FAIL;
+            getCandidates_HandleStep(state);
+            return;
+          }
+          state.vmHostResponse = response;
+          state.currentStep = Step.BUILD_VM_HOST_CONSTRAINTS;
+          getCandidates_HandleStep(state);
+        });
+    xenonHost.sendRequest(queryOperation);
+  }
+
+  /**
+   * Based on the result of our VM query in getCandidates_VmHostQuery() and on the VMs placed recently,
+   * turn every VM constraint into a constraint on the hosts of its VMs.
+   *
+   * A VM constraint whose VMs are on no host yet is satisfied by every host, so it adds nothing. This is
+   * what lets the first member of a group be placed anywhere.
+   */
+  private void getCandidates_BuildVmHostConstraints(State state) {
+    Map<String, String> hostsByVm = new HashMap<>();
+    Map<String, Object> documents = extractDocumentsFromQuery(state.vmHostResponse);
+    if (documents != null) {
+      for (Object document : documents.values()) {
+        VmService.State vm = Utils.fromJson(document, VmService.State.class);
+        if (vm != null && vm.agent != null) {
+          hostsByVm.put(ServiceUtils.getIDFromDocumentSelfLink(vm.documentSelfLink), vm.agent);
+        }
+      }
+    }
+
+    for (ResourceConstraint vmConstraint : state.vmConstraints) {
+      List<String> hostIds = vmConstraint.getValues().stream()
+          .map(vmId -> {
+            String hostId = vmPlacementRegistry.getHost(vmId);
+            return hostId != null ? hostId : hostsByVm.get(vmId);
+          })
+          .filter(Objects::nonNull)
+          .distinct()
+          .collect(Collectors.toCollection(ArrayList::new));
+      if (hostIds.isEmpty()) {
+        logger.info("None of the VMs {} of {} constraint is placed yet, ignoring it",
+            vmConstraint.getValues(), vmConstraint.getType());
+        continue;
+      }
+
+      boolean soft = vmConstraint.isSetSoft() && vmConstraint.isSoft();
+      if (!soft && vmConstraint.getType() == ResourceConstraintType.VM_AFFINITY && hostIds.size() > 1) {
+        // A host constraint with several hosts matches any of them, but the VM cannot be on all of them at once
+        state.exception = new NoSuchResourceException(String.format(
+            "Cannot satisfy VM affinity to VMs %s, they are on different hosts %s",
+            vmConstraint.getValues(), hostIds));
+        state.currentStep = Step.FAIL;
+        getCandidates_HandleStep(state);
+        return;
+      }
+
+      ResourceConstraint hostConstraint = new ResourceConstraint(ResourceConstraintType.HOST, hostIds);
+      if (vmConstraint.getType() == ResourceConstraintType.VM_ANTI_AFFINITY) {
+        hostConstraint.setNegative(true);
+      }
+
+      if (soft) {
+        state.softHostConstraints.add(hostConstraint);
+      } else {
+        state.extraHostConstraints.add(hostConstraint);
+      }
+      logger.info("Adding host constraint to fulfill {} constraint: {}",
+          vmConstraint.getType(), Utils.toJson(false, false, hostConstraint));
+    }
+
+    state.applySoftConstraints = !state.softHostConstraints.isEmpty();
+    state.vmHostResponse = null;
+    state.currentStep = getStepAfterConstraints(state);
     getCandidates_HandleStep(state);
   }
 
@@ -456,7 +846,7 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
    * Build the query that we'll use to query CloudStore for all the candidate hosts that meet
    * the resource constraints and are within the selected range in the scheduling space.
    *
-   * We translate each constraint to a clause in a Xenon query task
+   * We translate each constraint to a clause in a Xenon query task, see getQueryStages().
    *
    * Note that this could be executed once for each range, if we don't find enough candidates.
    */
@@ -469,23 +859,95 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
                 (long) state.ranges[state.currentRange].upperBound,
                 true, false));
 
+    for (QueryStage stage : getQueryStages(state)) {
+      stage.clauses.accept(queryBuilder);
+    }
+
+    state.query = queryBuilder.build();
+    state.currentStep = Step.GET_CANDIDATES;
+    getCandidates_HandleStep(state);
+  }
+
+  /**
+   * When explaining a placement, count the hosts which are left after each stage of the query. Every stage is
+   * counted with its own query, holding the clauses of the stages up to it. The scheduling space ranges are not
+   * part of these queries, so the counts cover all hosts rather than the sampled part of them.
+   *
+   * A count which fails is reported as null: the explanation is best effort and does not fail the placement.
+   */
+  private void getCandidates_CountStages(State state) {
+    List<QueryStage> stages = getQueryStages(state);
+    Long[] counts = new Long[stages.size()];
+    AtomicInteger pendingCounts = new AtomicInteger(stages.size());
+
+    for (int i = 0; i < stages.size(); i++) {
+      // Each query needs its own builder, since a builder hands out the query it keeps adding clauses to
+      QueryTask.Query.Builder queryBuilder = QueryTask.Query.Builder.create()
+          .addKindFieldClause(HostService.State.class);
+      for (int j = 0; j <= i; j++) {
+        stages.get(j).clauses.accept(queryBuilder);
+      }
+
+      QueryTask queryTask = QueryTask.Builder.createDirectTask()
+          .setQuery(queryBuilder.build())
+          .addOption(QueryTask.QuerySpecification.QueryOption.COUNT)
+          .build();
+
+      int stageIndex = i;
+      Operation queryOperation = this.cloudStoreHelper.createPost(ServiceUriPaths.CORE_QUERY_TASKS)
+          .setBody(queryTask)
+          .setContextId(LoggingUtils.getRequestId())
+          .setCompletion((response, ex) -> {
+            // See note on logging, above
+            LoggingUtils.setRequestId(response.getContextId());
+            if (ex != null) {
+              logger.warn("Failed to count the hosts of stage {}: {}", stages.get(stageIndex).name, ex.getMessage());
+            } else {
+              ServiceDocumentQueryResult queryResult = response.getBody(QueryTask.class).results;
+              if (queryResult != null) {
+                counts[stageIndex] = queryResult.documentCount;
+              }
+            }
+
+            if (pendingCounts.decrementAndGet() == 0) {
+              for (int j = 0; j < stages.size(); j++) {
+                state.stages.add(new CandidateStage(stages.get(j).name, counts[j]));
+              }
+              state.currentStep = Step.CALCULATE_RANGES;
+              getCandidates_HandleStep(state);
+            }
+          });
+      xenonHost.sendRequest(queryOperation);
+    }
+  }
+
+  /**
+   * Translate the conditions on the hosts and the resource constraints into the stages of the host query. Each
+   * stage adds the clauses of a single condition or constraint to a query.
+   */
+  private List<QueryStage> getQueryStages(State state) {
+    List<QueryStage> stages = new ArrayList<>();
+
     // Ensure that we only look for hosts that are ready (not, for example, suspended)
-    queryBuilder.addFieldClause(HostService.State.FIELD_NAME_STATE, HostState.READY);
+    stages.add(new QueryStage("ready hosts",
+        builder -> builder.addFieldClause(HostService.State.FIELD_NAME_STATE, HostState.READY)));
 
     // Ensure that we only look for hosts that are responsive. Those are hosts with agents that respond
     // to pings and are marked as active.
-    queryBuilder.addFieldClause(HostService.State.FIELD_NAME_AGENT_STATE, AgentState.ACTIVE);
+    stages.add(new QueryStage("active agents",
+        builder -> builder.addFieldClause(HostService.State.FIELD_NAME_AGENT_STATE, AgentState.ACTIVE)));
 
     // Check if management only constraint is present. If not query for only the cloud hosts. This is needed to make
     // sure that we place all VMs which do not have a MANAGEMENT_ONLY constraint only on the hosts which are tagged
     // with CLOUD usage tag.
     if (state.resourceConstraints == null || !(state.resourceConstraints.stream()
-        .filter(rc -> rc.getType() == ResourceConstraintType.MANAGEMENT_ONLY)
+        .filter(rc -> rc != null && rc.getType() == ResourceConstraintType.MANAGEMENT_ONLY)
         .findFirst()).isPresent()) {
-      queryBuilder.addCollectionItemClause(HostService.State.FIELD_NAME_USAGE_TAGS, UsageTag.CLOUD.name());
+      stages.add(new QueryStage("cloud hosts",
+          builder -> builder.addCollectionItemClause(HostService.State.FIELD_NAME_USAGE_TAGS,
+              UsageTag.CLOUD.name())));
     }
 
-
     if (state.resourceConstraints != null) {
       for (ResourceConstraint constraint : state.resourceConstraints) {
 
@@ -495,30 +957,44 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
 
         switch (constraint.getType()) {
           case AVAILABILITY_ZONE:
-            addFieldClause(queryBuilder, HostService.State.FIELD_NAME_AVAILABILITY_ZONE_ID, null, constraint);
+            stages.add(new QueryStage(describe(constraint), builder ->
+                addFieldClause(builder, HostService.State.FIELD_NAME_AVAILABILITY_ZONE_ID, null, constraint)));
             break;
           case DATASTORE:
-            addCollectionItemClause(queryBuilder, HostService.State.FIELD_NAME_REPORTED_DATASTORES, constraint);
+            stages.add(new QueryStage(describe(constraint), builder ->
+                addCollectionItemClause(builder, HostService.State.FIELD_NAME_REPORTED_DATASTORES, constraint)));
             break;
           case DATASTORE_TAG:
             // Nothing to do here: we handled it EXTRACT_DATASTORE_TAG_CONSTRAINTS and will add
             // extra datastore constraints based on it below.
             break;
+          case DATASTORE_FREE_SPACE:
+            // Nothing to do here: we handled it in EXTRACT_DATASTORE_SPACE_CONSTRAINT and will add
+            // an extra datastore constraint based on it below.
+            break;
           case HOST:
-            addFieldClause(queryBuilder, HostService.State.FIELD_NAME_SELF_LINK, HOST_SELF_LINK_PREFIX, constraint);
+            stages.add(new QueryStage(describe(constraint), builder ->
+                addFieldClause(builder, HostService.State.FIELD_NAME_SELF_LINK, HOST_SELF_LINK_PREFIX, constraint)));
             break;
           case MANAGEMENT_ONLY:
             // This constraint doesn't come with values, but we want to reuse our code, so we set them
             constraint.setValues(managementTagValues);
-            addCollectionItemClause(queryBuilder, HostService.State.FIELD_NAME_USAGE_TAGS, constraint);
+            stages.add(new QueryStage(describe(constraint), builder ->
+                addCollectionItemClause(builder, HostService.State.FIELD_NAME_USAGE_TAGS, constraint)));
             break;
           case NETWORK:
-            addCollectionItemClause(queryBuilder, HostService.State.FIELD_NAME_REPORTED_NETWORKS, constraint);
+            stages.add(new QueryStage(describe(constraint), builder ->
+                addCollectionItemClause(builder, HostService.State.FIELD_NAME_REPORTED_NETWORKS, constraint)));
             break;
           case VIRTUAL_NETWORK:
             // Nothing needs to be done here: In virtual network case, all hosts are already wired together.
             // In other words, a VM on any host can join any virtual network. So this constraint should be ignored.
             break;
+          case VM_AFFINITY:
+          case VM_ANTI_AFFINITY:
+            // Nothing to do here: we handled it in EXTRACT_VM_CONSTRAINTS and will add
+            // extra host constraints based on it below.
+            break;
           default:
             throw new IllegalStateException("Invalid resource constraint: " + constraint);
         }
@@ -526,13 +1002,27 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     }
     if (state.extraDatastoreConstraints != null) {
       for (ResourceConstraint constraint : state.extraDatastoreConstraints) {
-        addCollectionItemClause(queryBuilder, HostService.State.FIELD_NAME_REPORTED_DATASTORES, constraint);
+        stages.add(new QueryStage("datastore tags resolved to " + describe(constraint), builder ->
+            addCollectionItemClause(builder, HostService.State.FIELD_NAME_REPORTED_DATASTORES, constraint)));
+      }
+    }
+    if (state.datastoreSpaceConstraint != null) {
+      ResourceConstraint constraint = state.datastoreSpaceConstraint;
+      stages.add(new QueryStage("datastores with " + state.requiredDatastoreGb + " GB of projected free space",
+          builder -> addCollectionItemClause(builder, HostService.State.FIELD_NAME_REPORTED_DATASTORES, constraint)));
+    }
+    for (ResourceConstraint constraint : state.extraHostConstraints) {
+      stages.add(new QueryStage("VM constraint resolved to " + describe(constraint), builder ->
+          addFieldClause(builder, HostService.State.FIELD_NAME_SELF_LINK, HOST_SELF_LINK_PREFIX, constraint)));
+    }
+    if (state.applySoftConstraints) {
+      for (ResourceConstraint constraint : state.softHostConstraints) {
+        stages.add(new QueryStage("soft VM constraint resolved to " + describe(constraint), builder ->
+            addFieldClause(builder, HostService.State.FIELD_NAME_SELF_LINK, HOST_SELF_LINK_PREFIX, constraint)));
       }
     }
 
-    state.query = queryBuilder.build();
-    state.currentStep = Step.GET_CANDIDATES;
-    getCandidates_HandleStep(state);
+    return stages;
   }
 
   /**
@@ -543,7 +1033,7 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
 
     QueryTask.Builder queryTaskBuilder = QueryTask.Builder.createDirectTask()
         .setQuery(state.query)
-        .setResultLimit(state.numCandidates)
+        .setResultLimit(getSampleSize(state))
         .addOption(QueryTask.QuerySpecification.QueryOption.TOP_RESULTS)
         .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
 
@@ -591,10 +1081,17 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
           logger.warn("Query result had invalid host document, ignoring");
           continue;
         }
-        state.candidates.put(ServiceUtils.getIDFromDocumentSelfLink(host.documentSelfLink),
-            new ServerAddress(host.hostAddress, host.agentPort));
+        String hostId = ServiceUtils.getIDFromDocumentSelfLink(host.documentSelfLink);
+        state.candidates.put(hostId, new ServerAddress(host.hostAddress, host.agentPort));
+        if (state.datastoreFreeGb != null) {
+          String datastoreId = getMostFreeDatastore(state, host);
+          state.candidateFreeGb.put(hostId, getFreeGb(state, datastoreId));
+          if (datastoreId != null) {
+            state.hostDatastores.put(hostId, datastoreId);
+          }
+        }
 
-        if (state.candidates.size() >= state.numCandidates) {
+        if (state.candidates.size() >= getSampleSize(state)) {
           // If we're searching the second half of the search space, we need to make sure not to add too many
           // candidates.
           break;
@@ -605,7 +1102,15 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     // If we've either searched all the ranges or we've found enough candidates,
     // we're done and we can return what we've found
     if (state.currentRange >= state.ranges.length - 1
-        || state.candidates.size() >= state.numCandidates) {
+        || state.candidates.size() >= getSampleSize(state)) {
+      if (state.candidates.isEmpty() && state.applySoftConstraints) {
+        // No host satisfies the soft constraints, so search again without them
+        logger.info("No candidates satisfy the soft constraints, dropping them");
+        state.applySoftConstraints = false;
+        state.currentStep = Step.CALCULATE_RANGES;
+        getCandidates_HandleStep(state);
+        return;
+      }
       state.currentStep = Step.SUCCESS;
       getCandidates_HandleStep(state);
       return;
@@ -627,6 +1132,17 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
    * be zero candidates.
    */
   private void getCandidates_Success(State state) {
+    if (state.candidates.size() > state.numCandidates) {
+      state.candidates = keepMostFreeCandidates(state);
+    }
+    if (state.candidateDatastores != null && state.datastoreSpaceConstraint != null) {
+      for (String hostId : state.candidates.keySet()) {
+        String datastoreId = state.hostDatastores.get(hostId);
+        if (datastoreId != null) {
+          state.candidateDatastores.put(hostId, datastoreId);
+        }
+      }
+    }
     logger.info("Found {} candidate(s): {}", state.candidates.size(),
         Utils.toJson(false, false, state.candidates.values()));
     state.completion.handle(state.candidates, null);
@@ -643,6 +1159,128 @@ public class CloudStoreConstraintChecker implements ConstraintChecker {
     return;
   }
 
+  /**
+   * Once all the constraints are resolved to host constraints, the hosts are counted per stage if the placement
+   * is explained, and searched for otherwise.
+   */
+  private Step getStepAfterConstraints(State state) {
+    return state.stages != null ? Step.COUNT_STAGES : Step.CALCULATE_RANGES;
+  }
+
+  /**
+   * Describes a constraint for the stages of an explained placement, e.g. "not DATASTORE [ds1, ds2]".
+   */
+  private static String describe(ResourceConstraint constraint) {
+    StringBuilder description = new StringBuilder();
+    if (constraint.isSetNegative() && constraint.isNegative()) {
+      description.append("not ");
+    }
+    description.append(constraint.getType());
+    if (constraint.getValues() != null) {
+      description.append(" ").append(constraint.getValues());
+    }
+    return description.toString();
+  }
+
+  @Override
+  public boolean recordVmPlacement(String vmId, String hostId, List<ResourceConstraint> constraints) {
+    return vmPlacementRegistry.tryRecord(vmId, hostId, constraints);
+  }
+
+  @Override
+  public void reserveDatastoreSpace(String hostId, String diskId, String datastoreId, double gb) {
+    datastoreReservationRegistry.reserve(hostId, diskId, datastoreId, gb);
+  }
+
+  /**
+   * Projects the free space of a datastore, or returns null if no capacity was reported for it.
+   */
+  private static Double getProjectedFreeGb(DatastoreService.State datastore, double reservedGb) {
+    if (datastore.capacityGb == null) {
+      return null;
+    }
+    double usedGb = datastore.usedGb != null ? datastore.usedGb : 0;
+    double uncommittedGb = datastore.uncommittedGb != null ? datastore.uncommittedGb : 0;
+    return datastore.capacityGb - usedGb - uncommittedGb - reservedGb;
+  }
+
+  /**
+   * Returns the datastore of the host with the most projected free space among the datastores the constraints
+   * allow, or null if it has none. Datastores with no reported capacity come last.
+   */
+  private static String getMostFreeDatastore(State state, HostService.State host) {
+    String mostFreeDatastore = null;
+    if (host.reportedDatastores != null) {
+      for (String datastoreId : host.reportedDatastores) {
+        if (isAllowedDatastore(state, datastoreId)
+            && (mostFreeDatastore == null || getFreeGb(state, datastoreId) > getFreeGb(state, mostFreeDatastore))) {
+          mostFreeDatastore = datastoreId;
+        }
+      }
+    }
+    return mostFreeDatastore;
+  }
+
+  /**
+   * Returns the projected free space of a datastore with enough of it, or negative infinity if its capacity is
+   * not reported or there is no datastore.
+   */
+  private static double getFreeGb(State state, String datastoreId) {
+    Double freeGb = datastoreId != null ? state.datastoreFreeGb.get(datastoreId) : null;
+    return freeGb != null ? freeGb : Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Checks a datastore against the free space constraint and the datastore constraints, including the ones the
+   * datastore tags resolved to.
+   */
+  private static boolean isAllowedDatastore(State state, String datastoreId) {
+    if (!state.spaceDatastores.contains(datastoreId)) {
+      return false;
+    }
+    List<ResourceConstraint> datastoreConstraints = new ArrayList<>(state.extraDatastoreConstraints);
+    if (state.resourceConstraints != null) {
+      datastoreConstraints.addAll(state.resourceConstraints);
+    }
+    for (ResourceConstraint constraint : datastoreConstraints) {
+      if (constraint.getType() != ResourceConstraintType.DATASTORE || constraint.getValues() == null) {
+        continue;
+      }
+      boolean negative = constraint.isSetNegative() && constraint.isNegative();
+      if (constraint.getValues().contains(datastoreId) == negative) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * When the candidates are weighted by datastore free space, more hosts than needed are sampled. Only the
+   * candidates with the most projected free space are kept.
+   */
+  private static Map<String, ServerAddress> keepMostFreeCandidates(State state) {
+    Map<String, ServerAddress> candidates = new HashMap<>();
+    state.candidates.entrySet().stream()
+        .sorted((first, second) -> Double.compare(
+            state.candidateFreeGb.getOrDefault(second.getKey(), Double.NEGATIVE_INFINITY),
+            state.candidateFreeGb.getOrDefault(first.getKey(), Double.NEGATIVE_INFINITY)))
+        .limit(state.numCandidates)
+        .forEach(entry -> candidates.put(entry.getKey(), entry.getValue()));
+    return candidates;
+  }
+
+  private static int getSampleSize(State state) {
+    if (state.datastoreFreeGb == null || state.datastoreFreeGb.isEmpty()) {
+      return state.numCandidates;
+    }
+    return state.numCandidates * DATASTORE_SPACE_SAMPLING_FACTOR;
+  }
+
+  private static boolean isVmConstraint(ResourceConstraint constraint) {
+    return constraint.getType() == ResourceConstraintType.VM_AFFINITY
+        || constraint.getType() == ResourceConstraintType.VM_ANTI_AFFINITY;
+  }
+
   /**
    * A helper method for creating a clause for a single constraint.
    */
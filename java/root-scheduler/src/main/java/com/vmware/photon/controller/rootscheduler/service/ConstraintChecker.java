@@ -59,4 +59,95 @@ public interface ConstraintChecker {
       int numCandidates,
       GetCandidatesCompletion completion);
 
+  /**
+   * Pick candidates like {@link #getCandidates}, and report the datastore each candidate should create the new disks
+   * of the resource on. Agents honour a single DATASTORE constraint value per disk, so a candidate is pointed at one
+   * datastore, not at the list of datastores the constraints allow. Checkers which do not resolve datastore
+   * constraints report no datastores.
+   *
+   * @param constraints a list of constraints to satisfy.
+   * @param numCandidates the number of candidates to pick.
+   * @param candidateDatastores the map to add the datastore of each candidate to, by host ID, before completion
+   *                            is called.
+   * @param completion the method to call when complete
+   */
+  default void getCandidates(
+      List<ResourceConstraint> constraints,
+      int numCandidates,
+      Map<String, String> candidateDatastores,
+      GetCandidatesCompletion completion) {
+    getCandidates(constraints, numCandidates, completion);
+  }
+
+  /**
+   * Pick candidates like {@link #getCandidates(List, int, Map, GetCandidatesCompletion)}, and report how many hosts
+   * are left after each of the constraints is applied. This is used to explain placements, and is more expensive
+   * than getCandidates(). Checkers which cannot count the hosts report no stages.
+   *
+   * @param constraints a list of constraints to satisfy.
+   * @param numCandidates the number of candidates to pick.
+   * @param stages the list to add the stages to, in the order the constraints are applied, before completion
+   *               is called.
+   * @param candidateDatastores the map to add the datastore of each candidate to, by host ID, before completion
+   *                            is called.
+   * @param completion the method to call when complete
+   */
+  default void explainCandidates(
+      List<ResourceConstraint> constraints,
+      int numCandidates,
+      List<CandidateStage> stages,
+      Map<String, String> candidateDatastores,
+      GetCandidatesCompletion completion) {
+    getCandidates(constraints, numCandidates, candidateDatastores, completion);
+  }
+
+  /**
+   * Records the host a VM was placed on, so that the VM affinity and anti-affinity constraints of placements
+   * running at the same time take it into account. Checkers which do not resolve VM constraints accept any host.
+   *
+   * @param vmId the id of the placed VM.
+   * @param hostId the id of the host the VM was placed on.
+   * @param constraints the constraints the VM was placed with.
+   * @return false if the host breaks a hard VM constraint against a VM placed since the candidates were picked.
+   */
+  default boolean recordVmPlacement(String vmId, String hostId, List<ResourceConstraint> constraints) {
+    return true;
+  }
+
+  /**
+   * Reserves the space a disk takes on a datastore until the usage reported for the datastore includes it, so that
+   * the DATASTORE_FREE_SPACE constraints of placements running at the same time take it into account. Checkers
+   * which do not resolve free space constraints ignore it.
+   *
+   * @param hostId the id of the host the disk was placed on.
+   * @param diskId the id of the placed disk.
+   * @param datastoreId the id of the datastore the disk was placed on.
+   * @param gb the space the disk takes, in GB.
+   */
+  default void reserveDatastoreSpace(String hostId, String diskId, String datastoreId, double gb) {
+  }
+
+  /**
+   * This class describes how many candidates are left after a stage of a placement.
+   */
+  class CandidateStage {
+
+    /**
+     * The description of the stage, e.g. the constraint it applies.
+     */
+    public String name;
+
+    /**
+     * The number of candidates which are left after the stage, or null if they could not be counted.
+     */
+    public Long candidateCount;
+
+    public CandidateStage() {
+    }
+
+    public CandidateStage(String name, Long candidateCount) {
+      this.name = name;
+      this.candidateCount = candidateCount;
+    }
+  }
 }
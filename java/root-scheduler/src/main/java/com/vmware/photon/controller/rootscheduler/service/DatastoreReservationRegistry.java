@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the datastore space reserved by disks this scheduler recently placed.
+ * <p>
+ * The space a disk takes only shows in the usage an agent reports for its datastore once the disk has been created,
+ * which happens after its placement returns. The free space of a datastore is projected by taking the space reserved
+ * for disks which may not be created yet off the reported free space, so that placements running at the same time
+ * do not all pick the same datastore. Entries expire once the usage reported by the agents is expected to include
+ * the disks: the datastore usage is synced with the host metadata, so an entry lives for two of those intervals,
+ * one for the sync to start after the disk is created and one for it to complete.
+ */
+public class DatastoreReservationRegistry {
+
+  private static final long ENTRY_TTL_MILLIS = 2 * HostService.UPDATE_HOST_METADATA_INTERVAL;
+  private static final long MAX_ENTRIES = 100_000;
+
+  private final Cache<String, Reservation> reservations = CacheBuilder.newBuilder()
+      .maximumSize(MAX_ENTRIES)
+      .expireAfterWrite(ENTRY_TTL_MILLIS, TimeUnit.MILLISECONDS)
+      .build();
+
+  /**
+   * Reserves space on a datastore for a disk placed on a host. Placing the same disk on the same host again
+   * replaces its reservation.
+   */
+  public void reserve(String hostId, String diskId, String datastoreId, double gb) {
+    reservations.put(hostId + "/" + diskId, new Reservation(datastoreId, gb));
+  }
+
+  /**
+   * Returns the space reserved on each datastore, in GB.
+   */
+  public Map<String, Double> getReservedGb() {
+    Map<String, Double> reservedGb = new HashMap<>();
+    for (Reservation reservation : reservations.asMap().values()) {
+      reservedGb.merge(reservation.datastoreId, reservation.gb, Double::sum);
+    }
+    return reservedGb;
+  }
+
+  private static class Reservation {
+    final String datastoreId;
+    final double gb;
+
+    Reservation(String datastoreId, double gb) {
+      this.datastoreId = datastoreId;
+      this.gb = gb;
+    }
+  }
+}
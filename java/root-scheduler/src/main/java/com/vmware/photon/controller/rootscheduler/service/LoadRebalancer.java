@@ -0,0 +1,425 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.LocalitySpec;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.api.model.VmState;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.rootscheduler.SchedulerConfig;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class computes VM migrations which even out the load of the cloud hosts.
+ * <p>
+ * Host documents only carry the capacity of the hosts, so the load of a host is derived from the cost of the VMs
+ * on it. The utilization of a host is the larger of its CPU and memory utilizations, and the imbalance of the
+ * deployment is the standard deviation of the host utilizations.
+ * <p>
+ * Moves are chosen greedily: every round takes the single move which lowers the imbalance most, applies it to the
+ * model and starts over, until no move improves the imbalance by at least the configured amount or the configured
+ * number of moves is reached. The moves are therefore ranked in the order they should be carried out. Only the
+ * most utilized hosts are used as sources in a round, which bounds a round to a few hosts times the hosts in the
+ * deployment.
+ * <p>
+ * A move has to respect the constraints the VM was placed with: the target has to see the datastore of the VM, be
+ * in the availability zone the VM is bound to, have room for the VM and must not hold a VM it is anti-affine to.
+ * VMs bound to a host, affine to other VMs or which other VMs are affine to are not moved, as moving them alone would
+ * break the constraint.
+ */
+public class LoadRebalancer {
+
+  private static final int MAX_SOURCE_HOSTS = 8;
+
+  private static final Set<VmState> MOVABLE_VM_STATES = EnumSet.of(VmState.STARTED, VmState.STOPPED);
+  private static final Set<VmState> UNLOADED_VM_STATES = EnumSet.of(VmState.ERROR, VmState.DELETED);
+
+  private static final String HOST_KIND = "host";
+  private static final String AVAILABILITY_ZONE_KIND = "availabilityZone";
+  private static final Set<String> VM_AFFINITY_KINDS = ImmutableSet.of("vm", "vmSoftAffinity");
+  private static final Set<String> VM_ANTI_AFFINITY_KINDS = ImmutableSet.of("vmAntiAffinity", "vmSoftAntiAffinity");
+
+  private final int maxMoves;
+  private final double minImprovement;
+
+  public LoadRebalancer(SchedulerConfig config) {
+    this(config.getRebalanceMaxMoves(), config.getRebalanceMinImprovement());
+  }
+
+  public LoadRebalancer(int maxMoves, double minImprovement) {
+    this.maxMoves = maxMoves;
+    this.minImprovement = minImprovement;
+  }
+
+  /**
+   * Computes the moves for the given hosts and VMs.
+   *
+   * @param hosts the host documents; hosts which are not ready cloud hosts are left out
+   * @param vms   the VM documents; VMs on hosts which are left out are ignored
+   * @return the result, with the moves in the order they should be carried out
+   */
+  public Result rebalance(Collection<HostService.State> hosts, Collection<VmService.State> vms) {
+    Map<String, HostModel> hostModels = new LinkedHashMap<>();
+    for (HostService.State host : hosts) {
+      if (isCloudHost(host)) {
+        HostModel model = new HostModel(host);
+        hostModels.put(model.hostId, model);
+      }
+    }
+
+    Set<String> affinityTargets = new HashSet<>();
+    for (VmService.State vm : vms) {
+      if (vm.affinities != null && isLoaded(vm)) {
+        for (LocalitySpec locality : vm.affinities) {
+          if (VM_AFFINITY_KINDS.contains(locality.getKind())) {
+            affinityTargets.add(locality.getId());
+          }
+        }
+      }
+    }
+
+    for (VmService.State vm : vms) {
+      HostModel host = vm.agent == null ? null : hostModels.get(vm.agent);
+      if (host != null && isLoaded(vm)) {
+        VmModel model = new VmModel(vm);
+        model.movable &= !affinityTargets.contains(model.vmId);
+        host.add(model);
+      }
+    }
+
+    Imbalance imbalance = new Imbalance(hostModels.values());
+    double initialImbalance = imbalance.get();
+
+    List<Move> moves = new ArrayList<>();
+    Set<String> movedVms = new HashSet<>();
+    while (moves.size() < maxMoves) {
+      Move move = findBestMove(hostModels.values(), imbalance, movedVms);
+      if (move == null) {
+        break;
+      }
+
+      HostModel source = hostModels.get(move.sourceHostId);
+      HostModel target = hostModels.get(move.targetHostId);
+      VmModel vm = source.vms.get(move.vmId);
+      imbalance.replace(source.utilization(), source.utilizationWithout(vm),
+          target.utilization(), target.utilizationWith(vm));
+      source.remove(vm);
+      target.add(vm);
+      movedVms.add(vm.vmId);
+      moves.add(move);
+    }
+
+    return new Result(hostModels.size(), initialImbalance, imbalance.get(), moves);
+  }
+
+  private Move findBestMove(Collection<HostModel> hosts, Imbalance imbalance, Set<String> movedVms) {
+    List<HostModel> sources = hosts.stream()
+        .sorted(Comparator.comparingDouble(HostModel::utilization).reversed())
+        .limit(MAX_SOURCE_HOSTS)
+        .collect(Collectors.toList());
+
+    double currentImbalance = imbalance.get();
+    Move bestMove = null;
+    for (HostModel source : sources) {
+      double sourceUtilization = source.utilization();
+      for (VmModel vm : source.vms.values()) {
+        if (!vm.movable || movedVms.contains(vm.vmId)) {
+          continue;
+        }
+
+        double sourceUtilizationAfter = source.utilizationWithout(vm);
+        for (HostModel target : hosts) {
+          if (target == source || target.utilization() >= sourceUtilization) {
+            continue;
+          }
+
+          double targetUtilizationAfter = target.utilizationWith(vm);
+          if (targetUtilizationAfter > 1.0 || !satisfiesConstraints(vm, target)) {
+            continue;
+          }
+
+          double improvement = currentImbalance - imbalance.getWith(sourceUtilization, sourceUtilizationAfter,
+              target.utilization(), targetUtilizationAfter);
+          if (improvement >= minImprovement && (bestMove == null || improvement > bestMove.improvement)) {
+            bestMove = new Move(vm.vmId, source.hostId, target.hostId, improvement);
+          }
+        }
+      }
+    }
+
+    return bestMove;
+  }
+
+  private static boolean satisfiesConstraints(VmModel vm, HostModel target) {
+    if (!target.datastores.contains(vm.datastoreId)) {
+      return false;
+    }
+
+    if (vm.availabilityZoneId != null && !vm.availabilityZoneId.equals(target.availabilityZoneId)) {
+      return false;
+    }
+
+    for (VmModel other : target.vms.values()) {
+      if (vm.antiAffinities.contains(other.vmId) || other.antiAffinities.contains(vm.vmId)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isLoaded(VmService.State vm) {
+    return vm.vmState == null || !UNLOADED_VM_STATES.contains(vm.vmState);
+  }
+
+  private static boolean isCloudHost(HostService.State host) {
+    return host.state == HostState.READY
+        && host.agentState == AgentState.ACTIVE
+        && host.usageTags != null
+        && host.usageTags.contains(UsageTag.CLOUD.name())
+        && host.cpuCount != null && host.cpuCount > 0
+        && host.memoryMb != null && host.memoryMb > 0;
+  }
+
+  /**
+   * Returns the amount of CPUs and MB of memory in the cost of a VM.
+   */
+  private static double[] getVmLoad(List<QuotaLineItem> cost) {
+    double[] load = new double[2];
+    if (cost == null) {
+      return load;
+    }
+
+    for (QuotaLineItem item : cost) {
+      if (QuotaLineItem.VM_CPU.equals(item.getKey())) {
+        load[0] = item.getValue();
+      } else if (QuotaLineItem.VM_MEMORY.equals(item.getKey()) && item.getUnit() != null) {
+        switch (item.getUnit()) {
+          case GB:
+            load[1] = item.getValue() * 1024;
+            break;
+          case MB:
+            load[1] = item.getValue();
+            break;
+          case KB:
+            load[1] = item.getValue() / 1024;
+            break;
+          case B:
+            load[1] = item.getValue() / (1024 * 1024);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    return load;
+  }
+
+  /**
+   * A recommended move of a VM from one host to another.
+   */
+  public static class Move {
+    public final String vmId;
+    public final String sourceHostId;
+    public final String targetHostId;
+
+    /**
+     * The drop of the imbalance when this move is carried out after the moves ranked before it.
+     */
+    public final double improvement;
+
+    public Move(String vmId, String sourceHostId, String targetHostId, double improvement) {
+      this.vmId = vmId;
+      this.sourceHostId = sourceHostId;
+      this.targetHostId = targetHostId;
+      this.improvement = improvement;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %s -> %s (%.4f)", vmId, sourceHostId, targetHostId, improvement);
+    }
+  }
+
+  /**
+   * The outcome of a rebalancing run.
+   */
+  public static class Result {
+    public final int hostCount;
+    public final double initialImbalance;
+    public final double finalImbalance;
+    public final List<Move> moves;
+
+    public Result(int hostCount, double initialImbalance, double finalImbalance, List<Move> moves) {
+      this.hostCount = hostCount;
+      this.initialImbalance = initialImbalance;
+      this.finalImbalance = finalImbalance;
+      this.moves = Collections.unmodifiableList(moves);
+    }
+  }
+
+  /**
+   * Keeps the sums needed for the standard deviation of the host utilizations, so that the effect of a move can be
+   * computed from the two hosts it touches.
+   */
+  private static class Imbalance {
+    private final int count;
+    private double sum;
+    private double sumOfSquares;
+
+    private Imbalance(Collection<HostModel> hosts) {
+      count = hosts.size();
+      for (HostModel host : hosts) {
+        double utilization = host.utilization();
+        sum += utilization;
+        sumOfSquares += utilization * utilization;
+      }
+    }
+
+    private double get() {
+      return standardDeviation(sum, sumOfSquares);
+    }
+
+    private double getWith(double sourceBefore, double sourceAfter, double targetBefore, double targetAfter) {
+      return standardDeviation(
+          sum - sourceBefore - targetBefore + sourceAfter + targetAfter,
+          sumOfSquares - sourceBefore * sourceBefore - targetBefore * targetBefore
+              + sourceAfter * sourceAfter + targetAfter * targetAfter);
+    }
+
+    private void replace(double sourceBefore, double sourceAfter, double targetBefore, double targetAfter) {
+      sum += sourceAfter + targetAfter - sourceBefore - targetBefore;
+      sumOfSquares += sourceAfter * sourceAfter + targetAfter * targetAfter
+          - sourceBefore * sourceBefore - targetBefore * targetBefore;
+    }
+
+    private double standardDeviation(double sum, double sumOfSquares) {
+      if (count == 0) {
+        return 0.0;
+      }
+      double mean = sum / count;
+      return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+    }
+  }
+
+  /**
+   * The load of a host in the model.
+   */
+  private static class HostModel {
+    private final String hostId;
+    private final double cpuCount;
+    private final double memoryMb;
+    private final String availabilityZoneId;
+    private final Set<String> datastores;
+    private final Map<String, VmModel> vms = new LinkedHashMap<>();
+    private double cpuUsed;
+    private double memoryUsedMb;
+
+    private HostModel(HostService.State host) {
+      this.hostId = ServiceUtils.getIDFromDocumentSelfLink(host.documentSelfLink);
+      this.cpuCount = host.cpuCount;
+      this.memoryMb = host.memoryMb;
+      this.availabilityZoneId = host.availabilityZoneId;
+      this.datastores = host.reportedDatastores != null ? host.reportedDatastores : Collections.emptySet();
+    }
+
+    private void add(VmModel vm) {
+      vms.put(vm.vmId, vm);
+      cpuUsed += vm.cpuCount;
+      memoryUsedMb += vm.memoryMb;
+    }
+
+    private void remove(VmModel vm) {
+      vms.remove(vm.vmId);
+      cpuUsed -= vm.cpuCount;
+      memoryUsedMb -= vm.memoryMb;
+    }
+
+    private double utilization() {
+      return utilization(cpuUsed, memoryUsedMb);
+    }
+
+    private double utilizationWith(VmModel vm) {
+      return utilization(cpuUsed + vm.cpuCount, memoryUsedMb + vm.memoryMb);
+    }
+
+    private double utilizationWithout(VmModel vm) {
+      return utilization(cpuUsed - vm.cpuCount, memoryUsedMb - vm.memoryMb);
+    }
+
+    private double utilization(double cpu, double memory) {
+      return Math.max(cpu / cpuCount, memory / memoryMb);
+    }
+  }
+
+  /**
+   * The load and the placement constraints of a VM in the model.
+   */
+  private static class VmModel {
+    private final String vmId;
+    private final double cpuCount;
+    private final double memoryMb;
+    private final String datastoreId;
+    private final String availabilityZoneId;
+    private final Set<String> antiAffinities = new HashSet<>();
+    private boolean movable;
+
+    private VmModel(VmService.State vm) {
+      this.vmId = ServiceUtils.getIDFromDocumentSelfLink(vm.documentSelfLink);
+      double[] load = getVmLoad(vm.cost);
+      this.cpuCount = load[0];
+      this.memoryMb = load[1];
+      this.datastoreId = vm.datastore;
+
+      boolean pinned = false;
+      String zone = null;
+      if (vm.affinities != null) {
+        for (LocalitySpec locality : vm.affinities) {
+          String kind = locality.getKind();
+          if (HOST_KIND.equals(kind) || VM_AFFINITY_KINDS.contains(kind)) {
+            pinned = true;
+          } else if (AVAILABILITY_ZONE_KIND.equals(kind)) {
+            zone = locality.getId();
+          } else if (VM_ANTI_AFFINITY_KINDS.contains(kind)) {
+            antiAffinities.add(locality.getId());
+          }
+        }
+      }
+
+      this.availabilityZoneId = zone;
+      this.movable = !pinned
+          && datastoreId != null
+          && vm.vmState != null && MOVABLE_VM_STATES.contains(vm.vmState);
+    }
+  }
+}
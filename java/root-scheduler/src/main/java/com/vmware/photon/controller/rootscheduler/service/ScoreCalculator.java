@@ -20,6 +20,8 @@ import com.vmware.photon.controller.scheduler.gen.Score;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Doubles;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -43,10 +45,30 @@ public class ScoreCalculator {
     if (responses == null || responses.isEmpty()) {
       return null;
     }
-    return scoreOrdering.reverse().sortedCopy(responses).get(0);
+    return scoreOrdering.max(responses);
   }
 
-  private double score(PlaceResponse placeResponse) {
+  /**
+   * Returns the PlaceResponses ordered from the best score to the worst score.
+   *
+   * @param responses a set of responses to rank.
+   * @return the ranked responses, or an empty list if there are no responses.
+   */
+  public List<PlaceResponse> rankResponses(Set<PlaceResponse> responses) {
+    if (responses == null || responses.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return scoreOrdering.reverse().sortedCopy(responses);
+  }
+
+  /**
+   * Returns the score the responses are ranked by: the weighted average of the utilization and transfer scores
+   * reported by the host.
+   *
+   * @param placeResponse a successful response.
+   * @return the combined score.
+   */
+  public double score(PlaceResponse placeResponse) {
     double ratio = this.config.getUtilizationTransferRatio();
     Score score = placeResponse.getScore();
     return (ratio * score.getUtilization() + score.getTransfer()) / (ratio + 1);
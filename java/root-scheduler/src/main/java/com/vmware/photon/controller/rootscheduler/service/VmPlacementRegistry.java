@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers the hosts VMs were recently placed on by this scheduler.
+ * <p>
+ * A VM is only recorded on its host in cloud-store once it has been created, which happens after its placement
+ * returns. VM affinity and anti-affinity constraints are resolved against this registry as well, so that members
+ * of a group which are placed at the same time still see each other. The hard constraints of a recorded VM are kept
+ * with it, so that a VM placed later cannot break them either, whichever of the two names the other. Entries expire
+ * once the VM documents are expected to carry the host.
+ * <p>
+ * The registry only lives in the memory of this scheduler: it is empty after a restart and does not see the VMs
+ * placed by other scheduler nodes. A VM which is missing from it is resolved to the agent recorded on its VM document
+ * in cloud-store instead, so constraints towards VMs which are created are always enforced. Only members of a group
+ * which are placed at the same time by different scheduler nodes can still break each other's constraints.
+ */
+public class VmPlacementRegistry {
+
+  private static final long ENTRY_TTL_MINUTES = 10;
+  private static final long MAX_ENTRIES = 100_000;
+
+  private final Cache<String, Placement> placementsByVm = CacheBuilder.newBuilder()
+      .maximumSize(MAX_ENTRIES)
+      .expireAfterWrite(ENTRY_TTL_MINUTES, TimeUnit.MINUTES)
+      .removalListener(this::onRemoval)
+      .build();
+
+  // The recorded VMs which have a hard constraint naming a VM, by the id of the named VM
+  private final Map<String, Set<String>> constrainedVmsByVm = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the id of the host the VM was recently placed on, or null.
+   */
+  public String getHost(String vmId) {
+    Placement placement = placementsByVm.getIfPresent(vmId);
+    return placement != null ? placement.hostId : null;
+  }
+
+  /**
+   * Records the VM on the host, unless that breaks one of its hard VM affinity or anti-affinity constraints
+   * against the VMs recorded in the registry, or one of the hard constraints of a recorded VM which names it.
+   * A hard affinity to VMs which are on different hosts cannot be satisfied.
+   *
+   * @return true if the VM was recorded, false if the host conflicts with a VM placed in the meantime
+   */
+  public synchronized boolean tryRecord(String vmId, String hostId, List<ResourceConstraint> constraints) {
+    List<ResourceConstraint> hardConstraints = constraints == null
+        ? Collections.emptyList()
+        : constraints.stream().filter(VmPlacementRegistry::isHardVmConstraint).collect(Collectors.toList());
+
+    for (ResourceConstraint constraint : hardConstraints) {
+      Set<String> hosts = constraint.getValues().stream()
+          .map(this::getHost)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toSet());
+      if (!satisfies(constraint.getType(), hosts, hostId)) {
+        return false;
+      }
+    }
+
+    for (String constrainedVmId : constrainedVmsByVm.getOrDefault(vmId, Collections.emptySet())) {
+      Placement constrainedVm = placementsByVm.getIfPresent(constrainedVmId);
+      if (constrainedVm == null || constrainedVmId.equals(vmId)) {
+        continue;
+      }
+
+      for (ResourceConstraint constraint : constrainedVm.hardConstraints) {
+        if (constraint.getValues().contains(vmId)
+            && !satisfies(constraint.getType(), Collections.singleton(constrainedVm.hostId), hostId)) {
+          return false;
+        }
+      }
+    }
+
+    placementsByVm.put(vmId, new Placement(hostId, hardConstraints));
+    for (ResourceConstraint constraint : hardConstraints) {
+      for (String namedVmId : constraint.getValues()) {
+        constrainedVmsByVm.computeIfAbsent(namedVmId, id -> ConcurrentHashMap.newKeySet()).add(vmId);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether placing a VM on the host satisfies a constraint towards VMs which are on the given hosts.
+   */
+  private static boolean satisfies(ResourceConstraintType type, Set<String> hosts, String hostId) {
+    if (type == ResourceConstraintType.VM_ANTI_AFFINITY) {
+      return !hosts.contains(hostId);
+    }
+
+    return hosts.isEmpty() || (hosts.size() == 1 && hosts.contains(hostId));
+  }
+
+  /**
+   * Forgets the constraints of a VM which expired, was evicted or was recorded again.
+   */
+  private void onRemoval(RemovalNotification<String, Placement> notification) {
+    for (ResourceConstraint constraint : notification.getValue().hardConstraints) {
+      for (String namedVmId : constraint.getValues()) {
+        constrainedVmsByVm.computeIfPresent(namedVmId, (id, vmIds) -> {
+          vmIds.remove(notification.getKey());
+          return vmIds.isEmpty() ? null : vmIds;
+        });
+      }
+    }
+  }
+
+  private static boolean isHardVmConstraint(ResourceConstraint constraint) {
+    return constraint != null
+        && (constraint.getType() == ResourceConstraintType.VM_AFFINITY
+            || constraint.getType() == ResourceConstraintType.VM_ANTI_AFFINITY)
+        && constraint.getValues() != null
+        && !(constraint.isSetSoft() && constraint.isSoft());
+  }
+
+  /**
+   * The host a VM was placed on, and its hard VM constraints.
+   */
+  private static class Placement {
+    private final String hostId;
+    private final List<ResourceConstraint> hardConstraints;
+
+    private Placement(String hostId, List<ResourceConstraint> hardConstraints) {
+      this.hostId = hostId;
+      this.hardConstraints = new ArrayList<>(hardConstraints);
+    }
+  }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.xenon;
+
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
+import com.vmware.photon.controller.common.xenon.ServiceUriPaths;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
+import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
+import com.vmware.photon.controller.rootscheduler.service.LoadRebalancer;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeSelectorService;
+import com.vmware.xenon.services.common.QueryTask;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * This service periodically computes VM migrations which even out the load of the cloud hosts, see
+ * {@link LoadRebalancer}.
+ * <p>
+ * A GET returns the recommendations of the last run, a POST runs the rebalancer and returns the new ones. The
+ * recommendations are advisory: nothing is migrated by this service.
+ * <p>
+ * The service runs on every scheduler node, but only the node which owns its self link in the node group computes
+ * the recommendations; the other nodes forward GET and POST requests to it, so that every node serves the same
+ * recommendations. The hosts and VMs are read a page at a time, with only the fields the rebalancer uses.
+ */
+public class RebalancerService extends StatelessService {
+
+  public static final String SELF_LINK = ServiceUriPaths.SCHEDULER_ROOT + "/rebalancer";
+
+  private static final long OWNER_SELECTION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final int QUERY_PAGE_SIZE = 500;
+
+  private static final String[] HOST_FIELDS = {
+      ServiceDocument.FIELD_NAME_SELF_LINK,
+      HostService.State.FIELD_NAME_STATE,
+      HostService.State.FIELD_NAME_AGENT_STATE,
+      HostService.State.FIELD_NAME_USAGE_TAGS,
+      HostService.State.FIELD_NAME_AVAILABILITY_ZONE_ID,
+      HostService.State.FIELD_NAME_REPORTED_DATASTORES,
+      "cpuCount",
+      "memoryMb"};
+
+  private static final String[] VM_FIELDS = {
+      ServiceDocument.FIELD_NAME_SELF_LINK,
+      "agent",
+      "vmState",
+      "datastore",
+      "cost",
+      "affinities"};
+
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  private volatile State latestState = new State();
+
+  public RebalancerService() {
+    super(State.class);
+    toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+  }
+
+  @Override
+  public void handleStart(Operation start) {
+    setMaintenanceIntervalMicros(TimeUnit.MILLISECONDS.toMicros(getScheduler().getRebalanceIntervalMs()));
+    start.complete();
+  }
+
+  @Override
+  public void handleGet(Operation get) {
+    runOnOwner(get, () -> {
+      if (latestState.computedTimeMicros != null) {
+        get.setBody(latestState).complete();
+        return;
+      }
+
+      // Nothing was computed on this node yet, e.g. because it only just became the owner.
+      rebalanceAndReply(get);
+    });
+  }
+
+  @Override
+  public void handlePost(Operation post) {
+    runOnOwner(post, () -> rebalanceAndReply(post));
+  }
+
+  @Override
+  public void handlePeriodicMaintenance(Operation post) {
+    post.complete();
+
+    selectOwner((ownerNodeReference, ex) -> {
+      if (ex != null) {
+        ServiceUtils.logWarning(this, "Skipping rebalancing, the owner node could not be selected: %s",
+            ex.getMessage());
+        return;
+      }
+
+      if (ownerNodeReference != null) {
+        return;
+      }
+
+      if (!running.compareAndSet(false, true)) {
+        ServiceUtils.logInfo(this, "Skipping rebalancing, the previous run has not finished");
+        return;
+      }
+
+      rebalance((state, rebalanceEx) -> {
+        running.set(false);
+        if (rebalanceEx != null) {
+          ServiceUtils.logWarning(this, "Rebalancing failed: %s", rebalanceEx.getMessage());
+        }
+      });
+    });
+  }
+
+  private void rebalanceAndReply(Operation op) {
+    rebalance((state, ex) -> {
+      if (ex != null) {
+        op.fail(ex);
+        return;
+      }
+      op.setBody(state).complete();
+    });
+  }
+
+  /**
+   * Handles the operation on this node if it owns the service, or forwards it to the owner node otherwise. An
+   * operation which was already forwarded is handled here, so that nodes which disagree on the owner while the
+   * node group changes do not forward it back and forth.
+   */
+  private void runOnOwner(Operation op, Runnable handler) {
+    if (op.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)) {
+      handler.run();
+      return;
+    }
+
+    selectOwner((ownerNodeReference, ex) -> {
+      if (ex != null) {
+        op.fail(ex);
+        return;
+      }
+
+      if (ownerNodeReference == null) {
+        handler.run();
+        return;
+      }
+
+      Operation forwardOp = Operation.createGet(UriUtils.buildUri(ownerNodeReference, SELF_LINK))
+          .setAction(op.getAction())
+          .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)
+          .setCompletion((response, forwardEx) -> {
+            if (forwardEx != null) {
+              op.fail(forwardEx);
+              return;
+            }
+            op.setBody(response.getBody(State.class)).complete();
+          });
+      if (op.getAction() == Action.POST) {
+        forwardOp.setBody(new State());
+      }
+      sendRequest(forwardOp);
+    });
+  }
+
+  /**
+   * Selects the node which owns this service. The completion gets the URI of the owner node, or null if this node
+   * is the owner.
+   */
+  private void selectOwner(BiConsumer<URI, Throwable> completion) {
+    Operation selectOwnerOp = Operation
+        .createPost(null)
+        .setExpiration(ServiceUtils.computeExpirationTime(OWNER_SELECTION_TIMEOUT_MILLIS))
+        .setCompletion((op, ex) -> {
+          if (ex != null) {
+            completion.accept(null, ex);
+            return;
+          }
+
+          NodeSelectorService.SelectOwnerResponse rsp = op.getBody(NodeSelectorService.SelectOwnerResponse.class);
+          completion.accept(getHost().getId().equals(rsp.ownerNodeId) ? null : rsp.ownerNodeReference, null);
+        });
+    getHost().selectOwner(null, getSelfLink(), selectOwnerOp);
+  }
+
+  /**
+   * Queries the ready hosts and then their VMs, and runs the rebalancer on them.
+   */
+  private void rebalance(BiConsumer<State, Throwable> completion) {
+    QueryTask hostQuery = buildQuery(QueryTask.Query.Builder.create()
+        .addKindFieldClause(HostService.State.class)
+        .addFieldClause(HostService.State.FIELD_NAME_STATE, HostState.READY.name())
+        .build(), HOST_FIELDS);
+
+    sendQuery(hostQuery, HostService.State.class, (hosts, hostEx) -> {
+      if (hostEx != null) {
+        completion.accept(null, hostEx);
+        return;
+      }
+
+      QueryTask vmQuery = buildQuery(QueryTask.Query.Builder.create()
+          .addKindFieldClause(VmService.State.class)
+          .build(), VM_FIELDS);
+
+      sendQuery(vmQuery, VmService.State.class, (vms, vmEx) -> {
+        if (vmEx != null) {
+          completion.accept(null, vmEx);
+          return;
+        }
+
+        try {
+          State state = buildState(getScheduler().getLoadRebalancer().rebalance(hosts, vms));
+          latestState = state;
+          ServiceUtils.logInfo(this, "Rebalanced %d hosts: imbalance %.4f -> %.4f with %d moves",
+              state.hostCount, state.initialImbalance, state.finalImbalance, state.recommendations.size());
+          completion.accept(state, null);
+        } catch (Throwable t) {
+          completion.accept(null, t);
+        }
+      });
+    });
+  }
+
+  private static QueryTask buildQuery(QueryTask.Query query, String[] fields) {
+    QueryTask.Builder builder = QueryTask.Builder.createDirectTask()
+        .setQuery(query)
+        .setResultLimit(QUERY_PAGE_SIZE)
+        .addOption(QueryTask.QuerySpecification.QueryOption.EXPAND_SELECTED_FIELDS);
+    for (String field : fields) {
+      builder.addSelectTerm(field);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Sends a paginated query to cloud-store and collects the documents of all the pages. The pages are kept by the
+   * cloud-store node which ran the query, so they are read from that node.
+   */
+  private <T extends ServiceDocument> void sendQuery(
+      QueryTask queryTask,
+      Class<T> documentType,
+      BiConsumer<List<T>, Throwable> completion) {
+    CloudStoreHelper cloudStoreHelper = ((PhotonControllerXenonHost) getHost()).getCloudStoreHelper();
+    Operation queryOperation = cloudStoreHelper.createPost(ServiceUriPaths.CORE_QUERY_TASKS)
+        .setBody(queryTask);
+    URI queryUri = queryOperation.getUri();
+    URI cloudStoreUri = UriUtils.buildUri(queryUri.getScheme(), queryUri.getHost(), queryUri.getPort(), null, null);
+    sendPageRequest(queryOperation, cloudStoreUri, documentType, new ArrayList<>(), completion);
+  }
+
+  private <T extends ServiceDocument> void sendPageRequest(
+      Operation pageOperation,
+      URI cloudStoreUri,
+      Class<T> documentType,
+      List<T> documents,
+      BiConsumer<List<T>, Throwable> completion) {
+    pageOperation.setCompletion((response, ex) -> {
+      if (ex != null) {
+        completion.accept(null, ex);
+        return;
+      }
+
+      QueryTask result = response.getBody(QueryTask.class);
+      if (result.results == null) {
+        completion.accept(documents, null);
+        return;
+      }
+
+      if (result.results.documents != null) {
+        for (Object document : result.results.documents.values()) {
+          documents.add(Utils.fromJson(document, documentType));
+        }
+      }
+
+      // A paginated query returns no documents itself, only the link to its first page.
+      if (result.results.nextPageLink == null) {
+        completion.accept(documents, null);
+        return;
+      }
+
+      sendPageRequest(Operation.createGet(UriUtils.buildUri(cloudStoreUri + result.results.nextPageLink)),
+          cloudStoreUri, documentType, documents, completion);
+    });
+    sendRequest(pageOperation);
+  }
+
+  private SchedulerServiceGroup getScheduler() {
+    return (SchedulerServiceGroup) ((PhotonControllerXenonHost) getHost()).getScheduler();
+  }
+
+  private static State buildState(LoadRebalancer.Result result) {
+    State state = new State();
+    state.computedTimeMicros = Utils.getNowMicrosUtc();
+    state.hostCount = result.hostCount;
+    state.initialImbalance = result.initialImbalance;
+    state.finalImbalance = result.finalImbalance;
+    state.recommendations = new ArrayList<>();
+    for (LoadRebalancer.Move move : result.moves) {
+      Recommendation recommendation = new Recommendation();
+      recommendation.vmId = move.vmId;
+      recommendation.sourceHostId = move.sourceHostId;
+      recommendation.targetHostId = move.targetHostId;
+      recommendation.improvement = move.improvement;
+      state.recommendations.add(recommendation);
+    }
+    return state;
+  }
+
+  /**
+   * A recommended VM migration.
+   */
+  public static class Recommendation {
+    public String vmId;
+    public String sourceHostId;
+    public String targetHostId;
+    public Double improvement;
+  }
+
+  /**
+   * This class defines the document state associated with a single {@link RebalancerService} instance.
+   */
+  public static class State extends ServiceDocument {
+
+    /**
+     * The time the recommendations were computed at, or null if they were not computed yet.
+     */
+    public Long computedTimeMicros;
+
+    /**
+     * The number of hosts which were taken into account.
+     */
+    public Integer hostCount;
+
+    /**
+     * The standard deviation of the host utilizations before and after the recommended migrations.
+     */
+    public Double initialImbalance;
+
+    public Double finalImbalance;
+
+    /**
+     * The recommended migrations, in the order they should be carried out.
+     */
+    public List<Recommendation> recommendations;
+  }
+}
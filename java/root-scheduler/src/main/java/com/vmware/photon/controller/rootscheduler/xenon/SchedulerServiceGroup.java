@@ -13,16 +13,21 @@
 
 package com.vmware.photon.controller.rootscheduler.xenon;
 
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.XenonServiceGroup;
 import com.vmware.photon.controller.common.xenon.host.PhotonControllerXenonHost;
 import com.vmware.photon.controller.rootscheduler.SchedulerConfig;
 import com.vmware.photon.controller.rootscheduler.service.ConstraintChecker;
+import com.vmware.photon.controller.rootscheduler.service.LoadRebalancer;
 import com.vmware.photon.controller.rootscheduler.service.ScoreCalculator;
 import com.vmware.photon.controller.rootscheduler.xenon.task.PlacementTaskService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collection;
+
 /**
  * Represents the set of Xenon services related to the scheduler service.
  */
@@ -34,11 +39,15 @@ public class SchedulerServiceGroup
   private static final Logger logger = LoggerFactory.getLogger(SchedulerServiceGroup.class);
 
   private final ScoreCalculator scoreCalculator;
+  private final LoadRebalancer loadRebalancer;
+  private final long rebalanceIntervalMs;
   private ConstraintChecker checker;
   private PhotonControllerXenonHost photonControllerXenonHost;
 
   public SchedulerServiceGroup(SchedulerConfig schedulerConfig, ConstraintChecker constraintChecker) {
     this.scoreCalculator = new ScoreCalculator(schedulerConfig);
+    this.loadRebalancer = new LoadRebalancer(schedulerConfig);
+    this.rebalanceIntervalMs = schedulerConfig.getRebalanceIntervalMs();
     this.checker = constraintChecker;
   }
 
@@ -52,6 +61,14 @@ public class SchedulerServiceGroup
     return checker;
   }
 
+  public LoadRebalancer getLoadRebalancer() {
+    return loadRebalancer;
+  }
+
+  public long getRebalanceIntervalMs() {
+    return rebalanceIntervalMs;
+  }
+
   @Override
   public String getName() {
     return "scheduler";
@@ -68,6 +85,9 @@ public class SchedulerServiceGroup
   public void start() throws Throwable {
     // Start all the factories
     photonControllerXenonHost.startFactory(PlacementTaskService.class, PlacementTaskService::createFactory);
+
+    // Start the rebalancer
+    ServiceHostUtils.startService(photonControllerXenonHost, RebalancerService.class);
   }
 
   /**
@@ -77,7 +97,13 @@ public class SchedulerServiceGroup
    */
   @Override
   public boolean isReady() {
-      return photonControllerXenonHost.checkServiceAvailable(PlacementTaskService.FACTORY_LINK);
+      return photonControllerXenonHost.checkServiceAvailable(PlacementTaskService.FACTORY_LINK)
+          && photonControllerXenonHost.checkServiceAvailable(RebalancerService.SELF_LINK);
+  }
+
+  @Override
+  public Collection<String> getAvailabilityLinks() {
+    return Arrays.asList(PlacementTaskService.FACTORY_LINK, RebalancerService.SELF_LINK);
   }
 
   @Override
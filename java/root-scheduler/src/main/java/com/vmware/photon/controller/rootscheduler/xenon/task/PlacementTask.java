@@ -13,18 +13,23 @@
 
 package com.vmware.photon.controller.rootscheduler.xenon.task;
 
+import com.vmware.photon.controller.common.xenon.validation.DefaultBoolean;
 import com.vmware.photon.controller.common.xenon.validation.DefaultInteger;
 import com.vmware.photon.controller.common.xenon.validation.DefaultLong;
 import com.vmware.photon.controller.common.xenon.validation.DefaultTaskState;
 import com.vmware.photon.controller.common.xenon.validation.Immutable;
 import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
 import com.vmware.photon.controller.resource.gen.Resource;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementList;
+import com.vmware.photon.controller.rootscheduler.service.ConstraintChecker;
 import com.vmware.photon.controller.scheduler.gen.PlaceResultCode;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.TaskState;
 
 import javax.validation.constraints.Min;
 
+import java.util.List;
+
 /**
  * This class contains the conditions to select a host to use among a specified number of hosts
  * to determine the best host. It also includes the result of the request and host information on a successful
@@ -56,6 +61,21 @@ public class PlacementTask extends ServiceDocument {
   @DefaultInteger(4)
   public Integer sampleHostCount;
 
+  /**
+   * The number of identical resources to place. When this is greater than one the candidates are scored
+   * once and the hosts of the resources, chosen according to placementPolicy, are returned in placements.
+   */
+  @DefaultInteger(1)
+  @Min(1)
+  @Immutable
+  public Integer placementCount;
+
+  /**
+   * How the placementCount resources are spread over the hosts. Defaults to {@link PlacementPolicy#SPREAD}.
+   */
+  @Immutable
+  public PlacementPolicy placementPolicy;
+
   /**
    * The length of time to wait for an agent to respond to a place request.
    */
@@ -63,6 +83,15 @@ public class PlacementTask extends ServiceDocument {
   @Min(1000)
   public Long timeoutMs;
 
+  /**
+   * When set, the placement runs as usual, but it is not recorded with the constraint checker and the result
+   * comes with an explanation. The selected host is not meant to be reserved. The task, which is neither persisted
+   * nor replicated, is deleted once it has returned its result.
+   */
+  @DefaultBoolean(false)
+  @Immutable
+  public Boolean dryRun;
+
   /**
    * The result of the placement from the queried hosts. It can be success or a type of error.
    */
@@ -83,4 +112,119 @@ public class PlacementTask extends ServiceDocument {
    * The error if the placement fails.
    */
   public String error;
+
+  /**
+   * The hosts selected for each of the placementCount resources, ranked from best to worst score. The first
+   * entry is the same host as serverAddress.
+   */
+  public List<Candidate> placements;
+
+  /**
+   * The other hosts that accepted the placement, ranked from best to worst score. The selected hosts are not
+   * included. Clients can fall back to these hosts when a reservation on the selected host fails with a stale
+   * generation instead of starting a new placement.
+   */
+  public List<Candidate> alternateCandidates;
+
+  /**
+   * How the placement came to its result, if it is a dry-run.
+   */
+  public Explanation explanation;
+
+  /**
+   * The ways the resources of a gang placement are spread over the hosts. There is no policy that packs them on one
+   * host: a host scores a single resource and each reservation bumps its generation, so the reservations after the
+   * first would fail. Resources that must share a host are placed one by one with VM affinity constraints.
+   */
+  public enum PlacementPolicy {
+    /**
+     * Each resource is placed on a distinct host. The placement fails if fewer hosts accept the resource than
+     * there are resources.
+     */
+    SPREAD
+  }
+
+  /**
+   * This class describes a host that successfully scored a placement request.
+   */
+  public static class Candidate {
+
+    /**
+     * The host address and port number of the candidate host.
+     */
+    public ServerAddress serverAddress;
+
+    /**
+     * The generation returned by the candidate host with its place response.
+     */
+    public Integer generation;
+
+    /**
+     * The placement plan returned by the candidate host.
+     */
+    public ResourcePlacementList placementList;
+  }
+
+  /**
+   * This class explains a placement: how many candidates survived each of its stages, and how each of the sampled
+   * hosts fared.
+   */
+  public static class Explanation {
+
+    /**
+     * The stages of the placement in order. The constraint stages count all the hosts which satisfy the
+     * constraints up to them; the later stages count the sampled hosts.
+     */
+    public List<ConstraintChecker.CandidateStage> stages;
+
+    /**
+     * The sampled hosts, the selected ones first and the others ranked by score.
+     */
+    public List<HostExplanation> hosts;
+  }
+
+  /**
+   * This class describes the outcome of a placement request on a sampled host.
+   */
+  public static class HostExplanation {
+
+    /**
+     * The id of the host.
+     */
+    public String hostId;
+
+    /**
+     * The host address and port number of the host.
+     */
+    public ServerAddress serverAddress;
+
+    /**
+     * The result the host returned for the place request.
+     */
+    public PlaceResultCode result;
+
+    /**
+     * The utilization and transfer scores the host returned, and the score they combine to.
+     */
+    public Integer utilizationScore;
+
+    public Integer transferScore;
+
+    public Double score;
+
+    /**
+     * The rank of the host among the hosts which accepted the placement, starting from 1.
+     */
+    public Integer rank;
+
+    /**
+     * Whether the host was selected for the placement.
+     */
+    public Boolean selected;
+
+    /**
+     * Why the host was not selected, if it was not.
+     */
+    public String rejectionReason;
+  }
 }
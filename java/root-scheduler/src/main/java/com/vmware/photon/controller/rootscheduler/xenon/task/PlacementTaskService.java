@@ -18,6 +18,7 @@ import com.vmware.photon.controller.common.clients.HostClient;
 import com.vmware.photon.controller.common.clients.HostClientProvider;
 import com.vmware.photon.controller.common.clients.exceptions.ConstraintMatchingDatastoreNotFoundException;
 import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceException;
+import com.vmware.photon.controller.common.clients.exceptions.NotEnoughDatastoreCapacityException;
 import com.vmware.photon.controller.common.clients.exceptions.RpcException;
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
 import com.vmware.photon.controller.common.logging.LoggingUtils;
@@ -37,6 +38,8 @@ import com.vmware.photon.controller.resource.gen.Disk;
 import com.vmware.photon.controller.resource.gen.Resource;
 import com.vmware.photon.controller.resource.gen.ResourceConstraint;
 import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+import com.vmware.photon.controller.resource.gen.ResourcePlacement;
+import com.vmware.photon.controller.resource.gen.ResourcePlacementType;
 import com.vmware.photon.controller.resource.gen.Vm;
 import com.vmware.photon.controller.rootscheduler.service.ConstraintChecker;
 import com.vmware.photon.controller.rootscheduler.service.ScoreCalculator;
@@ -61,6 +64,8 @@ import org.apache.thrift.async.AsyncMethodCallback;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -79,12 +84,34 @@ import java.util.stream.Collectors;
  * the highest placement score. See {@link ScoreCalculator} for the placement score
  * calculation logic.
  * <p>
+ * A task can also place several identical resources at once (see {@link PlacementTask#placementCount}).
+ * The candidates are then chosen and scored in a single round, and the best scoring distinct hosts are returned,
+ * one per resource (see {@link PlacementTask.PlacementPolicy}). A host only scores a single resource and every
+ * reservation bumps its generation, so resources that must share a host are placed one by one instead.
+ * <p>
+ * A placed VM is recorded with the {@link ConstraintChecker}, and a VM with affinity or anti-affinity constraints
+ * is only placed on a host which still satisfies them against the VMs placed by concurrent tasks.
+ * <p>
+ * The candidates must have a datastore with the free space the new disks need, and the space of the placed disks
+ * is reserved with the {@link ConstraintChecker} until the usage the agents report includes it.
+ * <p>
+ * A task can be a dry-run (see {@link PlacementTask#dryRun}), which places the resource the same way but records
+ * nothing. It returns an explanation of the placement instead: how many hosts each constraint left, the scores
+ * of the sampled hosts and why the hosts which were not selected were rejected. The place requests sent to the
+ * hosts only score the resource, so the hosts are not affected either. A dry-run task deletes itself as soon as it
+ * has returned its result, so it does not stay around until it expires.
+ * <p>
  * (1) http://www.eecs.berkeley.edu/~keo/publications/sosp13-final17.pdf
  */
 public class PlacementTaskService extends StatefulService {
 
   public static final String FACTORY_LINK = ServiceUriPaths.SCHEDULER_ROOT + "/placement";
 
+  // The names of the stages a dry-run explains after the constraint stages
+  private static final String SAMPLED_HOSTS_STAGE = "sampled hosts";
+  private static final String ACCEPTING_HOSTS_STAGE = "hosts which accepted the placement";
+  private static final String SELECTED_HOSTS_STAGE = "selected hosts";
+
   // This completion handler provides a new constraint to be added to a set of constraints
   interface CalculateConstraintCompletion {
     public void handle(ResourceConstraint newConstraint, Exception exception);
@@ -140,6 +167,9 @@ public class PlacementTaskService extends StatefulService {
 
     PlacementTask startState = start.getBody(PlacementTask.class);
     InitializationUtils.initialize(startState);
+    if (startState.placementPolicy == null) {
+      startState.placementPolicy = PlacementTask.PlacementPolicy.SPREAD;
+    }
     validateState(startState);
 
     if (startState.taskState.stage == TaskState.TaskStage.CREATED) {
@@ -162,7 +192,7 @@ public class PlacementTaskService extends StatefulService {
         TaskUtils.sendSelfPatch(this, buildPatch(startState.taskState.stage, startState.taskState.isDirect, null));
       }
     } catch (Throwable t) {
-      failTask(buildPatch(TaskState.TaskStage.FAILED, startState.taskState.isDirect, t), t, start);
+      failTask(startState, buildPatch(TaskState.TaskStage.FAILED, startState.taskState.isDirect, t), t, start);
     }
   }
 
@@ -182,9 +212,11 @@ public class PlacementTaskService extends StatefulService {
         ServiceUtils.logInfo(this, "Skipping patch operation processing (disabled)");
       } else if (TaskState.TaskStage.STARTED == currentState.taskState.stage) {
         handlePlaceRequest(currentState, null);
+      } else if (TaskUtils.finalTaskStages.contains(currentState.taskState.stage)) {
+        deleteDryRun(currentState);
       }
     } catch (Throwable t) {
-      failTask(buildPatch(TaskState.TaskStage.FAILED, false, t), t, null);
+      failTask(currentState, buildPatch(TaskState.TaskStage.FAILED, false, t), t, null);
     }
   }
 
@@ -212,31 +244,47 @@ public class PlacementTaskService extends StatefulService {
   private void handlePlaceRequest(PlacementTask currentState, Operation postOperation) {
     Stopwatch placementWatch = Stopwatch.createStarted();
 
+    PlacementTask.Explanation explanation = null;
+    if (currentState.dryRun) {
+      explanation = new PlacementTask.Explanation();
+      explanation.stages = new ArrayList<>();
+    }
+    final PlacementTask.Explanation placementExplanation = explanation;
+    Map<String, String> candidateDatastores = new HashMap<>();
+
     // Note that getPotentialCandidates is asynchronous, so we handle the response via a completion
-    getPotentialCandidates(currentState,
+    getPotentialCandidates(currentState, placementExplanation, candidateDatastores,
         (candidates, ex) -> {
           if (ex != null) {
-            handleGetCandidateError(currentState, postOperation, ex);
+            handleGetCandidateError(currentState, postOperation, ex, placementExplanation);
             return;
           }
-          handleGetCandidateResult(currentState, postOperation, candidates, placementWatch);
+          handleGetCandidateResult(currentState, postOperation, candidates, candidateDatastores,
+              placementExplanation, placementWatch);
         });
   }
 
   /**
    * Helper method to handle errors from getPotentialCandidates().
    */
-  private void handleGetCandidateError(PlacementTask currentState, Operation postOperation, Throwable ex) {
+  private void handleGetCandidateError(
+      PlacementTask currentState,
+      Operation postOperation,
+      Throwable ex,
+      PlacementTask.Explanation explanation) {
     PlacementTask patchState = buildPatch(TaskState.TaskStage.FAILED, currentState.taskState.isDirect, ex);
     patchState.error = ex.getMessage();
+    patchState.explanation = explanation;
     if (ex instanceof NoSuchResourceException) {
       patchState.resultCode = PlaceResultCode.NO_SUCH_RESOURCE;
     } else if (ex instanceof ConstraintMatchingDatastoreNotFoundException) {
         patchState.resultCode = PlaceResultCode.NO_CONSTRAINT_MATCHING_DATASTORE;
+    } else if (ex instanceof NotEnoughDatastoreCapacityException) {
+      patchState.resultCode = PlaceResultCode.NOT_ENOUGH_DATASTORE_CAPACITY;
     } else {
       patchState.resultCode = PlaceResultCode.SYSTEM_ERROR;
     }
-    failTask(patchState, ex, postOperation);
+    failTask(currentState, patchState, ex, postOperation);
   }
 
   /**
@@ -246,6 +294,8 @@ public class PlacementTaskService extends StatefulService {
       PlacementTask currentState,
       Operation postOperation,
       Map<String, ServerAddress> candidates,
+      Map<String, String> candidateDatastores,
+      PlacementTask.Explanation explanation,
       Stopwatch placementWatch) {
 
     ServiceUtils.logInfo(this, "elapsed-time flat-place-get-candidates %d milliseconds",
@@ -257,7 +307,12 @@ public class PlacementTaskService extends StatefulService {
       PlacementTask patchState = buildPatch(TaskState.TaskStage.FAILED, currentState.taskState.isDirect, null);
       patchState.resultCode = PlaceResultCode.NO_SUCH_RESOURCE;
       patchState.error = msg;
-      failTask(patchState, new Throwable(msg), postOperation);
+      if (explanation != null) {
+        explanation.stages.add(new ConstraintChecker.CandidateStage(SAMPLED_HOSTS_STAGE, 0L));
+        explanation.hosts = new ArrayList<>();
+        patchState.explanation = explanation;
+      }
+      failTask(currentState, patchState, new Throwable(msg), postOperation);
       return;
     }
 
@@ -265,18 +320,15 @@ public class PlacementTaskService extends StatefulService {
     ServiceUtils.logInfo(this, "Sending place requests to %s with timeout %d ms", candidates, currentState.timeoutMs);
     Stopwatch scoreCandidatesStopwatch = Stopwatch.createStarted();
 
-    queryHostsForScores(currentState.resource, candidates,
+    queryHostsForScores(currentState.resource, candidates, candidateDatastores,
         (okResponses, allResponses) -> {
           ServiceUtils.logInfo(this, "elapsed-time flat-place-score-candidates %d milliseconds",
               scoreCandidatesStopwatch.elapsed(TimeUnit.MILLISECONDS));
 
           // Return the best response.
-          PlacementTask patchState = selectBestResponse(okResponses, allResponses, currentState, placementWatch);
-          if (postOperation == null) {
-            TaskUtils.sendSelfPatch(this, patchState);
-          } else {
-            postOperation.setBody(patchState).complete();
-          }
+          PlacementTask patchState = selectBestResponse(okResponses, allResponses, currentState, candidates,
+              explanation, placementWatch);
+          completeTask(currentState, patchState, postOperation);
         });
   }
 
@@ -289,11 +341,17 @@ public class PlacementTaskService extends StatefulService {
    */
   private void getPotentialCandidates(
       PlacementTask currentState,
+      PlacementTask.Explanation explanation,
+      Map<String, String> candidateDatastores,
       ConstraintChecker.GetCandidatesCompletion completion) {
     // Get the list of resource constraints
     List<ResourceConstraint> constraints;
 
     constraints = getResourceConstraints(currentState.resource);
+    ResourceConstraint datastoreSpaceConstraint = createDatastoreSpaceConstraint(currentState.resource);
+    if (datastoreSpaceConstraint != null) {
+      constraints.add(datastoreSpaceConstraint);
+    }
 
     // Note: createImageSeedingConstraint is asynchronous (it queries Cloudstore), so we use a completion
     createImageSeedingConstraint(currentState.resource,
@@ -308,7 +366,7 @@ public class PlacementTaskService extends StatefulService {
           }
           logConstraints(constraints);
 
-          applyConstraintChecker(currentState, constraints, completion);
+          applyConstraintChecker(currentState, constraints, explanation, candidateDatastores, completion);
         });
     return;
   }
@@ -319,11 +377,20 @@ public class PlacementTaskService extends StatefulService {
   private void applyConstraintChecker(
       PlacementTask currentState,
       List<ResourceConstraint> constraints,
+      PlacementTask.Explanation explanation,
+      Map<String, String> candidateDatastores,
       ConstraintChecker.GetCandidatesCompletion completion) {
     SchedulerServiceGroup scheduler = (SchedulerServiceGroup) ((PhotonControllerXenonHost) getHost()).getScheduler();
     ConstraintChecker checker = scheduler.getConstraintChecker();
     try {
-      checker.getCandidates(constraints, currentState.sampleHostCount, completion);
+      // A spread gang placement needs a distinct host for every resource, so sample enough extra hosts to keep the
+      // same choice among candidates that a single placement has.
+      int numCandidates = currentState.sampleHostCount + currentState.placementCount - 1;
+      if (explanation != null) {
+        checker.explainCandidates(constraints, numCandidates, explanation.stages, candidateDatastores, completion);
+      } else {
+        checker.getCandidates(constraints, numCandidates, candidateDatastores, completion);
+      }
     } catch (Exception ex) {
       completion.handle(null, ex);
     }
@@ -338,13 +405,18 @@ public class PlacementTaskService extends StatefulService {
    * - The set of "okResponses", from hosts that could accept the resource. This will include the score.
    * - All responses. These are used when there's an error, to summarize what went wrong
    *
+   * The new disks of the resource are pinned to the datastore the constraint checker picked for each candidate, if
+   * it picked one, so the host does not create them on a datastore without enough free space.
+   *
    * @param resource
    * @param candidates
+   * @param candidateDatastores
    * @param completion
    */
   private void queryHostsForScores(
       Resource resource,
       Map<String, ServerAddress> candidates,
+      Map<String, String> candidateDatastores,
       ScoreResultsCompletion completion) {
 
     final int numCandidates = candidates.size();
@@ -362,7 +434,8 @@ public class PlacementTaskService extends StatefulService {
         // timeout exception when it fails.
         HostClient hostClient = ((HostClientProvider) getHost()).getHostClient();
         hostClient.setIpAndPort(address.getHost(), address.getPort());
-        hostClient.place(resource, new AsyncMethodCallback<Host.AsyncSSLClient.place_call>() {
+        Resource hostResource = pinNewDisks(resource, candidateDatastores.get(entry.getKey()));
+        hostClient.place(hostResource, new AsyncMethodCallback<Host.AsyncSSLClient.place_call>() {
           @Override
           public void onComplete(Host.AsyncSSLClient.place_call call) {
             if (requestId != null) {
@@ -438,6 +511,8 @@ public class PlacementTaskService extends StatefulService {
    * @param okResponses
    * @param allResponses
    * @param currentState
+   * @param candidates
+   * @param explanation the explanation to complete if this is a dry-run, otherwise null
    * @param watch
    * @return
    */
@@ -445,14 +520,32 @@ public class PlacementTaskService extends StatefulService {
       Set<PlaceResponse> okResponses,
       Set<PlaceResponse> allResponses,
       PlacementTask currentState,
+      Map<String, ServerAddress> candidates,
+      PlacementTask.Explanation explanation,
       Stopwatch watch) {
     SchedulerServiceGroup scheduler = (SchedulerServiceGroup) ((PhotonControllerXenonHost) getHost()).getScheduler();
     ScoreCalculator scoreCalculator = scheduler.getScoreCalculator();
-    PlaceResponse response = scoreCalculator.pickBestResponse(okResponses);
+    List<PlaceResponse> scoredResponses = scoreCalculator.rankResponses(okResponses);
+    // A dry-run must not record its VM, so its hosts are not checked against the VMs placed meanwhile either
+    List<PlaceResponse> rankedResponses = explanation != null
+        ? scoredResponses
+        : admitVmPlacement(currentState, scoredResponses, candidates, scheduler.getConstraintChecker());
+    PlaceResponse response = rankedResponses.isEmpty() ? null : rankedResponses.get(0);
     watch.stop();
 
     PlacementTask patchState;
-    if (response == null) {
+    if (response == null && !scoredResponses.isEmpty()) {
+      patchState = buildPatch(TaskState.TaskStage.FAILED, currentState.taskState.isDirect, null);
+      patchState.resultCode = PlaceResultCode.NO_SUCH_RESOURCE;
+      patchState.error = "VM affinity constraints cannot be satisfied after concurrent placements";
+      ServiceUtils.logWarning(this, "All %d scored hosts conflict with VMs placed meanwhile", scoredResponses.size());
+    } else if (response != null && rankedResponses.size() < currentState.placementCount) {
+      patchState = buildPatch(TaskState.TaskStage.FAILED, currentState.taskState.isDirect, null);
+      patchState.resultCode = PlaceResultCode.NO_SUCH_RESOURCE;
+      patchState.error = String.format("Only %d of %d requested placements could be satisfied",
+          rankedResponses.size(), currentState.placementCount);
+      ServiceUtils.logWarning(this, "Placement failure reasons: %s", genJsonErrorSummary(allResponses));
+    } else if (response == null) {
       PlaceResultCode errorCode;
       String errorMsg;
       Set<PlaceResultCode> returnCodes;
@@ -494,10 +587,184 @@ public class PlacementTaskService extends StatefulService {
       patchState.serverAddress = response.getAddress();
       patchState.resource = new Resource();
       patchState.resource.setPlacement_list(response.getPlacementList());
+      List<PlaceResponse> selectedResponses = rankedResponses.subList(0, currentState.placementCount);
+      if (currentState.placementCount > 1) {
+        patchState.placements = buildCandidates(selectedResponses);
+      }
+      patchState.alternateCandidates = buildCandidates(
+          rankedResponses.subList(selectedResponses.size(), rankedResponses.size()));
+      if (explanation == null) {
+        reserveDatastoreSpace(currentState.resource, selectedResponses, candidates, scheduler.getConstraintChecker());
+      }
+    }
+
+    if (explanation != null) {
+      int selectedCount = patchState.taskState.stage == TaskState.TaskStage.FINISHED ? currentState.placementCount : 0;
+      patchState.explanation = completeExplanation(explanation, candidates, allResponses, rankedResponses,
+          selectedCount, scoreCalculator);
     }
     return patchState;
   }
 
+  /**
+   * Adds the sampled hosts to the explanation of a dry-run: the hosts which accepted the placement in the order
+   * they were ranked in, followed by the hosts which did not.
+   *
+   * @param explanation the explanation holding the constraint stages.
+   * @param candidates the sampled hosts, by host id.
+   * @param allResponses the responses of all the sampled hosts.
+   * @param rankedResponses the successful responses ordered from best to worst.
+   * @param selectedCount the number of hosts selected from the ranked responses.
+   * @param scoreCalculator the calculator the responses were ranked with.
+   * @return the explanation.
+   */
+  private PlacementTask.Explanation completeExplanation(
+      PlacementTask.Explanation explanation,
+      Map<String, ServerAddress> candidates,
+      Set<PlaceResponse> allResponses,
+      List<PlaceResponse> rankedResponses,
+      int selectedCount,
+      ScoreCalculator scoreCalculator) {
+    explanation.stages.add(new ConstraintChecker.CandidateStage(SAMPLED_HOSTS_STAGE, (long) candidates.size()));
+    explanation.stages.add(new ConstraintChecker.CandidateStage(ACCEPTING_HOSTS_STAGE, (long) rankedResponses.size()));
+    explanation.stages.add(new ConstraintChecker.CandidateStage(SELECTED_HOSTS_STAGE, (long) selectedCount));
+
+    Map<ServerAddress, String> hostIds = getHostIds(candidates);
+    explanation.hosts = new ArrayList<>();
+    for (int i = 0; i < rankedResponses.size(); i++) {
+      PlaceResponse response = rankedResponses.get(i);
+      PlacementTask.HostExplanation host = explainHost(response, hostIds);
+      host.score = scoreCalculator.score(response);
+      host.rank = i + 1;
+      host.selected = i < selectedCount;
+      if (!host.selected) {
+        host.rejectionReason = selectedCount == 0
+            ? "The placement failed"
+            : String.format("The host ranked below the %d selected host(s)", selectedCount);
+      }
+      explanation.hosts.add(host);
+    }
+
+    for (PlaceResponse response : allResponses) {
+      if (response.getResult() == PlaceResultCode.OK) {
+        continue;
+      }
+      PlacementTask.HostExplanation host = explainHost(response, hostIds);
+      host.selected = false;
+      host.rejectionReason = response.isSetError()
+          ? response.getError()
+          : String.format("The host returned %s", response.getResult());
+      explanation.hosts.add(host);
+    }
+    return explanation;
+  }
+
+  private PlacementTask.HostExplanation explainHost(PlaceResponse response, Map<ServerAddress, String> hostIds) {
+    PlacementTask.HostExplanation host = new PlacementTask.HostExplanation();
+    host.hostId = hostIds.get(response.getAddress());
+    host.serverAddress = response.getAddress();
+    host.result = response.getResult();
+    if (response.isSetScore()) {
+      host.utilizationScore = response.getScore().getUtilization();
+      host.transferScore = response.getScore().getTransfer();
+    }
+    return host;
+  }
+
+  private static Map<ServerAddress, String> getHostIds(Map<String, ServerAddress> candidates) {
+    return candidates.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey, (first, second) -> first));
+  }
+
+  /**
+   * Records the VM of a single VM placement on the best ranked host which still satisfies its hard VM affinity and
+   * anti-affinity constraints. Other VMs of the same group may have been placed since the candidates were picked,
+   * so the best host is checked again against them. The responses ranked above the admitted one are dropped.
+   *
+   * @param currentState the placement task.
+   * @param rankedResponses the successful responses ordered from best to worst.
+   * @param candidates the candidates the responses came from, by host id.
+   * @param checker the constraint checker which keeps track of the placed VMs.
+   * @return the responses from the admitted one on, or an empty list if every host conflicts.
+   */
+  private List<PlaceResponse> admitVmPlacement(
+      PlacementTask currentState,
+      List<PlaceResponse> rankedResponses,
+      Map<String, ServerAddress> candidates,
+      ConstraintChecker checker) {
+    Resource resource = currentState.resource;
+    if (currentState.placementCount > 1 || resource == null || !resource.isSetVm() || !resource.getVm().isSetId()) {
+      return rankedResponses;
+    }
+
+    Map<ServerAddress, String> hostIds = getHostIds(candidates);
+    List<ResourceConstraint> constraints = getResourceConstraints(resource);
+    String vmId = resource.getVm().getId();
+    for (int i = 0; i < rankedResponses.size(); i++) {
+      PlaceResponse response = rankedResponses.get(i);
+      String hostId = hostIds.get(response.getAddress());
+      if (hostId == null || checker.recordVmPlacement(vmId, hostId, constraints)) {
+        return rankedResponses.subList(i, rankedResponses.size());
+      }
+      ServiceUtils.logInfo(this, "Skipping host %s for VM %s, it conflicts with a VM placed meanwhile", hostId, vmId);
+    }
+    return new ArrayList<>();
+  }
+
+  /**
+   * Reserves the space the new disks take on the datastores the selected hosts placed them on, so that placements
+   * running at the same time see less free space on those datastores.
+   *
+   * @param resource the placed resource.
+   * @param selectedResponses the responses of the selected hosts.
+   * @param candidates the sampled hosts, by host id.
+   * @param checker the constraint checker to reserve the space with.
+   */
+  private void reserveDatastoreSpace(
+      Resource resource,
+      List<PlaceResponse> selectedResponses,
+      Map<String, ServerAddress> candidates,
+      ConstraintChecker checker) {
+    Map<String, Integer> diskSizes = getNewDisks(resource).stream()
+        .collect(Collectors.toMap(Disk::getId, Disk::getCapacity_gb, (first, second) -> first));
+    if (diskSizes.isEmpty()) {
+      return;
+    }
+
+    Map<ServerAddress, String> hostIds = getHostIds(candidates);
+    for (PlaceResponse response : selectedResponses) {
+      String hostId = hostIds.get(response.getAddress());
+      if (hostId == null || !response.isSetPlacementList() || response.getPlacementList().getPlacements() == null) {
+        continue;
+      }
+      for (ResourcePlacement placement : response.getPlacementList().getPlacements()) {
+        Integer gb = diskSizes.get(placement.getResource_id());
+        if (placement.getType() == ResourcePlacementType.DISK && gb != null) {
+          checker.reserveDatastoreSpace(hostId, placement.getResource_id(), placement.getContainer_id(), gb);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts ranked responses into candidates. The responses that were not selected are returned to the
+   * client so that it can fall back to them when a reservation fails because of a stale generation.
+   *
+   * @param rankedResponses the successful responses ordered from best to worst.
+   * @return the candidates, ordered from best to worst.
+   */
+  private List<PlacementTask.Candidate> buildCandidates(List<PlaceResponse> rankedResponses) {
+    List<PlacementTask.Candidate> candidates = new ArrayList<>();
+    for (PlaceResponse response : rankedResponses) {
+      PlacementTask.Candidate candidate = new PlacementTask.Candidate();
+      candidate.serverAddress = response.getAddress();
+      candidate.generation = response.getGeneration();
+      candidate.placementList = response.getPlacementList();
+      candidates.add(candidate);
+    }
+    return candidates;
+  }
+
   /**
    * We generate a JSON summary of all the placement errors that occurred. Yes, we logged the individual
    * errors above, but this simplifies the process of combing through the logs by collating the errors.
@@ -517,17 +784,35 @@ public class PlacementTaskService extends StatefulService {
   /**
    * This reports the error that caused the failure state of patchState before sending an update
    * to itself.
+   * @param currentState the current state of the PlacementTask
    * @param patchState the failed PlacementTask
    * @param t the error associated with the failed PlacementTask
    * @param postOperation if there is a postOperation, this is part of a direct task and will return
    *                      once this update is complete, otherwise moves to a failed state
    */
-  private void failTask(PlacementTask patchState, Throwable t, Operation postOperation) {
+  private void failTask(PlacementTask currentState, PlacementTask patchState, Throwable t, Operation postOperation) {
     ServiceUtils.logSevere(this, t);
+    completeTask(currentState, patchState, postOperation);
+  }
+
+  /**
+   * Returns the result of the task, to the caller of a direct task or by moving the task to its final stage.
+   */
+  private void completeTask(PlacementTask currentState, PlacementTask patchState, Operation postOperation) {
     if (postOperation == null) {
       TaskUtils.sendSelfPatch(this, patchState);
     } else {
       postOperation.setBody(patchState).complete();
+      deleteDryRun(currentState);
+    }
+  }
+
+  /**
+   * Deletes a dry-run task once its result has been returned.
+   */
+  private void deleteDryRun(PlacementTask currentState) {
+    if (currentState.dryRun) {
+      sendRequest(Operation.createDelete(getUri()).setReferer(getUri()));
     }
   }
 
@@ -584,6 +869,62 @@ public class PlacementTaskService extends StatefulService {
     return constraints;
   }
 
+  /**
+   * Creates the constraint on the free space the new disks of the resource need on a datastore, or returns null if
+   * the resource has no new disks. Only the constraint checker resolves this constraint, the hosts don't see it.
+   */
+  private ResourceConstraint createDatastoreSpaceConstraint(Resource resource) {
+    long requiredGb = getNewDisks(resource).stream()
+        .mapToLong(Disk::getCapacity_gb)
+        .sum();
+    if (requiredGb <= 0) {
+      return null;
+    }
+    return new ResourceConstraint(ResourceConstraintType.DATASTORE_FREE_SPACE,
+        Collections.singletonList(Long.toString(requiredGb)));
+  }
+
+  /**
+   * Returns a copy of the resource whose new disks carry a DATASTORE constraint on the given datastore, or the
+   * resource itself if there is no datastore. Disks which already have a DATASTORE constraint keep it: the agents
+   * reject disks with two different DATASTORE constraints.
+   */
+  private static Resource pinNewDisks(Resource resource, String datastoreId) {
+    if (datastoreId == null) {
+      return resource;
+    }
+    Resource pinnedResource = resource.deepCopy();
+    ResourceConstraint datastoreConstraint = new ResourceConstraint(ResourceConstraintType.DATASTORE,
+        Collections.singletonList(datastoreId));
+    for (Disk disk : getNewDisks(pinnedResource)) {
+      boolean constrained = disk.isSetResource_constraints() && disk.getResource_constraints().stream()
+          .anyMatch(constraint -> constraint.getType() == ResourceConstraintType.DATASTORE);
+      if (!constrained) {
+        disk.addToResource_constraints(datastoreConstraint);
+      }
+    }
+    return pinnedResource;
+  }
+
+  /**
+   * Returns the disks of the resource which are created by the placement and so need datastore space.
+   */
+  private static List<Disk> getNewDisks(Resource resource) {
+    List<Disk> disks = new ArrayList<>();
+    if (resource == null) {
+      return disks;
+    }
+    if (resource.isSetVm() && resource.getVm().isSetDisks()) {
+      disks.addAll(resource.getVm().getDisks());
+    }
+    if (resource.isSetDisks()) {
+      disks.addAll(resource.getDisks());
+    }
+    return disks.stream()
+        .filter(disk -> disk.isNew_disk() && disk.getCapacity_gb() > 0)
+        .collect(Collectors.toList());
+  }
+
   /**
    * New images may not be available on all the image datastores because the replication is in progress.
    * We look at image seeding information available in cloud-store to add placement constraints
@@ -741,7 +1082,12 @@ public class PlacementTaskService extends StatefulService {
             output.append("false");
           }
 
-          // Part 2: Type
+          // Part 2: Is it a soft constraint?
+          if (constraint.isSetSoft() && constraint.isSoft()) {
+            output.append(", \"soft\": true");
+          }
+
+          // Part 3: Type
           output.append(", \"type\": ");
           if (!constraint.isSetType()) {
             output.append("\"unknown\"");
@@ -768,13 +1114,19 @@ public class PlacementTaskService extends StatefulService {
               case MANAGEMENT_ONLY:
                 output.append("\"management-only\"");
                 break;
+              case VM_AFFINITY:
+                output.append("\"vm-affinity\"");
+                break;
+              case VM_ANTI_AFFINITY:
+                output.append("\"vm-anti-affinity\"");
+                break;
               default:
                 output.append("\"unknown\"");
                 break;
             }
           }
 
-          // Part 3: Values
+          // Part 4: Values
           if (constraint.isSetValues()) {
             List<String> values = constraint.getValues();
             output.append(", \"values\": [ ");
@@ -16,11 +16,15 @@ package com.vmware.photon.controller.rootscheduler.service;
 import com.vmware.photon.controller.api.model.AgentState;
 import com.vmware.photon.controller.api.model.HostState;
 import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceException;
 import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.XenonRestClient;
@@ -41,8 +45,10 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.startsWith;
@@ -57,6 +63,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -550,6 +557,222 @@ public class CloudStoreConstraintCheckerTest {
     deleteHosts(cloudStoreEnvironment, hosts);
   }
 
+  /**
+   * Test that a datastore free space constraint only leaves hosts with a datastore which has enough projected free
+   * space, taking the reserved space into account, and that the hosts with the most free space are preferred.
+   * Datastores with no reported capacity are not filtered.
+   */
+  @Test(dataProvider = "environment")
+  private void testDatastoreFreeSpace(
+      String environmentName,
+      TestEnvironment cloudStoreEnvironment,
+      CloudStoreConstraintChecker checker) throws Throwable {
+    logger.info("Testing datastore free space with {}", environmentName);
+
+    List<DatastoreService.State> datastores = createDatastoreDescriptions(10);
+    for (DatastoreService.State datastore : datastores) {
+      datastore.capacityGb = 100.0;
+      datastore.usedGb = 10.0;
+      datastore.uncommittedGb = 10.0;
+    }
+    datastores.get(0).usedGb = 85.0;
+    datastores.get(1).capacityGb = null;
+    List<HostService.State> hosts = createHostDescriptions(10, false, datastores);
+
+    createDatastores(cloudStoreEnvironment, datastores);
+    createHosts(cloudStoreEnvironment, hosts);
+
+    String host0 = hosts.get(0).documentSelfLink;
+    String host1 = hosts.get(1).documentSelfLink;
+    String host2 = hosts.get(2).documentSelfLink;
+
+    // Datastore 0 has 5 GB of projected free space, which is not enough
+    ResourceConstraint constraint = new ResourceConstraint(
+        ResourceConstraintType.DATASTORE_FREE_SPACE, Arrays.asList("10"));
+    Map<String, ServerAddress> selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.size(), equalTo(9));
+    assertThat(selectedHosts.keySet(), not(hasItem(host0)));
+    assertThat(selectedHosts.keySet(), hasItem(host1));
+
+    // Reserving space leaves datastore 2 with 5 GB of projected free space as well
+    checker.reserveDatastoreSpace(host2, "disk-1", datastores.get(2).id, 75.0);
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.size(), equalTo(8));
+    assertThat(selectedHosts.keySet(), not(hasItem(host2)));
+
+    // Twice as many hosts as needed are sampled, so the host of the datastore with no reported capacity is never
+    // preferred over a host with enough free space
+    for (int i = 0; i < 20; i++) {
+      selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 1);
+      assertThat(selectedHosts.size(), equalTo(1));
+      assertThat(selectedHosts.keySet(), not(hasItem(host1)));
+    }
+
+    // Each candidate is pointed at its datastore, since the free space constraint excludes datastores
+    Map<String, String> candidateDatastores = new HashMap<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    checker.getCandidates(Arrays.asList(constraint), 10, candidateDatastores, (c, ex) -> latch.countDown());
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(candidateDatastores.size(), equalTo(8));
+    assertThat(candidateDatastores.keySet(), not(hasItem(host0)));
+    assertThat(candidateDatastores.get(host1), is(datastores.get(1).id));
+    assertThat(candidateDatastores.get(hosts.get(3).documentSelfLink), is(datastores.get(3).id));
+
+    // Only the datastore with no reported capacity is left when no other datastore has enough free space
+    constraint = new ResourceConstraint(ResourceConstraintType.DATASTORE_FREE_SPACE, Arrays.asList("1000"));
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.keySet(), contains(host1));
+
+    deleteDatastores(cloudStoreEnvironment, datastores);
+    deleteHosts(cloudStoreEnvironment, hosts);
+  }
+
+  /**
+   * Test that VM affinity and anti-affinity constraints are turned into constraints on the hosts of their VMs, that
+   * soft constraints are dropped when no host satisfies them, and that a hard affinity to VMs on different hosts
+   * fails.
+   */
+  @Test(dataProvider = "environment")
+  private void testVmConstraints(
+      String environmentName,
+      TestEnvironment cloudStoreEnvironment,
+      CloudStoreConstraintChecker checker) throws Throwable {
+    logger.info("Testing VM constraints with {}", environmentName);
+
+    List<DatastoreService.State> datastores = createDatastoreDescriptions(10);
+    List<HostService.State> hosts = createHostDescriptions(10, false, datastores);
+    createDatastores(cloudStoreEnvironment, datastores);
+    createHosts(cloudStoreEnvironment, hosts);
+
+    String host0 = hosts.get(0).documentSelfLink;
+    String host1 = hosts.get(1).documentSelfLink;
+    String vm0 = "vm-" + UUID.randomUUID();
+    String vm1 = "vm-" + UUID.randomUUID();
+    assertThat(checker.recordVmPlacement(vm0, host0, null), is(true));
+    assertThat(checker.recordVmPlacement(vm1, host1, null), is(true));
+
+    // A VM which is placed nowhere yet does not restrict the hosts
+    ResourceConstraint constraint = createVmConstraint(ResourceConstraintType.VM_AFFINITY, false,
+        "vm-" + UUID.randomUUID());
+    Map<String, ServerAddress> selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.size(), equalTo(10));
+
+    constraint = createVmConstraint(ResourceConstraintType.VM_AFFINITY, false, vm0);
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.keySet(), contains(host0));
+
+    constraint = createVmConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, false, vm0, vm1);
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.size(), equalTo(8));
+    assertThat(selectedHosts.keySet(), not(hasItem(host0)));
+    assertThat(selectedHosts.keySet(), not(hasItem(host1)));
+
+    // No host on the network of host 1 is the host of VM 0, so the soft affinity is dropped
+    ResourceConstraint networkConstraint = new ResourceConstraint(
+        ResourceConstraintType.NETWORK, Arrays.asList(getHostNetwork(hosts.get(1))));
+    constraint = createVmConstraint(ResourceConstraintType.VM_AFFINITY, true, vm0);
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(networkConstraint, constraint), 10);
+    assertThat(selectedHosts.keySet(), contains(host1));
+
+    // The VM cannot be on the hosts of both VMs
+    constraint = createVmConstraint(ResourceConstraintType.VM_AFFINITY, false, vm0, vm1);
+    List<Throwable> exceptions = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    checker.getCandidates(Arrays.asList(constraint), 10,
+        (c, ex) -> {
+          exceptions.add(ex);
+          latch.countDown();
+        });
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(exceptions.get(0), instanceOf(NoSuchResourceException.class));
+
+    deleteDatastores(cloudStoreEnvironment, datastores);
+    deleteHosts(cloudStoreEnvironment, hosts);
+  }
+
+  /**
+   * Test that VMs which are not in the placement registry, e.g. because another scheduler node placed them or this
+   * one restarted since, are resolved to the hosts recorded on their VM documents.
+   */
+  @Test(dataProvider = "environment")
+  private void testVmConstraintsWithoutRecordedPlacement(
+      String environmentName,
+      TestEnvironment cloudStoreEnvironment,
+      CloudStoreConstraintChecker checker) throws Throwable {
+    logger.info("Testing VM constraints on VMs missing from the placement registry with {}", environmentName);
+
+    List<DatastoreService.State> datastores = createDatastoreDescriptions(10);
+    List<HostService.State> hosts = createHostDescriptions(10, false, datastores);
+    createDatastores(cloudStoreEnvironment, datastores);
+    createHosts(cloudStoreEnvironment, hosts);
+
+    String host0 = hosts.get(0).documentSelfLink;
+    String vm0 = "vm-" + UUID.randomUUID();
+    createVm(cloudStoreEnvironment, vm0, host0);
+
+    ResourceConstraint constraint = createVmConstraint(ResourceConstraintType.VM_AFFINITY, false, vm0);
+    Map<String, ServerAddress> selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.keySet(), contains(host0));
+
+    constraint = createVmConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, false, vm0);
+    selectedHosts = checker.getCandidatesSync(Arrays.asList(constraint), 10);
+    assertThat(selectedHosts.size(), equalTo(9));
+    assertThat(selectedHosts.keySet(), not(hasItem(host0)));
+
+    Operation result = cloudStoreEnvironment.sendDeleteAndWait(UriUtils.buildUriPath(VmServiceFactory.SELF_LINK, vm0));
+    assertThat(result.getStatusCode(), equalTo(200));
+    deleteDatastores(cloudStoreEnvironment, datastores);
+    deleteHosts(cloudStoreEnvironment, hosts);
+  }
+
+  /**
+   * Test that explaining the candidates reports how many hosts are left after each condition and constraint, and
+   * still returns the candidates.
+   */
+  @Test(dataProvider = "environment")
+  private void testExplainCandidates(
+      String environmentName,
+      TestEnvironment cloudStoreEnvironment,
+      CloudStoreConstraintChecker checker) throws Throwable {
+    logger.info("Testing explained candidates with {}", environmentName);
+
+    List<DatastoreService.State> datastores = createDatastoreDescriptions(10);
+    List<HostService.State> cloudHosts = createHostDescriptions(10, false, datastores);
+    List<HostService.State> managementHosts = createHostDescriptions(10, true, datastores);
+
+    createDatastores(cloudStoreEnvironment, datastores);
+    createHosts(cloudStoreEnvironment, cloudHosts);
+    createHosts(cloudStoreEnvironment, managementHosts);
+
+    ResourceConstraint constraint = new ResourceConstraint(
+        ResourceConstraintType.NETWORK,
+        Arrays.asList(getHostNetwork(cloudHosts.get(0)), getHostNetwork(cloudHosts.get(1))));
+
+    List<ConstraintChecker.CandidateStage> stages = new ArrayList<>();
+    List<Map<String, ServerAddress>> candidates = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    checker.explainCandidates(Arrays.asList(constraint), 2, stages, new HashMap<>(),
+        (c, ex) -> {
+          candidates.add(c);
+          latch.countDown();
+        });
+    assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+    assertThat(candidates.get(0).size(), equalTo(2));
+    assertThat(stages.size(), equalTo(4));
+    assertThat(stages.get(0).name, equalTo("ready hosts"));
+    assertThat(stages.get(0).candidateCount, equalTo(20L));
+    assertThat(stages.get(1).candidateCount, equalTo(20L));
+    assertThat(stages.get(2).name, equalTo("cloud hosts"));
+    assertThat(stages.get(2).candidateCount, equalTo(10L));
+    assertThat(stages.get(3).name, startsWith("NETWORK"));
+    assertThat(stages.get(3).candidateCount, equalTo(2L));
+
+    deleteDatastores(cloudStoreEnvironment, datastores);
+    deleteHosts(cloudStoreEnvironment, cloudHosts);
+    deleteHosts(cloudStoreEnvironment, managementHosts);
+  }
+
   private static class PerfResult {
     int numThreads;
     int numHosts;
@@ -743,6 +966,12 @@ public class CloudStoreConstraintCheckerTest {
     return throughput;
   }
 
+  private static ResourceConstraint createVmConstraint(ResourceConstraintType type, boolean soft, String... vmIds) {
+    ResourceConstraint constraint = new ResourceConstraint(type, Arrays.asList(vmIds));
+    constraint.setSoft(soft);
+    return constraint;
+  }
+
   /**
    * Create the descriptions for the datastores that we'll be posting to Cloudstore.
    */
@@ -847,6 +1076,22 @@ public class CloudStoreConstraintCheckerTest {
     }
   }
 
+  /**
+   * Post a VM document to Cloudstore which records the VM as created on the host.
+   */
+  private void createVm(TestEnvironment cloudStoreEnvironment, String vmId, String hostId) throws Throwable {
+    VmService.State vm = new VmService.State();
+    vm.name = vmId;
+    vm.flavorId = "flavor-id";
+    vm.imageId = "image-id";
+    vm.projectId = "project-id";
+    vm.vmState = VmState.STARTED;
+    vm.agent = hostId;
+    vm.documentSelfLink = vmId;
+    Operation result = cloudStoreEnvironment.sendPostAndWait(VmServiceFactory.SELF_LINK, vm);
+    assertThat(result.getStatusCode(), equalTo(200));
+  }
+
   /**
    * Given the datastore descriptions created by createDatastoreDescriptions, post them to Cloudstore.
    */
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Map;
+
+/**
+ * Tests {@link DatastoreReservationRegistry}.
+ */
+public class DatastoreReservationRegistryTest {
+
+  private DatastoreReservationRegistry registry;
+
+  @BeforeMethod
+  public void setUp() {
+    registry = new DatastoreReservationRegistry();
+  }
+
+  @Test
+  public void testReservationsAreSummedPerDatastore() {
+    registry.reserve("host-1", "disk-1", "datastore-1", 10.0);
+    registry.reserve("host-1", "disk-2", "datastore-1", 5.0);
+    registry.reserve("host-2", "disk-3", "datastore-2", 2.0);
+
+    Map<String, Double> reservedGb = registry.getReservedGb();
+    assertThat(reservedGb.get("datastore-1"), is(15.0));
+    assertThat(reservedGb.get("datastore-2"), is(2.0));
+    assertThat(reservedGb.get("datastore-3"), nullValue());
+  }
+
+  @Test
+  public void testPlacingDiskAgainReplacesReservation() {
+    registry.reserve("host-1", "disk-1", "datastore-1", 10.0);
+    registry.reserve("host-1", "disk-1", "datastore-2", 10.0);
+
+    Map<String, Double> reservedGb = registry.getReservedGb();
+    assertThat(reservedGb.get("datastore-1"), nullValue());
+    assertThat(reservedGb.get("datastore-2"), is(10.0));
+  }
+
+  @Test
+  public void testDiskPlacedOnSeveralHostsReservesForEach() {
+    registry.reserve("host-1", "disk-1", "datastore-1", 10.0);
+    registry.reserve("host-2", "disk-1", "datastore-1", 10.0);
+
+    assertThat(registry.getReservedGb().get("datastore-1"), is(20.0));
+  }
+}
@@ -28,10 +28,18 @@ public class FakeConstraintChecker implements ConstraintChecker {
 
   private Map<String, ServerAddress> candidates = new HashMap<>();
 
+  private Map<String, String> candidateDatastores = new HashMap<>();
+
+  private final VmPlacementRegistry vmPlacementRegistry = new VmPlacementRegistry();
+
   public void setCandidates(Map<String, ServerAddress> candidates) {
     this.candidates = candidates;
   }
 
+  public void setCandidateDatastores(Map<String, String> candidateDatastores) {
+    this.candidateDatastores = candidateDatastores;
+  }
+
   public Map<String, ServerAddress> getCandidatesSync(List<ResourceConstraint> constraints, int numCandidates) {
     return this.candidates;
   }
@@ -43,4 +51,23 @@ public class FakeConstraintChecker implements ConstraintChecker {
     completion.handle(this.candidates, null);
   }
 
+  @Override
+  public void getCandidates(
+      List<ResourceConstraint> constraints,
+      int numCandidates,
+      Map<String, String> candidateDatastores,
+      ConstraintChecker.GetCandidatesCompletion completion) {
+    candidateDatastores.putAll(this.candidateDatastores);
+    completion.handle(this.candidates, null);
+  }
+
+  public VmPlacementRegistry getVmPlacementRegistry() {
+    return this.vmPlacementRegistry;
+  }
+
+  @Override
+  public boolean recordVmPlacement(String vmId, String hostId, List<ResourceConstraint> constraints) {
+    return this.vmPlacementRegistry.tryRecord(vmId, hostId, constraints);
+  }
+
 }
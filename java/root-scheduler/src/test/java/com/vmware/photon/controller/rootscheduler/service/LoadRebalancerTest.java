@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import com.vmware.photon.controller.api.model.AgentState;
+import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.LocalitySpec;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.QuotaUnit;
+import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.api.model.VmState;
+import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
+import com.vmware.photon.controller.rootscheduler.simulator.CloudStoreLoader;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tests {@link LoadRebalancer}.
+ */
+public class LoadRebalancerTest {
+
+  private static final String DATASTORE = "datastore-1";
+
+  @Test
+  public void testBalancedHostsNeedNoMoves() {
+    List<HostService.State> hosts = Arrays.asList(createHost("host-1"), createHost("host-2"));
+    List<VmService.State> vms = Arrays.asList(createVm("vm-1", "host-1"), createVm("vm-2", "host-2"));
+
+    LoadRebalancer.Result result = new LoadRebalancer(10, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.hostCount, is(2));
+    assertThat(result.initialImbalance, closeTo(0.0, 1e-9));
+    assertThat(result.moves, is(empty()));
+  }
+
+  @Test
+  public void testMovesFromLoadedHost() {
+    List<HostService.State> hosts = Arrays.asList(createHost("host-1"), createHost("host-2"));
+    List<VmService.State> vms = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      vms.add(createVm("vm-" + i, "host-1"));
+    }
+
+    LoadRebalancer.Result result = new LoadRebalancer(10, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.moves.size(), is(2));
+    for (LoadRebalancer.Move move : result.moves) {
+      assertThat(move.sourceHostId, is("host-1"));
+      assertThat(move.targetHostId, is("host-2"));
+    }
+    assertThat(result.finalImbalance, closeTo(0.0, 1e-9));
+  }
+
+  @Test
+  public void testMovesAreBounded() {
+    List<HostService.State> hosts = Arrays.asList(createHost("host-1"), createHost("host-2"));
+    List<VmService.State> vms = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      vms.add(createVm("vm-" + i, "host-1"));
+    }
+
+    LoadRebalancer.Result result = new LoadRebalancer(1, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.moves.size(), is(1));
+    assertThat(result.finalImbalance, lessThan(result.initialImbalance));
+  }
+
+  @Test
+  public void testConstraintsAreRespected() {
+    HostService.State otherDatastoreHost = createHost("host-3");
+    otherDatastoreHost.reportedDatastores = ImmutableSet.of("datastore-2");
+    List<HostService.State> hosts = Arrays.asList(createHost("host-1"), createHost("host-2"), otherDatastoreHost);
+
+    VmService.State pinned = createVm("vm-1", "host-1");
+    pinned.affinities = Arrays.asList(new LocalitySpec("host-1", "host"));
+    VmService.State antiAffine = createVm("vm-2", "host-1");
+    antiAffine.affinities = Arrays.asList(new LocalitySpec("vm-3", "vmAntiAffinity"));
+    VmService.State creating = createVm("vm-4", "host-1");
+    creating.vmState = VmState.CREATING;
+    List<VmService.State> vms = Arrays.asList(pinned, antiAffine, createVm("vm-3", "host-2"), creating);
+
+    LoadRebalancer.Result result = new LoadRebalancer(10, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.initialImbalance, not(0.0));
+    assertThat(result.moves, is(empty()));
+  }
+
+  @Test
+  public void testAffinityTargetsAreNotMoved() {
+    List<HostService.State> hosts = Arrays.asList(createHost("host-1"), createHost("host-2"));
+
+    VmService.State affine = createVm("vm-1", "host-1");
+    affine.affinities = Arrays.asList(new LocalitySpec("vm-2", "vm"));
+    VmService.State softAffine = createVm("vm-3", "host-1");
+    softAffine.affinities = Arrays.asList(new LocalitySpec("vm-4", "vmSoftAffinity"));
+    List<VmService.State> vms = Arrays.asList(affine, createVm("vm-2", "host-1"), softAffine,
+        createVm("vm-4", "host-1"));
+
+    LoadRebalancer.Result result = new LoadRebalancer(10, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.initialImbalance, not(0.0));
+    assertThat(result.moves, is(empty()));
+  }
+
+  @Test
+  public void testSimulatedDeployment() {
+    Map<CloudStoreLoader.HostConfiguration, Double> hostConfigurations = ImmutableMap.of(
+        new CloudStoreLoader.HostConfiguration(4, 8 * 1024), 0.5,
+        new CloudStoreLoader.HostConfiguration(8, 16 * 1024), 0.3,
+        new CloudStoreLoader.HostConfiguration(16, 32 * 1024), 0.2);
+    List<HostService.State> hosts = CloudStoreLoader.createHosts(100, hostConfigurations, 10,
+        new UniformIntegerDistribution(4, 4));
+
+    // All the VMs are on the first 10 hosts, as if the other hosts were added later.
+    List<VmService.State> vms = CloudStoreLoader.createVms(hosts, 40, 1, 1024, new UniformIntegerDistribution(0, 9));
+
+    int maxMoves = 20;
+    LoadRebalancer.Result result = new LoadRebalancer(maxMoves, 0.001).rebalance(hosts, vms);
+
+    assertThat(result.hostCount, is(100));
+    assertThat(result.moves.size(), lessThanOrEqualTo(maxMoves));
+    assertThat(result.moves, not(empty()));
+    assertThat(result.finalImbalance, lessThan(result.initialImbalance));
+
+    Map<String, HostService.State> hostsById = hosts.stream()
+        .collect(Collectors.toMap(host -> host.documentSelfLink, host -> host));
+    Map<String, VmService.State> vmsById = new HashMap<>();
+    vms.forEach(vm -> vmsById.put(vm.documentSelfLink, vm));
+    for (LoadRebalancer.Move move : result.moves) {
+      assertThat(move.improvement > 0, is(true));
+      assertThat(hostsById.get(move.targetHostId).reportedDatastores, hasItem(vmsById.get(move.vmId).datastore));
+    }
+  }
+
+  private static HostService.State createHost(String hostId) {
+    HostService.State host = new HostService.State();
+    host.documentSelfLink = hostId;
+    host.state = HostState.READY;
+    host.agentState = AgentState.ACTIVE;
+    host.usageTags = ImmutableSet.of(UsageTag.CLOUD.name());
+    host.reportedDatastores = ImmutableSet.of(DATASTORE);
+    host.cpuCount = 8;
+    host.memoryMb = 8 * 1024;
+    return host;
+  }
+
+  private static VmService.State createVm(String vmId, String hostId) {
+    VmService.State vm = new VmService.State();
+    vm.documentSelfLink = vmId;
+    vm.vmState = VmState.STARTED;
+    vm.agent = hostId;
+    vm.datastore = DATASTORE;
+    vm.cost = Arrays.asList(
+        new QuotaLineItem(QuotaLineItem.VM_CPU, 1, QuotaUnit.COUNT),
+        new QuotaLineItem(QuotaLineItem.VM_MEMORY, 1, QuotaUnit.GB));
+    return vm;
+  }
+}
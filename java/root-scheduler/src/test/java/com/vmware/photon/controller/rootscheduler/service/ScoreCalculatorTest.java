@@ -26,6 +26,8 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.nullValue;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -76,4 +78,21 @@ public class ScoreCalculatorTest {
     responses = ImmutableSet.of(better, worse);
     assertThat(calculator.pickBestResponse(responses), is(better));
   }
+
+  @Test
+  void testRankResponses() {
+    SchedulerConfig schedulerConfig = mock(SchedulerConfig.class);
+    doReturn(schedulerConfig).when(config).getRoot();
+    doReturn(1.0).when(schedulerConfig).getUtilizationTransferRatio();
+    ScoreCalculator calculator = new ScoreCalculator(config.getRoot());
+    PlaceResponse best = new PlaceResponse(PlaceResultCode.OK);
+    PlaceResponse middle = new PlaceResponse(PlaceResultCode.OK);
+    PlaceResponse worst = new PlaceResponse(PlaceResultCode.OK);
+    best.setScore(new Score(3, 0));
+    middle.setScore(new Score(2, 0));
+    worst.setScore(new Score(1, 0));
+
+    assertThat(calculator.rankResponses(null), is(empty()));
+    assertThat(calculator.rankResponses(ImmutableSet.of(worst, best, middle)), contains(best, middle, worst));
+  }
 }
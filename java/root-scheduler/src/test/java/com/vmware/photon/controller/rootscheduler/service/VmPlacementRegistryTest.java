@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.rootscheduler.service;
+
+import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link VmPlacementRegistry}.
+ */
+public class VmPlacementRegistryTest {
+
+  private VmPlacementRegistry registry;
+
+  @BeforeMethod
+  public void setUp() {
+    registry = new VmPlacementRegistry();
+  }
+
+  @Test
+  public void testRecordWithoutConstraints() {
+    assertThat(registry.getHost("vm-1"), nullValue());
+    assertThat(registry.tryRecord("vm-1", "host-1", null), is(true));
+    assertThat(registry.getHost("vm-1"), is("host-1"));
+  }
+
+  @Test
+  public void testAntiAffinityRejectsSharedHost() {
+    registry.tryRecord("vm-1", "host-1", null);
+
+    List<ResourceConstraint> constraints = ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, false, "vm-1"));
+    assertThat(registry.tryRecord("vm-2", "host-1", constraints), is(false));
+    assertThat(registry.getHost("vm-2"), nullValue());
+    assertThat(registry.tryRecord("vm-2", "host-2", constraints), is(true));
+    assertThat(registry.getHost("vm-2"), is("host-2"));
+  }
+
+  @Test
+  public void testAffinityRejectsOtherHost() {
+    registry.tryRecord("vm-1", "host-1", null);
+
+    List<ResourceConstraint> constraints = ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_AFFINITY, false, "vm-1"));
+    assertThat(registry.tryRecord("vm-2", "host-2", constraints), is(false));
+    assertThat(registry.tryRecord("vm-2", "host-1", constraints), is(true));
+  }
+
+  @Test
+  public void testAffinityToVmsOnDifferentHostsIsRejected() {
+    registry.tryRecord("vm-1", "host-1", null);
+    registry.tryRecord("vm-2", "host-2", null);
+
+    List<ResourceConstraint> constraints = ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_AFFINITY, false, "vm-1", "vm-2"));
+    assertThat(registry.tryRecord("vm-3", "host-1", constraints), is(false));
+    assertThat(registry.tryRecord("vm-3", "host-2", constraints), is(false));
+    assertThat(registry.getHost("vm-3"), nullValue());
+  }
+
+  @Test
+  public void testConstraintsOfRecordedVmsAreEnforced() {
+    registry.tryRecord("vm-1", "host-1", ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, false, "vm-2")));
+    registry.tryRecord("vm-3", "host-3", ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_AFFINITY, false, "vm-4")));
+
+    assertThat(registry.tryRecord("vm-2", "host-1", null), is(false));
+    assertThat(registry.tryRecord("vm-2", "host-2", null), is(true));
+    assertThat(registry.tryRecord("vm-4", "host-2", null), is(false));
+    assertThat(registry.tryRecord("vm-4", "host-3", null), is(true));
+  }
+
+  @Test
+  public void testSoftConstraintsOfRecordedVmsAreNotEnforced() {
+    registry.tryRecord("vm-1", "host-1", ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, true, "vm-2")));
+
+    assertThat(registry.tryRecord("vm-2", "host-1", null), is(true));
+  }
+
+  @Test
+  public void testAffinityToUnknownVmIsAccepted() {
+    List<ResourceConstraint> constraints = ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_AFFINITY, false, "vm-1"));
+    assertThat(registry.tryRecord("vm-2", "host-2", constraints), is(true));
+  }
+
+  @Test
+  public void testSoftConstraintsAreNotEnforced() {
+    registry.tryRecord("vm-1", "host-1", null);
+
+    List<ResourceConstraint> constraints = ImmutableList.of(
+        createConstraint(ResourceConstraintType.VM_ANTI_AFFINITY, true, "vm-1"));
+    assertThat(registry.tryRecord("vm-2", "host-1", constraints), is(true));
+  }
+
+  private static ResourceConstraint createConstraint(ResourceConstraintType type, boolean soft, String... vmIds) {
+    ResourceConstraint constraint = new ResourceConstraint(type, new ArrayList<>(ImmutableList.copyOf(vmIds)));
+    constraint.setSoft(soft);
+    return constraint;
+  }
+}
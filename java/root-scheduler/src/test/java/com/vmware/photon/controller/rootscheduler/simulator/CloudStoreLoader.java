@@ -13,13 +13,19 @@
 
 package com.vmware.photon.controller.rootscheduler.simulator;
 
+import com.vmware.photon.controller.api.model.AgentState;
 import com.vmware.photon.controller.api.model.HostState;
+import com.vmware.photon.controller.api.model.QuotaLineItem;
+import com.vmware.photon.controller.api.model.QuotaUnit;
 import com.vmware.photon.controller.api.model.UsageTag;
+import com.vmware.photon.controller.api.model.VmState;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.DatastoreServiceFactory;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostService;
 import com.vmware.photon.controller.cloudstore.xenon.entity.HostServiceFactory;
+import com.vmware.photon.controller.cloudstore.xenon.entity.VmService;
 import com.vmware.photon.controller.cloudstore.xenon.helpers.TestEnvironment;
+import com.vmware.photon.controller.common.xenon.ServiceUtils;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Utils;
 
@@ -30,8 +36,10 @@ import org.slf4j.LoggerFactory;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
@@ -76,6 +84,24 @@ public class CloudStoreLoader {
                                Map<HostConfiguration, Double> hostConfigurations,
                                int numDatastores,
                                IntegerDistribution numDatastoresDistribution) throws Throwable {
+    for (HostService.State host : createHosts(numHosts, hostConfigurations, numDatastores,
+        numDatastoresDistribution)) {
+      Operation result = cloudstore.sendPostAndWait(HostServiceFactory.SELF_LINK, host);
+      assertThat(result.getStatusCode(), is(200));
+      logger.debug("Created a host document: {}", Utils.toJson(true, false, host));
+    }
+  }
+
+  /**
+   * Creates host documents in memory, as {@link #loadHosts} creates them in cloudstore.
+   *
+   * @return the host documents
+   */
+  public static List<HostService.State> createHosts(int numHosts,
+                                                    Map<HostConfiguration, Double> hostConfigurations,
+                                                    int numDatastores,
+                                                    IntegerDistribution numDatastoresDistribution) {
+    List<HostService.State> hosts = new ArrayList<>();
     int[] indices = new int[hostConfigurations.size()];
     HostConfiguration[] configs = new HostConfiguration[hostConfigurations.size()];
     double[] probabilities = new double[hostConfigurations.size()];
@@ -91,6 +117,7 @@ public class CloudStoreLoader {
       HostService.State host = new HostService.State();
       host.hostAddress = "host" + i;
       host.state = HostState.READY;
+      host.agentState = AgentState.ACTIVE;
       host.userName = "username";
       host.password = "password";
       host.reportedDatastores = new HashSet<>();
@@ -108,10 +135,45 @@ public class CloudStoreLoader {
       host.memoryMb = configs[configIndex].memoryMb;
       host.documentSelfLink = new UUID(0, i).toString();
       // TODO(mmutsuzaki) Support availability zones.
-      Operation result = cloudstore.sendPostAndWait(HostServiceFactory.SELF_LINK, host);
-      assertThat(result.getStatusCode(), is(200));
-      logger.debug("Created a host document: {}", Utils.toJson(true, false, host));
+      hosts.add(host);
+    }
+    return hosts;
+  }
+
+  /**
+   * Creates VM documents in memory.
+   *
+   * Each VM is created on a host drawn from the given hosts, on one of the datastores of that host.
+   *
+   * @param hosts The hosts to create the VMs on.
+   * @param numVms The number of VM documents to create.
+   * @param numCpus The number of CPUs of each VM.
+   * @param memoryMb The memory of each VM.
+   * @param hostDistribution Distribution for the index of the host of each VM. This distribution is
+   *                         expected to generate samples in the range [0, hosts.size() - 1].
+   * @return the VM documents
+   */
+  public static List<VmService.State> createVms(List<HostService.State> hosts,
+                                                int numVms,
+                                                int numCpus,
+                                                int memoryMb,
+                                                IntegerDistribution hostDistribution) {
+    List<VmService.State> vms = new ArrayList<>();
+    for (int i = 0; i < numVms; i++) {
+      HostService.State host = hosts.get(hostDistribution.sample());
+      VmService.State vm = new VmService.State();
+      vm.name = "vm" + i;
+      vm.vmState = VmState.STARTED;
+      vm.agent = ServiceUtils.getIDFromDocumentSelfLink(host.documentSelfLink);
+      vm.host = host.hostAddress;
+      vm.datastore = host.reportedDatastores.iterator().next();
+      vm.cost = new ArrayList<>(Arrays.asList(
+          new QuotaLineItem(QuotaLineItem.VM_CPU, numCpus, QuotaUnit.COUNT),
+          new QuotaLineItem(QuotaLineItem.VM_MEMORY, memoryMb, QuotaUnit.MB)));
+      vm.documentSelfLink = new UUID(1, i).toString();
+      vms.add(vm);
     }
+    return vms;
   }
 
   /**
@@ -22,6 +22,7 @@ import com.vmware.photon.controller.common.clients.exceptions.NoSuchResourceExce
 import com.vmware.photon.controller.common.clients.exceptions.SystemErrorException;
 import com.vmware.photon.controller.common.xenon.CloudStoreHelper;
 import com.vmware.photon.controller.common.xenon.ControlFlags;
+import com.vmware.photon.controller.common.xenon.ServiceHostUtils;
 import com.vmware.photon.controller.common.xenon.TaskUtils;
 import com.vmware.photon.controller.common.xenon.exceptions.XenonRuntimeException;
 import com.vmware.photon.controller.common.zookeeper.gen.ServerAddress;
@@ -30,6 +31,7 @@ import com.vmware.photon.controller.resource.gen.Disk;
 import com.vmware.photon.controller.resource.gen.DiskImage;
 import com.vmware.photon.controller.resource.gen.Resource;
 import com.vmware.photon.controller.resource.gen.ResourceConstraint;
+import com.vmware.photon.controller.resource.gen.ResourceConstraintType;
 import com.vmware.photon.controller.resource.gen.Vm;
 import com.vmware.photon.controller.rootscheduler.RootSchedulerConfig;
 import com.vmware.photon.controller.rootscheduler.SchedulerConfig;
@@ -61,6 +63,8 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -73,11 +77,20 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * This class implements tests for {@link PlacementTaskService}.
@@ -553,6 +566,7 @@ public class PlacementTaskServiceTest {
       assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
       assertThat(finalState.resultCode, is(PlaceResultCode.OK));
       assertThat(finalState.error, isEmptyOrNullString());
+      assertThat(finalState.alternateCandidates.size(), is(3));
       verify(client, times(4)).place(any(), any());
     }
 
@@ -605,6 +619,155 @@ public class PlacementTaskServiceTest {
       assertThat(finalState.error, isEmptyOrNullString());
       verify(client, times(4)).place(any(), any());
     }
+
+    /**
+     * Test that a gang placement returns a distinct host for every requested resource.
+     */
+    @Test
+    public void testGangPlacementSuccess() throws Throwable {
+      this.checker.setCandidates(ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234)));
+      mockPlaceScoresByHost(client, ImmutableMap.of("h1", 40, "h2", 30, "h3", 20, "h4", 10), new HashMap<>());
+
+      PlacementTask finalState = placeGang(3, null);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      assertThat(finalState.placements.size(), is(3));
+      assertThat(finalState.placements.get(0).serverAddress, is(finalState.serverAddress));
+      assertThat(getHosts(finalState.placements), is(Arrays.asList("h1", "h2", "h3")));
+      assertThat(getHosts(finalState.alternateCandidates), is(Arrays.asList("h4")));
+      verify(client, times(4)).place(any(), any());
+    }
+
+    /**
+     * Test that a gang placement fails when fewer hosts than requested resources accept the placement.
+     */
+    @Test
+    public void testGangPlacementNotEnoughHosts() throws Throwable {
+      this.checker.setCandidates(ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234)));
+      mockPlaceScoresByHost(client, ImmutableMap.of("h1", 40, "h2", 30), new HashMap<>());
+
+      PlacementTask finalState = placeGang(3, PlacementTask.PlacementPolicy.SPREAD);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FAILED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.NO_SUCH_RESOURCE));
+      assertThat(finalState.error, containsString("Only 2 of 3 requested placements"));
+      verify(client, times(2)).place(any(), any());
+    }
+
+    private PlacementTask placeGang(int placementCount, PlacementTask.PlacementPolicy policy) throws Throwable {
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = new Resource();
+      placementTask.placementCount = placementCount;
+      placementTask.placementPolicy = policy;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+      return operation.getBody(PlacementTask.class);
+    }
+
+    private List<String> getHosts(List<PlacementTask.Candidate> candidates) {
+      return candidates.stream().map(candidate -> candidate.serverAddress.getHost()).collect(Collectors.toList());
+    }
+
+    /**
+     * Test that a dry-run explains the sampled hosts and why the hosts which were not selected were rejected.
+     */
+    @Test
+    public void testDryRunExplainsPlacement() throws Throwable {
+      Resource resource = new Resource();
+
+      ImmutableMap<String, ServerAddress> matches = ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234),
+          "h3", new ServerAddress("h3", 1234),
+          "h4", new ServerAddress("h4", 1234));
+
+      this.checker.setCandidates(matches);
+
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.dryRun = true;
+      placementTask.documentSelfLink = "dry-run-" + UUID.randomUUID();
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      AtomicInteger placeCalls = new AtomicInteger();
+      doAnswer((InvocationOnMock invocation) -> {
+        Object[] arguments = invocation.getArguments();
+        @SuppressWarnings("unchecked")
+        AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+            (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+        PlaceResponse response;
+        if (placeCalls.incrementAndGet() == 1) {
+          response = new PlaceResponse(PlaceResultCode.NOT_ENOUGH_MEMORY);
+          response.setError("Not enough memory");
+        } else {
+          response = new PlaceResponse(PlaceResultCode.OK);
+          response.setScore(new Score(random.nextInt(100), random.nextInt(100)));
+        }
+        Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+        doReturn(response).when(placeResponse).getResult();
+        call.onComplete(placeResponse);
+        return null;
+      }).when(client).place(any(), any());
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+
+      PlacementTask finalState = operation.getBody(PlacementTask.class);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      assertNotNull(finalState.explanation);
+
+      List<ConstraintChecker.CandidateStage> stages = finalState.explanation.stages;
+      assertThat(stages.size(), is(3));
+      assertThat(stages.get(0).name, is("sampled hosts"));
+      assertThat(stages.get(0).candidateCount, is(4L));
+      assertThat(stages.get(1).candidateCount, is(3L));
+      assertThat(stages.get(2).candidateCount, is(1L));
+
+      List<PlacementTask.HostExplanation> hosts = finalState.explanation.hosts;
+      assertThat(hosts.size(), is(4));
+      assertTrue(hosts.get(0).selected);
+      assertThat(hosts.get(0).rank, is(1));
+      assertThat(hosts.get(0).serverAddress, is(finalState.serverAddress));
+      assertThat(hosts.get(0).hostId, is(finalState.serverAddress.getHost()));
+      assertNull(hosts.get(0).rejectionReason);
+      for (PlacementTask.HostExplanation host : hosts.subList(1, 4)) {
+        assertThat(host.selected, is(false));
+        assertNotNull(host.rejectionReason);
+      }
+      assertThat(hosts.get(3).result, is(PlaceResultCode.NOT_ENOUGH_MEMORY));
+      assertThat(hosts.get(3).rejectionReason, is("Not enough memory"));
+      verify(client, times(4)).place(any(), any());
+
+      // The dry-run task is deleted once it has returned its result
+      String taskLink = UriUtils.buildUriPath(PlacementTaskService.FACTORY_LINK, placementTask.documentSelfLink);
+      ServiceHostUtils.waitForState(
+          () -> Arrays.stream(schedulerTestEnvironment.getHosts())
+              .anyMatch(host -> host.getServiceStage(taskLink) != null),
+          (Boolean taskExists) -> !taskExists,
+          null,
+          "Dry-run placement task was not deleted");
+    }
   }
 
   /**
@@ -753,6 +916,199 @@ public class PlacementTaskServiceTest {
     }
   }
 
+  /**
+   * Tests the check of the hard VM constraints against the VMs placed meanwhile.
+   */
+  public class VmConstraintTest {
+    @Mock
+    private RootSchedulerConfig config;
+
+    @Mock
+    private HostClient client;
+
+    private FakeConstraintChecker checker;
+
+    @Mock
+    private HostClientFactory hostClientFactory;
+
+    private SchedulerTestEnvironment schedulerTestEnvironment;
+
+    private TestEnvironment cloudStoreMachine;
+
+    final String imageId = "test-image-id";
+
+    private Map<String, Resource> placedResources;
+
+    @BeforeMethod
+    public void setUpTest() throws Throwable {
+      MockitoAnnotations.initMocks(this);
+      placedResources = new ConcurrentHashMap<>();
+      SchedulerConfig schedulerConfig = new SchedulerConfig();
+      schedulerConfig.setMaxFanoutCount(4);
+      schedulerConfig.setPlaceTimeoutMs(20000);
+      schedulerConfig.setUtilizationTransferRatio(0.5);
+      doReturn(schedulerConfig).when(config).getRoot();
+      when(hostClientFactory.create()).thenReturn(client);
+      checker = new FakeConstraintChecker();
+
+      cloudStoreMachine = TestEnvironment.create(1);
+      schedulerTestEnvironment = SchedulerTestEnvironment.create(
+          hostClientFactory, config, checker,
+          new CloudStoreHelper(cloudStoreMachine.getServerSet()), 1);
+
+      ImageToImageDatastoreMappingService.State state = new ImageToImageDatastoreMappingService.State();
+      state.imageId = imageId;
+      state.imageDatastoreId = "test-image-datastoreId";
+      cloudStoreMachine.sendPostAndWait(ImageToImageDatastoreMappingServiceFactory.SELF_LINK, state);
+    }
+
+    @AfterMethod
+    public void tearDownTest() throws Throwable {
+      if (schedulerTestEnvironment != null) {
+        schedulerTestEnvironment.stop();
+        schedulerTestEnvironment = null;
+      }
+      cloudStoreMachine.stop();
+      reset(client);
+    }
+
+    /**
+     * Test that the best host is skipped when it breaks the hard constraint of a VM placed meanwhile, which names
+     * the VM being placed.
+     */
+    @Test
+    public void testVmPlacementSkipsConflictingHost() throws Throwable {
+      ResourceConstraint antiAffinity = new ResourceConstraint(
+          ResourceConstraintType.VM_ANTI_AFFINITY, Arrays.asList("vm-2"));
+      assertTrue(checker.getVmPlacementRegistry().tryRecord("vm-1", "h1", Arrays.asList(antiAffinity)));
+
+      this.checker.setCandidates(ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234)));
+      mockPlaceScoresByHost(client, ImmutableMap.of("h1", 100, "h2", 10), placedResources);
+
+      PlacementTask finalState = placeVm("vm-2");
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.OK));
+      assertThat(finalState.serverAddress.getHost(), is("h2"));
+      assertThat(checker.getVmPlacementRegistry().getHost("vm-2"), is("h2"));
+    }
+
+    /**
+     * Test that the placement fails when every host breaks a hard constraint against a VM placed meanwhile.
+     */
+    @Test
+    public void testVmPlacementFailsWhenAllHostsConflict() throws Throwable {
+      ResourceConstraint antiAffinity = new ResourceConstraint(
+          ResourceConstraintType.VM_ANTI_AFFINITY, Arrays.asList("vm-2"));
+      assertTrue(checker.getVmPlacementRegistry().tryRecord("vm-1", "h1", Arrays.asList(antiAffinity)));
+
+      this.checker.setCandidates(ImmutableMap.of("h1", new ServerAddress("h1", 1234)));
+      mockPlaceScoresByHost(client, ImmutableMap.of("h1", 100), placedResources);
+
+      PlacementTask finalState = placeVm("vm-2");
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FAILED));
+      assertThat(finalState.resultCode, is(PlaceResultCode.NO_SUCH_RESOURCE));
+      assertThat(finalState.error, containsString("VM affinity constraints cannot be satisfied"));
+      assertNull(checker.getVmPlacementRegistry().getHost("vm-2"));
+    }
+
+    /**
+     * Test that the new disks sent to a host are pinned to the datastore the constraint checker picked for it, and
+     * that the disks of hosts without a picked datastore are left alone.
+     */
+    @Test
+    public void testNewDisksArePinnedToCandidateDatastore() throws Throwable {
+      this.checker.setCandidates(ImmutableMap.of(
+          "h1", new ServerAddress("h1", 1234),
+          "h2", new ServerAddress("h2", 1234)));
+      this.checker.setCandidateDatastores(ImmutableMap.of("h1", "datastore-1"));
+      mockPlaceScoresByHost(client, ImmutableMap.of("h1", 100, "h2", 10), placedResources);
+
+      Disk newDisk = new Disk();
+      newDisk.setId("disk-1");
+      newDisk.setNew_disk(true);
+      newDisk.setCapacity_gb(10);
+      Resource resource = createVmResource("vm-1");
+      resource.getVm().addToDisks(newDisk);
+
+      PlacementTask finalState = place(resource);
+
+      assertThat(finalState.taskState.stage, is(TaskState.TaskStage.FINISHED));
+      List<Disk> h1Disks = placedResources.get("h1").getVm().getDisks();
+      assertNull(h1Disks.get(0).getResource_constraints());
+      assertThat(h1Disks.get(1).getResource_constraints(), is(Arrays.asList(new ResourceConstraint(
+          ResourceConstraintType.DATASTORE, Arrays.asList("datastore-1")))));
+      assertNull(placedResources.get("h2").getVm().getDisks().get(1).getResource_constraints());
+      assertNull(resource.getVm().getDisks().get(1).getResource_constraints());
+    }
+
+    private PlacementTask placeVm(String vmId) throws Throwable {
+      return place(createVmResource(vmId));
+    }
+
+    private Resource createVmResource(String vmId) {
+      DiskImage image = new DiskImage();
+      image.setId(imageId);
+      Disk disk = new Disk();
+      disk.setImage(image);
+      Vm vm = new Vm();
+      vm.setId(vmId);
+      vm.setDisks(new ArrayList<>(Arrays.asList(disk)));
+      Resource resource = new Resource();
+      resource.setVm(vm);
+      return resource;
+    }
+
+    private PlacementTask place(Resource resource) throws Throwable {
+      PlacementTask placementTask = new PlacementTask();
+      placementTask.resource = resource;
+      placementTask.sampleHostCount = config.getRoot().getMaxFanoutCount();
+      placementTask.timeoutMs = config.getRoot().getPlaceTimeoutMs();
+      placementTask.taskState = new TaskState();
+      placementTask.taskState.stage = TaskState.TaskStage.CREATED;
+      placementTask.taskState.isDirect = true;
+
+      Operation operation = schedulerTestEnvironment.sendPostAndWait(
+          PlacementTaskService.FACTORY_LINK,
+          placementTask);
+      return operation.getBody(PlacementTask.class);
+    }
+  }
+
+  /**
+   * Mocks the place calls of the client to score the resource by the host they are sent to. Hosts are asked to place
+   * the resource one after the other, so the host a place call goes to is the one the client was last pointed at.
+   * The resource sent to each host is recorded in placedResources.
+   */
+  private static void mockPlaceScoresByHost(
+      HostClient client,
+      Map<String, Integer> scores,
+      Map<String, Resource> placedResources) throws Throwable {
+    AtomicReference<String> currentHost = new AtomicReference<>();
+    doAnswer((InvocationOnMock invocation) -> {
+      currentHost.set((String) invocation.getArguments()[0]);
+      return null;
+    }).when(client).setIpAndPort(anyString(), anyInt());
+
+    doAnswer((InvocationOnMock invocation) -> {
+      Object[] arguments = invocation.getArguments();
+      @SuppressWarnings("unchecked")
+      AsyncMethodCallback<Host.AsyncSSLClient.place_call> call =
+          (AsyncMethodCallback<Host.AsyncSSLClient.place_call>) arguments[1];
+      placedResources.put(currentHost.get(), (Resource) arguments[0]);
+      int score = scores.get(currentHost.get());
+      PlaceResponse response = new PlaceResponse(PlaceResultCode.OK);
+      response.setScore(new Score(score, score));
+      Host.AsyncSSLClient.place_call placeResponse = mock(Host.AsyncSSLClient.place_call.class);
+      doReturn(response).when(placeResponse).getResult();
+      call.onComplete(placeResponse);
+      return null;
+    }).when(client).place(any(), any());
+  }
+
   private PlacementTask buildValidStartState(TaskState.TaskStage stage) {
     PlacementTask startState = new PlacementTask();
     startState.controlFlags = ControlFlags.CONTROL_FLAG_OPERATION_PROCESSING_DISABLED;
@@ -12,6 +12,7 @@
 
 """ Implements the interfaces that are defined in the thrift Host service."""
 
+import copy
 import logging
 import sys
 import threading
@@ -206,7 +207,7 @@ class HostHandler(Host.Iface):
             raise HypervisorNotConfigured()
         config.networks = self._hypervisor.network_manager.get_networks()
         dm = self._hypervisor.datastore_manager
-        config.datastores = dm.get_datastores()
+        config.datastores = [self._datastore_with_capacity(dm, ds) for ds in dm.get_datastores()]
         config.image_datastore_ids = dm.image_datastores()
 
         config.memory_mb = self._hypervisor.system.total_vmusable_memory_mb()
@@ -215,6 +216,24 @@ class HostHandler(Host.Iface):
         response.hostConfig = config
         return response
 
+    def _datastore_with_capacity(self, datastore_manager, datastore):
+        """Copy of the datastore with its capacity, used and uncommitted space,
+        which the scheduler uses to place disks on datastores with enough free
+        space.
+
+        :type datastore: Datastore
+        :rtype: Datastore
+        """
+        datastore = copy.copy(datastore)
+        try:
+            datastore_info = datastore_manager.datastore_info(datastore.id)
+            datastore.capacity_gb = datastore_info.total
+            datastore.used_gb = datastore_info.used
+            datastore.uncommitted_gb = datastore_info.uncommitted
+        except Exception:
+            self._logger.warning("Failed to get the capacity of datastore %s" % datastore.id, exc_info=True)
+        return datastore
+
     @log_request
     @error_handler(GetHostModeResponse, GetHostModeResultCode)
     def get_host_mode(self, request):
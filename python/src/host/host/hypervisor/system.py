@@ -14,9 +14,10 @@ from common.log import log_duration
 
 
 class DatastoreInfo(object):
-    def __init__(self, total, used):
+    def __init__(self, total, used, uncommitted=0):
         self.total = total
         self.used = used
+        self.uncommitted = uncommitted
 
 
 class System(object):
@@ -43,7 +44,9 @@ class System(object):
         ds = self._vim_client.get_datastore_in_cache(datastore_id)
         total = float(ds.capacity) / (1024 ** 3)
         free = float(ds.free) / (1024 ** 3)
-        return DatastoreInfo(total, total - free)
+        # summary.uncommitted is unset on datastores that do not support thin provisioning
+        uncommitted = float(getattr(ds, "uncommitted", None) or 0) / (1024 ** 3)
+        return DatastoreInfo(total, total - free, uncommitted)
 
     def host_consumed_memory_mb(self):
         return self._vim_client.memory_usage_mb
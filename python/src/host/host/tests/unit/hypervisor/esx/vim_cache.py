@@ -33,6 +33,7 @@ class VimDatastore(object):
             self.name = datastore.name
             self.capacity = datastore.summary.capacity
             self.free = datastore.summary.freeSpace
+            self.uncommitted = datastore.summary.uncommitted
             self.type = datastore.summary.type
 
             self.id = None
@@ -46,6 +47,7 @@ class VimDatastore(object):
             self.name = None
             self.capacity = None
             self.free = 0
+            self.uncommitted = 0
             self.type = None
             self.id = None
             self.local = False
@@ -72,7 +74,8 @@ class VimCache:
         PC = vmodl.query.PropertyCollector
         traversal_spec = PC.TraversalSpec(name="folderTraversalSpec", type=vim.Folder, path="childEntity", skip=False)
         property_spec = PC.PropertySpec(type=vim.Datastore,
-                                        pathSet=["name", "summary.capacity", "summary.freeSpace", "summary.type"])
+                                        pathSet=["name", "summary.capacity", "summary.freeSpace",
+                                                 "summary.uncommitted", "summary.type"])
         from host.tests.unit.hypervisor.esx.vim_client import DATASTORE_FOLDER_NAME
         object_spec = PC.ObjectSpec(obj=vim_client._find_by_inventory_path(DATASTORE_FOLDER_NAME),
                                     selectSet=[traversal_spec])
@@ -257,6 +260,8 @@ class VimCache:
                 ds.capacity = change.val
             elif change.name == "summary.freeSpace":
                 ds.free = change.val
+            elif change.name == "summary.uncommitted":
+                ds.uncommitted = change.val
             elif change.name == "summary.type":
                 ds.type = change.val
 
@@ -1119,6 +1119,32 @@ class HostHandlerTestCase(unittest.TestCase):
 
         assert_that(result.result is StopImageOperationResultCode.DATASTORE_NOT_FOUND)
 
+    def test_datastore_with_capacity(self):
+        handler = HostHandler(MagicMock())
+        datastore_manager = MagicMock()
+        datastore_manager.datastore_info.return_value = DatastoreInfo(100.0, 40.0, 25.0)
+        datastore = Datastore("ds_id_1", "ds_name_1", DatastoreType.LOCAL_VMFS)
+
+        result = handler._datastore_with_capacity(datastore_manager, datastore)
+
+        datastore_manager.datastore_info.assert_called_once_with("ds_id_1")
+        assert_that(result.capacity_gb, equal_to(100.0))
+        assert_that(result.used_gb, equal_to(40.0))
+        assert_that(result.uncommitted_gb, equal_to(25.0))
+        assert_that(datastore.uncommitted_gb, none())
+
+    def test_datastore_with_capacity_failure(self):
+        handler = HostHandler(MagicMock())
+        datastore_manager = MagicMock()
+        datastore_manager.datastore_info.side_effect = Exception()
+        datastore = Datastore("ds_id_1", "ds_name_1", DatastoreType.LOCAL_VMFS)
+
+        result = handler._datastore_with_capacity(datastore_manager, datastore)
+
+        assert_that(result.id, equal_to("ds_id_1"))
+        assert_that(result.capacity_gb, none())
+        assert_that(result.uncommitted_gb, none())
+
     def test_get_inactive_images(self):
         handler = HostHandler(MagicMock())
 
@@ -36,6 +36,10 @@ enum VmPowerState {
 }
 
 // Resource constraint could only be datastore, host, or network.
+// VM_AFFINITY and VM_ANTI_AFFINITY take VM ids, and are resolved by the scheduler
+// to the hosts those VMs are on.
+// DATASTORE_FREE_SPACE is added by the scheduler itself. It takes the GB the new
+// disks need, and is resolved to the datastores with that much projected free space.
 enum ResourceConstraintType {
   DATASTORE = 0
   HOST = 1
@@ -44,6 +48,9 @@ enum ResourceConstraintType {
   DATASTORE_TAG = 4
   MANAGEMENT_ONLY = 5
   VIRTUAL_NETWORK = 6
+  VM_AFFINITY = 7
+  VM_ANTI_AFFINITY = 8
+  DATASTORE_FREE_SPACE = 9
 }
 
 enum ResourcePlacementType {
@@ -101,6 +108,11 @@ struct Datastore {
   2: optional string name
   3: optional DatastoreType type
   4: optional set<string> tags
+  // Capacity and space consumed, in GB, as seen by the host reporting the datastore
+  5: optional double capacity_gb
+  6: optional double used_gb
+  // Space thin-provisioned disks may still grow into, in GB
+  7: optional double uncommitted_gb
 }
 
 // Image datastore
@@ -118,6 +130,8 @@ struct ResourceConstraint {
   2: required list<string> values
   // Negative constraint, do not place where resource is available
   3: optional bool negative
+  // Soft constraint, preferred but dropped when no host satisfies it
+  4: optional bool soft
 }
 
 // The ResourcePlacement are set by the scheduler